@@ -74,7 +74,7 @@ abstract class AbstractEntryIterator<K, V, T> implements OLazyIterator<T> {
 			pageIndex = 0;
 		}
 		lastReturned = next;
-		tree.pageIndex = pageIndex;
+		tree.setPageIndex(pageIndex);
 
 		return next;
 	}
@@ -105,7 +105,7 @@ abstract class AbstractEntryIterator<K, V, T> implements OLazyIterator<T> {
 			throw new IllegalStateException();
 		if (tree.modCount != expectedModCount)
 			throw new ConcurrentModificationException();
-		tree.pageIndex = pageIndex;
+		tree.setPageIndex(pageIndex);
 		return (T) next.setValue((V) iValue);
 	}
 
@@ -117,7 +117,7 @@ abstract class AbstractEntryIterator<K, V, T> implements OLazyIterator<T> {
 		// deleted entries are replaced by their successors
 		if (lastReturned.getLeft() != null && lastReturned.getRight() != null)
 			next = lastReturned;
-		tree.pageIndex = pageIndex;
+		tree.setPageIndex(pageIndex);
 		next = tree.deleteEntry(lastReturned);
 		pageIndex--;
 		expectedModCount = tree.modCount;
@@ -101,6 +101,13 @@ public class OCompositeKey implements Comparable<OCompositeKey>, Serializable {
 			final Comparable inKey = inIter.next();
 			final Comparable outKey = outIter.next();
 
+			// NULL VALUES, ALLOWED ONLY FOR THE FIELDS INCLUDED IN THE INDEXES, COME FIRST
+			if (inKey == null || outKey == null) {
+				if (inKey != outKey)
+					return inKey == null ? -1 : 1;
+				continue;
+			}
+
 			@SuppressWarnings("unchecked")
 			final int result = inKey.compareTo(outKey);
 			if (result != 0)
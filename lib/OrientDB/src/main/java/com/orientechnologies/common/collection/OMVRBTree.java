@@ -48,10 +48,6 @@ import com.orientechnologies.common.profiler.OProfiler;
  */
 @SuppressWarnings({ "unchecked", "serial" })
 public abstract class OMVRBTree<K, V> extends AbstractMap<K, V> implements ONavigableMap<K, V>, Cloneable, java.io.Serializable {
-	boolean																		pageItemFound				= false;
-	protected int															pageItemComparator	= 0;
-	protected int															pageIndex						= -1;
-
 	protected float														pageLoadFactor			= 0.7f;
 
 	/**
@@ -69,10 +65,34 @@ public abstract class OMVRBTree<K, V> extends AbstractMap<K, V> implements ONavi
 	protected transient boolean								runtimeCheckEnabled	= false;
 	protected transient boolean								debug								= false;
 
-	protected Object													lastSearchKey;
-	protected OMVRBTreeEntry<K, V>						lastSearchNode;
-	protected boolean													lastSearchFound			= false;
-	protected int															lastSearchIndex			= -1;
+	/**
+	 * Registers written by the searches and read by the entries to know the current position inside the node, plus the result of
+	 * the last search to reuse it. They are kept per thread only if many threads search the tree at the same time.
+	 * 
+	 * @see #setPerThreadSearchState(boolean)
+	 */
+	static final class SearchState {
+		boolean								pageItemFound				= false;
+		int										pageItemComparator	= 0;
+		int										pageIndex						= -1;
+
+		Object								lastSearchKey;
+		OMVRBTreeEntry<?, ?>	lastSearchNode;
+		boolean								lastSearchFound			= false;
+		int										lastSearchIndex			= -1;
+		int										lastSearchStamp;
+	}
+
+	private static final class SearchStateHolder extends ThreadLocal<SearchState> {
+		@Override
+		protected SearchState initialValue() {
+			return new SearchState();
+		}
+	}
+
+	private transient SearchState								searchState					= new SearchState();
+	private transient ThreadLocal<SearchState>	threadSearchStates;														// NULL IF NOT SHARED BY THREADS
+	private transient int												searchVersion				= 0;	// INCREMENTED TO INVALIDATE THE LAST SEARCHES
 
 	/**
 	 * Indicates search behavior in case of {@link OCompositeKey} keys that have less amount of internal keys are used, whether lowest
@@ -256,9 +276,10 @@ public abstract class OMVRBTree<K, V> extends AbstractMap<K, V> implements ONavi
 			final OMVRBTreeEntry<K, V> node = getLastSearchNodeForSameKey(key);
 			if (node != null) {
 				// SAME SEARCH OF PREVIOUS ONE: REUSE LAST RESULT?
-				if (lastSearchFound)
+				final SearchState state = getSearchState();
+				if (state.lastSearchFound)
 					// REUSE LAST RESULT, OTHERWISE THE KEY NOT EXISTS
-					return node.getValue(lastSearchIndex);
+					return node.getValue(state.lastSearchIndex);
 			} else
 				// SEARCH THE ITEM
 				entry = getEntry(key, PartialSearchMode.NONE);
@@ -343,10 +364,11 @@ public abstract class OMVRBTree<K, V> extends AbstractMap<K, V> implements ONavi
 		if (key == null)
 			return setLastSearchNode(null, null);
 
-		pageItemFound = false;
+		final SearchState state = getSearchState();
+		state.pageItemFound = false;
 
 		if (size() == 0) {
-			pageIndex = 0;
+			state.pageIndex = 0;
 			return iGetContainer ? root : null;
 		}
 
@@ -381,9 +403,9 @@ public abstract class OMVRBTree<K, V> extends AbstractMap<K, V> implements ONavi
 
 				if (beginKey == 0) {
 					// EXACT MATCH, YOU'RE VERY LUCKY: RETURN THE FIRST KEY WITHOUT SEARCH INSIDE THE NODE
-					pageIndex = 0;
-					pageItemFound = true;
-					pageItemComparator = 0;
+					state.pageIndex = 0;
+					state.pageItemFound = true;
+					state.pageItemComparator = 0;
 
 					if (((Comparable<?>) k) instanceof OCompositeKey)
 						return adjustSearchResult(partialSearchMode, p, k);
@@ -392,12 +414,12 @@ public abstract class OMVRBTree<K, V> extends AbstractMap<K, V> implements ONavi
 				}
 
 				if (comparator != null)
-					pageItemComparator = comparator.compare((K) key, p.getLastKey());
+					state.pageItemComparator = comparator.compare((K) key, p.getLastKey());
 				else
-					pageItemComparator = k.compareTo(p.getLastKey());
+					state.pageItemComparator = k.compareTo(p.getLastKey());
 
 				if (beginKey < 0) {
-					if (pageItemComparator < 0) {
+					if (state.pageItemComparator < 0) {
 						tmpNode = predecessor(p);
 						if (tmpNode != null && tmpNode != prevNode) {
 							// MINOR THAN THE CURRENT: GET THE LEFT NODE
@@ -407,7 +429,7 @@ public abstract class OMVRBTree<K, V> extends AbstractMap<K, V> implements ONavi
 						}
 					}
 				} else if (beginKey > 0) {
-					if (pageItemComparator > 0) {
+					if (state.pageItemComparator > 0) {
 						tmpNode = successor(p);
 						if (tmpNode != null && tmpNode != prevNode) {
 							// MAJOR THAN THE CURRENT: GET THE RIGHT NODE
@@ -486,10 +508,11 @@ public abstract class OMVRBTree<K, V> extends AbstractMap<K, V> implements ONavi
 		if (p == null)
 			return null;
 
-		if (pageItemFound)
+		final SearchState state = getSearchState();
+		if (state.pageItemFound)
 			return p;
 		// NOT MATCHED, POSITION IS ALREADY TO THE NEXT ONE
-		else if (pageIndex < p.getSize())
+		else if (state.pageIndex < p.getSize())
 			if (key instanceof OCompositeKey) {
 				final OCompositeKey keyToSearch = (OCompositeKey) key;
 				final OCompositeKey foundKey = (OCompositeKey) p.getKey();
@@ -520,7 +543,7 @@ public abstract class OMVRBTree<K, V> extends AbstractMap<K, V> implements ONavi
 		if (p == null)
 			return null;
 
-		if (pageItemFound)
+		if (getSearchState().pageItemFound)
 			return p;
 
 		final OMVRBTreeEntry<K, V> adjacentEntry = previous(p);
@@ -546,10 +569,11 @@ public abstract class OMVRBTree<K, V> extends AbstractMap<K, V> implements ONavi
 		if (p == null)
 			return null;
 
-		if (pageItemFound)
+		final SearchState state = getSearchState();
+		if (state.pageItemFound)
 			// MATCH, RETURN THE NEXT ONE
 			return next(p);
-		else if (pageIndex < p.getSize())
+		else if (state.pageIndex < p.getSize())
 			// NOT MATCHED, POSITION IS ALREADY TO THE NEXT ONE
 			return p;
 
@@ -571,7 +595,7 @@ public abstract class OMVRBTree<K, V> extends AbstractMap<K, V> implements ONavi
 
 	private OMVRBTreeEntry<K, V> findHighestBoundary(final OMVRBTreeEntry<K, V> p, final Comparable<? extends Object> key) {
 		OMVRBTreeEntry<K, V> currentEntry = p;
-		int currentIndex = pageIndex;
+		int currentIndex = getPageIndex();
 
 		int result;
 		do {
@@ -587,18 +611,18 @@ public abstract class OMVRBTree<K, V> extends AbstractMap<K, V> implements ONavi
 
 			if (result == 0) {
 				currentEntry = nextEntry;
-				currentIndex = pageIndex;
+				currentIndex = getPageIndex();
 			}
 
 		} while (result == 0);
 
-		pageIndex = currentIndex;
+		setPageIndex(currentIndex);
 		return currentEntry;
 	}
 
 	private OMVRBTreeEntry<K, V> findLowestBoundary(final OMVRBTreeEntry<K, V> p, final Comparable<? extends Object> key) {
 		OMVRBTreeEntry<K, V> currentEntry = p;
-		int currentIndex = pageIndex;
+		int currentIndex = getPageIndex();
 
 		int result;
 		do {
@@ -614,12 +638,12 @@ public abstract class OMVRBTree<K, V> extends AbstractMap<K, V> implements ONavi
 
 			if (result == 0) {
 				currentEntry = prevEntry;
-				currentIndex = pageIndex;
+				currentIndex = getPageIndex();
 			}
 
 		} while (result == 0);
 
-		pageIndex = currentIndex;
+		setPageIndex(currentIndex);
 		return currentEntry;
 	}
 
@@ -653,12 +677,14 @@ public abstract class OMVRBTree<K, V> extends AbstractMap<K, V> implements ONavi
 				return null;
 			}
 
+			final SearchState state = getSearchState();
+
 			// TRY TO GET LATEST SEARCH
 			parentNode = getLastSearchNodeForSameKey(key);
 			if (parentNode != null) {
-				if (lastSearchFound) {
+				if (state.lastSearchFound) {
 					// EXACT MATCH: UPDATE THE VALUE
-					pageIndex = lastSearchIndex;
+					state.pageIndex = state.lastSearchIndex;
 					modCount++;
 					return parentNode.setValue(value);
 				}
@@ -667,7 +693,7 @@ public abstract class OMVRBTree<K, V> extends AbstractMap<K, V> implements ONavi
 			// SEARCH THE ITEM
 			parentNode = getEntry(key, true, PartialSearchMode.NONE);
 
-			if (pageItemFound) {
+			if (state.pageItemFound) {
 				modCount++;
 				// EXACT MATCH: UPDATE THE VALUE
 				return parentNode.setValue(value);
@@ -677,22 +703,22 @@ public abstract class OMVRBTree<K, V> extends AbstractMap<K, V> implements ONavi
 
 			if (parentNode == null) {
 				parentNode = root;
-				pageIndex = 0;
+				state.pageIndex = 0;
 			}
 
 			if (parentNode.getFreeSpace() > 0) {
 				// INSERT INTO THE PAGE
-				parentNode.insert(pageIndex, key, value);
+				parentNode.insert(state.pageIndex, key, value);
 			} else {
 				// CREATE NEW NODE AND COPY HALF OF VALUES FROM THE ORIGIN TO THE NEW ONE IN ORDER TO GET VALUES BALANCED
 				final OMVRBTreeEntry<K, V> newNode = createEntry(parentNode);
 
-				if (pageIndex < parentNode.getPageSplitItems())
+				if (state.pageIndex < parentNode.getPageSplitItems())
 					// INSERT IN THE ORIGINAL NODE
-					parentNode.insert(pageIndex, key, value);
+					parentNode.insert(state.pageIndex, key, value);
 				else
 					// INSERT IN THE NEW NODE
-					newNode.insert(pageIndex - parentNode.getPageSplitItems(), key, value);
+					newNode.insert(state.pageIndex - parentNode.getPageSplitItems(), key, value);
 
 				OMVRBTreeEntry<K, V> node = parentNode.getRight();
 				OMVRBTreeEntry<K, V> prevNode = parentNode;
@@ -796,8 +822,10 @@ public abstract class OMVRBTree<K, V> extends AbstractMap<K, V> implements ONavi
 		}
 
 		// Put clone into "virgin" state (except for comparator)
-		clone.pageIndex = pageIndex;
-		clone.pageItemFound = pageItemFound;
+		clone.searchState = new SearchState();
+		clone.threadSearchStates = threadSearchStates != null ? new SearchStateHolder() : null;
+		clone.setPageIndex(getPageIndex());
+		clone.getSearchState().pageItemFound = getSearchState().pageItemFound;
 		clone.pageLoadFactor = pageLoadFactor;
 
 		clone.root = null;
@@ -2095,7 +2123,7 @@ public abstract class OMVRBTree<K, V> extends AbstractMap<K, V> implements ONavi
 		OMVRBTreeEntry<K, V> p = root;
 		if (p != null) {
 			if (p.getSize() > 0)
-				pageIndex = 0;
+				setPageIndex(0);
 
 			while (p.getLeft() != null)
 				p = p.getLeft();
@@ -2114,7 +2142,7 @@ public abstract class OMVRBTree<K, V> extends AbstractMap<K, V> implements ONavi
 				p = p.getRight();
 
 		if (p != null)
-			pageIndex = p.getSize() - 1;
+			setPageIndex(p.getSize() - 1);
 
 		return p;
 	}
@@ -2161,15 +2189,17 @@ public abstract class OMVRBTree<K, V> extends AbstractMap<K, V> implements ONavi
 		if (t == null)
 			return null;
 
+		final SearchState state = t.tree.getSearchState();
+
 		final OMVRBTreeEntry<K, V> succ;
-		if (t.tree.pageIndex < t.getSize() - 1) {
+		if (state.pageIndex < t.getSize() - 1) {
 			// ITERATE INSIDE THE NODE
 			succ = t;
-			t.tree.pageIndex++;
+			state.pageIndex++;
 		} else {
 			// GET THE NEXT NODE
 			succ = OMVRBTree.successor(t);
-			t.tree.pageIndex = 0;
+			state.pageIndex = 0;
 		}
 
 		return succ;
@@ -2214,18 +2244,19 @@ public abstract class OMVRBTree<K, V> extends AbstractMap<K, V> implements ONavi
 		if (t == null)
 			return null;
 
-		final int index = t.getTree().getPageIndex();
+		final SearchState state = t.tree.getSearchState();
+		final int index = state.pageIndex;
 
 		final OMVRBTreeEntry<K, V> prev;
 		if (index <= 0) {
 			prev = predecessor(t);
 			if (prev != null)
-				t.tree.pageIndex = prev.getSize() - 1;
+				state.pageIndex = prev.getSize() - 1;
 			else
-				t.tree.pageIndex = 0;
+				state.pageIndex = 0;
 		} else {
 			prev = t;
-			t.tree.pageIndex = index - 1;
+			state.pageIndex = index - 1;
 		}
 
 		return prev;
@@ -2368,7 +2399,7 @@ public abstract class OMVRBTree<K, V> extends AbstractMap<K, V> implements ONavi
 	OMVRBTreeEntry<K, V> deleteEntry(OMVRBTreeEntry<K, V> p) {
 		setSizeDelta(-1);
 		modCount++;
-		if (pageIndex > -1) {
+		if (getPageIndex() > -1) {
 			// DELETE INSIDE THE NODE
 			p.remove();
 
@@ -2532,6 +2563,7 @@ public abstract class OMVRBTree<K, V> extends AbstractMap<K, V> implements ONavi
 	private void readObject(final java.io.ObjectInputStream s) throws IOException, ClassNotFoundException {
 		// Read in the Comparator and any hidden stuff
 		s.defaultReadObject();
+		searchState = new SearchState();
 
 		// Read in size
 		setSize(s.readInt());
@@ -2661,19 +2693,38 @@ public abstract class OMVRBTree<K, V> extends AbstractMap<K, V> implements ONavi
 	 * level number is computed by finding the number of splits needed to reach the zeroeth node. (The answer is ~lg(N), but in any
 	 * case must be computed by same quick O(lg(N)) loop.)
 	 */
-	private static int computeRedLevel(final int sz) {
+	protected static int computeRedLevel(final int sz) {
 		int level = 0;
 		for (int m = sz - 1; m >= 0; m = m / 2 - 1)
 			level++;
 		return level;
 	}
 
+	/**
+	 * Returns the position inside the current node found by the last search of the current thread.
+	 */
 	public int getPageIndex() {
-		return pageIndex;
+		return getSearchState().pageIndex;
 	}
 
 	public void setPageIndex(final int iPageIndex) {
-		pageIndex = iPageIndex;
+		getSearchState().pageIndex = iPageIndex;
+	}
+
+	final SearchState getSearchState() {
+		final ThreadLocal<SearchState> states = threadSearchStates;
+		return states != null ? states.get() : searchState;
+	}
+
+	/**
+	 * Keeps the search registers per thread, needed when many threads search the tree at the same time. Otherwise all the searches
+	 * use the same registers and no thread local is created.
+	 */
+	protected void setPerThreadSearchState(final boolean iPerThread) {
+		if (iPerThread && threadSearchStates == null)
+			threadSearchStates = new SearchStateHolder();
+		else if (!iPerThread)
+			threadSearchStates = null;
 	}
 
 	private void init() {
@@ -2706,7 +2757,7 @@ public abstract class OMVRBTree<K, V> extends AbstractMap<K, V> implements ONavi
 		if (!runtimeCheckEnabled || iRootNode == null)
 			return;
 
-		int currPageIndex = pageIndex;
+		int currPageIndex = getPageIndex();
 
 		OMVRBTreeEntry<K, V> prevNode = null;
 		int i = 0;
@@ -2759,7 +2810,7 @@ public abstract class OMVRBTree<K, V> extends AbstractMap<K, V> implements ONavi
 			++i;
 		}
 
-		pageIndex = currPageIndex;
+		setPageIndex(currPageIndex);
 	}
 
 	public boolean isRuntimeCheckEnabled() {
@@ -2782,28 +2833,55 @@ public abstract class OMVRBTree<K, V> extends AbstractMap<K, V> implements ONavi
 		this.debug = debug;
 	}
 
+	/**
+	 * Returns the node found by the last search of the current thread if it was for the same key and the tree didn't change since
+	 * then.
+	 */
 	protected OMVRBTreeEntry<K, V> getLastSearchNodeForSameKey(final Object key) {
-		if (key != null && lastSearchKey != null)
+		final SearchState state = getSearchState();
+		if (key != null && state.lastSearchKey != null && state.lastSearchStamp == modCount + searchVersion) {
+			if (key instanceof OCompositeKey
+					&& (!(state.lastSearchKey instanceof OCompositeKey) || ((OCompositeKey) key).getKeys().size() != ((OCompositeKey) state.lastSearchKey)
+							.getKeys().size()))
+				// A PARTIAL KEY IS EQUAL TO THE LONGER KEYS, BUT IT'S ANOTHER SEARCH
+				return null;
+
+			final OMVRBTreeEntry<K, V> lastSearchNode = (OMVRBTreeEntry<K, V>) state.lastSearchNode;
 			if (comparator != null)
-				return comparator.compare((K) key, (K) lastSearchKey) == 0 ? lastSearchNode : null;
+				return comparator.compare((K) key, (K) state.lastSearchKey) == 0 ? lastSearchNode : null;
 			else
 				try {
-					return ((Comparable<? super K>) key).compareTo((K) lastSearchKey) == 0 ? lastSearchNode : null;
+					return ((Comparable<? super K>) key).compareTo((K) state.lastSearchKey) == 0 ? lastSearchNode : null;
 				} catch (Exception e) {
 					// IGNORE IT
 				}
+		}
 
 		return null;
 	}
 
+	protected OMVRBTreeEntry<K, V> getLastSearchNode() {
+		return (OMVRBTreeEntry<K, V>) getSearchState().lastSearchNode;
+	}
+
 	protected OMVRBTreeEntry<K, V> setLastSearchNode(final Object iKey, final OMVRBTreeEntry<K, V> iNode) {
-		lastSearchKey = iKey;
-		lastSearchNode = iNode;
-		lastSearchFound = iNode != null ? iNode.tree.pageItemFound : false;
-		lastSearchIndex = iNode != null ? iNode.tree.pageIndex : -1;
+		final SearchState state = getSearchState();
+		state.lastSearchKey = iKey;
+		state.lastSearchNode = iNode;
+		state.lastSearchFound = iNode != null ? state.pageItemFound : false;
+		state.lastSearchIndex = iNode != null ? state.pageIndex : -1;
+		state.lastSearchStamp = modCount + searchVersion;
 		return iNode;
 	}
 
+	/**
+	 * Invalidates the last search of all the threads. Called when nodes are unloaded from memory.
+	 */
+	protected void invalidateLastSearches() {
+		searchVersion++;
+		setLastSearchNode(null, null);
+	}
+
 	protected void searchNodeCallback() {
 	}
 
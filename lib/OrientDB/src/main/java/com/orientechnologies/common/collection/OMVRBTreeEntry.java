@@ -23,6 +23,7 @@ public abstract class OMVRBTreeEntry<K, V> implements Map.Entry<K, V>, Comparabl
 
 	private int								pageSplitItems;
 	public static final int		BINARY_SEARCH_THRESHOLD	= 10;
+	public static final int		SEARCH_NOT_SUPPORTED		= Integer.MIN_VALUE;
 
 	/**
 	 * Constructor called on unmarshalling.
@@ -109,14 +110,14 @@ public abstract class OMVRBTreeEntry<K, V> implements Map.Entry<K, V>, Comparabl
 	 * @return the key
 	 */
 	public K getKey() {
-		return getKey(tree.pageIndex);
+		return getKey(tree.getPageIndex());
 	}
 
 	public K getKey(final int iIndex) {
 		if (iIndex >= getSize())
 			throw new IndexOutOfBoundsException("Requested index " + iIndex + " when the range is 0-" + getSize());
 
-		tree.pageIndex = iIndex;
+		tree.setPageIndex(iIndex);
 		return getKeyAt(iIndex);
 	}
 
@@ -128,14 +129,15 @@ public abstract class OMVRBTreeEntry<K, V> implements Map.Entry<K, V>, Comparabl
 	 * @return the value associated with the key
 	 */
 	public V getValue() {
-		if (tree.pageIndex == -1)
+		final int pageIndex = tree.getPageIndex();
+		if (pageIndex == -1)
 			return getValueAt(0);
 
-		return getValueAt(tree.pageIndex);
+		return getValueAt(pageIndex);
 	}
 
 	public V getValue(final int iIndex) {
-		tree.pageIndex = iIndex;
+		tree.setPageIndex(iIndex);
 		return getValueAt(iIndex);
 	}
 
@@ -154,46 +156,78 @@ public abstract class OMVRBTreeEntry<K, V> implements Map.Entry<K, V>, Comparabl
 	 * @return The value found if any, otherwise null
 	 */
 	protected V search(final Comparable<? super K> iKey) {
-		tree.pageItemFound = false;
+		final OMVRBTree.SearchState state = tree.getSearchState();
+		state.pageItemFound = false;
 		int size = getSize();
 		if (size == 0)
 			return null;
 
+		if (tree.comparator == null) {
+			final int index = searchKeyIndex(iKey);
+			if (index != SEARCH_NOT_SUPPORTED) {
+				if (index >= 0) {
+					// FOUND: SET THE INDEX AND RETURN THE NODE
+					state.pageItemFound = true;
+					state.pageItemComparator = 0;
+					state.pageIndex = index;
+					return getValueAt(index);
+				}
+
+				// NOT FOUND: SET THE POSITION VALID FOR FURTHER INSERTS
+				state.pageIndex = -(index + 1);
+				state.pageItemComparator = state.pageIndex < size ? -1 : 1;
+				return null;
+			}
+		}
+
 		// CHECK THE LOWER LIMIT
 		if (tree.comparator != null)
-			tree.pageItemComparator = tree.comparator.compare((K) iKey, getKeyAt(0));
+			state.pageItemComparator = tree.comparator.compare((K) iKey, getKeyAt(0));
 		else
-			tree.pageItemComparator = iKey.compareTo(getKeyAt(0));
+			state.pageItemComparator = iKey.compareTo(getKeyAt(0));
 
-		if (tree.pageItemComparator == 0) {
+		if (state.pageItemComparator == 0) {
 			// FOUND: SET THE INDEX AND RETURN THE NODE
-			tree.pageItemFound = true;
-			tree.pageIndex = 0;
-			return getValueAt(tree.pageIndex);
+			state.pageItemFound = true;
+			state.pageIndex = 0;
+			return getValueAt(state.pageIndex);
 
-		} else if (tree.pageItemComparator < 0) {
+		} else if (state.pageItemComparator < 0) {
 			// KEY OUT OF FIRST ITEM: AVOID SEARCH AND RETURN THE FIRST POSITION
-			tree.pageIndex = 0;
+			state.pageIndex = 0;
 			return null;
 
 		} else {
 			// CHECK THE UPPER LIMIT
 			if (tree.comparator != null)
-				tree.pageItemComparator = tree.comparator.compare((K) iKey, getKeyAt(size - 1));
+				state.pageItemComparator = tree.comparator.compare((K) iKey, getKeyAt(size - 1));
 			else
-				tree.pageItemComparator = iKey.compareTo(getKeyAt(size - 1));
+				state.pageItemComparator = iKey.compareTo(getKeyAt(size - 1));
 
-			if (tree.pageItemComparator > 0) {
+			if (state.pageItemComparator > 0) {
 				// KEY OUT OF LAST ITEM: AVOID SEARCH AND RETURN THE LAST POSITION
-				tree.pageIndex = size;
+				state.pageIndex = size;
 				return null;
 			}
 		}
 
 		if (size < BINARY_SEARCH_THRESHOLD)
-			return linearSearch(iKey);
+			return linearSearch(state, iKey);
 		else
-			return binarySearch(iKey);
+			return binarySearch(state, iKey);
+	}
+
+	/**
+	 * Searches the key inside the node without comparing it against the single keys. Nodes that keep the keys in a form faster to
+	 * search override it.
+	 * 
+	 * @param iKey
+	 *          Key to search
+	 * @return The index of the key if found, otherwise (-(insertion point) - 1), or {@link #SEARCH_NOT_SUPPORTED} to search by
+	 *         comparing the keys
+	 */
+	protected int searchKeyIndex(final Object iKey) {
+		return SEARCH_NOT_SUPPORTED;
 	}
 
 	/**
@@ -201,29 +235,29 @@ public abstract class OMVRBTreeEntry<K, V> implements Map.Entry<K, V>, Comparabl
 	 * 
 	 * @param iKey
 	 *          Key to search
-	 * @return Value if found, otherwise null and the tree.pageIndex updated with the closest-after-first position valid for further
+	 * @return Value if found, otherwise null and the page index updated with the closest-after-first position valid for further
 	 *         inserts.
 	 */
-	private V linearSearch(final Comparable<? super K> iKey) {
+	private V linearSearch(final OMVRBTree.SearchState state, final Comparable<? super K> iKey) {
 		V value = null;
 		int i = 0;
-		tree.pageItemComparator = -1;
+		state.pageItemComparator = -1;
 		for (int s = getSize(); i < s; ++i) {
 			if (tree.comparator != null)
-				tree.pageItemComparator = tree.comparator.compare(getKeyAt(i), (K) iKey);
+				state.pageItemComparator = tree.comparator.compare(getKeyAt(i), (K) iKey);
 			else
-				tree.pageItemComparator = ((Comparable<? super K>) getKeyAt(i)).compareTo((K) iKey);
+				state.pageItemComparator = ((Comparable<? super K>) getKeyAt(i)).compareTo((K) iKey);
 
-			if (tree.pageItemComparator == 0) {
+			if (state.pageItemComparator == 0) {
 				// FOUND: SET THE INDEX AND RETURN THE NODE
-				tree.pageItemFound = true;
+				state.pageItemFound = true;
 				value = getValueAt(i);
 				break;
-			} else if (tree.pageItemComparator > 0)
+			} else if (state.pageItemComparator > 0)
 				break;
 		}
 
-		tree.pageIndex = i;
+		state.pageIndex = i;
 
 		return value;
 	}
@@ -233,10 +267,10 @@ public abstract class OMVRBTreeEntry<K, V> implements Map.Entry<K, V>, Comparabl
 	 * 
 	 * @param iKey
 	 *          Key to search
-	 * @return Value if found, otherwise null and the tree.pageIndex updated with the closest-after-first position valid for further
+	 * @return Value if found, otherwise null and the page index updated with the closest-after-first position valid for further
 	 *         inserts.
 	 */
-	private V binarySearch(final Comparable<? super K> iKey) {
+	private V binarySearch(final OMVRBTree.SearchState state, final Comparable<? super K> iKey) {
 		int low = 0;
 		int high = getSize() - 1;
 		int mid = 0;
@@ -246,27 +280,27 @@ public abstract class OMVRBTreeEntry<K, V> implements Map.Entry<K, V>, Comparabl
 			Comparable<Comparable<? super K>> midVal = (Comparable<Comparable<? super K>>) getKeyAt(mid);
 
 			if (tree.comparator != null)
-				tree.pageItemComparator = tree.comparator.compare((K) midVal, (K) iKey);
+				state.pageItemComparator = tree.comparator.compare((K) midVal, (K) iKey);
 			else
-				tree.pageItemComparator = midVal.compareTo((Comparable<? super K>) iKey);
+				state.pageItemComparator = midVal.compareTo((Comparable<? super K>) iKey);
 
-			if (tree.pageItemComparator == 0) {
+			if (state.pageItemComparator == 0) {
 				// FOUND: SET THE INDEX AND RETURN THE NODE
-				tree.pageItemFound = true;
-				tree.pageIndex = mid;
-				return getValueAt(tree.pageIndex);
+				state.pageItemFound = true;
+				state.pageIndex = mid;
+				return getValueAt(state.pageIndex);
 			}
 
 			if (low == high)
 				break;
 
-			if (tree.pageItemComparator < 0)
+			if (state.pageItemComparator < 0)
 				low = mid + 1;
 			else
 				high = mid;
 		}
 
-		tree.pageIndex = mid;
+		state.pageIndex = mid;
 		return null;
 	}
 
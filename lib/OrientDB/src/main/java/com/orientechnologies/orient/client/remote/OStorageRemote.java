@@ -782,6 +782,8 @@ public class OStorageRemote extends OStorageAbstract {
 
 					network.writeInt(((OTransaction) iTx).getId());
 					network.writeByte((byte) (((OTransaction) iTx).isUsingLog() ? 1 : 0));
+					// DURABILITY: -1 = DEFAULT OF THE SERVER
+					network.writeByte((byte) (iTx.getDurability() != null ? iTx.getDurability().ordinal() : -1));
 
 					final List<ORecordOperation> tmpEntries = new ArrayList<ORecordOperation>();
 
@@ -26,6 +26,7 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 import java.util.Timer;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import com.orientechnologies.common.concur.resource.OSharedResourceAbstract;
@@ -64,6 +65,7 @@ public class Orient extends OSharedResourceAbstract {
 
 	private final OMemoryWatchDog							memoryWatchDog;
 	private static AtomicInteger							serialId							= new AtomicInteger();
+	private static ForkJoinPool								scanPool;
 
 	protected Orient() {
 		// REGISTER THE EMBEDDED ENGINE
@@ -275,6 +277,7 @@ public class Orient extends OSharedResourceAbstract {
 			}
 
 			OMMapManager.shutdown();
+			shutdownScanPool();
 			active = false;
 
 			// STOP ALL THE PENDING THREADS
@@ -292,6 +295,25 @@ public class Orient extends OSharedResourceAbstract {
 		return timer;
 	}
 
+	/**
+	 * Returns the fork/join pool shared by parallel scans, creating it at first use. The number of threads is configured by the
+	 * "storage.scan.parallelism" setting.
+	 */
+	public static synchronized ForkJoinPool getScanPool() {
+		if (scanPool == null) {
+			final int parallelism = OGlobalConfiguration.STORAGE_SCAN_PARALLELISM.getValueAsInteger();
+			scanPool = new ForkJoinPool(parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors());
+		}
+		return scanPool;
+	}
+
+	private static synchronized void shutdownScanPool() {
+		if (scanPool != null) {
+			scanPool.shutdownNow();
+			scanPool = null;
+		}
+	}
+
 	public void removeShutdownHook() {
 		Runtime.getRuntime().removeShutdownHook(shutdownHook);
 	}
@@ -0,0 +1,46 @@
+/*
+ * Copyright 1999-2010 Luca Garulli (l.garulli--at--orientechnologies.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.orientechnologies.orient.core.compression;
+
+/**
+ * Codec used to compress the record content stored in data segments. Implementations must be stateless and thread-safe.
+ *
+ * @see OCompressionFactory
+ */
+public interface OCompression {
+
+	/**
+	 * Returns the name used to configure the codec on clusters.
+	 */
+	public String getName();
+
+	/**
+	 * Returns the identifier written in front of every record compressed by this codec. 0 is reserved to raw records.
+	 */
+	public byte getId();
+
+	/**
+	 * Compresses the content.
+	 *
+	 * @return The compressed content or null if it is not smaller than the original one
+	 */
+	public byte[] compress(byte[] iContent);
+
+	/**
+	 * Uncompresses iLength bytes of iContent starting from iOffset.
+	 */
+	public byte[] uncompress(byte[] iContent, int iOffset, int iLength);
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright 1999-2010 Luca Garulli (l.garulli--at--orientechnologies.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.orientechnologies.orient.core.compression;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.orientechnologies.orient.core.exception.OConfigurationException;
+
+/**
+ * Factory of record compression codecs. Codecs are registered by name, used in cluster configuration, and by id, written in
+ * front of every compressed record.
+ *
+ */
+public class OCompressionFactory {
+	public static final String								NONE						= "none";
+
+	private static final OCompressionFactory	instance				= new OCompressionFactory();
+
+	private final Map<String, OCompression>		implementations	= new HashMap<String, OCompression>();
+	private volatile OCompression[]						byId						= new OCompression[Byte.MAX_VALUE + 1];
+
+	public OCompressionFactory() {
+		register(new OLZCompression());
+	}
+
+	/**
+	 * Registers a compression codec.
+	 *
+	 * @param iInstance
+	 *          Codec implementation. Its id must be positive and not already used by another codec
+	 */
+	public synchronized void register(final OCompression iInstance) {
+		final byte id = iInstance.getId();
+		if (id <= 0)
+			throw new OConfigurationException("Invalid id " + id + " for compression '" + iInstance.getName() + "'");
+
+		if (byId[id] != null && !byId[id].getName().equals(iInstance.getName()))
+			throw new OConfigurationException("Compression id " + id + " is already used by '" + byId[id].getName() + "'");
+
+		implementations.put(iInstance.getName(), iInstance);
+
+		// COPY ON WRITE: LOOKUPS BY ID ARE EXECUTED AT EVERY RECORD READ WITHOUT LOCKING
+		final OCompression[] newById = byId.clone();
+		newById[id] = iInstance;
+		byId = newById;
+	}
+
+	public synchronized Collection<OCompression> getCompressions() {
+		return implementations.values();
+	}
+
+	/**
+	 * Returns the codec by name.
+	 *
+	 * @return The codec or null if iName is null or "none"
+	 * @throws OConfigurationException
+	 *           if the codec is unknown
+	 */
+	public synchronized OCompression getCompression(final String iName) {
+		if (iName == null || iName.equalsIgnoreCase(NONE))
+			return null;
+
+		final OCompression compression = implementations.get(iName.toLowerCase());
+		if (compression == null)
+			throw new OConfigurationException("Compression '" + iName + "' is not supported. Available are: "
+					+ implementations.keySet());
+		return compression;
+	}
+
+	/**
+	 * Returns the codec by the id stored in the record.
+	 */
+	public OCompression getCompression(final byte iId) {
+		final OCompression compression = iId > 0 ? byId[iId] : null;
+		if (compression == null)
+			throw new OConfigurationException("Compression with id " + iId + " is not registered");
+		return compression;
+	}
+
+	public static OCompressionFactory instance() {
+		return instance;
+	}
+}
@@ -0,0 +1,209 @@
+/*
+ * Copyright 1999-2010 Luca Garulli (l.garulli--at--orientechnologies.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.orientechnologies.orient.core.compression;
+
+import com.orientechnologies.orient.core.exception.OSerializationException;
+import com.orientechnologies.orient.core.serialization.OBinaryProtocol;
+
+/**
+ * Fast LZ77 codec with a single-probe hash table, in the spirit of LZ4. It trades compression ratio for speed and works well
+ * with the textual output of the CSV record serializer.<br/>
+ * <br/>
+ * Compressed structure:<br/>
+ * <br/>
+ * +-------------------+-----------+-----------+-----------+<br/>
+ * | UNCOMPRESSED SIZE | SEQUENCE  | SEQUENCE  | ......... |<br/>
+ * | 4 bytes ......... | ......... | ......... | ......... |<br/>
+ * +-------------------+-----------+-----------+-----------+<br/>
+ * <br/>
+ * Every sequence is a token byte, with the literal length in the high nibble and the match length - 4 in the low one, the
+ * literals, the 2 bytes match offset and the match length overflow. Lengths of 15 continue in the following bytes, each one
+ * adding up to 255. The last sequence has only literals.
+ */
+public class OLZCompression implements OCompression {
+	public static final String	NAME				= "lz";
+	public static final byte		ID					= 1;
+
+	private static final int		MIN_MATCH		= 4;
+	private static final int		MAX_OFFSET	= 0xFFFF;
+	private static final int		HASH_BITS		= 12;
+
+	public String getName() {
+		return NAME;
+	}
+
+	public byte getId() {
+		return ID;
+	}
+
+	public byte[] compress(final byte[] iContent) {
+		final int length = iContent.length;
+		if (length < MIN_MATCH * 2)
+			return null;
+
+		// WORST CASE IS ALL LITERALS: GIVE UP AS SOON AS THE OUTPUT IS NOT SMALLER THAN THE INPUT
+		final int maxOutput = length;
+		final byte[] out = new byte[maxOutput + length / 255 + 16];
+		OBinaryProtocol.int2bytes(length, out, 0);
+		int op = OBinaryProtocol.SIZE_INT;
+
+		final int[] table = new int[1 << HASH_BITS];
+		final int matchLimit = length - MIN_MATCH;
+
+		int anchor = 0;
+		int ip = 0;
+		while (ip <= matchLimit) {
+			final int h = hash(iContent, ip);
+			final int ref = table[h] - 1;
+			table[h] = ip + 1;
+
+			if (ref < 0 || ip - ref > MAX_OFFSET || !equals4(iContent, ref, ip)) {
+				ip++;
+				continue;
+			}
+
+			// EXTEND THE MATCH
+			int matchLength = MIN_MATCH;
+			while (ip + matchLength < length && iContent[ref + matchLength] == iContent[ip + matchLength])
+				matchLength++;
+
+			op = writeSequence(iContent, anchor, ip - anchor, ip - ref, matchLength, out, op);
+			if (op >= maxOutput)
+				return null;
+
+			ip += matchLength;
+			anchor = ip;
+		}
+
+		// LAST LITERALS
+		op = writeSequence(iContent, anchor, length - anchor, 0, 0, out, op);
+		if (op >= maxOutput)
+			return null;
+
+		final byte[] result = new byte[op];
+		System.arraycopy(out, 0, result, 0, op);
+		return result;
+	}
+
+	public byte[] uncompress(final byte[] iContent, final int iOffset, final int iLength) {
+		final int end = iOffset + iLength;
+		final byte[] out = new byte[OBinaryProtocol.bytes2int(iContent, iOffset)];
+
+		int ip = iOffset + OBinaryProtocol.SIZE_INT;
+		int op = 0;
+		try {
+			while (ip < end) {
+				final int token = iContent[ip++] & 0xFF;
+
+				// LITERALS
+				int literals = token >>> 4;
+				if (literals == 15) {
+					int b;
+					do {
+						b = iContent[ip++] & 0xFF;
+						literals += b;
+					} while (b == 255);
+				}
+				System.arraycopy(iContent, ip, out, op, literals);
+				ip += literals;
+				op += literals;
+
+				if (ip >= end)
+					// LAST SEQUENCE
+					break;
+
+				// MATCH
+				final int offset = (iContent[ip++] & 0xFF) | (iContent[ip++] & 0xFF) << 8;
+				int matchLength = token & 0x0F;
+				if (matchLength == 15) {
+					int b;
+					do {
+						b = iContent[ip++] & 0xFF;
+						matchLength += b;
+					} while (b == 255);
+				}
+				matchLength += MIN_MATCH;
+
+				// COPY BYTE BY BYTE: SOURCE AND TARGET CAN OVERLAP
+				int ref = op - offset;
+				if (ref < 0)
+					throw new OSerializationException("Corrupted compressed content: invalid offset " + offset + " at position " + op);
+				for (int i = 0; i < matchLength; ++i)
+					out[op++] = out[ref++];
+			}
+		} catch (IndexOutOfBoundsException e) {
+			throw new OSerializationException("Corrupted compressed content", e);
+		}
+
+		if (op != out.length)
+			throw new OSerializationException("Corrupted compressed content: expected " + out.length + " bytes but found " + op);
+
+		return out;
+	}
+
+	private int writeSequence(final byte[] iSource, final int iLiteralOffset, final int iLiterals, final int iMatchOffset,
+			final int iMatchLength, final byte[] iOut, int iPos) {
+		final int matchCode = iMatchLength > 0 ? iMatchLength - MIN_MATCH : 0;
+
+		iOut[iPos++] = (byte) ((Math.min(iLiterals, 15) << 4) | Math.min(matchCode, 15));
+
+		if (iLiterals >= 15)
+			iPos = writeLength(iLiterals - 15, iOut, iPos);
+
+		if (iPos + iLiterals > iOut.length)
+			// NO ROOM: THE OUTPUT IS ALREADY BIGGER THAN THE INPUT
+			return iOut.length;
+
+		System.arraycopy(iSource, iLiteralOffset, iOut, iPos, iLiterals);
+		iPos += iLiterals;
+
+		if (iMatchLength > 0) {
+			if (iPos + 2 > iOut.length)
+				return iOut.length;
+
+			iOut[iPos++] = (byte) iMatchOffset;
+			iOut[iPos++] = (byte) (iMatchOffset >>> 8);
+
+			if (matchCode >= 15)
+				iPos = writeLength(matchCode - 15, iOut, iPos);
+		}
+		return iPos;
+	}
+
+	private int writeLength(int iLength, final byte[] iOut, int iPos) {
+		while (iLength >= 255) {
+			if (iPos >= iOut.length)
+				return iOut.length;
+			iOut[iPos++] = (byte) 255;
+			iLength -= 255;
+		}
+		if (iPos >= iOut.length)
+			return iOut.length;
+		iOut[iPos++] = (byte) iLength;
+		return iPos;
+	}
+
+	private static int hash(final byte[] iBuffer, final int iPos) {
+		final int value = (iBuffer[iPos] & 0xFF) | (iBuffer[iPos + 1] & 0xFF) << 8 | (iBuffer[iPos + 2] & 0xFF) << 16
+				| (iBuffer[iPos + 3] & 0xFF) << 24;
+		return (value * -1640531535) >>> (32 - HASH_BITS);
+	}
+
+	private static boolean equals4(final byte[] iBuffer, final int iPos1, final int iPos2) {
+		return iBuffer[iPos1] == iBuffer[iPos2] && iBuffer[iPos1 + 1] == iBuffer[iPos2 + 1] && iBuffer[iPos1 + 2] == iBuffer[iPos2 + 2]
+				&& iBuffer[iPos1 + 3] == iBuffer[iPos2 + 3];
+	}
+}
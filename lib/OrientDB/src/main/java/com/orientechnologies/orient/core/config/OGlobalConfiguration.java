@@ -55,9 +55,46 @@ public enum OGlobalConfiguration {
 			"Tells to the engine to not close the storage when a database is closed. Storages will be closed when the process shuts down",
 			Boolean.class, Boolean.TRUE),
 
+	STORAGE_LAZY_OPEN("storage.lazyOpen",
+			"Opens the files of clusters and data segments at first access instead of when the storage is opened", Boolean.class,
+			Boolean.FALSE),
+
 	STORAGE_RECORD_LOCK_TIMEOUT("storage.record.lockTimeout", "Maximum timeout in milliseconds to lock a shared record",
 			Integer.class, 5000),
 
+	STORAGE_COMPRESSION_MIN_SIZE("storage.compression.minSize",
+			"Minimum size in bytes of records to compress in clusters with compression enabled. Smaller records are stored raw",
+			Integer.class, 128),
+
+	STORAGE_CLUSTER_POSITION_CACHE("storage.cluster.positionCache",
+			"Comma separated names of the physical clusters whose entries are cached in memory to resolve the record positions without reading the cluster files. '*' = all the clusters",
+			String.class, ""),
+
+	STORAGE_CLUSTER_RESERVATION_SIZE("storage.cluster.reservationSize",
+			"Number of entries reserved at once at the end of the physical clusters and handed out without locking when records are created and no hole is available. 0 = disabled",
+			Integer.class, 0),
+
+	STORAGE_DATA_SEGMENT_STRATEGY("storage.dataSegment.strategy",
+			"Strategy to choose the data segment of new records: 'default', 'roundRobin' or 'sizeBalanced'", String.class, "default"),
+
+	STORAGE_SCAN_PREFETCH_SIZE(
+			"storage.scan.prefetchSize",
+			"Number of records read ahead in batch, in data segment order, when clusters are browsed forward. 0 = disabled: records are read one by one",
+			Integer.class, 0),
+
+	STORAGE_SCAN_PARALLELISM("storage.scan.parallelism",
+			"Number of threads of the fork/join pool used by parallel scans. 0 = number of available processors", Integer.class, 0),
+
+	STORAGE_COMPACTION_MAX_SPEED("storage.compaction.maxSpeed",
+			"Maximum bytes per second moved by the online compaction of data segments. 0 = no limit", Integer.class, 1048576),
+
+	STORAGE_MEMORY_OFFHEAP("storage.memory.offHeap",
+			"Keeps the records of memory storages out of the Java heap, in direct memory slabs, with lock-free reads", Boolean.class,
+			Boolean.FALSE),
+
+	STORAGE_MEMORY_SLAB_SIZE("storage.memory.slabSize", "Size in bytes of the direct memory slabs used by off-heap memory storages",
+			Integer.class, 1048576),
+
 	// CACHE
 	CACHE_LEVEL1_ENABLED("cache.level1.enabled", "Use the level-1 cache", Boolean.class, true),
 
@@ -101,10 +138,60 @@ public enum OGlobalConfiguration {
 
 	TX_COMMIT_SYNCH("tx.commit.synch", "Synchronizes the storage after transaction commit", Boolean.class, false),
 
+	TX_DURABILITY("tx.durability",
+			"Default durability of transactions: 'memory', 'async', 'log' or 'full'. If empty is computed from tx.commit.synch and tx.log.synch",
+			String.class, ""),
+
+	TX_DURABILITY_ASYNCH_DELAY("tx.durability.asynchDelay",
+			"Maximum delay in ms to flush the storage after the commit of transactions with 'async' durability", Integer.class, 1000),
+
 	// GRAPH
 	BLUEPRINTS_TX_MODE("blueprints.graph.txMode",
 			"Transaction mode used in TinkerPop Blueprints implementation. 0 = Automatic (default), 1 = Manual", Integer.class, 0),
 
+	// INDEX
+	INDEX_LAZY_LOAD("index.lazyLoad", "Loads the trees of indexes at first use instead of when the database is opened", Boolean.class,
+			Boolean.FALSE),
+
+	INDEX_HASH_BUCKET_SIZE("index.hash.bucketSize",
+			"Entries per bucket of new hash indexes. Buckets are split when the average load exceeds 75%", Integer.class, 64),
+
+	INDEX_REBUILD_SORTED("index.rebuild.sorted",
+			"Rebuilds the tree indexes by sorting the keys and building the tree bottom-up instead of inserting the keys one by one",
+			Boolean.class, Boolean.TRUE),
+
+	INDEX_REBUILD_SORT_BUFFER("index.rebuild.sortBuffer",
+			"Number of keys sorted in memory by the rebuild of indexes before writing them in a temporary file", Integer.class, 500000),
+
+	INDEX_REBUILD_FILL_FACTOR("index.rebuild.fillFactor",
+			"Ratio of the tree nodes filled by the rebuild of indexes. Lower values leave room for the next inserts", Float.class, 0.9f),
+
+	INDEX_PRIMITIVE_KEYS("index.primitiveKeys",
+			"New indexes with one key of type integer, long, date or datetime keep the keys as primitive values in the tree nodes",
+			Boolean.class, Boolean.FALSE),
+
+	INDEX_COMPRESSED_STRING_KEYS("index.compressedStringKeys",
+			"New indexes with one key of type string store the keys front-coded, writing only the part that differs from the previous key",
+			Boolean.class, Boolean.FALSE),
+
+	INDEX_CURSOR_BATCH_SIZE("index.cursor.batchSize",
+			"Number of entries read by index cursors every time they lock the index. The lock is released while the entries are consumed",
+			Integer.class, 100),
+
+	INDEX_STATISTICS("index.statistics",
+			"Keeps the statistics of the indexes, computed when they are rebuilt or flushed, and uses them to choose the cheapest index for a query, or to scan the clusters when cheaper",
+			Boolean.class, Boolean.TRUE),
+
+	INDEX_STATISTICS_BUCKETS("index.statistics.buckets",
+			"Number of buckets of the histogram of the keys kept by the statistics of an index", Integer.class, 32),
+
+	INDEX_STATISTICS_REFRESH("index.statistics.refresh",
+			"Percentage of the entries of an index added or removed after which its histogram is no longer used, until it's computed again at the next flush of the index",
+			Integer.class, 10),
+
+	INDEX_STATISTICS_LOAD_COST("index.statistics.loadCost",
+			"Cost of loading a record found by an index compared to reading a record during the scan of a cluster", Float.class, 4f),
+
 	// TREEMAP
 	MVRBTREE_TIMEOUT("mvrbtree.timeout", "Maximum timeout to get lock against the OMVRB-Tree", Integer.class, 1000),
 
@@ -202,6 +289,25 @@ public enum OGlobalConfiguration {
 	FILE_MMAP_FORCE_RETRY("file.mmap.forceRetry", "Number of times the memory-mapped block will try to flush to disk", Integer.class,
 			50),
 
+	FILE_MMAP_FLUSH_INTERVAL(
+			"file.mmap.flushInterval",
+			"Interval in ms between background flushes of dirty memory-mapped blocks. 0 = disabled: blocks are flushed only on synch, commit and eviction",
+			Integer.class, 0, new OConfigurationChangeCallback() {
+				public void change(final Object iCurrentValue, final Object iNewValue) {
+					OMMapManager.setFlushInterval((Integer) iNewValue);
+				}
+			}),
+
+	FILE_MMAP_FLUSH_MAX_BLOCKS("file.mmap.flushMaxBlocks",
+			"Maximum number of dirty memory-mapped blocks written back by the background flusher at every interval", Integer.class, 16),
+
+	FILE_CLASSIC_PAGE_CACHE_SIZE(
+			"file.classic.pageCache.size",
+			"Memory in bytes of the page cache shared by the files of type 'classic'. 0 = disabled: every read and write is executed against the file channel",
+			Long.class, 0),
+
+	FILE_CLASSIC_PAGE_SIZE("file.classic.pageSize", "Size in bytes of each page of the classic files page cache", Integer.class, 4096),
+
 	// NETWORK
 	NETWORK_SOCKET_BUFFER_SIZE("network.socketBufferSize", "TCP/IP Socket buffer size", Integer.class, 32768),
 
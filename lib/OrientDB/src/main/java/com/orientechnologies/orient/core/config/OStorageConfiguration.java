@@ -19,6 +19,7 @@ import java.io.IOException;
 import java.text.DecimalFormatSymbols;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
 
@@ -33,7 +34,7 @@ import com.orientechnologies.orient.core.storage.OStorage;
 public class OStorageConfiguration implements OSerializableStream {
 	public static final ORecordId							CONFIG_RID			= new ORecordId(0, 0);
 
-	public static final int										CURRENT_VERSION	= 2;
+	public static final int										CURRENT_VERSION	= 3;
 
 	public int																version					= -1;
 	public String															name;
@@ -117,6 +118,35 @@ public class OStorageConfiguration implements OSerializableStream {
 		return unusualSymbols;
 	}
 
+	/**
+	 * Returns the value of a property of the storage, or null if it is not set.
+	 */
+	public String getProperty(final String iName) {
+		for (OStorageEntryConfiguration e : properties)
+			if (e.name.equals(iName))
+				return e.value;
+		return null;
+	}
+
+	/**
+	 * Sets a property of the storage, or removes it if iValue is null. Call update() to save it.
+	 */
+	public void setProperty(final String iName, final String iValue) {
+		for (Iterator<OStorageEntryConfiguration> it = properties.iterator(); it.hasNext();) {
+			final OStorageEntryConfiguration e = it.next();
+			if (e.name.equals(iName)) {
+				if (iValue == null)
+					it.remove();
+				else
+					e.value = iValue;
+				return;
+			}
+		}
+
+		if (iValue != null)
+			properties.add(new OStorageEntryConfiguration(iName, iValue));
+	}
+
 	public OSerializableStream fromStream(final byte[] iStream) throws OSerializationException {
 		final String[] values = new String(iStream).split("\\|");
 		int index = 0;
@@ -169,6 +199,11 @@ public class OStorageConfiguration implements OSerializableStream {
 				index = phySegmentFromStream(values, index, phyCluster);
 				phyCluster.holeFile = new OStorageClusterHoleConfiguration(phyCluster, read(values[index++]), read(values[index++]),
 						read(values[index++]));
+
+				// @COMPATIBILTY
+				if (version > 2)
+					phyCluster.compression = read(values[index++]);
+
 				currentCluster = phyCluster;
 			} else if (clusterType.equals("l"))
 				// LOGICAL CLUSTER
@@ -248,6 +283,7 @@ public class OStorageConfiguration implements OSerializableStream {
 				write(buffer, "p");
 				phySegmentToStream(buffer, (OStoragePhysicalClusterConfiguration) c);
 				fileToStream(buffer, ((OStoragePhysicalClusterConfiguration) c).holeFile);
+				write(buffer, ((OStoragePhysicalClusterConfiguration) c).compression);
 			} else if (c instanceof OStorageLogicalClusterConfiguration) {
 				// LOGICAL
 				write(buffer, "l");
@@ -29,6 +29,12 @@ public class OStorageSegmentConfiguration {
 
 	public OStorageFileConfiguration[]			infoFiles;
 
+	/**
+	 * Directory where to create the files of the segment, null to use the storage directory. It's not saved in the configuration:
+	 * once the first file is created, the next ones are created in its directory.
+	 */
+	public transient String									location;
+
 	public OStorageSegmentConfiguration() {
 		infoFiles = new OStorageFileConfiguration[0];
 	}
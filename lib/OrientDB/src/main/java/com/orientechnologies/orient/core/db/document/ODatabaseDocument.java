@@ -18,6 +18,7 @@ package com.orientechnologies.orient.core.db.document;
 import com.orientechnologies.orient.core.db.ODatabaseSchemaAware;
 import com.orientechnologies.orient.core.db.record.ODatabaseRecord;
 import com.orientechnologies.orient.core.iterator.ORecordIteratorClass;
+import com.orientechnologies.orient.core.iterator.ORecordIteratorClassParallel;
 import com.orientechnologies.orient.core.record.ORecordInternal;
 import com.orientechnologies.orient.core.record.impl.ODocument;
 
@@ -51,4 +52,17 @@ public interface ODatabaseDocument extends ODatabaseRecord, ODatabaseSchemaAware
 	 * @return Iterator of ODocument instances
 	 */
 	public ORecordIteratorClass<ODocument> browseClass(String iClassName, boolean iPolymorphic);
+
+	/**
+	 * Browses all the records of the specified class and if iPolymorphic is true also all the subclasses, reading the clusters in
+	 * parallel. Records are returned in the order they are read unless the iterator is set as ordered.
+	 * 
+	 * @param iClassName
+	 *          Class name to iterate
+	 * @param iPolymorphic
+	 *          Consider also the instances of the subclasses or not
+	 * @return Iterator of ODocument instances
+	 * @see ORecordIteratorClassParallel
+	 */
+	public ORecordIteratorClassParallel<ODocument> browseClassParallel(String iClassName, boolean iPolymorphic);
 }
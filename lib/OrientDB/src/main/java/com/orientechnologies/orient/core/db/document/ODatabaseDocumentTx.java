@@ -24,6 +24,7 @@ import com.orientechnologies.orient.core.exception.OConcurrentModificationExcept
 import com.orientechnologies.orient.core.exception.ODatabaseException;
 import com.orientechnologies.orient.core.exception.OValidationException;
 import com.orientechnologies.orient.core.iterator.ORecordIteratorClass;
+import com.orientechnologies.orient.core.iterator.ORecordIteratorClassParallel;
 import com.orientechnologies.orient.core.iterator.ORecordIteratorCluster;
 import com.orientechnologies.orient.core.metadata.schema.OClass;
 import com.orientechnologies.orient.core.metadata.security.ODatabaseSecurityResources;
@@ -67,6 +68,15 @@ public class ODatabaseDocumentTx extends ODatabaseRecordWrapperAbstract<ODatabas
 		return new ORecordIteratorClass<ODocument>(this, underlying, iClassName, iPolymorphic);
 	}
 
+	public ORecordIteratorClassParallel<ODocument> browseClassParallel(final String iClassName, final boolean iPolymorphic) {
+		if (getMetadata().getSchema().getClass(iClassName) == null)
+			throw new IllegalArgumentException("Class '" + iClassName + "' not found in current database");
+
+		checkSecurity(ODatabaseSecurityResources.CLASS, ORole.PERMISSION_READ, iClassName);
+
+		return new ORecordIteratorClassParallel<ODocument>(this, underlying, iClassName, iPolymorphic);
+	}
+
 	@Override
 	public ORecordIteratorCluster<ODocument> browseCluster(final String iClusterName) {
 		checkSecurity(ODatabaseSecurityResources.CLUSTER, ORole.PERMISSION_READ, iClusterName);
@@ -497,6 +497,17 @@ public abstract class ODatabaseRecordAbstract extends ODatabaseWrapperAbstract<O
 
 	public <RET extends ORecordInternal<?>> RET executeReadRecord(final ORecordId iRid, ORecordInternal<?> iRecord,
 			final String iFetchPlan, final boolean iIgnoreCache) {
+		return (RET) executeReadRecord(iRid, iRecord, iFetchPlan, iIgnoreCache, null);
+	}
+
+	/**
+	 * Loads the record using the content already read from the storage, if any. Used by iterators that read records in batch.
+	 * 
+	 * @param iPrefetched
+	 *          Record content already read from the storage. If null the record is read from the storage
+	 */
+	public <RET extends ORecordInternal<?>> RET executeReadRecord(final ORecordId iRid, ORecordInternal<?> iRecord,
+			final String iFetchPlan, final boolean iIgnoreCache, final ORawBuffer iPrefetched) {
 		checkOpeness();
 
 		// setCurrentDatabaseinThreadLocal();
@@ -530,7 +541,13 @@ public abstract class ODatabaseRecordAbstract extends ODatabaseWrapperAbstract<O
 				return (RET) record;
 			}
 
-			final ORawBuffer recordBuffer = underlying.read(iRid, iFetchPlan);
+			final ORawBuffer recordBuffer;
+			if (iPrefetched != null) {
+				OFetchHelper.checkFetchPlanValid(iFetchPlan);
+				recordBuffer = iPrefetched;
+			} else
+				recordBuffer = underlying.read(iRid, iFetchPlan);
+
 			if (recordBuffer == null)
 				return null;
 
@@ -20,16 +20,17 @@ import java.util.List;
 import java.util.Map.Entry;
 import java.util.concurrent.Callable;
 
+import com.orientechnologies.common.concur.resource.OSharedResourceAdaptiveExternal;
 import com.orientechnologies.common.log.OLogManager;
 import com.orientechnologies.orient.core.db.ODatabaseListener;
 import com.orientechnologies.orient.core.exception.OTransactionException;
 import com.orientechnologies.orient.core.id.ORID;
 import com.orientechnologies.orient.core.index.OIndex;
-import com.orientechnologies.orient.core.index.OIndexMVRBTreeAbstract;
 import com.orientechnologies.orient.core.record.ORecordInternal;
 import com.orientechnologies.orient.core.record.impl.ODocument;
 import com.orientechnologies.orient.core.storage.OStorageEmbedded;
 import com.orientechnologies.orient.core.tx.OTransaction;
+import com.orientechnologies.orient.core.tx.OTransaction.DURABILITY;
 import com.orientechnologies.orient.core.tx.OTransaction.TXSTATUS;
 import com.orientechnologies.orient.core.tx.OTransaction.TXTYPE;
 import com.orientechnologies.orient.core.tx.OTransactionNoTx;
@@ -41,6 +42,7 @@ import com.orientechnologies.orient.core.tx.OTransactionOptimistic;
  */
 public class ODatabaseRecordTx extends ODatabaseRecordAbstract {
 	private OTransaction	currentTx;
+	private DURABILITY		durability;
 
 	public ODatabaseRecordTx(final String iURL, final byte iRecordType) {
 		super(iURL, iRecordType);
@@ -180,6 +182,28 @@ public class ODatabaseRecordTx extends ODatabaseRecordAbstract {
 		return currentTx;
 	}
 
+	/**
+	 * Returns the durability of the transactions committed by this database instance, unless overridden by the transaction. Null
+	 * means the default of the storage.
+	 * 
+	 * @see OTransaction#setDurability(DURABILITY)
+	 * @see com.orientechnologies.orient.core.storage.impl.local.OStorageLocal#setDefaultDurability(DURABILITY)
+	 */
+	public DURABILITY getDurability() {
+		return durability;
+	}
+
+	/**
+	 * Sets the durability of the transactions committed by this database instance. It's not saved: it lasts as long as this
+	 * instance and doesn't change the other instances opened on the same storage. To change the durability of the database for
+	 * every session use {@link com.orientechnologies.orient.core.storage.impl.local.OStorageLocal#setDefaultDurability(DURABILITY)}.
+	 * Null to use the default of the storage.
+	 */
+	public ODatabaseRecordTx setDurability(final DURABILITY iDurability) {
+		durability = iDurability;
+		return this;
+	}
+
 	@SuppressWarnings("unchecked")
 	@Override
 	public <RET extends ORecordInternal<?>> RET load(final ORecordInternal<?> iRecord, final String iFetchPlan) {
@@ -249,14 +273,14 @@ public class ODatabaseRecordTx extends ODatabaseRecordAbstract {
 			final List<String> involvedIndexes = currentTx.getInvolvedIndexes();
 
 			// LOCK INVOLVED INDEXES
-			List<OIndexMVRBTreeAbstract<?>> lockedIndexes = null;
+			List<OSharedResourceAdaptiveExternal> lockedIndexes = null;
 			try {
 				if (involvedIndexes != null)
 					for (String indexName : involvedIndexes) {
-						final OIndexMVRBTreeAbstract<?> index = (OIndexMVRBTreeAbstract<?>) getMetadata().getIndexManager().getIndexInternal(
-								indexName);
+						final OSharedResourceAdaptiveExternal index = (OSharedResourceAdaptiveExternal) getMetadata().getIndexManager()
+								.getIndexInternal(indexName);
 						if (lockedIndexes == null)
-							lockedIndexes = new ArrayList<OIndexMVRBTreeAbstract<?>>();
+							lockedIndexes = new ArrayList<OSharedResourceAdaptiveExternal>();
 
 						index.acquireExclusiveLock();
 						lockedIndexes.add(index);
@@ -283,8 +307,7 @@ public class ODatabaseRecordTx extends ODatabaseRecordAbstract {
 			} finally {
 				// RELEASE INDEX LOCKS IF ANY
 				if (lockedIndexes != null)
-					// DON'T USE GENERICS TO AVOID OpenJDK CRASH :-(
-					for (OIndexMVRBTreeAbstract index : lockedIndexes) {
+					for (OSharedResourceAdaptiveExternal index : lockedIndexes) {
 						index.releaseExclusiveLock();
 					}
 			}
@@ -0,0 +1,399 @@
+/*
+ * Copyright 1999-2010 Luca Garulli (l.garulli--at--orientechnologies.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.orientechnologies.orient.core.db.tool;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import com.orientechnologies.common.profiler.OProfiler;
+import com.orientechnologies.orient.core.command.OCommandOutputListener;
+import com.orientechnologies.orient.core.config.OStorageClusterConfiguration;
+import com.orientechnologies.orient.core.config.OStorageConfiguration;
+import com.orientechnologies.orient.core.config.OStoragePhysicalClusterConfiguration;
+import com.orientechnologies.orient.core.db.record.ODatabaseRecord;
+import com.orientechnologies.orient.core.exception.ODatabaseException;
+import com.orientechnologies.orient.core.id.ORecordId;
+import com.orientechnologies.orient.core.storage.OCluster;
+import com.orientechnologies.orient.core.storage.OPhysicalPosition;
+import com.orientechnologies.orient.core.storage.ORawBuffer;
+import com.orientechnologies.orient.core.storage.impl.local.OClusterLocal;
+import com.orientechnologies.orient.core.storage.impl.local.ODataLocal;
+import com.orientechnologies.orient.core.storage.impl.local.OStorageLocal;
+
+/**
+ * Binary backup of local databases in a directory. The first backup copies all the records in a full archive, the next ones
+ * write delta archives with only the records created, updated or deleted since the previous backup. Archives are restored by
+ * {@link ODatabaseRestore}.<br/>
+ * <br/>
+ * Changes are detected by comparing every physical position with the fingerprint (version, data segment, offset and type) it
+ * had at the previous backup, kept in the "backup.manifest" file of the directory. The manifest is merged with the clusters
+ * sequentially, so the memory used doesn't depend on the database size. A record deleted and created again in the same position
+ * with the same fingerprint between two backups is not detected: take a full backup from time to time.<br/>
+ * <br/>
+ * The database remains writable during the backup since records are read one by one without locking the storage: changes made
+ * while the backup is in progress could be only partially contained in the archive and will be saved by the next backup.
+ *
+ * @see ODatabaseRestore
+ */
+public class ODatabaseBackup {
+	public static final String					MANIFEST_FILE		= "backup.manifest";
+	public static final String					ARCHIVE_PREFIX	= "backup-";
+	public static final String					ARCHIVE_SUFFIX	= ".obk";
+
+	static final int										MAGIC						= 0x4f424b50;
+	static final int										FORMAT_VERSION	= 1;
+	static final byte										TYPE_FULL				= 0;
+	static final byte										TYPE_DELTA			= 1;
+	static final byte										OP_END					= 0;
+	static final byte										OP_PUT					= 1;
+	static final byte										OP_DELETE				= 2;
+
+	private static final Pattern				ARCHIVE_PATTERN	= Pattern.compile(ARCHIVE_PREFIX + "(\\d+)\\" + ARCHIVE_SUFFIX);
+
+	private final ODatabaseRecord				database;
+	private final OStorageLocal					storage;
+	private final File									directory;
+	private final OCommandOutputListener	listener;
+	private boolean											full;
+
+	private DataInputStream							previous;
+	private int													previousClusterId;
+	private String											previousClusterName;
+	private long												previousEntries;
+
+	public ODatabaseBackup(final ODatabaseRecord iDatabase, final String iDirectory, final OCommandOutputListener iListener) {
+		if (!(iDatabase.getStorage() instanceof OStorageLocal))
+			throw new ODatabaseException("Binary backup is supported only by local databases");
+
+		database = iDatabase;
+		storage = (OStorageLocal) iDatabase.getStorage();
+		directory = new File(iDirectory);
+		listener = iListener;
+	}
+
+	/**
+	 * Forces a full backup even if the directory already contains a previous one.
+	 */
+	public ODatabaseBackup setFull(final boolean iFull) {
+		full = iFull;
+		return this;
+	}
+
+	public boolean isFull() {
+		return full;
+	}
+
+	/**
+	 * Executes the backup.
+	 *
+	 * @return The archive written
+	 */
+	public File backup() throws IOException {
+		final long timer = OProfiler.getInstance().startChrono();
+		final long time = System.currentTimeMillis();
+
+		if (!directory.exists())
+			directory.mkdirs();
+		else if (!directory.isDirectory())
+			throw new ODatabaseException("Cannot backup database '" + database.getName() + "' because '" + directory
+					+ "' is not a directory");
+
+		final File manifest = new File(directory, MANIFEST_FILE);
+		final boolean delta = !full && manifest.exists();
+
+		final List<Integer> sequences = getArchiveSequences(directory);
+		final int sequence = sequences.isEmpty() ? 0 : sequences.get(sequences.size() - 1) + 1;
+
+		final File archive = new File(directory, getArchiveName(sequence));
+		final File archiveTmp = new File(directory, archive.getName() + ".tmp");
+		final File manifestTmp = new File(directory, MANIFEST_FILE + ".tmp");
+
+		listener.onMessage("\nStarted " + (delta ? "incremental" : "full") + " backup of database '" + database.getName() + "' to "
+				+ archive + "...");
+
+		// WRITE THE CHANGES OF THE INDEX TREES KEPT IN MEMORY
+		database.getMetadata().getIndexManager().flush();
+
+		long written = 0;
+		long deleted = 0;
+
+		final DataOutputStream out = new DataOutputStream(new GZIPOutputStream(new BufferedOutputStream(new FileOutputStream(
+				archiveTmp))));
+		final DataOutputStream manifestOut = new DataOutputStream(new GZIPOutputStream(new BufferedOutputStream(
+				new FileOutputStream(manifestTmp))));
+		try {
+			if (delta)
+				openPrevious(manifest);
+
+			writeHeader(out, delta ? TYPE_DELTA : TYPE_FULL, sequence);
+			manifestOut.writeInt(MAGIC);
+			manifestOut.writeInt(FORMAT_VERSION);
+
+			final List<OCluster> clusters = new ArrayList<OCluster>();
+			for (OCluster c : storage.getClusterInstances())
+				if (c != null) {
+					if (!(c instanceof OClusterLocal))
+						throw new ODatabaseException("Cannot backup database '" + database.getName() + "' because cluster '" + c.getName()
+								+ "' is not physical");
+					clusters.add(c);
+				}
+			Collections.sort(clusters, new Comparator<OCluster>() {
+				public int compare(final OCluster o1, final OCluster o2) {
+					return o1.getId() - o2.getId();
+				}
+			});
+
+			final ORecordId rid = new ORecordId();
+			final OPhysicalPosition ppos = new OPhysicalPosition();
+
+			for (OCluster c : clusters) {
+				final OClusterLocal cluster = (OClusterLocal) c;
+				listener.onMessage("\n- Cluster '" + cluster.getName() + "' (id=" + cluster.getId() + ")...");
+
+				// MOVE TO THE SAME CLUSTER IN THE PREVIOUS MANIFEST, IF ANY
+				while (previous != null && previousClusterId < cluster.getId())
+					nextPreviousCluster();
+				final boolean known = previous != null && previousClusterId == cluster.getId()
+						&& previousClusterName.equals(cluster.getName());
+
+				out.writeBoolean(true);
+				out.writeInt(cluster.getId());
+				out.writeUTF(cluster.getName());
+				writeString(out, getCompression(cluster.getId()));
+				// A CLUSTER NOT CONTAINED IN THE PREVIOUS BACKUP IS RESTORED FROM SCRATCH
+				out.writeBoolean(!known);
+
+				final long lastPos = cluster.getLastEntryPosition();
+				final long previousTotal = known ? previousEntries : 0;
+				final long total = Math.max(lastPos + 1, previousTotal);
+
+				manifestOut.writeBoolean(true);
+				manifestOut.writeInt(cluster.getId());
+				manifestOut.writeUTF(cluster.getName());
+				manifestOut.writeLong(lastPos + 1);
+
+				long clusterWritten = 0;
+				rid.clusterId = cluster.getId();
+				for (long pos = 0; pos < total; ++pos) {
+					// FINGERPRINT AT THE PREVIOUS BACKUP
+					int oldVersion = -1;
+					int oldSegment = -1;
+					long oldOffset = -1;
+					byte oldType = 0;
+					if (pos < previousTotal) {
+						oldVersion = previous.readInt();
+						oldSegment = previous.readShort();
+						oldOffset = previous.readLong();
+						oldType = previous.readByte();
+					}
+
+					if (pos > lastPos) {
+						// THE CLUSTER HAS BEEN TRUNCATED IN THE MEANTIME
+						if (oldVersion > -1) {
+							writeDelete(out, pos);
+							deleted++;
+						}
+						continue;
+					}
+
+					rid.clusterPosition = pos;
+					cluster.getPhysicalPosition(pos, ppos);
+
+					ORawBuffer buffer = null;
+					if (storage.checkForRecordValidity(ppos)) {
+						if (!known || ppos.version != oldVersion || ppos.dataSegmentId != oldSegment
+								|| ppos.dataChunkPosition != oldOffset || ppos.type != oldType) {
+							buffer = storage.readRecord(rid, null, null);
+							if (buffer == null)
+								// DELETED IN THE MEANTIME
+								ppos.version = -1;
+						}
+					} else
+						ppos.version = -1;
+
+					if (buffer != null) {
+						out.writeByte(OP_PUT);
+						out.writeLong(pos);
+						out.writeInt(buffer.version);
+						out.writeByte(buffer.recordType);
+						out.writeInt(buffer.buffer.length);
+						out.write(buffer.buffer);
+						clusterWritten++;
+					} else if (ppos.version == -1 && oldVersion > -1 && known) {
+						writeDelete(out, pos);
+						deleted++;
+					}
+
+					if (ppos.version == -1) {
+						manifestOut.writeInt(-1);
+						manifestOut.writeShort(-1);
+						manifestOut.writeLong(-1);
+						manifestOut.writeByte(0);
+					} else {
+						// THE FINGERPRINT IS READ BEFORE THE CONTENT: IF THE RECORD CHANGES IN THE MEANTIME IT WILL BE COPIED AGAIN
+						manifestOut.writeInt(ppos.version);
+						manifestOut.writeShort(ppos.dataSegmentId);
+						manifestOut.writeLong(ppos.dataChunkPosition);
+						manifestOut.writeByte(ppos.type);
+					}
+				}
+
+				out.writeByte(OP_END);
+				written += clusterWritten;
+
+				if (known)
+					// ALL THE ENTRIES HAVE BEEN CONSUMED
+					previousEntries = 0;
+
+				listener.onMessage("OK (records=" + clusterWritten + ")");
+			}
+
+			out.writeBoolean(false);
+			manifestOut.writeBoolean(false);
+
+		} finally {
+			out.close();
+			manifestOut.close();
+			if (previous != null) {
+				previous.close();
+				previous = null;
+			}
+		}
+
+		// PUBLISH THE ARCHIVE BEFORE THE MANIFEST: IF THE MANIFEST IS NOT REPLACED THE NEXT BACKUP WILL CONTAIN THE SAME CHANGES AGAIN
+		if (!archiveTmp.renameTo(archive))
+			throw new ODatabaseException("Cannot rename backup archive " + archiveTmp + " to " + archive);
+		manifest.delete();
+		if (!manifestTmp.renameTo(manifest))
+			throw new ODatabaseException("Cannot rename backup manifest " + manifestTmp + " to " + manifest);
+
+		OProfiler.getInstance().stopChrono("db." + database.getName() + ".backup", timer);
+
+		listener.onMessage("\n\nDatabase backup completed in " + (System.currentTimeMillis() - time) + "ms: written " + written
+				+ " records and " + deleted + " deletions\n");
+
+		return archive;
+	}
+
+	/**
+	 * Returns the sequences of the archives contained in the directory, in ascending order.
+	 */
+	public static List<Integer> getArchiveSequences(final File iDirectory) {
+		final List<Integer> sequences = new ArrayList<Integer>();
+
+		final String[] names = iDirectory.list();
+		if (names != null)
+			for (String name : names) {
+				final Matcher matcher = ARCHIVE_PATTERN.matcher(name);
+				if (matcher.matches())
+					sequences.add(Integer.parseInt(matcher.group(1)));
+			}
+
+		Collections.sort(sequences);
+		return sequences;
+	}
+
+	public static String getArchiveName(final int iSequence) {
+		return ARCHIVE_PREFIX + String.format("%04d", iSequence) + ARCHIVE_SUFFIX;
+	}
+
+	private void writeHeader(final DataOutputStream out, final byte iType, final int iSequence) throws IOException {
+		final OStorageConfiguration configuration = storage.getConfiguration();
+
+		out.writeInt(MAGIC);
+		out.writeInt(FORMAT_VERSION);
+		out.writeByte(iType);
+		out.writeInt(iSequence);
+		out.writeLong(System.currentTimeMillis());
+		out.writeLong(storage.getVersion());
+
+		writeString(out, configuration.schemaRecordId);
+		writeString(out, configuration.dictionaryRecordId);
+		writeString(out, configuration.indexMgrRecordId);
+		writeString(out, configuration.localeLanguage);
+		writeString(out, configuration.localeCountry);
+		writeString(out, configuration.dateFormat);
+		writeString(out, configuration.dateTimeFormat);
+
+		final ODataLocal[] dataSegments = storage.getDataSegments();
+		out.writeInt(dataSegments.length);
+		for (ODataLocal data : dataSegments)
+			out.writeUTF(data.getName());
+	}
+
+	private void writeDelete(final DataOutputStream out, final long iPosition) throws IOException {
+		out.writeByte(OP_DELETE);
+		out.writeLong(iPosition);
+	}
+
+	private String getCompression(final int iClusterId) {
+		final List<OStorageClusterConfiguration> configs = storage.getConfiguration().clusters;
+		if (iClusterId < configs.size() && configs.get(iClusterId) instanceof OStoragePhysicalClusterConfiguration)
+			return ((OStoragePhysicalClusterConfiguration) configs.get(iClusterId)).compression;
+		return null;
+	}
+
+	private void openPrevious(final File iManifest) throws IOException {
+		previous = new DataInputStream(new GZIPInputStream(new BufferedInputStream(new FileInputStream(iManifest))));
+		if (previous.readInt() != MAGIC || previous.readInt() != FORMAT_VERSION)
+			throw new ODatabaseException("Backup manifest " + iManifest + " is not valid: execute a full backup");
+		previousEntries = 0;
+		nextPreviousCluster();
+	}
+
+	/**
+	 * Skips the entries of the current cluster of the previous manifest and reads the header of the next one.
+	 */
+	private void nextPreviousCluster() throws IOException {
+		for (; previousEntries > 0; --previousEntries) {
+			previous.readInt();
+			previous.readShort();
+			previous.readLong();
+			previous.readByte();
+		}
+
+		if (previous.readBoolean()) {
+			previousClusterId = previous.readInt();
+			previousClusterName = previous.readUTF();
+			previousEntries = previous.readLong();
+		} else
+			previousClusterId = Integer.MAX_VALUE;
+	}
+
+	static void writeString(final DataOutputStream out, final String iValue) throws IOException {
+		out.writeBoolean(iValue != null);
+		if (iValue != null)
+			out.writeUTF(iValue);
+	}
+
+	static String readString(final DataInputStream in) throws IOException {
+		return in.readBoolean() ? in.readUTF() : null;
+	}
+}
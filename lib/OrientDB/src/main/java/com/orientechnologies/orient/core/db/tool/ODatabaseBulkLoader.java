@@ -0,0 +1,152 @@
+/*
+ * Copyright 1999-2010 Luca Garulli (l.garulli--at--orientechnologies.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.orientechnologies.orient.core.db.tool;
+
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import com.orientechnologies.common.log.OLogManager;
+import com.orientechnologies.orient.core.db.document.ODatabaseDocument;
+import com.orientechnologies.orient.core.exception.ODatabaseException;
+import com.orientechnologies.orient.core.id.ORID;
+import com.orientechnologies.orient.core.id.ORecordId;
+import com.orientechnologies.orient.core.index.OIndex;
+import com.orientechnologies.orient.core.metadata.schema.OClass;
+import com.orientechnologies.orient.core.metadata.security.ODatabaseSecurityResources;
+import com.orientechnologies.orient.core.metadata.security.ORole;
+import com.orientechnologies.orient.core.record.impl.ODocument;
+import com.orientechnologies.orient.core.storage.impl.local.OStorageLocal;
+import com.orientechnologies.orient.core.storage.impl.local.OStorageLocalBulkLoad;
+
+/**
+ * Loads new documents in bulk into local databases. Documents are written through a {@link OStorageLocalBulkLoad} session that
+ * owns the target clusters, so they are not part of any transaction and record hooks are not called. Indexes are not updated
+ * while loading: the indexes of the classes that use the loaded clusters are rebuilt once by {@link #close()}.<br/>
+ * <br/>
+ * Linked documents must be saved before the documents that point to them.
+ */
+public class ODatabaseBulkLoader {
+	private final ODatabaseDocument			database;
+	private final OStorageLocalBulkLoad	bulkLoad;
+	private final Set<Integer>					clusterIds				= new HashSet<Integer>();
+	private boolean											rebuildIndexes		= true;
+
+	public ODatabaseBulkLoader(final ODatabaseDocument iDatabase, final String... iClusterNames) {
+		if (!(iDatabase.getStorage() instanceof OStorageLocal))
+			throw new ODatabaseException("Bulk load is supported only by local databases");
+
+		database = iDatabase;
+
+		final int[] ids = new int[iClusterNames.length];
+		for (int i = 0; i < iClusterNames.length; ++i) {
+			database.checkSecurity(ODatabaseSecurityResources.CLUSTER, ORole.PERMISSION_CREATE, iClusterNames[i]);
+
+			ids[i] = database.getClusterIdByName(iClusterNames[i]);
+			if (ids[i] < 0)
+				throw new IllegalArgumentException("Cluster '" + iClusterNames[i] + "' was not found");
+			clusterIds.add(ids[i]);
+		}
+
+		bulkLoad = ((OStorageLocal) database.getStorage()).beginBulkLoad(ids);
+	}
+
+	/**
+	 * Saves a new document in the default cluster of its class, that must be one of the loaded clusters.
+	 */
+	public ORID save(final ODocument iDocument) {
+		if (iDocument.getSchemaClass() == null)
+			throw new IllegalArgumentException("Cannot bulk load a document without class: specify the cluster");
+
+		return save(iDocument, iDocument.getSchemaClass().getDefaultClusterId());
+	}
+
+	/**
+	 * Saves a new document in one of the loaded clusters.
+	 */
+	public ORID save(final ODocument iDocument, final String iClusterName) {
+		return save(iDocument, database.getClusterIdByName(iClusterName));
+	}
+
+	/**
+	 * Closes the bulk load, then rebuilds the indexes involved.
+	 */
+	public void close() {
+		bulkLoad.close();
+
+		if (rebuildIndexes)
+			for (OIndex<?> index : getIndexesToRebuild().values()) {
+				final long timer = System.currentTimeMillis();
+				final long indexed = index.rebuild();
+				OLogManager.instance().info(this, "Rebuilt index '%s' with %d documents in %dms", index.getName(), indexed,
+						System.currentTimeMillis() - timer);
+			}
+	}
+
+	public boolean isRebuildIndexes() {
+		return rebuildIndexes;
+	}
+
+	/**
+	 * Tells if the indexes of the loaded clusters have to be rebuilt on close. Default is true.
+	 */
+	public ODatabaseBulkLoader setRebuildIndexes(final boolean iRebuildIndexes) {
+		rebuildIndexes = iRebuildIndexes;
+		return this;
+	}
+
+	/**
+	 * Returns the number of documents saved so far.
+	 */
+	public long getRecords() {
+		return bulkLoad.getRecords();
+	}
+
+	protected ORID save(final ODocument iDocument, final int iClusterId) {
+		final ORecordId rid = (ORecordId) iDocument.getIdentity();
+		if (!rid.isNew())
+			throw new IllegalArgumentException("Bulk load can only create new documents, while " + rid + " already exists");
+
+		if (!clusterIds.contains(iClusterId))
+			throw new IllegalArgumentException("Cluster #" + iClusterId + " is not part of the bulk load");
+
+		final byte[] stream = iDocument.toStream();
+
+		iDocument.onBeforeIdentityChanged(rid);
+		rid.clusterId = iClusterId;
+		rid.clusterPosition = bulkLoad.createRecord(iClusterId, stream, iDocument.getRecordType());
+		iDocument.onAfterIdentityChanged(iDocument);
+		iDocument.fill(rid, 0, stream, false);
+
+		return rid;
+	}
+
+	/**
+	 * Returns the indexes of the classes with at least one of the loaded clusters.
+	 */
+	protected Map<String, OIndex<?>> getIndexesToRebuild() {
+		final Map<String, OIndex<?>> indexes = new LinkedHashMap<String, OIndex<?>>();
+		for (OClass cls : database.getMetadata().getSchema().getClasses())
+			for (int clusterId : cls.getPolymorphicClusterIds())
+				if (clusterIds.contains(clusterId)) {
+					for (OIndex<?> index : cls.getClassIndexes())
+						indexes.put(index.getName(), index);
+					break;
+				}
+		return indexes;
+	}
+}
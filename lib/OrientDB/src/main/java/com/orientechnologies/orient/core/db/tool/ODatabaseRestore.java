@@ -0,0 +1,273 @@
+/*
+ * Copyright 1999-2010 Luca Garulli (l.garulli--at--orientechnologies.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.orientechnologies.orient.core.db.tool;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+
+import com.orientechnologies.common.profiler.OProfiler;
+import com.orientechnologies.orient.core.Orient;
+import com.orientechnologies.orient.core.command.OCommandOutputListener;
+import com.orientechnologies.orient.core.config.OStorageConfiguration;
+import com.orientechnologies.orient.core.exception.ODatabaseException;
+import com.orientechnologies.orient.core.id.ORecordId;
+import com.orientechnologies.orient.core.storage.OCluster;
+import com.orientechnologies.orient.core.storage.OStorage;
+import com.orientechnologies.orient.core.storage.impl.local.ODataLocal;
+import com.orientechnologies.orient.core.storage.impl.local.OStorageLocal;
+
+/**
+ * Restores a local database from the archives written by {@link ODatabaseBackup}: the last full archive is restored, then the
+ * following delta archives are applied in order. Records are restored with their original position and version. The database
+ * must not exist.
+ *
+ * @see ODatabaseBackup
+ */
+public class ODatabaseRestore {
+	private final String								url;
+	private final File									directory;
+	private final OCommandOutputListener	listener;
+	private int													lastSequence	= Integer.MAX_VALUE;
+
+	private OStorageLocal								storage;
+
+	public ODatabaseRestore(final String iDatabaseURL, final String iDirectory, final OCommandOutputListener iListener) {
+		url = iDatabaseURL;
+		directory = new File(iDirectory);
+		listener = iListener;
+	}
+
+	/**
+	 * Restores the database as it was at the backup with the sequence received, ignoring the following archives.
+	 */
+	public ODatabaseRestore setLastSequence(final int iLastSequence) {
+		lastSequence = iLastSequence;
+		return this;
+	}
+
+	public int getLastSequence() {
+		return lastSequence;
+	}
+
+	/**
+	 * Executes the restore.
+	 *
+	 * @return The sequence of the last archive applied
+	 */
+	public int restore() throws IOException {
+		final long timer = OProfiler.getInstance().startChrono();
+		final long time = System.currentTimeMillis();
+
+		// FIND THE LAST FULL ARCHIVE
+		final List<Integer> sequences = new ArrayList<Integer>();
+		for (Integer sequence : ODatabaseBackup.getArchiveSequences(directory))
+			if (sequence <= lastSequence) {
+				if (readType(sequence) == ODatabaseBackup.TYPE_FULL)
+					sequences.clear();
+				sequences.add(sequence);
+			}
+
+		if (sequences.isEmpty() || readType(sequences.get(0)) != ODatabaseBackup.TYPE_FULL)
+			throw new ODatabaseException("Cannot restore database '" + url + "' because no full backup was found in " + directory);
+
+		for (int i = 1; i < sequences.size(); ++i)
+			if (sequences.get(i) != sequences.get(i - 1) + 1)
+				throw new ODatabaseException("Cannot restore database '" + url + "' because the archive "
+						+ ODatabaseBackup.getArchiveName(sequences.get(i - 1) + 1) + " is missing in " + directory);
+
+		final OStorage s = Orient.instance().loadStorage(url);
+		if (!(s instanceof OStorageLocal))
+			throw new ODatabaseException("Restore is supported only by local databases");
+		if (s.exists())
+			throw new ODatabaseException("Cannot restore database '" + url + "' because it already exists");
+
+		storage = (OStorageLocal) s;
+		storage.create(null);
+		try {
+
+			for (Integer sequence : sequences)
+				applyArchive(sequence);
+
+		} finally {
+			storage.close(true);
+			storage = null;
+		}
+
+		OProfiler.getInstance().stopChrono("db.restore", timer);
+
+		listener.onMessage("\n\nDatabase restore completed in " + (System.currentTimeMillis() - time) + "ms\n");
+
+		return sequences.get(sequences.size() - 1);
+	}
+
+	private void applyArchive(final int iSequence) throws IOException {
+		final File file = new File(directory, ODatabaseBackup.getArchiveName(iSequence));
+		listener.onMessage("\nRestoring archive " + file + "...");
+
+		final DataInputStream in = openArchive(file);
+		try {
+			final byte type = in.readByte();
+			in.readInt(); // SEQUENCE
+			in.readLong(); // TIMESTAMP
+			in.readLong(); // STORAGE VERSION
+
+			final OStorageConfiguration configuration = storage.getConfiguration();
+			configuration.schemaRecordId = ODatabaseBackup.readString(in);
+			configuration.dictionaryRecordId = ODatabaseBackup.readString(in);
+			configuration.indexMgrRecordId = ODatabaseBackup.readString(in);
+			configuration.localeLanguage = ODatabaseBackup.readString(in);
+			configuration.localeCountry = ODatabaseBackup.readString(in);
+			configuration.dateFormat = ODatabaseBackup.readString(in);
+			configuration.dateTimeFormat = ODatabaseBackup.readString(in);
+
+			final int dataSegments = in.readInt();
+			for (int i = 0; i < dataSegments; ++i) {
+				final String name = in.readUTF();
+				if (getDataSegmentId(name) == -1)
+					storage.addDataSegment(name);
+			}
+
+			final Set<Integer> restoredClusters = new HashSet<Integer>();
+			final ORecordId rid = new ORecordId();
+
+			while (in.readBoolean()) {
+				final int clusterId = in.readInt();
+				final String clusterName = in.readUTF();
+				final String compression = ODatabaseBackup.readString(in);
+				final boolean reset = in.readBoolean() || type == ODatabaseBackup.TYPE_FULL;
+
+				listener.onMessage("\n- Cluster '" + clusterName + "' (id=" + clusterId + ")...");
+
+				if (reset)
+					createCluster(clusterId, clusterName, compression);
+				else if (!clusterName.equals(getClusterName(clusterId)))
+					throw new ODatabaseException("Cannot restore archive " + file + " because cluster #" + clusterId + " is not '"
+							+ clusterName + "'");
+
+				restoredClusters.add(clusterId);
+
+				long records = 0;
+				rid.clusterId = clusterId;
+				for (byte op = in.readByte(); op != ODatabaseBackup.OP_END; op = in.readByte()) {
+					rid.clusterPosition = in.readLong();
+
+					if (op == ODatabaseBackup.OP_PUT) {
+						final int version = in.readInt();
+						final byte recordType = in.readByte();
+						final byte[] content = new byte[in.readInt()];
+						in.readFully(content);
+
+						storage.restoreRecord(rid, content, version, recordType);
+						records++;
+					} else if (op == ODatabaseBackup.OP_DELETE)
+						storage.deleteRecord(rid, -1, 0, null);
+					else
+						throw new ODatabaseException("Archive " + file + " is corrupted: unknown operation " + op);
+				}
+
+				listener.onMessage("OK (records=" + records + ")");
+			}
+
+			// DROP THE CLUSTERS NOT CONTAINED IN THE ARCHIVE
+			for (OCluster c : storage.getClusterInstances())
+				if (c != null && !restoredClusters.contains(c.getId()))
+					storage.dropCluster(c.getId());
+
+			configuration.update();
+
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Creates an empty cluster with the id received, replacing the current one. Placeholder clusters are created to fill the free
+	 * ids before it.
+	 */
+	private void createCluster(final int iClusterId, final String iClusterName, final String iCompression) throws IOException {
+		final Set<Integer> usedIds = new HashSet<Integer>();
+		for (OCluster c : storage.getClusterInstances())
+			if (c != null) {
+				if (c.getId() == iClusterId || c.getName().equals(iClusterName))
+					storage.dropCluster(c.getId());
+				else
+					usedIds.add(c.getId());
+			}
+
+		final List<Integer> placeholders = new ArrayList<Integer>();
+		for (int i = 0; i < iClusterId; ++i)
+			if (!usedIds.contains(i))
+				placeholders.add(storage.addCluster("restore.placeholder." + i, OStorage.CLUSTER_TYPE.PHYSICAL));
+
+		final int clusterId = storage.addCluster(iClusterName, OStorage.CLUSTER_TYPE.PHYSICAL);
+
+		for (Integer id : placeholders)
+			storage.dropCluster(id);
+
+		if (clusterId != iClusterId)
+			throw new ODatabaseException("Cannot restore cluster '" + iClusterName + "' with id " + iClusterId + ": got " + clusterId);
+
+		if (iCompression != null)
+			storage.getClusterById(clusterId).set(OCluster.ATTRIBUTES.COMPRESSION, iCompression);
+	}
+
+	private String getClusterName(final int iClusterId) {
+		for (OCluster c : storage.getClusterInstances())
+			if (c != null && c.getId() == iClusterId)
+				return c.getName();
+		return null;
+	}
+
+	private int getDataSegmentId(final String iName) {
+		for (ODataLocal data : storage.getDataSegments())
+			if (data.getName().equalsIgnoreCase(iName))
+				return data.getId();
+		return -1;
+	}
+
+	private byte readType(final int iSequence) throws IOException {
+		final DataInputStream in = openArchive(new File(directory, ODatabaseBackup.getArchiveName(iSequence)));
+		try {
+			return in.readByte();
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Opens the archive and checks the header.
+	 */
+	private DataInputStream openArchive(final File iFile) throws IOException {
+		final DataInputStream in = new DataInputStream(new GZIPInputStream(new BufferedInputStream(new FileInputStream(iFile))));
+		if (in.readInt() != ODatabaseBackup.MAGIC) {
+			in.close();
+			throw new ODatabaseException("File " + iFile + " is not a backup archive");
+		}
+		if (in.readInt() != ODatabaseBackup.FORMAT_VERSION) {
+			in.close();
+			throw new ODatabaseException("Unsupported format of backup archive " + iFile);
+		}
+		return in;
+	}
+}
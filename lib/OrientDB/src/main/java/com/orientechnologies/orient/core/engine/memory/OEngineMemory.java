@@ -18,10 +18,12 @@ package com.orientechnologies.orient.core.engine.memory;
 import java.util.Map;
 
 import com.orientechnologies.common.log.OLogManager;
+import com.orientechnologies.orient.core.config.OGlobalConfiguration;
 import com.orientechnologies.orient.core.engine.OEngineAbstract;
 import com.orientechnologies.orient.core.exception.ODatabaseException;
 import com.orientechnologies.orient.core.storage.OStorage;
 import com.orientechnologies.orient.core.storage.impl.memory.OStorageMemory;
+import com.orientechnologies.orient.core.storage.impl.memory.OStorageMemoryOffHeap;
 
 public class OEngineMemory extends OEngineAbstract {
 	public static final String	NAME	= "memory";
@@ -31,6 +33,8 @@ public class OEngineMemory extends OEngineAbstract {
 
 	public OStorage createStorage(String iURL, Map<String, String> iConfiguration) {
 		try {
+			if (OGlobalConfiguration.STORAGE_MEMORY_OFFHEAP.getValueAsBoolean())
+				return new OStorageMemoryOffHeap(iURL);
 			return new OStorageMemory(iURL);
 		} catch (Throwable t) {
 			OLogManager.instance().error(this, "Error on opening in memory storage: " + iURL, t, ODatabaseException.class);
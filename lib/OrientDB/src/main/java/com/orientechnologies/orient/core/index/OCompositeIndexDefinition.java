@@ -38,6 +38,7 @@ import com.orientechnologies.orient.core.type.ODocumentWrapperNoClass;
 public class OCompositeIndexDefinition extends ODocumentWrapperNoClass implements OIndexDefinition {
 	private final List<OIndexDefinition>	indexDefinitions;
 	private String												className;
+	private int														includedCount;
 
 	public OCompositeIndexDefinition() {
 		indexDefinitions = new LinkedList<OIndexDefinition>();
@@ -85,9 +86,52 @@ public class OCompositeIndexDefinition extends ODocumentWrapperNoClass implement
 	 *          Index to add.
 	 */
 	public void addIndex(final OIndexDefinition indexDefinition) {
+		if (includedCount > 0)
+			throw new OIndexException("Key fields must be added before the included ones");
 		indexDefinitions.add(indexDefinition);
 	}
 
+	/**
+	 * Adds a field included in the index only to answer the queries that read it, without loading the records. Included fields
+	 * follow the key fields, they are not considered by the unique indexes and can be null.
+	 * 
+	 * @param indexDefinition
+	 *          Index of the included field.
+	 */
+	public void addIncludedIndex(final OIndexDefinition indexDefinition) {
+		indexDefinitions.add(indexDefinition);
+		includedCount++;
+	}
+
+	/**
+	 * Returns the number of parameters of the key, without the included fields.
+	 */
+	public int getKeyParamCount() {
+		return getParamCount() - includedCount;
+	}
+
+	/**
+	 * Returns the fields included in the index only to answer the queries.
+	 */
+	public List<String> getIncludedFields() {
+		final List<String> fields = getFields();
+		return fields.subList(fields.size() - includedCount, fields.size());
+	}
+
+	/**
+	 * Returns the key without the values of the included fields: the part of the key that must be unique in unique indexes.
+	 */
+	public Object getKeyWithoutIncluded(final Object iKey) {
+		if (includedCount == 0 || !(iKey instanceof OCompositeKey))
+			return iKey;
+
+		final OCompositeKey compositeKey = (OCompositeKey) iKey;
+		final int keyParamCount = getKeyParamCount();
+		if (compositeKey.getKeys().size() <= keyParamCount)
+			return iKey;
+		return new OCompositeKey(compositeKey.getKeys().subList(0, keyParamCount));
+	}
+
 	/**
 	 * {@inheritDoc}
 	 */
@@ -105,13 +149,16 @@ public class OCompositeIndexDefinition extends ODocumentWrapperNoClass implement
 	public Object getDocumentValueToIndex(final ODocument iDocument) {
 		final OCompositeKey compositeKey = new OCompositeKey();
 
+		final int keyDefinitions = indexDefinitions.size() - includedCount;
+		int i = 0;
 		for (final OIndexDefinition indexDefinition : indexDefinitions) {
-			final Comparable result = (Comparable) indexDefinition.getDocumentValueToIndex(iDocument);
+			final Object result = indexDefinition.getDocumentValueToIndex(iDocument);
 
-			if (result == null)
+			if (result == null && i < keyDefinitions)
 				return null;
 
-			compositeKey.addKey(result);
+			compositeKey.addKey((Comparable<?>) result);
+			i++;
 		}
 
 		return compositeKey;
@@ -120,10 +167,12 @@ public class OCompositeIndexDefinition extends ODocumentWrapperNoClass implement
 	/**
 	 * {@inheritDoc}
 	 */
-	public Comparable createValue(final List<?> params) {
+	public Comparable<?> createValue(final List<?> params) {
 		int currentParamIndex = 0;
 		final OCompositeKey compositeKey = new OCompositeKey();
 
+		final int keyDefinitions = indexDefinitions.size() - includedCount;
+		int i = 0;
 		for (final OIndexDefinition indexDefinition : indexDefinitions) {
 			if (currentParamIndex + 1 > params.size())
 				break;
@@ -137,12 +186,13 @@ public class OCompositeIndexDefinition extends ODocumentWrapperNoClass implement
 			final List<?> indexParams = params.subList(currentParamIndex, endIndex);
 			currentParamIndex += indexDefinition.getParamCount();
 
-			final Comparable keyValue = (Comparable) indexDefinition.createValue(indexParams);
+			final Object keyValue = indexDefinition.createValue(indexParams);
 
-			if (keyValue == null)
+			if (keyValue == null && i < keyDefinitions)
 				return null;
 
-			compositeKey.addKey(keyValue);
+			compositeKey.addKey((Comparable<?>) keyValue);
+			i++;
 		}
 
 		return compositeKey;
@@ -151,7 +201,7 @@ public class OCompositeIndexDefinition extends ODocumentWrapperNoClass implement
 	/**
 	 * {@inheritDoc}
 	 */
-	public Comparable createValue(final Object... params) {
+	public Comparable<?> createValue(final Object... params) {
 		return createValue(Arrays.asList(params));
 	}
 
@@ -189,6 +239,8 @@ public class OCompositeIndexDefinition extends ODocumentWrapperNoClass implement
 			return false;
 		if (!indexDefinitions.equals(that.indexDefinitions))
 			return false;
+		if (includedCount != that.includedCount)
+			return false;
 
 		return true;
 	}
@@ -197,12 +249,14 @@ public class OCompositeIndexDefinition extends ODocumentWrapperNoClass implement
 	public int hashCode() {
 		int result = indexDefinitions.hashCode();
 		result = 31 * result + className.hashCode();
+		result = 31 * result + includedCount;
 		return result;
 	}
 
 	@Override
 	public String toString() {
-		return "OCompositeIndexDefinition{" + "indexDefinitions=" + indexDefinitions + ", className='" + className + '\'' + '}';
+		return "OCompositeIndexDefinition{" + "indexDefinitions=" + indexDefinitions + ", className='" + className + '\''
+				+ ", includedCount=" + includedCount + '}';
 	}
 
 	/**
@@ -224,6 +278,8 @@ public class OCompositeIndexDefinition extends ODocumentWrapperNoClass implement
 			}
 			document.field("indexDefinitions", inds, OType.EMBEDDEDLIST);
 			document.field("indClasses", indClasses, OType.EMBEDDEDLIST);
+			if (includedCount > 0)
+				document.field("includedCount", includedCount);
 		} finally {
 			document.setInternalStatus(ORecordElement.STATUS.LOADED);
 		}
@@ -237,7 +293,8 @@ public class OCompositeIndexDefinition extends ODocumentWrapperNoClass implement
 		final StringBuilder ddl = new StringBuilder("create index ");
 		ddl.append(indexName).append(" on ").append(className).append(" ( ");
 
-		final Iterator<String> fieldIterator = getFields().iterator();
+		final List<String> fields = getFields();
+		final Iterator<String> fieldIterator = fields.subList(0, fields.size() - includedCount).iterator();
 		if (fieldIterator.hasNext()) {
 			ddl.append(fieldIterator.next());
 			while (fieldIterator.hasNext()) {
@@ -245,6 +302,15 @@ public class OCompositeIndexDefinition extends ODocumentWrapperNoClass implement
 			}
 		}
 		ddl.append(" ) ").append(indexType);
+
+		if (includedCount > 0) {
+			ddl.append(" include ( ");
+			final Iterator<String> includedIterator = getIncludedFields().iterator();
+			ddl.append(includedIterator.next());
+			while (includedIterator.hasNext())
+				ddl.append(", ").append(includedIterator.next());
+			ddl.append(" )");
+		}
 		return ddl.toString();
 	}
 
@@ -256,6 +322,9 @@ public class OCompositeIndexDefinition extends ODocumentWrapperNoClass implement
 		try {
 			className = document.field("className");
 
+			final Integer included = document.field("includedCount");
+			includedCount = included != null ? included : 0;
+
 			final List<ODocument> inds = document.field("indexDefinitions");
 			final List<String> indClasses = document.field("indClasses");
 
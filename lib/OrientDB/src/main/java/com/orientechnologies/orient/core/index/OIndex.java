@@ -203,6 +203,26 @@ public interface OIndex<T> {
 
 	public Collection<ODocument> getEntriesBetween(Object iRangeFrom, Object iRangeTo);
 
+	/**
+	 * Returns a cursor over the key/record pairs with key between the range passed as parameter. Unlike
+	 * {@link #getValuesBetween(Object, boolean, Object, boolean)} the range is not loaded all together, but read while the cursor is
+	 * browsed.
+	 *
+	 * In case of {@link com.orientechnologies.common.collection.OCompositeKey}s partial keys can be used as values boundaries.
+	 *
+	 * @param iRangeFrom
+	 *          Starting range, null to start from the first key
+	 * @param iFromInclusive
+	 *          Indicates whether start range boundary is included in result.
+	 * @param iRangeTo
+	 *          Ending range, null to end with the last key
+	 * @param iToInclusive
+	 *          Indicates whether end range boundary is included in result.
+	 * @param iAscending
+	 *          If true pairs are returned from the starting range, otherwise from the ending range
+	 */
+	public OIndexCursor cursor(Object iRangeFrom, boolean iFromInclusive, Object iRangeTo, boolean iToInclusive, boolean iAscending);
+
 	public long getSize();
 
 	public void checkEntry(final OIdentifiable iRecord, final Object iKey);
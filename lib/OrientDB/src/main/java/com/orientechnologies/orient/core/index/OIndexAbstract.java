@@ -0,0 +1,798 @@
+/*
+ * Copyright 1999-2010 Luca Garulli (l.garulli--at--orientechnologies.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.orientechnologies.orient.core.index;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+import com.orientechnologies.common.collection.OCompositeKey;
+import com.orientechnologies.common.concur.resource.OSharedResourceAdaptiveExternal;
+import com.orientechnologies.common.listener.OProgressListener;
+import com.orientechnologies.common.profiler.OProfiler;
+import com.orientechnologies.common.profiler.OProfiler.OProfilerHookValue;
+import com.orientechnologies.orient.core.Orient;
+import com.orientechnologies.orient.core.annotation.ODocumentInstance;
+import com.orientechnologies.orient.core.config.OGlobalConfiguration;
+import com.orientechnologies.orient.core.db.ODatabase;
+import com.orientechnologies.orient.core.db.ODatabaseListener;
+import com.orientechnologies.orient.core.db.ODatabaseRecordThreadLocal;
+import com.orientechnologies.orient.core.db.record.ODatabaseRecord;
+import com.orientechnologies.orient.core.db.record.OIdentifiable;
+import com.orientechnologies.orient.core.db.record.ORecordElement;
+import com.orientechnologies.orient.core.id.ORID;
+import com.orientechnologies.orient.core.intent.OIntentMassiveInsert;
+import com.orientechnologies.orient.core.memory.OMemoryWatchDog.Listener;
+import com.orientechnologies.orient.core.metadata.schema.OType;
+import com.orientechnologies.orient.core.record.ORecord;
+import com.orientechnologies.orient.core.record.impl.ODocument;
+import com.orientechnologies.orient.core.serialization.serializer.OStringSerializerHelper;
+import com.orientechnologies.orient.core.serialization.serializer.record.string.ORecordSerializerStringAbstract;
+import com.orientechnologies.orient.core.serialization.serializer.stream.OStreamSerializer;
+import com.orientechnologies.orient.core.tx.OTransactionIndexChanges.OPERATION;
+
+/**
+ * Base class of the indexes that keep their entries in a persistent container, like a tree or a hash table, stored in the records
+ * of the index cluster. Handles the configuration, the lazy loading, the rebuild, the transactions and the hooks, while the
+ * subclasses handle the container.
+ * 
+ * @author Luca Garulli
+ * 
+ */
+public abstract class OIndexAbstract<T> extends OSharedResourceAdaptiveExternal implements OIndexInternal<T>, ODatabaseListener {
+	protected static final String	CONFIG_MAP_RID	= "mapRid";
+	protected static final String	CONFIG_CLUSTERS	= "clusters";
+	protected static final String	CONFIG_STATISTICS	= "statistics";
+	protected String							name;
+	protected String							type;
+	protected Set<String>					clustersToIndex	= new LinkedHashSet<String>();
+	protected OIndexDefinition		indexDefinition;
+
+	@ODocumentInstance
+	protected ODocument						configuration;
+	private final Listener				watchDog;
+	private volatile boolean			waitingForLoading;
+	private volatile OIndexStatistics	statistics;
+
+	public OIndexAbstract(final String iType) {
+		super(true, OGlobalConfiguration.MVRBTREE_TIMEOUT.getValueAsInteger());
+
+		type = iType;
+		watchDog = new Listener() {
+			public void memoryUsageLow(final long iFreeMemory, final long iFreeMemoryPercentage) {
+				onMemoryLow(iFreeMemoryPercentage);
+			}
+		};
+	}
+
+	/**
+	 * Returns the record where the container is stored.
+	 */
+	public abstract ORecord<?> getRecord();
+
+	/**
+	 * Returns the container of the entries, null if not created yet.
+	 */
+	protected abstract Object getContainer();
+
+	/**
+	 * Creates an empty container in the cluster iClusterIndexName.
+	 */
+	protected abstract void createContainer(ODatabaseRecord iDatabase, String iClusterIndexName, OStreamSerializer iValueSerializer);
+
+	/**
+	 * Creates the container stored in the record iRid without loading it.
+	 */
+	protected abstract void openContainer(ORID iRid);
+
+	protected abstract void loadContainer();
+
+	protected abstract void deleteContainer();
+
+	protected abstract void lazySaveContainer();
+
+	protected abstract void unloadContainer();
+
+	protected abstract void commitContainerChanges();
+
+	protected abstract void setRunningTransaction(boolean iValue);
+
+	protected abstract long getContainerSize();
+
+	/**
+	 * Called by the memory watch dog when the free memory is low. It's called by another thread, so the container must be only
+	 * marked to free the memory at the next access.
+	 * 
+	 * @see #checkForOptimization()
+	 */
+	protected abstract void onMemoryLow(long iFreeMemoryPercentage);
+
+	/**
+	 * Frees the memory of the container if it has been asked by the memory watch dog. Called before every access to the loaded
+	 * container, out of the locks.
+	 */
+	protected abstract void checkForOptimization();
+
+	/**
+	 * Saves the changes of the container, then computes the statistics again if they are missing or stale.
+	 */
+	public void flush() {
+		lazySave();
+
+		if (!OGlobalConfiguration.INDEX_STATISTICS.getValueAsBoolean())
+			return;
+
+		acquireExclusiveLock();
+		try {
+
+			if (waitingForLoading || getContainer() == null)
+				return;
+
+			final OIndexStatistics current = statistics;
+			if (current == null || current.getKeys() != getSize()
+					|| current.isStale(OGlobalConfiguration.INDEX_STATISTICS_REFRESH.getValueAsInteger()))
+				computeStatistics();
+
+		} finally {
+			releaseExclusiveLock();
+		}
+	}
+
+	/**
+	 * Creates the index.
+	 * 
+	 * @param iDatabase
+	 *          Current Database instance
+	 * @param iClusterIndexName
+	 *          Cluster name where to place the container
+	 * @param iProgressListener
+	 */
+	public OIndexInternal<?> create(final String iName, final OIndexDefinition iIndexDefinition, final ODatabaseRecord iDatabase,
+			final String iClusterIndexName, final int[] iClusterIdsToIndex, final OProgressListener iProgressListener,
+			final OStreamSerializer iValueSerializer) {
+		acquireExclusiveLock();
+		try {
+
+			name = iName;
+			configuration = new ODocument();
+
+			indexDefinition = iIndexDefinition;
+
+			if (iClusterIdsToIndex != null)
+				for (final int id : iClusterIdsToIndex)
+					clustersToIndex.add(iDatabase.getClusterNameById(id));
+
+			createContainer(iDatabase, iClusterIndexName, iValueSerializer);
+
+			installHooks(iDatabase);
+
+			rebuild(iProgressListener);
+			updateConfiguration();
+		} catch (Exception e) {
+			if (getContainer() != null)
+				deleteContainer();
+			if (e instanceof OIndexException)
+				throw (OIndexException) e;
+
+			throw new OIndexException("Cannot create the index '" + iName + "'", e);
+
+		} finally {
+			releaseExclusiveLock();
+		}
+		return this;
+	}
+
+	public OIndexInternal<T> loadFromConfiguration(final ODocument iConfig) {
+		acquireExclusiveLock();
+		try {
+
+			final ORID rid = (ORID) iConfig.field(CONFIG_MAP_RID, ORID.class);
+			if (rid == null)
+				throw new OIndexException("Error during deserialization of index definition: '" + CONFIG_MAP_RID + "' attribute is null");
+
+			configuration = iConfig;
+			name = configuration.field(OIndexInternal.CONFIG_NAME);
+
+			final ODocument indexDefinitionDoc = configuration.field(OIndexInternal.INDEX_DEFINITION);
+			if (indexDefinitionDoc != null) {
+				try {
+					final String indexDefClassName = configuration.field(OIndexInternal.INDEX_DEFINITION_CLASS);
+					final Class<?> indexDefClass = Class.forName(indexDefClassName);
+					indexDefinition = (OIndexDefinition) indexDefClass.getDeclaredConstructor().newInstance();
+					indexDefinition.fromStream(indexDefinitionDoc);
+
+				} catch (final ClassNotFoundException e) {
+					throw new OIndexException("Error during deserialization of index definition", e);
+				} catch (final NoSuchMethodException e) {
+					throw new OIndexException("Error during deserialization of index definition", e);
+				} catch (final InvocationTargetException e) {
+					throw new OIndexException("Error during deserialization of index definition", e);
+				} catch (final InstantiationException e) {
+					throw new OIndexException("Error during deserialization of index definition", e);
+				} catch (final IllegalAccessException e) {
+					throw new OIndexException("Error during deserialization of index definition", e);
+				}
+			} else {
+				// @COMPATIBILITY 1.0rc6 new index model was implemented
+				final Boolean isAutomatic = configuration.field(OIndexInternal.CONFIG_AUTOMATIC);
+				if (Boolean.TRUE.equals(isAutomatic)) {
+					final int pos = name.lastIndexOf('.');
+					if (pos < 0)
+						throw new OIndexException("Can not convert from old index model to new one. "
+								+ "Invalid index name. Dot (.) separator should be present.");
+					final String className = name.substring(0, pos);
+					final String propertyName = name.substring(pos + 1);
+
+					final String keyTypeStr = configuration.field(OIndexInternal.CONFIG_KEYTYPE);
+					if (keyTypeStr == null)
+						throw new OIndexException("Can not convert from old index model to new one. " + "Index key type is absent.");
+					final OType keyType = OType.valueOf(keyTypeStr.toUpperCase(Locale.ENGLISH));
+					indexDefinition = new OPropertyIndexDefinition(className, propertyName, keyType);
+
+					configuration.removeField(OIndexInternal.CONFIG_AUTOMATIC);
+					configuration.removeField(OIndexInternal.CONFIG_KEYTYPE);
+				} else if (configuration.field(OIndexInternal.CONFIG_KEYTYPE) != null) {
+					final String keyTypeStr = configuration.field(OIndexInternal.CONFIG_KEYTYPE);
+					final OType keyType = OType.valueOf(keyTypeStr.toUpperCase(Locale.ENGLISH));
+
+					indexDefinition = new OSimpleKeyIndexDefinition(keyType);
+
+					configuration.removeField(OIndexInternal.CONFIG_KEYTYPE);
+				}
+			}
+
+			clustersToIndex.clear();
+
+			final Collection<? extends String> clusters = configuration.field(CONFIG_CLUSTERS);
+			if (clusters != null)
+				clustersToIndex.addAll(clusters);
+
+			final ODocument statisticsDoc = configuration.field(CONFIG_STATISTICS);
+			if (statisticsDoc != null)
+				statistics = OIndexStatistics.fromStream(statisticsDoc, indexDefinition != null
+						&& indexDefinition.getTypes().length == 1 ? indexDefinition.getTypes()[0] : null);
+			else
+				statistics = null;
+
+			openContainer(rid);
+			if (OGlobalConfiguration.INDEX_LAZY_LOAD.getValueAsBoolean())
+				// LOAD THE CONTAINER AT FIRST USE
+				waitingForLoading = true;
+			else
+				loadContainer();
+
+			installHooks(iConfig.getDatabase());
+
+			return this;
+
+		} finally {
+			releaseExclusiveLock();
+		}
+	}
+
+	public Collection<OIdentifiable> getValues(final Collection<?> iKeys) {
+		return getValues(iKeys, -1);
+	}
+
+	public Collection<ODocument> getEntries(final Collection<?> iKeys) {
+		return getEntries(iKeys, -1);
+	}
+
+	public boolean remove(final Object iKey, final OIdentifiable iValue) {
+		return remove(iKey);
+	}
+
+	public ORID getIdentity() {
+		return getRecord().getIdentity();
+	}
+
+	public long rebuild() {
+		return rebuild(null);
+	}
+
+	/**
+	 * Populates the index with all the existent records. Uses the massive insert intent to speed up and keep the consumed memory low.
+	 */
+	public long rebuild(final OProgressListener iProgressListener) {
+		clear();
+
+		long documentIndexed = 0;
+
+		final boolean intentInstalled = getDatabase().declareIntent(new OIntentMassiveInsert());
+
+		checkForLoading();
+		acquireExclusiveLock();
+		try {
+
+			int documentNum = 0;
+			long documentTotal = 0;
+
+			for (final String cluster : clustersToIndex)
+				documentTotal += getDatabase().countClusterElements(cluster);
+
+			if (iProgressListener != null)
+				iProgressListener.onBegin(this, documentTotal);
+
+			for (final String clusterName : clustersToIndex)
+				for (final ORecord<?> record : getDatabase().browseCluster(clusterName)) {
+					if (record instanceof ODocument) {
+						final ODocument doc = (ODocument) record;
+						final Object fieldValue = indexDefinition.getDocumentValueToIndex(doc);
+
+						if (fieldValue != null) {
+							if (fieldValue instanceof Collection) {
+								for (final Object fieldValueItem : (Collection<?>) fieldValue) {
+									put(fieldValueItem, doc);
+								}
+							} else
+								put(fieldValue, doc);
+
+							++documentIndexed;
+						}
+					}
+					documentNum++;
+
+					if (iProgressListener != null)
+						iProgressListener.onProgress(this, documentNum, documentNum * 100f / documentTotal);
+				}
+
+			lazySave();
+
+			if (OGlobalConfiguration.INDEX_STATISTICS.getValueAsBoolean())
+				computeStatistics();
+
+			if (iProgressListener != null)
+				iProgressListener.onCompletition(this, true);
+
+		} catch (final Exception e) {
+			if (iProgressListener != null)
+				iProgressListener.onCompletition(this, false);
+
+			clear();
+
+			throw new OIndexException("Error on rebuilding the index for clusters: " + clustersToIndex, e);
+
+		} finally {
+			if (intentInstalled)
+				getDatabase().declareIntent(null);
+
+			releaseExclusiveLock();
+		}
+
+		return documentIndexed;
+	}
+
+	public OIndexInternal<T> delete() {
+
+		checkForLoading();
+		acquireExclusiveLock();
+		try {
+
+			deleteContainer();
+			return this;
+
+		} finally {
+			releaseExclusiveLock();
+		}
+	}
+
+	public OIndexInternal<T> lazySave() {
+
+		acquireExclusiveLock();
+		try {
+
+			if (!waitingForLoading)
+				lazySaveContainer();
+			return this;
+
+		} finally {
+			releaseExclusiveLock();
+		}
+	}
+
+	public void unload() {
+
+		acquireExclusiveLock();
+		try {
+
+			if (!waitingForLoading)
+				unloadContainer();
+
+		} finally {
+			releaseExclusiveLock();
+		}
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public String getType() {
+		return type;
+	}
+
+	@Override
+	public String toString() {
+		if (tryAcquireExclusiveLock())
+			try {
+
+				return name + " (" + (type != null ? type : "?") + ")" + (getContainer() != null ? " " + getContainer() : "");
+
+			} finally {
+				releaseExclusiveLock();
+			}
+		return "!Locked resource";
+	}
+
+	public OIndexInternal<T> getInternal() {
+		return this;
+	}
+
+	public Set<String> getClusters() {
+
+		acquireSharedLock();
+		try {
+
+			return Collections.unmodifiableSet(clustersToIndex);
+
+		} finally {
+			releaseSharedLock();
+		}
+	}
+
+	public OIndexAbstract<T> addCluster(final String iClusterName) {
+
+		acquireExclusiveLock();
+		try {
+
+			clustersToIndex.add(iClusterName);
+			return this;
+
+		} finally {
+			releaseExclusiveLock();
+		}
+	}
+
+	public void checkEntry(final OIdentifiable iRecord, final Object iKey) {
+	}
+
+	public ODocument updateConfiguration() {
+
+		acquireExclusiveLock();
+		try {
+
+			configuration.setInternalStatus(ORecordElement.STATUS.UNMARSHALLING);
+
+			try {
+				configuration.field(OIndexInternal.CONFIG_TYPE, type);
+				configuration.field(OIndexInternal.CONFIG_NAME, name);
+
+				if (indexDefinition != null) {
+					final ODocument indexDefDocument = indexDefinition.toStream();
+					if (!indexDefDocument.hasOwners())
+						indexDefDocument.addOwner(configuration);
+
+					configuration.field(OIndexInternal.INDEX_DEFINITION, indexDefDocument, OType.EMBEDDED);
+					configuration.field(OIndexInternal.INDEX_DEFINITION_CLASS, indexDefinition.getClass().getName());
+				} else {
+					configuration.removeField(OIndexInternal.INDEX_DEFINITION);
+					configuration.removeField(OIndexInternal.INDEX_DEFINITION_CLASS);
+				}
+
+				configuration.field(CONFIG_CLUSTERS, clustersToIndex, OType.EMBEDDEDSET);
+				configuration.field(CONFIG_MAP_RID, getIdentity());
+
+				final OIndexStatistics current = statistics;
+				if (current != null) {
+					final ODocument statisticsDoc = current.toStream();
+					statisticsDoc.addOwner(configuration);
+					configuration.field(CONFIG_STATISTICS, statisticsDoc, OType.EMBEDDED);
+				} else
+					configuration.removeField(CONFIG_STATISTICS);
+
+			} finally {
+				configuration.setInternalStatus(ORecordElement.STATUS.LOADED);
+			}
+
+		} finally {
+			releaseExclusiveLock();
+		}
+		return configuration;
+	}
+
+	@SuppressWarnings("unchecked")
+	public void commit(final ODocument iDocument) {
+		if (iDocument == null)
+			return;
+
+		checkForLoading();
+		acquireExclusiveLock();
+		try {
+			setRunningTransaction(true);
+
+			final Boolean clearAll = (Boolean) iDocument.field("clear");
+			if (clearAll != null && clearAll)
+				clear();
+
+			final Collection<ODocument> entries = iDocument.field("entries");
+
+			for (final ODocument entry : entries) {
+				final String serializedKey = OStringSerializerHelper.decode((String) entry.field("k"));
+
+				final Object key;
+				if (serializedKey.startsWith("["))
+					key = new OCompositeKey((List<? extends Comparable<?>>) ORecordSerializerStringAbstract.fieldTypeFromStream(iDocument,
+							OType.EMBEDDEDLIST, OStringSerializerHelper.decode(serializedKey)));
+				else
+					key = convertKey(ORecordSerializerStringAbstract.getTypeValue(serializedKey));
+
+				final List<ODocument> operations = (List<ODocument>) entry.field("ops");
+				if (operations != null) {
+					for (final ODocument op : operations) {
+						final int operation = (Integer) op.rawField("o");
+						final OIdentifiable value = op.field("v", OType.LINK);
+
+						if (operation == OPERATION.PUT.ordinal())
+							put(key, value);
+						else if (operation == OPERATION.REMOVE.ordinal()) {
+							if (key.equals("*"))
+								remove(value);
+							else if (value == null)
+								remove(key);
+							else
+								remove(key, value);
+						}
+					}
+				}
+			}
+
+		} finally {
+			releaseExclusiveLock();
+			setRunningTransaction(false);
+		}
+	}
+
+	public ODocument getConfiguration() {
+		return configuration;
+	}
+
+	/**
+	 * Returns the statistics of the index for the query planner, without computing them: null if they have not been computed yet or
+	 * they don't match the index, like after a crash, until the next flush of the index.
+	 * 
+	 * @see #flush()
+	 */
+	public OIndexStatistics getStatistics() {
+		final OIndexStatistics current = statistics;
+		if (current == null)
+			return null;
+
+		checkForLoading();
+		acquireSharedLock();
+		try {
+
+			return current.getKeys() == getSize() ? current : null;
+
+		} finally {
+			releaseSharedLock();
+		}
+	}
+
+	/**
+	 * Tells if the statistics changed since the configuration was last written.
+	 */
+	public boolean isStatisticsChanged() {
+		final OIndexStatistics current = statistics;
+		return current != null && current.isChanged();
+	}
+
+	/**
+	 * Computes the statistics walking the index. Called with the exclusive lock.
+	 */
+	protected void computeStatistics() {
+		statistics = OIndexStatistics.compute(this, OGlobalConfiguration.INDEX_STATISTICS_BUCKETS.getValueAsInteger());
+	}
+
+	/**
+	 * Updates the counters of the statistics after a change of the entries. Called with the exclusive lock.
+	 * 
+	 * @param iKeys
+	 *          Keys added, negative if removed
+	 * @param iEntries
+	 *          Entries (key/record pairs) added, negative if removed
+	 */
+	protected void updateStatistics(final long iKeys, final long iEntries) {
+		final OIndexStatistics current = statistics;
+		if (current != null)
+			current.update(iKeys, iEntries);
+	}
+
+	/**
+	 * Resets the statistics after all the entries have been removed. Called with the exclusive lock.
+	 */
+	protected void clearStatistics() {
+		statistics = OIndexStatistics.empty();
+	}
+
+	public boolean isAutomatic() {
+		return indexDefinition != null && indexDefinition.getClassName() != null;
+	}
+
+	protected void installHooks(final ODatabaseRecord iDatabase) {
+		OProfiler.getInstance().registerHookValue("index." + name + ".items", new OProfilerHookValue() {
+			public Object getValue() {
+				acquireSharedLock();
+				try {
+					return getContainer() != null ? getContainerSize() : "-";
+				} finally {
+					releaseSharedLock();
+				}
+			}
+		});
+
+		Orient.instance().getMemoryWatchDog().addListener(watchDog);
+		iDatabase.registerListener(this);
+	}
+
+	protected void uninstallHooks(final ODatabaseRecord iDatabase) {
+		OProfiler.getInstance().unregisterHookValue("index." + name + ".items");
+		Orient.instance().getMemoryWatchDog().removeListener(watchDog);
+		iDatabase.unregisterListener(this);
+	}
+
+	public void onCreate(final ODatabase iDatabase) {
+	}
+
+	public void onDelete(final ODatabase iDatabase) {
+	}
+
+	public void onOpen(final ODatabase iDatabase) {
+	}
+
+	public void onBeforeTxBegin(final ODatabase iDatabase) {
+	}
+
+	public void onBeforeTxRollback(final ODatabase iDatabase) {
+	}
+
+	public boolean onCorruptionRepairDatabase(final ODatabase iDatabase, final String iReason, String iWhatWillbeFixed) {
+		return false;
+	}
+
+	public void onAfterTxRollback(final ODatabase iDatabase) {
+		unload();
+	}
+
+	public void onBeforeTxCommit(final ODatabase iDatabase) {
+		acquireExclusiveLock();
+		try {
+
+			if (!waitingForLoading)
+				commitContainerChanges();
+
+		} finally {
+			releaseExclusiveLock();
+		}
+	}
+
+	public void onAfterTxCommit(final ODatabase iDatabase) {
+	}
+
+	public void onClose(final ODatabase iDatabase) {
+		acquireExclusiveLock();
+		try {
+
+			if (!waitingForLoading)
+				commitContainerChanges();
+			Orient.instance().getMemoryWatchDog().removeListener(watchDog);
+
+		} finally {
+			releaseExclusiveLock();
+		}
+	}
+
+	/**
+	 * Returns true if the index has been loaded lazily and its container has not been used yet.
+	 */
+	public boolean isWaitingForLoading() {
+		return waitingForLoading;
+	}
+
+	/**
+	 * Loads the container if the index has been loaded lazily, otherwise frees the memory if the memory watch dog asked for it. Must
+	 * be called before acquiring the shared lock.
+	 */
+	protected void checkForLoading() {
+		if (!waitingForLoading) {
+			checkForOptimization();
+			return;
+		}
+
+		acquireExclusiveLock();
+		try {
+
+			if (waitingForLoading) {
+				final long timer = OProfiler.getInstance().startChrono();
+				loadContainer();
+				waitingForLoading = false;
+				OProfiler.getInstance().stopChrono("OIndex.load", timer);
+			}
+
+		} finally {
+			releaseExclusiveLock();
+		}
+	}
+
+	protected void checkForKeyType(final Object iKey) {
+		if (indexDefinition == null) {
+			// RECOGNIZE THE KEY TYPE AT RUN-TIME
+
+			final OType type = OType.getTypeByClass(iKey.getClass());
+			if (type == null)
+				return;
+
+			indexDefinition = new OSimpleKeyIndexDefinition(type);
+
+			updateConfiguration();
+		}
+	}
+
+	/**
+	 * Converts a key unmarshalled from a transaction before applying it to the container. The keys are used as they are by default.
+	 */
+	protected Object convertKey(final Object iKey) {
+		return iKey;
+	}
+
+	protected ODatabaseRecord getDatabase() {
+		return ODatabaseRecordThreadLocal.INSTANCE.get();
+	}
+
+	public OType[] getKeyTypes() {
+		if (indexDefinition == null)
+			return null;
+
+		return indexDefinition.getTypes();
+	}
+
+	public OIndexDefinition getDefinition() {
+		return indexDefinition;
+	}
+
+	@Override
+	public boolean equals(final Object o) {
+		if (this == o)
+			return true;
+		if (o == null || getClass() != o.getClass())
+			return false;
+
+		final OIndexAbstract<?> that = (OIndexAbstract<?>) o;
+
+		if (!name.equals(that.name))
+			return false;
+
+		return true;
+	}
+
+	@Override
+	public int hashCode() {
+		return name.hashCode();
+	}
+}
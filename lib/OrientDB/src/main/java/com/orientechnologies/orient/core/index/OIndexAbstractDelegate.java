@@ -122,6 +122,11 @@ public class OIndexAbstractDelegate<T> implements OIndex<T> {
 		return delegate.getEntriesMinor(toKey, isInclusive);
 	}
 
+	public OIndexCursor cursor(final Object iRangeFrom, final boolean iFromInclusive, final Object iRangeTo,
+			final boolean iToInclusive, final boolean iAscending) {
+		return delegate.cursor(iRangeFrom, iFromInclusive, iRangeTo, iToInclusive, iAscending);
+	}
+
 	public long getSize() {
 		return delegate.getSize();
 	}
@@ -0,0 +1,759 @@
+/*
+ * Copyright 1999-2010 Luca Garulli (l.garulli--at--orientechnologies.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.orientechnologies.orient.core.index;
+
+import java.util.AbstractCollection;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.NavigableSet;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import com.orientechnologies.common.listener.OProgressListener;
+import com.orientechnologies.common.log.OLogManager;
+import com.orientechnologies.common.profiler.OProfiler;
+import com.orientechnologies.common.profiler.OProfiler.OProfilerHookValue;
+import com.orientechnologies.orient.core.db.ODatabase;
+import com.orientechnologies.orient.core.db.record.ODatabaseRecord;
+import com.orientechnologies.orient.core.db.record.OIdentifiable;
+import com.orientechnologies.orient.core.id.ORID;
+import com.orientechnologies.orient.core.id.ORecordId;
+import com.orientechnologies.orient.core.metadata.schema.OType;
+import com.orientechnologies.orient.core.record.ORecord;
+import com.orientechnologies.orient.core.record.impl.ODocument;
+import com.orientechnologies.orient.core.serialization.serializer.stream.OCompositeKeySerializer;
+import com.orientechnologies.orient.core.serialization.serializer.stream.OStreamSerializer;
+import com.orientechnologies.orient.core.serialization.serializer.stream.OStreamSerializerLiteral;
+import com.orientechnologies.orient.core.type.bitmap.OBitmapDatabase;
+import com.orientechnologies.orient.core.type.bitmap.OCompressedBitmap;
+import com.orientechnologies.orient.core.type.bitmap.OCompressedBitmap.OCompressedBitmapIterator;
+
+/**
+ * Not unique index for fields with few distinct values, like status, types and booleans. The records of every key are kept as a
+ * compressed bitmap of cluster positions per cluster, so a key with millions of records costs few bytes per record and the
+ * conditions on more bitmap indexes can be combined as boolean operations between bitmaps, before loading any record.
+ *
+ * @author Luca Garulli
+ * @see OBitmapDatabase
+ */
+public class OIndexBitmap extends OIndexAbstract<Collection<OIdentifiable>> {
+	public static final String					TYPE	= "BITMAP";
+	protected OBitmapDatabase<Object>		table;
+	private volatile boolean						memoryLow;
+
+	/**
+	 * Record ids of one or more bitmaps, ordered by cluster and position. The bitmaps are copies, so the collection doesn't change
+	 * with the index.
+	 */
+	protected static class OBitmapRIDCollection extends AbstractCollection<OIdentifiable> {
+		private final TreeMap<Integer, OCompressedBitmap>	bitmaps;
+		private final int																	size;
+
+		protected OBitmapRIDCollection(final TreeMap<Integer, OCompressedBitmap> iBitmaps) {
+			bitmaps = iBitmaps;
+			long total = 0;
+			for (OCompressedBitmap b : iBitmaps.values())
+				total += b.cardinality();
+			size = (int) Math.min(total, Integer.MAX_VALUE);
+		}
+
+		@Override
+		public Iterator<OIdentifiable> iterator() {
+			return new Iterator<OIdentifiable>() {
+				private final Iterator<Entry<Integer, OCompressedBitmap>>	clusters	= bitmaps.entrySet().iterator();
+				private int																								clusterId;
+				private OCompressedBitmapIterator													positions;
+
+				public boolean hasNext() {
+					while (positions == null || !positions.hasNext()) {
+						if (!clusters.hasNext())
+							return false;
+						final Entry<Integer, OCompressedBitmap> entry = clusters.next();
+						clusterId = entry.getKey();
+						positions = entry.getValue().iterator();
+					}
+					return true;
+				}
+
+				public OIdentifiable next() {
+					if (!hasNext())
+						throw new NoSuchElementException();
+					return new ORecordId(clusterId, positions.next());
+				}
+
+				public void remove() {
+					throw new UnsupportedOperationException("remove");
+				}
+			};
+		}
+
+		@Override
+		public boolean contains(final Object o) {
+			if (!(o instanceof OIdentifiable))
+				return false;
+			final ORID rid = ((OIdentifiable) o).getIdentity();
+			final OCompressedBitmap bitmap = bitmaps.get(rid.getClusterId());
+			return bitmap != null && bitmap.contains(rid.getClusterPosition());
+		}
+
+		@Override
+		public int size() {
+			return size;
+		}
+	}
+
+	public OIndexBitmap() {
+		super(TYPE);
+	}
+
+	public OIndexBitmap create(final String iName, final OIndexDefinition iIndexDefinition, final ODatabaseRecord iDatabase,
+			final String iClusterIndexName, final int[] iClusterIdsToIndex, final OProgressListener iProgressListener) {
+		return (OIndexBitmap) super.create(iName, iIndexDefinition, iDatabase, iClusterIndexName, iClusterIdsToIndex,
+				iProgressListener, null);
+	}
+
+	@Override
+	protected Object getContainer() {
+		return table;
+	}
+
+	@Override
+	protected void createContainer(final ODatabaseRecord iDatabase, final String iClusterIndexName,
+			final OStreamSerializer iValueSerializer) {
+		final OStreamSerializer keySerializer;
+		if (indexDefinition instanceof OCompositeIndexDefinition)
+			keySerializer = OCompositeKeySerializer.INSTANCE;
+		else
+			keySerializer = OStreamSerializerLiteral.INSTANCE;
+
+		table = new OBitmapDatabase<Object>(iClusterIndexName, keySerializer);
+		table.setKeyClass(getKeyClass());
+	}
+
+	@Override
+	protected void openContainer(final ORID iRid) {
+		table = new OBitmapDatabase<Object>(getDatabase(), iRid);
+		table.setKeyClass(getKeyClass());
+	}
+
+	@Override
+	protected void loadContainer() {
+		table.load();
+	}
+
+	@Override
+	protected void deleteContainer() {
+		table.delete();
+	}
+
+	@Override
+	protected void lazySaveContainer() {
+		table.lazySave();
+	}
+
+	@Override
+	protected void unloadContainer() {
+		table.unload();
+	}
+
+	@Override
+	protected void commitContainerChanges() {
+		table.commitChanges();
+	}
+
+	@Override
+	protected void setRunningTransaction(final boolean iValue) {
+		table.setRunningTransaction(iValue);
+	}
+
+	@Override
+	protected long getContainerSize() {
+		return table.size();
+	}
+
+	@Override
+	protected void onMemoryLow(final long iFreeMemoryPercentage) {
+		memoryLow = true;
+	}
+
+	@Override
+	protected void checkForOptimization() {
+		if (memoryLow)
+			freeMemory();
+	}
+
+	public Collection<OIdentifiable> get(final Object iKey) {
+
+		checkForLoading();
+		acquireSharedLock();
+		try {
+
+			return new OBitmapRIDCollection(getBitmapsInternal(iKey));
+
+		} finally {
+			releaseSharedLock();
+		}
+	}
+
+	/**
+	 * Returns the positions of the records associated to the key, one bitmap per cluster. The bitmaps are copies, so they can be
+	 * combined and changed by the caller.
+	 */
+	public Map<Integer, OCompressedBitmap> getBitmaps(final Object iKey) {
+
+		checkForLoading();
+		acquireSharedLock();
+		try {
+
+			return getBitmapsInternal(iKey);
+
+		} finally {
+			releaseSharedLock();
+		}
+	}
+
+	/**
+	 * Returns the number of records associated to the key without loading them.
+	 */
+	public long getCardinality(final Object iKey) {
+
+		checkForLoading();
+		acquireSharedLock();
+		try {
+
+			return table.cardinality(iKey);
+
+		} finally {
+			releaseSharedLock();
+		}
+	}
+
+	public boolean contains(final Object iKey) {
+
+		checkForLoading();
+		acquireSharedLock();
+		try {
+
+			return table.containsKey(iKey);
+
+		} finally {
+			releaseSharedLock();
+		}
+	}
+
+	public OIndexBitmap put(final Object iKey, final OIdentifiable iSingleValue) {
+		checkForLoading();
+		acquireExclusiveLock();
+		try {
+			checkForKeyType(iKey);
+
+			final ORID rid = iSingleValue.getIdentity();
+			if (!rid.isPersistent())
+				throw new OIndexException("Cannot index the record " + rid + " in the bitmap index '" + name
+						+ "' because it has not been saved yet");
+
+			final int keys = table.getKeyCount();
+			if (table.add(iKey, rid))
+				updateStatistics(table.getKeyCount() - keys, 1);
+			return this;
+
+		} finally {
+			releaseExclusiveLock();
+		}
+	}
+
+	public boolean remove(final Object iKey, final OIdentifiable iValue) {
+
+		checkForLoading();
+		acquireExclusiveLock();
+		try {
+
+			final int keys = table.getKeyCount();
+			if (!table.remove(iKey, iValue.getIdentity()))
+				return false;
+
+			updateStatistics(table.getKeyCount() - keys, -1);
+			return true;
+
+		} finally {
+			releaseExclusiveLock();
+		}
+	}
+
+	public boolean remove(final Object iKey) {
+
+		checkForLoading();
+		acquireExclusiveLock();
+		try {
+
+			final long entries = table.cardinality(iKey);
+			if (!table.remove(iKey))
+				return false;
+
+			updateStatistics(-1, -entries);
+			return true;
+
+		} finally {
+			releaseExclusiveLock();
+		}
+	}
+
+	public int remove(final OIdentifiable iRecord) {
+
+		checkForLoading();
+		acquireExclusiveLock();
+		try {
+
+			final int keys = table.getKeyCount();
+			final int removed = table.removeRecord(iRecord.getIdentity());
+			if (removed > 0)
+				updateStatistics(table.getKeyCount() - keys, -removed);
+			return removed;
+
+		} finally {
+			releaseExclusiveLock();
+		}
+	}
+
+	public int count(final OIdentifiable iRecord) {
+
+		checkForLoading();
+		acquireSharedLock();
+		try {
+
+			final ORID rid = iRecord.getIdentity();
+			int tot = 0;
+			for (Object key : table.keys()) {
+				final OCompressedBitmap bitmap = table.get(key, rid.getClusterId());
+				if (bitmap != null && bitmap.contains(rid.getClusterPosition()))
+					++tot;
+			}
+			return tot;
+
+		} finally {
+			releaseSharedLock();
+		}
+	}
+
+	public Collection<OIdentifiable> getValues(final Collection<?> iKeys, final int maxValuesToFetch) {
+
+		checkForLoading();
+		acquireSharedLock();
+		try {
+
+			final Set<Object> keys = new TreeSet<Object>();
+			for (Object key : iKeys)
+				if (table.containsKey(key))
+					keys.add(key);
+			return valuesOfKeys(keys, maxValuesToFetch);
+
+		} finally {
+			releaseSharedLock();
+		}
+	}
+
+	public Collection<ODocument> getEntries(final Collection<?> iKeys, final int maxEntriesToFetch) {
+
+		checkForLoading();
+		acquireSharedLock();
+		try {
+
+			final Set<Object> keys = new TreeSet<Object>();
+			for (Object key : iKeys)
+				if (table.containsKey(key))
+					keys.add(key);
+			return entriesOfKeys(keys, maxEntriesToFetch);
+
+		} finally {
+			releaseSharedLock();
+		}
+	}
+
+	public Collection<OIdentifiable> getValuesBetween(final Object iRangeFrom, final Object iRangeTo) {
+		return getValuesBetween(iRangeFrom, true, iRangeTo, true);
+	}
+
+	public Collection<OIdentifiable> getValuesBetween(final Object iRangeFrom, final boolean iFromInclusive, final Object iRangeTo,
+			final boolean iToInclusive) {
+		return getValuesBetween(iRangeFrom, iFromInclusive, iRangeTo, iToInclusive, -1);
+	}
+
+	public Collection<OIdentifiable> getValuesBetween(final Object iRangeFrom, final boolean iFromInclusive, final Object iRangeTo,
+			final boolean iToInclusive, final int maxValuesToFetch) {
+		checkForLoading();
+		acquireSharedLock();
+		try {
+
+			return valuesOfKeys(keysBetween(iRangeFrom, iFromInclusive, iRangeTo, iToInclusive), maxValuesToFetch);
+
+		} finally {
+			releaseSharedLock();
+		}
+	}
+
+	public Collection<OIdentifiable> getValuesMajor(final Object fromKey, final boolean isInclusive) {
+		return getValuesMajor(fromKey, isInclusive, -1);
+	}
+
+	public Collection<OIdentifiable> getValuesMajor(final Object fromKey, final boolean isInclusive, final int maxValuesToFetch) {
+		return getValuesBetween(fromKey, isInclusive, null, true, maxValuesToFetch);
+	}
+
+	public Collection<OIdentifiable> getValuesMinor(final Object toKey, final boolean isInclusive) {
+		return getValuesMinor(toKey, isInclusive, -1);
+	}
+
+	public Collection<OIdentifiable> getValuesMinor(final Object toKey, final boolean isInclusive, final int maxValuesToFetch) {
+		return getValuesBetween(null, true, toKey, isInclusive, maxValuesToFetch);
+	}
+
+	public Collection<ODocument> getEntriesMajor(final Object fromKey, final boolean isInclusive) {
+		return getEntriesMajor(fromKey, isInclusive, -1);
+	}
+
+	public Collection<ODocument> getEntriesMajor(final Object fromKey, final boolean isInclusive, final int maxEntriesToFetch) {
+		return entriesBetween(fromKey, isInclusive, null, true, maxEntriesToFetch);
+	}
+
+	public Collection<ODocument> getEntriesMinor(final Object toKey, final boolean isInclusive) {
+		return getEntriesMinor(toKey, isInclusive, -1);
+	}
+
+	public Collection<ODocument> getEntriesMinor(final Object toKey, final boolean isInclusive, final int maxEntriesToFetch) {
+		return entriesBetween(null, true, toKey, isInclusive, maxEntriesToFetch);
+	}
+
+	public Collection<ODocument> getEntriesBetween(final Object iRangeFrom, final Object iRangeTo, final boolean iInclusive) {
+		return getEntriesBetween(iRangeFrom, iRangeTo, iInclusive, -1);
+	}
+
+	public Collection<ODocument> getEntriesBetween(final Object iRangeFrom, final Object iRangeTo, final boolean iInclusive,
+			final int maxEntriesToFetch) {
+		return entriesBetween(iRangeFrom, iInclusive, iRangeTo, iInclusive, maxEntriesToFetch);
+	}
+
+	public Collection<ODocument> getEntriesBetween(final Object iRangeFrom, final Object iRangeTo) {
+		return getEntriesBetween(iRangeFrom, iRangeTo, true);
+	}
+
+	/**
+	 * Returns a cursor that reads the records of one key at a time. The records of a key are returned in the order of their
+	 * identity also in descending cursors.
+	 */
+	public OIndexCursor cursor(final Object iRangeFrom, final boolean iFromInclusive, final Object iRangeTo,
+			final boolean iToInclusive, final boolean iAscending) {
+
+		final List<Object> keys;
+		checkForLoading();
+		acquireSharedLock();
+		try {
+
+			final NavigableSet<Object> range = keysBetween(iRangeFrom, iFromInclusive, iRangeTo, iToInclusive);
+			keys = new ArrayList<Object>(iAscending ? range : range.descendingSet());
+
+		} finally {
+			releaseSharedLock();
+		}
+
+		return new OIndexCursor() {
+			private final Iterator<Object>	keyIterator	= keys.iterator();
+			private Iterator<OIdentifiable>	values			= Collections.<OIdentifiable> emptySet().iterator();
+			private Object									key;
+			private Object									lastKey;
+
+			public boolean hasNext() {
+				while (!values.hasNext()) {
+					if (!keyIterator.hasNext())
+						return false;
+					key = keyIterator.next();
+					values = get(key).iterator();
+				}
+				return true;
+			}
+
+			public Entry<Object, OIdentifiable> next() {
+				if (!hasNext())
+					throw new NoSuchElementException();
+				lastKey = key;
+				return new AbstractMap.SimpleImmutableEntry<Object, OIdentifiable>(key, values.next());
+			}
+
+			public void remove() {
+				throw new UnsupportedOperationException("remove");
+			}
+
+			public Object getLastKey() {
+				return lastKey;
+			}
+		};
+	}
+
+	public Iterator<Entry<Object, Collection<OIdentifiable>>> iterator() {
+
+		final List<Object> keys;
+		checkForLoading();
+		acquireSharedLock();
+		try {
+
+			keys = new ArrayList<Object>(table.keys());
+
+		} finally {
+			releaseSharedLock();
+		}
+
+		final Iterator<Object> keyIterator = keys.iterator();
+		return new Iterator<Entry<Object, Collection<OIdentifiable>>>() {
+			public boolean hasNext() {
+				return keyIterator.hasNext();
+			}
+
+			public Entry<Object, Collection<OIdentifiable>> next() {
+				final Object key = keyIterator.next();
+				return new AbstractMap.SimpleImmutableEntry<Object, Collection<OIdentifiable>>(key, get(key));
+			}
+
+			public void remove() {
+				throw new UnsupportedOperationException("remove");
+			}
+		};
+	}
+
+	public Iterable<Object> keys() {
+
+		checkForLoading();
+		acquireSharedLock();
+		try {
+
+			return new ArrayList<Object>(table.keys());
+
+		} finally {
+			releaseSharedLock();
+		}
+	}
+
+	public long getSize() {
+
+		checkForLoading();
+		acquireSharedLock();
+		try {
+
+			return table.getKeyCount();
+
+		} finally {
+			releaseSharedLock();
+		}
+	}
+
+	/**
+	 * Populates the index with all the existent records, saving the bitmaps only at the end: the segments are changed by many records
+	 * in a row.
+	 */
+	@Override
+	public long rebuild(final OProgressListener iProgressListener) {
+		checkForLoading();
+		acquireExclusiveLock();
+		try {
+
+			final int maxUpdatesBeforeSave = table.getMaxUpdatesBeforeSave();
+			table.setMaxUpdatesBeforeSave(-1);
+			try {
+				return super.rebuild(iProgressListener);
+			} finally {
+				table.setMaxUpdatesBeforeSave(maxUpdatesBeforeSave);
+			}
+
+		} finally {
+			releaseExclusiveLock();
+		}
+	}
+
+	public OIndex<Collection<OIdentifiable>> clear() {
+
+		checkForLoading();
+		acquireExclusiveLock();
+		try {
+
+			table.clear();
+			clearStatistics();
+			return this;
+
+		} finally {
+			releaseExclusiveLock();
+		}
+	}
+
+	public ORecord<?> getRecord() {
+		return table.getRecord();
+	}
+
+	/**
+	 * Saves also the bitmaps changed out of transactions, that are saved only every "maxUpdatesBeforeSave" updates.
+	 */
+	@Override
+	public void onClose(final ODatabase iDatabase) {
+		lazySave();
+		super.onClose(iDatabase);
+	}
+
+	@Override
+	protected void installHooks(final ODatabaseRecord iDatabase) {
+		OProfiler.getInstance().registerHookValue("index." + name + ".keys", new OProfilerHookValue() {
+			public Object getValue() {
+				acquireSharedLock();
+				try {
+					return table != null ? table.getKeyCount() : "-";
+				} finally {
+					releaseSharedLock();
+				}
+			}
+		});
+
+		super.installHooks(iDatabase);
+	}
+
+	@Override
+	protected void uninstallHooks(final ODatabaseRecord iDatabase) {
+		OProfiler.getInstance().unregisterHookValue("index." + name + ".keys");
+		super.uninstallHooks(iDatabase);
+	}
+
+	protected void freeMemory() {
+		acquireExclusiveLock();
+		try {
+
+			if (memoryLow) {
+				memoryLow = false;
+				table.lazySave();
+				final int freed = table.freeMemory();
+				OLogManager.instance().debug(this, "Freed %d bitmaps of index %s", freed, name);
+			}
+
+		} finally {
+			releaseExclusiveLock();
+		}
+	}
+
+	/**
+	 * Converts a key unmarshalled from a transaction to the type of the index, since the keys are kept sorted and must be comparable
+	 * with each other. The "*" key stands for all the keys.
+	 */
+	@Override
+	protected Object convertKey(final Object iKey) {
+		final Class<?> keyClass = getKeyClass();
+		if (keyClass == null || "*".equals(iKey))
+			return iKey;
+
+		final Object converted = OType.convert(iKey, keyClass);
+		return converted != null ? converted : iKey;
+	}
+
+	/**
+	 * Returns the class of the keys of a single field index, or null if the keys are composite or their type is unknown.
+	 */
+	protected Class<?> getKeyClass() {
+		final OType[] types = getKeyTypes();
+		if (types == null || types.length != 1 || indexDefinition instanceof OCompositeIndexDefinition)
+			return null;
+		return types[0].getDefaultJavaType();
+	}
+
+	/**
+	 * Returns a copy of the bitmaps of the key. Must be called under lock.
+	 */
+	protected TreeMap<Integer, OCompressedBitmap> getBitmapsInternal(final Object iKey) {
+		final TreeMap<Integer, OCompressedBitmap> result = new TreeMap<Integer, OCompressedBitmap>();
+		if (iKey == null)
+			return result;
+
+		for (Integer clusterId : table.getClusterIds(iKey))
+			result.put(clusterId, table.get(iKey, clusterId).clone());
+		return result;
+	}
+
+	/**
+	 * Returns the keys in the range, null bounds are open. Must be called under lock.
+	 */
+	@SuppressWarnings("unchecked")
+	protected NavigableSet<Object> keysBetween(final Object iRangeFrom, final boolean iFromInclusive, final Object iRangeTo,
+			final boolean iToInclusive) {
+		final NavigableSet<Object> keys = table.keys();
+		if (iRangeFrom != null && iRangeTo != null) {
+			if (((Comparable<Object>) iRangeFrom).compareTo(iRangeTo) > 0)
+				return new TreeSet<Object>();
+			return keys.subSet(iRangeFrom, iFromInclusive, iRangeTo, iToInclusive);
+		} else if (iRangeFrom != null)
+			return keys.tailSet(iRangeFrom, iFromInclusive);
+		else if (iRangeTo != null)
+			return keys.headSet(iRangeTo, iToInclusive);
+		return keys;
+	}
+
+	/**
+	 * Returns the records of the keys passed, that must be present. Must be called under lock.
+	 */
+	protected Collection<OIdentifiable> valuesOfKeys(final Set<Object> iKeys, final int maxValuesToFetch) {
+		final Set<OIdentifiable> result = new HashSet<OIdentifiable>();
+		for (Object key : iKeys)
+			for (OIdentifiable value : new OBitmapRIDCollection(getBitmapsInternal(key))) {
+				if (maxValuesToFetch > -1 && result.size() == maxValuesToFetch)
+					return result;
+				result.add(value);
+			}
+		return result;
+	}
+
+	/**
+	 * Returns the entries of the keys passed, that must be present. Must be called under lock.
+	 */
+	protected Collection<ODocument> entriesOfKeys(final Set<Object> iKeys, final int maxEntriesToFetch) {
+		final Set<ODocument> result = new ODocumentFieldsHashSet();
+		for (Object key : iKeys)
+			for (OIdentifiable value : new OBitmapRIDCollection(getBitmapsInternal(key))) {
+				if (maxEntriesToFetch > -1 && result.size() == maxEntriesToFetch)
+					return result;
+
+				final ODocument document = new ODocument();
+				document.field("key", key);
+				document.field("rid", value.getIdentity());
+				document.unsetDirty();
+
+				result.add(document);
+			}
+		return result;
+	}
+
+	protected Collection<ODocument> entriesBetween(final Object iRangeFrom, final boolean iFromInclusive, final Object iRangeTo,
+			final boolean iToInclusive, final int maxEntriesToFetch) {
+		checkForLoading();
+		acquireSharedLock();
+		try {
+
+			return entriesOfKeys(keysBetween(iRangeFrom, iFromInclusive, iRangeTo, iToInclusive), maxEntriesToFetch);
+
+		} finally {
+			releaseSharedLock();
+		}
+	}
+}
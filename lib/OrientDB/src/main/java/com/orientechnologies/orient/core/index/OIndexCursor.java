@@ -0,0 +1,36 @@
+/*
+ * Copyright 1999-2010 Luca Garulli (l.garulli--at--orientechnologies.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.orientechnologies.orient.core.index;
+
+import java.util.Iterator;
+import java.util.Map.Entry;
+
+import com.orientechnologies.orient.core.db.record.OIdentifiable;
+
+/**
+ * Iterator over the key/record pairs of an index range, in key order. Pairs are read lazily, so who stops early does not pay for
+ * the rest of the range. Indexes with more records per key return a pair for each record.
+ *
+ * @author Luca Garulli
+ * @see OIndex#cursor(Object, boolean, Object, boolean, boolean)
+ */
+public interface OIndexCursor extends Iterator<Entry<Object, OIdentifiable>> {
+	/**
+	 * Returns the key of the last pair returned, or null if none was returned yet. A new cursor opened with this key as exclusive
+	 * bound resumes after it.
+	 */
+	public Object getLastKey();
+}
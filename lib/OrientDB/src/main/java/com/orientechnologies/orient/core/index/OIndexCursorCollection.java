@@ -0,0 +1,93 @@
+/*
+ * Copyright 1999-2010 Luca Garulli (l.garulli--at--orientechnologies.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.orientechnologies.orient.core.index;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map.Entry;
+
+import com.orientechnologies.orient.core.db.record.OIdentifiable;
+import com.orientechnologies.orient.core.record.impl.ODocument;
+
+/**
+ * Cursor over pairs already loaded in memory. Used by the indexes that cannot read their range lazily, like the remote ones.
+ *
+ * @author Luca Garulli
+ */
+public class OIndexCursorCollection implements OIndexCursor {
+	private final Iterator<Entry<Object, OIdentifiable>>	iterator;
+	private Object																				lastKey;
+
+	/**
+	 * @param iEntries
+	 *          Pairs in the order to return
+	 */
+	public OIndexCursorCollection(final Collection<Entry<Object, OIdentifiable>> iEntries) {
+		iterator = iEntries.iterator();
+	}
+
+	/**
+	 * Creates the cursor from index entries as documents with the "key" and "rid" fields, sorting them by key.
+	 */
+	public static OIndexCursorCollection fromDocuments(final Collection<ODocument> iEntries, final boolean iAscending) {
+		final List<Entry<Object, OIdentifiable>> entries = new ArrayList<Entry<Object, OIdentifiable>>(iEntries.size());
+		for (ODocument d : iEntries)
+			entries.add(new AbstractMap.SimpleImmutableEntry<Object, OIdentifiable>(d.field("key"), (OIdentifiable) d.field("rid")));
+
+		Collections.sort(entries, new Comparator<Entry<Object, OIdentifiable>>() {
+			@SuppressWarnings("unchecked")
+			public int compare(final Entry<Object, OIdentifiable> o1, final Entry<Object, OIdentifiable> o2) {
+				final int result = ((Comparable<Object>) o1.getKey()).compareTo(o2.getKey());
+				return iAscending ? result : -result;
+			}
+		});
+
+		return new OIndexCursorCollection(entries);
+	}
+
+	/**
+	 * Creates the cursor from records without keys. The pairs are returned with null keys.
+	 */
+	public static OIndexCursorCollection fromValues(final Collection<OIdentifiable> iValues) {
+		final List<Entry<Object, OIdentifiable>> entries = new ArrayList<Entry<Object, OIdentifiable>>(iValues.size());
+		for (OIdentifiable v : iValues)
+			entries.add(new AbstractMap.SimpleImmutableEntry<Object, OIdentifiable>(null, v));
+		return new OIndexCursorCollection(entries);
+	}
+
+	public boolean hasNext() {
+		return iterator.hasNext();
+	}
+
+	public Entry<Object, OIdentifiable> next() {
+		final Entry<Object, OIdentifiable> entry = iterator.next();
+		lastKey = entry.getKey();
+		return entry;
+	}
+
+	public void remove() {
+		throw new UnsupportedOperationException("remove");
+	}
+
+	public Object getLastKey() {
+		return lastKey;
+	}
+}
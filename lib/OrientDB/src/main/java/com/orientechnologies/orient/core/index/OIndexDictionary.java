@@ -30,14 +30,18 @@ public class OIndexDictionary extends OIndexOneValue {
 	}
 
 	public OIndexOneValue put(final Object iKey, final OIdentifiable iSingleValue) {
+		checkForLoading();
 		acquireExclusiveLock();
 		try {
 			checkForKeyType(iKey);
 
 			final OIdentifiable value = map.get(iKey);
 
-			if (value == null || !value.equals(iSingleValue))
+			if (value == null || !value.equals(iSingleValue)) {
 				map.put(iKey, iSingleValue);
+				if (value == null)
+					updateStatistics(1, 1);
+			}
 
 			return this;
 
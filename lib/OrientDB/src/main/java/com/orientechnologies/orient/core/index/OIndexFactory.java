@@ -31,6 +31,8 @@ public class OIndexFactory extends ODynamicFactory<String, Class<? extends OInde
 		register(OClass.INDEX_TYPE.NOTUNIQUE.toString(), OIndexNotUnique.class);
 		register(OClass.INDEX_TYPE.FULLTEXT.toString(), OIndexFullText.class);
 		register(OClass.INDEX_TYPE.DICTIONARY.toString(), OIndexDictionary.class);
+		register(OClass.INDEX_TYPE.UNIQUE_HASH.toString(), OIndexUniqueHash.class);
+		register(OClass.INDEX_TYPE.BITMAP.toString(), OIndexBitmap.class);
 	}
 
 	@SuppressWarnings("unchecked")
@@ -16,14 +16,21 @@
 package com.orientechnologies.orient.core.index;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 
+import com.orientechnologies.orient.core.config.OGlobalConfiguration;
+
 import com.orientechnologies.orient.core.db.record.OIdentifiable;
+import com.orientechnologies.orient.core.id.ORID;
 import com.orientechnologies.orient.core.db.record.ORecordElement;
 import com.orientechnologies.orient.core.record.impl.ODocument;
 import com.orientechnologies.orient.core.serialization.serializer.OStringSerializerHelper;
+import com.orientechnologies.orient.core.serialization.serializer.stream.OStreamSerializer;
+import com.orientechnologies.orient.core.serialization.serializer.stream.OStreamSerializerLiteral;
+import com.orientechnologies.orient.core.serialization.serializer.stream.OStringKeySerializer;
 import com.orientechnologies.orient.core.type.tree.OMVRBTreeRIDSet;
 
 /**
@@ -81,6 +88,8 @@ public class OIndexFullText extends OIndexMultiValues {
 		if (iKey == null)
 			return this;
 
+		checkForLoading();
+
 		final List<String> words = splitIntoWords(iKey.toString());
 
 		// FOREACH WORD CREATE THE LINK TO THE CURRENT DOCUMENT
@@ -93,15 +102,18 @@ public class OIndexFullText extends OIndexMultiValues {
 				// SEARCH FOR THE WORD
 				refs = map.get(word);
 
-				if (refs == null)
+				final boolean newWord = refs == null;
+				if (newWord)
 					// WORD NOT EXISTS: CREATE THE KEYWORD CONTAINER THE FIRST TIME THE WORD IS FOUND
 					refs = new OMVRBTreeRIDSet().setAutoConvert(false);
 
 				// ADD THE CURRENT DOCUMENT AS REF FOR THAT WORD
+				final int oldSize = refs.size();
 				refs.add(iSingleValue);
 
 				// SAVE THE INDEX ENTRY
 				map.put(word, refs);
+				updateStatistics(newWord ? 1 : 0, refs.size() - oldSize);
 
 			} finally {
 				releaseExclusiveLock();
@@ -122,6 +134,8 @@ public class OIndexFullText extends OIndexMultiValues {
 	 */
 	@Override
 	public boolean remove(final Object iKey, final OIdentifiable value) {
+		checkForLoading();
+
 		final List<String> words = splitIntoWords(iKey.toString());
 		boolean removed = false;
 
@@ -132,10 +146,13 @@ public class OIndexFullText extends OIndexMultiValues {
 				final Set<OIdentifiable> recs = get(word);
 				if (recs != null && !recs.isEmpty()) {
 					if (recs.remove(value)) {
-						if (recs.isEmpty())
-							map.remove(iKey);
-						else
-							map.put(iKey, recs);
+						if (recs.isEmpty()) {
+							map.remove(word);
+							updateStatistics(-1, -1);
+						} else {
+							map.put(word, recs);
+							updateStatistics(0, -1);
+						}
 						removed = true;
 					}
 				}
@@ -147,6 +164,30 @@ public class OIndexFullText extends OIndexMultiValues {
 		return removed;
 	}
 
+	/**
+	 * Collects the single words of the value, or of every item if it's a collection.
+	 */
+	@Override
+	protected void collectKeys(final Object iFieldValue, final ORID iRID, final OIndexKeySorter iSorter) {
+		if (iFieldValue instanceof Collection) {
+			for (final Object fieldValueItem : (Collection<?>) iFieldValue)
+				if (fieldValueItem != null)
+					collectKeys(fieldValueItem, iRID, iSorter);
+		} else
+			for (final String word : splitIntoWords(iFieldValue.toString()))
+				iSorter.add(word, iRID);
+	}
+
+	/**
+	 * Keys are the words of the values, so they are always strings whatever the type of the indexed property.
+	 */
+	@Override
+	protected OStreamSerializer createKeySerializer() {
+		if (OGlobalConfiguration.INDEX_COMPRESSED_STRING_KEYS.getValueAsBoolean())
+			return OStringKeySerializer.INSTANCE;
+		return OStreamSerializerLiteral.INSTANCE;
+	}
+
 	@Override
 	public ODocument updateConfiguration() {
 		super.updateConfiguration();
@@ -0,0 +1,303 @@
+/*
+ * Copyright 1999-2010 Luca Garulli (l.garulli--at--orientechnologies.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.orientechnologies.orient.core.index;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinTask;
+
+import com.orientechnologies.orient.core.Orient;
+import com.orientechnologies.orient.core.id.ORID;
+import com.orientechnologies.orient.core.id.ORecordId;
+import com.orientechnologies.orient.core.serialization.serializer.stream.OStreamSerializer;
+
+/**
+ * External merge sort of the key/RID pairs collected by the rebuild of an index. Pairs are kept in memory up to the buffer size,
+ * then the buffer is sorted and written in a temporary file as a sorted run by a thread of the scan pool while the collecting goes
+ * on. Sorted pairs are read back by merging the runs. Pairs are ordered by key, then by RID.
+ *
+ * @author Luca Garulli
+ */
+public class OIndexKeySorter {
+	private static final int															IO_BUFFER_SIZE	= 64 * 1024;
+
+	private static final Comparator<Entry<Object, ORID>>	COMPARATOR			= new PairComparator();
+
+	private final OStreamSerializer												keySerializer;
+	private final int																			bufferSize;
+	private Entry<Object, ORID>[]													buffer;
+	private int																						buffered;
+	private boolean																				sorted;
+	private final List<File>															runs						= new ArrayList<File>();
+	private ForkJoinTask<File>														pendingRun;
+	private long																					size;
+
+	/**
+	 * Creates a new sorter.
+	 *
+	 * @param iKeySerializer
+	 *          Serializer used to write the keys in the runs
+	 * @param iBufferSize
+	 *          Number of pairs to sort in memory before writing them as a run
+	 */
+	public OIndexKeySorter(final OStreamSerializer iKeySerializer, final int iBufferSize) {
+		if (iBufferSize < 1)
+			throw new IllegalArgumentException("Buffer size must be positive");
+
+		keySerializer = iKeySerializer;
+		bufferSize = iBufferSize;
+		buffer = newBuffer(Math.min(iBufferSize, 1024));
+	}
+
+	/**
+	 * Adds a pair. Once the buffer is full it is written as a run while the next pairs are collected in a new buffer.
+	 */
+	public void add(final Object iKey, final ORID iRID) {
+		if (sorted)
+			throw new IllegalStateException("Cannot add keys once sorted");
+
+		if (buffered == buffer.length) {
+			if (buffered < bufferSize)
+				buffer = Arrays.copyOf(buffer, Math.min(bufferSize, buffered << 1));
+			else {
+				spill();
+				buffer = newBuffer(bufferSize);
+			}
+		}
+
+		buffer[buffered++] = new AbstractMap.SimpleImmutableEntry<Object, ORID>(iKey, iRID);
+		size++;
+	}
+
+	/**
+	 * Returns the pairs sorted. The first call writes the last run if any: after it no more pairs can be added. Every call merges the
+	 * runs again, so the sorted pairs can be browsed many times.
+	 */
+	public Iterator<Entry<Object, ORID>> iterator() {
+		if (!sorted) {
+			if (runs.isEmpty() && pendingRun == null)
+				// EVERYTHING IN MEMORY
+				Arrays.sort(buffer, 0, buffered, COMPARATOR);
+			else if (buffered > 0)
+				spill();
+
+			waitForPendingRun();
+			sorted = true;
+		}
+
+		if (runs.isEmpty())
+			return Arrays.asList(buffer).subList(0, buffered).iterator();
+
+		return new MergeIterator();
+	}
+
+	/**
+	 * Returns the number of pairs added.
+	 */
+	public long getSize() {
+		return size;
+	}
+
+	/**
+	 * Returns the number of sorted runs written on disk.
+	 */
+	public int getRuns() {
+		waitForPendingRun();
+		return runs.size();
+	}
+
+	/**
+	 * Frees the memory and deletes the temporary files.
+	 */
+	public void close() {
+		try {
+			waitForPendingRun();
+		} catch (OIndexException e) {
+			// IGNORE IT: ONLY CLEANING UP
+		}
+
+		for (File run : runs)
+			run.delete();
+		runs.clear();
+		buffer = null;
+		buffered = 0;
+	}
+
+	/**
+	 * Sorts the current buffer and writes it in the background, waiting for the previous run to assure at most two buffers are in
+	 * memory.
+	 */
+	private void spill() {
+		waitForPendingRun();
+
+		final Entry<Object, ORID>[] toWrite = buffer;
+		final int toWriteSize = buffered;
+		buffer = newBuffer(0);
+		buffered = 0;
+
+		pendingRun = Orient.getScanPool().submit(new Callable<File>() {
+			public File call() throws Exception {
+				Arrays.sort(toWrite, 0, toWriteSize, COMPARATOR);
+				return writeRun(toWrite, toWriteSize);
+			}
+		});
+	}
+
+	private void waitForPendingRun() {
+		if (pendingRun == null)
+			return;
+
+		try {
+			runs.add(pendingRun.get());
+		} catch (Exception e) {
+			throw new OIndexException("Error on writing sorted keys in a temporary file", e);
+		} finally {
+			pendingRun = null;
+		}
+	}
+
+	private File writeRun(final Entry<Object, ORID>[] iPairs, final int iSize) throws IOException {
+		final File file = File.createTempFile("orient-index-", ".run");
+		file.deleteOnExit();
+
+		final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), IO_BUFFER_SIZE));
+		try {
+			for (int i = 0; i < iSize; ++i) {
+				final byte[] key = keySerializer.toStream(iPairs[i].getKey());
+				out.writeInt(key.length);
+				out.write(key);
+				out.writeInt(iPairs[i].getValue().getClusterId());
+				out.writeLong(iPairs[i].getValue().getClusterPosition());
+			}
+		} finally {
+			out.close();
+		}
+		return file;
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private static Entry<Object, ORID>[] newBuffer(final int iSize) {
+		return new Entry[iSize];
+	}
+
+	/**
+	 * Orders the pairs by key, then by RID.
+	 */
+	private static class PairComparator implements Comparator<Entry<Object, ORID>> {
+		@SuppressWarnings("unchecked")
+		public int compare(final Entry<Object, ORID> o1, final Entry<Object, ORID> o2) {
+			final int cmp = ((Comparable<Object>) o1.getKey()).compareTo(o2.getKey());
+			if (cmp != 0)
+				return cmp;
+			return o1.getValue().compareTo(o2.getValue());
+		}
+	}
+
+	/**
+	 * Reads a run sequentially.
+	 */
+	private class RunReader {
+		private final DataInputStream	in;
+		private Entry<Object, ORID>		current;
+
+		private RunReader(final File iFile) throws IOException {
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(iFile), IO_BUFFER_SIZE));
+		}
+
+		private boolean next() throws IOException {
+			final int length;
+			try {
+				length = in.readInt();
+			} catch (EOFException e) {
+				in.close();
+				current = null;
+				return false;
+			}
+
+			final byte[] key = new byte[length];
+			in.readFully(key);
+			final ORID rid = new ORecordId(in.readInt(), in.readLong());
+
+			current = new AbstractMap.SimpleImmutableEntry<Object, ORID>(keySerializer.fromStream(key), rid);
+			return true;
+		}
+	}
+
+	/**
+	 * Merges the runs by keeping the head of every run in a priority queue.
+	 */
+	private class MergeIterator implements Iterator<Entry<Object, ORID>> {
+		private final PriorityQueue<RunReader>	queue;
+
+		private MergeIterator() {
+			queue = new PriorityQueue<RunReader>(runs.size(), new Comparator<RunReader>() {
+				public int compare(final RunReader o1, final RunReader o2) {
+					return COMPARATOR.compare(o1.current, o2.current);
+				}
+			});
+
+			try {
+				for (File run : runs) {
+					final RunReader reader = new RunReader(run);
+					if (reader.next())
+						queue.add(reader);
+				}
+			} catch (IOException e) {
+				throw new OIndexException("Error on reading sorted keys from temporary files", e);
+			}
+		}
+
+		public boolean hasNext() {
+			return !queue.isEmpty();
+		}
+
+		public Entry<Object, ORID> next() {
+			final RunReader reader = queue.poll();
+			if (reader == null)
+				throw new NoSuchElementException();
+
+			final Entry<Object, ORID> result = reader.current;
+			try {
+				if (reader.next())
+					queue.add(reader);
+			} catch (IOException e) {
+				throw new OIndexException("Error on reading sorted keys from temporary files", e);
+			}
+			return result;
+		}
+
+		public void remove() {
+			throw new UnsupportedOperationException("remove");
+		}
+	}
+}
@@ -15,44 +15,41 @@
  */
 package com.orientechnologies.orient.core.index;
 
-import java.lang.reflect.InvocationTargetException;
+import java.util.AbstractMap;
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Collections;
+import java.util.Comparator;
 import java.util.Iterator;
-import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.Locale;
 import java.util.Map.Entry;
-import java.util.Set;
+import java.util.NoSuchElementException;
 
-import com.orientechnologies.common.collection.OCompositeKey;
-import com.orientechnologies.common.concur.resource.OSharedResourceAdaptiveExternal;
+import com.orientechnologies.common.collection.OMVRBTree;
+import com.orientechnologies.common.collection.OMVRBTreeEntry;
 import com.orientechnologies.common.listener.OProgressListener;
 import com.orientechnologies.common.log.OLogManager;
 import com.orientechnologies.common.profiler.OProfiler;
 import com.orientechnologies.common.profiler.OProfiler.OProfilerHookValue;
-import com.orientechnologies.orient.core.Orient;
-import com.orientechnologies.orient.core.annotation.ODocumentInstance;
 import com.orientechnologies.orient.core.config.OGlobalConfiguration;
 import com.orientechnologies.orient.core.db.ODatabase;
-import com.orientechnologies.orient.core.db.ODatabaseListener;
-import com.orientechnologies.orient.core.db.ODatabaseRecordThreadLocal;
 import com.orientechnologies.orient.core.db.record.ODatabaseRecord;
+import com.orientechnologies.orient.core.db.record.ODatabaseRecordAbstract;
 import com.orientechnologies.orient.core.db.record.OIdentifiable;
-import com.orientechnologies.orient.core.db.record.ORecordElement;
 import com.orientechnologies.orient.core.id.ORID;
 import com.orientechnologies.orient.core.intent.OIntentMassiveInsert;
-import com.orientechnologies.orient.core.memory.OMemoryWatchDog.Listener;
+import com.orientechnologies.orient.core.iterator.ORecordIteratorClustersParallel;
 import com.orientechnologies.orient.core.metadata.schema.OType;
 import com.orientechnologies.orient.core.record.ORecord;
+import com.orientechnologies.orient.core.record.ORecordInternal;
 import com.orientechnologies.orient.core.record.impl.ODocument;
-import com.orientechnologies.orient.core.serialization.serializer.OStringSerializerHelper;
-import com.orientechnologies.orient.core.serialization.serializer.record.string.ORecordSerializerStringAbstract;
 import com.orientechnologies.orient.core.serialization.serializer.stream.OCompositeKeySerializer;
+import com.orientechnologies.orient.core.serialization.serializer.stream.OPrimitiveKeySerializer;
 import com.orientechnologies.orient.core.serialization.serializer.stream.OStreamSerializer;
 import com.orientechnologies.orient.core.serialization.serializer.stream.OStreamSerializerLiteral;
-import com.orientechnologies.orient.core.tx.OTransactionIndexChanges.OPERATION;
+import com.orientechnologies.orient.core.serialization.serializer.stream.OStringKeySerializer;
 import com.orientechnologies.orient.core.type.tree.OMVRBTreeDatabaseLazySave;
+import com.orientechnologies.orient.core.type.tree.OMVRBTreeRIDSet;
+import com.orientechnologies.orient.core.type.tree.provider.OMVRBTreeMapProvider;
 import com.orientechnologies.orient.core.type.tree.provider.OMVRBTreeProviderAbstract;
 
 /**
@@ -61,171 +58,90 @@ import com.orientechnologies.orient.core.type.tree.provider.OMVRBTreeProviderAbs
  * @author Luca Garulli
  * 
  */
-public abstract class OIndexMVRBTreeAbstract<T> extends OSharedResourceAdaptiveExternal implements OIndexInternal<T>,
-		ODatabaseListener {
-	protected static final String										CONFIG_MAP_RID	= "mapRid";
-	protected static final String										CONFIG_CLUSTERS	= "clusters";
-	protected String																name;
-	protected String																type;
+public abstract class OIndexMVRBTreeAbstract<T> extends OIndexAbstract<T> {
 	protected OMVRBTreeDatabaseLazySave<Object, T>	map;
-	protected Set<String>														clustersToIndex	= new LinkedHashSet<String>();
-	protected OIndexDefinition											indexDefinition;
-
-	@ODocumentInstance
-	protected ODocument															configuration;
-	private final Listener													watchDog;
 
 	public OIndexMVRBTreeAbstract(final String iType) {
-		super(true, OGlobalConfiguration.MVRBTREE_TIMEOUT.getValueAsInteger());
-
-		type = iType;
-		watchDog = new Listener() {
-			public void memoryUsageLow(final long iFreeMemory, final long iFreeMemoryPercentage) {
-				map.setOptimization(iFreeMemoryPercentage < 10 ? 2 : 1);
-			}
-		};
+		super(iType);
 	}
 
-	public void flush() {
-		lazySave();
+	@Override
+	protected Object getContainer() {
+		return map;
 	}
 
-	/**
-	 * Creates the index.
-	 * 
-	 * @param iDatabase
-	 *          Current Database instance
-	 * @param iClusterIndexName
-	 *          Cluster name where to place the TreeMap
-	 * @param iProgressListener
-	 */
-	public OIndexInternal<?> create(final String iName, final OIndexDefinition iIndexDefinition, final ODatabaseRecord iDatabase,
-			final String iClusterIndexName, final int[] iClusterIdsToIndex, final OProgressListener iProgressListener,
+	@Override
+	protected void createContainer(final ODatabaseRecord iDatabase, final String iClusterIndexName,
 			final OStreamSerializer iValueSerializer) {
-		acquireExclusiveLock();
-		try {
-
-			name = iName;
-			configuration = new ODocument();
-
-			indexDefinition = iIndexDefinition;
-
-			if (iClusterIdsToIndex != null)
-				for (final int id : iClusterIdsToIndex)
-					clustersToIndex.add(iDatabase.getClusterNameById(id));
-
-			final OStreamSerializer keySerializer;
-			if (indexDefinition instanceof OCompositeIndexDefinition)
-				keySerializer = OCompositeKeySerializer.INSTANCE;
-			else
-				keySerializer = OStreamSerializerLiteral.INSTANCE;
-
-			map = new OMVRBTreeDatabaseLazySave<Object, T>(iDatabase, iClusterIndexName, keySerializer, iValueSerializer);
-
-			installHooks(iDatabase);
-
-			rebuild(iProgressListener);
-			updateConfiguration();
-		} catch (Exception e) {
-			if (map != null)
-				map.delete();
-			if (e instanceof OIndexException)
-				throw (OIndexException) e;
+		map = new OMVRBTreeDatabaseLazySave<Object, T>(iDatabase, iClusterIndexName, createKeySerializer(), iValueSerializer);
+		map.setSharedReads(true);
+	}
 
-			throw new OIndexException("Cannot create the index '" + iName + "'", e);
+	@Override
+	protected void openContainer(final ORID iRid) {
+		map = new OMVRBTreeDatabaseLazySave<Object, T>(getDatabase(), iRid);
+		map.setSharedReads(true);
+	}
 
-		} finally {
-			releaseExclusiveLock();
-		}
-		return this;
+	@Override
+	protected void loadContainer() {
+		map.load();
 	}
 
-	public OIndexInternal<T> loadFromConfiguration(final ODocument iConfig) {
-		acquireExclusiveLock();
-		try {
+	@Override
+	protected void deleteContainer() {
+		map.delete();
+	}
 
-			final ORID rid = (ORID) iConfig.field(CONFIG_MAP_RID, ORID.class);
-			if (rid == null)
-				throw new OIndexException("Error during deserialization of index definition: '" + CONFIG_MAP_RID + "' attribute is null");
-
-			configuration = iConfig;
-			name = configuration.field(OIndexInternal.CONFIG_NAME);
-
-			final ODocument indexDefinitionDoc = configuration.field(OIndexInternal.INDEX_DEFINITION);
-			if (indexDefinitionDoc != null) {
-				try {
-					final String indexDefClassName = configuration.field(OIndexInternal.INDEX_DEFINITION_CLASS);
-					final Class<?> indexDefClass = Class.forName(indexDefClassName);
-					indexDefinition = (OIndexDefinition) indexDefClass.getDeclaredConstructor().newInstance();
-					indexDefinition.fromStream(indexDefinitionDoc);
-
-				} catch (final ClassNotFoundException e) {
-					throw new OIndexException("Error during deserialization of index definition", e);
-				} catch (final NoSuchMethodException e) {
-					throw new OIndexException("Error during deserialization of index definition", e);
-				} catch (final InvocationTargetException e) {
-					throw new OIndexException("Error during deserialization of index definition", e);
-				} catch (final InstantiationException e) {
-					throw new OIndexException("Error during deserialization of index definition", e);
-				} catch (final IllegalAccessException e) {
-					throw new OIndexException("Error during deserialization of index definition", e);
-				}
-			} else {
-				// @COMPATIBILITY 1.0rc6 new index model was implemented
-				final Boolean isAutomatic = configuration.field(OIndexInternal.CONFIG_AUTOMATIC);
-				if (Boolean.TRUE.equals(isAutomatic)) {
-					final int pos = name.lastIndexOf('.');
-					if (pos < 0)
-						throw new OIndexException("Can not convert from old index model to new one. "
-								+ "Invalid index name. Dot (.) separator should be present.");
-					final String className = name.substring(0, pos);
-					final String propertyName = name.substring(pos + 1);
-
-					final String keyTypeStr = configuration.field(OIndexInternal.CONFIG_KEYTYPE);
-					if (keyTypeStr == null)
-						throw new OIndexException("Can not convert from old index model to new one. " + "Index key type is absent.");
-					final OType keyType = OType.valueOf(keyTypeStr.toUpperCase(Locale.ENGLISH));
-					indexDefinition = new OPropertyIndexDefinition(className, propertyName, keyType);
-
-					configuration.removeField(OIndexInternal.CONFIG_AUTOMATIC);
-					configuration.removeField(OIndexInternal.CONFIG_KEYTYPE);
-				} else if (configuration.field(OIndexInternal.CONFIG_KEYTYPE) != null) {
-					final String keyTypeStr = configuration.field(OIndexInternal.CONFIG_KEYTYPE);
-					final OType keyType = OType.valueOf(keyTypeStr.toUpperCase(Locale.ENGLISH));
-
-					indexDefinition = new OSimpleKeyIndexDefinition(keyType);
-
-					configuration.removeField(OIndexInternal.CONFIG_KEYTYPE);
-				}
-			}
+	@Override
+	protected void lazySaveContainer() {
+		map.lazySave();
+	}
 
-			clustersToIndex.clear();
+	@Override
+	protected void unloadContainer() {
+		map.unload();
+	}
 
-			final Collection<? extends String> clusters = configuration.field(CONFIG_CLUSTERS);
-			if (clusters != null)
-				clustersToIndex.addAll(clusters);
+	@Override
+	protected void commitContainerChanges() {
+		map.commitChanges();
+	}
 
-			map = new OMVRBTreeDatabaseLazySave<Object, T>(getDatabase(), rid);
-			map.load();
+	@Override
+	protected void setRunningTransaction(final boolean iValue) {
+		map.setRunningTransaction(iValue);
+	}
 
-			installHooks(iConfig.getDatabase());
+	@Override
+	protected long getContainerSize() {
+		return map.size();
+	}
 
-			return this;
+	@Override
+	protected void onMemoryLow(final long iFreeMemoryPercentage) {
+		map.setOptimization(iFreeMemoryPercentage < 10 ? 2 : 1);
+	}
 
-		} finally {
-			releaseExclusiveLock();
-		}
+	/**
+	 * Executes the optimization requested by the memory watch dog, because reads under the shared lock never optimize the tree.
+	 */
+	@Override
+	protected void checkForOptimization() {
+		if (map != null && map.getOptimization() > 0)
+			optimize(map.getOptimization() > 1);
 	}
 
 	public boolean contains(final Object iKey) {
 
-		acquireExclusiveLock();
+		checkForLoading();
+		acquireSharedLock();
 		try {
 
 			return map.containsKey(iKey);
 
 		} finally {
-			releaseExclusiveLock();
+			releaseSharedLock();
 		}
 	}
 
@@ -301,69 +217,83 @@ public abstract class OIndexMVRBTreeAbstract<T> extends OSharedResourceAdaptiveE
 		return getEntriesBetween(iRangeFrom, iRangeTo, iInclusive, -1);
 	}
 
-	public Collection<OIdentifiable> getValues(final Collection<?> iKeys) {
-		return getValues(iKeys, -1);
-	}
-
-	public Collection<ODocument> getEntries(final Collection<?> iKeys) {
-		return getEntries(iKeys, -1);
-	}
-
-	public ORID getIdentity() {
-		return ((OMVRBTreeProviderAbstract<Object, ?>) map.getProvider()).getRecord().getIdentity();
-	}
+	/**
+	 * Populates the index with all the existent records, building the tree from the sorted keys if enabled.
+	 * 
+	 * @see OGlobalConfiguration#INDEX_REBUILD_SORTED
+	 */
+	@Override
+	public long rebuild(final OProgressListener iProgressListener) {
+		if (OGlobalConfiguration.INDEX_REBUILD_SORTED.getValueAsBoolean())
+			return rebuildSorted(iProgressListener);
 
-	public long rebuild() {
-		return rebuild(null);
+		return super.rebuild(iProgressListener);
 	}
 
 	/**
-	 * Populates the index with all the existent records. Uses the massive insert intent to speed up and keep the consumed memory low.
+	 * Populates the index with all the existent records in three steps: the clusters are read in parallel collecting the key/RID
+	 * pairs, the pairs are sorted by an external merge sort and the tree is built bottom-up from the sorted keys, so no rotation nor
+	 * page split is executed. Uses the massive insert intent to speed up and keep the consumed memory low.
 	 */
-	public long rebuild(final OProgressListener iProgressListener) {
+	@SuppressWarnings("unchecked")
+	protected long rebuildSorted(final OProgressListener iProgressListener) {
 		clear();
 
 		long documentIndexed = 0;
 
 		final boolean intentInstalled = getDatabase().declareIntent(new OIntentMassiveInsert());
 
+		checkForLoading();
 		acquireExclusiveLock();
+
+		final OIndexKeySorter sorter = new OIndexKeySorter(((OMVRBTreeMapProvider<Object, T>) map.getProvider()).getKeySerializer(),
+				OGlobalConfiguration.INDEX_REBUILD_SORT_BUFFER.getValueAsInteger());
 		try {
 
 			int documentNum = 0;
 			long documentTotal = 0;
 
-			for (final String cluster : clustersToIndex)
+			final int[] clusterIds = new int[clustersToIndex.size()];
+			int i = 0;
+			for (final String cluster : clustersToIndex) {
 				documentTotal += getDatabase().countClusterElements(cluster);
+				clusterIds[i++] = getDatabase().getClusterIdByName(cluster);
+			}
 
 			if (iProgressListener != null)
 				iProgressListener.onBegin(this, documentTotal);
 
-			for (final String clusterName : clustersToIndex)
-				for (final ORecord<?> record : getDatabase().browseCluster(clusterName)) {
-					if (record instanceof ODocument) {
-						final ODocument doc = (ODocument) record;
-						final Object fieldValue = indexDefinition.getDocumentValueToIndex(doc);
-
-						if (fieldValue != null) {
-							if (fieldValue instanceof Collection) {
-								for (final Object fieldValueItem : (Collection<?>) fieldValue) {
-									put(fieldValueItem, doc);
-								}
-							} else
-								put(fieldValue, doc);
-
-							++documentIndexed;
-						}
-					}
-					documentNum++;
+			// COLLECT THE KEYS
+			for (final ORecordInternal<?> record : new ORecordIteratorClustersParallel<ORecordInternal<?>>(getDatabase(),
+					getLowLevelDatabase(), clusterIds)) {
+				if (record instanceof ODocument) {
+					final ODocument doc = (ODocument) record;
+					final Object fieldValue = indexDefinition.getDocumentValueToIndex(doc);
 
-					if (iProgressListener != null)
-						iProgressListener.onProgress(this, documentNum, documentNum * 100f / documentTotal);
+					if (fieldValue != null) {
+						collectKeys(fieldValue, doc.getIdentity().copy(), sorter);
+						++documentIndexed;
+					}
 				}
+				documentNum++;
+
+				if (iProgressListener != null)
+					iProgressListener.onProgress(this, documentNum, documentNum * 100f / documentTotal);
+			}
+
+			// COUNT AND CHECK THE KEYS BEFORE WRITING ANY NODE
+			int keys = 0;
+			for (final Iterator<Entry<Object, T>> it = new SortedEntryIterator(sorter.iterator(), false); it.hasNext(); it.next())
+				++keys;
+
+			map.buildFromSorted(new SortedEntryIterator(sorter.iterator(), true), keys,
+					OGlobalConfiguration.INDEX_REBUILD_FILL_FACTOR.getValueAsFloat());
 
 			lazySave();
 
+			if (OGlobalConfiguration.INDEX_STATISTICS.getValueAsBoolean())
+				computeStatistics();
+
 			if (iProgressListener != null)
 				iProgressListener.onCompletition(this, true);
 
@@ -373,9 +303,14 @@ public abstract class OIndexMVRBTreeAbstract<T> extends OSharedResourceAdaptiveE
 
 			clear();
 
+			if (e instanceof OIndexException)
+				throw (OIndexException) e;
+
 			throw new OIndexException("Error on rebuilding the index for clusters: " + clustersToIndex, e);
 
 		} finally {
+			sorter.close();
+
 			if (intentInstalled)
 				getDatabase().declareIntent(null);
 
@@ -385,54 +320,141 @@ public abstract class OIndexMVRBTreeAbstract<T> extends OSharedResourceAdaptiveE
 		return documentIndexed;
 	}
 
-	public boolean remove(final Object iKey, final OIdentifiable iValue) {
-		return remove(iKey);
+	/**
+	 * Adds to the sorter the keys to index for the value of the indexed field. By default the value itself, or its items if it's a
+	 * collection.
+	 */
+	protected void collectKeys(final Object iFieldValue, final ORID iRID, final OIndexKeySorter iSorter) {
+		if (iFieldValue instanceof Collection) {
+			for (final Object fieldValueItem : (Collection<?>) iFieldValue)
+				if (fieldValueItem != null)
+					iSorter.add(fieldValueItem, iRID);
+		} else
+			iSorter.add(iFieldValue, iRID);
 	}
 
-	public boolean remove(final Object key) {
+	/**
+	 * Checks the records indexed by the same key by the sorted rebuild before the tree is built. By default accepts any number of
+	 * records.
+	 */
+	protected void checkKeyRecords(final Object iKey, final List<ORID> iRecords) {
+	}
 
-		acquireExclusiveLock();
-		try {
+	/**
+	 * Returns the part of the key checked by the unique indexes: the key without the values of the fields included in the index.
+	 */
+	protected Object getUniqueKey(final Object iKey) {
+		if (indexDefinition instanceof OCompositeIndexDefinition)
+			return ((OCompositeIndexDefinition) indexDefinition).getKeyWithoutIncluded(iKey);
+		return iKey;
+	}
 
-			return map.remove(key) != null;
+	/**
+	 * Returns the value to store in the tree for the records indexed by the same key by the sorted rebuild.
+	 * 
+	 * @param iKey
+	 *          The key
+	 * @param iRecords
+	 *          The records, sorted by RID, without duplicates
+	 */
+	protected abstract T createValue(Object iKey, List<ORID> iRecords);
 
-		} finally {
-			releaseExclusiveLock();
+	/**
+	 * Groups the sorted key/RID pairs by key, skipping the RIDs repeated for the same key.
+	 */
+	protected class SortedEntryIterator implements Iterator<Entry<Object, T>> {
+		private final Iterator<Entry<Object, ORID>>	pairs;
+		private final boolean												createValues;
+		private Entry<Object, ORID>									nextPair;
+		private Object															lastUniqueKey;
+		private List<ORID>													uniqueKeyRecords;
+
+		/**
+		 * @param iPairs
+		 *          Pairs sorted by key, then by RID
+		 * @param iCreateValues
+		 *          If true values are created, otherwise keys are only checked and values are null
+		 */
+		protected SortedEntryIterator(final Iterator<Entry<Object, ORID>> iPairs, final boolean iCreateValues) {
+			pairs = iPairs;
+			createValues = iCreateValues;
+			nextPair = pairs.hasNext() ? pairs.next() : null;
 		}
-	}
 
-	public OIndex<T> clear() {
+		public boolean hasNext() {
+			return nextPair != null;
+		}
 
-		acquireExclusiveLock();
-		try {
+		@SuppressWarnings("unchecked")
+		public Entry<Object, T> next() {
+			if (nextPair == null)
+				throw new NoSuchElementException();
+
+			final Object key = nextPair.getKey();
+			final List<ORID> records = new ArrayList<ORID>();
+			records.add(nextPair.getValue());
+
+			nextPair = null;
+			while (pairs.hasNext()) {
+				final Entry<Object, ORID> pair = pairs.next();
+				if (((Comparable<Object>) key).compareTo(pair.getKey()) != 0) {
+					nextPair = pair;
+					break;
+				}
 
-			map.clear();
-			return this;
+				if (!pair.getValue().equals(records.get(records.size() - 1)))
+					records.add(pair.getValue());
+			}
 
-		} finally {
-			releaseExclusiveLock();
+			if (!createValues) {
+				// THE KEYS DIFFERENT ONLY FOR THE INCLUDED FIELDS ARE CHECKED TOGETHER
+				final Object uniqueKey = getUniqueKey(key);
+				if (uniqueKey != key && lastUniqueKey != null && ((Comparable<Object>) lastUniqueKey).compareTo(uniqueKey) == 0) {
+					for (ORID record : records)
+						if (!uniqueKeyRecords.contains(record))
+							uniqueKeyRecords.add(record);
+				} else
+					uniqueKeyRecords = new ArrayList<ORID>(records);
+				lastUniqueKey = uniqueKey;
+
+				checkKeyRecords(uniqueKey, uniqueKeyRecords);
+				return new AbstractMap.SimpleImmutableEntry<Object, T>(key, null);
+			}
+
+			return new AbstractMap.SimpleImmutableEntry<Object, T>(key, createValue(key, records));
+		}
+
+		public void remove() {
+			throw new UnsupportedOperationException("remove");
 		}
 	}
 
-	public OIndexInternal<T> delete() {
+	public boolean remove(final Object key) {
 
+		checkForLoading();
 		acquireExclusiveLock();
-
 		try {
-			map.delete();
-			return this;
+
+			final T removed = map.remove(key);
+			if (removed == null)
+				return false;
+
+			updateStatistics(-1, removed instanceof Collection<?> ? -((Collection<?>) removed).size() : -1);
+			return true;
 
 		} finally {
 			releaseExclusiveLock();
 		}
 	}
 
-	public OIndexInternal<T> lazySave() {
+	public OIndex<T> clear() {
 
+		checkForLoading();
 		acquireExclusiveLock();
 		try {
 
-			map.lazySave();
+			map.clear();
+			clearStatistics();
 			return this;
 
 		} finally {
@@ -446,212 +468,259 @@ public abstract class OIndexMVRBTreeAbstract<T> extends OSharedResourceAdaptiveE
 
 	public Iterator<Entry<Object, T>> iterator() {
 
-		acquireExclusiveLock();
+		checkForLoading();
+		acquireSharedLock();
 		try {
 
 			return map.entrySet().iterator();
 
 		} finally {
-			releaseExclusiveLock();
+			releaseSharedLock();
 		}
 	}
 
-	public Iterable<Object> keys() {
-
-		acquireExclusiveLock();
-		try {
-
-			return map.keySet();
+	public OIndexCursor cursor(final Object iRangeFrom, final boolean iFromInclusive, final Object iRangeTo,
+			final boolean iToInclusive, final boolean iAscending) {
+		return new TreeCursor(iRangeFrom, iFromInclusive, iRangeTo, iToInclusive, iAscending);
+	}
 
-		} finally {
-			releaseExclusiveLock();
+	/**
+	 * Reads the range some records at a time, holding the shared lock only while the records are read. Every read starts again from
+	 * the last key read, or from the last record read inside the set of a key with many records, so the changes made to the index
+	 * meanwhile are seen without breaking the browsing.
+	 */
+	protected class TreeCursor implements OIndexCursor {
+		private final Object																from;
+		private final boolean																fromInclusive;
+		private final Object																to;
+		private final boolean																toInclusive;
+		private final boolean																ascending;
+		private final int																		batchSize;
+		private final List<Entry<Object, OIdentifiable>>	batch		= new ArrayList<Entry<Object, OIdentifiable>>();
+		private Iterator<Entry<Object, OIdentifiable>>			batchIterator;
+		private Object																			lastKeyRead;
+		private OIdentifiable																lastRecordRead;
+		private Object																			lastKey;
+		private boolean																			finished;
+
+		protected TreeCursor(final Object iRangeFrom, final boolean iFromInclusive, final Object iRangeTo, final boolean iToInclusive,
+				final boolean iAscending) {
+			from = iRangeFrom;
+			fromInclusive = iFromInclusive;
+			to = iRangeTo;
+			toInclusive = iToInclusive;
+			ascending = iAscending;
+			batchSize = Math.max(1, OGlobalConfiguration.INDEX_CURSOR_BATCH_SIZE.getValueAsInteger());
+			batchIterator = batch.iterator();
 		}
-	}
 
-	public long getSize() {
+		public boolean hasNext() {
+			while (!batchIterator.hasNext()) {
+				if (finished)
+					return false;
+				readBatch();
+			}
+			return true;
+		}
 
-		acquireSharedLock();
-		try {
+		public Entry<Object, OIdentifiable> next() {
+			if (!hasNext())
+				throw new NoSuchElementException();
 
-			return map.size();
+			final Entry<Object, OIdentifiable> entry = batchIterator.next();
+			lastKey = entry.getKey();
+			return entry;
+		}
 
-		} finally {
-			releaseSharedLock();
+		public void remove() {
+			throw new UnsupportedOperationException("remove");
 		}
-	}
 
-	public String getName() {
-		return name;
-	}
+		public Object getLastKey() {
+			return lastKey;
+		}
 
-	public String getType() {
-		return type;
-	}
+		@SuppressWarnings("unchecked")
+		private void readBatch() {
+			batch.clear();
 
-	@Override
-	public String toString() {
-		if (tryAcquireExclusiveLock())
+			checkForLoading();
+			acquireSharedLock();
 			try {
+				OMVRBTreeEntry<Object, T> entry = ascending ? seekFirst() : seekLast();
+				int read = 0;
+
+				while (entry != null && read < batchSize) {
+					final Object key = entry.getKey();
+					if (ascending ? !isBeforeTo(key) : !isAfterFrom(key))
+						break;
+
+					final int readBefore = read;
+					final T value = entry.getValue();
+					if (value instanceof OMVRBTreeRIDSet) {
+						// THE RECORDS OF THE KEY ARE READ A BATCH AT A TIME TOO
+						final Iterator<OIdentifiable> records = ((OMVRBTreeRIDSet) value).iterator(key.equals(lastKeyRead) ? lastRecordRead
+								: null);
+						lastRecordRead = null;
+						while (read < batchSize && records.hasNext()) {
+							lastRecordRead = records.next();
+							batch.add(new AbstractMap.SimpleImmutableEntry<Object, OIdentifiable>(key, lastRecordRead));
+							read++;
+						}
+						if (!records.hasNext())
+							lastRecordRead = null;
+					} else if (value instanceof Collection<?>) {
+						for (OIdentifiable id : (Collection<OIdentifiable>) value) {
+							batch.add(new AbstractMap.SimpleImmutableEntry<Object, OIdentifiable>(key, id));
+							read++;
+						}
+					} else if (value != null) {
+						batch.add(new AbstractMap.SimpleImmutableEntry<Object, OIdentifiable>(key, (OIdentifiable) value));
+						read++;
+					}
+
+					lastKeyRead = key;
+					if (lastRecordRead != null)
+						// THE NEXT READ RESUMES INSIDE THE RECORDS OF THIS KEY
+						break;
+
+					if (read == readBefore)
+						// KEYS WITHOUT RECORDS COUNT TOO, TO NOT HOLD THE LOCK TOO LONG
+						read++;
+
+					entry = ascending ? OMVRBTree.next(entry) : OMVRBTree.previous(entry);
+				}
 
-				return name + " (" + (type != null ? type : "?") + ")" + (map != null ? " " + map : "");
+				if (read < batchSize)
+					finished = true;
 
 			} finally {
-				releaseExclusiveLock();
+				releaseSharedLock();
 			}
-		return "!Locked resource";
-	}
 
-	public OIndexInternal<T> getInternal() {
-		return this;
-	}
+			batchIterator = batch.iterator();
+		}
 
-	public Set<String> getClusters() {
+		/**
+		 * Returns the first entry after the last key read, the last key read itself if some of its records are left, or the first of
+		 * the range.
+		 */
+		private OMVRBTreeEntry<Object, T> seekFirst() {
+			final Object key;
+			final boolean inclusive;
+			if (lastKeyRead != null) {
+				key = lastKeyRead;
+				inclusive = lastRecordRead != null;
+			} else if (from != null) {
+				key = from;
+				inclusive = fromInclusive;
+			} else {
+				if (map.isEmpty())
+					return null;
+				key = map.firstKey();
+				inclusive = true;
+			}
 
-		acquireSharedLock();
-		try {
+			OMVRBTreeEntry<Object, T> entry = inclusive ? map.getCeilingEntry(key, OMVRBTree.PartialSearchMode.LOWEST_BOUNDARY) : map
+					.getHigherEntry(key);
+
+			if (entry == null) {
+				// THE KEY CAN FALL BETWEEN TWO NODES: MOVE FORWARD FROM THE LOWER ONE
+				entry = map.getFloorEntry(key, OMVRBTree.PartialSearchMode.HIGHEST_BOUNDARY);
+				if (entry != null)
+					entry = OMVRBTree.next(entry);
+			}
 
-			return Collections.unmodifiableSet(clustersToIndex);
+			while (entry != null && !isAfter(entry.getKey(), key, inclusive))
+				entry = OMVRBTree.next(entry);
 
-		} finally {
-			releaseSharedLock();
+			return entry;
 		}
-	}
 
-	public OIndexMVRBTreeAbstract<T> addCluster(final String iClusterName) {
+		/**
+		 * Returns the last entry before the last key read, the last key read itself if some of its records are left, or the last of the
+		 * range.
+		 */
+		private OMVRBTreeEntry<Object, T> seekLast() {
+			final Object key;
+			final boolean inclusive;
+			if (lastKeyRead != null) {
+				key = lastKeyRead;
+				inclusive = lastRecordRead != null;
+			} else if (to != null) {
+				key = to;
+				inclusive = toInclusive;
+			} else {
+				if (map.isEmpty())
+					return null;
+				key = map.lastKey();
+				inclusive = true;
+			}
 
-		acquireExclusiveLock();
-		try {
+			OMVRBTreeEntry<Object, T> entry = inclusive ? map.getFloorEntry(key, OMVRBTree.PartialSearchMode.HIGHEST_BOUNDARY) : map
+					.getLowerEntry(key);
 
-			clustersToIndex.add(iClusterName);
-			return this;
+			while (entry != null && !isBefore(entry.getKey(), key, inclusive))
+				entry = OMVRBTree.previous(entry);
 
-		} finally {
-			releaseSharedLock();
+			return entry;
 		}
-	}
 
-	public void checkEntry(final OIdentifiable iRecord, final Object iKey) {
-	}
+		private boolean isAfterFrom(final Object iKey) {
+			return from == null || isAfter(iKey, from, fromInclusive);
+		}
 
-	public void unload() {
+		private boolean isBeforeTo(final Object iKey) {
+			return to == null || isBefore(iKey, to, toInclusive);
+		}
 
-		acquireExclusiveLock();
-		try {
+		private boolean isAfter(final Object iKey, final Object iBound, final boolean iInclusive) {
+			final int result = compare(iKey, iBound);
+			return iInclusive ? result >= 0 : result > 0;
+		}
 
-			map.unload();
+		private boolean isBefore(final Object iKey, final Object iBound, final boolean iInclusive) {
+			final int result = compare(iKey, iBound);
+			return iInclusive ? result <= 0 : result < 0;
+		}
 
-		} finally {
-			releaseExclusiveLock();
+		@SuppressWarnings("unchecked")
+		private int compare(final Object iKey, final Object iBound) {
+			final Comparator<? super Object> comparator = map.comparator();
+			if (comparator != null)
+				return comparator.compare(iKey, iBound);
+			return ((Comparable<Object>) iKey).compareTo(iBound);
 		}
 	}
 
-	public ODocument updateConfiguration() {
+	public Iterable<Object> keys() {
 
-		acquireExclusiveLock();
+		checkForLoading();
+		acquireSharedLock();
 		try {
 
-			configuration.setInternalStatus(ORecordElement.STATUS.UNMARSHALLING);
-
-			try {
-				configuration.field(OIndexInternal.CONFIG_TYPE, type);
-				configuration.field(OIndexInternal.CONFIG_NAME, name);
-
-				if (indexDefinition != null) {
-					final ODocument indexDefDocument = indexDefinition.toStream();
-					if (!indexDefDocument.hasOwners())
-						indexDefDocument.addOwner(configuration);
-
-					configuration.field(OIndexInternal.INDEX_DEFINITION, indexDefDocument, OType.EMBEDDED);
-					configuration.field(OIndexInternal.INDEX_DEFINITION_CLASS, indexDefinition.getClass().getName());
-				} else {
-					configuration.removeField(OIndexInternal.INDEX_DEFINITION);
-					configuration.removeField(OIndexInternal.INDEX_DEFINITION_CLASS);
-				}
-
-				configuration.field(CONFIG_CLUSTERS, clustersToIndex, OType.EMBEDDEDSET);
-				configuration.field(CONFIG_MAP_RID, ((OMVRBTreeProviderAbstract<Object, ?>) map.getProvider()).getRecord().getIdentity());
-
-			} finally {
-				configuration.setInternalStatus(ORecordElement.STATUS.LOADED);
-			}
+			return map.keySet();
 
 		} finally {
-			releaseExclusiveLock();
+			releaseSharedLock();
 		}
-		return configuration;
 	}
 
-	@SuppressWarnings("unchecked")
-	public void commit(final ODocument iDocument) {
-		if (iDocument == null)
-			return;
+	public long getSize() {
 
-		acquireExclusiveLock();
+		checkForLoading();
+		acquireSharedLock();
 		try {
-			map.setRunningTransaction(true);
-
-			final Boolean clearAll = (Boolean) iDocument.field("clear");
-			if (clearAll != null && clearAll)
-				clear();
-
-			final Collection<ODocument> entries = iDocument.field("entries");
-
-			for (final ODocument entry : entries) {
-				final String serializedKey = OStringSerializerHelper.decode((String) entry.field("k"));
-
-				final Object key;
-				if (serializedKey.startsWith("["))
-					key = new OCompositeKey((List<? extends Comparable<?>>) ORecordSerializerStringAbstract.fieldTypeFromStream(iDocument,
-							OType.EMBEDDEDLIST, OStringSerializerHelper.decode(serializedKey)));
-				else
-					key = ORecordSerializerStringAbstract.getTypeValue(serializedKey);
-
-				final List<ODocument> operations = (List<ODocument>) entry.field("ops");
-				if (operations != null) {
-					for (final ODocument op : operations) {
-						final int operation = (Integer) op.rawField("o");
-						final OIdentifiable value = op.field("v", OType.LINK);
-
-						if (operation == OPERATION.PUT.ordinal())
-							put(key, value);
-						else if (operation == OPERATION.REMOVE.ordinal()) {
-							if (key.equals("*"))
-								remove(value);
-							else if (value == null)
-								remove(key);
-							else
-								remove(key, value);
-						}
-					}
-				}
-			}
+
+			return map.size();
 
 		} finally {
-			releaseExclusiveLock();
-			map.setRunningTransaction(false);
+			releaseSharedLock();
 		}
 	}
 
-	public ODocument getConfiguration() {
-		return configuration;
-	}
-
-	public boolean isAutomatic() {
-		return indexDefinition != null && indexDefinition.getClassName() != null;
-	}
-
+	@Override
 	protected void installHooks(final ODatabaseRecord iDatabase) {
-		OProfiler.getInstance().registerHookValue("index." + name + ".items", new OProfilerHookValue() {
-			public Object getValue() {
-				acquireSharedLock();
-				try {
-					return map != null ? map.size() : "-";
-				} finally {
-					releaseSharedLock();
-				}
-			}
-		});
-
 		OProfiler.getInstance().registerHookValue("index." + name + ".entryPointSize", new OProfilerHookValue() {
 			public Object getValue() {
 				return map != null ? map.getEntryPointSize() : "-";
@@ -670,86 +739,33 @@ public abstract class OIndexMVRBTreeAbstract<T> extends OSharedResourceAdaptiveE
 			}
 		});
 
-		Orient.instance().getMemoryWatchDog().addListener(watchDog);
-		iDatabase.registerListener(this);
+		super.installHooks(iDatabase);
 	}
 
+	@Override
 	protected void uninstallHooks(final ODatabaseRecord iDatabase) {
-		OProfiler.getInstance().unregisterHookValue("index." + name + ".items");
 		OProfiler.getInstance().unregisterHookValue("index." + name + ".entryPointSize");
 		OProfiler.getInstance().unregisterHookValue("index." + name + ".maxUpdateBeforeSave");
 		OProfiler.getInstance().unregisterHookValue("index." + name + ".optimizationThreshold");
-		Orient.instance().getMemoryWatchDog().removeListener(watchDog);
-		iDatabase.unregisterListener(this);
-	}
-
-	public void onCreate(final ODatabase iDatabase) {
-	}
-
-	public void onDelete(final ODatabase iDatabase) {
-	}
-
-	public void onOpen(final ODatabase iDatabase) {
-	}
-
-	public void onBeforeTxBegin(final ODatabase iDatabase) {
-	}
-
-	public void onBeforeTxRollback(final ODatabase iDatabase) {
-	}
-
-	public boolean onCorruptionRepairDatabase(final ODatabase iDatabase, final String iReason, String iWhatWillbeFixed) {
-		return false;
-	}
-
-	public void onAfterTxRollback(final ODatabase iDatabase) {
-
-		acquireExclusiveLock();
-		try {
-
-			map.unload();
-
-		} finally {
-			releaseExclusiveLock();
-		}
-	}
-
-	public void onBeforeTxCommit(final ODatabase iDatabase) {
-		acquireExclusiveLock();
-		try {
-
-			map.commitChanges();
-
-		} finally {
-			releaseExclusiveLock();
-		}
+		super.uninstallHooks(iDatabase);
 	}
 
+	@Override
 	public void onAfterTxCommit(final ODatabase iDatabase) {
 		acquireExclusiveLock();
 		try {
 
-			map.onAfterTxCommit();
+			if (!isWaitingForLoading())
+				map.onAfterTxCommit();
 
 		} finally {
 			releaseExclusiveLock();
 		}
 	}
 
-	public void onClose(final ODatabase iDatabase) {
-		acquireExclusiveLock();
-		try {
-
-			map.commitChanges();
-			Orient.instance().getMemoryWatchDog().removeListener(watchDog);
-
-		} finally {
-			releaseExclusiveLock();
-		}
-	}
 
 	protected void optimize(final boolean iHardMode) {
-		if (map == null)
+		if (map == null || isWaitingForLoading())
 			return;
 
 		acquireExclusiveLock();
@@ -770,52 +786,35 @@ public abstract class OIndexMVRBTreeAbstract<T> extends OSharedResourceAdaptiveE
 		}
 	}
 
-	protected void checkForKeyType(final Object iKey) {
-		if (indexDefinition == null) {
-			// RECOGNIZE THE KEY TYPE AT RUN-TIME
-
-			final OType type = OType.getTypeByClass(iKey.getClass());
-			if (type == null)
-				return;
 
-			indexDefinition = new OSimpleKeyIndexDefinition(type);
-
-			updateConfiguration();
-		}
-	}
-
-	protected ODatabaseRecord getDatabase() {
-		return ODatabaseRecordThreadLocal.INSTANCE.get();
-	}
-
-	public OType[] getKeyTypes() {
-		if (indexDefinition == null)
-			return null;
-
-		return indexDefinition.getTypes();
-	}
-
-	public OIndexDefinition getDefinition() {
-		return indexDefinition;
-	}
+	/**
+	 * Returns the serializer of the keys for a new index. Indexes with one key of integer, long or date type keep the keys as
+	 * primitives and the ones with one string key store them front-coded, if enabled.
+	 */
+	protected OStreamSerializer createKeySerializer() {
+		if (indexDefinition instanceof OCompositeIndexDefinition)
+			return OCompositeKeySerializer.INSTANCE;
 
-	@Override
-	public boolean equals(final Object o) {
-		if (this == o)
-			return true;
-		if (o == null || getClass() != o.getClass())
-			return false;
+		if (indexDefinition != null && indexDefinition.getTypes().length == 1) {
+			final OType type = indexDefinition.getTypes()[0];
 
-		final OIndexMVRBTreeAbstract<?> that = (OIndexMVRBTreeAbstract<?>) o;
+			if (OGlobalConfiguration.INDEX_PRIMITIVE_KEYS.getValueAsBoolean()) {
+				final OPrimitiveKeySerializer primitiveKeySerializer = OPrimitiveKeySerializer.getByType(type);
+				if (primitiveKeySerializer != null)
+					return primitiveKeySerializer;
+			}
 
-		if (!name.equals(that.name))
-			return false;
+			if (type == OType.STRING && OGlobalConfiguration.INDEX_COMPRESSED_STRING_KEYS.getValueAsBoolean())
+				return OStringKeySerializer.INSTANCE;
+		}
 
-		return true;
+		return OStreamSerializerLiteral.INSTANCE;
 	}
 
-	@Override
-	public int hashCode() {
-		return name.hashCode();
+	protected ODatabaseRecordAbstract getLowLevelDatabase() {
+		Object db = getDatabase();
+		while (!(db instanceof ODatabaseRecordAbstract))
+			db = ((ODatabaseRecord) db).getUnderlying();
+		return (ODatabaseRecordAbstract) db;
 	}
 }
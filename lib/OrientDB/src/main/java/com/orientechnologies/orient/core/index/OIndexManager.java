@@ -41,6 +41,16 @@ public interface OIndexManager {
 
 	public OIndex<?> getIndex(final ORID iRID);
 
+	/**
+	 * Returns the statistics of the index. They are never computed here: the indexes compute them when they are rebuilt or flushed.
+	 * 
+	 * @param iName
+	 *          Index name
+	 * @return the statistics or null if the index doesn't exist or has no statistics yet
+	 * @see OIndexStatistics
+	 */
+	public OIndexStatistics getIndexStatistics(final String iName);
+
 	public OIndex<?> createIndex(final String iName, final String iType, OIndexDefinition iIndexDefinition,
 			final int[] iClusterIdsToIndex, final OProgressListener iProgressListener);
 
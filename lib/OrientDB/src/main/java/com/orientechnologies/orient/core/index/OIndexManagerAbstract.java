@@ -139,8 +139,18 @@ public abstract class OIndexManagerAbstract extends ODocumentWrapperNoClass impl
 		acquireExclusiveLock();
 		try {
 
-			for (final OIndexInternal<?> idx : indexes.values())
+			boolean statisticsChanged = false;
+			for (final OIndexInternal<?> idx : indexes.values()) {
 				idx.flush();
+				if (idx instanceof OIndexAbstract<?> && ((OIndexAbstract<?>) idx).isStatisticsChanged())
+					statisticsChanged = true;
+			}
+
+			if (statisticsChanged) {
+				// SAVE THE STATISTICS WITH THE CONFIGURATION OF THE INDEXES
+				setDirty();
+				save();
+			}
 		} finally {
 			releaseExclusiveLock();
 		}
@@ -254,6 +264,14 @@ public abstract class OIndexManagerAbstract extends ODocumentWrapperNoClass impl
 		}
 	}
 
+	public OIndexStatistics getIndexStatistics(final String iName) {
+		final OIndex<?> index = getIndex(iName);
+		if (index == null || !(index.getInternal() instanceof OIndexAbstract<?>))
+			return null;
+
+		return ((OIndexAbstract<?>) index.getInternal()).getStatistics();
+	}
+
 	public OIndex<?> getIndex(final ORID iRID) {
 		acquireSharedLock();
 		try {
@@ -391,11 +409,11 @@ public abstract class OIndexManagerAbstract extends ODocumentWrapperNoClass impl
 	}
 
 	private OIndex<?> wrapInTransactional(final OIndex<?> index) {
-		if (index instanceof OIndexMultiValues)
+		if (index instanceof OIndexMultiValues || index instanceof OIndexBitmap)
 			return new OIndexTxAwareMultiValue(getDatabase(), (OIndex<Collection<OIdentifiable>>) getIndexInstance(index));
 		else if (index instanceof OIndexDictionary)
 			return new OIndexTxAwareDictionary(getDatabase(), (OIndex<OIdentifiable>) getIndexInstance(index));
-		else if (index instanceof OIndexOneValue)
+		else if (index instanceof OIndexOneValue || index instanceof OIndexUniqueHash)
 			return new OIndexTxAwareOneValue(getDatabase(), (OIndex<OIdentifiable>) getIndexInstance(index));
 		return index;
 	}
@@ -55,6 +55,10 @@ public class OIndexManagerProxy extends OProxedResource<OIndexManager> implement
 		return delegate.getIndex(iName);
 	}
 
+	public OIndexStatistics getIndexStatistics(final String iName) {
+		return delegate.getIndexStatistics(iName);
+	}
+
 	public OIndex<?> getIndex(final ORID iRID) {
 		return delegate.getIndex(iRID);
 	}
@@ -21,6 +21,7 @@ import java.util.Map;
 import java.util.Set;
 
 import com.orientechnologies.common.listener.OProgressListener;
+import com.orientechnologies.common.profiler.OProfiler;
 import com.orientechnologies.common.util.OMultiKey;
 import com.orientechnologies.orient.core.db.record.ODatabaseRecord;
 import com.orientechnologies.orient.core.db.record.ORecordElement;
@@ -126,6 +127,8 @@ public class OIndexManagerShared extends OIndexManagerAbstract implements OIndex
 
 	@Override
 	protected void fromStream() {
+		final long timer = OProfiler.getInstance().startChrono();
+
 		acquireExclusiveLock();
 		try {
 			final Collection<ODocument> idxs = document.field(CONFIG_INDEXES);
@@ -140,6 +143,7 @@ public class OIndexManagerShared extends OIndexManagerAbstract implements OIndex
 			}
 		} finally {
 			releaseExclusiveLock();
+			OProfiler.getInstance().stopChrono("OIndexManager.load", timer);
 		}
 	}
 
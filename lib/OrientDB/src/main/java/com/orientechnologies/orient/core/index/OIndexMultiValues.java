@@ -28,6 +28,7 @@ import com.orientechnologies.common.collection.OMVRBTreeEntry;
 import com.orientechnologies.common.listener.OProgressListener;
 import com.orientechnologies.orient.core.db.record.ODatabaseRecord;
 import com.orientechnologies.orient.core.db.record.OIdentifiable;
+import com.orientechnologies.orient.core.id.ORID;
 import com.orientechnologies.orient.core.record.ORecord;
 import com.orientechnologies.orient.core.record.impl.ODocument;
 import com.orientechnologies.orient.core.serialization.serializer.stream.OStreamSerializerListRID;
@@ -46,7 +47,8 @@ public abstract class OIndexMultiValues extends OIndexMVRBTreeAbstract<Set<OIden
 
 	public Set<OIdentifiable> get(final Object iKey) {
 
-		acquireExclusiveLock();
+		checkForLoading();
+		acquireSharedLock();
 		try {
 
 			final OMVRBTreeRIDSet values = (OMVRBTreeRIDSet) map.get(iKey);
@@ -57,12 +59,21 @@ public abstract class OIndexMultiValues extends OIndexMVRBTreeAbstract<Set<OIden
 			return values;
 
 		} finally {
-			releaseExclusiveLock();
+			releaseSharedLock();
 		}
 	}
 
+	@Override
+	protected Set<OIdentifiable> createValue(final Object iKey, final List<ORID> iRecords) {
+		final Set<OIdentifiable> values = new OMVRBTreeRIDSet().setAutoConvert(false);
+		for (ORID rid : iRecords)
+			values.add(rid);
+		return values;
+	}
+
 	public OIndexMultiValues put(final Object iKey, final OIdentifiable iSingleValue) {
 
+		checkForLoading();
 		acquireExclusiveLock();
 		try {
 
@@ -70,15 +81,18 @@ public abstract class OIndexMultiValues extends OIndexMVRBTreeAbstract<Set<OIden
 
 			Set<OIdentifiable> values = map.get(iKey);
 
-			if (values == null)
+			final boolean newKey = values == null;
+			if (newKey)
 				values = new OMVRBTreeRIDSet().setAutoConvert(false);
 
 			if (!iSingleValue.getIdentity().isValid())
 				((ORecord<?>) iSingleValue).save();
 
+			final int oldSize = values.size();
 			values.add(iSingleValue);
 
 			map.put(iKey, values);
+			updateStatistics(newKey ? 1 : 0, values.size() - oldSize);
 			return this;
 
 		} finally {
@@ -89,15 +103,19 @@ public abstract class OIndexMultiValues extends OIndexMVRBTreeAbstract<Set<OIden
 	@Override
 	public boolean remove(final Object iKey, final OIdentifiable iValue) {
 
+		checkForLoading();
 		acquireExclusiveLock();
 		try {
 
 			final Set<OIdentifiable> recs = get(iKey);
 			if (recs.remove(iValue)) {
-				if (recs.isEmpty())
+				if (recs.isEmpty()) {
 					map.remove(iKey);
-				else
+					updateStatistics(-1, -1);
+				} else {
 					map.put(iKey, recs);
+					updateStatistics(0, -1);
+				}
 				return true;
 			}
 			return false;
@@ -109,6 +127,7 @@ public abstract class OIndexMultiValues extends OIndexMVRBTreeAbstract<Set<OIden
 
 	public int remove(final OIdentifiable iRecord) {
 
+		checkForLoading();
 		acquireExclusiveLock();
 		try {
 
@@ -132,7 +151,8 @@ public abstract class OIndexMultiValues extends OIndexMVRBTreeAbstract<Set<OIden
 
 	public int count(final OIdentifiable iRecord) {
 
-		acquireExclusiveLock();
+		checkForLoading();
+		acquireSharedLock();
 		try {
 
 			Set<OIdentifiable> rids;
@@ -149,7 +169,7 @@ public abstract class OIndexMultiValues extends OIndexMVRBTreeAbstract<Set<OIden
 			return tot;
 
 		} finally {
-			releaseExclusiveLock();
+			releaseSharedLock();
 		}
 	}
 
@@ -161,7 +181,8 @@ public abstract class OIndexMultiValues extends OIndexMVRBTreeAbstract<Set<OIden
 
 	public Collection<OIdentifiable> getValuesBetween(final Object iRangeFrom, final boolean iFromInclusive, final Object iRangeTo,
 			final boolean iToInclusive, final int maxValuesToFetch) {
-		acquireExclusiveLock();
+		checkForLoading();
+		acquireSharedLock();
 
 		try {
 			final OMVRBTreeEntry<Object, Set<OIdentifiable>> firstEntry;
@@ -212,12 +233,13 @@ public abstract class OIndexMultiValues extends OIndexMVRBTreeAbstract<Set<OIden
 
 			return result;
 		} finally {
-			releaseExclusiveLock();
+			releaseSharedLock();
 		}
 	}
 
 	public Collection<OIdentifiable> getValuesMajor(final Object fromKey, final boolean isInclusive, final int maxValuesToFetch) {
-		acquireExclusiveLock();
+		checkForLoading();
+		acquireSharedLock();
 
 		try {
 			final OMVRBTreeEntry<Object, Set<OIdentifiable>> firstEntry;
@@ -251,12 +273,13 @@ public abstract class OIndexMultiValues extends OIndexMVRBTreeAbstract<Set<OIden
 
 			return result;
 		} finally {
-			releaseExclusiveLock();
+			releaseSharedLock();
 		}
 	}
 
 	public Collection<OIdentifiable> getValuesMinor(final Object toKey, final boolean isInclusive, final int maxValuesToFetch) {
-		acquireExclusiveLock();
+		checkForLoading();
+		acquireSharedLock();
 
 		try {
 			final OMVRBTreeEntry<Object, Set<OIdentifiable>> lastEntry;
@@ -290,7 +313,7 @@ public abstract class OIndexMultiValues extends OIndexMVRBTreeAbstract<Set<OIden
 
 			return result;
 		} finally {
-			releaseExclusiveLock();
+			releaseSharedLock();
 		}
 	}
 
@@ -299,7 +322,8 @@ public abstract class OIndexMultiValues extends OIndexMVRBTreeAbstract<Set<OIden
 		final List<Comparable> sortedKeys = new ArrayList<Comparable>((Collection<? extends Comparable>) iKeys);
 		Collections.sort(sortedKeys);
 
-		acquireExclusiveLock();
+		checkForLoading();
+		acquireSharedLock();
 		try {
 			final Set<OIdentifiable> result = new HashSet<OIdentifiable>();
 
@@ -321,12 +345,13 @@ public abstract class OIndexMultiValues extends OIndexMVRBTreeAbstract<Set<OIden
 
 			return result;
 		} finally {
-			releaseExclusiveLock();
+			releaseSharedLock();
 		}
 	}
 
 	public Collection<ODocument> getEntriesMajor(final Object fromKey, final boolean isInclusive, final int maxEntriesToFetch) {
-		acquireExclusiveLock();
+		checkForLoading();
+		acquireSharedLock();
 
 		try {
 			final OMVRBTreeEntry<Object, Set<OIdentifiable>> firstEntry;
@@ -366,12 +391,13 @@ public abstract class OIndexMultiValues extends OIndexMVRBTreeAbstract<Set<OIden
 
 			return result;
 		} finally {
-			releaseExclusiveLock();
+			releaseSharedLock();
 		}
 	}
 
 	public Collection<ODocument> getEntriesMinor(Object toKey, boolean isInclusive, int maxEntriesToFetch) {
-		acquireExclusiveLock();
+		checkForLoading();
+		acquireSharedLock();
 
 		try {
 			final OMVRBTreeEntry<Object, Set<OIdentifiable>> lastEntry;
@@ -412,12 +438,13 @@ public abstract class OIndexMultiValues extends OIndexMVRBTreeAbstract<Set<OIden
 
 			return result;
 		} finally {
-			releaseExclusiveLock();
+			releaseSharedLock();
 		}
 	}
 
 	public Collection<ODocument> getEntriesBetween(Object iRangeFrom, Object iRangeTo, boolean iInclusive, int maxEntriesToFetch) {
-		acquireExclusiveLock();
+		checkForLoading();
+		acquireSharedLock();
 
 		try {
 			final OMVRBTreeEntry<Object, Set<OIdentifiable>> firstEntry;
@@ -475,7 +502,7 @@ public abstract class OIndexMultiValues extends OIndexMVRBTreeAbstract<Set<OIden
 
 			return result;
 		} finally {
-			releaseExclusiveLock();
+			releaseSharedLock();
 		}
 
 	}
@@ -485,7 +512,8 @@ public abstract class OIndexMultiValues extends OIndexMVRBTreeAbstract<Set<OIden
 		final List<Comparable> sortedKeys = new ArrayList<Comparable>((Collection<? extends Comparable>) iKeys);
 		Collections.sort(sortedKeys);
 
-		acquireExclusiveLock();
+		checkForLoading();
+		acquireSharedLock();
 		try {
 			final Set<ODocument> result = new ODocumentFieldsHashSet();
 
@@ -512,7 +540,7 @@ public abstract class OIndexMultiValues extends OIndexMVRBTreeAbstract<Set<OIden
 
 			return result;
 		} finally {
-			releaseExclusiveLock();
+			releaseSharedLock();
 		}
 	}
 }
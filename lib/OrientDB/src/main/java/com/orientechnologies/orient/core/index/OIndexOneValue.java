@@ -30,6 +30,7 @@ import com.orientechnologies.common.log.OLogManager;
 import com.orientechnologies.orient.core.db.ODatabaseRecordThreadLocal;
 import com.orientechnologies.orient.core.db.record.ODatabaseRecord;
 import com.orientechnologies.orient.core.db.record.OIdentifiable;
+import com.orientechnologies.orient.core.id.ORID;
 import com.orientechnologies.orient.core.record.impl.ODocument;
 import com.orientechnologies.orient.core.serialization.serializer.stream.OStreamSerializerRID;
 import com.orientechnologies.orient.core.tx.OTransactionIndexChanges;
@@ -48,20 +49,30 @@ public abstract class OIndexOneValue extends OIndexMVRBTreeAbstract<OIdentifiabl
 		super(iType);
 	}
 
+	/**
+	 * Keeps the last record: the same as putting them in order.
+	 */
+	@Override
+	protected OIdentifiable createValue(final Object iKey, final List<ORID> iRecords) {
+		return iRecords.get(iRecords.size() - 1);
+	}
+
 	public OIdentifiable get(final Object iKey) {
 
-		acquireExclusiveLock();
+		checkForLoading();
+		acquireSharedLock();
 		try {
 
 			return map.get(iKey);
 
 		} finally {
-			releaseExclusiveLock();
+			releaseSharedLock();
 		}
 	}
 
 	public int remove(final OIdentifiable iRecord) {
 
+		checkForLoading();
 		acquireExclusiveLock();
 		try {
 
@@ -81,7 +92,8 @@ public abstract class OIndexOneValue extends OIndexMVRBTreeAbstract<OIdentifiabl
 
 	public int count(final OIdentifiable iRecord) {
 
-		acquireExclusiveLock();
+		checkForLoading();
+		acquireSharedLock();
 		try {
 
 			int tot = 0;
@@ -93,27 +105,28 @@ public abstract class OIndexOneValue extends OIndexMVRBTreeAbstract<OIdentifiabl
 			return tot;
 
 		} finally {
-			releaseExclusiveLock();
+			releaseSharedLock();
 		}
 	}
 
 	@Override
 	public void checkEntry(final OIdentifiable iRecord, final Object iKey) {
 		// CHECK IF ALREADY EXIST
-		final OIdentifiable indexedRID = get(iKey);
+		final Object uniqueKey = getUniqueKey(iKey);
+		final OIdentifiable indexedRID = get(uniqueKey);
 		if (indexedRID != null && !indexedRID.getIdentity().equals(iRecord.getIdentity())) {
 			// CHECK IF IN THE SAME TX THE ENTRY WAS DELETED
 			final OTransactionIndexChanges indexChanges = ODatabaseRecordThreadLocal.INSTANCE.get().getTransaction()
 					.getIndexChanges(getName());
 			if (indexChanges != null) {
-				final OTransactionIndexChangesPerKey keyChanges = indexChanges.getChangesPerKey(iKey);
-				if (keyChanges != null) {
-					for (OTransactionIndexEntry entry : keyChanges.entries) {
-						if (entry.operation == OPERATION.REMOVE)
-							// WAS DELETED, OK!
+				if (uniqueKey == iKey) {
+					if (isRemoved(indexChanges.getChangesPerKey(iKey)))
+						return;
+				} else
+					// THE ENTRY WAS DELETED WITH THE VALUES OF THE INCLUDED FIELDS IT HAD
+					for (OTransactionIndexChangesPerKey keyChanges : indexChanges.changesPerKey.values())
+						if (getUniqueKey(keyChanges.key).equals(uniqueKey) && isRemoved(keyChanges))
 							return;
-					}
-				}
 			}
 
 			OLogManager.instance().exception("Found duplicated key '%s' previously assigned to the record %s", null,
@@ -121,6 +134,15 @@ public abstract class OIndexOneValue extends OIndexMVRBTreeAbstract<OIdentifiabl
 		}
 	}
 
+	private static boolean isRemoved(final OTransactionIndexChangesPerKey iKeyChanges) {
+		if (iKeyChanges != null)
+			for (OTransactionIndexEntry entry : iKeyChanges.entries)
+				if (entry.operation == OPERATION.REMOVE)
+					// WAS DELETED, OK!
+					return true;
+		return false;
+	}
+
 	public OIndexOneValue create(final String iName, final OIndexDefinition iIndexDefinition, final ODatabaseRecord iDatabase,
 			final String iClusterIndexName, final int[] iClusterIdsToIndex, final OProgressListener iProgressListener) {
 		return (OIndexOneValue) super.create(iName, iIndexDefinition, iDatabase, iClusterIndexName, iClusterIdsToIndex,
@@ -132,7 +154,8 @@ public abstract class OIndexOneValue extends OIndexMVRBTreeAbstract<OIdentifiabl
 		if (iRangeFrom.getClass() != iRangeTo.getClass())
 			throw new IllegalArgumentException("Range from-to parameters are of different types");
 
-		acquireExclusiveLock();
+		checkForLoading();
+		acquireSharedLock();
 
 		try {
 			final OMVRBTreeEntry<Object, OIdentifiable> firstEntry;
@@ -175,12 +198,13 @@ public abstract class OIndexOneValue extends OIndexMVRBTreeAbstract<OIdentifiabl
 
 			return result;
 		} finally {
-			releaseExclusiveLock();
+			releaseSharedLock();
 		}
 	}
 
 	public Collection<OIdentifiable> getValuesMajor(final Object fromKey, final boolean isInclusive, final int maxValuesToFetch) {
-		acquireExclusiveLock();
+		checkForLoading();
+		acquireSharedLock();
 
 		try {
 			final OMVRBTreeEntry<Object, OIdentifiable> firstEntry;
@@ -203,12 +227,13 @@ public abstract class OIndexOneValue extends OIndexMVRBTreeAbstract<OIdentifiabl
 
 			return result;
 		} finally {
-			releaseExclusiveLock();
+			releaseSharedLock();
 		}
 	}
 
 	public Collection<OIdentifiable> getValuesMinor(final Object toKey, final boolean isInclusive, final int maxValuesToFetch) {
-		acquireExclusiveLock();
+		checkForLoading();
+		acquireSharedLock();
 
 		try {
 
@@ -234,7 +259,7 @@ public abstract class OIndexOneValue extends OIndexMVRBTreeAbstract<OIdentifiabl
 
 			return result;
 		} finally {
-			releaseExclusiveLock();
+			releaseSharedLock();
 		}
 	}
 
@@ -242,7 +267,8 @@ public abstract class OIndexOneValue extends OIndexMVRBTreeAbstract<OIdentifiabl
 		final List<Comparable> sortedKeys = new ArrayList<Comparable>((Collection<? extends Comparable>) iKeys);
 		Collections.sort(sortedKeys);
 
-		acquireExclusiveLock();
+		checkForLoading();
+		acquireSharedLock();
 
 		final Set<OIdentifiable> result = new HashSet<OIdentifiable>();
 		try {
@@ -258,12 +284,13 @@ public abstract class OIndexOneValue extends OIndexMVRBTreeAbstract<OIdentifiabl
 
 			return result;
 		} finally {
-			releaseExclusiveLock();
+			releaseSharedLock();
 		}
 	}
 
 	public Collection<ODocument> getEntriesMajor(final Object fromKey, final boolean isInclusive, final int maxEntriesToFetch) {
-		acquireExclusiveLock();
+		checkForLoading();
+		acquireSharedLock();
 
 		try {
 			final OMVRBTreeEntry<Object, OIdentifiable> firstEntry;
@@ -292,13 +319,14 @@ public abstract class OIndexOneValue extends OIndexMVRBTreeAbstract<OIdentifiabl
 
 			return result;
 		} finally {
-			releaseExclusiveLock();
+			releaseSharedLock();
 		}
 
 	}
 
 	public Collection<ODocument> getEntriesMinor(final Object toKey, final boolean isInclusive, final int maxEntriesToFetch) {
-		acquireExclusiveLock();
+		checkForLoading();
+		acquireSharedLock();
 
 		try {
 
@@ -329,7 +357,7 @@ public abstract class OIndexOneValue extends OIndexMVRBTreeAbstract<OIdentifiabl
 
 			return result;
 		} finally {
-			releaseExclusiveLock();
+			releaseSharedLock();
 		}
 
 	}
@@ -339,7 +367,8 @@ public abstract class OIndexOneValue extends OIndexMVRBTreeAbstract<OIdentifiabl
 		if (iRangeFrom.getClass() != iRangeTo.getClass())
 			throw new IllegalArgumentException("Range from-to parameters are of different types");
 
-		acquireExclusiveLock();
+		checkForLoading();
+		acquireSharedLock();
 
 		try {
 			final OMVRBTreeEntry<Object, OIdentifiable> firstEntry;
@@ -388,7 +417,7 @@ public abstract class OIndexOneValue extends OIndexMVRBTreeAbstract<OIdentifiabl
 
 			return result;
 		} finally {
-			releaseExclusiveLock();
+			releaseSharedLock();
 		}
 
 	}
@@ -397,7 +426,8 @@ public abstract class OIndexOneValue extends OIndexMVRBTreeAbstract<OIdentifiabl
 		final List<Comparable> sortedKeys = new ArrayList<Comparable>((Collection<? extends Comparable>) iKeys);
 		Collections.sort(sortedKeys);
 
-		acquireExclusiveLock();
+		checkForLoading();
+		acquireSharedLock();
 
 		final Set<ODocument> result = new ODocumentFieldsHashSet();
 		try {
@@ -418,7 +448,7 @@ public abstract class OIndexOneValue extends OIndexMVRBTreeAbstract<OIdentifiabl
 
 			return result;
 		} finally {
-			releaseExclusiveLock();
+			releaseSharedLock();
 		}
 
 	}
@@ -15,6 +15,7 @@
  */
 package com.orientechnologies.orient.core.index;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.Set;
@@ -174,6 +175,30 @@ public abstract class OIndexRemote<T> implements OIndex<T> {
 		return (Collection<ODocument>) getDatabase().command(cmd).execute(toKey);
 	}
 
+	/**
+	 * Loads the range from the server all together, then browses it in memory.
+	 */
+	public OIndexCursor cursor(final Object iRangeFrom, final boolean iFromInclusive, final Object iRangeTo,
+			final boolean iToInclusive, final boolean iAscending) {
+		final Collection<ODocument> entries;
+		if (iRangeFrom != null && iRangeTo != null) {
+			// THE RANGE QUERY INCLUDES THE BOUNDS: REMOVE THEM HERE IF EXCLUDED
+			entries = new ArrayList<ODocument>();
+			for (ODocument entry : getEntriesBetween(iRangeFrom, iRangeTo)) {
+				final Object key = entry.field("key");
+				if ((iFromInclusive || !key.equals(iRangeFrom)) && (iToInclusive || !key.equals(iRangeTo)))
+					entries.add(entry);
+			}
+		} else if (iRangeFrom != null)
+			entries = getEntriesMajor(iRangeFrom, iFromInclusive);
+		else if (iRangeTo != null)
+			entries = getEntriesMinor(iRangeTo, iToInclusive);
+		else
+			entries = (Collection<ODocument>) getDatabase().command(formatCommand(QUERY_ENTRIES, name)).execute();
+
+		return OIndexCursorCollection.fromDocuments(entries, iAscending);
+	}
+
 	public boolean contains(final Object iKey) {
 		final OCommandRequest cmd = formatCommand(QUERY_CONTAINS, name);
 		final List<ODocument> result = getDatabase().command(cmd).execute();
@@ -0,0 +1,386 @@
+/*
+ * Copyright 1999-2010 Luca Garulli (l.garulli--at--orientechnologies.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.orientechnologies.orient.core.index;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map.Entry;
+
+import com.orientechnologies.common.collection.OCompositeKey;
+import com.orientechnologies.orient.core.config.OGlobalConfiguration;
+import com.orientechnologies.orient.core.db.record.OIdentifiable;
+import com.orientechnologies.orient.core.metadata.schema.OType;
+import com.orientechnologies.orient.core.record.impl.ODocument;
+
+/**
+ * Statistics of an index used by the query planner to estimate how many records a condition selects: the number of keys, the
+ * number of entries (key/record pairs) and, for the indexes ordered by key, an equi-depth histogram of the keys. Every bucket of the
+ * histogram holds about the same number of entries, so the keys more frequent are described with more precision.<br/>
+ * The histogram is computed walking the index when it's rebuilt, or when it's flushed and the statistics are missing or stale, never
+ * by the queries. The counters of keys and entries are updated by the index at every change, and the histogram is no longer used
+ * once the entries changed since its computation exceed "index.statistics.refresh" percent. The statistics are saved in the
+ * configuration of the index.
+ * 
+ * @author Luca Garulli
+ * @see OIndexAbstract#getStatistics()
+ */
+public class OIndexStatistics {
+	private static final String	CONFIG_KEYS							= "keys";
+	private static final String	CONFIG_ENTRIES					= "entries";
+	private static final String	CONFIG_MODIFICATIONS		= "modifications";
+	private static final String	CONFIG_HISTOGRAM_ENTRIES	= "histogramEntries";
+	private static final String	CONFIG_BOUNDS						= "bounds";
+	private static final String	CONFIG_ENTRIES_BEFORE		= "entriesBefore";
+	private static final String	CONFIG_LAST_KEY					= "lastKey";
+
+	private long								keys;
+	private long								entries;
+	private long								modifications;
+	private boolean							changed									= true;
+	private final long					histogramEntries;
+	private final Object[]			bounds;
+	private final long[]				entriesBefore;
+	private final Object				lastKey;
+
+	private OIndexStatistics(final long iKeys, final long iEntries, final long iModifications, final long iHistogramEntries,
+			final Object[] iBounds, final long[] iEntriesBefore, final Object iLastKey) {
+		keys = iKeys;
+		entries = iEntries;
+		modifications = iModifications;
+		histogramEntries = iHistogramEntries;
+		bounds = iBounds;
+		entriesBefore = iEntriesBefore;
+		lastKey = iLastKey;
+	}
+
+	/**
+	 * Returns the statistics of an empty index.
+	 */
+	public static OIndexStatistics empty() {
+		return new OIndexStatistics(0, 0, 0, 0, null, null, null);
+	}
+
+	/**
+	 * Computes the statistics of the index. The indexes ordered by key are walked with a cursor, taking the key every N entries as
+	 * bound of a bucket and doubling N every time the bounds exceed twice the buckets requested. The hash indexes have no order, so
+	 * they have no histogram.
+	 * 
+	 * @param iIndex
+	 *          Index to analyze
+	 * @param iBuckets
+	 *          Minimum number of buckets of the histogram
+	 */
+	public static OIndexStatistics compute(final OIndex<?> iIndex, final int iBuckets) {
+		final OIndex<?> index = iIndex.getInternal();
+
+		if (index instanceof OIndexUniqueHash) {
+			// ONE RECORD PER KEY
+			final long indexSize = index.getSize();
+			return new OIndexStatistics(indexSize, indexSize, 0, indexSize, null, null, null);
+		}
+
+		final int maxBounds = Math.max(iBuckets, 1) * 2;
+		final List<Object> sampledKeys = new ArrayList<Object>(maxBounds + 1);
+		final List<Long> sampledEntries = new ArrayList<Long>(maxBounds + 1);
+		long step = 1;
+
+		long keyCount = 0;
+		long entryCount = 0;
+		Object previousKey = null;
+
+		final OIndexCursor cursor = index.cursor(null, false, null, false, true);
+		while (cursor.hasNext()) {
+			final Entry<Object, OIdentifiable> entry = cursor.next();
+			final Object key = entry.getKey();
+
+			if (keyCount == 0 || !key.equals(previousKey)) {
+				keyCount++;
+				previousKey = key;
+			}
+
+			if (entryCount % step == 0) {
+				sampledKeys.add(key);
+				sampledEntries.add(entryCount);
+
+				if (sampledKeys.size() > maxBounds) {
+					// KEEP ONE BOUND EVERY TWO
+					for (int i = 1, j = 2; j < sampledKeys.size(); ++i, j += 2) {
+						sampledKeys.set(i, sampledKeys.get(j));
+						sampledEntries.set(i, sampledEntries.get(j));
+					}
+					final int newSize = (sampledKeys.size() + 1) / 2;
+					while (sampledKeys.size() > newSize) {
+						sampledKeys.remove(sampledKeys.size() - 1);
+						sampledEntries.remove(sampledEntries.size() - 1);
+					}
+					step *= 2;
+				}
+			}
+			entryCount++;
+		}
+
+		final long[] entriesBefore = new long[sampledEntries.size()];
+		for (int i = 0; i < entriesBefore.length; ++i)
+			entriesBefore[i] = sampledEntries.get(i);
+
+		return new OIndexStatistics(keyCount, entryCount, 0, entryCount, sampledKeys.toArray(), entriesBefore, previousKey);
+	}
+
+	/**
+	 * Reads the statistics saved by {@link #toStream()}.
+	 * 
+	 * @param iDocument
+	 *          Document with the statistics
+	 * @param iKeyType
+	 *          Type of the keys of the index, to convert the bounds of the histogram, or null if unknown
+	 */
+	public static OIndexStatistics fromStream(final ODocument iDocument, final OType iKeyType) {
+		final List<Object> savedBounds = iDocument.field(CONFIG_BOUNDS);
+		final List<Long> savedEntriesBefore = iDocument.field(CONFIG_ENTRIES_BEFORE);
+
+		Object[] bounds = null;
+		long[] entriesBefore = null;
+		Object lastKey = null;
+		if (savedBounds != null && savedEntriesBefore != null && savedBounds.size() == savedEntriesBefore.size()) {
+			final Class<?> keyClass = iKeyType != null ? iKeyType.getDefaultJavaType() : null;
+
+			bounds = new Object[savedBounds.size()];
+			entriesBefore = new long[bounds.length];
+			for (int i = 0; i < bounds.length; ++i) {
+				bounds[i] = keyClass != null ? OType.convert(savedBounds.get(i), keyClass) : savedBounds.get(i);
+				entriesBefore[i] = ((Number) savedEntriesBefore.get(i)).longValue();
+			}
+
+			lastKey = iDocument.field(CONFIG_LAST_KEY);
+			if (keyClass != null)
+				lastKey = OType.convert(lastKey, keyClass);
+		}
+
+		final OIndexStatistics statistics = new OIndexStatistics(getLong(iDocument, CONFIG_KEYS), getLong(iDocument, CONFIG_ENTRIES),
+				getLong(iDocument, CONFIG_MODIFICATIONS), getLong(iDocument, CONFIG_HISTOGRAM_ENTRIES), bounds, entriesBefore, lastKey);
+		statistics.changed = false;
+		return statistics;
+	}
+
+	/**
+	 * Writes the statistics in a document to save in the configuration of the index. The histograms of composite keys are not saved:
+	 * the estimates use them only for the indexes with one field.
+	 */
+	public synchronized ODocument toStream() {
+		final ODocument document = new ODocument();
+		document.field(CONFIG_KEYS, keys);
+		document.field(CONFIG_ENTRIES, entries);
+		document.field(CONFIG_MODIFICATIONS, modifications);
+		document.field(CONFIG_HISTOGRAM_ENTRIES, histogramEntries);
+
+		if (bounds != null && bounds.length > 0 && !(lastKey instanceof OCompositeKey)) {
+			final List<Object> savedBounds = new ArrayList<Object>(bounds.length);
+			final List<Long> savedEntriesBefore = new ArrayList<Long>(bounds.length);
+			for (int i = 0; i < bounds.length; ++i) {
+				savedBounds.add(bounds[i]);
+				savedEntriesBefore.add(entriesBefore[i]);
+			}
+			document.field(CONFIG_BOUNDS, savedBounds, OType.EMBEDDEDLIST);
+			document.field(CONFIG_ENTRIES_BEFORE, savedEntriesBefore, OType.EMBEDDEDLIST);
+			document.field(CONFIG_LAST_KEY, lastKey);
+		}
+
+		changed = false;
+		return document;
+	}
+
+	/**
+	 * Updates the counters after a change of the index.
+	 * 
+	 * @param iKeys
+	 *          Keys added, negative if removed
+	 * @param iEntries
+	 *          Entries added, negative if removed
+	 */
+	public synchronized void update(final long iKeys, final long iEntries) {
+		keys = Math.max(0, keys + iKeys);
+		entries = Math.max(0, entries + iEntries);
+		modifications += Math.abs(iEntries);
+		changed = true;
+	}
+
+	/**
+	 * Tells if the statistics changed since they were last written by {@link #toStream()}.
+	 */
+	public synchronized boolean isChanged() {
+		return changed;
+	}
+
+	/**
+	 * Tells if the histogram no longer describes the index, because the entries added and removed since its computation exceed the
+	 * percentage received of the entries it was computed on.
+	 */
+	public synchronized boolean isStale(final int iMaxChangePercent) {
+		return modifications * 100 > (long) iMaxChangePercent * Math.max(histogramEntries, 1);
+	}
+
+	public synchronized long getKeys() {
+		return keys;
+	}
+
+	public synchronized long getEntries() {
+		return entries;
+	}
+
+	public synchronized long getModifications() {
+		return modifications;
+	}
+
+	/**
+	 * Tells if the estimates use the histogram: it's computed and not stale.
+	 */
+	public synchronized boolean hasHistogram() {
+		return bounds != null && bounds.length > 0
+				&& !isStale(OGlobalConfiguration.INDEX_STATISTICS_REFRESH.getValueAsInteger());
+	}
+
+	/**
+	 * Returns the records expected for a key, supposing the records distributed evenly between the keys.
+	 */
+	public synchronized double estimateEquals() {
+		return keys > 0 ? (double) entries / keys : 0;
+	}
+
+	/**
+	 * Returns the records expected for the key received. A key out of the keys of the index has no records. A key that is the bound
+	 * of more buckets is frequent: it has the records of those buckets. The other keys are supposed to have the average records.
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public synchronized double estimateEquals(final Object iKey) {
+		if (!hasHistogram() || iKey == null)
+			return estimateEquals();
+
+		try {
+			if (((Comparable) iKey).compareTo(bounds[0]) < 0 || ((Comparable) iKey).compareTo(lastKey) > 0)
+				return 0;
+
+			// FIND THE FIRST BOUND NOT LOWER THAN THE KEY
+			int low = 0;
+			int high = bounds.length;
+			while (low < high) {
+				final int middle = (low + high) >>> 1;
+				if (((Comparable) bounds[middle]).compareTo(iKey) < 0)
+					low = middle + 1;
+				else
+					high = middle;
+			}
+
+			int last = low;
+			while (last + 1 < bounds.length && ((Comparable) bounds[last + 1]).compareTo(iKey) == 0)
+				last++;
+
+			if (last > low)
+				return ((last + 1 < bounds.length ? entriesBefore[last + 1] : histogramEntries) - entriesBefore[low]) * getScale();
+
+		} catch (ClassCastException e) {
+			// NOT COMPARABLE: USE THE AVERAGE
+		}
+		return estimateEquals();
+	}
+
+	/**
+	 * Returns the records expected between the two keys using the histogram. A null key means no bound on that side.
+	 * 
+	 * @return the records expected, or -1 if the index has no histogram or the keys cannot be compared with the ones of the index
+	 */
+	public synchronized double estimateRange(final Object iFrom, final boolean iFromInclusive, final Object iTo,
+			final boolean iToInclusive) {
+		if (!hasHistogram())
+			return -1;
+
+		final double from = iFrom != null ? entriesBefore(iFrom) : 0;
+		final double to = iTo != null ? entriesBefore(iTo) : histogramEntries;
+		if (from < 0 || to < 0)
+			return -1;
+
+		final double result = (to - from) * getScale() + (iTo != null && iToInclusive ? estimateEquals(iTo) : 0)
+				- (iFrom != null && !iFromInclusive ? estimateEquals(iFrom) : 0);
+		return Math.max(0, Math.min(result, entries));
+	}
+
+	/**
+	 * Returns the ratio between the entries of the index and the ones the histogram was computed on.
+	 */
+	private double getScale() {
+		return histogramEntries > 0 ? (double) entries / histogramEntries : 0;
+	}
+
+	/**
+	 * Returns the entries of the histogram with keys lower than the key received, interpolating inside the bucket if the keys are
+	 * numbers or dates, otherwise supposing it in the middle. Returns -1 if the key cannot be compared.
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private double entriesBefore(final Object iKey) {
+		try {
+			if (((Comparable) iKey).compareTo(bounds[0]) <= 0)
+				return 0;
+			if (((Comparable) iKey).compareTo(lastKey) > 0)
+				return histogramEntries;
+
+			// FIND THE LAST BOUND LOWER THAN THE KEY
+			int low = 0;
+			int high = bounds.length - 1;
+			while (low < high) {
+				final int middle = (low + high + 1) >>> 1;
+				if (((Comparable) bounds[middle]).compareTo(iKey) < 0)
+					low = middle;
+				else
+					high = middle - 1;
+			}
+
+			final Object bucketStart = bounds[low];
+			final Object bucketEnd = low + 1 < bounds.length ? bounds[low + 1] : lastKey;
+			final long bucketEntries = (low + 1 < bounds.length ? entriesBefore[low + 1] : histogramEntries) - entriesBefore[low];
+
+			double position = 0.5;
+			final double start = toDouble(bucketStart);
+			final double end = toDouble(bucketEnd);
+			final double key = toDouble(iKey);
+			if (!Double.isNaN(start) && !Double.isNaN(end) && !Double.isNaN(key) && end > start)
+				position = Math.min(1, Math.max(0, (key - start) / (end - start)));
+
+			return entriesBefore[low] + position * bucketEntries;
+
+		} catch (ClassCastException e) {
+			return -1;
+		}
+	}
+
+	private static double toDouble(final Object iValue) {
+		if (iValue instanceof Number)
+			return ((Number) iValue).doubleValue();
+		if (iValue instanceof Date)
+			return ((Date) iValue).getTime();
+		return Double.NaN;
+	}
+
+	private static long getLong(final ODocument iDocument, final String iField) {
+		final Number value = iDocument.field(iField);
+		return value != null ? value.longValue() : 0;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "OIndexStatistics [keys=" + keys + ", entries=" + entries + ", modifications=" + modifications + ", buckets="
+				+ (bounds != null ? bounds.length : 0) + "]";
+	}
+}
@@ -15,7 +15,10 @@
  */
 package com.orientechnologies.orient.core.index;
 
+import java.util.List;
+
 import com.orientechnologies.orient.core.db.record.OIdentifiable;
+import com.orientechnologies.orient.core.id.ORID;
 
 /**
  * Index implementation that allows only one value for a key.
@@ -29,26 +32,38 @@ public class OIndexUnique extends OIndexOneValue {
 	}
 
 	public OIndexOneValue put(final Object iKey, final OIdentifiable iSingleValue) {
+		checkForLoading();
 		acquireExclusiveLock();
 		try {
 			checkForKeyType(iKey);
 
-			final OIdentifiable value = map.get(iKey);
+			// THE VALUES OF THE INCLUDED FIELDS ARE NOT PART OF THE UNIQUE KEY
+			final Object uniqueKey = getUniqueKey(iKey);
+			final OIdentifiable value = map.get(uniqueKey);
 
 			if (value != null) {
 				// CHECK IF THE ID IS THE SAME OF CURRENT: THIS IS THE UPDATE CASE
 				if (!value.equals(iSingleValue))
-					throw new OIndexException("Found duplicated key '" + iKey + "' on unique index '" + name + "' for record "
+					throw new OIndexException("Found duplicated key '" + uniqueKey + "' on unique index '" + name + "' for record "
 							+ iSingleValue.getIdentity() + ". The record already present in the index is " + value.getIdentity());
-				else
+				else if (uniqueKey == iKey)
 					return this;
 			}
 
 			map.put(iKey, iSingleValue);
+			if (value == null)
+				updateStatistics(1, 1);
 			return this;
 
 		} finally {
 			releaseExclusiveLock();
 		}
 	}
+
+	@Override
+	protected void checkKeyRecords(final Object iKey, final List<ORID> iRecords) {
+		if (iRecords.size() > 1)
+			throw new OIndexException("Found duplicated key '" + iKey + "' on unique index '" + name + "' for record " + iRecords.get(1)
+					+ ". The record already present in the index is " + iRecords.get(0));
+	}
 }
@@ -0,0 +1,450 @@
+/*
+ * Copyright 1999-2010 Luca Garulli (l.garulli--at--orientechnologies.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.orientechnologies.orient.core.index;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import com.orientechnologies.common.listener.OProgressListener;
+import com.orientechnologies.common.log.OLogManager;
+import com.orientechnologies.common.profiler.OProfiler;
+import com.orientechnologies.common.profiler.OProfiler.OProfilerHookValue;
+import com.orientechnologies.orient.core.db.record.ODatabaseRecord;
+import com.orientechnologies.orient.core.db.record.OIdentifiable;
+import com.orientechnologies.orient.core.id.ORID;
+import com.orientechnologies.orient.core.record.ORecord;
+import com.orientechnologies.orient.core.record.impl.ODocument;
+import com.orientechnologies.orient.core.serialization.serializer.stream.OCompositeKeySerializer;
+import com.orientechnologies.orient.core.serialization.serializer.stream.OStreamSerializer;
+import com.orientechnologies.orient.core.serialization.serializer.stream.OStreamSerializerLiteral;
+import com.orientechnologies.orient.core.serialization.serializer.stream.OStreamSerializerRID;
+import com.orientechnologies.orient.core.type.hash.OHashTableDatabase;
+
+/**
+ * Unique index based on a persistent hash table. Lookups by key cost a hash and the scan of one bucket instead of the descent of a
+ * tree, but the keys are not ordered: range queries are not supported.
+ *
+ * @author Luca Garulli
+ * @see OHashTableDatabase
+ */
+public class OIndexUniqueHash extends OIndexAbstract<OIdentifiable> {
+	public static final String														TYPE	= "UNIQUE_HASH";
+	protected OHashTableDatabase<Object, OIdentifiable>	table;
+	private volatile boolean															memoryLow;
+
+	public OIndexUniqueHash() {
+		super(TYPE);
+	}
+
+	public OIndexUniqueHash create(final String iName, final OIndexDefinition iIndexDefinition, final ODatabaseRecord iDatabase,
+			final String iClusterIndexName, final int[] iClusterIdsToIndex, final OProgressListener iProgressListener) {
+		return (OIndexUniqueHash) super.create(iName, iIndexDefinition, iDatabase, iClusterIndexName, iClusterIdsToIndex,
+				iProgressListener, OStreamSerializerRID.INSTANCE);
+	}
+
+	@Override
+	protected Object getContainer() {
+		return table;
+	}
+
+	@Override
+	protected void createContainer(final ODatabaseRecord iDatabase, final String iClusterIndexName,
+			final OStreamSerializer iValueSerializer) {
+		final OStreamSerializer keySerializer;
+		if (indexDefinition instanceof OCompositeIndexDefinition)
+			keySerializer = OCompositeKeySerializer.INSTANCE;
+		else
+			keySerializer = OStreamSerializerLiteral.INSTANCE;
+
+		table = new OHashTableDatabase<Object, OIdentifiable>(iClusterIndexName, keySerializer, iValueSerializer);
+	}
+
+	@Override
+	protected void openContainer(final ORID iRid) {
+		table = new OHashTableDatabase<Object, OIdentifiable>(getDatabase(), iRid);
+	}
+
+	@Override
+	protected void loadContainer() {
+		table.load();
+	}
+
+	@Override
+	protected void deleteContainer() {
+		table.delete();
+	}
+
+	@Override
+	protected void lazySaveContainer() {
+		table.lazySave();
+	}
+
+	@Override
+	protected void unloadContainer() {
+		table.unload();
+	}
+
+	@Override
+	protected void commitContainerChanges() {
+		table.commitChanges();
+	}
+
+	@Override
+	protected void setRunningTransaction(final boolean iValue) {
+		table.setRunningTransaction(iValue);
+	}
+
+	@Override
+	protected long getContainerSize() {
+		return table.size();
+	}
+
+	@Override
+	protected void onMemoryLow(final long iFreeMemoryPercentage) {
+		memoryLow = true;
+	}
+
+	@Override
+	protected void checkForOptimization() {
+		if (memoryLow)
+			freeMemory();
+	}
+
+	public OIdentifiable get(final Object iKey) {
+
+		checkForLoading();
+		acquireSharedLock();
+		try {
+
+			return table.get(iKey);
+
+		} finally {
+			releaseSharedLock();
+		}
+	}
+
+	public boolean contains(final Object iKey) {
+
+		checkForLoading();
+		acquireSharedLock();
+		try {
+
+			return table.containsKey(iKey);
+
+		} finally {
+			releaseSharedLock();
+		}
+	}
+
+	public OIndexUniqueHash put(final Object iKey, final OIdentifiable iSingleValue) {
+		checkForLoading();
+		acquireExclusiveLock();
+		try {
+			checkForKeyType(iKey);
+
+			final OIdentifiable value = table.get(iKey);
+
+			if (value != null) {
+				// CHECK IF THE ID IS THE SAME OF CURRENT: THIS IS THE UPDATE CASE
+				if (!value.equals(iSingleValue))
+					throw new OIndexException("Found duplicated key '" + iKey + "' on unique index '" + name + "' for record "
+							+ iSingleValue.getIdentity() + ". The record already present in the index is " + value.getIdentity());
+				else
+					return this;
+			}
+
+			table.put(iKey, iSingleValue);
+			updateStatistics(1, 1);
+			return this;
+
+		} finally {
+			releaseExclusiveLock();
+		}
+	}
+
+	public boolean remove(final Object iKey) {
+
+		checkForLoading();
+		acquireExclusiveLock();
+		try {
+
+			if (!table.remove(iKey))
+				return false;
+
+			updateStatistics(-1, -1);
+			return true;
+
+		} finally {
+			releaseExclusiveLock();
+		}
+	}
+
+	public int remove(final OIdentifiable iRecord) {
+
+		checkForLoading();
+		acquireExclusiveLock();
+		try {
+
+			final List<Object> keysToRemove = new ArrayList<Object>();
+			for (final Iterator<Entry<Object, OIdentifiable>> it = table.iterator(); it.hasNext();) {
+				final Entry<Object, OIdentifiable> entry = it.next();
+				if (entry.getValue().equals(iRecord))
+					keysToRemove.add(entry.getKey());
+			}
+
+			for (Object key : keysToRemove)
+				table.remove(key);
+
+			updateStatistics(-keysToRemove.size(), -keysToRemove.size());
+			return keysToRemove.size();
+
+		} finally {
+			releaseExclusiveLock();
+		}
+	}
+
+	public int count(final OIdentifiable iRecord) {
+
+		checkForLoading();
+		acquireSharedLock();
+		try {
+
+			int tot = 0;
+			for (final Iterator<Entry<Object, OIdentifiable>> it = table.iterator(); it.hasNext();)
+				if (it.next().getValue().equals(iRecord))
+					++tot;
+
+			return tot;
+
+		} finally {
+			releaseSharedLock();
+		}
+	}
+
+	public Collection<OIdentifiable> getValues(final Collection<?> iKeys, final int maxValuesToFetch) {
+
+		checkForLoading();
+		acquireSharedLock();
+
+		final Set<OIdentifiable> result = new HashSet<OIdentifiable>();
+		try {
+			for (final Object key : iKeys) {
+				if (maxValuesToFetch > -1 && result.size() == maxValuesToFetch)
+					return result;
+
+				final OIdentifiable val = table.get(key);
+				if (val != null)
+					result.add(val);
+			}
+
+			return result;
+		} finally {
+			releaseSharedLock();
+		}
+	}
+
+	public Collection<ODocument> getEntries(final Collection<?> iKeys, final int maxEntriesToFetch) {
+
+		checkForLoading();
+		acquireSharedLock();
+
+		final Set<ODocument> result = new ODocumentFieldsHashSet();
+		try {
+			for (final Object key : iKeys) {
+				if (maxEntriesToFetch > -1 && result.size() == maxEntriesToFetch)
+					return result;
+
+				final OIdentifiable val = table.get(key);
+				if (val != null) {
+					final ODocument document = new ODocument();
+					document.field("key", key);
+					document.field("rid", val.getIdentity());
+					document.unsetDirty();
+
+					result.add(document);
+				}
+			}
+
+			return result;
+		} finally {
+			releaseSharedLock();
+		}
+	}
+
+	public Collection<OIdentifiable> getValuesBetween(final Object iRangeFrom, final Object iRangeTo) {
+		throw rangeNotSupported();
+	}
+
+	public Collection<OIdentifiable> getValuesBetween(final Object iRangeFrom, final boolean iFromInclusive, final Object iRangeTo,
+			final boolean iToInclusive) {
+		throw rangeNotSupported();
+	}
+
+	public Collection<OIdentifiable> getValuesBetween(final Object iRangeFrom, final boolean iFromInclusive, final Object iRangeTo,
+			final boolean iToInclusive, final int maxValuesToFetch) {
+		throw rangeNotSupported();
+	}
+
+	public Collection<OIdentifiable> getValuesMajor(final Object fromKey, final boolean isInclusive) {
+		throw rangeNotSupported();
+	}
+
+	public Collection<OIdentifiable> getValuesMajor(final Object fromKey, final boolean isInclusive, final int maxValuesToFetch) {
+		throw rangeNotSupported();
+	}
+
+	public Collection<OIdentifiable> getValuesMinor(final Object toKey, final boolean isInclusive) {
+		throw rangeNotSupported();
+	}
+
+	public Collection<OIdentifiable> getValuesMinor(final Object toKey, final boolean isInclusive, final int maxValuesToFetch) {
+		throw rangeNotSupported();
+	}
+
+	public Collection<ODocument> getEntriesMajor(final Object fromKey, final boolean isInclusive) {
+		throw rangeNotSupported();
+	}
+
+	public Collection<ODocument> getEntriesMajor(final Object fromKey, final boolean isInclusive, final int maxEntriesToFetch) {
+		throw rangeNotSupported();
+	}
+
+	public Collection<ODocument> getEntriesMinor(final Object toKey, final boolean isInclusive) {
+		throw rangeNotSupported();
+	}
+
+	public Collection<ODocument> getEntriesMinor(final Object toKey, final boolean isInclusive, final int maxEntriesToFetch) {
+		throw rangeNotSupported();
+	}
+
+	public Collection<ODocument> getEntriesBetween(final Object iRangeFrom, final Object iRangeTo, final boolean iInclusive) {
+		throw rangeNotSupported();
+	}
+
+	public Collection<ODocument> getEntriesBetween(final Object iRangeFrom, final Object iRangeTo, final boolean iInclusive,
+			final int maxEntriesToFetch) {
+		throw rangeNotSupported();
+	}
+
+	public Collection<ODocument> getEntriesBetween(final Object iRangeFrom, final Object iRangeTo) {
+		throw rangeNotSupported();
+	}
+
+	public OIndexCursor cursor(final Object iRangeFrom, final boolean iFromInclusive, final Object iRangeTo,
+			final boolean iToInclusive, final boolean iAscending) {
+		throw rangeNotSupported();
+	}
+
+	public Iterator<Entry<Object, OIdentifiable>> iterator() {
+
+		checkForLoading();
+		acquireSharedLock();
+		try {
+
+			return table.iterator();
+
+		} finally {
+			releaseSharedLock();
+		}
+	}
+
+	public Iterable<Object> keys() {
+
+		checkForLoading();
+		acquireSharedLock();
+		try {
+
+			return table.keys();
+
+		} finally {
+			releaseSharedLock();
+		}
+	}
+
+	public long getSize() {
+
+		checkForLoading();
+		acquireSharedLock();
+		try {
+
+			return table.size();
+
+		} finally {
+			releaseSharedLock();
+		}
+	}
+
+	public OIndex<OIdentifiable> clear() {
+
+		checkForLoading();
+		acquireExclusiveLock();
+		try {
+
+			table.clear();
+			clearStatistics();
+			return this;
+
+		} finally {
+			releaseExclusiveLock();
+		}
+	}
+
+	public ORecord<?> getRecord() {
+		return table.getRecord();
+	}
+
+	@Override
+	protected void installHooks(final ODatabaseRecord iDatabase) {
+		OProfiler.getInstance().registerHookValue("index." + name + ".buckets", new OProfilerHookValue() {
+			public Object getValue() {
+				return table != null ? table.getBucketCount() : "-";
+			}
+		});
+
+		super.installHooks(iDatabase);
+	}
+
+	@Override
+	protected void uninstallHooks(final ODatabaseRecord iDatabase) {
+		OProfiler.getInstance().unregisterHookValue("index." + name + ".buckets");
+		super.uninstallHooks(iDatabase);
+	}
+
+	protected void freeMemory() {
+		acquireExclusiveLock();
+		try {
+
+			if (memoryLow) {
+				memoryLow = false;
+				table.lazySave();
+				final int freed = table.freeMemory();
+				OLogManager.instance().debug(this, "Freed %d buckets of index %s", freed, name);
+			}
+
+		} finally {
+			releaseExclusiveLock();
+		}
+	}
+
+	protected OIndexException rangeNotSupported() {
+		return new OIndexException("Index '" + name + "' of type " + TYPE + " does not support range queries");
+	}
+}
@@ -15,16 +15,21 @@
  */
 package com.orientechnologies.orient.core.iterator;
 
+import java.io.IOException;
 import java.util.Iterator;
 import java.util.List;
 import java.util.NoSuchElementException;
 
+import com.orientechnologies.orient.core.config.OGlobalConfiguration;
 import com.orientechnologies.orient.core.db.record.ODatabaseRecord;
 import com.orientechnologies.orient.core.db.record.ODatabaseRecordAbstract;
 import com.orientechnologies.orient.core.db.record.OIdentifiable;
 import com.orientechnologies.orient.core.db.record.ORecordOperation;
 import com.orientechnologies.orient.core.id.ORecordId;
 import com.orientechnologies.orient.core.record.ORecordInternal;
+import com.orientechnologies.orient.core.storage.ORawBuffer;
+import com.orientechnologies.orient.core.storage.OPhysicalPosition;
+import com.orientechnologies.orient.core.storage.OStorageEmbedded;
 
 /**
  * Iterator class to browse forward and backward the records of a cluster. Once browsed in a direction, the iterator cannot change
@@ -51,6 +56,11 @@ public abstract class OIdentifiableIterator<REC extends OIdentifiable> implement
 	protected long													totalAvailableRecords;
 	protected List<ORecordOperation>				txEntries;
 	protected int														currentTxEntryPosition	= -1;
+	protected int														prefetchSize						= OGlobalConfiguration.STORAGE_SCAN_PREFETCH_SIZE
+																																			.getValueAsInteger();
+	private ORawBuffer[]										prefetched;
+	private int															prefetchedClusterId			= -1;
+	private long														prefetchedFrom;
 
 	public OIdentifiableIterator(final ODatabaseRecord iDatabase, final ODatabaseRecordAbstract iLowLevelDatabase) {
 		database = iDatabase;
@@ -194,6 +204,81 @@ public abstract class OIdentifiableIterator<REC extends OIdentifiable> implement
 		return this;
 	}
 
+	/**
+	 * Returns the number of records read ahead in batch while browsing forward. 0 means disabled.
+	 * 
+	 * @see #setPrefetchSize(int)
+	 */
+	public int getPrefetchSize() {
+		return prefetchSize;
+	}
+
+	/**
+	 * Tells to the iterator to read the records ahead in batch while browsing forward. Records of each batch are read from the
+	 * storage in data segment order and returned in cluster order, avoiding to jump between the cluster and the data files for each
+	 * record. Read-ahead is ignored with live updates, inside transactions and with remote storages. Records updated or deleted after
+	 * the batch was read are loaded again. Default is the "storage.scan.prefetchSize" setting.
+	 * 
+	 * @param iPrefetchSize
+	 *          Number of records to read in each batch. 0 disables it
+	 */
+	public OIdentifiableIterator<REC> setPrefetchSize(final int iPrefetchSize) {
+		prefetchSize = iPrefetchSize;
+		prefetched = null;
+		return this;
+	}
+
+	/**
+	 * Returns the content of the current record read ahead, loading the next batch of records if needed.
+	 * 
+	 * @return The record content or null if read-ahead is disabled or the record was not found in the batch or changed after it was
+	 *         read
+	 */
+	protected ORawBuffer getPrefetchedRecord() {
+		if (prefetchSize <= 0 || liveUpdated || !(database.getStorage() instanceof OStorageEmbedded)
+				|| database.getTransaction().isActive())
+			return null;
+
+		final long position = current.clusterPosition;
+
+		if (prefetched == null || prefetchedClusterId != current.clusterId || position < prefetchedFrom
+				|| position >= prefetchedFrom + prefetched.length) {
+			// LOAD THE NEXT BATCH
+			if (position < 0 || position > lastClusterPosition)
+				return null;
+
+			prefetched = ((OStorageEmbedded) database.getStorage()).readRecords(current.clusterId, position,
+					(int) Math.min(prefetchSize, lastClusterPosition - position + 1));
+			prefetchedClusterId = current.clusterId;
+			prefetchedFrom = position;
+
+			if (prefetched == null)
+				return null;
+		}
+
+		final int index = (int) (position - prefetchedFrom);
+		final ORawBuffer buffer = prefetched[index];
+		// FREE THE BUFFER: EVERY RECORD IS READ ONLY ONCE
+		prefetched[index] = null;
+
+		return buffer != null && isPrefetchedRecordValid(buffer) ? buffer : null;
+	}
+
+	/**
+	 * Checks the version of the record read ahead against the cluster, since it could be updated or deleted while the batch was
+	 * consumed. Reading the cluster entry is much cheaper than reading the record again from the data segment.
+	 */
+	private boolean isPrefetchedRecordValid(final ORawBuffer iBuffer) {
+		try {
+			final OPhysicalPosition ppos = database.getStorage().getClusterById(current.clusterId)
+					.getPhysicalPosition(current.clusterPosition, new OPhysicalPosition());
+			return ppos != null && ppos.dataChunkPosition > -1 && ppos.version == iBuffer.version;
+		} catch (IOException e) {
+			// LET THE STORAGE LOAD IT AGAIN AND REPORT THE ERROR
+			return false;
+		}
+	}
+
 	protected void checkDirection(final boolean iForward) {
 		if (directionForward == null)
 			// SET THE DIRECTION
@@ -215,7 +300,12 @@ public abstract class OIdentifiableIterator<REC extends OIdentifiable> implement
 
 		current.clusterPosition += iMovement;
 
-		if (iRecord != null) {
+		final ORawBuffer prefetchedRecord = iMovement > 0 ? getPrefetchedRecord() : null;
+		if (prefetchedRecord != null) {
+			if (iRecord != null)
+				iRecord.setIdentity(current);
+			iRecord = lowLevelDatabase.executeReadRecord(current, iRecord, fetchPlan, false, prefetchedRecord);
+		} else if (iRecord != null) {
 			iRecord.setIdentity(current);
 			iRecord = lowLevelDatabase.load(iRecord, fetchPlan);
 		} else
@@ -0,0 +1,394 @@
+/*
+ * Copyright 1999-2010 Luca Garulli (l.garulli--at--orientechnologies.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.orientechnologies.orient.core.iterator;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+import com.orientechnologies.orient.core.Orient;
+import com.orientechnologies.orient.core.db.record.ODatabaseRecord;
+import com.orientechnologies.orient.core.db.record.ODatabaseRecordAbstract;
+import com.orientechnologies.orient.core.db.record.OIdentifiable;
+import com.orientechnologies.orient.core.db.record.ORecordOperation;
+import com.orientechnologies.orient.core.record.ORecord;
+import com.orientechnologies.orient.core.record.ORecordInternal;
+import com.orientechnologies.orient.core.storage.ORawBuffer;
+import com.orientechnologies.orient.core.storage.OStorageEmbedded;
+
+/**
+ * Iterator to browse multiple clusters forward reading the records in parallel. Clusters are split in work units of consecutive
+ * positions that are read from the storage by the threads of the shared fork/join pool (see {@link Orient#getScanPool()}). At most
+ * "max pending units" are read ahead of the consumer, so memory usage is bounded. Records are unmarshalled in the caller's thread
+ * through the database, so transaction, cache, security and hooks are honored as with {@link ORecordIteratorClusters}.<br/>
+ * <br/>
+ * By default records are returned in the order they are read: call {@link #setOrdered(boolean)} to get them in cluster order. With
+ * remote storages units are read by the caller, one record at a time.
+ *
+ * @param <REC>
+ *          Record Type
+ */
+public class ORecordIteratorClustersParallel<REC extends ORecordInternal<?>> extends OIdentifiableIterator<REC> {
+	protected int[]									clusterIds;
+	protected int										unitSize				= 1000;
+	protected int										maxPendingUnits	= 16;
+	protected boolean								ordered					= false;
+
+	private final Object						monitor					= new Object();
+	private List<OScanUnit>					units;
+	private final LinkedList<OScanUnit>	completed				= new LinkedList<OScanUnit>();
+	private int											submitted;
+	private int											consumed;
+	private volatile boolean				closed;
+
+	private OScanUnit								currentUnit;
+	private int											currentIndex;
+	private ORecordInternal<?>			nextRecord;
+
+	/**
+	 * Work unit of the scan: a range of consecutive positions of a cluster.
+	 */
+	protected static class OScanUnit {
+		protected final int				index;
+		protected final int				clusterId;
+		protected final long			from;
+		protected final int				count;
+		protected ORawBuffer[]		result;
+		protected Throwable				error;
+		protected boolean					done;
+		protected ForkJoinTask<?>	task;
+
+		protected OScanUnit(final int iIndex, final int iClusterId, final long iFrom, final int iCount) {
+			index = iIndex;
+			clusterId = iClusterId;
+			from = iFrom;
+			count = iCount;
+		}
+	}
+
+	/**
+	 * Reads a work unit from the storage in a thread of the pool.
+	 */
+	@SuppressWarnings("serial")
+	private class OScanTask extends RecursiveAction {
+		private final OScanUnit	unit;
+
+		private OScanTask(final OScanUnit iUnit) {
+			unit = iUnit;
+		}
+
+		@Override
+		protected void compute() {
+			try {
+				if (!closed)
+					unit.result = ((OStorageEmbedded) database.getStorage()).readRecords(unit.clusterId, unit.from, unit.count);
+			} catch (Throwable t) {
+				unit.error = t;
+			} finally {
+				synchronized (monitor) {
+					unit.done = true;
+					completed.add(unit);
+					monitor.notifyAll();
+				}
+			}
+		}
+	}
+
+	public ORecordIteratorClustersParallel(final ODatabaseRecord iDatabase, final ODatabaseRecordAbstract iLowLevelDatabase,
+			final int[] iClusterIds) {
+		super(iDatabase, iLowLevelDatabase);
+		clusterIds = iClusterIds;
+	}
+
+	protected ORecordIteratorClustersParallel(final ODatabaseRecord iDatabase, final ODatabaseRecordAbstract iLowLevelDatabase) {
+		super(iDatabase, iLowLevelDatabase);
+	}
+
+	public boolean hasNext() {
+		checkDirection(true);
+
+		if (nextRecord != null)
+			return true;
+
+		if (limit > -1 && browsedRecords >= limit) {
+			// LIMIT REACHED
+			close();
+			return false;
+		}
+
+		nextRecord = fetchNext();
+		return nextRecord != null;
+	}
+
+	@SuppressWarnings("unchecked")
+	public REC next() {
+		if (!hasNext())
+			throw new NoSuchElementException("Parallel scan of clusters is over");
+
+		try {
+			return (REC) nextRecord;
+		} finally {
+			nextRecord = null;
+		}
+	}
+
+	/**
+	 * Stops the scan discarding the units not consumed yet and cancelling the ones not started by the pool. Called automatically when
+	 * the limit is reached.
+	 */
+	public void close() {
+		closed = true;
+		synchronized (monitor) {
+			if (units != null)
+				for (int i = 0; i < submitted; ++i) {
+					final OScanUnit unit = units.get(i);
+					if (unit != null && !unit.done && unit.task != null)
+						unit.task.cancel(false);
+				}
+			completed.clear();
+			currentUnit = null;
+			monitor.notifyAll();
+		}
+	}
+
+	/**
+	 * Returns the number of units submitted to the pool that are still waiting or being read.
+	 */
+	public int getPendingUnits() {
+		synchronized (monitor) {
+			int pending = 0;
+			if (units != null)
+				for (int i = 0; i < submitted; ++i) {
+					final OScanUnit unit = units.get(i);
+					if (unit != null && !unit.done && (unit.task == null || !unit.task.isCancelled()))
+						pending++;
+				}
+			return pending;
+		}
+	}
+
+	@Override
+	public boolean hasPrevious() {
+		throw new UnsupportedOperationException("Parallel scan can browse only forward");
+	}
+
+	@Override
+	public OIdentifiable previous() {
+		throw new UnsupportedOperationException("Parallel scan can browse only forward");
+	}
+
+	@Override
+	public ORecordIteratorClustersParallel<REC> begin() {
+		if (units != null)
+			throw new OIterationException("Cannot move the parallel scan once started");
+		return this;
+	}
+
+	@Override
+	public ORecordIteratorClustersParallel<REC> last() {
+		throw new UnsupportedOperationException("Parallel scan can browse only forward");
+	}
+
+	@Override
+	public ORecordIteratorClustersParallel<REC> setLiveUpdated(final boolean iLiveUpdated) {
+		if (iLiveUpdated)
+			throw new UnsupportedOperationException("Parallel scan does not support live updates");
+		return this;
+	}
+
+	public boolean isOrdered() {
+		return ordered;
+	}
+
+	/**
+	 * Tells to the iterator to return the records in cluster order. Units read out of order are kept in memory until their turn comes.
+	 * Default is false.
+	 */
+	public ORecordIteratorClustersParallel<REC> setOrdered(final boolean iOrdered) {
+		checkNotStarted();
+		ordered = iOrdered;
+		return this;
+	}
+
+	public int getUnitSize() {
+		return unitSize;
+	}
+
+	/**
+	 * Sets the number of consecutive positions read by every work unit. Default is 1000.
+	 */
+	public ORecordIteratorClustersParallel<REC> setUnitSize(final int iUnitSize) {
+		checkNotStarted();
+		if (iUnitSize < 1)
+			throw new IllegalArgumentException("Unit size must be positive");
+		unitSize = iUnitSize;
+		return this;
+	}
+
+	public int getMaxPendingUnits() {
+		return maxPendingUnits;
+	}
+
+	/**
+	 * Sets the maximum number of units read, or being read, ahead of the consumer. Default is 16.
+	 */
+	public ORecordIteratorClustersParallel<REC> setMaxPendingUnits(final int iMaxPendingUnits) {
+		checkNotStarted();
+		if (iMaxPendingUnits < 1)
+			throw new IllegalArgumentException("Maximum pending units must be positive");
+		maxPendingUnits = iMaxPendingUnits;
+		return this;
+	}
+
+	protected boolean include(final ORecord<?> iRecord) {
+		return true;
+	}
+
+	protected ORecordInternal<?> fetchNext() {
+		if (units == null)
+			start();
+
+		while (!closed) {
+			if (currentUnit != null) {
+				while (currentIndex < currentUnit.count) {
+					final ORawBuffer buffer = currentUnit.result != null ? currentUnit.result[currentIndex] : null;
+					current.clusterId = currentUnit.clusterId;
+					current.clusterPosition = currentUnit.from + currentIndex;
+					currentIndex++;
+
+					if (buffer == null && currentUnit.result != null)
+						// DELETED
+						continue;
+
+					ORecordInternal<?> record = getRecord();
+					if (record != null)
+						record.setIdentity(current);
+					record = lowLevelDatabase.executeReadRecord(current, record, fetchPlan, false, buffer);
+
+					if (record != null && include(record)) {
+						browsedRecords++;
+						return record;
+					}
+				}
+			}
+
+			currentUnit = takeUnit();
+			currentIndex = 0;
+			if (currentUnit == null)
+				break;
+		}
+
+		// RECORDS CREATED IN CURRENT TRANSACTION
+		if (txEntries != null)
+			while (++currentTxEntryPosition < txEntries.size()) {
+				final ORecordOperation entry = txEntries.get(currentTxEntryPosition);
+				if (entry.type == ORecordOperation.CREATED && include(entry.getRecord())) {
+					browsedRecords++;
+					return entry.getRecord();
+				}
+			}
+
+		return null;
+	}
+
+	/**
+	 * Splits the clusters in work units and submits the first ones to the pool.
+	 */
+	protected void start() {
+		units = new ArrayList<OScanUnit>();
+		for (int clusterId : clusterIds) {
+			final long[] range = database.getStorage().getClusterDataRange(clusterId);
+			if (range.length < 2 || range[1] < 0)
+				// EMPTY
+				continue;
+
+			for (long from = Math.max(range[0], 0); from <= range[1]; from += unitSize)
+				units.add(new OScanUnit(units.size(), clusterId, from, (int) Math.min(unitSize, range[1] - from + 1)));
+		}
+
+		txEntries = database.getTransaction().getRecordEntriesByClusterIds(clusterIds);
+
+		synchronized (monitor) {
+			while (submitted < units.size() && submitted < maxPendingUnits)
+				submit(units.get(submitted++));
+		}
+	}
+
+	/**
+	 * Returns the next unit to consume waiting for it if needed, then submits a new unit to keep the pool busy.
+	 *
+	 * @return The unit or null if all the units have been consumed
+	 */
+	protected OScanUnit takeUnit() {
+		synchronized (monitor) {
+			if (closed || consumed >= units.size())
+				return null;
+
+			OScanUnit unit;
+			while (true) {
+				unit = ordered ? units.get(consumed) : completed.peek();
+				if (unit != null && unit.done)
+					break;
+
+				try {
+					monitor.wait();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					close();
+					throw new OIterationException("Parallel scan of clusters has been interrupted");
+				}
+
+				if (closed)
+					return null;
+			}
+
+			completed.remove(unit);
+			// FREE THE UNIT: IT WILL NOT BE ACCESSED ANYMORE BY INDEX
+			units.set(unit.index, null);
+			consumed++;
+
+			if (submitted < units.size())
+				submit(units.get(submitted++));
+
+			if (unit.error != null) {
+				close();
+				throw new OIterationException("Error on reading records " + unit.clusterId + ":" + unit.from + "-"
+						+ (unit.from + unit.count - 1), unit.error);
+			}
+
+			return unit;
+		}
+	}
+
+	private void submit(final OScanUnit iUnit) {
+		if (database.getStorage() instanceof OStorageEmbedded) {
+			iUnit.task = new OScanTask(iUnit);
+			Orient.getScanPool().execute(iUnit.task);
+		} else {
+			// NO STORAGE ACCESS OUTSIDE THE CALLER'S THREAD: RECORDS WILL BE LOADED ONE BY ONE BY THE CONSUMER
+			iUnit.done = true;
+			completed.add(iUnit);
+		}
+	}
+
+	private void checkNotStarted() {
+		if (units != null)
+			throw new OIterationException("Cannot change the parallel scan settings once started");
+	}
+}
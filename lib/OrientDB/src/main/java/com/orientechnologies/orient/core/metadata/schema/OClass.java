@@ -35,7 +35,7 @@ public interface OClass extends Comparable<OClass> {
 	}
 
 	public static enum INDEX_TYPE {
-		UNIQUE, NOTUNIQUE, FULLTEXT, DICTIONARY, PROXY
+		UNIQUE, NOTUNIQUE, FULLTEXT, DICTIONARY, PROXY, UNIQUE_HASH, BITMAP
 	}
 
 	public <T> T newInstance() throws InstantiationException, IllegalAccessException;
@@ -185,6 +185,27 @@ public interface OClass extends Comparable<OClass> {
 	 */
 	public OIndex<?> createIndex(String iName, INDEX_TYPE iType, OProgressListener iProgressListener, String... fields);
 
+	/**
+	 * Creates database index that is based on passed in field names and that stores also the values of the included fields, so the
+	 * queries reading only indexed and included fields are answered without loading the records. Only UNIQUE and NOTUNIQUE indexes
+	 * support included fields.
+	 * 
+	 * @param iName
+	 *          Database index name.
+	 * @param iType
+	 *          Index type.
+	 * @param iFields
+	 *          Field names from which index will be created.
+	 * @param iIncludedFields
+	 *          Field names whose values are stored in the index.
+	 * @param iProgressListener
+	 *          Progress listener.
+	 * 
+	 * @return Class index registered inside of given class ans associated with database index.
+	 */
+	public OIndex<?> createIndex(String iName, INDEX_TYPE iType, String[] iFields, String[] iIncludedFields,
+			OProgressListener iProgressListener);
+
 	/**
 	 * Returns list of indexes that contain passed in fields names as their first keys. Order of fields does not matter.
 	 * 
@@ -790,8 +790,13 @@ public class OClassImpl extends ODocumentWrapperNoClass implements OClass {
 
 	public OIndex<?> createIndex(final String iName, final INDEX_TYPE iType, final OProgressListener iProgressListener,
 			final String... fields) {
+		return createIndex(iName, iType, fields, null, iProgressListener);
+	}
+
+	public OIndex<?> createIndex(final String iName, final INDEX_TYPE iType, final String[] fields, final String[] iIncludedFields,
+			final OProgressListener iProgressListener) {
 		if (!(INDEX_TYPE.DICTIONARY.equals(iType) || INDEX_TYPE.FULLTEXT.equals(iType) || INDEX_TYPE.NOTUNIQUE.equals(iType) || INDEX_TYPE.UNIQUE
-				.equals(iType)))
+				.equals(iType) || INDEX_TYPE.UNIQUE_HASH.equals(iType) || INDEX_TYPE.BITMAP.equals(iType)))
 			throw new OIndexException("Index of this type (" + iType + ") cannot be used in class indexes.");
 
 		if (fields.length == 0)
@@ -813,7 +818,24 @@ public class OClassImpl extends ODocumentWrapperNoClass implements OClass {
 		}
 
 		final OIndexDefinition indexDefinition;
-		if (fieldsToIndex.size() == 1) {
+		if (iIncludedFields != null && iIncludedFields.length > 0) {
+			if (!(INDEX_TYPE.NOTUNIQUE.equals(iType) || INDEX_TYPE.UNIQUE.equals(iType)))
+				throw new OIndexException("Included fields are supported only by " + INDEX_TYPE.UNIQUE + " and " + INDEX_TYPE.NOTUNIQUE
+						+ " indexes.");
+
+			final OCompositeIndexDefinition compositeIndex = createMultipleFieldIndexDefinition(fieldsToIndex);
+			for (final String includedField : iIncludedFields) {
+				if (!existingFieldNames.contains(includedField.toLowerCase()))
+					throw new OIndexException("Index with name : '" + iName + "' cannot be created on class : '" + name
+							+ "' because included field: '" + includedField + "' is absent in class definition.");
+				for (final String keyField : compositeIndex.getFields())
+					if (keyField.equalsIgnoreCase(includedField))
+						throw new OIndexException("Field '" + includedField + "' is already part of the key of index '" + iName + "'.");
+
+				compositeIndex.addIncludedIndex(createPropertyIndexDefinition(includedField));
+			}
+			indexDefinition = compositeIndex;
+		} else if (fieldsToIndex.size() == 1) {
 			indexDefinition = createSingleFieldIndexDefinition(fields[0]);
 		} else {
 			indexDefinition = createMultipleFieldIndexDefinition(fieldsToIndex);
@@ -824,23 +846,23 @@ public class OClassImpl extends ODocumentWrapperNoClass implements OClass {
 		return index;
 	}
 
-	private OIndexDefinition createMultipleFieldIndexDefinition(final List<String> fieldsToIndex) {
-		final OIndexDefinition indexDefinition;
+	private OCompositeIndexDefinition createMultipleFieldIndexDefinition(final List<String> fieldsToIndex) {
 		final OCompositeIndexDefinition compositeIndex = new OCompositeIndexDefinition(name);
 
-		for (final String fieldName : fieldsToIndex) {
-			final OProperty propertyToIndex = properties.get(fieldName.toLowerCase());
-			final OType propertyType = propertyToIndex.getType();
-			if (propertyType.equals(OType.EMBEDDEDLIST) || propertyType.equals(OType.EMBEDDEDSET) || propertyType.equals(OType.LINKSET)
-					|| propertyType.equals(OType.LINKSET) || propertyType.equals(OType.EMBEDDEDMAP) || propertyType.equals(OType.LINKMAP))
-				throw new OIndexException("Collections are not supported in composite indexes");
+		for (final String fieldName : fieldsToIndex)
+			compositeIndex.addIndex(createPropertyIndexDefinition(fieldName));
 
-			final OPropertyIndexDefinition propertyIndex = new OPropertyIndexDefinition(name, propertyToIndex.getName(), propertyType);
-			compositeIndex.addIndex(propertyIndex);
-		}
+		return compositeIndex;
+	}
 
-		indexDefinition = compositeIndex;
-		return indexDefinition;
+	private OPropertyIndexDefinition createPropertyIndexDefinition(final String fieldName) {
+		final OProperty propertyToIndex = properties.get(fieldName.toLowerCase());
+		final OType propertyType = propertyToIndex.getType();
+		if (propertyType.equals(OType.EMBEDDEDLIST) || propertyType.equals(OType.EMBEDDEDSET) || propertyType.equals(OType.LINKSET)
+				|| propertyType.equals(OType.LINKSET) || propertyType.equals(OType.EMBEDDEDMAP) || propertyType.equals(OType.LINKMAP))
+			throw new OIndexException("Collections are not supported in composite indexes");
+
+		return new OPropertyIndexDefinition(name, propertyToIndex.getName(), propertyType);
 	}
 
 	private OIndexDefinition createSingleFieldIndexDefinition(final String field) {
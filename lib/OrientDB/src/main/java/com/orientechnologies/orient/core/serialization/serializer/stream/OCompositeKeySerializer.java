@@ -24,6 +24,12 @@ public class OCompositeKeySerializer implements OStreamSerializer {
 		outputStream.set( compositeKey.getKeys().size() );
     
 		for (final Comparable<?> comparable : compositeKey.getKeys()) {
+			if (comparable == null) {
+				// NULL VALUES OF INCLUDED FIELDS ARE WRITTEN AS EMPTY STRINGS: OTHER VALUES HAVE ALWAYS THE TYPE
+				outputStream.set(new byte[0]);
+				continue;
+			}
+
       final StringBuilder builder = new StringBuilder(  );
       final OType type =  OType.getTypeByClass( comparable.getClass() );
       builder.append( type.toString());
@@ -43,6 +49,11 @@ public class OCompositeKeySerializer implements OStreamSerializer {
 		final int keysSize = inputStream.getAsInteger();
 		for (int i = 0; i < keysSize; i++) {
       final byte[] keyBytes = inputStream.getAsByteArray();
+			if (keyBytes == null || keyBytes.length == 0) {
+				compositeKey.addKey(null);
+				continue;
+			}
+
       final String keyString = OBinaryProtocol.bytes2string(keyBytes);
       final int typeSeparatorPos = keyString.indexOf( ',' ); 
       final OType type = OType.valueOf( keyString.substring( 0, typeSeparatorPos ) );
@@ -0,0 +1,178 @@
+/*
+ * Copyright 1999-2010 Luca Garulli (l.garulli--at--orientechnologies.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.orientechnologies.orient.core.serialization.serializer.stream;
+
+import java.io.IOException;
+import java.util.Date;
+
+import com.orientechnologies.orient.core.metadata.schema.OType;
+import com.orientechnologies.orient.core.serialization.OBinaryProtocol;
+
+/**
+ * Serializer of index keys of numeric and date types. Keys are handled as primitive long values, so tree nodes can keep them in
+ * primitive arrays and search them without boxing. Each instance converts the long back to the boxed type of the index.
+ *
+ * @author Luca Garulli
+ */
+public abstract class OPrimitiveKeySerializer implements OStreamSerializer {
+	public static final OPrimitiveKeySerializer	INTEGER		= new OPrimitiveKeySerializer("ki", OBinaryProtocol.SIZE_INT) {
+																													@Override
+																													public Object fromLong(final long iValue) {
+																														return Integer.valueOf((int) iValue);
+																													}
+																												};
+
+	public static final OPrimitiveKeySerializer	LONG			= new OPrimitiveKeySerializer("kl", OBinaryProtocol.SIZE_LONG) {
+																													@Override
+																													public Object fromLong(final long iValue) {
+																														return Long.valueOf(iValue);
+																													}
+																												};
+
+	public static final OPrimitiveKeySerializer	DATE			= new OPrimitiveKeySerializer("kd", OBinaryProtocol.SIZE_LONG) {
+																													@Override
+																													public Object fromLong(final long iValue) {
+																														return new Date(iValue);
+																													}
+																												};
+
+	public static final OPrimitiveKeySerializer	DATETIME	= new OPrimitiveKeySerializer("kt", OBinaryProtocol.SIZE_LONG) {
+																													@Override
+																													public Object fromLong(final long iValue) {
+																														return new Date(iValue);
+																													}
+																												};
+
+	private final String												name;
+	private final int														keySize;
+
+	protected OPrimitiveKeySerializer(final String iName, final int iKeySize) {
+		name = iName;
+		keySize = iKeySize;
+	}
+
+	/**
+	 * Returns the serializer for the keys of the type, or null if the type cannot be handled as primitive.
+	 */
+	public static OPrimitiveKeySerializer getByType(final OType iType) {
+		if (iType == null)
+			return null;
+
+		switch (iType) {
+		case INTEGER:
+			return INTEGER;
+		case LONG:
+			return LONG;
+		case DATE:
+			return DATE;
+		case DATETIME:
+			return DATETIME;
+		default:
+			return null;
+		}
+	}
+
+	/**
+	 * Returns the serializer by name, or null if not a primitive key serializer.
+	 */
+	public static OPrimitiveKeySerializer getByName(final String iName) {
+		if (INTEGER.name.equals(iName))
+			return INTEGER;
+		if (LONG.name.equals(iName))
+			return LONG;
+		if (DATE.name.equals(iName))
+			return DATE;
+		if (DATETIME.name.equals(iName))
+			return DATETIME;
+		return null;
+	}
+
+	/**
+	 * Converts the long back to the key object.
+	 */
+	public abstract Object fromLong(long iValue);
+
+	/**
+	 * Tells if the key can be converted to a long without losing information. Integer numbers and dates can.
+	 */
+	public boolean isConvertible(final Object iKey) {
+		if (iKey instanceof Integer || iKey instanceof Long || iKey instanceof Short || iKey instanceof Byte || iKey instanceof Date)
+			return true;
+
+		if (iKey instanceof Double || iKey instanceof Float) {
+			final double d = ((Number) iKey).doubleValue();
+			return d == (long) d;
+		}
+
+		return false;
+	}
+
+	/**
+	 * Converts the key to long. The key must be convertible.
+	 *
+	 * @see #isConvertible(Object)
+	 */
+	public long toLong(final Object iKey) {
+		if (iKey instanceof Date)
+			return ((Date) iKey).getTime();
+		return ((Number) iKey).longValue();
+	}
+
+	/**
+	 * Returns the bytes used by a key on disk.
+	 */
+	public int getKeySize() {
+		return keySize;
+	}
+
+	/**
+	 * Writes the key at the offset of the buffer.
+	 */
+	public void toBytes(final long iValue, final byte[] iBuffer, final int iOffset) {
+		if (keySize == OBinaryProtocol.SIZE_INT)
+			OBinaryProtocol.int2bytes((int) iValue, iBuffer, iOffset);
+		else
+			OBinaryProtocol.long2bytes(iValue, iBuffer, iOffset);
+	}
+
+	/**
+	 * Reads the key at the offset of the buffer.
+	 */
+	public long fromBytes(final byte[] iBuffer, final int iOffset) {
+		if (keySize == OBinaryProtocol.SIZE_INT)
+			return OBinaryProtocol.bytes2int(iBuffer, iOffset);
+		return OBinaryProtocol.bytes2long(iBuffer, iOffset);
+	}
+
+	public Object fromStream(final byte[] iStream) throws IOException {
+		if (iStream == null)
+			return null;
+		return fromLong(fromBytes(iStream, 0));
+	}
+
+	public byte[] toStream(final Object iObject) throws IOException {
+		if (iObject == null)
+			return null;
+
+		final byte[] buffer = new byte[keySize];
+		toBytes(toLong(iObject), buffer, 0);
+		return buffer;
+	}
+
+	public String getName() {
+		return name;
+	}
+}
@@ -50,6 +50,13 @@ public class OStreamSerializerFactory {
             else if(iName.equals(OCompositeKeySerializer.NAME))
                 return OCompositeKeySerializer.INSTANCE;
 
+			else if (iName.equals(OStringKeySerializer.NAME))
+				return OStringKeySerializer.INSTANCE;
+
+			final OPrimitiveKeySerializer primitiveKeySerializer = OPrimitiveKeySerializer.getByName(iName);
+			if (primitiveKeySerializer != null)
+				return primitiveKeySerializer;
+
 			throw new OConfigurationException("Stream Serializer '" + iName + "' not registered");
 
 		} catch (Exception e) {
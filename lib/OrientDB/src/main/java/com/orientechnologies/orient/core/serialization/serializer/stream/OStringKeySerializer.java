@@ -0,0 +1,44 @@
+/*
+ * Copyright 1999-2010 Luca Garulli (l.garulli--at--orientechnologies.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.orientechnologies.orient.core.serialization.serializer.stream;
+
+import java.io.IOException;
+
+import com.orientechnologies.orient.core.serialization.OBinaryProtocol;
+
+/**
+ * Serializer of string index keys. A single key is written as UTF-8 bytes, but tree nodes using it store their keys front-coded:
+ * each key only keeps the part that differs from the previous one.
+ *
+ * @author Luca Garulli
+ */
+public class OStringKeySerializer implements OStreamSerializer {
+	public static final String								NAME			= "ks";
+
+	public static final OStringKeySerializer	INSTANCE	= new OStringKeySerializer();
+
+	public String getName() {
+		return NAME;
+	}
+
+	public Object fromStream(final byte[] iStream) throws IOException {
+		return OBinaryProtocol.bytes2string(iStream);
+	}
+
+	public byte[] toStream(final Object iObject) throws IOException {
+		return OBinaryProtocol.string2bytes((String) iObject);
+	}
+}
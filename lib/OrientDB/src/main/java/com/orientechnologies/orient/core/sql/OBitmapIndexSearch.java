@@ -0,0 +1,230 @@
+/*
+ * Copyright 1999-2010 Luca Garulli (l.garulli--at--orientechnologies.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.orientechnologies.orient.core.sql;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+
+import com.orientechnologies.orient.core.db.record.ODatabaseRecord;
+import com.orientechnologies.orient.core.index.OIndex;
+import com.orientechnologies.orient.core.index.OIndexBitmap;
+import com.orientechnologies.orient.core.index.OIndexDefinition;
+import com.orientechnologies.orient.core.metadata.schema.OClass;
+import com.orientechnologies.orient.core.sql.filter.OSQLFilterCondition;
+import com.orientechnologies.orient.core.sql.filter.OSQLFilterItemField;
+import com.orientechnologies.orient.core.sql.operator.OQueryOperator;
+import com.orientechnologies.orient.core.sql.operator.OQueryOperatorAnd;
+import com.orientechnologies.orient.core.sql.operator.OQueryOperatorEquals;
+import com.orientechnologies.orient.core.sql.operator.OQueryOperatorIn;
+import com.orientechnologies.orient.core.sql.operator.OQueryOperatorNot;
+import com.orientechnologies.orient.core.sql.operator.OQueryOperatorOr;
+import com.orientechnologies.orient.core.type.bitmap.OCompressedBitmap;
+
+/**
+ * Evaluates a query condition with the bitmap indexes of the class. The conditions "=" and "IN" on a field indexed by an
+ * {@link OIndexBitmap} are resolved to the positions of their records, then AND, OR and NOT become intersections, unions and
+ * differences of the positions, cluster by cluster. The other conditions are unknown: they can only make the result larger than
+ * needed, so the records found must still be filtered.
+ *
+ * @author Luca Garulli
+ */
+public class OBitmapIndexSearch {
+	private final ODatabaseRecord	database;
+	private final OClass					schemaClass;
+	private final int[]						clusterIds;
+	private int										conditions;
+	private boolean								complemented;
+
+	/**
+	 * Positions of the records per cluster. If not exact, the records are a superset of the ones matching.
+	 */
+	private static class Positions {
+		private final Map<Integer, OCompressedBitmap>	bitmaps;
+		private final boolean													exact;
+
+		private Positions(final Map<Integer, OCompressedBitmap> iBitmaps, final boolean iExact) {
+			bitmaps = iBitmaps;
+			exact = iExact;
+		}
+	}
+
+	public OBitmapIndexSearch(final ODatabaseRecord iDatabase, final OClass iSchemaClass) {
+		database = iDatabase;
+		schemaClass = iSchemaClass;
+		clusterIds = iSchemaClass.getPolymorphicClusterIds();
+	}
+
+	/**
+	 * Returns the positions of the records that can match the condition ordered by cluster, or null if the bitmap indexes cannot do
+	 * better than a single index: at least two conditions or a NOT must be resolved by bitmaps.
+	 */
+	public Map<Integer, OCompressedBitmap> search(final OSQLFilterCondition iCondition) {
+		final Positions result = evaluate(iCondition);
+		if (result == null || (conditions < 2 && !complemented))
+			return null;
+		return result.bitmaps;
+	}
+
+	/**
+	 * Returns the positions of the records matching the condition, or null if it cannot be resolved with bitmaps.
+	 */
+	private Positions evaluate(final OSQLFilterCondition iCondition) {
+		if (iCondition == null)
+			return null;
+
+		final OQueryOperator operator = iCondition.getOperator();
+		if (operator == null) {
+			if (iCondition.getRight() == null && iCondition.getLeft() instanceof OSQLFilterCondition)
+				return evaluate((OSQLFilterCondition) iCondition.getLeft());
+			return null;
+		}
+
+		if (operator instanceof OQueryOperatorAnd) {
+			final Positions left = evaluateItem(iCondition.getLeft());
+			final Positions right = evaluateItem(iCondition.getRight());
+			if (left == null)
+				return right != null ? new Positions(right.bitmaps, false) : null;
+			if (right == null)
+				return new Positions(left.bitmaps, false);
+
+			final Map<Integer, OCompressedBitmap> result = new TreeMap<Integer, OCompressedBitmap>();
+			for (Entry<Integer, OCompressedBitmap> entry : left.bitmaps.entrySet()) {
+				final OCompressedBitmap other = right.bitmaps.get(entry.getKey());
+				if (other != null)
+					result.put(entry.getKey(), entry.getValue().and(other));
+			}
+			return new Positions(result, left.exact && right.exact);
+
+		} else if (operator instanceof OQueryOperatorOr) {
+			final Positions left = evaluateItem(iCondition.getLeft());
+			final Positions right = evaluateItem(iCondition.getRight());
+			if (left == null || right == null)
+				return null;
+
+			final Map<Integer, OCompressedBitmap> result = new TreeMap<Integer, OCompressedBitmap>(left.bitmaps);
+			for (Entry<Integer, OCompressedBitmap> entry : right.bitmaps.entrySet()) {
+				final OCompressedBitmap other = result.get(entry.getKey());
+				result.put(entry.getKey(), other != null ? other.or(entry.getValue()) : entry.getValue());
+			}
+			return new Positions(result, left.exact && right.exact);
+
+		} else if (operator instanceof OQueryOperatorNot) {
+			// ONLY THE EXACT RESULTS CAN BE NEGATED: THE COMPLEMENT OF A SUPERSET WOULD MISS RECORDS
+			final Positions operand = evaluateItem(iCondition.getLeft());
+			if (operand == null || !operand.exact)
+				return null;
+
+			final Map<Integer, OCompressedBitmap> result = new TreeMap<Integer, OCompressedBitmap>();
+			for (int clusterId : clusterIds) {
+				final long[] range = database.getStorage().getClusterDataRange(clusterId);
+				final OCompressedBitmap all = OCompressedBitmap.range(Math.max(range[0], 0), range[1]);
+				final OCompressedBitmap excluded = operand.bitmaps.get(clusterId);
+				result.put(clusterId, excluded != null ? all.andNot(excluded) : all);
+			}
+			complemented = true;
+			return new Positions(result, true);
+
+		} else if (operator instanceof OQueryOperatorEquals || operator instanceof OQueryOperatorIn)
+			return evaluateIndexed(iCondition);
+
+		return null;
+	}
+
+	private Positions evaluateItem(final Object iItem) {
+		return iItem instanceof OSQLFilterCondition ? evaluate((OSQLFilterCondition) iItem) : null;
+	}
+
+	/**
+	 * Resolves a condition "field = value" or "field IN [values]" if the field is indexed by a bitmap index of the class.
+	 */
+	private Positions evaluateIndexed(final OSQLFilterCondition iCondition) {
+		final Object field;
+		final Object value;
+		if (iCondition.getLeft() instanceof OSQLFilterItemField && !(iCondition.getRight() instanceof OSQLFilterItemField)) {
+			field = iCondition.getLeft();
+			value = iCondition.getRight();
+		} else if (iCondition.getOperator() instanceof OQueryOperatorEquals && iCondition.getRight() instanceof OSQLFilterItemField
+				&& !(iCondition.getLeft() instanceof OSQLFilterItemField)) {
+			field = iCondition.getRight();
+			value = iCondition.getLeft();
+		} else
+			return null;
+
+		if (((OSQLFilterItemField) field).hasChainOperators())
+			return null;
+
+		final OIndexBitmap index = getBitmapIndex(((OSQLFilterItemField) field).getRoot());
+		if (index == null)
+			return null;
+
+		final Collection<?> values;
+		if (iCondition.getOperator() instanceof OQueryOperatorIn) {
+			if (!(value instanceof Collection<?>))
+				return null;
+			values = (Collection<?>) value;
+		} else
+			values = Collections.singletonList(value);
+
+		final OIndexDefinition indexDefinition = index.getDefinition();
+		final Map<Integer, OCompressedBitmap> result = new TreeMap<Integer, OCompressedBitmap>();
+		for (Object v : values) {
+			final Object keyValue = OSQLHelper.getValue(v);
+			if (keyValue == null)
+				continue;
+
+			final Object key = indexDefinition.createValue(Collections.singletonList(keyValue));
+			if (key == null)
+				return null;
+
+			for (Entry<Integer, OCompressedBitmap> entry : index.getBitmaps(key).entrySet()) {
+				final OCompressedBitmap other = result.get(entry.getKey());
+				result.put(entry.getKey(), other != null ? other.or(entry.getValue()) : entry.getValue());
+			}
+		}
+
+		conditions++;
+		return new Positions(result, true);
+	}
+
+	/**
+	 * Returns the bitmap index on the field alone, only if it covers all the clusters of the class and it has no changes pending in
+	 * the current transaction.
+	 */
+	private OIndexBitmap getBitmapIndex(final String iField) {
+		for (OIndex<?> index : schemaClass.getInvolvedIndexes(iField)) {
+			if (!(index.getInternal() instanceof OIndexBitmap) || index.getDefinition().getParamCount() != 1)
+				continue;
+
+			final OIndexBitmap bitmapIndex = (OIndexBitmap) index.getInternal();
+			if (database.getTransaction().getIndexChanges(bitmapIndex.getName()) != null)
+				continue;
+
+			boolean coversClass = true;
+			for (int clusterId : clusterIds)
+				if (!bitmapIndex.getClusters().contains(database.getClusterNameById(clusterId))) {
+					coversClass = false;
+					break;
+				}
+
+			if (coversClass)
+				return bitmapIndex;
+		}
+		return null;
+	}
+}
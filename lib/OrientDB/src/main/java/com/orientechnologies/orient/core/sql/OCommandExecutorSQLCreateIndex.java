@@ -38,7 +38,7 @@ import com.orientechnologies.orient.core.metadata.security.ORole;
  * <p>
  * Supports following grammar: <br/>
  * "CREATE" "INDEX" &lt;indexName&gt; ["ON" &lt;className&gt; "(" &lt;propName&gt; ("," &lt;propName&gt;)* ")"] &lt;indexType&gt;
- * [&lt;keyType&gt; ("," &lt;keyType&gt;)*]
+ * ["INCLUDE" "(" &lt;propName&gt; ("," &lt;propName&gt;)* ")"] [&lt;keyType&gt; ("," &lt;keyType&gt;)*]
  * </p>
  * 
  * @author Luca Garulli (l.garulli--at--orientechnologies.com)
@@ -48,10 +48,12 @@ public class OCommandExecutorSQLCreateIndex extends OCommandExecutorSQLAbstract
 	public static final String	KEYWORD_CREATE	= "CREATE";
 	public static final String	KEYWORD_INDEX		= "INDEX";
 	public static final String	KEYWORD_ON			= "ON";
+	public static final String	KEYWORD_INCLUDE	= "INCLUDE";
 
 	private String							indexName;
 	private OClass							oClass;
 	private String[]						fields;
+	private String[]						includedFields;
 	private OClass.INDEX_TYPE		indexType;
 	private OType[]							keyTypes;
 
@@ -155,6 +157,30 @@ public class OCommandExecutorSQLCreateIndex extends OCommandExecutorSQLAbstract
 
 		oldPos = pos;
 		pos = OSQLHelper.nextWord(text, textUpperCase, oldPos, word, true);
+		if (pos != -1 && word.toString().startsWith(KEYWORD_INCLUDE)) {
+			if (fields == null)
+				throw new OCommandSQLParsingException("Included fields can be declared only on indexes of classes. Use " + getSyntax(), text,
+						oldPos);
+
+			final int openPos = textUpperCase.indexOf('(', oldPos);
+			final int closePos = openPos > -1 ? textUpperCase.indexOf(')', openPos) : -1;
+			if (closePos == -1)
+				throw new OCommandSQLParsingException("Expected included fields between brackets. Use " + getSyntax(), text, oldPos);
+
+			final List<String> includedList = new ArrayList<String>();
+			for (String propName : textUpperCase.substring(openPos + 1, closePos).trim().split("\\s*,\\s*")) {
+				if (oClass.getProperty(propName) == null)
+					throw new IllegalArgumentException("Property '" + propName + "' was not found in class '" + oClass.getName() + "'");
+				includedList.add(propName);
+			}
+
+			includedFields = new String[includedList.size()];
+			includedList.toArray(includedFields);
+
+			oldPos = closePos + 1;
+			pos = OSQLHelper.nextWord(text, textUpperCase, oldPos, word, true);
+		}
+
 		if (pos != -1 && !word.toString().equalsIgnoreCase("NULL")) {
 			final String typesString = textUpperCase.substring(oldPos).trim();
 
@@ -198,7 +224,7 @@ public class OCommandExecutorSQLCreateIndex extends OCommandExecutorSQLAbstract
 			else
 				idx = database.getMetadata().getIndexManager().createIndex(indexName, indexType.toString(), null, null, null);
 		} else {
-			idx = oClass.createIndex(indexName, indexType, fields);
+			idx = oClass.createIndex(indexName, indexType, fields, includedFields, null);
 		}
 
 		if (idx != null)
@@ -232,6 +258,6 @@ public class OCommandExecutorSQLCreateIndex extends OCommandExecutorSQLAbstract
 
 	@Override
 	public String getSyntax() {
-		return "CREATE INDEX <name> [ON <class-name> (prop-names)] <type> [<key-type>]";
+		return "CREATE INDEX <name> [ON <class-name> (prop-names)] <type> [INCLUDE (prop-names)] [<key-type>]";
 	}
 }
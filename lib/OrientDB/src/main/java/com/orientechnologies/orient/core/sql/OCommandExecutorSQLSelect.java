@@ -19,6 +19,7 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
@@ -33,19 +34,25 @@ import com.orientechnologies.common.parser.OStringParser;
 import com.orientechnologies.common.profiler.OProfiler;
 import com.orientechnologies.common.util.OPair;
 import com.orientechnologies.orient.core.command.OCommandRequestText;
+import com.orientechnologies.orient.core.config.OGlobalConfiguration;
 import com.orientechnologies.orient.core.db.record.ODatabaseRecord;
 import com.orientechnologies.orient.core.db.record.OIdentifiable;
 import com.orientechnologies.orient.core.db.record.ORecordElement;
 import com.orientechnologies.orient.core.exception.OCommandExecutionException;
 import com.orientechnologies.orient.core.exception.OQueryParsingException;
 import com.orientechnologies.orient.core.exception.ORecordNotFoundException;
+import com.orientechnologies.orient.core.id.ORID;
+import com.orientechnologies.orient.core.id.ORecordId;
 import com.orientechnologies.orient.core.index.OCompositeIndexDefinition;
 import com.orientechnologies.orient.core.index.OIndex;
+import com.orientechnologies.orient.core.index.OIndexBitmap;
+import com.orientechnologies.orient.core.index.OIndexCursor;
 import com.orientechnologies.orient.core.index.OIndexDefinition;
 import com.orientechnologies.orient.core.index.OIndexDefinitionMultiValue;
 import com.orientechnologies.orient.core.index.OIndexFullText;
 import com.orientechnologies.orient.core.index.OIndexNotUnique;
 import com.orientechnologies.orient.core.index.OIndexUnique;
+import com.orientechnologies.orient.core.index.OIndexUniqueHash;
 import com.orientechnologies.orient.core.index.OPropertyMapIndexDefinition;
 import com.orientechnologies.orient.core.metadata.schema.OClass;
 import com.orientechnologies.orient.core.metadata.security.ODatabaseSecurityResources;
@@ -72,6 +79,8 @@ import com.orientechnologies.orient.core.sql.operator.OQueryOperatorMajor;
 import com.orientechnologies.orient.core.sql.operator.OQueryOperatorMajorEquals;
 import com.orientechnologies.orient.core.sql.operator.OQueryOperatorMinor;
 import com.orientechnologies.orient.core.sql.operator.OQueryOperatorMinorEquals;
+import com.orientechnologies.orient.core.type.bitmap.OCompressedBitmap;
+import com.orientechnologies.orient.core.type.bitmap.OCompressedBitmap.OCompressedBitmapIterator;
 import com.orientechnologies.orient.core.type.tree.OMVRBTreeRIDSet;
 
 /**
@@ -96,6 +105,7 @@ public class OCommandExecutorSQLSelect extends OCommandExecutorSQLExtractAbstrac
 	private Object											flattenTarget;
 	private boolean											anyFunctionAggregates	= false;
 	private int													fetchLimit						= -1;
+	private OCoveringIndex							coveringIndex;
 
 	/**
 	 * Compile the filter conditions only the first time.
@@ -304,12 +314,66 @@ public class OCommandExecutorSQLSelect extends OCommandExecutorSQLExtractAbstrac
 	protected void searchInClasses() {
 		final OClass cls = compiledFilter.getTargetClasses().keySet().iterator().next();
 
-		if (searchForIndexes(cls))
+		if (searchForBitmapIndexes(cls))
+			OProfiler.getInstance().updateCounter("Query.bitmapIndexUsage", 1);
+		else if (searchForMergedIndexes(cls))
+			OProfiler.getInstance().updateCounter("Query.indexMergeUsage", 1);
+		else if (searchForIndexes(cls))
 			OProfiler.getInstance().updateCounter("Query.indexUsage", 1);
 		else
 			super.searchInClasses();
 	}
 
+	/**
+	 * Resolves the conditions on fields with bitmap indexes combining their bitmaps, then loads and filters only the records left.
+	 *
+	 * @return false if the bitmap indexes cannot be used for the query
+	 */
+	private boolean searchForBitmapIndexes(final OClass iSchemaClass) {
+		final ODatabaseRecord database = getDatabase();
+		database.checkSecurity(ODatabaseSecurityResources.CLASS, ORole.PERMISSION_READ, iSchemaClass.getName().toLowerCase());
+
+		final Map<Integer, OCompressedBitmap> positions = new OBitmapIndexSearch(database, iSchemaClass).search(compiledFilter
+				.getRootCondition());
+		if (positions == null)
+			return false;
+
+		for (Entry<Integer, OCompressedBitmap> entry : positions.entrySet())
+			for (OCompressedBitmapIterator it = entry.getValue().iterator(); it.hasNext();) {
+				// POSITIONS OF DELETED RECORDS CAN BE FOUND WHEN A CONDITION IS NEGATED
+				final ORecordInternal<?> record = database.load(new ORecordId(entry.getKey(), it.next()));
+				if (record != null && filter(record) && !addResult(record))
+					return true;
+			}
+		return true;
+	}
+
+	/**
+	 * Resolves the conditions on indexed fields intersecting and merging the RIDs found by their indexes, then loads and filters
+	 * only the records left. Not used when an index holds all the fields read by the query, so the records are not loaded at all.
+	 *
+	 * @return false if the indexes cannot be merged for the query
+	 */
+	private boolean searchForMergedIndexes(final OClass iSchemaClass) {
+		final ODatabaseRecord database = getDatabase();
+		database.checkSecurity(ODatabaseSecurityResources.CLASS, ORole.PERMISSION_READ, iSchemaClass.getName().toLowerCase());
+
+		for (OIndex<?> index : iSchemaClass.getIndexes())
+			if (OCoveringIndex.create(database, iSchemaClass, index, projections, compiledFilter.getRootCondition()) != null)
+				return false;
+
+		final Iterator<ORID> rids = new OIndexMergeSearch(database, iSchemaClass).search(compiledFilter.getRootCondition());
+		if (rids == null)
+			return false;
+
+		while (rids.hasNext()) {
+			final ORecordInternal<?> record = database.load(rids.next());
+			if (record != null && filter(record) && !addResult(record))
+				break;
+		}
+		return true;
+	}
+
 	@SuppressWarnings("rawtypes")
 	private boolean searchForIndexes(final OClass iSchemaClass) {
 		final ODatabaseRecord database = getDatabase();
@@ -329,10 +393,9 @@ public class OCommandExecutorSQLSelect extends OCommandExecutorSQLExtractAbstrac
 			}
 		});
 
-		// go through all variants to choose which one can be used for index search.
+		// go through all variants to collect the indexes that can be used for index search.
+		final List<OIndexSearchCandidate> candidates = new ArrayList<OIndexSearchCandidate>();
 		for (final OIndexSearchResult searchResult : indexSearchResults) {
-			final int searchResultFieldsCount = searchResult.fields().size();
-
 			final List<OIndex<?>> involvedIndexes = getInvolvedIndexes(iSchemaClass, searchResult);
 			Collections.sort(involvedIndexes, new Comparator<OIndex>() {
 				public int compare(final OIndex indexOne, final OIndex indexTwo) {
@@ -340,372 +403,363 @@ public class OCommandExecutorSQLSelect extends OCommandExecutorSQLExtractAbstrac
 				}
 			});
 
-			// go through all possible index for given set of fields.
-			for (final OIndex index : involvedIndexes) {
-				final OIndexDefinition indexDefinition = index.getDefinition();
-				final OQueryOperator operator = searchResult.lastOperator;
-
-				// we need to test that last field in query subset and field in index that has the same position
-				// are equals.
-				if (!(operator instanceof OQueryOperatorEquals)) {
-					final String lastFiled = searchResult.lastField.getItemName(searchResult.lastField.getItemCount() - 1);
-					final String relatedIndexField = indexDefinition.getFields().get(searchResult.fieldValuePairs.size());
-					if (!lastFiled.equals(relatedIndexField))
-						continue;
-				}
+			for (final OIndex<?> index : involvedIndexes) {
+				final OIndexSearchCandidate candidate = new OIndexSearchCandidate(searchResult, index, candidates.size());
+				candidate.covering = OCoveringIndex.create(database, iSchemaClass, index, projections, compiledFilter.getRootCondition());
+				candidates.add(candidate);
+			}
+		}
 
-				final List<Object> keyParams = new ArrayList<Object>(searchResultFieldsCount);
-				// We get only subset contained in processed sub query.
-				for (final String fieldName : indexDefinition.getFields().subList(0, searchResultFieldsCount)) {
-					final Object fieldValue = searchResult.fieldValuePairs.get(fieldName);
-					if (fieldValue != null)
-						keyParams.add(fieldValue);
-					else
-						keyParams.add(searchResult.lastValue);
-				}
+		// WITH STATISTICS THE CHEAPEST INDEX IS TRIED FIRST, WHILE THE INDEXES COSTING MORE THAN A SCAN ARE SKIPPED
+		double scanCost = Double.MAX_VALUE;
+		if (OGlobalConfiguration.INDEX_STATISTICS.getValueAsBoolean() && !candidates.isEmpty()) {
+			final float loadCost = OGlobalConfiguration.INDEX_STATISTICS_LOAD_COST.getValueAsFloat();
+			for (final OIndexSearchCandidate candidate : candidates)
+				// THE ENTRIES OF A COVERING INDEX ARE READ LIKE A SCAN READS THE RECORDS
+				candidate.estimate(database, candidate.covering != null ? 1 : loadCost);
+			Collections.sort(candidates);
+			scanCost = database.countClusterElements(iSchemaClass.getPolymorphicClusterIds());
+		}
+
+		for (final OIndexSearchCandidate candidate : candidates) {
+			final OIndexSearchResult searchResult = candidate.searchResult;
+			final OIndex index = candidate.index;
+			final int searchResultFieldsCount = searchResult.fields().size();
 
-				final OIndex internalIndex = index.getInternal();
-				final boolean indexCanBeUsedInEqualityOperators = (internalIndex instanceof OIndexUnique || internalIndex instanceof OIndexNotUnique);
+			if (candidate.isEstimated() && candidate.cost > scanCost) {
+				OProfiler.getInstance().updateCounter("Query.indexSkippedByCost", 1);
+				continue;
+			}
 
-				if (indexDefinition.getParamCount() == 1) {
-					if (indexCanBeUsedInEqualityOperators && operator instanceof OQueryOperatorBetween) {
-						final Object[] betweenKeys = (Object[]) keyParams.get(0);
+			coveringIndex = candidate.covering;
 
-						final Object keyOne = indexDefinition.createValue(Collections.singletonList(OSQLHelper.getValue(betweenKeys[0])));
-						final Object keyTwo = indexDefinition.createValue(Collections.singletonList(OSQLHelper.getValue(betweenKeys[2])));
+			final OIndexDefinition indexDefinition = index.getDefinition();
+			final OQueryOperator operator = searchResult.lastOperator;
 
-						if (keyOne == null || keyTwo == null)
-							continue;
+			// we need to test that last field in query subset and field in index that has the same position
+			// are equals.
+			if (!(operator instanceof OQueryOperatorEquals)) {
+				final String lastFiled = searchResult.lastField.getItemName(searchResult.lastField.getItemCount() - 1);
+				final String relatedIndexField = indexDefinition.getFields().get(searchResult.fieldValuePairs.size());
+				if (!lastFiled.equals(relatedIndexField))
+					continue;
+			}
 
-						final Collection<OIdentifiable> result;
-						if (fetchLimit > -1)
-							result = index.getValuesBetween(keyOne, true, keyTwo, true, fetchLimit);
-						else
-							result = index.getValuesBetween(keyOne, true, keyTwo, true);
+			final List<Object> keyParams = new ArrayList<Object>(searchResultFieldsCount);
+			// We get only subset contained in processed sub query.
+			for (final String fieldName : indexDefinition.getFields().subList(0, searchResultFieldsCount)) {
+				final Object fieldValue = searchResult.fieldValuePairs.get(fieldName);
+				if (fieldValue != null)
+					keyParams.add(fieldValue);
+				else
+					keyParams.add(searchResult.lastValue);
+			}
 
-						fillSearchIndexResultSet(result);
-						return true;
-					}
+			final OIndex internalIndex = index.getInternal();
+			final boolean indexCanBeUsedInEqualityOperators = (internalIndex instanceof OIndexUnique
+					|| internalIndex instanceof OIndexNotUnique || internalIndex instanceof OIndexBitmap);
+			// HASH INDEXES HAVE NO ORDER ON KEYS: THEY CAN SERVE ONLY EXACT MATCHES
+			final boolean indexIsHashed = internalIndex instanceof OIndexUniqueHash;
 
-					if (indexCanBeUsedInEqualityOperators && operator instanceof OQueryOperatorIn) {
-						final List<Object> inParams = (List<Object>) keyParams.get(0);
-						final List<Object> inKeys = new ArrayList<Object>();
+			if (indexDefinition.getParamCount() == 1) {
+				if (indexCanBeUsedInEqualityOperators && operator instanceof OQueryOperatorBetween) {
+					final Object[] betweenKeys = (Object[]) keyParams.get(0);
 
-						boolean containsNotCompatibleKey = false;
-						for (final Object keyValue : inParams) {
-							final Object key = indexDefinition.createValue(OSQLHelper.getValue(keyValue));
-							if (key == null) {
-								containsNotCompatibleKey = true;
-								break;
-							}
+					final Object keyOne = indexDefinition.createValue(Collections.singletonList(OSQLHelper.getValue(betweenKeys[0])));
+					final Object keyTwo = indexDefinition.createValue(Collections.singletonList(OSQLHelper.getValue(betweenKeys[2])));
 
-							inKeys.add(key);
+					if (keyOne == null || keyTwo == null)
+						continue;
 
+					fillSearchIndexResultSet(index, index.cursor(keyOne, true, keyTwo, true, true));
+					return true;
+				}
+
+				if ((indexCanBeUsedInEqualityOperators || indexIsHashed) && operator instanceof OQueryOperatorIn) {
+					final List<Object> inParams = (List<Object>) keyParams.get(0);
+					final List<Object> inKeys = new ArrayList<Object>();
+
+					boolean containsNotCompatibleKey = false;
+					for (final Object keyValue : inParams) {
+						final Object key = indexDefinition.createValue(OSQLHelper.getValue(keyValue));
+						if (key == null) {
+							containsNotCompatibleKey = true;
+							break;
 						}
-						if (containsNotCompatibleKey)
-							continue;
 
-						final Collection<OIdentifiable> result;
-						if (fetchLimit > -1)
-							result = index.getValues(inKeys, fetchLimit);
-						else
-							result = index.getValues(inKeys);
+						inKeys.add(key);
 
-						fillSearchIndexResultSet(result);
-						return true;
 					}
+					if (containsNotCompatibleKey)
+						continue;
 
-					final Object key;
-					if (indexDefinition instanceof OIndexDefinitionMultiValue)
-						key = ((OIndexDefinitionMultiValue) indexDefinition).createSingleValue(keyParams.get(0));
+					final Collection<OIdentifiable> result;
+					if (fetchLimit > -1)
+						result = index.getValues(inKeys, fetchLimit);
 					else
-						key = indexDefinition.createValue(keyParams);
+						result = index.getValues(inKeys);
 
-					if (key == null)
-						continue;
+					fillSearchIndexResultSet(result);
+					return true;
+				}
 
-					if (internalIndex instanceof OIndexFullText && operator instanceof OQueryOperatorContainsText) {
-						fillSearchIndexResultSet(index.get(key));
-						return true;
-					}
+				final Object key;
+				if (indexDefinition instanceof OIndexDefinitionMultiValue)
+					key = ((OIndexDefinitionMultiValue) indexDefinition).createSingleValue(keyParams.get(0));
+				else
+					key = indexDefinition.createValue(keyParams);
 
-					if (!indexCanBeUsedInEqualityOperators)
-						continue;
+				if (key == null)
+					continue;
 
-					if (operator instanceof OQueryOperatorEquals) {
-						fillSearchIndexResultSet(index.get(key));
-						return true;
-					}
+				if (internalIndex instanceof OIndexFullText && operator instanceof OQueryOperatorContainsText) {
+					fillSearchIndexResultSet(index.get(key));
+					return true;
+				}
 
-					if (operator instanceof OQueryOperatorContainsKey) {
-						if ((index.getDefinition() instanceof OPropertyMapIndexDefinition)
-								&& ((OPropertyMapIndexDefinition) index.getDefinition()).getIndexBy() == OPropertyMapIndexDefinition.INDEX_BY.KEY) {
-							fillSearchIndexResultSet(index.get(key));
-							return true;
-						}
-						continue;
-					}
+				if (indexIsHashed && operator instanceof OQueryOperatorEquals) {
+					fillSearchIndexResultSet(index.get(key));
+					return true;
+				}
 
-					if (operator instanceof OQueryOperatorContainsValue) {
-						if ((index.getDefinition() instanceof OPropertyMapIndexDefinition)
-								&& ((OPropertyMapIndexDefinition) index.getDefinition()).getIndexBy() == OPropertyMapIndexDefinition.INDEX_BY.VALUE) {
-							fillSearchIndexResultSet(index.get(key));
-							return true;
-						}
-						continue;
-					}
+				if (!indexCanBeUsedInEqualityOperators)
+					continue;
 
-					if (operator instanceof OQueryOperatorContains) {
+				if (operator instanceof OQueryOperatorEquals) {
+					if (coveringIndex != null)
+						// THE CURSOR RETURNS ALSO THE KEYS
+						fillSearchIndexResultSet(index, index.cursor(key, true, key, true, true));
+					else
+						fillSearchIndexResultSet(index.get(key));
+					return true;
+				}
+
+				if (operator instanceof OQueryOperatorContainsKey) {
+					if ((index.getDefinition() instanceof OPropertyMapIndexDefinition)
+							&& ((OPropertyMapIndexDefinition) index.getDefinition()).getIndexBy() == OPropertyMapIndexDefinition.INDEX_BY.KEY) {
 						fillSearchIndexResultSet(index.get(key));
 						return true;
 					}
+					continue;
+				}
 
-					if (operator instanceof OQueryOperatorMajor) {
-						final Collection<OIdentifiable> result;
-						if (fetchLimit > -1)
-							result = index.getValuesMajor(key, false, fetchLimit);
-						else
-							result = index.getValuesMajor(key, false);
-
-						fillSearchIndexResultSet(result);
+				if (operator instanceof OQueryOperatorContainsValue) {
+					if ((index.getDefinition() instanceof OPropertyMapIndexDefinition)
+							&& ((OPropertyMapIndexDefinition) index.getDefinition()).getIndexBy() == OPropertyMapIndexDefinition.INDEX_BY.VALUE) {
+						fillSearchIndexResultSet(index.get(key));
 						return true;
 					}
+					continue;
+				}
 
-					if (operator instanceof OQueryOperatorMajorEquals) {
-						final Collection<OIdentifiable> result;
-						if (fetchLimit > -1)
-							result = index.getValuesMajor(key, true, fetchLimit);
-						else
-							result = index.getValuesMajor(key, true);
+				if (operator instanceof OQueryOperatorContains) {
+					fillSearchIndexResultSet(index.get(key));
+					return true;
+				}
 
-						fillSearchIndexResultSet(result);
-						return true;
-					}
+				if (operator instanceof OQueryOperatorMajor) {
+					fillSearchIndexResultSet(index, index.cursor(key, false, null, false, true));
+					return true;
+				}
 
-					if (operator instanceof OQueryOperatorMinor) {
-						final Collection<OIdentifiable> result;
-						if (fetchLimit > -1)
-							result = index.getValuesMinor(key, false, fetchLimit);
-						else
-							result = index.getValuesMinor(key, false);
+				if (operator instanceof OQueryOperatorMajorEquals) {
+					fillSearchIndexResultSet(index, index.cursor(key, true, null, false, true));
+					return true;
+				}
 
-						fillSearchIndexResultSet(result);
-						return true;
-					}
+				if (operator instanceof OQueryOperatorMinor) {
+					fillSearchIndexResultSet(index, index.cursor(null, false, key, false, true));
+					return true;
+				}
 
-					if (operator instanceof OQueryOperatorMinorEquals) {
-						final Collection<OIdentifiable> result;
-						if (fetchLimit > -1)
-							result = index.getValuesMinor(key, true, fetchLimit);
-						else
-							result = index.getValuesMinor(key, true);
+				if (operator instanceof OQueryOperatorMinorEquals) {
+					fillSearchIndexResultSet(index, index.cursor(null, false, key, true, true));
+					return true;
+				}
+			} else {
+				if (indexIsHashed && operator instanceof OQueryOperatorEquals
+						&& searchResultFieldsCount == indexDefinition.getParamCount()) {
+					// ALL THE FIELDS OF THE COMPOSITE KEY ARE KNOWN: LOOK UP THE WHOLE KEY
+					final Object key = indexDefinition.createValue(keyParams);
 
-						fillSearchIndexResultSet(result);
-						return true;
-					}
-				} else {
-					if (!indexCanBeUsedInEqualityOperators)
+					if (key == null)
 						continue;
 
-					if (operator instanceof OQueryOperatorBetween) {
-						final Object[] betweenKeys = (Object[]) keyParams.get(keyParams.size() - 1);
+					fillSearchIndexResultSet(index.get(key));
 
-						final Object betweenKeyOne = OSQLHelper.getValue(betweenKeys[0]);
+					if (OProfiler.getInstance().isRecording()) {
+						OProfiler.getInstance().updateCounter("Query.compositeIndexUsage", 1);
+						OProfiler.getInstance().updateCounter("Query.compositeIndexUsage." + indexDefinition.getParamCount(), 1);
+					}
+					return true;
+				}
 
-						if (betweenKeyOne == null)
-							continue;
+				if (!indexCanBeUsedInEqualityOperators)
+					continue;
 
-						final Object betweenKeyTwo = OSQLHelper.getValue(betweenKeys[2]);
+				if (operator instanceof OQueryOperatorBetween) {
+					final Object[] betweenKeys = (Object[]) keyParams.get(keyParams.size() - 1);
 
-						if (betweenKeyTwo == null)
-							continue;
+					final Object betweenKeyOne = OSQLHelper.getValue(betweenKeys[0]);
 
-						final List<Object> betweenKeyOneParams = new ArrayList<Object>(keyParams.size());
-						betweenKeyOneParams.addAll(keyParams.subList(0, keyParams.size() - 1));
-						betweenKeyOneParams.add(betweenKeyOne);
+					if (betweenKeyOne == null)
+						continue;
 
-						final List<Object> betweenKeyTwoParams = new ArrayList<Object>(keyParams.size());
-						betweenKeyTwoParams.addAll(keyParams.subList(0, keyParams.size() - 1));
-						betweenKeyTwoParams.add(betweenKeyTwo);
+					final Object betweenKeyTwo = OSQLHelper.getValue(betweenKeys[2]);
 
-						final Object keyOne = indexDefinition.createValue(betweenKeyOneParams);
+					if (betweenKeyTwo == null)
+						continue;
 
-						if (keyOne == null)
-							continue;
+					final List<Object> betweenKeyOneParams = new ArrayList<Object>(keyParams.size());
+					betweenKeyOneParams.addAll(keyParams.subList(0, keyParams.size() - 1));
+					betweenKeyOneParams.add(betweenKeyOne);
 
-						final Object keyTwo = indexDefinition.createValue(betweenKeyTwoParams);
+					final List<Object> betweenKeyTwoParams = new ArrayList<Object>(keyParams.size());
+					betweenKeyTwoParams.addAll(keyParams.subList(0, keyParams.size() - 1));
+					betweenKeyTwoParams.add(betweenKeyTwo);
 
-						if (keyTwo == null)
-							continue;
+					final Object keyOne = indexDefinition.createValue(betweenKeyOneParams);
 
-						final Collection<OIdentifiable> result;
-						if (fetchLimit > -1)
-							result = index.getValuesBetween(keyOne, true, keyTwo, true, fetchLimit);
-						else
-							result = index.getValuesBetween(keyOne, true, keyTwo, true);
+					if (keyOne == null)
+						continue;
 
-						fillSearchIndexResultSet(result);
+					final Object keyTwo = indexDefinition.createValue(betweenKeyTwoParams);
 
-						if (OProfiler.getInstance().isRecording()) {
-							OProfiler.getInstance().updateCounter("Query.compositeIndexUsage", 1);
-							OProfiler.getInstance().updateCounter("Query.compositeIndexUsage." + indexDefinition.getParamCount(), 1);
-						}
+					if (keyTwo == null)
+						continue;
 
-						return true;
+					fillSearchIndexResultSet(index, index.cursor(keyOne, true, keyTwo, true, true));
+
+					if (OProfiler.getInstance().isRecording()) {
+						OProfiler.getInstance().updateCounter("Query.compositeIndexUsage", 1);
+						OProfiler.getInstance().updateCounter("Query.compositeIndexUsage." + indexDefinition.getParamCount(), 1);
 					}
 
-					if (operator instanceof OQueryOperatorEquals) {
-						// in case of composite keys several items can be returned in case of we perform search
-						// using part of composite key stored in index.
+					return true;
+				}
 
-						final Object keyOne = indexDefinition.createValue(keyParams);
+				if (operator instanceof OQueryOperatorEquals) {
+					// in case of composite keys several items can be returned in case of we perform search
+					// using part of composite key stored in index.
 
-						if (keyOne == null)
-							continue;
+					final Object keyOne = indexDefinition.createValue(keyParams);
 
-						final Object keyTwo = indexDefinition.createValue(keyParams);
+					if (keyOne == null)
+						continue;
 
-						final Collection<OIdentifiable> result;
-						if (fetchLimit > -1)
-							result = index.getValuesBetween(keyOne, true, keyTwo, true, fetchLimit);
-						else
-							result = index.getValuesBetween(keyOne, true, keyTwo, true);
+					final Object keyTwo = indexDefinition.createValue(keyParams);
 
-						fillSearchIndexResultSet(result);
+					fillSearchIndexResultSet(index, index.cursor(keyOne, true, keyTwo, true, true));
 
-						if (OProfiler.getInstance().isRecording()) {
-							OProfiler.getInstance().updateCounter("Query.compositeIndexUsage", 1);
-							OProfiler.getInstance().updateCounter("Query.compositeIndexUsage." + indexDefinition.getParamCount(), 1);
-						}
-						return true;
+					if (OProfiler.getInstance().isRecording()) {
+						OProfiler.getInstance().updateCounter("Query.compositeIndexUsage", 1);
+						OProfiler.getInstance().updateCounter("Query.compositeIndexUsage." + indexDefinition.getParamCount(), 1);
 					}
+					return true;
+				}
 
-					if (operator instanceof OQueryOperatorMajor) {
-						// if we have situation like "field1 = 1 AND field2 > 2"
-						// then we fetch collection which left not included boundary is the smallest composite key in the
-						// index that contains keys with values field1=1 and field2=2 and which right included boundary
-						// is the biggest composite key in the index that contains key with value field1=1.
-
-						final Object keyOne = indexDefinition.createValue(keyParams);
+				if (operator instanceof OQueryOperatorMajor) {
+					// if we have situation like "field1 = 1 AND field2 > 2"
+					// then we fetch collection which left not included boundary is the smallest composite key in the
+					// index that contains keys with values field1=1 and field2=2 and which right included boundary
+					// is the biggest composite key in the index that contains key with value field1=1.
 
-						if (keyOne == null)
-							continue;
+					final Object keyOne = indexDefinition.createValue(keyParams);
 
-						final Object keyTwo = indexDefinition.createValue(keyParams.subList(0, keyParams.size() - 1));
+					if (keyOne == null)
+						continue;
 
-						if (keyTwo == null)
-							continue;
+					final Object keyTwo = indexDefinition.createValue(keyParams.subList(0, keyParams.size() - 1));
 
-						final Collection<OIdentifiable> result;
-						if (fetchLimit > -1)
-							result = index.getValuesBetween(keyOne, false, keyTwo, true, fetchLimit);
-						else
-							result = index.getValuesBetween(keyOne, false, keyTwo, true);
+					if (keyTwo == null)
+						continue;
 
-						fillSearchIndexResultSet(result);
+					fillSearchIndexResultSet(index, index.cursor(keyOne, false, keyTwo, true, true));
 
-						if (OProfiler.getInstance().isRecording()) {
-							OProfiler.getInstance().updateCounter("Query.compositeIndexUsage", 1);
-							OProfiler.getInstance().updateCounter("Query.compositeIndexUsage." + indexDefinition.getParamCount(), 1);
-						}
-						return true;
+					if (OProfiler.getInstance().isRecording()) {
+						OProfiler.getInstance().updateCounter("Query.compositeIndexUsage", 1);
+						OProfiler.getInstance().updateCounter("Query.compositeIndexUsage." + indexDefinition.getParamCount(), 1);
 					}
+					return true;
+				}
 
-					if (operator instanceof OQueryOperatorMajorEquals) {
-						// if we have situation like "field1 = 1 AND field2 >= 2"
-						// then we fetch collection which left included boundary is the smallest composite key in the
-						// index that contains keys with values field1=1 and field2=2 and which right included boundary
-						// is the biggest composite key in the index that contains key with value field1=1.
-
-						final Object keyOne = indexDefinition.createValue(keyParams);
+				if (operator instanceof OQueryOperatorMajorEquals) {
+					// if we have situation like "field1 = 1 AND field2 >= 2"
+					// then we fetch collection which left included boundary is the smallest composite key in the
+					// index that contains keys with values field1=1 and field2=2 and which right included boundary
+					// is the biggest composite key in the index that contains key with value field1=1.
 
-						if (keyOne == null)
-							continue;
+					final Object keyOne = indexDefinition.createValue(keyParams);
 
-						final Object keyTwo = indexDefinition.createValue(keyParams.subList(0, keyParams.size() - 1));
+					if (keyOne == null)
+						continue;
 
-						if (keyTwo == null)
-							continue;
+					final Object keyTwo = indexDefinition.createValue(keyParams.subList(0, keyParams.size() - 1));
 
-						final Collection<OIdentifiable> result;
-						if (fetchLimit > -1)
-							result = index.getValuesBetween(keyOne, true, keyTwo, true, fetchLimit);
-						else
-							result = index.getValuesBetween(keyOne, true, keyTwo, true);
+					if (keyTwo == null)
+						continue;
 
-						fillSearchIndexResultSet(result);
+					fillSearchIndexResultSet(index, index.cursor(keyOne, true, keyTwo, true, true));
 
-						if (OProfiler.getInstance().isRecording()) {
-							OProfiler.getInstance().updateCounter("Query.compositeIndexUsage", 1);
-							OProfiler.getInstance().updateCounter("Query.compositeIndexUsage." + indexDefinition.getParamCount(), 1);
-						}
-						return true;
+					if (OProfiler.getInstance().isRecording()) {
+						OProfiler.getInstance().updateCounter("Query.compositeIndexUsage", 1);
+						OProfiler.getInstance().updateCounter("Query.compositeIndexUsage." + indexDefinition.getParamCount(), 1);
 					}
+					return true;
+				}
 
-					if (operator instanceof OQueryOperatorMinor) {
-						// if we have situation like "field1 = 1 AND field2 < 2"
-						// then we fetch collection which left included boundary is the smallest composite key in the
-						// index that contains key with value field1=1 and which right not included boundary
-						// is the biggest composite key in the index that contains key with values field1=1 and field2=2.
-
-						final Object keyOne = indexDefinition.createValue(keyParams.subList(0, keyParams.size() - 1));
+				if (operator instanceof OQueryOperatorMinor) {
+					// if we have situation like "field1 = 1 AND field2 < 2"
+					// then we fetch collection which left included boundary is the smallest composite key in the
+					// index that contains key with value field1=1 and which right not included boundary
+					// is the biggest composite key in the index that contains key with values field1=1 and field2=2.
 
-						if (keyOne == null)
-							continue;
+					final Object keyOne = indexDefinition.createValue(keyParams.subList(0, keyParams.size() - 1));
 
-						final Object keyTwo = indexDefinition.createValue(keyParams);
+					if (keyOne == null)
+						continue;
 
-						if (keyTwo == null)
-							continue;
+					final Object keyTwo = indexDefinition.createValue(keyParams);
 
-						final Collection<OIdentifiable> result;
-						if (fetchLimit > -1)
-							result = index.getValuesBetween(keyOne, true, keyTwo, false, fetchLimit);
-						else
-							result = index.getValuesBetween(keyOne, true, keyTwo, false);
+					if (keyTwo == null)
+						continue;
 
-						fillSearchIndexResultSet(result);
+					fillSearchIndexResultSet(index, index.cursor(keyOne, true, keyTwo, false, true));
 
-						if (OProfiler.getInstance().isRecording()) {
-							OProfiler.getInstance().updateCounter("Query.compositeIndexUsage", 1);
-							OProfiler.getInstance().updateCounter("Query.compositeIndexUsage." + indexDefinition.getParamCount(), 1);
-						}
-						return true;
+					if (OProfiler.getInstance().isRecording()) {
+						OProfiler.getInstance().updateCounter("Query.compositeIndexUsage", 1);
+						OProfiler.getInstance().updateCounter("Query.compositeIndexUsage." + indexDefinition.getParamCount(), 1);
 					}
+					return true;
+				}
 
-					if (operator instanceof OQueryOperatorMinorEquals) {
-						// if we have situation like "field1 = 1 AND field2 <= 2"
-						// then we fetch collection which left included boundary is the smallest composite key in the
-						// index that contains key with value field1=1 and which right not included boundary
-						// is the biggest composite key in the index that contains key with value field1=1 and field2=2.
-
-						final Object keyOne = indexDefinition.createValue(keyParams.subList(0, keyParams.size() - 1));
+				if (operator instanceof OQueryOperatorMinorEquals) {
+					// if we have situation like "field1 = 1 AND field2 <= 2"
+					// then we fetch collection which left included boundary is the smallest composite key in the
+					// index that contains key with value field1=1 and which right not included boundary
+					// is the biggest composite key in the index that contains key with value field1=1 and field2=2.
 
-						if (keyOne == null)
-							continue;
+					final Object keyOne = indexDefinition.createValue(keyParams.subList(0, keyParams.size() - 1));
 
-						final Object keyTwo = indexDefinition.createValue(keyParams);
+					if (keyOne == null)
+						continue;
 
-						if (keyTwo == null)
-							continue;
+					final Object keyTwo = indexDefinition.createValue(keyParams);
 
-						final Collection<OIdentifiable> result;
-						if (fetchLimit > -1)
-							result = index.getValuesBetween(keyOne, true, keyTwo, true, fetchLimit);
-						else
-							result = index.getValuesBetween(keyOne, true, keyTwo, true);
+					if (keyTwo == null)
+						continue;
 
-						fillSearchIndexResultSet(result);
+					fillSearchIndexResultSet(index, index.cursor(keyOne, true, keyTwo, true, true));
 
-						if (OProfiler.getInstance().isRecording()) {
-							OProfiler.getInstance().updateCounter("Query.compositeIndexUsage", 1);
-							OProfiler.getInstance().updateCounter("Query.compositeIndexUsage." + indexDefinition.getParamCount(), 1);
-						}
-						return true;
+					if (OProfiler.getInstance().isRecording()) {
+						OProfiler.getInstance().updateCounter("Query.compositeIndexUsage", 1);
+						OProfiler.getInstance().updateCounter("Query.compositeIndexUsage." + indexDefinition.getParamCount(), 1);
 					}
+					return true;
 				}
 			}
 		}
+		coveringIndex = null;
 		return false;
 	}
 
@@ -807,28 +861,45 @@ public class OCommandExecutorSQLSelect extends OCommandExecutorSQLExtractAbstrac
 	}
 
 	@SuppressWarnings("rawtypes")
+	/**
+	 * Browses the index range lazily, so the index is not read anymore once the limit is reached. If the index covers the query the
+	 * records are not loaded: the entries are filtered and projected.
+	 */
+	private void fillSearchIndexResultSet(final OIndex<?> iIndex, final OIndexCursor iCursor) {
+		// INDEXES OF COLLECTIONS CAN RETURN THE SAME RECORD UNDER MORE KEYS
+		final Set<ORID> browsed = iIndex.getDefinition() instanceof OIndexDefinitionMultiValue ? new HashSet<ORID>() : null;
+
+		if (coveringIndex != null)
+			OProfiler.getInstance().updateCounter("Query.coveringIndexUsage", 1);
+
+		while (iCursor.hasNext()) {
+			final Entry<Object, OIdentifiable> entry = iCursor.next();
+
+			if (coveringIndex != null) {
+				final ODocument document = coveringIndex.createDocument(entry.getKey(), entry.getValue());
+				if (document != null && filter(document) && !addResult(document))
+					break;
+				continue;
+			}
+
+			final OIdentifiable identifiable = entry.getValue();
+			if (browsed != null && !browsed.add(identifiable.getIdentity()))
+				continue;
+
+			if (!fillSearchIndexResult(identifiable))
+				break;
+		}
+	}
+
 	private void fillSearchIndexResultSet(final Object indexResult) {
 		if (indexResult != null) {
 			if (indexResult instanceof Collection<?>) {
 				Collection<OIdentifiable> indexResultSet = (Collection<OIdentifiable>) indexResult;
 				if (!indexResultSet.isEmpty()) {
 					// FOUND USING INDEXES
-					for (OIdentifiable identifiable : indexResultSet) {
-						ORecord<?> record = identifiable.getRecord();
-						if (record.getInternalStatus() == ORecordElement.STATUS.NOT_LOADED) {
-							try {
-								record = record.<ORecord> load();
-							} catch (ORecordNotFoundException e) {
-								throw new OException("Error during loading record with id : " + record.getIdentity());
-							}
-						}
-
-						if (filter((ORecordInternal<?>) record)) {
-							final boolean continueResultParsing = addResult(record);
-							if (!continueResultParsing)
-								break;
-						}
-					}
+					for (OIdentifiable identifiable : indexResultSet)
+						if (!fillSearchIndexResult(identifiable))
+							break;
 				}
 			} else {
 				final ORecord<?> record = ((OIdentifiable) indexResult).getRecord();
@@ -838,6 +909,27 @@ public class OCommandExecutorSQLSelect extends OCommandExecutorSQLExtractAbstrac
 		}
 	}
 
+	/**
+	 * Loads and filters the record found using indexes.
+	 *
+	 * @return false if the execution must stop
+	 */
+	private boolean fillSearchIndexResult(final OIdentifiable iIdentifiable) {
+		ORecord<?> record = iIdentifiable.getRecord();
+		if (record.getInternalStatus() == ORecordElement.STATUS.NOT_LOADED) {
+			try {
+				record = record.load();
+			} catch (ORecordNotFoundException e) {
+				throw new OException("Error during loading record with id : " + record.getIdentity());
+			}
+		}
+
+		if (filter((ORecordInternal<?>) record))
+			return addResult(record);
+
+		return true;
+	}
+
 	protected int parseProjections() {
 		int currentPos = 0;
 		final StringBuilder word = new StringBuilder();
@@ -1039,35 +1131,21 @@ public class OCommandExecutorSQLSelect extends OCommandExecutorSQLExtractAbstrac
 			final OQueryOperator indexOperator = compiledFilter.getRootCondition().getOperator();
 			if (indexOperator instanceof OQueryOperatorBetween) {
 				final Object[] values = (Object[]) compiledFilter.getRootCondition().getRight();
-				final Collection<ODocument> entries = index.getEntriesBetween(getIndexKey(index.getDefinition(), values[0]),
-						getIndexKey(index.getDefinition(), values[2]));
-
-				for (final OIdentifiable r : entries) {
-					final boolean continueResultParsing = addResult(r);
-					if (!continueResultParsing)
-						break;
-				}
+				parseIndexSearchResult(index.cursor(getIndexKey(index.getDefinition(), values[0]), true,
+						getIndexKey(index.getDefinition(), values[2]), true, true));
 
 			} else if (indexOperator instanceof OQueryOperatorMajor) {
 				final Object value = compiledFilter.getRootCondition().getRight();
-				final Collection<ODocument> entries = index.getEntriesMajor(getIndexKey(index.getDefinition(), value), false);
-
-				parseIndexSearchResult(entries);
+				parseIndexSearchResult(index.cursor(getIndexKey(index.getDefinition(), value), false, null, false, true));
 			} else if (indexOperator instanceof OQueryOperatorMajorEquals) {
 				final Object value = compiledFilter.getRootCondition().getRight();
-				final Collection<ODocument> entries = index.getEntriesMajor(getIndexKey(index.getDefinition(), value), true);
-
-				parseIndexSearchResult(entries);
+				parseIndexSearchResult(index.cursor(getIndexKey(index.getDefinition(), value), true, null, false, true));
 			} else if (indexOperator instanceof OQueryOperatorMinor) {
 				final Object value = compiledFilter.getRootCondition().getRight();
-				final Collection<ODocument> entries = index.getEntriesMinor(getIndexKey(index.getDefinition(), value), false);
-
-				parseIndexSearchResult(entries);
+				parseIndexSearchResult(index.cursor(null, false, getIndexKey(index.getDefinition(), value), false, true));
 			} else if (indexOperator instanceof OQueryOperatorMinorEquals) {
 				final Object value = compiledFilter.getRootCondition().getRight();
-				final Collection<ODocument> entries = index.getEntriesMinor(getIndexKey(index.getDefinition(), value), true);
-
-				parseIndexSearchResult(entries);
+				parseIndexSearchResult(index.cursor(null, false, getIndexKey(index.getDefinition(), value), true, true));
 			} else if (indexOperator instanceof OQueryOperatorIn) {
 				final List<Object> origValues = (List<Object>) compiledFilter.getRootCondition().getRight();
 				final List<Object> values = new ArrayList<Object>(origValues.size());
@@ -1161,6 +1239,18 @@ public class OCommandExecutorSQLSelect extends OCommandExecutorSQLExtractAbstrac
 		}
 	}
 
+	/**
+	 * Browses the index range lazily, so the index is not read anymore once the limit is reached.
+	 */
+	protected void parseIndexSearchResult(final OIndexCursor iCursor) {
+		while (iCursor.hasNext()) {
+			final Entry<Object, OIdentifiable> entry = iCursor.next();
+			final boolean continueResultParsing = addResult(createIndexEntryAsDocument(entry.getKey(), entry.getValue().getIdentity()));
+			if (!continueResultParsing)
+				break;
+		}
+	}
+
 	private ODocument createIndexEntryAsDocument(final Object iKey, final OIdentifiable iValue) {
 		final ODocument doc = new ODocument().setOrdered(true);
 		doc.field("key", iKey);
@@ -0,0 +1,148 @@
+/*
+ * Copyright 1999-2010 Luca Garulli (l.garulli--at--orientechnologies.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.orientechnologies.orient.core.sql;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.orientechnologies.common.collection.OCompositeKey;
+import com.orientechnologies.orient.core.db.record.ODatabaseRecord;
+import com.orientechnologies.orient.core.db.record.OIdentifiable;
+import com.orientechnologies.orient.core.db.record.ORecordOperation;
+import com.orientechnologies.orient.core.id.ORID;
+import com.orientechnologies.orient.core.index.OCompositeIndexDefinition;
+import com.orientechnologies.orient.core.index.OIndex;
+import com.orientechnologies.orient.core.index.OIndexDefinition;
+import com.orientechnologies.orient.core.index.OIndexNotUnique;
+import com.orientechnologies.orient.core.index.OIndexUnique;
+import com.orientechnologies.orient.core.index.OPropertyIndexDefinition;
+import com.orientechnologies.orient.core.metadata.schema.OClass;
+import com.orientechnologies.orient.core.record.impl.ODocument;
+import com.orientechnologies.orient.core.record.impl.ODocumentHelper;
+import com.orientechnologies.orient.core.sql.filter.OSQLFilterCondition;
+import com.orientechnologies.orient.core.sql.filter.OSQLFilterItem;
+import com.orientechnologies.orient.core.sql.filter.OSQLFilterItemField;
+import com.orientechnologies.orient.core.sql.filter.OSQLFilterItemParameter;
+
+/**
+ * Index that holds all the fields read by a query, in its key fields or in its included fields. The query is answered by the
+ * index entries without loading the records: every entry becomes a document with only the fields of the index, that is filtered
+ * and projected like the record it replaces.
+ *
+ * @author Luca Garulli
+ * @see OCompositeIndexDefinition#addIncludedIndex(OIndexDefinition)
+ */
+class OCoveringIndex {
+	private final String				className;
+	private final List<String>	fields;
+	private final Set<Integer>	clusterIds;
+
+	private OCoveringIndex(final OClass iSchemaClass, final List<String> iFields) {
+		className = iSchemaClass.getName();
+		fields = iFields;
+		clusterIds = new HashSet<Integer>();
+		for (int clusterId : iSchemaClass.getPolymorphicClusterIds())
+			clusterIds.add(clusterId);
+	}
+
+	/**
+	 * Returns the covering index if the index holds all the fields of the projections and of the condition, otherwise null. Only
+	 * the projections of fields are covered: "*", functions and the fields of linked records need the records.
+	 */
+	static OCoveringIndex create(final ODatabaseRecord iDatabase, final OClass iSchemaClass, final OIndex<?> iIndex,
+			final Map<String, Object> iProjections, final OSQLFilterCondition iCondition) {
+		if (iProjections == null || iProjections.isEmpty())
+			return null;
+
+		final OIndex<?> internalIndex = iIndex.getInternal();
+		if (!(internalIndex instanceof OIndexUnique || internalIndex instanceof OIndexNotUnique))
+			return null;
+
+		final OIndexDefinition indexDefinition = iIndex.getDefinition();
+		if (!(indexDefinition instanceof OCompositeIndexDefinition || indexDefinition.getClass() == OPropertyIndexDefinition.class))
+			return null;
+
+		// THE CHANGES OF THE CURRENT TRANSACTION ARE ONLY IN THE RECORDS
+		if (iDatabase.getTransaction().getIndexChanges(iIndex.getName()) != null)
+			return null;
+		final List<ORecordOperation> txEntries = iDatabase.getTransaction().getRecordEntriesByClusterIds(
+				iSchemaClass.getPolymorphicClusterIds());
+		if (txEntries != null && !txEntries.isEmpty())
+			return null;
+
+		final List<String> fields = indexDefinition.getFields();
+		for (Object projection : iProjections.values())
+			if ("*".equals(projection) || !isCovered(projection, fields))
+				return null;
+
+		if (!isCovered(iCondition, fields))
+			return null;
+
+		return new OCoveringIndex(iSchemaClass, fields);
+	}
+
+	/**
+	 * Returns the document with the fields held by the index entry, or null if the record is not of the class queried.
+	 */
+	ODocument createDocument(final Object iKey, final OIdentifiable iValue) {
+		final ORID rid = iValue.getIdentity();
+		if (!clusterIds.contains(rid.getClusterId()))
+			return null;
+
+		final ODocument document = new ODocument(className);
+		if (iKey instanceof OCompositeKey) {
+			final List<?> keys = ((OCompositeKey) iKey).getKeys();
+			for (int i = 0; i < keys.size() && i < fields.size(); ++i)
+				if (keys.get(i) != null)
+					document.field(fields.get(i), keys.get(i));
+		} else
+			document.field(fields.get(0), iKey);
+
+		document.setIdentity(rid.getClusterId(), rid.getClusterPosition());
+		document.unsetDirty();
+		return document;
+	}
+
+	private static boolean isCovered(final Object iItem, final List<String> iFields) {
+		if (iItem instanceof OSQLFilterCondition) {
+			final OSQLFilterCondition condition = (OSQLFilterCondition) iItem;
+			return isCovered(condition.getLeft(), iFields) && isCovered(condition.getRight(), iFields);
+		}
+
+		if (iItem instanceof OSQLFilterItemField) {
+			final OSQLFilterItemField field = (OSQLFilterItemField) iItem;
+			if (field.hasChainOperators())
+				return false;
+
+			final String name = field.getRoot();
+			return iFields.contains(name) || name.equalsIgnoreCase(ODocumentHelper.ATTRIBUTE_RID)
+					|| name.equalsIgnoreCase(ODocumentHelper.ATTRIBUTE_CLASS);
+		}
+
+		if (iItem instanceof Collection<?>) {
+			for (Object item : (Collection<?>) iItem)
+				if (!isCovered(item, iFields))
+					return false;
+			return true;
+		}
+
+		// VALUES AND PARAMETERS DON'T NEED THE RECORD
+		return !(iItem instanceof OSQLFilterItem) || iItem instanceof OSQLFilterItemParameter;
+	}
+}
@@ -0,0 +1,591 @@
+/*
+ * Copyright 1999-2010 Luca Garulli (l.garulli--at--orientechnologies.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.orientechnologies.orient.core.sql;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+import com.orientechnologies.orient.core.config.OGlobalConfiguration;
+import com.orientechnologies.orient.core.db.record.ODatabaseRecord;
+import com.orientechnologies.orient.core.db.record.OIdentifiable;
+import com.orientechnologies.orient.core.db.record.ORecordOperation;
+import com.orientechnologies.orient.core.id.ORID;
+import com.orientechnologies.orient.core.index.OIndex;
+import com.orientechnologies.orient.core.index.OIndexAbstract;
+import com.orientechnologies.orient.core.index.OIndexCursor;
+import com.orientechnologies.orient.core.index.OIndexDefinition;
+import com.orientechnologies.orient.core.index.OIndexNotUnique;
+import com.orientechnologies.orient.core.index.OIndexUnique;
+import com.orientechnologies.orient.core.index.OIndexUniqueHash;
+import com.orientechnologies.orient.core.index.OPropertyIndexDefinition;
+import com.orientechnologies.orient.core.metadata.schema.OClass;
+import com.orientechnologies.orient.core.sql.filter.OSQLFilterCondition;
+import com.orientechnologies.orient.core.sql.filter.OSQLFilterItemField;
+import com.orientechnologies.orient.core.sql.operator.OQueryOperator;
+import com.orientechnologies.orient.core.sql.operator.OQueryOperatorAnd;
+import com.orientechnologies.orient.core.sql.operator.OQueryOperatorBetween;
+import com.orientechnologies.orient.core.sql.operator.OQueryOperatorEquals;
+import com.orientechnologies.orient.core.sql.operator.OQueryOperatorIn;
+import com.orientechnologies.orient.core.sql.operator.OQueryOperatorMajor;
+import com.orientechnologies.orient.core.sql.operator.OQueryOperatorMajorEquals;
+import com.orientechnologies.orient.core.sql.operator.OQueryOperatorMinor;
+import com.orientechnologies.orient.core.sql.operator.OQueryOperatorMinorEquals;
+import com.orientechnologies.orient.core.sql.operator.OQueryOperatorOr;
+import com.orientechnologies.orient.core.type.tree.OMVRBTreeRIDSet;
+
+/**
+ * Evaluates a query condition with more indexes of the class. Every condition on a field with an index is resolved to the RIDs of
+ * its records sorted by RID, then AND and OR become intersections and unions of the sorted RID streams, merged while they are
+ * browsed without collecting them. The conditions with no index make the result larger than needed, so the records found must still
+ * be filtered.<br/>
+ * With the index statistics the conditions of an AND that select many more records than the most selective one are not read, and
+ * the whole search is discarded if it costs more than a scan.
+ *
+ * @author Luca Garulli
+ * @see OBitmapIndexSearch
+ */
+public class OIndexMergeSearch {
+	private final ODatabaseRecord	database;
+	private final OClass					schemaClass;
+	private final int[]						clusterIds;
+	private final boolean					statistics;
+	private final float						loadCost;
+
+	/**
+	 * RIDs of the records that can match a condition, with the records and index entries expected, -1 if unknown. A range reads a
+	 * part of the index, usually bigger than an exact match.
+	 */
+	private abstract static class Plan {
+		protected double	records	= -1;
+		protected double	entries	= -1;
+		protected int			indexes;
+		protected boolean	range;
+
+		protected abstract Iterator<ORID> open();
+	}
+
+	public OIndexMergeSearch(final ODatabaseRecord iDatabase, final OClass iSchemaClass) {
+		database = iDatabase;
+		schemaClass = iSchemaClass;
+		clusterIds = iSchemaClass.getPolymorphicClusterIds();
+		statistics = OGlobalConfiguration.INDEX_STATISTICS.getValueAsBoolean();
+		loadCost = OGlobalConfiguration.INDEX_STATISTICS_LOAD_COST.getValueAsFloat();
+	}
+
+	/**
+	 * Returns the RIDs of the records that can match the condition sorted by RID, or null if the indexes cannot do better than a
+	 * single index or a scan: at least two indexes must be merged.
+	 */
+	public Iterator<ORID> search(final OSQLFilterCondition iCondition) {
+		// THE CHANGES OF THE CURRENT TRANSACTION ARE NOT IN THE INDEXES YET
+		final List<ORecordOperation> txEntries = database.getTransaction().getRecordEntriesByClusterIds(clusterIds);
+		if (txEntries != null && !txEntries.isEmpty())
+			return null;
+
+		final Plan plan = evaluate(iCondition);
+		if (plan == null || plan.indexes < 2)
+			return null;
+
+		if (statistics && plan.records >= 0 && plan.entries >= 0
+				&& plan.entries + plan.records * loadCost > database.countClusterElements(clusterIds))
+			return null;
+
+		return plan.open();
+	}
+
+	private Plan evaluate(final OSQLFilterCondition iCondition) {
+		if (iCondition == null)
+			return null;
+
+		final OQueryOperator operator = iCondition.getOperator();
+		if (operator == null) {
+			if (iCondition.getRight() == null && iCondition.getLeft() instanceof OSQLFilterCondition)
+				return evaluate((OSQLFilterCondition) iCondition.getLeft());
+			return null;
+		}
+
+		if (operator instanceof OQueryOperatorAnd) {
+			final List<Plan> plans = new ArrayList<Plan>();
+			for (OSQLFilterCondition operand : collectOperands(iCondition, OQueryOperatorAnd.class)) {
+				final Plan plan = evaluate(operand);
+				if (plan != null)
+					plans.add(plan);
+			}
+			return intersect(plans);
+
+		} else if (operator instanceof OQueryOperatorOr) {
+			final List<Plan> plans = new ArrayList<Plan>();
+			for (OSQLFilterCondition operand : collectOperands(iCondition, OQueryOperatorOr.class)) {
+				final Plan plan = evaluate(operand);
+				if (plan == null)
+					// A BRANCH WITHOUT INDEXES CAN MATCH ANY RECORD
+					return null;
+				plans.add(plan);
+			}
+			return union(plans);
+		}
+
+		return evaluateIndexed(iCondition);
+	}
+
+	/**
+	 * Returns the operands of a chain of conditions with the same operator, like "a AND b AND c".
+	 */
+	private static List<OSQLFilterCondition> collectOperands(final OSQLFilterCondition iCondition,
+			final Class<? extends OQueryOperator> iOperator) {
+		final List<OSQLFilterCondition> operands = new ArrayList<OSQLFilterCondition>();
+		collectOperands(iCondition, iOperator, operands);
+		return operands;
+	}
+
+	private static void collectOperands(final Object iItem, final Class<? extends OQueryOperator> iOperator,
+			final List<OSQLFilterCondition> iOperands) {
+		if (!(iItem instanceof OSQLFilterCondition)) {
+			// NOT A CONDITION: IT'S UNKNOWN
+			iOperands.add(null);
+			return;
+		}
+
+		final OSQLFilterCondition condition = (OSQLFilterCondition) iItem;
+		if (iOperator.isInstance(condition.getOperator())) {
+			collectOperands(condition.getLeft(), iOperator, iOperands);
+			collectOperands(condition.getRight(), iOperator, iOperands);
+		} else
+			iOperands.add(condition);
+	}
+
+	private Plan intersect(final List<Plan> iPlans) {
+		if (iPlans.isEmpty())
+			return null;
+
+		// THE MOST SELECTIVE FIRST, THE UNKNOWN AT THE END
+		Collections.sort(iPlans, new Comparator<Plan>() {
+			public int compare(final Plan iPlanOne, final Plan iPlanTwo) {
+				if (iPlanOne.records < 0 || iPlanTwo.records < 0)
+					return iPlanOne.records < 0 ? (iPlanTwo.records < 0 ? 0 : 1) : -1;
+				return Double.compare(iPlanOne.records, iPlanTwo.records);
+			}
+		});
+
+		Plan first = iPlans.get(0);
+		if (first.records < 0)
+			// NOTHING IS ESTIMATED: THE EXACT MATCHES ARE PREFERRED TO THE RANGES
+			for (Plan plan : iPlans)
+				if (!plan.range) {
+					first = plan;
+					break;
+				}
+
+		final List<Plan> plans = new ArrayList<Plan>();
+		plans.add(first);
+		for (Plan plan : iPlans)
+			if (plan != first)
+				if (first.records >= 0) {
+					// READING THE ENTRIES OF A CONDITION MUST COST LESS THAN LOADING THE RECORDS IT CAN DISCARD
+					if (plan.records >= 0 && plan.records <= first.records * loadCost)
+						plans.add(plan);
+				} else if (first.range || !plan.range)
+					plans.add(plan);
+
+		if (plans.size() == 1)
+			return first;
+
+		final Plan result = new Plan() {
+			@Override
+			protected Iterator<ORID> open() {
+				final List<Iterator<ORID>> iterators = new ArrayList<Iterator<ORID>>(plans.size());
+				for (Plan plan : plans)
+					iterators.add(plan.open());
+				return new IntersectionIterator(iterators);
+			}
+		};
+		result.records = first.records;
+		result.entries = 0;
+		result.range = first.range;
+		for (Plan plan : plans) {
+			result.indexes += plan.indexes;
+			result.entries = plan.entries >= 0 && result.entries >= 0 ? result.entries + plan.entries : -1;
+		}
+		return result;
+	}
+
+	private Plan union(final List<Plan> iPlans) {
+		if (iPlans.size() == 1)
+			return iPlans.get(0);
+
+		final Plan result = new Plan() {
+			@Override
+			protected Iterator<ORID> open() {
+				final List<Iterator<ORID>> iterators = new ArrayList<Iterator<ORID>>(iPlans.size());
+				for (Plan plan : iPlans)
+					iterators.add(plan.open());
+				return new UnionIterator(iterators);
+			}
+		};
+		result.records = 0;
+		result.entries = 0;
+		for (Plan plan : iPlans) {
+			result.indexes += plan.indexes;
+			result.range |= plan.range;
+			result.records = plan.records >= 0 && result.records >= 0 ? result.records + plan.records : -1;
+			result.entries = plan.entries >= 0 && result.entries >= 0 ? result.entries + plan.entries : -1;
+		}
+		return result;
+	}
+
+	/**
+	 * Resolves a condition "field op value" if the field is indexed alone. The operators supported are "=" and "IN" by all the
+	 * indexes, "<", "<=", ">", ">=" and "BETWEEN" by the indexes ordered by key.
+	 */
+	private Plan evaluateIndexed(final OSQLFilterCondition iCondition) {
+		final OQueryOperator operator = iCondition.getOperator();
+		final boolean exactMatch = operator instanceof OQueryOperatorEquals || operator instanceof OQueryOperatorIn;
+		if (!exactMatch
+				&& !(operator instanceof OQueryOperatorBetween || operator instanceof OQueryOperatorMajor
+						|| operator instanceof OQueryOperatorMajorEquals || operator instanceof OQueryOperatorMinor || operator instanceof OQueryOperatorMinorEquals))
+			return null;
+
+		final Object field;
+		final Object value;
+		if (iCondition.getLeft() instanceof OSQLFilterItemField && !(iCondition.getRight() instanceof OSQLFilterItemField)) {
+			field = iCondition.getLeft();
+			value = iCondition.getRight();
+		} else if (operator instanceof OQueryOperatorEquals && iCondition.getRight() instanceof OSQLFilterItemField
+				&& !(iCondition.getLeft() instanceof OSQLFilterItemField)) {
+			field = iCondition.getRight();
+			value = iCondition.getLeft();
+		} else
+			return null;
+
+		final OSQLFilterItemField item = (OSQLFilterItemField) field;
+		if (item.hasChainOperators())
+			return null;
+
+		final OIndex<?> index = getIndex(item.getRoot(), !exactMatch);
+		if (index == null)
+			return null;
+
+		final OIndexDefinition indexDefinition = index.getDefinition();
+		final Plan plan;
+		if (operator instanceof OQueryOperatorIn) {
+			if (!(value instanceof Collection<?>))
+				return null;
+			final List<Object> keys = new ArrayList<Object>();
+			for (Object v : (Collection<?>) value) {
+				final Object key = createKey(indexDefinition, v);
+				if (key == null)
+					return null;
+				keys.add(key);
+			}
+			plan = new Plan() {
+				@Override
+				protected Iterator<ORID> open() {
+					final List<ORID> rids = new ArrayList<ORID>();
+					for (Object key : keys)
+						collect(index.get(key), rids);
+					return sort(rids);
+				}
+			};
+
+		} else if (operator instanceof OQueryOperatorEquals) {
+			final Object key = createKey(indexDefinition, value);
+			if (key == null)
+				return null;
+			plan = new Plan() {
+				@Override
+				protected Iterator<ORID> open() {
+					final Object result = index.get(key);
+					if (result instanceof OMVRBTreeRIDSet)
+						// ALREADY SORTED BY RID: BROWSE IT WITHOUT LOADING THE RECORDS
+						return new RIDIterator(((OMVRBTreeRIDSet) result).iterator(false));
+
+					final List<ORID> rids = new ArrayList<ORID>();
+					collect(result, rids);
+					return sort(rids);
+				}
+			};
+
+		} else {
+			final Object from;
+			final boolean fromInclusive;
+			final Object to;
+			final boolean toInclusive;
+			if (operator instanceof OQueryOperatorBetween) {
+				if (!(value instanceof Object[]) || ((Object[]) value).length < 3)
+					return null;
+				from = createKey(indexDefinition, ((Object[]) value)[0]);
+				fromInclusive = true;
+				to = createKey(indexDefinition, ((Object[]) value)[2]);
+				toInclusive = true;
+				if (from == null || to == null)
+					return null;
+			} else {
+				final Object key = createKey(indexDefinition, value);
+				if (key == null)
+					return null;
+				final boolean major = operator instanceof OQueryOperatorMajor || operator instanceof OQueryOperatorMajorEquals;
+				final boolean inclusive = operator instanceof OQueryOperatorMajorEquals || operator instanceof OQueryOperatorMinorEquals;
+				from = major ? key : null;
+				fromInclusive = major && inclusive;
+				to = major ? null : key;
+				toInclusive = !major && inclusive;
+			}
+			plan = new Plan() {
+				@Override
+				protected Iterator<ORID> open() {
+					final List<ORID> rids = new ArrayList<ORID>();
+					for (OIndexCursor cursor = index.cursor(from, fromInclusive, to, toInclusive, true); cursor.hasNext();)
+						rids.add(cursor.next().getValue().getIdentity());
+					return sort(rids);
+				}
+			};
+		}
+
+		plan.indexes = 1;
+		plan.range = !exactMatch;
+		estimate(plan, iCondition, item, index);
+		return plan;
+	}
+
+	/**
+	 * Estimates the records of the condition with the statistics of the index. Without statistics only the records of "=" on a
+	 * unique index are known.
+	 */
+	private void estimate(final Plan iPlan, final OSQLFilterCondition iCondition, final OSQLFilterItemField iField,
+			final OIndex<?> iIndex) {
+		final OQueryOperator operator = iCondition.getOperator();
+		if (statistics) {
+			final Object value = iCondition.getLeft() == iField ? iCondition.getRight() : iCondition.getLeft();
+			final OIndexSearchCandidate candidate = new OIndexSearchCandidate(new OIndexSearchResult(operator, iField.getFieldChain(),
+					operator instanceof OQueryOperatorBetween || operator instanceof OQueryOperatorIn ? value : OSQLHelper.getValue(value)),
+					iIndex, 0);
+			candidate.estimate(database, 1);
+			if (candidate.isEstimated()) {
+				iPlan.records = candidate.records;
+				iPlan.entries = candidate.records;
+				return;
+			}
+		}
+
+		if (operator instanceof OQueryOperatorEquals && !(iIndex.getInternal() instanceof OIndexNotUnique)) {
+			iPlan.records = 1;
+			iPlan.entries = 1;
+		}
+	}
+
+	/**
+	 * Returns the index on the field alone, only if it covers all the clusters of the class and it has no changes pending in the
+	 * current transaction.
+	 *
+	 * @param iOrdered
+	 *          If true only the indexes ordered by key are returned
+	 */
+	private OIndex<?> getIndex(final String iField, final boolean iOrdered) {
+		for (OIndex<?> index : schemaClass.getInvolvedIndexes(iField)) {
+			final OIndex<?> internal = index.getInternal();
+			if (index.getDefinition().getClass() != OPropertyIndexDefinition.class)
+				continue;
+
+			if (!(internal instanceof OIndexUnique || internal instanceof OIndexNotUnique || internal instanceof OIndexUniqueHash
+					&& !iOrdered))
+				continue;
+
+			final Set<String> clusters = ((OIndexAbstract<?>) internal).getClusters();
+
+			if (database.getTransaction().getIndexChanges(internal.getName()) != null)
+				continue;
+
+			boolean coversClass = true;
+			for (int clusterId : clusterIds)
+				if (!clusters.contains(database.getClusterNameById(clusterId))) {
+					coversClass = false;
+					break;
+				}
+
+			if (coversClass)
+				return index;
+		}
+		return null;
+	}
+
+	private static Object createKey(final OIndexDefinition iIndexDefinition, final Object iValue) {
+		final Object value = OSQLHelper.getValue(iValue);
+		if (value == null)
+			return null;
+		return iIndexDefinition.createValue(Collections.singletonList(value));
+	}
+
+	private static void collect(final Object iIndexResult, final List<ORID> iRIDs) {
+		if (iIndexResult instanceof OMVRBTreeRIDSet) {
+			for (Iterator<OIdentifiable> it = ((OMVRBTreeRIDSet) iIndexResult).iterator(false); it.hasNext();)
+				iRIDs.add(it.next().getIdentity());
+		} else if (iIndexResult instanceof Collection<?>) {
+			for (Object item : (Collection<?>) iIndexResult)
+				iRIDs.add(((OIdentifiable) item).getIdentity());
+		} else if (iIndexResult instanceof OIdentifiable)
+			iRIDs.add(((OIdentifiable) iIndexResult).getIdentity());
+	}
+
+	private static Iterator<ORID> sort(final List<ORID> iRIDs) {
+		Collections.sort(iRIDs);
+		return iRIDs.iterator();
+	}
+
+	/**
+	 * Sorted RID stream that keeps the next RID to compare it with the other streams.
+	 */
+	private static class PeekingIterator {
+		private final Iterator<ORID>	iterator;
+		private ORID									head;
+
+		private PeekingIterator(final Iterator<ORID> iIterator) {
+			iterator = iIterator;
+			advance();
+		}
+
+		private void advance() {
+			head = iterator.hasNext() ? iterator.next() : null;
+		}
+	}
+
+	private static class RIDIterator implements Iterator<ORID> {
+		private final Iterator<OIdentifiable>	iterator;
+
+		private RIDIterator(final Iterator<OIdentifiable> iIterator) {
+			iterator = iIterator;
+		}
+
+		public boolean hasNext() {
+			return iterator.hasNext();
+		}
+
+		public ORID next() {
+			return iterator.next().getIdentity();
+		}
+
+		public void remove() {
+			throw new UnsupportedOperationException("remove");
+		}
+	}
+
+	private abstract static class MergeIterator implements Iterator<ORID> {
+		private ORID	next;
+		private ORID	last;
+
+		protected abstract ORID fetch();
+
+		public boolean hasNext() {
+			if (next == null)
+				do
+					next = fetch();
+				while (next != null && last != null && next.compareTo(last) == 0);
+			return next != null;
+		}
+
+		public ORID next() {
+			if (!hasNext())
+				throw new NoSuchElementException();
+			last = next;
+			next = null;
+			return last;
+		}
+
+		public void remove() {
+			throw new UnsupportedOperationException("remove");
+		}
+	}
+
+	/**
+	 * Returns the RIDs present in all the streams, advancing every stream up to the highest RID found.
+	 */
+	private static class IntersectionIterator extends MergeIterator {
+		private final List<PeekingIterator>	streams	= new ArrayList<PeekingIterator>();
+
+		private IntersectionIterator(final List<Iterator<ORID>> iIterators) {
+			for (Iterator<ORID> iterator : iIterators)
+				streams.add(new PeekingIterator(iterator));
+		}
+
+		@Override
+		protected ORID fetch() {
+			while (true) {
+				ORID highest = null;
+				for (PeekingIterator stream : streams) {
+					if (stream.head == null)
+						return null;
+					if (highest == null || stream.head.compareTo(highest) > 0)
+						highest = stream.head;
+				}
+
+				boolean found = true;
+				for (PeekingIterator stream : streams) {
+					while (stream.head != null && stream.head.compareTo(highest) < 0)
+						stream.advance();
+					if (stream.head == null)
+						return null;
+					if (stream.head.compareTo(highest) > 0)
+						found = false;
+				}
+
+				if (found) {
+					for (PeekingIterator stream : streams)
+						stream.advance();
+					return highest;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the RIDs of all the streams, taking every time the lowest one.
+	 */
+	private static class UnionIterator extends MergeIterator {
+		private final PriorityQueue<PeekingIterator>	streams;
+
+		private UnionIterator(final List<Iterator<ORID>> iIterators) {
+			streams = new PriorityQueue<PeekingIterator>(iIterators.size(), new Comparator<PeekingIterator>() {
+				public int compare(final PeekingIterator iStreamOne, final PeekingIterator iStreamTwo) {
+					return iStreamOne.head.compareTo(iStreamTwo.head);
+				}
+			});
+			for (Iterator<ORID> iterator : iIterators) {
+				final PeekingIterator stream = new PeekingIterator(iterator);
+				if (stream.head != null)
+					streams.add(stream);
+			}
+		}
+
+		@Override
+		protected ORID fetch() {
+			final PeekingIterator stream = streams.poll();
+			if (stream == null)
+				return null;
+
+			final ORID lowest = stream.head;
+			stream.advance();
+			if (stream.head != null)
+				streams.add(stream);
+			return lowest;
+		}
+	}
+}
@@ -17,11 +17,14 @@ import com.orientechnologies.orient.core.db.record.ODatabaseRecord;
 import com.orientechnologies.orient.core.db.record.OIdentifiable;
 import com.orientechnologies.orient.core.id.ORID;
 import com.orientechnologies.orient.core.index.OIndex;
+import com.orientechnologies.orient.core.index.OIndexCursor;
+import com.orientechnologies.orient.core.index.OIndexCursorCollection;
 import com.orientechnologies.orient.core.index.OIndexDefinition;
 import com.orientechnologies.orient.core.index.OIndexInternal;
 import com.orientechnologies.orient.core.index.OIndexNotUnique;
 import com.orientechnologies.orient.core.index.OIndexOneValue;
 import com.orientechnologies.orient.core.index.OIndexUnique;
+import com.orientechnologies.orient.core.index.OIndexUniqueHash;
 import com.orientechnologies.orient.core.metadata.schema.OClass;
 import com.orientechnologies.orient.core.metadata.schema.OType;
 import com.orientechnologies.orient.core.record.impl.ODocument;
@@ -87,7 +90,7 @@ public class OIndexProxy<T> implements OIndex<T> {
 		final Object result = lastIndex.get(iKey);
 
 		final Collection<T> resultSet = applyTailIndexes(result, -1);
-		if (getInternal() instanceof OIndexOneValue && resultSet.size() == 1) {
+		if ((getInternal() instanceof OIndexOneValue || getInternal() instanceof OIndexUniqueHash) && resultSet.size() == 1) {
 			return resultSet.iterator().next();
 		} else {
 			return (T) resultSet;
@@ -176,6 +179,21 @@ public class OIndexProxy<T> implements OIndex<T> {
 		return (Collection<OIdentifiable>) applyTailIndexes(result, maxValuesToFetch);
 	}
 
+	/**
+	 * Browses the range of the last index of the chain, then resolves the records through the other indexes all together. The
+	 * returned pairs have no key and are not ordered.
+	 */
+	public OIndexCursor cursor(Object iRangeFrom, boolean iFromInclusive, Object iRangeTo, boolean iToInclusive, boolean iAscending) {
+		final List<OIdentifiable> result = new ArrayList<OIdentifiable>();
+		for (final OIndexCursor cursor = lastIndex.cursor(iRangeFrom, iFromInclusive, iRangeTo, iToInclusive, iAscending); cursor
+				.hasNext();)
+			result.add(cursor.next().getValue());
+
+		@SuppressWarnings("unchecked")
+		final Collection<OIdentifiable> values = (Collection<OIdentifiable>) applyTailIndexes(result, -1);
+		return OIndexCursorCollection.fromValues(values);
+	}
+
 	/**
 	 * Returns internal index of last chain index, because proxy applicable to all operations that last index applicable.
 	 */
@@ -0,0 +1,170 @@
+/*
+ * Copyright 1999-2010 Luca Garulli (l.garulli--at--orientechnologies.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.orientechnologies.orient.core.sql;
+
+import java.util.Collection;
+import java.util.Collections;
+
+import com.orientechnologies.orient.core.db.record.ODatabaseRecord;
+import com.orientechnologies.orient.core.index.OIndex;
+import com.orientechnologies.orient.core.index.OIndexDefinition;
+import com.orientechnologies.orient.core.index.OIndexDefinitionMultiValue;
+import com.orientechnologies.orient.core.index.OIndexStatistics;
+import com.orientechnologies.orient.core.sql.operator.OQueryOperator;
+import com.orientechnologies.orient.core.sql.operator.OQueryOperatorBetween;
+import com.orientechnologies.orient.core.sql.operator.OQueryOperatorIn;
+import com.orientechnologies.orient.core.sql.operator.OQueryOperatorMajor;
+import com.orientechnologies.orient.core.sql.operator.OQueryOperatorMajorEquals;
+import com.orientechnologies.orient.core.sql.operator.OQueryOperatorMinor;
+import com.orientechnologies.orient.core.sql.operator.OQueryOperatorMinorEquals;
+
+/**
+ * Pair of query subset and index that can resolve it, with the cost of resolving it estimated by the statistics of the index. The
+ * cost is expressed in records read by a scan of the clusters: loading a record found by the index costs "index.statistics.loadCost"
+ * records, since it's a random access.
+ *
+ * @author Luca Garulli
+ * @see OIndexStatistics
+ */
+class OIndexSearchCandidate implements Comparable<OIndexSearchCandidate> {
+	/**
+	 * Part of the records selected by a range when the histogram cannot tell.
+	 */
+	private static final double	DEFAULT_RANGE_SELECTIVITY	= 1d / 3;
+
+	final OIndexSearchResult		searchResult;
+	@SuppressWarnings("rawtypes")
+	final OIndex								index;
+	private final int						order;
+	double											records										= -1;
+	double											cost											= -1;
+	OCoveringIndex							covering;
+
+	OIndexSearchCandidate(final OIndexSearchResult iSearchResult, final OIndex<?> iIndex, final int iOrder) {
+		searchResult = iSearchResult;
+		index = iIndex;
+		order = iOrder;
+	}
+
+	boolean isEstimated() {
+		return cost >= 0;
+	}
+
+	/**
+	 * Candidates with a cost come first, the cheapest first. The others keep their order.
+	 */
+	public int compareTo(final OIndexSearchCandidate iOther) {
+		if (isEstimated() && iOther.isEstimated() && cost != iOther.cost)
+			return cost < iOther.cost ? -1 : 1;
+		if (isEstimated() != iOther.isEstimated())
+			return isEstimated() ? -1 : 1;
+		return order - iOther.order;
+	}
+
+	/**
+	 * Estimates the records selected by the query subset and the cost to load them. Leaves the cost unknown if the index is not
+	 * analyzable, like the indexes on chains of fields, or the operator has no estimate.
+	 */
+	void estimate(final ODatabaseRecord iDatabase, final float iLoadCost) {
+		if (index instanceof OIndexProxy)
+			return;
+
+		final OIndexStatistics statistics = iDatabase.getMetadata().getIndexManager().getIndexStatistics(index.getName());
+		if (statistics == null)
+			return;
+
+		final OIndexDefinition indexDefinition = index.getDefinition();
+		final int paramCount = indexDefinition.getParamCount();
+		final int equalFields = searchResult.fieldValuePairs.size();
+		final OQueryOperator operator = searchResult.lastOperator;
+
+		int lookups = 1;
+		if (operator instanceof OQueryOperatorIn) {
+			if (paramCount != 1 || !(searchResult.lastValue instanceof Collection<?>))
+				return;
+			records = 0;
+			lookups = 0;
+			for (Object value : (Collection<?>) searchResult.lastValue) {
+				records += statistics.estimateEquals(createKey(indexDefinition, OSQLHelper.getValue(value)));
+				lookups++;
+			}
+
+		} else if (operator instanceof OQueryOperatorBetween || operator instanceof OQueryOperatorMajor
+				|| operator instanceof OQueryOperatorMajorEquals || operator instanceof OQueryOperatorMinor
+				|| operator instanceof OQueryOperatorMinorEquals) {
+			if (paramCount == 1)
+				records = estimateRange(statistics, indexDefinition, operator);
+			if (records < 0)
+				records = estimatePrefix(statistics, equalFields, paramCount) * DEFAULT_RANGE_SELECTIVITY;
+
+		} else if (paramCount == 1)
+			records = statistics.estimateEquals(createKey(indexDefinition, searchResult.lastValue));
+		else
+			// EQUALS AND CONTAINS ON A COMPOSITE KEY: THE LAST FIELD IS LOOKED UP TOO
+			records = estimatePrefix(statistics, equalFields + 1, paramCount);
+
+		cost = records * iLoadCost + lookups;
+	}
+
+	/**
+	 * Estimates the records matching the first fields of a key with the keys supposed uniformly distributed: every field known
+	 * divides the records by the same factor.
+	 */
+	private static double estimatePrefix(final OIndexStatistics iStatistics, final int iFields, final int iParamCount) {
+		if (iFields <= 0)
+			return iStatistics.getEntries();
+		if (iFields >= iParamCount)
+			return iStatistics.estimateEquals();
+		return iStatistics.getEntries() / Math.pow(Math.max(iStatistics.getKeys(), 1), (double) iFields / iParamCount);
+	}
+
+	private double estimateRange(final OIndexStatistics iStatistics, final OIndexDefinition iIndexDefinition,
+			final OQueryOperator iOperator) {
+		if (iOperator instanceof OQueryOperatorBetween) {
+			final Object[] betweenKeys = (Object[]) searchResult.lastValue;
+			final Object keyOne = createKey(iIndexDefinition, OSQLHelper.getValue(betweenKeys[0]));
+			final Object keyTwo = createKey(iIndexDefinition, OSQLHelper.getValue(betweenKeys[2]));
+			if (keyOne == null || keyTwo == null)
+				return -1;
+			return iStatistics.estimateRange(keyOne, true, keyTwo, true);
+		}
+
+		final Object key = createKey(iIndexDefinition, searchResult.lastValue);
+		if (key == null)
+			return -1;
+
+		if (iOperator instanceof OQueryOperatorMajor)
+			return iStatistics.estimateRange(key, false, null, false);
+		if (iOperator instanceof OQueryOperatorMajorEquals)
+			return iStatistics.estimateRange(key, true, null, false);
+		if (iOperator instanceof OQueryOperatorMinor)
+			return iStatistics.estimateRange(null, false, key, false);
+		return iStatistics.estimateRange(null, false, key, true);
+	}
+
+	private static Object createKey(final OIndexDefinition iIndexDefinition, final Object iValue) {
+		if (iValue == null)
+			return null;
+		if (iIndexDefinition instanceof OIndexDefinitionMultiValue)
+			return ((OIndexDefinitionMultiValue) iIndexDefinition).createSingleValue(iValue);
+		return iIndexDefinition.createValue(Collections.singletonList(iValue));
+	}
+
+	@Override
+	public String toString() {
+		return index.getName() + " " + searchResult.fields() + " records=" + records + " cost=" + cost;
+	}
+}
@@ -43,6 +43,27 @@ public abstract class OStorageEmbedded extends OStorageAbstract {
 
 	public abstract OCluster getClusterByName(final String iClusterName);
 
+	/**
+	 * Reads a batch of consecutive records of a cluster. Used by the iterators to browse clusters with read-ahead. This
+	 * implementation reads them one by one: storages that can do better override it.
+	 * 
+	 * @param iClusterId
+	 *          Cluster id
+	 * @param iFrom
+	 *          Position of the first record to read
+	 * @param iCount
+	 *          Number of positions to read. Must not go beyond the last position of the cluster
+	 * @return The array of iCount record buffers where the item i is the record at position iFrom + i, or null if it was deleted
+	 */
+	public ORawBuffer[] readRecords(final int iClusterId, final long iFrom, final int iCount) {
+		final OCluster cluster = getClusterById(iClusterId);
+		final ORawBuffer[] buffers = new ORawBuffer[iCount];
+		final long count = Math.min(iCount, cluster.getLastEntryPosition() - iFrom + 1);
+		for (int i = 0; i < count; ++i)
+			buffers[i] = readRecord(cluster, new ORecordId(iClusterId, iFrom + i), true);
+		return buffers;
+	}
+
 	/**
 	 * Executes the command request and return the result back.
 	 */
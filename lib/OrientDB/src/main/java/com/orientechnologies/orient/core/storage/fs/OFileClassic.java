@@ -20,10 +20,14 @@ import java.nio.ByteBuffer;
 
 import com.orientechnologies.common.io.OIOException;
 import com.orientechnologies.common.log.OLogManager;
+import com.orientechnologies.orient.core.config.OGlobalConfiguration;
 import com.orientechnologies.orient.core.serialization.OBinaryProtocol;
 
 /**
  * Need to be synchronized by the external. Multiple Reader, Single Writer.<br/>
+ * If "file.classic.pageCache.size" is greater than zero, the content is accessed through the {@link OFilePagePool} shared by all
+ * the classic files instead of a system call for each field, unless the file is opened for synchronous writes or
+ * {@link #disablePageCache()} is called.<br/>
  * Header structure:<br/>
  * <br/>
  * +-----------+--------------+---------------+---------------+<br/>
@@ -36,16 +40,36 @@ import com.orientechnologies.orient.core.serialization.OBinaryProtocol;
 public class OFileClassic extends OAbstractFile {
 	public final static String	NAME								= "classic";
 	protected ByteBuffer				internalWriteBuffer	= ByteBuffer.allocate(OBinaryProtocol.SIZE_LONG);
+	protected OFilePagePool			pagePool;
 
 	public OFileClassic init(String iFileName, String iMode) {
 		super.init(iFileName, iMode);
+		// THE FILES OPENED FOR SYNCHRONOUS WRITES ("rws", "rwd") ARE NEVER CACHED
+		if (OGlobalConfiguration.FILE_CLASSIC_PAGE_CACHE_SIZE.getValueAsLong() > 0 && iMode.indexOf('s') == -1
+				&& iMode.indexOf('d') == -1)
+			pagePool = OFilePagePool.instance();
 		return this;
 	}
 
+	/**
+	 * Excludes the file from the page cache, so every write goes straight to the file channel. Used by the files that must be
+	 * write-through, like the transaction log.
+	 */
+	public void disablePageCache() throws IOException {
+		if (pagePool != null) {
+			if (channel != null)
+				pagePool.removeFile(this);
+			pagePool = null;
+		}
+	}
+
 	@Override
 	public void close() throws IOException {
-		if (channel != null)
+		if (channel != null) {
+			if (pagePool != null)
+				pagePool.removeFile(this);
 			setSoftlyClosed(true);
+		}
 
 		if (internalWriteBuffer != null)
 			internalWriteBuffer = null;
@@ -57,6 +81,11 @@ public class OFileClassic extends OAbstractFile {
 	public void read(long iOffset, byte[] iDestBuffer, int iLenght) throws IOException {
 		iOffset = checkRegions(iOffset, iLenght);
 
+		if (pagePool != null) {
+			pagePool.read(this, iOffset, iDestBuffer, 0, iLenght);
+			return;
+		}
+
 		ByteBuffer buffer = ByteBuffer.wrap(iDestBuffer);
 		channel.read(buffer, iOffset);
 	}
@@ -64,24 +93,32 @@ public class OFileClassic extends OAbstractFile {
 	@Override
 	public int readInt(long iOffset) throws IOException {
 		iOffset = checkRegions(iOffset, OBinaryProtocol.SIZE_INT);
+		if (pagePool != null)
+			return pagePool.readInt(this, iOffset);
 		return readData(iOffset, OBinaryProtocol.SIZE_INT).getInt();
 	}
 
 	@Override
 	public long readLong(long iOffset) throws IOException {
 		iOffset = checkRegions(iOffset, OBinaryProtocol.SIZE_LONG);
+		if (pagePool != null)
+			return pagePool.readLong(this, iOffset);
 		return readData(iOffset, OBinaryProtocol.SIZE_LONG).getLong();
 	}
 
 	@Override
 	public short readShort(long iOffset) throws IOException {
 		iOffset = checkRegions(iOffset, OBinaryProtocol.SIZE_SHORT);
+		if (pagePool != null)
+			return pagePool.readShort(this, iOffset);
 		return readData(iOffset, OBinaryProtocol.SIZE_SHORT).getShort();
 	}
 
 	@Override
 	public byte readByte(long iOffset) throws IOException {
 		iOffset = checkRegions(iOffset, OBinaryProtocol.SIZE_BYTE);
+		if (pagePool != null)
+			return pagePool.readByte(this, iOffset);
 		return readData(iOffset, OBinaryProtocol.SIZE_BYTE).get();
 	}
 
@@ -89,6 +126,10 @@ public class OFileClassic extends OAbstractFile {
 	public void writeInt(long iOffset, final int iValue) throws IOException {
 		setDirty();
 		iOffset = checkRegions(iOffset, OBinaryProtocol.SIZE_INT);
+		if (pagePool != null) {
+			pagePool.writeInt(this, iOffset, iValue);
+			return;
+		}
 		final ByteBuffer buffer = getWriteBuffer(OBinaryProtocol.SIZE_INT);
 		buffer.putInt(iValue);
 		writeBuffer(buffer, iOffset);
@@ -98,6 +139,11 @@ public class OFileClassic extends OAbstractFile {
 	@Override
 	public void writeLong(long iOffset, final long iValue) throws IOException {
 		iOffset = checkRegions(iOffset, OBinaryProtocol.SIZE_LONG);
+		if (pagePool != null) {
+			setDirty();
+			pagePool.writeLong(this, iOffset, iValue);
+			return;
+		}
 		final ByteBuffer buffer = getWriteBuffer(OBinaryProtocol.SIZE_LONG);
 		buffer.putLong(iValue);
 		writeBuffer(buffer, iOffset);
@@ -107,6 +153,11 @@ public class OFileClassic extends OAbstractFile {
 	@Override
 	public void writeShort(long iOffset, final short iValue) throws IOException {
 		iOffset = checkRegions(iOffset, OBinaryProtocol.SIZE_INT);
+		if (pagePool != null) {
+			setDirty();
+			pagePool.writeShort(this, iOffset, iValue);
+			return;
+		}
 		final ByteBuffer buffer = getWriteBuffer(OBinaryProtocol.SIZE_SHORT);
 		buffer.putShort(iValue);
 		writeBuffer(buffer, iOffset);
@@ -116,6 +167,11 @@ public class OFileClassic extends OAbstractFile {
 	@Override
 	public void writeByte(long iOffset, final byte iValue) throws IOException {
 		iOffset = checkRegions(iOffset, OBinaryProtocol.SIZE_BYTE);
+		if (pagePool != null) {
+			setDirty();
+			pagePool.writeByte(this, iOffset, iValue);
+			return;
+		}
 		final ByteBuffer buffer = getWriteBuffer(OBinaryProtocol.SIZE_BYTE);
 		buffer.put(iValue);
 		writeBuffer(buffer, iOffset);
@@ -126,7 +182,10 @@ public class OFileClassic extends OAbstractFile {
 	public void write(long iOffset, final byte[] iSourceBuffer) throws IOException {
 		if (iSourceBuffer != null) {
 			iOffset = checkRegions(iOffset, iSourceBuffer.length);
-			channel.write(ByteBuffer.wrap(iSourceBuffer), iOffset);
+			if (pagePool != null)
+				pagePool.write(this, iOffset, iSourceBuffer, 0, iSourceBuffer.length);
+			else
+				channel.write(ByteBuffer.wrap(iSourceBuffer), iOffset);
 			setDirty();
 		}
 	}
@@ -140,6 +199,8 @@ public class OFileClassic extends OAbstractFile {
 	 */
 	@Override
 	public void synch() throws IOException {
+		if (pagePool != null)
+			pagePool.flushFile(this);
 		flushHeader();
 	}
 
@@ -180,6 +241,8 @@ public class OFileClassic extends OAbstractFile {
 
 			try {
 				synch();
+				if (pagePool != null)
+					pagePool.truncateFile(this, iSize);
 				channel.close();
 				openChannel(iSize);
 
@@ -190,6 +253,16 @@ public class OFileClassic extends OAbstractFile {
 		}
 	}
 
+	/**
+	 * Drops the cached pages beyond the new end of the file before shrinking it.
+	 */
+	@Override
+	public void shrink(final int iSize) throws IOException {
+		if (pagePool != null && iSize < filledUpTo)
+			pagePool.truncateFile(this, iSize);
+		super.shrink(iSize);
+	}
+
 	@Override
 	public void writeHeaderLong(final int iPosition, final long iValue) throws IOException {
 		final ByteBuffer buffer = getWriteBuffer(OBinaryProtocol.SIZE_LONG);
@@ -65,11 +65,12 @@ public class OFileMMap extends OAbstractFile {
 		iOffset = checkRegions(iOffset, iLenght);
 
 		final OMMapBufferEntry entry = OMMapManager.request(this, iOffset, iLenght, OPERATION_TYPE.READ, strategy);
-		if (entry != null) {
+		final MappedByteBuffer mappedBuffer = entry != null ? entry.buffer : null;
+		if (mappedBuffer != null) {
 			// MMAP READ
-			synchronized (entry.buffer) {
-				entry.buffer.position((int) (iOffset - entry.beginOffset));
-				entry.buffer.get(iDestBuffer, 0, iLenght);
+			synchronized (mappedBuffer) {
+				mappedBuffer.position((int) (iOffset - entry.beginOffset));
+				mappedBuffer.get(iDestBuffer, 0, iLenght);
 			}
 		} else {
 			// DIRECT READ
@@ -85,10 +86,11 @@ public class OFileMMap extends OAbstractFile {
 	public int readInt(long iOffset) throws IOException {
 		iOffset = checkRegions(iOffset, OBinaryProtocol.SIZE_INT);
 		final OMMapBufferEntry entry = OMMapManager.request(this, iOffset, OBinaryProtocol.SIZE_INT, OPERATION_TYPE.READ, strategy);
-		if (entry != null) {
+		final MappedByteBuffer mappedBuffer = entry != null ? entry.buffer : null;
+		if (mappedBuffer != null) {
 			// MMAP READ
-			synchronized (entry.buffer) {
-				return entry.buffer.getInt((int) (iOffset - entry.beginOffset));
+			synchronized (mappedBuffer) {
+				return mappedBuffer.getInt((int) (iOffset - entry.beginOffset));
 			}
 		} else {
 			// DIRECT READ
@@ -105,10 +107,11 @@ public class OFileMMap extends OAbstractFile {
 	public long readLong(long iOffset) throws IOException {
 		iOffset = checkRegions(iOffset, OBinaryProtocol.SIZE_LONG);
 		final OMMapBufferEntry entry = OMMapManager.request(this, iOffset, OBinaryProtocol.SIZE_LONG, OPERATION_TYPE.READ, strategy);
-		if (entry != null) {
+		final MappedByteBuffer mappedBuffer = entry != null ? entry.buffer : null;
+		if (mappedBuffer != null) {
 			// MMAP READ
-			synchronized (entry.buffer) {
-				return entry.buffer.getLong((int) (iOffset - entry.beginOffset));
+			synchronized (mappedBuffer) {
+				return mappedBuffer.getLong((int) (iOffset - entry.beginOffset));
 			}
 		} else {
 			// DIRECT READ
@@ -125,10 +128,11 @@ public class OFileMMap extends OAbstractFile {
 	public short readShort(long iOffset) throws IOException {
 		iOffset = checkRegions(iOffset, OBinaryProtocol.SIZE_SHORT);
 		final OMMapBufferEntry entry = OMMapManager.request(this, iOffset, OBinaryProtocol.SIZE_SHORT, OPERATION_TYPE.READ, strategy);
-		if (entry != null) {
+		final MappedByteBuffer mappedBuffer = entry != null ? entry.buffer : null;
+		if (mappedBuffer != null) {
 			// MMAP READ
-			synchronized (entry.buffer) {
-				return entry.buffer.getShort((int) (iOffset - entry.beginOffset));
+			synchronized (mappedBuffer) {
+				return mappedBuffer.getShort((int) (iOffset - entry.beginOffset));
 			}
 		} else {
 			// DIRECT READ
@@ -145,10 +149,11 @@ public class OFileMMap extends OAbstractFile {
 	public byte readByte(long iOffset) throws IOException {
 		iOffset = checkRegions(iOffset, OBinaryProtocol.SIZE_BYTE);
 		final OMMapBufferEntry entry = OMMapManager.request(this, iOffset, OBinaryProtocol.SIZE_BYTE, OPERATION_TYPE.READ, strategy);
-		if (entry != null) {
+		final MappedByteBuffer mappedBuffer = entry != null ? entry.buffer : null;
+		if (mappedBuffer != null) {
 			// MMAP READ
-			synchronized (entry.buffer) {
-				return entry.buffer.get((int) (iOffset - entry.beginOffset));
+			synchronized (mappedBuffer) {
+				return mappedBuffer.get((int) (iOffset - entry.beginOffset));
 			}
 		} else {
 			// DIRECT READ
@@ -165,10 +170,12 @@ public class OFileMMap extends OAbstractFile {
 	public void writeInt(long iOffset, final int iValue) throws IOException {
 		iOffset = checkRegions(iOffset, OBinaryProtocol.SIZE_INT);
 		final OMMapBufferEntry entry = OMMapManager.request(this, iOffset, OBinaryProtocol.SIZE_INT, OPERATION_TYPE.WRITE, strategy);
-		if (entry != null) {
+		final MappedByteBuffer mappedBuffer = entry != null ? entry.buffer : null;
+		if (mappedBuffer != null) {
 			// MMAP WRITE
-			synchronized (entry.buffer) {
-				entry.buffer.putInt((int) (iOffset - entry.beginOffset), iValue);
+			synchronized (mappedBuffer) {
+				mappedBuffer.putInt((int) (iOffset - entry.beginOffset), iValue);
+				entry.setDirty();
 			}
 		} else {
 			// DIRECT WRITE
@@ -184,10 +191,12 @@ public class OFileMMap extends OAbstractFile {
 	public void writeLong(long iOffset, final long iValue) throws IOException {
 		iOffset = checkRegions(iOffset, OBinaryProtocol.SIZE_LONG);
 		final OMMapBufferEntry entry = OMMapManager.request(this, iOffset, OBinaryProtocol.SIZE_LONG, OPERATION_TYPE.WRITE, strategy);
-		if (entry != null) {
+		final MappedByteBuffer mappedBuffer = entry != null ? entry.buffer : null;
+		if (mappedBuffer != null) {
 			// MMAP WRITE
-			synchronized (entry.buffer) {
-				entry.buffer.putLong((int) (iOffset - entry.beginOffset), iValue);
+			synchronized (mappedBuffer) {
+				mappedBuffer.putLong((int) (iOffset - entry.beginOffset), iValue);
+				entry.setDirty();
 			}
 		} else {
 			// DIRECT WRITE
@@ -203,10 +212,12 @@ public class OFileMMap extends OAbstractFile {
 	public void writeShort(long iOffset, final short iValue) throws IOException {
 		iOffset = checkRegions(iOffset, OBinaryProtocol.SIZE_SHORT);
 		final OMMapBufferEntry entry = OMMapManager.request(this, iOffset, OBinaryProtocol.SIZE_SHORT, OPERATION_TYPE.WRITE, strategy);
-		if (entry != null) {
+		final MappedByteBuffer mappedBuffer = entry != null ? entry.buffer : null;
+		if (mappedBuffer != null) {
 			// MMAP WRITE
-			synchronized (entry.buffer) {
-				entry.buffer.putShort((int) (iOffset - entry.beginOffset), iValue);
+			synchronized (mappedBuffer) {
+				mappedBuffer.putShort((int) (iOffset - entry.beginOffset), iValue);
+				entry.setDirty();
 			}
 		} else {
 			// DIRECT WRITE
@@ -222,10 +233,12 @@ public class OFileMMap extends OAbstractFile {
 	public void writeByte(long iOffset, final byte iValue) throws IOException {
 		iOffset = checkRegions(iOffset, OBinaryProtocol.SIZE_BYTE);
 		final OMMapBufferEntry entry = OMMapManager.request(this, iOffset, OBinaryProtocol.SIZE_BYTE, OPERATION_TYPE.WRITE, strategy);
-		if (entry != null) {
+		final MappedByteBuffer mappedBuffer = entry != null ? entry.buffer : null;
+		if (mappedBuffer != null) {
 			// MMAP WRITE
-			synchronized (entry.buffer) {
-				entry.buffer.put((int) (iOffset - entry.beginOffset), iValue);
+			synchronized (mappedBuffer) {
+				mappedBuffer.put((int) (iOffset - entry.beginOffset), iValue);
+				entry.setDirty();
 			}
 		} else {
 			// DIRECT WRITE
@@ -246,11 +259,13 @@ public class OFileMMap extends OAbstractFile {
 
 		try {
 			final OMMapBufferEntry entry = OMMapManager.request(this, iOffset, iSourceBuffer.length, OPERATION_TYPE.WRITE, strategy);
-			if (entry != null) {
+			final MappedByteBuffer mappedBuffer = entry != null ? entry.buffer : null;
+			if (mappedBuffer != null) {
 				// MMAP WRITE
-				synchronized (entry.buffer) {
-					entry.buffer.position((int) (iOffset - entry.beginOffset));
-					entry.buffer.put(iSourceBuffer);
+				synchronized (mappedBuffer) {
+					mappedBuffer.position((int) (iOffset - entry.beginOffset));
+					mappedBuffer.put(iSourceBuffer);
+					entry.setDirty();
 				}
 			} else {
 				// DIRECT WRITE
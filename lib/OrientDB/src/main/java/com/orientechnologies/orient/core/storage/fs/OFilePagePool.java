@@ -0,0 +1,567 @@
+/*
+ * Copyright 1999-2010 Luca Garulli (l.garulli--at--orientechnologies.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.orientechnologies.orient.core.storage.fs;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.orientechnologies.common.io.OIOException;
+import com.orientechnologies.common.profiler.OProfiler;
+import com.orientechnologies.common.profiler.OProfiler.OProfilerHookValue;
+import com.orientechnologies.orient.core.config.OGlobalConfiguration;
+import com.orientechnologies.orient.core.serialization.OBinaryProtocol;
+
+/**
+ * Pool of fixed-size pages shared by all the {@link OFileClassic} instances. It avoids a system call for every field read or
+ * written when memory mapping is not used. Pages are kept in pooled direct buffers and replaced using the CLOCK policy. A page is
+ * pinned while it's accessed, so it can't be evicted in the meantime. Changes stay in memory and are written back to the file on
+ * synch, close or eviction. The pool is locked only to look up and assign the pages, never during the I/O.<br/>
+ * Offsets are the physical ones: the file header is never cached, since {@link OFileClassic} reads and writes it directly.
+ */
+public class OFilePagePool {
+	private static OFilePagePool	instance;
+
+	private final int							pageSize;
+	private final OFilePage[]			frames;
+	private final Map<Key, OFilePage>	pages		= new HashMap<Key, OFilePage>();
+	private int										clockHand;
+	private int										usedFrames;
+
+	private static class Key {
+		private final OFileClassic	file;
+		private final long					index;
+
+		private Key(final OFileClassic iFile, final long iIndex) {
+			file = iFile;
+			index = iIndex;
+		}
+
+		@Override
+		public int hashCode() {
+			return file.hashCode() * 31 + (int) (index ^ (index >>> 32));
+		}
+
+		@Override
+		public boolean equals(final Object obj) {
+			if (!(obj instanceof Key))
+				return false;
+			final Key other = (Key) obj;
+			return file == other.file && index == other.index;
+		}
+	}
+
+	private static class OFilePage {
+		private final ByteBuffer	buffer;
+		private Key								key;
+		private int								pinned;
+		private boolean						referenced;
+		private boolean						loaded;
+		private int								dirtyFrom	= -1;
+		private int								dirtyTo;
+
+		private OFilePage(final int iPageSize) {
+			buffer = ByteBuffer.allocateDirect(iPageSize);
+		}
+
+		private boolean isDirty() {
+			return dirtyFrom != -1;
+		}
+
+		private void setDirty(final int iFrom, final int iTo) {
+			if (dirtyFrom == -1 || iFrom < dirtyFrom)
+				dirtyFrom = iFrom;
+			if (iTo > dirtyTo)
+				dirtyTo = iTo;
+		}
+	}
+
+	public OFilePagePool(final int iPageSize, final long iMaxMemory) {
+		if (iPageSize <= 0)
+			throw new IllegalArgumentException("Invalid page size: " + iPageSize);
+
+		pageSize = iPageSize;
+		frames = new OFilePage[(int) Math.max(16, iMaxMemory / iPageSize)];
+	}
+
+	/**
+	 * Returns the pool shared by all the classic files, creating it the first time using the "file.classic.pageCache.*" settings.
+	 */
+	public static synchronized OFilePagePool instance() {
+		if (instance == null) {
+			instance = new OFilePagePool(OGlobalConfiguration.FILE_CLASSIC_PAGE_SIZE.getValueAsInteger(),
+					OGlobalConfiguration.FILE_CLASSIC_PAGE_CACHE_SIZE.getValueAsLong());
+
+			final OFilePagePool pool = instance;
+			OProfiler.getInstance().registerHookValue("file.pagePool.pages", new OProfilerHookValue() {
+				public Object getValue() {
+					return pool.getUsedPages();
+				}
+			});
+		}
+		return instance;
+	}
+
+	public byte readByte(final OFileClassic iFile, final long iOffset) throws IOException {
+		final OFilePage page = pin(iFile, iOffset);
+		try {
+			synchronized (page) {
+				return page.buffer.get(offsetInPage(iOffset));
+			}
+		} finally {
+			unpin(page);
+		}
+	}
+
+	public short readShort(final OFileClassic iFile, final long iOffset) throws IOException {
+		if (!isInPage(iOffset, OBinaryProtocol.SIZE_SHORT))
+			return readAcrossPages(iFile, iOffset, OBinaryProtocol.SIZE_SHORT).getShort();
+
+		final OFilePage page = pin(iFile, iOffset);
+		try {
+			synchronized (page) {
+				return page.buffer.getShort(offsetInPage(iOffset));
+			}
+		} finally {
+			unpin(page);
+		}
+	}
+
+	public int readInt(final OFileClassic iFile, final long iOffset) throws IOException {
+		if (!isInPage(iOffset, OBinaryProtocol.SIZE_INT))
+			return readAcrossPages(iFile, iOffset, OBinaryProtocol.SIZE_INT).getInt();
+
+		final OFilePage page = pin(iFile, iOffset);
+		try {
+			synchronized (page) {
+				return page.buffer.getInt(offsetInPage(iOffset));
+			}
+		} finally {
+			unpin(page);
+		}
+	}
+
+	public long readLong(final OFileClassic iFile, final long iOffset) throws IOException {
+		if (!isInPage(iOffset, OBinaryProtocol.SIZE_LONG))
+			return readAcrossPages(iFile, iOffset, OBinaryProtocol.SIZE_LONG).getLong();
+
+		final OFilePage page = pin(iFile, iOffset);
+		try {
+			synchronized (page) {
+				return page.buffer.getLong(offsetInPage(iOffset));
+			}
+		} finally {
+			unpin(page);
+		}
+	}
+
+	public void writeByte(final OFileClassic iFile, final long iOffset, final byte iValue) throws IOException {
+		final OFilePage page = pin(iFile, iOffset);
+		try {
+			synchronized (page) {
+				final int pos = offsetInPage(iOffset);
+				page.buffer.put(pos, iValue);
+				page.setDirty(pos, pos + OBinaryProtocol.SIZE_BYTE);
+			}
+		} finally {
+			unpin(page);
+		}
+	}
+
+	public void writeShort(final OFileClassic iFile, final long iOffset, final short iValue) throws IOException {
+		if (!isInPage(iOffset, OBinaryProtocol.SIZE_SHORT)) {
+			write(iFile, iOffset, ByteBuffer.allocate(OBinaryProtocol.SIZE_SHORT).putShort(iValue).array(), 0,
+					OBinaryProtocol.SIZE_SHORT);
+			return;
+		}
+
+		final OFilePage page = pin(iFile, iOffset);
+		try {
+			synchronized (page) {
+				final int pos = offsetInPage(iOffset);
+				page.buffer.putShort(pos, iValue);
+				page.setDirty(pos, pos + OBinaryProtocol.SIZE_SHORT);
+			}
+		} finally {
+			unpin(page);
+		}
+	}
+
+	public void writeInt(final OFileClassic iFile, final long iOffset, final int iValue) throws IOException {
+		if (!isInPage(iOffset, OBinaryProtocol.SIZE_INT)) {
+			write(iFile, iOffset, ByteBuffer.allocate(OBinaryProtocol.SIZE_INT).putInt(iValue).array(), 0, OBinaryProtocol.SIZE_INT);
+			return;
+		}
+
+		final OFilePage page = pin(iFile, iOffset);
+		try {
+			synchronized (page) {
+				final int pos = offsetInPage(iOffset);
+				page.buffer.putInt(pos, iValue);
+				page.setDirty(pos, pos + OBinaryProtocol.SIZE_INT);
+			}
+		} finally {
+			unpin(page);
+		}
+	}
+
+	public void writeLong(final OFileClassic iFile, final long iOffset, final long iValue) throws IOException {
+		if (!isInPage(iOffset, OBinaryProtocol.SIZE_LONG)) {
+			write(iFile, iOffset, ByteBuffer.allocate(OBinaryProtocol.SIZE_LONG).putLong(iValue).array(), 0, OBinaryProtocol.SIZE_LONG);
+			return;
+		}
+
+		final OFilePage page = pin(iFile, iOffset);
+		try {
+			synchronized (page) {
+				final int pos = offsetInPage(iOffset);
+				page.buffer.putLong(pos, iValue);
+				page.setDirty(pos, pos + OBinaryProtocol.SIZE_LONG);
+			}
+		} finally {
+			unpin(page);
+		}
+	}
+
+	/**
+	 * Reads iLength bytes starting from iOffset, crossing pages if needed.
+	 */
+	public void read(final OFileClassic iFile, long iOffset, final byte[] iDestBuffer, int iDestOffset, int iLength)
+			throws IOException {
+		while (iLength > 0) {
+			final OFilePage page = pin(iFile, iOffset);
+			try {
+				final int pos = offsetInPage(iOffset);
+				final int chunk = Math.min(iLength, pageSize - pos);
+				synchronized (page) {
+					page.buffer.position(pos);
+					page.buffer.get(iDestBuffer, iDestOffset, chunk);
+				}
+				iOffset += chunk;
+				iDestOffset += chunk;
+				iLength -= chunk;
+			} finally {
+				unpin(page);
+			}
+		}
+	}
+
+	/**
+	 * Writes iLength bytes starting from iOffset, crossing pages if needed.
+	 */
+	public void write(final OFileClassic iFile, long iOffset, final byte[] iSourceBuffer, int iSourceOffset, int iLength)
+			throws IOException {
+		while (iLength > 0) {
+			final OFilePage page = pin(iFile, iOffset);
+			try {
+				final int pos = offsetInPage(iOffset);
+				final int chunk = Math.min(iLength, pageSize - pos);
+				synchronized (page) {
+					page.buffer.position(pos);
+					page.buffer.put(iSourceBuffer, iSourceOffset, chunk);
+					page.setDirty(pos, pos + chunk);
+				}
+				iOffset += chunk;
+				iSourceOffset += chunk;
+				iLength -= chunk;
+			} finally {
+				unpin(page);
+			}
+		}
+	}
+
+	/**
+	 * Writes back all the dirty pages of the file. The pages are pinned while they are written, so the pool is not locked during
+	 * the I/O.
+	 */
+	public void flushFile(final OFileClassic iFile) throws IOException {
+		final List<OFilePage> filePages = new ArrayList<OFilePage>();
+		synchronized (this) {
+			for (int i = 0; i < usedFrames; ++i) {
+				final OFilePage page = frames[i];
+				if (page.key != null && page.key.file == iFile) {
+					page.pinned++;
+					filePages.add(page);
+				}
+			}
+		}
+
+		try {
+			for (OFilePage page : filePages)
+				writeBack(page);
+		} finally {
+			for (OFilePage page : filePages)
+				unpin(page);
+		}
+	}
+
+	/**
+	 * Writes back all the dirty pages of the file and releases the pages it was using.
+	 */
+	public void removeFile(final OFileClassic iFile) throws IOException {
+		while (true) {
+			flushFile(iFile);
+
+			synchronized (this) {
+				boolean pending = false;
+				for (int i = 0; i < usedFrames; ++i) {
+					final OFilePage page = frames[i];
+					if (page.key != null && page.key.file == iFile) {
+						if (page.pinned > 0 || page.isDirty()) {
+							// CHANGED IN THE MEANTIME: FLUSH IT AGAIN
+							pending = true;
+							continue;
+						}
+
+						pages.remove(page.key);
+						page.key = null;
+						page.loaded = false;
+						page.referenced = false;
+					}
+				}
+
+				if (!pending)
+					return;
+			}
+		}
+	}
+
+	/**
+	 * Drops the pages of the file beyond the new size without writing them back, since their content is no longer part of the file.
+	 * The page holding the new end of the file is written back before being dropped, so the next read loads it from the file.
+	 * 
+	 * @param iSize
+	 *          New size of the file content, header excluded
+	 */
+	public void truncateFile(final OFileClassic iFile, final long iSize) throws IOException {
+		final long firstPage = iSize / pageSize;
+		final boolean partialPage = iSize % pageSize != 0;
+
+		while (true) {
+			if (partialPage) {
+				final OFilePage page;
+				synchronized (this) {
+					page = pages.get(new Key(iFile, firstPage));
+					if (page != null)
+						page.pinned++;
+				}
+
+				if (page != null)
+					try {
+						writeBack(page);
+					} finally {
+						unpin(page);
+					}
+			}
+
+			synchronized (this) {
+				boolean pending = false;
+				for (int i = 0; i < usedFrames; ++i) {
+					final OFilePage page = frames[i];
+					if (page.key != null && page.key.file == iFile && page.key.index >= firstPage) {
+						if (page.pinned > 0 || (partialPage && page.key.index == firstPage && page.isDirty())) {
+							// IN USE OR CHANGED IN THE MEANTIME: TRY AGAIN
+							pending = true;
+							continue;
+						}
+
+						pages.remove(page.key);
+						page.key = null;
+						page.loaded = false;
+						page.referenced = false;
+						page.dirtyFrom = -1;
+						page.dirtyTo = 0;
+					}
+				}
+
+				if (!pending)
+					return;
+			}
+		}
+	}
+
+	public int getPageSize() {
+		return pageSize;
+	}
+
+	public int getMaxPages() {
+		return frames.length;
+	}
+
+	public synchronized int getUsedPages() {
+		return pages.size();
+	}
+
+	/**
+	 * Pins the page holding the offset, loading it if it's not in the pool. The pool is locked only to look up and to assign the
+	 * frames: loading a page and writing back the dirty page it replaces are executed holding only the lock of the page.
+	 */
+	private OFilePage pin(final OFileClassic iFile, final long iOffset) throws IOException {
+		final Key key = new Key(iFile, (iOffset - OAbstractFile.HEADER_SIZE) / pageSize);
+
+		OFilePage page = null;
+		while (page == null) {
+			final OFilePage victim;
+			synchronized (this) {
+				OFilePage p = pages.get(key);
+				if (p != null) {
+					OProfiler.getInstance().updateCounter("OFilePagePool.pageHit", 1);
+					p.pinned++;
+					p.referenced = true;
+					page = p;
+					break;
+				}
+
+				victim = getFreeFrame();
+				if (victim.key != null && victim.isDirty())
+					// WRITE IT BACK OUT OF THE POOL LOCK, THEN LOOK FOR A FREE FRAME AGAIN
+					victim.pinned++;
+				else {
+					OProfiler.getInstance().updateCounter("OFilePagePool.pageMiss", 1);
+					if (victim.key != null) {
+						pages.remove(victim.key);
+						OProfiler.getInstance().updateCounter("OFilePagePool.pageEvicted", 1);
+					}
+					victim.key = key;
+					victim.loaded = false;
+					victim.referenced = true;
+					victim.pinned++;
+					pages.put(key, victim);
+					page = victim;
+					break;
+				}
+			}
+
+			try {
+				writeBack(victim);
+			} finally {
+				unpin(victim);
+			}
+		}
+
+		try {
+			synchronized (page) {
+				if (!page.loaded) {
+					load(page);
+					page.loaded = true;
+				}
+			}
+		} catch (IOException e) {
+			unpin(page);
+			throw e;
+		}
+		return page;
+	}
+
+	private synchronized void unpin(final OFilePage iPage) {
+		iPage.pinned--;
+		if (iPage.pinned == 0)
+			notifyAll();
+	}
+
+	/**
+	 * Returns a frame not yet used or the first not pinned and not recently referenced found by the CLOCK hand. If all the frames
+	 * are pinned, waits for one to be released. The frame returned can still hold a page, that the caller must write back if dirty.
+	 */
+	private OFilePage getFreeFrame() throws IOException {
+		if (usedFrames < frames.length) {
+			final OFilePage page = new OFilePage(pageSize);
+			frames[usedFrames++] = page;
+			return page;
+		}
+
+		while (true) {
+			for (int i = 0; i < frames.length * 2; ++i) {
+				final OFilePage page = frames[clockHand];
+				clockHand = (clockHand + 1) % frames.length;
+
+				if (page.pinned > 0)
+					continue;
+
+				if (page.referenced) {
+					// SECOND CHANCE
+					page.referenced = false;
+					continue;
+				}
+
+				return page;
+			}
+
+			// ALL THE PAGES ARE PINNED: WAIT FOR AN UNPIN
+			try {
+				wait();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new OIOException("Interrupted while waiting for a free page in the page pool");
+			}
+		}
+	}
+
+	private void load(final OFilePage iPage) throws IOException {
+		final ByteBuffer buffer = iPage.buffer;
+		buffer.clear();
+
+		final long fileOffset = OAbstractFile.HEADER_SIZE + iPage.key.index * pageSize;
+		while (buffer.hasRemaining()) {
+			final int read = iPage.key.file.channel.read(buffer, fileOffset + buffer.position());
+			if (read <= 0)
+				break;
+		}
+
+		// CLEAN THE PART OF THE PAGE OVER THE END OF THE FILE
+		while (buffer.hasRemaining())
+			buffer.put((byte) 0);
+
+		iPage.dirtyFrom = -1;
+		iPage.dirtyTo = 0;
+	}
+
+	private void writeBack(final OFilePage iPage) throws IOException {
+		synchronized (iPage) {
+			if (iPage.dirtyFrom == -1)
+				return;
+
+			final ByteBuffer buffer = iPage.buffer.duplicate();
+			buffer.limit(iPage.dirtyTo);
+			buffer.position(iPage.dirtyFrom);
+
+			final long fileOffset = OAbstractFile.HEADER_SIZE + iPage.key.index * pageSize;
+			while (buffer.hasRemaining())
+				iPage.key.file.channel.write(buffer, fileOffset + buffer.position());
+
+			iPage.dirtyFrom = -1;
+			iPage.dirtyTo = 0;
+			OProfiler.getInstance().updateCounter("OFilePagePool.pageWritten", 1);
+		}
+	}
+
+	private ByteBuffer readAcrossPages(final OFileClassic iFile, final long iOffset, final int iSize) throws IOException {
+		final byte[] content = new byte[iSize];
+		read(iFile, iOffset, content, 0, iSize);
+		return ByteBuffer.wrap(content);
+	}
+
+	private boolean isInPage(final long iOffset, final int iSize) {
+		return offsetInPage(iOffset) + iSize <= pageSize;
+	}
+
+	private int offsetInPage(final long iOffset) {
+		return (int) ((iOffset - OAbstractFile.HEADER_SIZE) % pageSize);
+	}
+}
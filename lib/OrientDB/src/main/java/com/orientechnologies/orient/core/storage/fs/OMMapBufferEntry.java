@@ -18,6 +18,7 @@ package com.orientechnologies.orient.core.storage.fs;
 import java.io.IOException;
 import java.lang.reflect.Method;
 import java.nio.MappedByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
 
 import com.orientechnologies.common.log.OLogManager;
 import com.orientechnologies.common.profiler.OProfiler;
@@ -30,10 +31,10 @@ public class OMMapBufferEntry implements Comparable<OMMapBufferEntry> {
 
 	static Class<?>						sunClass	= null;
 	OFileMMap									file;
-	MappedByteBuffer					buffer;
+	volatile MappedByteBuffer	buffer;
 	long											beginOffset;
 	int												size;
-	long											counter;
+	final AtomicLong					counter	= new AtomicLong();
 	volatile boolean					dirty;
 
 	static {
@@ -53,26 +54,36 @@ public class OMMapBufferEntry implements Comparable<OMMapBufferEntry> {
 		this.buffer = buffer;
 		this.beginOffset = beginOffset;
 		this.size = size;
-		this.counter = 0;
 		this.dirty = false;
 	}
 
 	/**
-	 * Flushes the memory mapped buffer to disk only if it's dirty.
+	 * Flushes the memory mapped buffer to disk only if it's dirty. The dirty flag is reset before forcing the buffer, so a write that
+	 * happens while flushing marks the block dirty again and it will be flushed the next time.
 	 * 
 	 * @return true if the buffer has been successfully flushed, otherwise false.
 	 */
-	public boolean flush() {
+	public synchronized boolean flush() {
 		if (!dirty)
 			return true;
 
+		final MappedByteBuffer buffer = this.buffer;
+		if (buffer == null) {
+			// ALREADY UNMAPPED
+			setClean();
+			return true;
+		}
+
 		final long timer = OProfiler.getInstance().startChrono();
 
+		setClean();
+
 		// FORCE THE WRITE OF THE BUFFER
+		boolean flushed = false;
 		for (int i = 0; i < FORCE_RETRY; ++i) {
 			try {
 				buffer.force();
-				dirty = false;
+				flushed = true;
 				break;
 			} catch (Exception e) {
 				OLogManager.instance().debug(this, "Cannot write memory buffer to disk. Retrying (" + (i + 1) + "/" + FORCE_RETRY + ")...");
@@ -80,14 +91,15 @@ public class OMMapBufferEntry implements Comparable<OMMapBufferEntry> {
 			}
 		}
 
-		if (dirty)
+		if (!flushed) {
+			setDirty();
 			OLogManager.instance().debug(this, "Cannot commit memory buffer to disk after %d retries", FORCE_RETRY);
-		else
+		} else
 			OProfiler.getInstance().updateCounter("OMMapManager.pagesCommitted", 1);
 
 		OProfiler.getInstance().stopChrono("OMMapManager.commitPages", timer);
 
-		return !dirty;
+		return flushed;
 	}
 
 	@Override
@@ -98,6 +110,19 @@ public class OMMapBufferEntry implements Comparable<OMMapBufferEntry> {
 		return builder.toString();
 	}
 
+	/**
+	 * Flushes the block and releases its buffer. It's synchronized with {@link #flush()}, so a background flush never forces a block
+	 * while it's being unmapped.
+	 * 
+	 * @return true if the block has been flushed and released, otherwise false.
+	 */
+	synchronized boolean unmap() {
+		if (!flush())
+			return false;
+		buffer = null;
+		return true;
+	}
+
 	/**
 	 * Force closing of file is it's opened yet.
 	 */
@@ -114,19 +139,22 @@ public class OMMapBufferEntry implements Comparable<OMMapBufferEntry> {
 			file = null;
 		}
 
-		if (buffer != null && sunClass != null) {
-			// USE SUN JVM SPECIAL METHOD TO FREE RESOURCES
-			try {
-				final Method m = sunClass.getMethod("cleaner");
-				final Object cleaner = m.invoke(buffer);
-				cleaner.getClass().getMethod("clean").invoke(cleaner);
-			} catch (Exception e) {
-				OLogManager.instance().error(this, "Error on calling MMap buffer clean", e);
+		synchronized (this) {
+			if (buffer != null && sunClass != null) {
+				// USE SUN JVM SPECIAL METHOD TO FREE RESOURCES
+				try {
+					final Method m = sunClass.getMethod("cleaner");
+					final Object cleaner = m.invoke(buffer);
+					cleaner.getClass().getMethod("clean").invoke(cleaner);
+				} catch (Exception e) {
+					OLogManager.instance().error(this, "Error on calling MMap buffer clean", e);
+				}
 			}
-		}
 
-		buffer = null;
-		counter = 0;
+			buffer = null;
+			setClean();
+		}
+		counter.set(0);
 	}
 
 	public int compareTo(final OMMapBufferEntry iOther) {
@@ -141,7 +169,24 @@ public class OMMapBufferEntry implements Comparable<OMMapBufferEntry> {
 		return dirty;
 	}
 
+	/**
+	 * Marks the block as dirty and registers it in the {@link OMMapManager} dirty list to be flushed in background. A block already
+	 * unmapped is not registered.
+	 */
 	public void setDirty() {
-		this.dirty = true;
+		if (!dirty)
+			synchronized (this) {
+				if (!dirty && buffer != null) {
+					dirty = true;
+					OMMapManager.addDirtyBlock(this);
+				}
+			}
+	}
+
+	protected synchronized void setClean() {
+		if (dirty) {
+			dirty = false;
+			OMMapManager.removeDirtyBlock(this);
+		}
 	}
 }
\ No newline at end of file
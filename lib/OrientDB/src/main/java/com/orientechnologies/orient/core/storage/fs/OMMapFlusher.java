@@ -0,0 +1,40 @@
+/*
+ * Copyright 1999-2010 Luca Garulli (l.garulli--at--orientechnologies.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.orientechnologies.orient.core.storage.fs;
+
+import com.orientechnologies.common.thread.OPollerThread;
+import com.orientechnologies.orient.core.Orient;
+
+/**
+ * Background thread that writes dirty memory mapped blocks back to disk a few at a time. This way synch, commit and eviction find
+ * most of the blocks already flushed and rarely wait for a big force(). Enabled by setting "file.mmap.flushInterval" to a positive
+ * value.
+ * 
+ * @see OMMapManager#flushDirtyBlocks(int)
+ */
+public class OMMapFlusher extends OPollerThread {
+	private final int	maxBlocks;
+
+	public OMMapFlusher(final long iDelay, final int iMaxBlocks) {
+		super(iDelay, Orient.getThreadGroup(), "OrientDB MMap Flusher");
+		maxBlocks = iMaxBlocks;
+	}
+
+	@Override
+	protected void execute() throws Exception {
+		OMMapManager.flushDirtyBlocks(maxBlocks);
+	}
+}
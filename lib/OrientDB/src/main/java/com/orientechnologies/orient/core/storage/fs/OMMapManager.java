@@ -17,12 +17,14 @@ package com.orientechnologies.orient.core.storage.fs;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
-import java.util.Comparator;
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import com.orientechnologies.common.io.OIOException;
 import com.orientechnologies.common.log.OLogManager;
@@ -30,6 +32,13 @@ import com.orientechnologies.common.profiler.OProfiler;
 import com.orientechnologies.common.profiler.OProfiler.OProfilerHookValue;
 import com.orientechnologies.orient.core.config.OGlobalConfiguration;
 
+/**
+ * Manages the pool of memory mapped blocks. Each file has its own index of blocks ordered by offset, kept as an immutable array
+ * replaced on every change (copy-on-write). Looking up an already mapped block is lock-free: only the allocation of new blocks and
+ * the eviction of the less used ones are serialized.<br/>
+ * Dirty blocks are tracked to let the {@link OMMapFlusher} write them back in background, starting from the less used ones that
+ * are the nearest to be evicted.
+ */
 public class OMMapManager {
 	public enum OPERATION_TYPE {
 		READ, WRITE
@@ -43,15 +52,22 @@ public class OMMapManager {
 		NO_OVERLAP_USE_CHANNEL, NO_OVERLAP_FLUSH_AND_USE_CHANNEL, OVERLAP
 	}
 
-	private static final long															MIN_MEMORY				= 50000000;
-	private static OVERLAP_STRATEGY												overlapStrategy;
-	private static ALLOC_STRATEGY													lastStrategy;
-	private static int																		blockSize;
-	private static long																		maxMemory;
-	private static long																		totalMemory;
+	private static final long																		MIN_MEMORY				= 50000000;
+	private static final OMMapBufferEntry[]											EMPTY_ENTRIES			= new OMMapBufferEntry[0];
+	private static OVERLAP_STRATEGY															overlapStrategy;
+	private static volatile ALLOC_STRATEGY											lastStrategy;
+	private static int																					blockSize;
+	private static volatile long																maxMemory;
+	private static volatile long																totalMemory;
+
+	private static List<OMMapBufferEntry>												bufferPoolLRU			= new ArrayList<OMMapBufferEntry>();
+	private static ConcurrentMap<OFileMMap, OMMapBufferEntry[]>	bufferPoolPerFile	= new ConcurrentHashMap<OFileMMap, OMMapBufferEntry[]>();
 
-	private static List<OMMapBufferEntry>									bufferPoolLRU			= new ArrayList<OMMapBufferEntry>();
-	private static Map<OFileMMap, List<OMMapBufferEntry>>	bufferPoolPerFile	= new HashMap<OFileMMap, List<OMMapBufferEntry>>();
+	private static final Set<OMMapBufferEntry>									dirtyBlocks				= Collections
+																																						.newSetFromMap(new ConcurrentHashMap<OMMapBufferEntry, Boolean>());
+	private static final AtomicLong															dirtyBytes				= new AtomicLong();
+	private static volatile long																lastFlushTime;
+	private static OMMapFlusher																	flusher;
 
 	static {
 		blockSize = OGlobalConfiguration.FILE_MMAP_BLOCK_SIZE.getValueAsInteger();
@@ -77,8 +93,10 @@ public class OMMapManager {
 		});
 
 		OProfiler.getInstance().registerHookValue("mmap.blocks", new OProfilerHookValue() {
-			public synchronized Object getValue() {
-				return bufferPoolLRU.size();
+			public Object getValue() {
+				synchronized (OMMapManager.class) {
+					return bufferPoolLRU.size();
+				}
 			}
 		});
 
@@ -93,6 +111,59 @@ public class OMMapManager {
 				return overlapStrategy;
 			}
 		});
+
+		OProfiler.getInstance().registerHookValue("mmap.dirtyBlocks", new OProfilerHookValue() {
+			public Object getValue() {
+				return dirtyBlocks.size();
+			}
+		});
+
+		OProfiler.getInstance().registerHookValue("mmap.dirtyBytes", new OProfilerHookValue() {
+			public Object getValue() {
+				return dirtyBytes.get();
+			}
+		});
+
+		OProfiler.getInstance().registerHookValue("mmap.flush.lastTime", new OProfilerHookValue() {
+			public Object getValue() {
+				return lastFlushTime;
+			}
+		});
+
+		setFlushInterval(OGlobalConfiguration.FILE_MMAP_FLUSH_INTERVAL.getValueAsInteger());
+	}
+
+	/**
+	 * Usage counter of a block read once: the lock-free lookups keep on incrementing the counters, so sorting the blocks by their live
+	 * counters would break the contract of the sort.
+	 */
+	private static class LRUEntry implements Comparable<LRUEntry> {
+		private final OMMapBufferEntry	entry;
+		private final long							counter;
+
+		private LRUEntry(final OMMapBufferEntry iEntry) {
+			entry = iEntry;
+			counter = iEntry.counter.get();
+		}
+
+		public int compareTo(final LRUEntry iOther) {
+			return counter < iOther.counter ? -1 : (counter == iOther.counter ? 0 : 1);
+		}
+	}
+
+	/**
+	 * Returns the blocks sorted by usage, the less used first.
+	 */
+	private static List<OMMapBufferEntry> sortByUsage(final Collection<OMMapBufferEntry> iEntries) {
+		final List<LRUEntry> snapshot = new ArrayList<LRUEntry>(iEntries.size());
+		for (OMMapBufferEntry entry : iEntries)
+			snapshot.add(new LRUEntry(entry));
+		Collections.sort(snapshot);
+
+		final List<OMMapBufferEntry> sorted = new ArrayList<OMMapBufferEntry>(snapshot.size());
+		for (LRUEntry lruEntry : snapshot)
+			sorted.add(lruEntry.entry);
+		return sorted;
 	}
 
 	public static OMMapBufferEntry request(final OFileMMap iFile, final long iBeginOffset, final int iSize,
@@ -101,7 +172,8 @@ public class OMMapManager {
 	}
 
 	/**
-	 * Requests a mmap buffer to use.
+	 * Requests a mmap buffer to use. Blocks already mapped are found without locking, while the allocation of a new block is
+	 * serialized against the other allocations and evictions.
 	 * 
 	 * @param iFile
 	 *          MMap file
@@ -116,107 +188,106 @@ public class OMMapManager {
 	 * @param iStrategy
 	 * @return The mmap buffer entry if found, or null if the operation is READ and the buffer pool is full.
 	 */
-	public synchronized static OMMapBufferEntry request(final OFileMMap iFile, final long iBeginOffset, final int iSize,
-			final boolean iForce, final OPERATION_TYPE iOperationType, final ALLOC_STRATEGY iStrategy) {
+	public static OMMapBufferEntry request(final OFileMMap iFile, final long iBeginOffset, final int iSize, final boolean iForce,
+			final OPERATION_TYPE iOperationType, final ALLOC_STRATEGY iStrategy) {
 
 		if (iStrategy == ALLOC_STRATEGY.MMAP_NEVER)
 			return null;
 
 		lastStrategy = iStrategy;
 
-		OMMapBufferEntry entry = searchBetweenLastBlocks(iFile, iBeginOffset, iSize);
-		try {
-			if (entry != null && entry.buffer != null)
-				return entry;
-
-			// SEARCH THE REQUESTED RANGE IN THE CACHED BUFFERS
-			List<OMMapBufferEntry> fileEntries = bufferPoolPerFile.get(iFile);
-			if (fileEntries == null) {
-				fileEntries = new ArrayList<OMMapBufferEntry>();
-				bufferPoolPerFile.put(iFile, fileEntries);
-			}
-
-			int position = searchEntry(fileEntries, iBeginOffset, iSize);
-			if (position > -1) {
-				// FOUND !!!
-				entry = fileEntries.get(position);
-				if (entry != null && entry.buffer != null)
-					return entry;
-			}
+		// SEARCH THE REQUESTED RANGE IN THE CACHED BUFFERS WITHOUT LOCKING
+		final OMMapBufferEntry[] fileEntries = bufferPoolPerFile.get(iFile);
+		OMMapBufferEntry entry = null;
+		if (fileEntries != null) {
+			final int position = searchEntry(fileEntries, iBeginOffset, iSize);
+			if (position > -1 && fileEntries[position].isValid())
+				entry = fileEntries[position];
+		}
 
-			int p = (position + 2) * -1;
+		if (entry == null)
+			// NOT FOUND: MAP A NEW BLOCK
+			entry = allocate(iFile, iBeginOffset, iSize, iForce, iOperationType, iStrategy);
 
-			// CHECK IF THERE IS A BUFFER THAT OVERLAPS
-			if (!allocIfOverlaps(iBeginOffset, iSize, fileEntries, p)) {
-				OProfiler.getInstance().updateCounter("OMMapManager.usedChannel", 1);
-				return null;
-			}
+		if (entry != null && iOperationType == OPERATION_TYPE.WRITE)
+			entry.setDirty();
 
-			int bufferSize = computeBestEntrySize(iFile, iBeginOffset, iSize, iForce, fileEntries, p);
+		return entry;
+	}
 
-			if (totalMemory + bufferSize > maxMemory
-					&& (iStrategy == ALLOC_STRATEGY.MMAP_ONLY_AVAIL_POOL || iOperationType == OPERATION_TYPE.READ
-							&& iStrategy == ALLOC_STRATEGY.MMAP_WRITE_ALWAYS_READ_IF_AVAIL_POOL)) {
-				OProfiler.getInstance().updateCounter("OMMapManager.usedChannel", 1);
-				return null;
-			}
+	/**
+	 * Maps a new block for the requested range. It's the only place where blocks are added to the pool.
+	 */
+	private synchronized static OMMapBufferEntry allocate(final OFileMMap iFile, final long iBeginOffset, final int iSize,
+			final boolean iForce, final OPERATION_TYPE iOperationType, final ALLOC_STRATEGY iStrategy) {
 
-			entry = null;
-			// FREE LESS-USED BUFFERS UNTIL THE FREE-MEMORY IS DOWN THE CONFIGURED MAX LIMIT
-			do {
-				if (totalMemory + bufferSize > maxMemory)
-					freeResources();
-
-				// RECOMPUTE THE POSITION AFTER REMOVING
-				fileEntries = bufferPoolPerFile.get(iFile);
-				position = searchEntry(fileEntries, iBeginOffset, iSize);
-				if (position > -1) {
-					// FOUND: THIS IS PRETTY STRANGE SINCE IT WASN'T FOUND!
-					entry = fileEntries.get(position);
-					if (entry != null && entry.buffer != null)
-						return entry;
-				}
+		// SEARCH AGAIN: ANOTHER THREAD COULD HAVE MAPPED THE SAME RANGE IN THE MEANTIME
+		OMMapBufferEntry[] fileEntries = getFileEntries(iFile);
+		int position = searchEntry(fileEntries, iBeginOffset, iSize);
+		if (position > -1 && fileEntries[position].isValid())
+			return fileEntries[position];
 
-				// LOAD THE PAGE
-				try {
-					entry = mapBuffer(iFile, iBeginOffset, bufferSize);
-				} catch (IllegalArgumentException e) {
-					throw e;
-				} catch (Exception e) {
-					// REDUCE MAX MEMORY TO FORCE EMPTY BUFFERS
-					maxMemory = maxMemory * 90 / 100;
-					OLogManager.instance().warn(OMMapManager.class, "Memory mapping error, try to reduce max memory to %d and retry...", e,
-							maxMemory);
-				}
-			} while (entry == null && maxMemory > MIN_MEMORY);
+		int p = (position + 2) * -1;
 
-			if (entry == null || !entry.isValid())
-				throw new OIOException("You cannot access to the file portion " + iBeginOffset + "-" + iBeginOffset + iSize + " bytes");
+		// CHECK IF THERE IS A BUFFER THAT OVERLAPS
+		if (!allocIfOverlaps(iBeginOffset, iSize, fileEntries, p)) {
+			OProfiler.getInstance().updateCounter("OMMapManager.usedChannel", 1);
+			return null;
+		}
 
-			totalMemory += bufferSize;
-			bufferPoolLRU.add(entry);
+		final int bufferSize = computeBestEntrySize(iFile, iBeginOffset, iSize, iForce, fileEntries, p);
 
-			p = (position + 2) * -1;
-			if (p < 0)
-				p = 0;
+		if (totalMemory + bufferSize > maxMemory
+				&& (iStrategy == ALLOC_STRATEGY.MMAP_ONLY_AVAIL_POOL || iOperationType == OPERATION_TYPE.READ
+						&& iStrategy == ALLOC_STRATEGY.MMAP_WRITE_ALWAYS_READ_IF_AVAIL_POOL)) {
+			OProfiler.getInstance().updateCounter("OMMapManager.usedChannel", 1);
+			return null;
+		}
 
-			if (fileEntries == null) {
-				// IN CASE THE CLEAN HAS REMOVED THE LIST
-				fileEntries = new ArrayList<OMMapBufferEntry>();
-				bufferPoolPerFile.put(iFile, fileEntries);
+		OMMapBufferEntry entry = null;
+		// FREE LESS-USED BUFFERS UNTIL THE FREE-MEMORY IS DOWN THE CONFIGURED MAX LIMIT
+		do {
+			if (totalMemory + bufferSize > maxMemory)
+				freeResources();
+
+			// RECOMPUTE THE POSITION AFTER REMOVING
+			fileEntries = getFileEntries(iFile);
+			position = searchEntry(fileEntries, iBeginOffset, iSize);
+			if (position > -1 && fileEntries[position].isValid())
+				// FOUND: THIS IS PRETTY STRANGE SINCE IT WASN'T FOUND!
+				return fileEntries[position];
+
+			// LOAD THE PAGE
+			try {
+				entry = mapBuffer(iFile, iBeginOffset, bufferSize);
+			} catch (IllegalArgumentException e) {
+				throw e;
+			} catch (Exception e) {
+				// REDUCE MAX MEMORY TO FORCE EMPTY BUFFERS
+				maxMemory = maxMemory * 90 / 100;
+				OLogManager.instance().warn(OMMapManager.class, "Memory mapping error, try to reduce max memory to %d and retry...", e,
+						maxMemory);
 			}
+		} while (entry == null && maxMemory > MIN_MEMORY);
 
-			fileEntries.add(p, entry);
+		if (entry == null || !entry.isValid())
+			throw new OIOException("You cannot access to the file portion " + iBeginOffset + "-" + iBeginOffset + iSize + " bytes");
 
-			if (entry != null && entry.buffer != null)
-				return entry;
+		totalMemory += bufferSize;
+		bufferPoolLRU.add(entry);
 
-		} finally {
-			if (entry != null && iOperationType == OPERATION_TYPE.WRITE)
-				entry.setDirty();
-		}
+		p = (position + 2) * -1;
+		if (p < 0)
+			p = 0;
 
-		return null;
+		// PUBLISH A NEW COPY OF THE FILE'S BLOCKS WITH THE NEW ENTRY IN THE RIGHT POSITION
+		final OMMapBufferEntry[] newEntries = new OMMapBufferEntry[fileEntries.length + 1];
+		System.arraycopy(fileEntries, 0, newEntries, 0, p);
+		newEntries[p] = entry;
+		System.arraycopy(fileEntries, p, newEntries, p + 1, fileEntries.length - p);
+		bufferPoolPerFile.put(iFile, newEntries);
+
+		return entry;
 	}
 
 	private static void freeResources() {
@@ -225,12 +296,8 @@ public class OMMapManager {
 		if (OLogManager.instance().isDebugEnabled())
 			OLogManager.instance().debug(null, "Free mmmap blocks, at least %d MB...", (totalMemory - memoryThreshold) / 1000000);
 
-		// SORT AS LRU, FIRST = MOST USED
-		Collections.sort(bufferPoolLRU, new Comparator<OMMapBufferEntry>() {
-			public int compare(final OMMapBufferEntry o1, final OMMapBufferEntry o2) {
-				return (int) (o1.counter - o2.counter);
-			}
-		});
+		// SORT AS LRU, FIRST = LESS USED
+		bufferPoolLRU = sortByUsage(bufferPoolLRU);
 
 		// REMOVE THE LESS USED ENTRY AND UPDATE THE TOTAL MEMORY
 		for (Iterator<OMMapBufferEntry> it = bufferPoolLRU.iterator(); it.hasNext();) {
@@ -244,22 +311,73 @@ public class OMMapManager {
 		}
 	}
 
-	private static OMMapBufferEntry searchBetweenLastBlocks(final OFileMMap iFile, final long iBeginOffset, final int iSize) {
-		if (!bufferPoolLRU.isEmpty()) {
-			// SEARCH IF IT'S BETWEEN THE LAST 5 BLOCK USED: THIS IS THE COMMON CASE ON MASSIVE INSERTION
-			final int min = Math.max(bufferPoolLRU.size() - 5, -1);
-			for (int i = bufferPoolLRU.size() - 1; i > min; --i) {
-				final OMMapBufferEntry e = bufferPoolLRU.get(i);
+	/**
+	 * Flushes up to iMaxBlocks dirty blocks, starting from the less used ones since they are the first candidates to be evicted. It
+	 * doesn't take the allocation lock, so it can run in background while other threads keep on using the blocks: every block is
+	 * flushed holding only its own lock, the same taken to unmap it.
+	 * 
+	 * @param iMaxBlocks
+	 *          Maximum number of blocks to flush
+	 * @return The number of blocks flushed
+	 */
+	public static int flushDirtyBlocks(final int iMaxBlocks) {
+		if (dirtyBlocks.isEmpty())
+			return 0;
 
-				if (e.isValid() && e.file == iFile && iBeginOffset >= e.beginOffset && iBeginOffset + iSize <= e.beginOffset + e.size) {
-					// FOUND: USE IT
-					OProfiler.getInstance().updateCounter("OMMapManager.reusedPageBetweenLast", 1);
-					e.counter++;
-					return e;
-				}
-			}
+		final long timer = OProfiler.getInstance().startChrono();
+
+		int flushed = 0;
+		for (OMMapBufferEntry entry : sortByUsage(dirtyBlocks)) {
+			if (flushed >= iMaxBlocks)
+				break;
+
+			if (!entry.isValid())
+				// ALREADY UNMAPPED: FLUSH() JUST REMOVES IT FROM THE DIRTY BLOCKS
+				entry.flush();
+			else if (entry.flush())
+				flushed++;
+		}
+
+		lastFlushTime = OProfiler.getInstance().stopChrono("OMMapManager.backgroundFlush", timer);
+		OProfiler.getInstance().updateCounter("OMMapManager.backgroundFlushedPages", flushed);
+
+		return flushed;
+	}
+
+	/**
+	 * Starts, restarts or stops the background flusher.
+	 * 
+	 * @param iInterval
+	 *          Interval in ms between two flushes. 0 or negative stops it
+	 */
+	public synchronized static void setFlushInterval(final int iInterval) {
+		if (flusher != null) {
+			flusher.sendShutdown();
+			flusher = null;
+		}
+
+		if (iInterval > 0) {
+			flusher = new OMMapFlusher(iInterval, OGlobalConfiguration.FILE_MMAP_FLUSH_MAX_BLOCKS.getValueAsInteger());
+			flusher.start();
 		}
-		return null;
+	}
+
+	public static int getDirtyBlocks() {
+		return dirtyBlocks.size();
+	}
+
+	public static long getDirtyBytes() {
+		return dirtyBytes.get();
+	}
+
+	static void addDirtyBlock(final OMMapBufferEntry iEntry) {
+		if (dirtyBlocks.add(iEntry))
+			dirtyBytes.addAndGet(iEntry.size);
+	}
+
+	static void removeDirtyBlock(final OMMapBufferEntry iEntry) {
+		if (dirtyBlocks.remove(iEntry))
+			dirtyBytes.addAndGet(-iEntry.size);
 	}
 
 	/**
@@ -280,16 +398,10 @@ public class OMMapManager {
 	 * Frees the mmap entry from the memory
 	 */
 	private static boolean removeEntry(final Iterator<OMMapBufferEntry> it, final OMMapBufferEntry entry) {
-		if (entry.flush()) {
+		if (entry.unmap()) {
 			// COMMITTED: REMOVE IT
 			it.remove();
-			final List<OMMapBufferEntry> file = bufferPoolPerFile.get(entry.file);
-			if (file != null) {
-				file.remove(entry);
-				if (file.isEmpty())
-					bufferPoolPerFile.remove(entry.file);
-			}
-			entry.buffer = null;
+			removeFileEntry(entry);
 
 			totalMemory -= entry.size;
 			return true;
@@ -297,19 +409,41 @@ public class OMMapManager {
 		return false;
 	}
 
+	/**
+	 * Publishes a new copy of the file's blocks without the passed entry. Must be called while holding the allocation lock.
+	 */
+	private static void removeFileEntry(final OMMapBufferEntry iEntry) {
+		final OMMapBufferEntry[] entries = bufferPoolPerFile.get(iEntry.file);
+		if (entries == null)
+			return;
+
+		for (int i = 0; i < entries.length; ++i)
+			if (entries[i] == iEntry) {
+				if (entries.length == 1)
+					bufferPoolPerFile.remove(iEntry.file);
+				else {
+					final OMMapBufferEntry[] newEntries = new OMMapBufferEntry[entries.length - 1];
+					System.arraycopy(entries, 0, newEntries, 0, i);
+					System.arraycopy(entries, i + 1, newEntries, i, entries.length - i - 1);
+					bufferPoolPerFile.put(iEntry.file, newEntries);
+				}
+				break;
+			}
+	}
+
 	/**
 	 * Removes the file.
 	 * 
 	 * @throws IOException
 	 */
 	public synchronized static void removeFile(final OFile iFile) throws IOException {
-		final List<OMMapBufferEntry> entries = bufferPoolPerFile.remove(iFile);
+		final OMMapBufferEntry[] entries = bufferPoolPerFile.remove(iFile);
 		if (entries != null) {
 			for (OMMapBufferEntry entry : entries) {
 				bufferPoolLRU.remove(entry);
+				totalMemory -= entry.size;
 				entry.close();
 			}
-			entries.clear();
 		}
 	}
 
@@ -319,18 +453,25 @@ public class OMMapManager {
 	 * @param iFile
 	 */
 	public static void flushFile(final OFile iFile) {
-		final List<OMMapBufferEntry> entries = bufferPoolPerFile.get(iFile);
+		final OMMapBufferEntry[] entries = bufferPoolPerFile.get(iFile);
 		if (entries != null)
 			for (OMMapBufferEntry entry : entries)
 				entry.flush();
 	}
 
 	public synchronized static void shutdown() {
+		if (flusher != null) {
+			flusher.sendShutdown();
+			flusher = null;
+		}
+
 		for (OMMapBufferEntry entry : new ArrayList<OMMapBufferEntry>(bufferPoolLRU)) {
 			entry.close();
 		}
 		bufferPoolLRU.clear();
 		bufferPoolPerFile.clear();
+		dirtyBlocks.clear();
+		dirtyBytes.set(0);
 		totalMemory = 0;
 	}
 
@@ -366,7 +507,7 @@ public class OMMapManager {
 		OMMapManager.overlapStrategy = overlapStrategy;
 	}
 
-	public static synchronized int getOverlappedBlocks() {
+	public static int getOverlappedBlocks() {
 		int count = 0;
 		for (OFile f : bufferPoolPerFile.keySet()) {
 			count += getOverlappedBlocks(f);
@@ -374,10 +515,13 @@ public class OMMapManager {
 		return count;
 	}
 
-	public static synchronized int getOverlappedBlocks(final OFile iFile) {
+	public static int getOverlappedBlocks(final OFile iFile) {
 		int count = 0;
 
-		final List<OMMapBufferEntry> blocks = bufferPoolPerFile.get(iFile);
+		final OMMapBufferEntry[] blocks = bufferPoolPerFile.get(iFile);
+		if (blocks == null)
+			return count;
+
 		long lastPos = -1;
 		for (OMMapBufferEntry block : blocks) {
 			if (lastPos > -1 && lastPos > block.beginOffset) {
@@ -391,6 +535,11 @@ public class OMMapManager {
 		return count;
 	}
 
+	private static OMMapBufferEntry[] getFileEntries(final OFileMMap iFile) {
+		final OMMapBufferEntry[] entries = bufferPoolPerFile.get(iFile);
+		return entries != null ? entries : EMPTY_ENTRIES;
+	}
+
 	private static OMMapBufferEntry mapBuffer(final OFileMMap iFile, final long iBeginOffset, final int iSize) throws IOException {
 		long timer = OProfiler.getInstance().startChrono();
 		try {
@@ -401,7 +550,7 @@ public class OMMapManager {
 	}
 
 	/**
-	 * Search for a buffer in the ordered list.
+	 * Search for a buffer in the ordered array.
 	 * 
 	 * @param fileEntries
 	 * @param iBeginOffset
@@ -409,15 +558,11 @@ public class OMMapManager {
 	 * @return negative number means not found. The position to insert is the (return value +1)*-1. Zero or positive number is the
 	 *         found position.
 	 */
-	private static int searchEntry(final List<OMMapBufferEntry> fileEntries, final long iBeginOffset, final int iSize) {
-		if (fileEntries == null || fileEntries.size() == 0)
-			return -1;
-
-		int high = fileEntries.size() - 1;
-		if (high < 0)
-			// NOT FOUND
+	private static int searchEntry(final OMMapBufferEntry[] fileEntries, final long iBeginOffset, final int iSize) {
+		if (fileEntries.length == 0)
 			return -1;
 
+		int high = fileEntries.length - 1;
 		int low = 0;
 		int mid = -1;
 
@@ -426,12 +571,12 @@ public class OMMapManager {
 
 		while (low <= high) {
 			mid = (low + high) >>> 1;
-			e = fileEntries.get(mid);
+			e = fileEntries[mid];
 
 			if (iBeginOffset >= e.beginOffset && iBeginOffset + iSize <= e.beginOffset + e.size) {
 				// FOUND: USE IT
 				OProfiler.getInstance().updateCounter("OMMapManager.reusedPage", 1);
-				e.counter++;
+				e.counter.incrementAndGet();
 				return mid;
 			}
 
@@ -454,7 +599,7 @@ public class OMMapManager {
 		return mid;
 	}
 
-	private static boolean allocIfOverlaps(final long iBeginOffset, final int iSize, final List<OMMapBufferEntry> fileEntries,
+	private static boolean allocIfOverlaps(final long iBeginOffset, final int iSize, final OMMapBufferEntry[] fileEntries,
 			final int p) {
 		if (overlapStrategy == OVERLAP_STRATEGY.OVERLAP)
 			return true;
@@ -463,13 +608,13 @@ public class OMMapManager {
 		OMMapBufferEntry entry = null;
 		if (p > 0) {
 			// CHECK LOWER OFFSET
-			entry = fileEntries.get(p - 1);
+			entry = fileEntries[p - 1];
 			overlaps = entry.beginOffset <= iBeginOffset && entry.beginOffset + entry.size >= iBeginOffset;
 		}
 
-		if (!overlaps && p < fileEntries.size() - 1) {
+		if (!overlaps && p < fileEntries.length - 1) {
 			// CHECK HIGHER OFFSET
-			entry = fileEntries.get(p);
+			entry = fileEntries[p];
 			overlaps = iBeginOffset + iSize >= entry.beginOffset;
 		}
 
@@ -485,11 +630,11 @@ public class OMMapManager {
 	}
 
 	private static int computeBestEntrySize(final OFileMMap iFile, final long iBeginOffset, final int iSize, final boolean iForce,
-			List<OMMapBufferEntry> fileEntries, int p) {
+			final OMMapBufferEntry[] fileEntries, final int p) {
 		int bufferSize;
-		if (p > -1 && p < fileEntries.size()) {
+		if (p > -1 && p < fileEntries.length) {
 			// GET NEXT ENTRY AS SIZE LIMIT
-			bufferSize = (int) (fileEntries.get(p).beginOffset - iBeginOffset);
+			bufferSize = (int) (fileEntries[p].beginOffset - iBeginOffset);
 			if (bufferSize < iSize)
 				// ROUND TO THE BUFFER SIZE
 				bufferSize = iSize;
@@ -17,10 +17,19 @@ package com.orientechnologies.orient.core.storage.impl.local;
 
 import java.io.File;
 import java.io.IOException;
-
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.orientechnologies.common.log.OLogManager;
+import com.orientechnologies.common.profiler.OProfiler;
+import com.orientechnologies.orient.core.compression.OCompression;
+import com.orientechnologies.orient.core.compression.OCompressionFactory;
+import com.orientechnologies.orient.core.config.OGlobalConfiguration;
 import com.orientechnologies.orient.core.config.OStorageClusterHoleConfiguration;
 import com.orientechnologies.orient.core.config.OStorageFileConfiguration;
 import com.orientechnologies.orient.core.config.OStoragePhysicalClusterConfiguration;
+import com.orientechnologies.orient.core.exception.OStorageException;
 import com.orientechnologies.orient.core.memory.OMemoryWatchDog;
 import com.orientechnologies.orient.core.serialization.OBinaryProtocol;
 import com.orientechnologies.orient.core.storage.OCluster;
@@ -40,6 +49,10 @@ import com.orientechnologies.orient.core.storage.fs.OMMapManager;
  * +----------------------+----------------------+-------------+----------------------+<br/>
  * = 15 bytes
  * </code><br/>
+ * <br/>
+ * If "storage.cluster.reservationSize" is greater than 0, the cluster reserves a block of entries at the end of the files and
+ * hands them out with an atomic counter to the threads creating records, so only the write of the entry is done under lock.
+ * Reserved entries look like deleted ones and become holes when released.
  */
 public class OClusterLocal extends OMultiFileSegment implements OCluster {
 	public static final int						RECORD_SIZE			= 15;
@@ -53,6 +66,13 @@ public class OClusterLocal extends OMultiFileSegment implements OCluster {
 
 	protected final OClusterLocalHole	holeSegment;
 
+	private volatile boolean					positionCacheEnabled;
+	private volatile OClusterLocalPositionCache	positionCache;	// COPY OF THE ENTRIES, NULL IF DISABLED
+
+	private final int									reservationSize;
+	private volatile OReservation			reservation;
+	private long											reservationMark;											// FIRST RESERVED POSITION + 1, 0 = NONE
+
 	public OClusterLocal(final OStorageLocal iStorage, final OStoragePhysicalClusterConfiguration iConfig) throws IOException {
 		super(iStorage, iConfig, DEF_EXTENSION, RECORD_SIZE);
 		id = iConfig.getId();
@@ -61,6 +81,16 @@ public class OClusterLocal extends OMultiFileSegment implements OCluster {
 				iConfig.fileType, iConfig.fileMaxSize);
 
 		holeSegment = new OClusterLocalHole(this, iStorage, iConfig.holeFile);
+
+		final String cachedClusters = OGlobalConfiguration.STORAGE_CLUSTER_POSITION_CACHE.getValueAsString();
+		if (cachedClusters != null)
+			for (String c : cachedClusters.split(","))
+				if (c.trim().equals("*") || c.trim().equalsIgnoreCase(iConfig.name))
+					positionCacheEnabled = true;
+
+		reservationSize = OGlobalConfiguration.STORAGE_CLUSTER_RESERVATION_SIZE.getValueAsInteger();
+
+		iStorage.setClusterCompression(id, OCompressionFactory.instance().getCompression(iConfig.compression));
 	}
 
 	@Override
@@ -77,6 +107,9 @@ public class OClusterLocal extends OMultiFileSegment implements OCluster {
 			files[0].writeHeaderLong(0, beginOffsetData);
 			files[0].writeHeaderLong(OBinaryProtocol.SIZE_LONG, beginOffsetData);
 
+			if (positionCacheEnabled)
+				positionCache = new OClusterLocalPositionCache();
+
 		} finally {
 			releaseExclusiveLock();
 		}
@@ -92,6 +125,14 @@ public class OClusterLocal extends OMultiFileSegment implements OCluster {
 
 			beginOffsetData = files[0].readHeaderLong(0);
 			endOffsetData = files[0].readHeaderLong(OBinaryProtocol.SIZE_LONG);
+			reservationMark = files[0].readHeaderLong(OBinaryProtocol.SIZE_LONG * 2);
+
+			if (reservationMark > 0)
+				// NOT CLOSED PROPERLY: THE ENTRIES RESERVED BUT NEVER USED ARE LOST
+				recoverReservations();
+
+			if (positionCacheEnabled)
+				loadPositionCache();
 
 		} finally {
 			releaseExclusiveLock();
@@ -100,11 +141,18 @@ public class OClusterLocal extends OMultiFileSegment implements OCluster {
 
 	@Override
 	public void close() throws IOException {
+		if (isWaitingForOpening())
+			// NEVER OPENED
+			return;
+
 		acquireExclusiveLock();
 		try {
 
+			releaseReservations();
+
 			super.close();
 			holeSegment.close();
+			positionCache = null;
 
 		} finally {
 			releaseExclusiveLock();
@@ -113,6 +161,7 @@ public class OClusterLocal extends OMultiFileSegment implements OCluster {
 
 	@Override
 	public void delete() throws IOException {
+		checkForOpening();
 		acquireExclusiveLock();
 		try {
 
@@ -123,6 +172,7 @@ public class OClusterLocal extends OMultiFileSegment implements OCluster {
 			}
 			files = null;
 			holeSegment.delete();
+			positionCache = null;
 
 		} finally {
 			releaseExclusiveLock();
@@ -131,6 +181,7 @@ public class OClusterLocal extends OMultiFileSegment implements OCluster {
 
 	@Override
 	public void truncate() throws IOException {
+		checkForOpening();
 		acquireExclusiveLock();
 		try {
 
@@ -149,6 +200,11 @@ public class OClusterLocal extends OMultiFileSegment implements OCluster {
 
 			super.truncate();
 			holeSegment.truncate();
+			if (positionCache != null)
+				positionCache.clear();
+
+			reservation = null;
+			setReservationMark(0);
 
 		} finally {
 			releaseExclusiveLock();
@@ -159,11 +215,17 @@ public class OClusterLocal extends OMultiFileSegment implements OCluster {
 		if (iAttribute == null)
 			throw new IllegalArgumentException("attribute is null");
 
+		checkForOpening();
+
 		final String stringValue = iValue != null ? iValue.toString() : null;
 
 		switch (iAttribute) {
 		case NAME:
 			setNameInternal(stringValue);
+			break;
+		case COMPRESSION:
+			setCompressionInternal(stringValue);
+			break;
 		}
 
 	}
@@ -174,12 +236,15 @@ public class OClusterLocal extends OMultiFileSegment implements OCluster {
 	 * @throws IOException
 	 */
 	public OPhysicalPosition getPhysicalPosition(long iPosition, final OPhysicalPosition iPPosition) throws IOException {
-		iPosition = iPosition * RECORD_SIZE;
-
+		checkForOpening();
 		acquireSharedLock();
 		try {
 
-			final long[] pos = getRelativePosition(iPosition);
+			final OClusterLocalPositionCache cache = positionCache;
+			if (cache != null && cache.get(iPosition, iPPosition) != null)
+				return iPPosition;
+
+			final long[] pos = getRelativePosition(iPosition * RECORD_SIZE);
 
 			final OFile file = files[(int) pos[0]];
 			long p = pos[1];
@@ -202,12 +267,11 @@ public class OClusterLocal extends OMultiFileSegment implements OCluster {
 	 */
 	public void setPhysicalPosition(long iPosition, final int iDataId, final long iDataPosition, final byte iRecordType, int iVersion)
 			throws IOException {
-		iPosition = iPosition * RECORD_SIZE;
-
+		checkForOpening();
 		acquireExclusiveLock();
 		try {
 
-			final long[] pos = getRelativePosition(iPosition);
+			final long[] pos = getRelativePosition(iPosition * RECORD_SIZE);
 
 			final OFile file = files[(int) pos[0]];
 			long p = pos[1];
@@ -217,6 +281,8 @@ public class OClusterLocal extends OMultiFileSegment implements OCluster {
 			file.writeByte(p += OBinaryProtocol.SIZE_LONG, iRecordType);
 			file.writeInt(p += OBinaryProtocol.SIZE_BYTE, iVersion);
 
+			updatePositionCache(iPosition);
+
 		} finally {
 			releaseExclusiveLock();
 		}
@@ -228,49 +294,52 @@ public class OClusterLocal extends OMultiFileSegment implements OCluster {
 	 * @throws IOException
 	 */
 	public void setPhysicalPosition(long iPosition, final long iDataPosition) throws IOException {
-		iPosition = iPosition * RECORD_SIZE;
-
+		checkForOpening();
 		acquireExclusiveLock();
 		try {
 
-			final long[] pos = getRelativePosition(iPosition);
+			final long[] pos = getRelativePosition(iPosition * RECORD_SIZE);
 
 			final OFile file = files[(int) pos[0]];
 			long p = pos[1];
 
 			file.writeLong(p += OBinaryProtocol.SIZE_SHORT, iDataPosition);
 
+			updatePositionCache(iPosition);
+
 		} finally {
 			releaseExclusiveLock();
 		}
 	}
 
 	public void updateVersion(long iPosition, final int iVersion) throws IOException {
-		iPosition = iPosition * RECORD_SIZE;
-
+		checkForOpening();
 		acquireExclusiveLock();
 		try {
 
-			final long[] pos = getRelativePosition(iPosition);
+			final long[] pos = getRelativePosition(iPosition * RECORD_SIZE);
 
 			files[(int) pos[0]].writeInt(pos[1] + OBinaryProtocol.SIZE_SHORT + OBinaryProtocol.SIZE_LONG + OBinaryProtocol.SIZE_BYTE,
 					iVersion);
 
+			updatePositionCache(iPosition);
+
 		} finally {
 			releaseExclusiveLock();
 		}
 	}
 
 	public void updateRecordType(long iPosition, final byte iRecordType) throws IOException {
-		iPosition = iPosition * RECORD_SIZE;
-
+		checkForOpening();
 		acquireExclusiveLock();
 		try {
 
-			final long[] pos = getRelativePosition(iPosition);
+			final long[] pos = getRelativePosition(iPosition * RECORD_SIZE);
 
 			files[(int) pos[0]].writeByte(pos[1] + OBinaryProtocol.SIZE_SHORT + OBinaryProtocol.SIZE_LONG, iRecordType);
 
+			updatePositionCache(iPosition);
+
 		} finally {
 			releaseExclusiveLock();
 		}
@@ -284,6 +353,7 @@ public class OClusterLocal extends OMultiFileSegment implements OCluster {
 	public void removePhysicalPosition(final long iPosition, final OPhysicalPosition iPPosition) throws IOException {
 		final long position = iPosition * RECORD_SIZE;
 
+		checkForOpening();
 		acquireExclusiveLock();
 		try {
 
@@ -302,6 +372,7 @@ public class OClusterLocal extends OMultiFileSegment implements OCluster {
 			// SET VERSION = -1
 			file.writeInt(p, -1);
 
+			updatePositionCache(iPosition);
 			updateBoundsAfterDeletion(iPosition);
 
 		} finally {
@@ -310,6 +381,7 @@ public class OClusterLocal extends OMultiFileSegment implements OCluster {
 	}
 
 	public boolean removeHole(final long iPosition) throws IOException {
+		checkForOpening();
 		acquireExclusiveLock();
 		try {
 
@@ -326,16 +398,94 @@ public class OClusterLocal extends OMultiFileSegment implements OCluster {
 	 * @throws IOException
 	 */
 	public long addPhysicalPosition(final int iDataSegmentId, final long iPosition, final byte iRecordType) throws IOException {
+		return addPhysicalPosition(iDataSegmentId, iPosition, iRecordType, true);
+	}
+
+	/**
+	 * Adds a new entry at the end of the cluster without reusing the holes. Used by bulk loads.
+	 * 
+	 * @throws IOException
+	 */
+	public long appendPhysicalPosition(final int iDataSegmentId, final long iPosition, final byte iRecordType) throws IOException {
+		return addPhysicalPosition(iDataSegmentId, iPosition, iRecordType, false);
+	}
+
+	/**
+	 * Makes the entry at iPosition usable to restore a record at the same position it had in the original cluster. If the entry is
+	 * a hole it's removed from the hole segment, if it's beyond the end of the cluster the cluster is extended and the entries in
+	 * the middle become holes. Used by restores.
+	 *
+	 * @return The current content of the entry: version -1 if the entry was free
+	 * @throws IOException
+	 */
+	public OPhysicalPosition restorePhysicalPosition(final long iPosition, final OPhysicalPosition iPPosition) throws IOException {
+		checkForOpening();
+		acquireExclusiveLock();
+		try {
+
+			final long total = getFilledUpTo() / RECORD_SIZE;
+			if (iPosition < total) {
+				getPhysicalPosition(iPosition, iPPosition);
+				if (iPPosition.version == -1) {
+					// REUSE THE HOLE
+					holeSegment.removeEntryWithPosition(iPosition * RECORD_SIZE);
+					updateBoundsAfterInsertion(iPosition);
+				}
+				return iPPosition;
+			}
+
+			for (long position = total; position <= iPosition; ++position) {
+				final long[] pos = allocateSpace(RECORD_SIZE);
+
+				final OFile file = files[(int) pos[0]];
+				long p = pos[1];
+
+				file.writeShort(p, (short) -1);
+				file.writeLong(p += OBinaryProtocol.SIZE_SHORT, -1);
+				file.writeByte(p += OBinaryProtocol.SIZE_LONG, (byte) 0);
+				file.writeInt(p += OBinaryProtocol.SIZE_BYTE, -1);
+
+				if (position < iPosition)
+					// ENTRY IN THE MIDDLE: MARK IT AS HOLE
+					holeSegment.pushPosition(getAbsolutePosition(pos));
+
+				updatePositionCache(position);
+			}
+
+			updateBoundsAfterInsertion(iPosition);
+
+			iPPosition.dataSegmentId = -1;
+			iPPosition.dataChunkPosition = -1;
+			iPPosition.type = 0;
+			iPPosition.version = -1;
+			return iPPosition;
+
+		} finally {
+			releaseExclusiveLock();
+		}
+	}
+
+	private long addPhysicalPosition(final int iDataSegmentId, final long iPosition, final byte iRecordType,
+			final boolean iReuseHoles) throws IOException {
+		checkForOpening();
+
+		// NO HOLES TO REUSE: TAKE THE NEXT RESERVED ENTRY BEFORE LOCKING, THE LOCK IS NEEDED ONLY TO WRITE IT
+		final long reserved = iReuseHoles && reservationSize > 0 && holeSegment.getHoles() == 0 ? nextReservedPosition() : -1;
+
 		acquireExclusiveLock();
 		try {
 
-			long offset = holeSegment.popLastEntryPosition();
+			long offset = reserved > -1 ? reserved * RECORD_SIZE : iReuseHoles ? holeSegment.popLastEntryPosition() : -1;
 
 			final long[] pos;
 			if (offset > -1)
-				// REUSE THE HOLE
+				// REUSE THE HOLE OR THE RESERVED ENTRY
 				pos = getRelativePosition(offset);
-			else {
+			else if (iReuseHoles && reservationSize > 0) {
+				// THE HOLES HAVE BEEN TAKEN BY OTHER THREADS
+				offset = nextReservedPosition() * RECORD_SIZE;
+				pos = getRelativePosition(offset);
+			} else {
 				// NO HOLES FOUND: ALLOCATE MORE SPACE
 				pos = allocateSpace(RECORD_SIZE);
 				offset = getAbsolutePosition(pos);
@@ -350,6 +500,7 @@ public class OClusterLocal extends OMultiFileSegment implements OCluster {
 
 			final long returnedPosition = offset / RECORD_SIZE;
 
+			updatePositionCache(returnedPosition);
 			updateBoundsAfterInsertion(returnedPosition);
 
 			return returnedPosition;
@@ -360,6 +511,7 @@ public class OClusterLocal extends OMultiFileSegment implements OCluster {
 	}
 
 	public long getFirstEntryPosition() {
+		checkForOpening();
 		acquireSharedLock();
 		try {
 
@@ -374,6 +526,7 @@ public class OClusterLocal extends OMultiFileSegment implements OCluster {
 	 * Returns the endOffsetData value if it's not equals to the last one, otherwise the total entries.
 	 */
 	public long getLastEntryPosition() {
+		checkForOpening();
 		acquireSharedLock();
 		try {
 
@@ -385,10 +538,11 @@ public class OClusterLocal extends OMultiFileSegment implements OCluster {
 	}
 
 	public long getEntries() {
+		checkForOpening();
 		acquireSharedLock();
 		try {
 
-			return getFilledUpTo() / RECORD_SIZE - holeSegment.getHoles();
+			return getFilledUpTo() / RECORD_SIZE - holeSegment.getHoles() - getReservedEntries();
 
 		} finally {
 			releaseSharedLock();
@@ -409,6 +563,7 @@ public class OClusterLocal extends OMultiFileSegment implements OCluster {
 
 	@Override
 	public long getSize() {
+		checkForOpening();
 		acquireSharedLock();
 		try {
 
@@ -425,6 +580,7 @@ public class OClusterLocal extends OMultiFileSegment implements OCluster {
 	}
 
 	public void lock() {
+		checkForOpening();
 		acquireSharedLock();
 	}
 
@@ -452,6 +608,7 @@ public class OClusterLocal extends OMultiFileSegment implements OCluster {
 	private void setNameInternal(String iNewName) {
 		if (storage.getClusterIdByName(iNewName) > -1)
 			throw new IllegalArgumentException("Cluster with name '" + iNewName + "' already exists");
+		checkForOpening();
 		acquireExclusiveLock();
 		try {
 			for (int i = 0; i < files.length; i++) {
@@ -483,6 +640,225 @@ public class OClusterLocal extends OMultiFileSegment implements OCluster {
 
 	}
 
+	/**
+	 * Changes the codec used to compress the records of the cluster in the data segments. Since the codec is not stored with raw
+	 * records it can be changed only when the cluster is empty.
+	 */
+	private void setCompressionInternal(final String iCompression) throws IOException {
+		// CHECK THE CODEC EXISTS
+		final OCompression compression = OCompressionFactory.instance().getCompression(iCompression);
+
+		checkForOpening();
+		acquireExclusiveLock();
+		try {
+			if (getEntries() > 0)
+				throw new OStorageException("Cannot change the compression of cluster '" + name + "' because it is not empty");
+
+			((OStoragePhysicalClusterConfiguration) config).compression = compression != null ? compression.getName() : null;
+			storage.getConfiguration().update();
+			storage.setClusterCompression(id, compression);
+		} finally {
+			releaseExclusiveLock();
+		}
+	}
+
+	public boolean isPositionCacheEnabled() {
+		return positionCacheEnabled;
+	}
+
+	/**
+	 * Keeps a copy of the cluster entries in memory to resolve the record positions without reading the cluster file. The copy is
+	 * loaded immediately and it's kept in sync by the changes.
+	 * 
+	 * @see OGlobalConfiguration#STORAGE_CLUSTER_POSITION_CACHE
+	 */
+	public void setPositionCacheEnabled(final boolean iEnabled) throws IOException {
+		checkForOpening();
+		acquireExclusiveLock();
+		try {
+
+			positionCacheEnabled = iEnabled;
+			if (!iEnabled)
+				positionCache = null;
+			else if (positionCache == null && files != null)
+				loadPositionCache();
+
+		} finally {
+			releaseExclusiveLock();
+		}
+	}
+
+	/**
+	 * Returns the bytes of heap used by the position cache, 0 if disabled.
+	 */
+	public long getPositionCacheMemory() {
+		final OClusterLocalPositionCache cache = positionCache;
+		return cache != null ? cache.getMemoryUsed() : 0;
+	}
+
+	/**
+	 * Reads all the entries of the cluster in the position cache. Must be called under exclusive lock.
+	 */
+	private void loadPositionCache() throws IOException {
+		final long timer = OProfiler.getInstance().startChrono();
+
+		final OClusterLocalPositionCache cache = new OClusterLocalPositionCache();
+		final long total = getTotalEntries();
+		for (long i = 0; i < total; ++i)
+			readPositionCacheEntry(cache, i);
+		positionCache = cache;
+
+		OProfiler.getInstance().stopChrono("storage." + storage.getName() + ".cluster.loadPositionCache", timer);
+	}
+
+	/**
+	 * Copies the entry from the cluster file to the position cache, if enabled. Must be called under exclusive lock.
+	 */
+	private void updatePositionCache(final long iPosition) throws IOException {
+		if (positionCache != null)
+			readPositionCacheEntry(positionCache, iPosition);
+	}
+
+	private void readPositionCacheEntry(final OClusterLocalPositionCache iCache, final long iPosition) throws IOException {
+		final long[] pos = getRelativePosition(iPosition * RECORD_SIZE);
+
+		final OFile file = files[(int) pos[0]];
+		long p = pos[1];
+
+		iCache.set(iPosition, file.readShort(p), file.readLong(p += OBinaryProtocol.SIZE_SHORT),
+				file.readByte(p += OBinaryProtocol.SIZE_LONG), file.readInt(p += OBinaryProtocol.SIZE_BYTE));
+	}
+
+	/**
+	 * Returns the number of entries in the cluster files, holes included. Unlike {@link #getFilledUpTo()} doesn't check the opening,
+	 * so it can be called while the segment is opening.
+	 */
+	private long getTotalEntries() {
+		long filled = 0;
+		for (OFile file : files)
+			filled += file.getFilledUpTo();
+		return filled / RECORD_SIZE;
+	}
+
+	/**
+	 * Returns the number of entries reserved and not handed out yet.
+	 */
+	public long getReservedEntries() {
+		final OReservation current = reservation;
+		return current != null ? current.getRemaining() : 0;
+	}
+
+	/**
+	 * Releases the entries reserved and not handed out yet: they become holes. Called on close.
+	 */
+	public void releaseReservations() throws IOException {
+		acquireExclusiveLock();
+		try {
+
+			final OReservation current = reservation;
+			if (current != null) {
+				// MOVE THE COUNTER TO THE END, SO THE FREE ENTRIES ARE NOT HANDED OUT ANYMORE
+				for (long position = current.next.getAndSet(current.end); position < current.end; ++position)
+					holeSegment.pushPosition(position * RECORD_SIZE);
+				reservation = null;
+			}
+			setReservationMark(0);
+
+		} finally {
+			releaseExclusiveLock();
+		}
+	}
+
+	/**
+	 * Returns the next reserved entry. It doesn't lock the cluster unless the reserved entries are exhausted and a new block must be
+	 * reserved.
+	 */
+	private long nextReservedPosition() throws IOException {
+		while (true) {
+			final OReservation current = reservation;
+			if (current != null) {
+				final long position = current.next.getAndIncrement();
+				if (position < current.end)
+					return position;
+			}
+
+			acquireExclusiveLock();
+			try {
+
+				if (reservation == current)
+					// NOBODY RESERVED A NEW BLOCK IN THE MEANTIME
+					reservation = reservePositions(reservationSize);
+
+			} finally {
+				releaseExclusiveLock();
+			}
+		}
+	}
+
+	/**
+	 * Appends iEntries free entries at the end of the cluster growing the files only once. Must be called under exclusive lock.
+	 */
+	private OReservation reservePositions(final int iEntries) throws IOException {
+		final long timer = OProfiler.getInstance().startChrono();
+
+		final long begin = getTotalEntries();
+		if (reservationMark == 0)
+			setReservationMark(begin + 1);
+
+		for (long position = begin; position < begin + iEntries; ++position) {
+			final long[] pos = allocateSpace(RECORD_SIZE);
+
+			final OFile file = files[(int) pos[0]];
+			long p = pos[1];
+
+			file.writeShort(p, (short) -1);
+			file.writeLong(p += OBinaryProtocol.SIZE_SHORT, -1);
+			file.writeByte(p += OBinaryProtocol.SIZE_LONG, (byte) 0);
+			file.writeInt(p += OBinaryProtocol.SIZE_BYTE, -1);
+
+			updatePositionCache(position);
+		}
+
+		OProfiler.getInstance().stopChrono("storage." + storage.getName() + ".cluster.reservePositions", timer);
+
+		return new OReservation(begin, begin + iEntries);
+	}
+
+	private void setReservationMark(final long iMark) throws IOException {
+		if (reservationMark == iMark)
+			return;
+
+		reservationMark = iMark;
+		files[0].writeHeaderLong(OBinaryProtocol.SIZE_LONG * 2, reservationMark);
+	}
+
+	/**
+	 * Pushes as holes the entries reserved before a crash and never used: they are free but are not in the hole segment.
+	 */
+	private void recoverReservations() throws IOException {
+		final Set<Long> holes = new HashSet<Long>();
+		for (int i = 0; i < holeSegment.getHoles(); ++i)
+			holes.add(holeSegment.getEntryPosition(i));
+
+		long recovered = 0;
+		final long total = getTotalEntries();
+		for (long position = reservationMark - 1; position < total; ++position) {
+			final long[] pos = getRelativePosition(position * RECORD_SIZE);
+			final OFile file = files[(int) pos[0]];
+
+			if (file.readShort(pos[1]) == -1
+					&& file.readInt(pos[1] + OBinaryProtocol.SIZE_SHORT + OBinaryProtocol.SIZE_LONG + OBinaryProtocol.SIZE_BYTE) == -1
+					&& !holes.contains(position * RECORD_SIZE)) {
+				holeSegment.pushPosition(position * RECORD_SIZE);
+				recovered++;
+			}
+		}
+
+		setReservationMark(0);
+
+		OLogManager.instance().info(this, "Recovered %d reserved entries in cluster '%s'", recovered, name);
+	}
+
 	protected void updateBoundsAfterInsertion(final long iPosition) throws IOException {
 		if (iPosition < beginOffsetData || beginOffsetData == -1) {
 			// UPDATE END OF DATA
@@ -544,4 +920,21 @@ public class OClusterLocal extends OMultiFileSegment implements OCluster {
 			files[0].writeHeaderLong(OBinaryProtocol.SIZE_LONG, endOffsetData);
 		}
 	}
+
+	/**
+	 * Block of reserved entries [next, end). The counter can go beyond the end when the block is exhausted.
+	 */
+	private static final class OReservation {
+		private final AtomicLong	next;
+		private final long				end;
+
+		private OReservation(final long iBegin, final long iEnd) {
+			next = new AtomicLong(iBegin);
+			end = iEnd;
+		}
+
+		private long getRemaining() {
+			return Math.max(end - next.get(), 0);
+		}
+	}
 }
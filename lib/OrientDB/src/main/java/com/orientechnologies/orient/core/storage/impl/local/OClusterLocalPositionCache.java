@@ -0,0 +1,118 @@
+/*
+ * Copyright 1999-2010 Luca Garulli (l.garulli--at--orientechnologies.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.orientechnologies.orient.core.storage.impl.local;
+
+import com.orientechnologies.orient.core.storage.OPhysicalPosition;
+
+/**
+ * In-memory copy of the entries of a physical cluster, stored in primitive arrays allocated in chunks, so resolving a record
+ * position costs an array access instead of reading the entry from the cluster file. Access must be synchronized by the cluster.
+ * 
+ * @see OClusterLocal#setPositionCacheEnabled(boolean)
+ */
+public class OClusterLocalPositionCache {
+	private static final int	CHUNK_BITS	= 12;
+	private static final int	CHUNK_SIZE	= 1 << CHUNK_BITS;
+	private static final int	CHUNK_MASK	= CHUNK_SIZE - 1;
+
+	private short[][]					dataSegments	= new short[0][];
+	private long[][]					dataOffsets		= new long[0][];
+	private byte[][]					types					= new byte[0][];
+	private int[][]						versions			= new int[0][];
+	private long							size;
+
+	/**
+	 * Fills the entry with the cached values.
+	 * 
+	 * @return The entry received or null if the position is not cached
+	 */
+	public OPhysicalPosition get(final long iPosition, final OPhysicalPosition iPPosition) {
+		if (iPosition < 0 || iPosition >= size)
+			return null;
+
+		final int chunk = (int) (iPosition >>> CHUNK_BITS);
+		final int index = (int) (iPosition & CHUNK_MASK);
+
+		iPPosition.dataSegmentId = dataSegments[chunk][index];
+		iPPosition.dataChunkPosition = dataOffsets[chunk][index];
+		iPPosition.type = types[chunk][index];
+		iPPosition.version = versions[chunk][index];
+		return iPPosition;
+	}
+
+	/**
+	 * Sets the entry, extending the cache if the position is beyond its end.
+	 */
+	public void set(final long iPosition, final int iDataSegmentId, final long iDataOffset, final byte iType, final int iVersion) {
+		if (iPosition >= size)
+			resize(iPosition + 1);
+
+		final int chunk = (int) (iPosition >>> CHUNK_BITS);
+		final int index = (int) (iPosition & CHUNK_MASK);
+
+		dataSegments[chunk][index] = (short) iDataSegmentId;
+		dataOffsets[chunk][index] = iDataOffset;
+		types[chunk][index] = iType;
+		versions[chunk][index] = iVersion;
+	}
+
+	public long getSize() {
+		return size;
+	}
+
+	/**
+	 * Returns the bytes of heap used by the cached entries.
+	 */
+	public long getMemoryUsed() {
+		return (long) dataOffsets.length * CHUNK_SIZE * OClusterLocal.RECORD_SIZE;
+	}
+
+	public void clear() {
+		dataSegments = new short[0][];
+		dataOffsets = new long[0][];
+		types = new byte[0][];
+		versions = new int[0][];
+		size = 0;
+	}
+
+	private void resize(final long iSize) {
+		final int chunks = (int) ((iSize + CHUNK_MASK) >>> CHUNK_BITS);
+		if (chunks > dataOffsets.length) {
+			final short[][] newDataSegments = new short[chunks][];
+			final long[][] newDataOffsets = new long[chunks][];
+			final byte[][] newTypes = new byte[chunks][];
+			final int[][] newVersions = new int[chunks][];
+
+			System.arraycopy(dataSegments, 0, newDataSegments, 0, dataSegments.length);
+			System.arraycopy(dataOffsets, 0, newDataOffsets, 0, dataOffsets.length);
+			System.arraycopy(types, 0, newTypes, 0, types.length);
+			System.arraycopy(versions, 0, newVersions, 0, versions.length);
+
+			for (int i = dataOffsets.length; i < chunks; ++i) {
+				newDataSegments[i] = new short[CHUNK_SIZE];
+				newDataOffsets[i] = new long[CHUNK_SIZE];
+				newTypes[i] = new byte[CHUNK_SIZE];
+				newVersions[i] = new int[CHUNK_SIZE];
+			}
+
+			dataSegments = newDataSegments;
+			dataOffsets = newDataOffsets;
+			types = newTypes;
+			versions = newVersions;
+		}
+		size = iSize;
+	}
+}
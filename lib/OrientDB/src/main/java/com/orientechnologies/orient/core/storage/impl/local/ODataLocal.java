@@ -22,9 +22,13 @@ import java.util.List;
 import com.orientechnologies.common.io.OFileUtils;
 import com.orientechnologies.common.log.OLogManager;
 import com.orientechnologies.common.profiler.OProfiler;
+import com.orientechnologies.orient.core.compression.OCompression;
+import com.orientechnologies.orient.core.compression.OCompressionFactory;
 import com.orientechnologies.orient.core.config.OGlobalConfiguration;
+import com.orientechnologies.orient.core.config.OStorageClusterConfiguration;
 import com.orientechnologies.orient.core.config.OStorageDataConfiguration;
 import com.orientechnologies.orient.core.config.OStorageDataHoleConfiguration;
+import com.orientechnologies.orient.core.config.OStoragePhysicalClusterConfiguration;
 import com.orientechnologies.orient.core.exception.OStorageException;
 import com.orientechnologies.orient.core.id.ORecordId;
 import com.orientechnologies.orient.core.serialization.OBinaryProtocol;
@@ -42,6 +46,9 @@ import com.orientechnologies.orient.core.storage.fs.OFile;
  * | 4 bytes .... | 2 bytes .... | 8 bytes .... | <RECORD SIZE> bytes. |<br/>
  * +--------------+--------------+--------------+----------------------+<br/>
  * = 14+? bytes<br/>
+ * <br/>
+ * Records of clusters with compression enabled start with 1 byte containing the id of the codec used to compress the content,
+ * or 0 if the content was stored raw because smaller than the configured threshold or not compressible.
  */
 public class ODataLocal extends OMultiFileSegment {
 	static final String							DEF_EXTENSION		= ".oda";
@@ -51,6 +58,7 @@ public class ODataLocal extends OMultiFileSegment {
 	protected int										defragMaxHoleDistance;
 	protected int										defragStrategy;
 	protected long									defStartSize;
+	protected int										compressionMinSize;
 
 	private final String						PROFILER_HOLE_FIND_CLOSER;
 	private final String						PROFILER_UPDATE_REUSED_ALL;
@@ -58,6 +66,9 @@ public class ODataLocal extends OMultiFileSegment {
 	private final String						PROFILER_UPDATE_NOT_REUSED;
 	private final String						PROFILER_MOVE_RECORD;
 	private final String						PROFILER_HOLE_HANDLE;
+	private final String						PROFILER_COMPRESSION_SAVED;
+	private final String						PROFILER_COMPACTION_MOVED;
+	private final String						PROFILER_COMPACTION_TRUNCATED;
 
 	public ODataLocal(final OStorageLocal iStorage, final OStorageDataConfiguration iConfig, final int iId) throws IOException {
 		super(iStorage, iConfig, DEF_EXTENSION, 0);
@@ -70,6 +81,7 @@ public class ODataLocal extends OMultiFileSegment {
 		defStartSize = OFileUtils.getSizeAsNumber(iConfig.fileStartSize);
 		defragMaxHoleDistance = OGlobalConfiguration.FILE_DEFRAG_HOLE_MAX_DISTANCE.getValueAsInteger();
 		defragStrategy = OGlobalConfiguration.FILE_DEFRAG_STRATEGY.getValueAsInteger();
+		compressionMinSize = OGlobalConfiguration.STORAGE_COMPRESSION_MIN_SIZE.getValueAsInteger();
 
 		PROFILER_HOLE_HANDLE = "storage." + storage.getName() + ".data.handleHole";
 		PROFILER_HOLE_FIND_CLOSER = "storage." + storage.getName() + ".data.findClosestHole";
@@ -77,6 +89,9 @@ public class ODataLocal extends OMultiFileSegment {
 		PROFILER_UPDATE_REUSED_PARTIAL = "storage." + storage.getName() + ".data.update.reusedPartial";
 		PROFILER_UPDATE_NOT_REUSED = "storage." + storage.getName() + ".data.update.notReused";
 		PROFILER_MOVE_RECORD = "storage." + storage.getName() + ".data.move";
+		PROFILER_COMPRESSION_SAVED = "storage." + storage.getName() + ".data.compression.savedBytes";
+		PROFILER_COMPACTION_MOVED = "storage." + storage.getName() + ".data.compaction.movedBytes";
+		PROFILER_COMPACTION_TRUNCATED = "storage." + storage.getName() + ".data.compaction.truncatedBytes";
 	}
 
 	@Override
@@ -107,6 +122,10 @@ public class ODataLocal extends OMultiFileSegment {
 
 	@Override
 	public void close() throws IOException {
+		if (isWaitingForOpening())
+			// NEVER OPENED
+			return;
+
 		acquireExclusiveLock();
 		try {
 
@@ -127,15 +146,33 @@ public class ODataLocal extends OMultiFileSegment {
 	 * @throws IOException
 	 */
 	public long addRecord(final ORecordId iRid, final byte[] iContent) throws IOException {
+		return addRecord(iRid, iContent, true);
+	}
+
+	/**
+	 * Appends the record content at the end of the segment without searching for a hole to reuse. Used by bulk loads.
+	 * 
+	 * @return The record offset.
+	 * @throws IOException
+	 */
+	public long appendRecord(final ORecordId iRid, final byte[] iContent) throws IOException {
+		return addRecord(iRid, iContent, false);
+	}
+
+	private long addRecord(final ORecordId iRid, byte[] iContent, final boolean iReuseHoles) throws IOException {
 		if (iContent.length == 0)
 			// AVOID UNUSEFUL CREATION OF EMPTY RECORD: IT WILL BE CREATED AT FIRST UPDATE
 			return -1;
 
+		// COMPRESS OUTSIDE THE LOCK
+		iContent = compress(iRid.clusterId, iContent);
+
+		checkForOpening();
 		acquireExclusiveLock();
 		try {
 			final int recordSize = iContent.length + RECORD_FIX_SIZE;
 
-			final long[] newFilePosition = getFreeSpace(recordSize);
+			final long[] newFilePosition = iReuseHoles ? getFreeSpace(recordSize) : allocateSpace(recordSize);
 			writeRecord(newFilePosition, iRid.clusterId, iRid.clusterPosition, iContent);
 			return getAbsolutePosition(newFilePosition);
 
@@ -153,6 +190,7 @@ public class ODataLocal extends OMultiFileSegment {
 		if (iPosition == -1)
 			return null;
 
+		checkForOpening();
 		acquireSharedLock();
 		try {
 
@@ -178,7 +216,7 @@ public class ODataLocal extends OMultiFileSegment {
 
 			final byte[] content = new byte[recordSize];
 			file.read(pos[1] + RECORD_FIX_SIZE, content, recordSize);
-			return content;
+			return uncompress(file.readShort(pos[1] + OBinaryProtocol.SIZE_INT), content);
 
 		} finally {
 			releaseSharedLock();
@@ -191,6 +229,7 @@ public class ODataLocal extends OMultiFileSegment {
 	 * @throws IOException
 	 */
 	public int getRecordSize(final long iPosition) throws IOException {
+		checkForOpening();
 		acquireSharedLock();
 		try {
 
@@ -205,6 +244,7 @@ public class ODataLocal extends OMultiFileSegment {
 	}
 
 	public ORecordId getRecordRid(final long iPosition) throws IOException {
+		checkForOpening();
 		acquireSharedLock();
 		try {
 
@@ -229,7 +269,11 @@ public class ODataLocal extends OMultiFileSegment {
 	 * @return The new record offset or the same received as parameter is the old space was reused.
 	 * @throws IOException
 	 */
-	public long setRecord(final long iPosition, final ORecordId iRid, final byte[] iContent) throws IOException {
+	public long setRecord(final long iPosition, final ORecordId iRid, byte[] iContent) throws IOException {
+		// COMPRESS OUTSIDE THE LOCK
+		iContent = compress(iRid.clusterId, iContent);
+
+		checkForOpening();
 		acquireExclusiveLock();
 		try {
 
@@ -276,6 +320,7 @@ public class ODataLocal extends OMultiFileSegment {
 		if (iPosition == -1)
 			return 0;
 
+		checkForOpening();
 		acquireExclusiveLock();
 		try {
 
@@ -299,6 +344,7 @@ public class ODataLocal extends OMultiFileSegment {
 	 * @throws IOException
 	 */
 	public long getHoles() {
+		checkForOpening();
 		acquireSharedLock();
 		try {
 
@@ -317,6 +363,7 @@ public class ODataLocal extends OMultiFileSegment {
 	public List<ODataHoleInfo> getHolesList() {
 		final List<ODataHoleInfo> holes = new ArrayList<ODataHoleInfo>();
 
+		checkForOpening();
 		acquireSharedLock();
 		try {
 
@@ -333,11 +380,183 @@ public class ODataLocal extends OMultiFileSegment {
 		return holes;
 	}
 
+	/**
+	 * Returns the total size in bytes of the holes.
+	 */
+	public long getHolesSize() {
+		checkForOpening();
+		acquireSharedLock();
+		try {
+
+			return holeSegment.getHolesSize();
+
+		} finally {
+			releaseSharedLock();
+		}
+	}
+
+	/**
+	 * Returns the fragmentation of the data segment as the ratio between the space wasted by holes and the space used.
+	 * 
+	 * @return A value between 0 (no holes) and 1
+	 */
+	public float getFragmentation() {
+		checkForOpening();
+		acquireSharedLock();
+		try {
+
+			final long used = getFilledUpTo();
+			return used > 0 ? (float) holeSegment.getHolesSize() / used : 0f;
+
+		} finally {
+			releaseSharedLock();
+		}
+	}
+
+	/**
+	 * Returns the record the next compaction step will move: the one that follows the first hole.
+	 * 
+	 * @return The record id or null if the next step will not move any record
+	 * @see #compactStep(ORecordId)
+	 */
+	public ORecordId getNextRecordToCompact() throws IOException {
+		checkForOpening();
+		acquireExclusiveLock();
+		try {
+
+			final ODataHoleInfo hole = holeSegment.getFirstHole();
+			if (hole == null)
+				return null;
+
+			final long[] pos = getRelativePosition(hole.dataOffset);
+			final OFile file = files[(int) pos[0]];
+
+			final long recordPosition = pos[1] + hole.size;
+			if (recordPosition >= file.getFilledUpTo() || holeSegment.getHoleAt(hole.dataOffset + hole.size) != null)
+				// TAIL OR CONSECUTIVE HOLES
+				return null;
+
+			return new ORecordId(file.readShort(recordPosition + OBinaryProtocol.SIZE_INT), file.readLong(recordPosition
+					+ OBinaryProtocol.SIZE_INT + OBinaryProtocol.SIZE_SHORT));
+
+		} finally {
+			releaseExclusiveLock();
+		}
+	}
+
+	/**
+	 * Executes a step of the online compaction. The first hole is pushed toward the end of its file by moving the record that
+	 * follows it at the beginning of the hole, or by merging it with the consecutive hole. A record bigger than the hole is moved to
+	 * the end of the segment instead, so that a crash never leaves the cluster pointing to a partially overwritten record. Once the hole reaches the end of the
+	 * file, the file is shrunk and the hole is removed. The caller must hold the exclusive lock of the record returned by
+	 * {@link #getNextRecordToCompact()}.
+	 * 
+	 * @param iRid
+	 *          The record locked by the caller, or null if no record was locked
+	 * @return The bytes of the moved record, 0 if no record was moved, -1 if there are no holes left
+	 */
+	public int compactStep(final ORecordId iRid) throws IOException {
+		checkForOpening();
+		acquireExclusiveLock();
+		try {
+
+			final ODataHoleInfo hole = holeSegment.getFirstHole();
+			if (hole == null)
+				return -1;
+
+			final long[] pos = getRelativePosition(hole.dataOffset);
+			final OFile file = files[(int) pos[0]];
+
+			long holeOffset = hole.dataOffset;
+			int holeSize = hole.size;
+			int moved = 0;
+
+			if (pos[1] + holeSize < file.getFilledUpTo()) {
+				final ODataHoleInfo nextHole = holeSegment.getHoleAt(holeOffset + holeSize);
+
+				if (nextHole != null) {
+					// CONSECUTIVE HOLES: MERGE THEM
+					holeSize += nextHole.size;
+					holeSegment.deleteHole(nextHole.holeOffset);
+
+				} else {
+					final long recordPosition = pos[1] + holeSize;
+
+					final int recordSize = file.readInt(recordPosition);
+					if (recordSize < 0)
+						throw new OStorageException("Found a hole not registered at position " + (holeOffset + holeSize)
+								+ " of data segment '" + name + "'. Check the database before to compact it");
+
+					final short clusterId = file.readShort(recordPosition + OBinaryProtocol.SIZE_INT);
+					final long clusterPosition = file.readLong(recordPosition + OBinaryProtocol.SIZE_INT + OBinaryProtocol.SIZE_SHORT);
+
+					if (iRid == null || iRid.clusterId != clusterId || iRid.clusterPosition != clusterPosition)
+						// THE LAYOUT IS CHANGED SINCE THE RECORD WAS LOCKED: RETRY
+						return 0;
+
+					final OCluster cluster = getOwnerCluster(clusterId, clusterPosition, holeOffset + holeSize);
+					if (cluster != null) {
+						final long timer = OProfiler.getInstance().startChrono();
+
+						final byte[] content = new byte[recordSize];
+						file.read(recordPosition + RECORD_FIX_SIZE, content, recordSize);
+
+						moved = recordSize + RECORD_FIX_SIZE;
+
+						// WRITE THE RECORD BEFORE TO UPDATE THE CLUSTER: THE OLD COPY MUST STAY VALID UNTIL THEN
+						if (moved <= holeSize) {
+							// IT FITS IN THE HOLE WITHOUT OVERWRITING ITSELF
+							writeRecord(pos, clusterId, clusterPosition, content);
+							cluster.setPhysicalPosition(clusterPosition, holeOffset);
+							holeOffset += moved;
+						} else {
+							// BIGGER THAN THE HOLE: MOVE IT TO FRESH SPACE AT THE END AND JOIN ITS OLD SPACE TO THE HOLE
+							final long[] newPos = allocateSpace(moved);
+							writeRecord(newPos, clusterId, clusterPosition, content);
+							cluster.setPhysicalPosition(clusterPosition, getAbsolutePosition(newPos));
+							holeSize += moved;
+						}
+
+						OProfiler.getInstance().stopChrono(PROFILER_MOVE_RECORD, timer);
+						OProfiler.getInstance().updateCounter(PROFILER_COMPACTION_MOVED, moved);
+					} else {
+						// NO CLUSTER POINTS TO THIS CHUNK: JOIN IT TO THE HOLE
+						OLogManager.instance().warn(this,
+								"Found orphan chunk for rid %d:%d at position %d of data segment '%s'. Its space will be reused", clusterId,
+								clusterPosition, holeOffset + holeSize, name);
+						holeSize += recordSize + RECORD_FIX_SIZE;
+					}
+				}
+			}
+
+			final long holeFilePosition = pos[1] + (holeOffset - hole.dataOffset);
+
+			if (holeFilePosition + holeSize >= file.getFilledUpTo()) {
+				// THE HOLE REACHED THE END OF THE FILE: TRUNCATE IT
+				file.shrink((int) holeFilePosition);
+				holeSegment.deleteHole(hole.holeOffset);
+
+				OProfiler.getInstance().updateCounter(PROFILER_COMPACTION_TRUNCATED, holeSize);
+			} else {
+				holeSegment.updateHole(hole, holeOffset, holeSize);
+
+				// WRITE NEGATIVE RECORD SIZE TO MARK AS DELETED
+				file.writeInt(holeFilePosition, holeSize * -1);
+			}
+
+			return moved;
+
+		} finally {
+			releaseExclusiveLock();
+		}
+	}
+
 	public int getId() {
 		return id;
 	}
 
 	public long loadVersion() throws IOException {
+		checkForOpening();
 		acquireExclusiveLock();
 		try {
 
@@ -349,6 +568,7 @@ public class ODataLocal extends OMultiFileSegment {
 	}
 
 	public void saveVersion(final long iVersion) throws IOException {
+		checkForOpening();
 		acquireExclusiveLock();
 		try {
 
@@ -360,6 +580,7 @@ public class ODataLocal extends OMultiFileSegment {
 	}
 
 	public void handleHole(final long iRecordOffset, final int iRecordSize) throws IOException {
+		checkForOpening();
 		acquireExclusiveLock();
 		try {
 
@@ -563,6 +784,81 @@ public class ODataLocal extends OMultiFileSegment {
 		file.write(iFilePosition[1] + RECORD_FIX_SIZE, iContent);
 	}
 
+	/**
+	 * Returns the cluster that points to the chunk at the data position received.
+	 * 
+	 * @return The cluster or null if the chunk is not referenced by any record
+	 */
+	private OCluster getOwnerCluster(final int iClusterId, final long iClusterPosition, final long iDataPosition)
+			throws IOException {
+		if (iClusterId < 0 || iClusterId >= storage.getConfiguration().clusters.size()
+				|| storage.getConfiguration().clusters.get(iClusterId) == null)
+			return null;
+
+		final OCluster cluster = storage.getClusterById(iClusterId);
+		if (iClusterPosition < 0 || iClusterPosition > cluster.getLastEntryPosition())
+			return null;
+
+		final OPhysicalPosition ppos = cluster.getPhysicalPosition(iClusterPosition, new OPhysicalPosition());
+		if (ppos == null || ppos.dataSegmentId != id || ppos.dataChunkPosition != iDataPosition)
+			return null;
+
+		return cluster;
+	}
+
+	/**
+	 * Returns the codec configured for the cluster or null if the records of the cluster are stored raw.
+	 */
+	protected OCompression getCompression(final int iClusterId) {
+		return storage.getClusterCompression(iClusterId);
+	}
+
+	/**
+	 * Prepares the content to store for clusters with compression enabled by prefixing the codec id. Records smaller than
+	 * "storage.compression.minSize" or not compressible are stored raw.
+	 */
+	protected byte[] compress(final int iClusterId, final byte[] iContent) {
+		if (iContent == null || iContent.length == 0)
+			return iContent;
+
+		final OCompression compression = getCompression(iClusterId);
+		if (compression == null)
+			return iContent;
+
+		final byte[] compressed = iContent.length >= compressionMinSize ? compression.compress(iContent) : null;
+
+		final byte[] content;
+		if (compressed != null) {
+			content = new byte[compressed.length + 1];
+			content[0] = compression.getId();
+			System.arraycopy(compressed, 0, content, 1, compressed.length);
+			OProfiler.getInstance().updateCounter(PROFILER_COMPRESSION_SAVED, iContent.length - compressed.length);
+		} else {
+			// RAW
+			content = new byte[iContent.length + 1];
+			System.arraycopy(iContent, 0, content, 1, iContent.length);
+		}
+		return content;
+	}
+
+	/**
+	 * Returns the original content of the record read from the data segment.
+	 */
+	protected byte[] uncompress(final int iClusterId, final byte[] iContent) {
+		if (iContent.length == 0 || getCompression(iClusterId) == null)
+			return iContent;
+
+		final byte codecId = iContent[0];
+		if (codecId == 0) {
+			// RAW
+			final byte[] content = new byte[iContent.length - 1];
+			System.arraycopy(iContent, 1, content, 0, content.length);
+			return content;
+		}
+
+		return OCompressionFactory.instance().getCompression(codecId).uncompress(iContent, 1, iContent.length - 1);
+	}
+
 	private long[] getFreeSpace(final int recordSize) throws IOException {
 		// GET THE POSITION TO RECYCLE FOLLOWING THE CONFIGURED STRATEGY IF ANY
 		final long position = holeSegment.popFirstAvailableHole(recordSize);
@@ -0,0 +1,143 @@
+/*
+ * Copyright 1999-2010 Luca Garulli (l.garulli--at--orientechnologies.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.orientechnologies.orient.core.storage.impl.local;
+
+import com.orientechnologies.common.concur.lock.OLockException;
+import com.orientechnologies.common.log.OLogManager;
+import com.orientechnologies.common.thread.OSoftThread;
+import com.orientechnologies.orient.core.Orient;
+
+/**
+ * Background thread that compacts a data segment while the database is in use. It works in slices of time executing
+ * compaction steps, then pauses to not exceed the speed limit. The thread ends when there are no holes left, the storage is
+ * closed or {@link #sendShutdown()} is called.
+ *
+ * @see OStorageLocal#compactDataSegment(int, int)
+ */
+public class ODataLocalCompactor extends OSoftThread {
+	private static final int		SLICE	= 100;
+
+	private final OStorageLocal	storage;
+	private final ODataLocal		data;
+	private final int						maxBytesPerSecond;
+	private final long					initialHolesSize;
+	private final long					beginTime;
+
+	private volatile long				movedRecords;
+	private volatile long				movedBytes;
+	private volatile boolean		completed;
+	private volatile Throwable	error;
+
+	public ODataLocalCompactor(final OStorageLocal iStorage, final ODataLocal iData, final int iMaxBytesPerSecond) {
+		super(Orient.getThreadGroup(), "OrientDB Data Compactor " + iStorage.getName() + "/" + iData.getName());
+		storage = iStorage;
+		data = iData;
+		maxBytesPerSecond = iMaxBytesPerSecond;
+		initialHolesSize = iData.getHolesSize();
+		beginTime = System.currentTimeMillis();
+	}
+
+	@Override
+	protected void execute() throws Exception {
+		final long begin = System.currentTimeMillis();
+		final long maxBytesPerSlice = maxBytesPerSecond > 0 ? (long) maxBytesPerSecond * SLICE / 1000 : Long.MAX_VALUE;
+		long bytes = 0;
+
+		try {
+			while (running && bytes < maxBytesPerSlice && System.currentTimeMillis() - begin < SLICE) {
+				final int result = storage.compactDataSegmentStep(data);
+				if (result < 0) {
+					completed = true;
+					running = false;
+					OLogManager.instance().info(this, "Compaction of data segment '%s' completed: moved %d records (%d bytes) in %dms",
+							data.getName(), movedRecords, movedBytes, System.currentTimeMillis() - beginTime);
+					return;
+				}
+
+				if (result > 0) {
+					movedRecords++;
+					movedBytes += result;
+					bytes += result;
+				}
+			}
+		} catch (OLockException e) {
+			// THE RECORD IS LOCKED BY ANOTHER THREAD: RETRY LATER
+			bytes = maxBytesPerSlice;
+		} catch (Throwable t) {
+			error = t;
+			running = false;
+			OLogManager.instance().error(this, "Error on compacting data segment '" + data.getName() + "'", t);
+			return;
+		}
+
+		// PAUSE TO RESPECT THE SPEED LIMIT
+		if (maxBytesPerSecond > 0) {
+			final long pause = bytes * 1000 / maxBytesPerSecond - (System.currentTimeMillis() - begin);
+			if (pause > 0 && !pauseCurrentThread(pause))
+				running = false;
+		}
+	}
+
+	public ODataLocal getDataSegment() {
+		return data;
+	}
+
+	/**
+	 * Returns the progress of the compaction as the fraction of the initial hole space reclaimed.
+	 *
+	 * @return A value between 0 and 1
+	 */
+	public float getProgress() {
+		if (completed || initialHolesSize == 0)
+			return 1f;
+		return Math.max(0f, 1f - (float) data.getHolesSize() / initialHolesSize);
+	}
+
+	/**
+	 * Returns the current fragmentation of the data segment.
+	 *
+	 * @see ODataLocal#getFragmentation()
+	 */
+	public float getFragmentation() {
+		return data.getFragmentation();
+	}
+
+	public long getMovedRecords() {
+		return movedRecords;
+	}
+
+	public long getMovedBytes() {
+		return movedBytes;
+	}
+
+	public long getElapsedTime() {
+		return System.currentTimeMillis() - beginTime;
+	}
+
+	/**
+	 * Returns true if all the holes have been reclaimed.
+	 */
+	public boolean isCompleted() {
+		return completed;
+	}
+
+	/**
+	 * Returns the error that stopped the compaction, if any.
+	 */
+	public Throwable getError() {
+		return error;
+	}
+}
@@ -42,6 +42,7 @@ public class ODataLocalHole extends OSingleFileSegment {
 	private static final int																		DEF_START_SIZE			= 262144;
 	private static final int																		RECORD_SIZE					= 12;
 	private int																									maxHoleSize					= -1;
+	private long																								totalHoleSize				= 0;
 
 	private final List<Integer>																	freeHoles						= new ArrayList<Integer>();
 	private final ODataHoleInfo																	cursor							= new ODataHoleInfo();
@@ -121,6 +122,8 @@ public class ODataLocalHole extends OSingleFileSegment {
 		if (maxHoleSize < iRecordSize)
 			maxHoleSize = iRecordSize;
 
+		totalHoleSize += iRecordSize;
+
 		// TO FILE
 		final long p = recycledPosition * RECORD_SIZE;
 		file.writeLong(p, iRecordOffset);
@@ -243,8 +246,10 @@ public class ODataLocalHole extends OSingleFileSegment {
 
 		if (offsetChanged)
 			iHole.dataOffset = iNewDataOffset;
-		if (sizeChanged)
+		if (sizeChanged) {
+			totalHoleSize += iNewRecordSize - iHole.size;
 			iHole.size = iNewRecordSize;
+		}
 
 		if (offsetChanged)
 			availableHolesByPosition.put(iHole, iHole);
@@ -274,6 +279,9 @@ public class ODataLocalHole extends OSingleFileSegment {
 		availableHolesBySize.remove(hole);
 		availableHolesByPosition.remove(hole);
 
+		if (hole.dataOffset > -1)
+			totalHoleSize -= hole.size;
+
 		hole.dataOffset = -1;
 		freeHoles.add(iHolePosition);
 
@@ -286,6 +294,34 @@ public class ODataLocalHole extends OSingleFileSegment {
 		return (file.getFilledUpTo() / RECORD_SIZE);
 	}
 
+	/**
+	 * Returns the total size in bytes of the available holes.
+	 */
+	public long getHolesSize() {
+		return totalHoleSize;
+	}
+
+	/**
+	 * Returns the hole with the lowest data offset.
+	 * 
+	 * @return The hole or null if there are no holes
+	 */
+	public ODataHoleInfo getFirstHole() {
+		if (availableHolesByPosition.isEmpty())
+			return null;
+		return availableHolesByPosition.firstKey();
+	}
+
+	/**
+	 * Returns the hole that starts exactly at the data offset received.
+	 * 
+	 * @return The hole or null if no hole starts at that offset
+	 */
+	public ODataHoleInfo getHoleAt(final long iDataOffset) {
+		cursor.dataOffset = iDataOffset;
+		return availableHolesByPosition.get(cursor);
+	}
+
 	private void loadHolesInMemory() throws IOException {
 		final int holes = getHoles();
 
@@ -305,6 +341,8 @@ public class ODataLocalHole extends OSingleFileSegment {
 
 				if (maxHoleSize < recordSize)
 					maxHoleSize = recordSize;
+
+				totalHoleSize += recordSize;
 			}
 		}
 	}
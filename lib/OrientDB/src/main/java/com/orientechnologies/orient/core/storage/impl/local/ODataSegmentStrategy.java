@@ -0,0 +1,31 @@
+/*
+ * Copyright 1999-2010 Luca Garulli (l.garulli--at--orientechnologies.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.orientechnologies.orient.core.storage.impl.local;
+
+import com.orientechnologies.orient.core.storage.OCluster;
+
+/**
+ * Chooses the data segment where to store new records. Implementations must be thread-safe since records are created
+ * concurrently.
+ * 
+ * @see OStorageLocal#setDataSegmentStrategy(ODataSegmentStrategy)
+ */
+public interface ODataSegmentStrategy {
+	/**
+	 * Returns the id of the data segment where to store the new record.
+	 */
+	public int assignDataSegmentId(OStorageLocal iStorage, OCluster iCluster, byte[] iContent);
+}
@@ -0,0 +1,38 @@
+/*
+ * Copyright 1999-2010 Luca Garulli (l.garulli--at--orientechnologies.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.orientechnologies.orient.core.storage.impl.local;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.orientechnologies.orient.core.storage.OCluster;
+
+/**
+ * Spreads the new records across all the data segments in turn. Placing the data segments on different disks allows to write
+ * and read the records of the same cluster in parallel.
+ */
+public class ODataSegmentStrategyRoundRobin implements ODataSegmentStrategy {
+	public static final String	NAME		= "roundRobin";
+
+	private final AtomicInteger	counter	= new AtomicInteger();
+
+	public int assignDataSegmentId(final OStorageLocal iStorage, final OCluster iCluster, final byte[] iContent) {
+		final int segments = iStorage.getDataSegments().length;
+		if (segments < 2)
+			return 0;
+
+		return (counter.getAndIncrement() & Integer.MAX_VALUE) % segments;
+	}
+}
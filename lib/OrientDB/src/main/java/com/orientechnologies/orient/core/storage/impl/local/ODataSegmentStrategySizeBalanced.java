@@ -0,0 +1,43 @@
+/*
+ * Copyright 1999-2010 Luca Garulli (l.garulli--at--orientechnologies.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.orientechnologies.orient.core.storage.impl.local;
+
+import com.orientechnologies.orient.core.storage.OCluster;
+
+/**
+ * Stores the new records in the smallest data segment, so the segments grow at the same pace even when they are added at
+ * different times. The size is the space filled in the segment files, holes included.
+ */
+public class ODataSegmentStrategySizeBalanced implements ODataSegmentStrategy {
+	public static final String	NAME	= "sizeBalanced";
+
+	public int assignDataSegmentId(final OStorageLocal iStorage, final OCluster iCluster, final byte[] iContent) {
+		final ODataLocal[] segments = iStorage.getDataSegments();
+		if (segments.length < 2)
+			return 0;
+
+		int best = 0;
+		long bestSize = Long.MAX_VALUE;
+		for (int i = 0; i < segments.length; ++i) {
+			final long size = segments[i].getFilledUpTo();
+			if (size < bestSize) {
+				best = i;
+				bestSize = size;
+			}
+		}
+		return best;
+	}
+}
@@ -15,10 +15,13 @@
  */
 package com.orientechnologies.orient.core.storage.impl.local;
 
+import java.io.File;
+import java.io.FileNotFoundException;
 import java.io.IOException;
 
 import com.orientechnologies.common.io.OFileUtils;
 import com.orientechnologies.common.log.OLogManager;
+import com.orientechnologies.common.profiler.OProfiler;
 import com.orientechnologies.orient.core.config.OStorageFileConfiguration;
 import com.orientechnologies.orient.core.config.OStorageSegmentConfiguration;
 import com.orientechnologies.orient.core.exception.ODatabaseException;
@@ -37,6 +40,7 @@ public class OMultiFileSegment extends OSegment {
 	private int															fileStartSize;
 	private int															fileMaxSize;
 	private final int												fileIncrementSize;
+	private volatile boolean								waitingForOpening;
 
 	public OMultiFileSegment(final OStorageLocal iStorage, final OStorageSegmentConfiguration iConfig, final String iFileExtension,
 			final int iRoundMaxSize) throws IOException {
@@ -62,7 +66,7 @@ public class OMultiFileSegment extends OSegment {
 			// EMPTY FILE: CREATE THE FIRST FILE BY DEFAULT
 			files = new OFile[1];
 			files[0] = OFileFactory.instance().create(type,
-					iStorage.getVariableParser().resolveVariables(storage.getStoragePath() + "/" + name + "." + 0 + fileExtension),
+					iStorage.getVariableParser().resolveVariables(getFileDirectory() + "/" + name + "." + 0 + fileExtension),
 					iStorage.getMode());
 			perFileMaxSize = fileMaxSize;
 			files[0].setMaxSize(perFileMaxSize);
@@ -82,7 +86,6 @@ public class OMultiFileSegment extends OSegment {
 	}
 
 	public void open() throws IOException {
-		// @TODO: LAZY OPEN FILES
 		for (OFile file : files)
 			if (!file.open()) {
 				// LAST TIME THE FILE WAS NOT CLOSED IN SOFT WAY
@@ -92,6 +95,50 @@ public class OMultiFileSegment extends OSegment {
 			}
 	}
 
+	/**
+	 * Registers the segment without opening its files: they will be opened at the first access.
+	 * 
+	 * @throws FileNotFoundException
+	 *           if a file of the segment is missing
+	 */
+	public void openLazily() throws IOException {
+		for (OFile file : files)
+			if (!file.exists())
+				throw new FileNotFoundException("Segment file " + OFileUtils.getPath(file.getName()) + " was not found");
+
+		waitingForOpening = true;
+	}
+
+	/**
+	 * Returns true if the segment has been opened lazily and not accessed yet.
+	 */
+	public boolean isWaitingForOpening() {
+		return waitingForOpening;
+	}
+
+	/**
+	 * Opens the segment if it was opened lazily. Must be called before acquiring the lock of the segment.
+	 */
+	protected void checkForOpening() {
+		if (!waitingForOpening)
+			return;
+
+		synchronized (this) {
+			if (!waitingForOpening)
+				return;
+
+			final long timer = OProfiler.getInstance().startChrono();
+			try {
+				open();
+				waitingForOpening = false;
+			} catch (IOException e) {
+				throw new OStorageException("Cannot open the segment '" + name + "' of storage '" + storage.getName() + "'", e);
+			} finally {
+				OProfiler.getInstance().stopChrono("storage." + storage.getName() + ".lazyOpen", timer);
+			}
+		}
+	}
+
 	/**
 	 * Create the first file for current segment
 	 * 
@@ -99,12 +146,17 @@ public class OMultiFileSegment extends OSegment {
 	 * @throws IOException
 	 */
 	public void create(final int iStartSize) throws IOException {
+		waitingForOpening = false;
 		files = new OFile[1];
 		fileStartSize = iStartSize;
 		createNewFile();
 	}
 
 	public void close() throws IOException {
+		if (waitingForOpening)
+			// NEVER OPENED
+			return;
+
 		acquireExclusiveLock();
 		try {
 			for (OFile file : files) {
@@ -118,6 +170,7 @@ public class OMultiFileSegment extends OSegment {
 	}
 
 	public void delete() throws IOException {
+		checkForOpening();
 		acquireExclusiveLock();
 		try {
 			for (OFile file : files) {
@@ -130,6 +183,7 @@ public class OMultiFileSegment extends OSegment {
 	}
 
 	public void truncate() throws IOException {
+		checkForOpening();
 		acquireExclusiveLock();
 		try {
 			// SHRINK TO 0
@@ -172,6 +226,7 @@ public class OMultiFileSegment extends OSegment {
 	}
 
 	public long getFilledUpTo() {
+		checkForOpening();
 		acquireSharedLock();
 		try {
 			long filled = 0;
@@ -186,6 +241,7 @@ public class OMultiFileSegment extends OSegment {
 	}
 
 	public long getSize() {
+		checkForOpening();
 		acquireSharedLock();
 		try {
 			long size = 0;
@@ -285,7 +341,7 @@ public class OMultiFileSegment extends OSegment {
 	private OFile createNewFile() throws IOException {
 		final int num = files.length - 1;
 
-		final OFile file = OFileFactory.instance().create(type, storage.getStoragePath() + "/" + name + "." + num + fileExtension,
+		final OFile file = OFileFactory.instance().create(type, getFileDirectory() + "/" + name + "." + num + fileExtension,
 				storage.getMode());
 		file.setMaxSize((int) OFileUtils.getSizeAsNumber(config.root.fileTemplate.fileMaxSize));
 		file.create(fileStartSize);
@@ -296,6 +352,24 @@ public class OMultiFileSegment extends OSegment {
 		return file;
 	}
 
+	/**
+	 * Returns the directory where to create the files of the segment: the configured location, otherwise the directory of the
+	 * first file, otherwise the storage directory.
+	 */
+	private String getFileDirectory() {
+		if (config.location != null)
+			return config.location;
+
+		if (config.infoFiles.length > 0) {
+			final String firstFile = storage.getVariableParser().resolveVariables(config.infoFiles[0].path);
+			final String directory = new File(firstFile).getParent();
+			if (directory != null)
+				return directory;
+		}
+
+		return storage.getStoragePath();
+	}
+
 	private void addInfoFileConfigEntry(final OFile file) throws IOException {
 		OStorageFileConfiguration[] newConfigFiles = new OStorageFileConfiguration[config.infoFiles.length + 1];
 		for (int i = 0; i < config.infoFiles.length; ++i)
@@ -20,11 +20,16 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TimerTask;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import com.orientechnologies.common.concur.lock.OLockManager.LOCK;
 import com.orientechnologies.common.exception.OException;
@@ -36,10 +41,12 @@ import com.orientechnologies.common.profiler.OProfiler.OProfilerHookValue;
 import com.orientechnologies.common.util.OArrays;
 import com.orientechnologies.orient.core.Orient;
 import com.orientechnologies.orient.core.command.OCommandOutputListener;
+import com.orientechnologies.orient.core.compression.OCompression;
 import com.orientechnologies.orient.core.config.OGlobalConfiguration;
 import com.orientechnologies.orient.core.config.OStorageClusterConfiguration;
 import com.orientechnologies.orient.core.config.OStorageConfiguration;
 import com.orientechnologies.orient.core.config.OStorageDataConfiguration;
+import com.orientechnologies.orient.core.config.OStorageFileConfiguration;
 import com.orientechnologies.orient.core.config.OStorageLogicalClusterConfiguration;
 import com.orientechnologies.orient.core.config.OStorageMemoryClusterConfiguration;
 import com.orientechnologies.orient.core.config.OStoragePhysicalClusterConfiguration;
@@ -62,6 +69,7 @@ import com.orientechnologies.orient.core.storage.OStorageEmbedded;
 import com.orientechnologies.orient.core.storage.fs.OMMapManager;
 import com.orientechnologies.orient.core.storage.impl.memory.OClusterMemory;
 import com.orientechnologies.orient.core.tx.OTransaction;
+import com.orientechnologies.orient.core.tx.OTransaction.DURABILITY;
 
 public class OStorageLocal extends OStorageEmbedded {
 	private final int											DELETE_MAX_RETRIES;
@@ -71,15 +79,21 @@ public class OStorageLocal extends OStorageEmbedded {
 	private final Map<String, OCluster>		clusterMap					= new LinkedHashMap<String, OCluster>();
 	private OCluster[]										clusters						= new OCluster[0];
 	private ODataLocal[]									dataSegments				= new ODataLocal[0];
+	private volatile OCompression[]				clusterCompressions	= new OCompression[0];
 
 	private final OStorageLocalTxExecuter	txManager;
 	private String												storagePath;
 	private final OStorageVariableParser	variableParser;
 	private int														defaultClusterId		= -1;
+	private final Map<Integer, OStorageLocalBulkLoad>	bulkLoads	= new ConcurrentHashMap<Integer, OStorageLocalBulkLoad>();
+	private volatile ODataSegmentStrategy	dataSegmentStrategy;
+	private final AtomicBoolean						synchScheduled			= new AtomicBoolean();
+	private volatile DURABILITY						defaultDurability;
 
 	private static String[]								ALL_FILE_EXTENSIONS	= { "ocf", ".och", ".ocl", ".oda", ".odh", ".otx" };
 	private final String									PROFILER_CREATE_RECORD;
 	private final String									PROFILER_READ_RECORD;
+	private final String									PROFILER_READ_RECORDS;
 	private final String									PROFILER_UPDATE_RECORD;
 	private final String									PROFILER_DELETE_RECORD;
 
@@ -102,17 +116,31 @@ public class OStorageLocal extends OStorageEmbedded {
 
 		PROFILER_CREATE_RECORD = "storage." + name + ".createRecord";
 		PROFILER_READ_RECORD = "storage." + name + ".readRecord";
+		PROFILER_READ_RECORDS = "storage." + name + ".readRecords";
 		PROFILER_UPDATE_RECORD = "storage." + name + ".updateRecord";
 		PROFILER_DELETE_RECORD = "storage." + name + ".deleteRecord";
 
 		DELETE_MAX_RETRIES = OGlobalConfiguration.FILE_MMAP_FORCE_RETRY.getValueAsInteger();
 		DELETE_WAIT_TIME = OGlobalConfiguration.FILE_MMAP_FORCE_DELAY.getValueAsInteger();
 
+		final String strategy = OGlobalConfiguration.STORAGE_DATA_SEGMENT_STRATEGY.getValueAsString();
+		if (ODataSegmentStrategyRoundRobin.NAME.equalsIgnoreCase(strategy))
+			dataSegmentStrategy = new ODataSegmentStrategyRoundRobin();
+		else if (ODataSegmentStrategySizeBalanced.NAME.equalsIgnoreCase(strategy))
+			dataSegmentStrategy = new ODataSegmentStrategySizeBalanced();
+		else if (ODataSegmentStrategyDefault.NAME.equalsIgnoreCase(strategy))
+			dataSegmentStrategy = new ODataSegmentStrategyDefault();
+		else
+			throw new OConfigurationException("Data segment strategy '" + strategy + "' is not supported. Supported strategies are: "
+					+ ODataSegmentStrategyDefault.NAME + ", " + ODataSegmentStrategyRoundRobin.NAME + ", "
+					+ ODataSegmentStrategySizeBalanced.NAME);
+
 		installProfilerHooks();
 	}
 
 	public synchronized void open(final String iUserName, final String iUserPassword, final Map<String, Object> iProperties) {
 		final long timer = OProfiler.getInstance().startChrono();
+		final long begin = System.currentTimeMillis();
 
 		lock.acquireExclusiveLock();
 		try {
@@ -129,6 +157,9 @@ public class OStorageLocal extends OStorageEmbedded {
 
 			status = STATUS.OPEN;
 
+			final boolean lazy = OGlobalConfiguration.STORAGE_LAZY_OPEN.getValueAsBoolean();
+			int lazySegments = 0;
+
 			// OPEN BASIC SEGMENTS
 			int pos;
 			pos = registerDataSegment(new OStorageDataConfiguration(configuration, OStorage.DATA_DEFAULT_NAME));
@@ -139,6 +170,7 @@ public class OStorageLocal extends OStorageEmbedded {
 			clusters[pos].open();
 
 			configuration.load();
+			defaultDurability = loadDefaultDurability();
 
 			pos = createClusterFromConfig(new OStoragePhysicalClusterConfiguration(configuration, OStorage.CLUSTER_INDEX_NAME,
 					clusters.length));
@@ -149,6 +181,7 @@ public class OStorageLocal extends OStorageEmbedded {
 			clusters[defaultClusterId].open();
 
 			// REGISTER DATA SEGMENT
+			long phaseTimer = OProfiler.getInstance().startChrono();
 			for (int i = 0; i < configuration.dataSegments.size(); ++i) {
 				final OStorageDataConfiguration dataConfig = configuration.dataSegments.get(i);
 
@@ -159,11 +192,17 @@ public class OStorageLocal extends OStorageEmbedded {
 					dataSegments[i].close();
 					dataSegments[i] = new ODataLocal(this, dataConfig, i);
 					dataSegments[i].open();
+				} else if (lazy) {
+					// OPEN THE FILES AT FIRST ACCESS
+					dataSegments[pos].openLazily();
+					lazySegments++;
 				} else
 					dataSegments[pos].open();
 			}
+			OProfiler.getInstance().stopChrono("storage." + name + ".open.dataSegments", phaseTimer);
 
 			// REGISTER CLUSTER
+			phaseTimer = OProfiler.getInstance().startChrono();
 			for (int i = 0; i < configuration.clusters.size(); ++i) {
 				final OStorageClusterConfiguration clusterConfig = configuration.clusters.get(i);
 
@@ -182,7 +221,12 @@ public class OStorageLocal extends OStorageEmbedded {
 							if (clusterConfig.getName().equals(OStorage.CLUSTER_DEFAULT_NAME))
 								defaultClusterId = pos;
 
-							clusters[pos].open();
+							if (lazy && clusters[pos] instanceof OClusterLocal) {
+								// OPEN THE FILES AT FIRST ACCESS
+								((OClusterLocal) clusters[pos]).openLazily();
+								lazySegments++;
+							} else
+								clusters[pos].open();
 						}
 					} catch (FileNotFoundException e) {
 						OLogManager.instance().warn(
@@ -198,10 +242,17 @@ public class OStorageLocal extends OStorageEmbedded {
 					clusters[i] = null;
 				}
 			}
+			OProfiler.getInstance().stopChrono("storage." + name + ".open.clusters", phaseTimer);
 
 			loadVersion();
 
+			phaseTimer = OProfiler.getInstance().startChrono();
 			txManager.open();
+			OProfiler.getInstance().stopChrono("storage." + name + ".open.txLog", phaseTimer);
+
+			if (OLogManager.instance().isDebugEnabled())
+				OLogManager.instance().debug(this, "Storage '%s' opened in %dms: %d data segments and %d clusters, %d of them opened lazily",
+						name, System.currentTimeMillis() - begin, dataSegments.length, clusters.length, lazySegments);
 
 		} catch (Exception e) {
 			close(true);
@@ -246,6 +297,7 @@ public class OStorageLocal extends OStorageEmbedded {
 			defaultClusterId = addCluster(OStorage.CLUSTER_DEFAULT_NAME, OStorage.CLUSTER_TYPE.PHYSICAL);
 
 			configuration.create();
+			defaultDurability = loadDefaultDurability();
 
 			txManager.create();
 		} catch (OStorageException e) {
@@ -285,6 +337,11 @@ public class OStorageLocal extends OStorageEmbedded {
 
 			status = STATUS.CLOSING;
 
+			if (!bulkLoads.isEmpty()) {
+				OLogManager.instance().warn(this, "Closing storage '%s' with bulk loads still open on clusters %s", name, bulkLoads.keySet());
+				bulkLoads.clear();
+			}
+
 			saveVersion();
 
 			for (OCluster cluster : clusters)
@@ -332,8 +389,32 @@ public class OStorageLocal extends OStorageEmbedded {
 					;
 			}
 		}
+
+		// COLLECT THE FILES OF THE DATA SEGMENTS CREATED OUTSIDE THE STORAGE DIRECTORY
+		if (status == STATUS.CLOSED && configuration.dataSegments.isEmpty() && exists())
+			try {
+				configuration.load();
+				((OStorageConfigurationSegment) configuration).close();
+			} catch (Exception e) {
+				OLogManager.instance().warn(this, "Cannot read the configuration of storage '%s' to delete its data segments", name);
+			}
+
+		final List<File> externalFiles = new ArrayList<File>();
+		final File storageDir = new File(storagePath).getAbsoluteFile();
+		for (OStorageDataConfiguration d : configuration.dataSegments)
+			if (d != null)
+				for (OStorageFileConfiguration f : d.infoFiles) {
+					final File file = new File(variableParser.resolveVariables(f.path)).getAbsoluteFile();
+					if (!storageDir.equals(file.getParentFile()))
+						externalFiles.add(file);
+				}
+
 		close(true);
 
+		for (File f : externalFiles)
+			if (f.exists() && !f.delete())
+				OLogManager.instance().warn(this, "Cannot delete the data segment file: %s", f);
+
 		try {
 			Orient.instance().unregisterStorage(this);
 		} catch (Exception e) {
@@ -620,6 +701,11 @@ public class OStorageLocal extends OStorageEmbedded {
 		return addDataSegment(iDataSegmentName, segmentFileName);
 	}
 
+	/**
+	 * Add a new data segment. The files of the segment are created in the directory iSegmentFileName if it exists, otherwise in the
+	 * directory containing it: placing the segments on different disks spreads the I/O of the records according to the
+	 * {@link ODataSegmentStrategy} in use.
+	 */
 	public int addDataSegment(String iSegmentName, final String iSegmentFileName) {
 		checkOpeness();
 
@@ -629,6 +715,11 @@ public class OStorageLocal extends OStorageEmbedded {
 		try {
 
 			final OStorageDataConfiguration conf = new OStorageDataConfiguration(configuration, iSegmentName);
+			conf.id = dataSegments.length;
+			if (iSegmentFileName != null) {
+				final File location = new File(iSegmentFileName);
+				conf.location = location.isDirectory() ? location.getPath() : location.getParent();
+			}
 			configuration.dataSegments.add(conf);
 
 			final int pos = registerDataSegment(conf);
@@ -712,12 +803,15 @@ public class OStorageLocal extends OStorageEmbedded {
 			if (cluster == null)
 				return false;
 
+			checkBulkLoad(iClusterId);
+
 			getLevel2Cache().freeCluster(iClusterId);
 
 			cluster.delete();
 
 			clusterMap.remove(cluster.getName());
 			clusters[iClusterId] = null;
+			setClusterCompression(iClusterId, null);
 
 			// UPDATE CONFIGURATION
 			configuration.dropCluster(iClusterId);
@@ -877,16 +971,17 @@ public class OStorageLocal extends OStorageEmbedded {
 	}
 
 	public void commit(final OTransaction iTx) {
+		final DURABILITY durability = iTx.getDurability() != null ? iTx.getDurability() : defaultDurability;
+
 		lock.acquireExclusiveLock();
 		try {
 
 			try {
 				txManager.clearLogEntries(iTx);
-				txManager.commitAllPendingRecords(iTx);
+				txManager.commitAllPendingRecords(iTx, durability);
 
 				incrementVersion();
-				if (OGlobalConfiguration.TX_COMMIT_SYNCH.getValueAsBoolean())
-					synch();
+				synch(durability);
 
 			} catch (RuntimeException e) {
 				// WE NEED TO CALL ROLLBACK HERE, IN THE LOCK
@@ -913,14 +1008,78 @@ public class OStorageLocal extends OStorageEmbedded {
 	public void rollback(final OTransaction iTx) {
 		try {
 			txManager.getTxSegment().rollback(iTx);
-			if (OGlobalConfiguration.TX_COMMIT_SYNCH.getValueAsBoolean())
-				synch();
+			synch(iTx.getDurability() != null ? iTx.getDurability() : defaultDurability);
 		} catch (IOException ioe) {
 			OLogManager.instance().error(this,
 					"Error executing rollback for transaction with id '" + iTx.getId() + "' cause: " + ioe.getMessage(), ioe);
 		}
 	}
 
+	/**
+	 * Returns the durability of the transactions that don't set their own. It's the one saved in the storage configuration if any,
+	 * otherwise the one of "tx.durability" when the storage was opened.
+	 */
+	public DURABILITY getDefaultDurability() {
+		return defaultDurability;
+	}
+
+	/**
+	 * Sets the default durability of the transactions and saves it in the storage configuration, so it's kept across the restarts.
+	 * Null removes it to use "tx.durability" again.
+	 */
+	public void setDefaultDurability(final DURABILITY iDurability) {
+		checkOpeness();
+
+		lock.acquireExclusiveLock();
+		try {
+
+			configuration.setProperty(OGlobalConfiguration.TX_DURABILITY.getKey(), iDurability != null ? iDurability.name() : null);
+			configuration.update();
+			defaultDurability = loadDefaultDurability();
+
+		} finally {
+			lock.releaseExclusiveLock();
+		}
+	}
+
+	private DURABILITY loadDefaultDurability() {
+		final String value = configuration.getProperty(OGlobalConfiguration.TX_DURABILITY.getKey());
+		return value != null ? DURABILITY.valueOf(value.toUpperCase()) : DURABILITY.getDefault();
+	}
+
+	/**
+	 * Flushes the storage as requested by the durability of a transaction: FULL synchronizes it immediately, ASYNC schedules the
+	 * synchronization, the others do nothing.
+	 */
+	protected void synch(final DURABILITY iDurability) {
+		switch (iDurability) {
+		case FULL:
+			synch();
+			break;
+
+		case ASYNC:
+			if (synchScheduled.compareAndSet(false, true))
+				Orient.getTimer().schedule(new TimerTask() {
+					@Override
+					public void run() {
+						synchScheduled.set(false);
+						if (status != STATUS.OPEN)
+							return;
+
+						try {
+							synch();
+						} catch (Exception e) {
+							OLogManager.instance().error(this, "Error on asynchronous synch of storage '" + name + "'", e);
+						}
+					}
+				}, OGlobalConfiguration.TX_DURABILITY_ASYNCH_DELAY.getValueAsInteger());
+			break;
+
+		default:
+			break;
+		}
+	}
+
 	public void synch() {
 		checkOpeness();
 
@@ -1013,6 +1172,176 @@ public class OStorageLocal extends OStorageEmbedded {
 		}
 	}
 
+	/**
+	 * Returns the fragmentation of all the data segments as the ratio between the space wasted by holes and the space used.
+	 */
+	public float getFragmentation() {
+		lock.acquireSharedLock();
+		try {
+
+			long holes = 0;
+			long used = 0;
+			for (ODataLocal d : dataSegments) {
+				holes += d.getHolesSize();
+				used += d.getFilledUpTo();
+			}
+			return used > 0 ? (float) holes / used : 0f;
+
+		} finally {
+			lock.releaseSharedLock();
+		}
+	}
+
+	/**
+	 * Starts the online compaction of a data segment with the speed limit set in "storage.compaction.maxSpeed".
+	 * 
+	 * @see #compactDataSegment(int, int)
+	 */
+	public ODataLocalCompactor compactDataSegment(final int iDataSegmentId) {
+		return compactDataSegment(iDataSegmentId, OGlobalConfiguration.STORAGE_COMPACTION_MAX_SPEED.getValueAsInteger());
+	}
+
+	/**
+	 * Starts the online compaction of a data segment in background. Live records are moved toward the beginning of the files
+	 * filling the holes and the freed tail is truncated. The database remains available: every record is locked only while moved.
+	 * 
+	 * @param iDataSegmentId
+	 *          Id of the data segment to compact
+	 * @param iMaxBytesPerSecond
+	 *          Maximum bytes per second to move, 0 = no limit
+	 * @return The compactor thread to monitor the progress
+	 */
+	public ODataLocalCompactor compactDataSegment(final int iDataSegmentId, final int iMaxBytesPerSecond) {
+		final ODataLocalCompactor compactor = new ODataLocalCompactor(this, getDataSegment(iDataSegmentId), iMaxBytesPerSecond);
+		compactor.start();
+		return compactor;
+	}
+
+	/**
+	 * Starts a bulk load session on the clusters received. Until the session is closed the clusters are owned by it: records are
+	 * appended without searching for holes and without locking them, while any other change to the clusters is refused.
+	 * 
+	 * @param iClusterIds
+	 *          Ids of the physical clusters to load
+	 * @return The session to use to create the records. Close it at the end of the load
+	 */
+	public OStorageLocalBulkLoad beginBulkLoad(final int... iClusterIds) {
+		checkOpeness();
+
+		lock.acquireExclusiveLock();
+		try {
+
+			final OClusterLocal[] targets = new OClusterLocal[iClusterIds.length];
+			for (int i = 0; i < iClusterIds.length; ++i) {
+				final OCluster cluster = getClusterById(iClusterIds[i]);
+				if (!(cluster instanceof OClusterLocal))
+					throw new OStorageException("Bulk load is supported only on physical clusters: '" + cluster.getName() + "' is "
+							+ cluster.getType());
+				checkBulkLoad(iClusterIds[i]);
+				targets[i] = (OClusterLocal) cluster;
+			}
+
+			final OStorageLocalBulkLoad bulkLoad = new OStorageLocalBulkLoad(this, targets);
+			for (OClusterLocal cluster : targets)
+				bulkLoads.put(cluster.getId(), bulkLoad);
+			return bulkLoad;
+
+		} finally {
+			lock.releaseExclusiveLock();
+		}
+	}
+
+	/**
+	 * Releases the clusters owned by the bulk load.
+	 */
+	protected void endBulkLoad(final OStorageLocalBulkLoad iBulkLoad) {
+		lock.acquireExclusiveLock();
+		try {
+
+			for (OClusterLocal cluster : iBulkLoad.getClusters())
+				bulkLoads.remove(cluster.getId());
+
+			incrementVersion();
+
+		} finally {
+			lock.releaseExclusiveLock();
+		}
+	}
+
+	/**
+	 * Creates a record on behalf of a bulk load: the record is appended to the cluster and to the data segment without reusing
+	 * holes. No record lock is acquired since the cluster is owned by the bulk load.
+	 */
+	protected long createRecordInBulk(final OClusterLocal iCluster, final byte[] iContent, final byte iRecordType) {
+		lock.acquireSharedLock();
+		try {
+
+			checkOpeness();
+
+			final int dataSegment = getDataSegmentForRecord(iCluster, iContent);
+			final ODataLocal data = getDataSegment(dataSegment);
+
+			final ORecordId rid = new ORecordId(iCluster.getId());
+			rid.clusterPosition = iCluster.appendPhysicalPosition(-1, -1, iRecordType);
+
+			final long dataOffset = data.appendRecord(rid, iContent);
+
+			iCluster.setPhysicalPosition(rid.clusterPosition, dataSegment, dataOffset, iRecordType, 0);
+
+			return rid.clusterPosition;
+
+		} catch (IOException e) {
+
+			OLogManager.instance().error(this, "Error on bulk loading record in cluster: " + iCluster, e, OStorageException.class);
+			return -1;
+
+		} finally {
+			lock.releaseSharedLock();
+		}
+	}
+
+	private void checkBulkLoad(final int iClusterId) {
+		if (!bulkLoads.isEmpty() && bulkLoads.containsKey(iClusterId))
+			throw new OStorageException("Cluster #" + iClusterId + " in storage '" + name
+					+ "' cannot be changed because it is owned by a bulk load");
+	}
+
+	/**
+	 * Executes a step of the online compaction of a data segment locking the record to move.
+	 * 
+	 * @return The bytes of the moved record, 0 if no record was moved, -1 if the compaction is over or the storage is closed
+	 * @see ODataLocal#compactStep(ORecordId)
+	 */
+	protected int compactDataSegmentStep(final ODataLocal iData) {
+		lock.acquireSharedLock();
+		try {
+
+			if (status != STATUS.OPEN)
+				return -1;
+
+			final ORecordId rid = iData.getNextRecordToCompact();
+			if (rid == null)
+				return iData.compactStep(null);
+
+			lockManager.acquireLock(Thread.currentThread(), rid, LOCK.EXCLUSIVE);
+			try {
+
+				return iData.compactStep(rid);
+
+			} finally {
+				lockManager.releaseLock(Thread.currentThread(), rid, LOCK.EXCLUSIVE);
+			}
+
+		} catch (IOException e) {
+
+			OLogManager.instance().error(this, "Error on compacting data segment '" + iData.getName() + "'", e, OStorageException.class);
+			return -1;
+
+		} finally {
+			lock.releaseSharedLock();
+		}
+	}
+
 	public String getPhysicalClusterNameById(final int iClusterId) {
 		checkOpeness();
 
@@ -1038,6 +1367,24 @@ public class OStorageLocal extends OStorageEmbedded {
 		return defaultClusterId;
 	}
 
+	/**
+	 * Returns the codec of the records of the cluster, or null if they are stored raw. It's resolved when the cluster is opened or
+	 * configured, so the data segments look it up without locking at every record read and write.
+	 */
+	public OCompression getClusterCompression(final int iClusterId) {
+		final OCompression[] compressions = clusterCompressions;
+		return iClusterId >= 0 && iClusterId < compressions.length ? compressions[iClusterId] : null;
+	}
+
+	/**
+	 * Sets the codec of the records of the cluster. The array is copied on write since it's read without locks.
+	 */
+	synchronized void setClusterCompression(final int iClusterId, final OCompression iCompression) {
+		final OCompression[] compressions = Arrays.copyOf(clusterCompressions, Math.max(clusterCompressions.length, iClusterId + 1));
+		compressions[iClusterId] = iCompression;
+		clusterCompressions = compressions;
+	}
+
 	public OCluster getClusterById(int iClusterId) {
 		lock.acquireSharedLock();
 		try {
@@ -1226,10 +1573,21 @@ public class OStorageLocal extends OStorageEmbedded {
 			throw new IllegalArgumentException("Cluster segment #" + iClusterId + " does not exist in storage '" + name + "'");
 	}
 
+	public ODataSegmentStrategy getDataSegmentStrategy() {
+		return dataSegmentStrategy;
+	}
+
+	/**
+	 * Changes the strategy used to choose the data segment of new records. Records already stored are not moved.
+	 */
+	public void setDataSegmentStrategy(final ODataSegmentStrategy iStrategy) {
+		if (iStrategy == null)
+			throw new IllegalArgumentException("Data segment strategy is null");
+		dataSegmentStrategy = iStrategy;
+	}
+
 	protected int getDataSegmentForRecord(final OCluster iCluster, final byte[] iContent) {
-		// TODO: CREATE POLICY & STRATEGY TO ASSIGN THE BEST-MULTIPLE DATA
-		// SEGMENT
-		return 0;
+		return dataSegmentStrategy.assignDataSegmentId(this, iCluster, iContent);
 	}
 
 	protected long createRecord(final OCluster iClusterSegment, final byte[] iContent, final byte iRecordType) {
@@ -1243,6 +1601,9 @@ public class OStorageLocal extends OStorageEmbedded {
 		lock.acquireSharedLock();
 		try {
 
+			// CHECKED UNDER THE LOCK TAKEN BY BEGINBULKLOAD() TO NOT WRITE IN A CLUSTER OWNED BY A BULK LOAD STARTED MEANWHILE
+			checkBulkLoad(iClusterSegment.getId());
+
 			final int dataSegment = getDataSegmentForRecord(iClusterSegment, iContent);
 			final ODataLocal data = getDataSegment(dataSegment);
 
@@ -1325,6 +1686,77 @@ public class OStorageLocal extends OStorageEmbedded {
 		}
 	}
 
+	/**
+	 * Reads the batch of records by scanning the physical positions sequentially, then loads the content from the data segments in
+	 * offset order to avoid jumping back and forth between cluster and data files.
+	 */
+	@Override
+	public ORawBuffer[] readRecords(final int iClusterId, final long iFrom, final int iCount) {
+		checkOpeness();
+
+		final long timer = OProfiler.getInstance().startChrono();
+
+		final OCluster cluster = getClusterById(iClusterId);
+		final ORawBuffer[] buffers = new ORawBuffer[iCount];
+
+		lock.acquireSharedLock();
+		try {
+
+			// NEVER GO BEYOND THE END OF THE CLUSTER
+			final int count = (int) Math.max(0, Math.min(iCount, cluster.getLastEntryPosition() - iFrom + 1));
+
+			// READ ALL THE PHYSICAL POSITIONS FIRST
+			final OPhysicalPosition[] ppos = new OPhysicalPosition[count];
+			final List<Integer> toRead = new ArrayList<Integer>(count);
+			for (int i = 0; i < count; ++i) {
+				final OPhysicalPosition p = cluster.getPhysicalPosition(iFrom + i, new OPhysicalPosition());
+				if (p != null && checkForRecordValidity(p)) {
+					ppos[i] = p;
+					toRead.add(i);
+				}
+			}
+
+			// SORT BY DATA SEGMENT AND OFFSET
+			Collections.sort(toRead, new Comparator<Integer>() {
+				public int compare(final Integer o1, final Integer o2) {
+					final OPhysicalPosition p1 = ppos[o1];
+					final OPhysicalPosition p2 = ppos[o2];
+					if (p1.dataSegmentId != p2.dataSegmentId)
+						return p1.dataSegmentId < p2.dataSegmentId ? -1 : 1;
+					return p1.dataChunkPosition < p2.dataChunkPosition ? -1 : p1.dataChunkPosition == p2.dataChunkPosition ? 0 : 1;
+				}
+			});
+
+			final ORecordId rid = new ORecordId(iClusterId, -1);
+			for (Integer i : toRead) {
+				rid.clusterPosition = iFrom + i;
+
+				lockManager.acquireLock(Thread.currentThread(), rid, LOCK.SHARED);
+				try {
+					// RELOAD THE POSITION UNDER THE RECORD LOCK: THE RECORD COULD BE UPDATED OR DELETED IN THE MEANTIME
+					final OPhysicalPosition p = cluster.getPhysicalPosition(rid.clusterPosition, ppos[i]);
+					if (p != null && checkForRecordValidity(p))
+						buffers[i] = new ORawBuffer(getDataSegment(p.dataSegmentId).getRecord(p.dataChunkPosition), p.version, p.type);
+				} finally {
+					lockManager.releaseLock(Thread.currentThread(), rid, LOCK.SHARED);
+				}
+			}
+
+			return buffers;
+
+		} catch (IOException e) {
+
+			OLogManager.instance().error(this, "Error on reading records " + iFrom + "-" + (iFrom + iCount - 1) + " (cluster: " + cluster + ")",
+					e, OStorageException.class);
+			return null;
+
+		} finally {
+			lock.releaseSharedLock();
+
+			OProfiler.getInstance().stopChrono(PROFILER_READ_RECORDS, timer);
+		}
+	}
+
 	protected int updateRecord(final OCluster iClusterSegment, final ORecordId iRid, final byte[] iContent, final int iVersion,
 			final byte iRecordType) {
 		if (iClusterSegment == null)
@@ -1335,6 +1767,8 @@ public class OStorageLocal extends OStorageEmbedded {
 		lock.acquireSharedLock();
 
 		try {
+			checkBulkLoad(iClusterSegment.getId());
+
 			lockManager.acquireLock(Thread.currentThread(), iRid, LOCK.EXCLUSIVE);
 			try {
 				final OPhysicalPosition ppos = iClusterSegment.getPhysicalPosition(iRid.clusterPosition, new OPhysicalPosition());
@@ -1424,6 +1858,7 @@ public class OStorageLocal extends OStorageEmbedded {
 
 		lock.acquireExclusiveLock();
 		try {
+			checkBulkLoad(iClusterSegment.getId());
 
 			lockManager.acquireLock(Thread.currentThread(), iRid, LOCK.EXCLUSIVE);
 			try {
@@ -1469,6 +1904,45 @@ public class OStorageLocal extends OStorageEmbedded {
 		return false;
 	}
 
+	/**
+	 * Writes a record at the position, with the version and the type received, replacing the current one if any. The cluster is
+	 * extended if the position is beyond its end. Used to restore backups.
+	 */
+	public void restoreRecord(final ORecordId iRid, final byte[] iContent, final int iVersion, final byte iRecordType) {
+		checkOpeness();
+
+		final OCluster cluster = getClusterById(iRid.clusterId);
+		if (!(cluster instanceof OClusterLocal))
+			throw new OStorageException("Cannot restore record " + iRid + " because cluster '" + cluster.getName()
+					+ "' is not physical");
+
+		lock.acquireExclusiveLock();
+		try {
+
+			final OClusterLocal clusterLocal = (OClusterLocal) cluster;
+			final OPhysicalPosition ppos = clusterLocal.restorePhysicalPosition(iRid.clusterPosition, new OPhysicalPosition());
+
+			if (checkForRecordValidity(ppos) && ppos.dataChunkPosition > -1)
+				// REMOVE THE PREVIOUS CONTENT
+				getDataSegment(ppos.dataSegmentId).deleteRecord(ppos.dataChunkPosition);
+
+			final int dataSegment = getDataSegmentForRecord(cluster, iContent);
+			final long dataOffset = getDataSegment(dataSegment).addRecord(iRid, iContent);
+
+			clusterLocal.setPhysicalPosition(iRid.clusterPosition, dataSegment, dataOffset, iRecordType, iVersion);
+
+			incrementVersion();
+
+		} catch (IOException e) {
+
+			OLogManager.instance().error(this, "Error on restoring record " + iRid + " (cluster: " + cluster + ")", e,
+					OStorageException.class);
+
+		} finally {
+			lock.releaseExclusiveLock();
+		}
+	}
+
 	/***
 	 * Save the version number to disk
 	 * 
@@ -1615,5 +2089,10 @@ public class OStorageLocal extends OStorageEmbedded {
 				return getHoleSize();
 			}
 		});
+		OProfiler.getInstance().registerHookValue("storage." + name + ".data.fragmentation", new OProfilerHookValue() {
+			public Object getValue() {
+				return getFragmentation();
+			}
+		});
 	}
 }
@@ -0,0 +1,110 @@
+/*
+ * Copyright 1999-2010 Luca Garulli (l.garulli--at--orientechnologies.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.orientechnologies.orient.core.storage.impl.local;
+
+import java.io.IOException;
+
+import com.orientechnologies.common.log.OLogManager;
+import com.orientechnologies.orient.core.exception.OStorageException;
+
+/**
+ * Non transactional bulk load session on a set of physical clusters of a local storage. The clusters are owned by the session
+ * until it is closed: records are appended at the end of clusters and data segments without searching for holes, without
+ * acquiring record locks and without writing to the transaction log. Nothing is forced to disk until {@link #close()}.<br/>
+ * <br/>
+ * The session is not thread safe and works at storage level, so hooks and indexes are not involved: indexes on the loaded
+ * clusters must be rebuilt at the end.
+ *
+ * @see OStorageLocal#beginBulkLoad(int...)
+ */
+public class OStorageLocalBulkLoad {
+	private final OStorageLocal		storage;
+	private final OClusterLocal[]	clusters;
+	private final long						beginTime;
+	private long									records;
+	private boolean								closed;
+
+	protected OStorageLocalBulkLoad(final OStorageLocal iStorage, final OClusterLocal[] iClusters) {
+		storage = iStorage;
+		clusters = iClusters;
+		beginTime = System.currentTimeMillis();
+	}
+
+	/**
+	 * Appends a new record to a cluster owned by the session.
+	 *
+	 * @return The position of the record in the cluster
+	 */
+	public long createRecord(final int iClusterId, final byte[] iContent, final byte iRecordType) {
+		if (closed)
+			throw new OStorageException("Bulk load on storage '" + storage.getName() + "' is closed");
+
+		if (iContent == null)
+			throw new IllegalArgumentException("Record is null");
+
+		final long position = storage.createRecordInBulk(getCluster(iClusterId), iContent, iRecordType);
+		records++;
+		return position;
+	}
+
+	/**
+	 * Flushes the loaded clusters and data segments to disk and releases the clusters.
+	 */
+	public void close() {
+		if (closed)
+			return;
+
+		closed = true;
+		try {
+			for (OClusterLocal cluster : clusters)
+				cluster.synch();
+			for (ODataLocal data : storage.getDataSegments())
+				data.synch();
+
+		} catch (IOException e) {
+			OLogManager.instance().error(this, "Error on closing the bulk load on storage '" + storage.getName() + "'", e,
+					OStorageException.class);
+		} finally {
+			storage.endBulkLoad(this);
+		}
+
+		OLogManager.instance().info(this, "Bulk load of %d records on storage '%s' completed in %dms", records, storage.getName(),
+				System.currentTimeMillis() - beginTime);
+	}
+
+	public OClusterLocal[] getClusters() {
+		return clusters;
+	}
+
+	/**
+	 * Returns the number of records created so far.
+	 */
+	public long getRecords() {
+		return records;
+	}
+
+	public boolean isClosed() {
+		return closed;
+	}
+
+	private OClusterLocal getCluster(final int iClusterId) {
+		for (OClusterLocal cluster : clusters)
+			if (cluster.getId() == iClusterId)
+				return cluster;
+
+		throw new OStorageException("Cluster #" + iClusterId + " is not owned by the bulk load on storage '" + storage.getName() + "'");
+	}
+}
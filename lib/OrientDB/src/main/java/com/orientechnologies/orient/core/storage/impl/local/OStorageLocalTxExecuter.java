@@ -31,6 +31,7 @@ import com.orientechnologies.orient.core.storage.OCluster;
 import com.orientechnologies.orient.core.storage.ORawBuffer;
 import com.orientechnologies.orient.core.storage.OStorage;
 import com.orientechnologies.orient.core.tx.OTransaction;
+import com.orientechnologies.orient.core.tx.OTransaction.DURABILITY;
 import com.orientechnologies.orient.core.tx.OTransactionAbstract;
 import com.orientechnologies.orient.core.tx.OTxListener;
 
@@ -59,14 +60,14 @@ public class OStorageLocalTxExecuter {
 	}
 
 	protected long createRecord(final int iTxId, final OCluster iClusterSegment, final ORecordId iRid, final byte[] iContent,
-			final byte iRecordType) throws IOException {
+			final byte iRecordType, final boolean iSynchLog) throws IOException {
 		iRid.clusterPosition = -1;
 
 		try {
 			iRid.clusterPosition = storage.createRecord(iClusterSegment, iContent, iRecordType);
 
 			// SAVE INTO THE LOG THE POSITION OF THE RECORD JUST CREATED. IF TX FAILS AT THIS POINT A GHOST RECORD IS CREATED UNTIL DEFRAG
-			txSegment.addLog(OTxSegment.OPERATION_CREATE, iTxId, iRid.clusterId, iRid.clusterPosition, iRecordType, 0, null);
+			txSegment.addLog(OTxSegment.OPERATION_CREATE, iTxId, iRid.clusterId, iRid.clusterPosition, iRecordType, 0, null, iSynchLog);
 		} catch (IOException e) {
 
 			OLogManager.instance().error(this, "Error on creating entry in log segment: " + iClusterSegment, e,
@@ -85,18 +86,20 @@ public class OStorageLocalTxExecuter {
 	 * @param iContent
 	 * @param iVersion
 	 * @param iRecordType
+	 * @param iSynchLog
+	 *          Forces the log entry to disk before the record is updated
 	 * @return
 	 */
 
 	protected int updateRecord(final int iTxId, final OCluster iClusterSegment, final ORecordId iRid, final byte[] iContent,
-			final int iVersion, final byte iRecordType) {
+			final int iVersion, final byte iRecordType, final boolean iSynchLog) {
 		try {
 			// READ CURRENT RECORD CONTENT
 			final ORawBuffer buffer = storage.readRecord(iClusterSegment, iRid, false);
 
 			// SAVE INTO THE LOG THE POSITION OF THE OLD RECORD JUST DELETED. IF TX FAILS AT THIS POINT AS ABOVE
 			txSegment.addLog(OTxSegment.OPERATION_UPDATE, iTxId, iRid.clusterId, iRid.clusterPosition, iRecordType, buffer.version - 1,
-					buffer.buffer);
+					buffer.buffer, iSynchLog);
 
 			return storage.updateRecord(iClusterSegment, iRid, iContent, iVersion, iRecordType);
 
@@ -108,7 +111,8 @@ public class OStorageLocalTxExecuter {
 		return -1;
 	}
 
-	protected void deleteRecord(final int iTxId, final OCluster iClusterSegment, final long iPosition, final int iVersion) {
+	protected void deleteRecord(final int iTxId, final OCluster iClusterSegment, final long iPosition, final int iVersion,
+			final boolean iSynchLog) {
 		try {
 			final ORecordId rid = new ORecordId(iClusterSegment.getId(), iPosition);
 
@@ -117,7 +121,7 @@ public class OStorageLocalTxExecuter {
 
 			// SAVE INTO THE LOG THE OLD RECORD
 			txSegment.addLog(OTxSegment.OPERATION_DELETE, iTxId, iClusterSegment.getId(), iPosition, buffer.recordType, buffer.version,
-					buffer.buffer);
+					buffer.buffer, iSynchLog);
 
 			storage.deleteRecord(iClusterSegment, rid, iVersion);
 
@@ -132,11 +136,13 @@ public class OStorageLocalTxExecuter {
 		return txSegment;
 	}
 
-	public void commitAllPendingRecords(final OTransaction iTx) throws IOException {
+	public void commitAllPendingRecords(final OTransaction iTx, final DURABILITY iDurability) throws IOException {
 		// COPY ALL THE ENTRIES IN SEPARATE COLLECTION SINCE DURING THE COMMIT PHASE SOME NEW ENTRIES COULD BE CREATED AND
 		// CONCURRENT-EXCEPTION MAY OCCURS
 		final List<ORecordOperation> tmpEntries = new ArrayList<ORecordOperation>();
 
+		final boolean synchLog = iDurability.compareTo(DURABILITY.LOG) >= 0;
+
 		while (iTx.getCurrentRecordEntries().iterator().hasNext()) {
 			for (ORecordOperation txEntry : iTx.getCurrentRecordEntries())
 				tmpEntries.add(txEntry);
@@ -146,7 +152,7 @@ public class OStorageLocalTxExecuter {
 			if (!tmpEntries.isEmpty()) {
 				for (ORecordOperation txEntry : tmpEntries)
 					// COMMIT ALL THE SINGLE ENTRIES ONE BY ONE
-					commitEntry(iTx, txEntry, iTx.isUsingLog());
+					commitEntry(iTx, txEntry, iTx.isUsingLog(), synchLog);
 			}
 		}
 
@@ -159,7 +165,8 @@ public class OStorageLocalTxExecuter {
 		txSegment.clearLogEntries(iTx.getId());
 	}
 
-	private void commitEntry(final OTransaction iTx, final ORecordOperation txEntry, final boolean iUseLog) throws IOException {
+	private void commitEntry(final OTransaction iTx, final ORecordOperation txEntry, final boolean iUseLog, final boolean iSynchLog)
+			throws IOException {
 
 		if (txEntry.type != ORecordOperation.DELETED && !txEntry.getRecord().isDirty())
 			return;
@@ -201,7 +208,7 @@ public class OStorageLocalTxExecuter {
 				rid.clusterId = cluster.getId();
 
 				if (iUseLog)
-					rid.clusterPosition = createRecord(iTx.getId(), cluster, rid, stream, txEntry.getRecord().getRecordType());
+					rid.clusterPosition = createRecord(iTx.getId(), cluster, rid, stream, txEntry.getRecord().getRecordType(), iSynchLog);
 				else
 					rid.clusterPosition = iTx.getDatabase().getStorage()
 							.createRecord(rid, stream, txEntry.getRecord().getRecordType(), (byte) 0, null);
@@ -212,7 +219,7 @@ public class OStorageLocalTxExecuter {
 					txEntry.getRecord()
 							.setVersion(
 									updateRecord(iTx.getId(), cluster, rid, stream, txEntry.getRecord().getVersion(), txEntry.getRecord()
-											.getRecordType()));
+											.getRecordType(), iSynchLog));
 				else
 					txEntry.getRecord()
 							.setVersion(
@@ -233,7 +240,8 @@ public class OStorageLocalTxExecuter {
 
 			if (iUseLog)
 				txEntry.getRecord().setVersion(
-						updateRecord(iTx.getId(), cluster, rid, stream, txEntry.getRecord().getVersion(), txEntry.getRecord().getRecordType()));
+						updateRecord(iTx.getId(), cluster, rid, stream, txEntry.getRecord().getVersion(), txEntry.getRecord().getRecordType(),
+								iSynchLog));
 			else
 				txEntry.getRecord().setVersion(
 						iTx.getDatabase().getStorage()
@@ -247,7 +255,7 @@ public class OStorageLocalTxExecuter {
 			iTx.getDatabase().callbackHooks(ORecordHook.TYPE.BEFORE_DELETE, txEntry.getRecord());
 
 			if (iUseLog)
-				deleteRecord(iTx.getId(), cluster, rid.clusterPosition, txEntry.getRecord().getVersion());
+				deleteRecord(iTx.getId(), cluster, rid.clusterPosition, txEntry.getRecord().getVersion(), iSynchLog);
 			else
 				iTx.getDatabase().getStorage().deleteRecord(rid, txEntry.getRecord().getVersion(), (byte) 0, null);
 
@@ -25,6 +25,7 @@ import com.orientechnologies.orient.core.config.OStorageTxConfiguration;
 import com.orientechnologies.orient.core.id.ORecordId;
 import com.orientechnologies.orient.core.serialization.OBinaryProtocol;
 import com.orientechnologies.orient.core.storage.OPhysicalPosition;
+import com.orientechnologies.orient.core.storage.fs.OFileClassic;
 import com.orientechnologies.orient.core.tx.OTransaction;
 
 /**
@@ -59,11 +60,13 @@ public class OTxSegment extends OSingleFileSegment {
 	private static final int	OFFSET_TX_ID					= 2;
 	private static final int	OFFSET_RECORD_SIZE		= 21;
 	private static final int	OFFSET_RECORD_CONTENT	= 25;
-	private final boolean			synchEnabled;
 
 	public OTxSegment(final OStorageLocal iStorage, final OStorageTxConfiguration iConfig) throws IOException {
 		super(iStorage, iConfig, OGlobalConfiguration.TX_LOG_TYPE.getValueAsString());
-		synchEnabled = OGlobalConfiguration.TX_LOG_SYNCH.getValueAsBoolean();
+
+		// THE LOG MUST BE WRITE-THROUGH: NEVER KEEP ITS CHANGES IN THE PAGE CACHE
+		if (file instanceof OFileClassic)
+			((OFileClassic) file).disablePageCache();
 	}
 
 	/**
@@ -93,10 +96,10 @@ public class OTxSegment extends OSingleFileSegment {
 	}
 
 	/**
-	 * Appends a log entry
+	 * Appends a log entry. If iSynch is true the entry is forced to disk before returning.
 	 */
 	public void addLog(final byte iOperation, final int iTxId, final int iClusterId, final long iClusterOffset,
-			final byte iRecordType, final int iRecordVersion, final byte[] iRecordContent) throws IOException {
+			final byte iRecordType, final int iRecordVersion, final byte[] iRecordContent, final boolean iSynch) throws IOException {
 
 		final int contentSize = iRecordContent != null ? iRecordContent.length : 0;
 
@@ -133,7 +136,7 @@ public class OTxSegment extends OSingleFileSegment {
 			file.write(offset, iRecordContent);
 			offset += contentSize;
 
-			if (synchEnabled)
+			if (iSynch)
 				file.synch();
 
 		} finally {
@@ -0,0 +1,482 @@
+/*
+ * Copyright 1999-2010 Luca Garulli (l.garulli--at--orientechnologies.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.orientechnologies.orient.core.storage.impl.memory;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.orientechnologies.orient.core.exception.OConcurrentModificationException;
+import com.orientechnologies.orient.core.exception.OStorageException;
+import com.orientechnologies.orient.core.id.ORecordId;
+import com.orientechnologies.orient.core.storage.OCluster;
+import com.orientechnologies.orient.core.storage.OClusterPositionIterator;
+import com.orientechnologies.orient.core.storage.OPhysicalPosition;
+import com.orientechnologies.orient.core.storage.ORawBuffer;
+
+/**
+ * Memory cluster that keeps the record content out of the Java heap in its own {@link OMemorySlabArena}. Positions are resolved
+ * by a paged index of immutable entries: every change publishes a new entry, so reads don't lock. A reader copies the content of
+ * the entry found, then checks the entry is still the current one, otherwise its chunk could have been reused and the read is
+ * retried. Changes are serialized by a lock per cluster.
+ */
+public class OClusterMemoryOffHeap implements OCluster {
+	public static final String													TYPE				= OClusterMemory.TYPE;
+
+	private static final int														PAGE_BITS		= 10;
+	private static final int														PAGE_SIZE		= 1 << PAGE_BITS;
+
+	private final int																		id;
+	private String																			name;
+	private final OMemorySlabArena											arena;
+	private final ReentrantLock													writeLock		= new ReentrantLock();
+
+	private volatile OPage[]														pages;
+	private volatile long																lastPosition;
+	private volatile long																entries;
+	private volatile long																recordsSize;
+	private long[]																			removed			= new long[16];
+	private int																					removedCount;
+
+	/**
+	 * Page of the position index. Pages are allocated once and never copied.
+	 */
+	@SuppressWarnings("serial")
+	protected static final class OPage extends AtomicReferenceArray<OEntry> {
+		protected OPage() {
+			super(PAGE_SIZE);
+		}
+	}
+
+	/**
+	 * Immutable entry of the position index.
+	 */
+	protected static final class OEntry {
+		protected final long	address;
+		protected final int		size;
+		protected final int		version;
+		protected final byte	type;
+
+		protected OEntry(final long iAddress, final int iSize, final int iVersion, final byte iType) {
+			address = iAddress;
+			size = iSize;
+			version = iVersion;
+			type = iType;
+		}
+	}
+
+	public OClusterMemoryOffHeap(final int iId, final String iName, final int iSlabSize) {
+		id = iId;
+		name = iName;
+		arena = new OMemorySlabArena(iSlabSize);
+		reset();
+	}
+
+	/**
+	 * Reads the record without locking.
+	 *
+	 * @return The record or null if deleted
+	 */
+	public ORawBuffer readRecord(final long iPosition) {
+		while (true) {
+			final OEntry entry = getEntry(iPosition);
+			if (entry == null)
+				return null;
+
+			byte[] content = null;
+			try {
+				content = entry.size > 0 ? arena.read(entry.address, entry.size) : new byte[0];
+			} catch (RuntimeException e) {
+				// THE CHUNK HAS BEEN RELEASED IN THE MEANWHILE
+			}
+
+			if (getEntry(iPosition) == entry) {
+				if (content == null)
+					throw new OStorageException("Cannot read the record at position " + iPosition + " of cluster '" + name + "'");
+				return new ORawBuffer(content, entry.version, entry.type);
+			}
+
+			// THE RECORD CHANGED WHILE READING: RETRY
+		}
+	}
+
+	/**
+	 * Creates a new record.
+	 *
+	 * @return The position of the record
+	 */
+	public long createRecord(final byte[] iContent, final byte iRecordType) {
+		writeLock.lock();
+		try {
+
+			final long position = removedCount > 0 ? removed[--removedCount] : lastPosition + 1;
+			setEntry(position, store(iContent, 0, iRecordType));
+
+			if (position > lastPosition)
+				lastPosition = position;
+			entries++;
+			recordsSize += iContent.length;
+			return position;
+
+		} finally {
+			writeLock.unlock();
+		}
+	}
+
+	/**
+	 * Updates the record content with the same version policy of {@link OStorageMemory}.
+	 *
+	 * @return The new version or -1 if the record doesn't exist
+	 */
+	public int updateRecord(final ORecordId iRid, final byte[] iContent, final int iVersion, final byte iRecordType) {
+		writeLock.lock();
+		try {
+
+			final OEntry entry = getEntry(iRid.clusterPosition);
+			if (entry == null)
+				return -1;
+
+			int version = entry.version;
+			if (iVersion != -1) {
+				if (iVersion > -1) {
+					// MVCC TRANSACTION: CHECK IF VERSION IS THE SAME
+					if (iVersion != version)
+						throw new OConcurrentModificationException(
+								"Cannot update record "
+										+ iRid
+										+ " because the version is not the latest. Probably you are updating an old record or it has been modified by another user (db=v"
+										+ version + " your=v" + iVersion + ")", iRid, version, iVersion);
+					++version;
+				} else
+					--version;
+			}
+
+			setEntry(iRid.clusterPosition, store(iContent, version, iRecordType));
+			release(entry);
+			recordsSize += iContent.length - entry.size;
+
+			return version;
+
+		} finally {
+			writeLock.unlock();
+		}
+	}
+
+	/**
+	 * Deletes the record.
+	 *
+	 * @return true if the record has been deleted, false if it was already deleted
+	 */
+	public boolean deleteRecord(final ORecordId iRid, final int iVersion) {
+		writeLock.lock();
+		try {
+
+			final OEntry entry = getEntry(iRid.clusterPosition);
+			if (entry == null)
+				return false;
+
+			// MVCC TRANSACTION: CHECK IF VERSION IS THE SAME
+			if (iVersion > -1 && entry.version != iVersion)
+				throw new OConcurrentModificationException(
+						"Cannot delete record "
+								+ iRid
+								+ " because the version is not the latest. Probably you are deleting an old record or it has been modified by another user (db=v"
+								+ entry.version + " your=v" + iVersion + ")", iRid, entry.version, iVersion);
+
+			remove(iRid.clusterPosition, entry);
+			return true;
+
+		} finally {
+			writeLock.unlock();
+		}
+	}
+
+	/**
+	 * Puts the record at the position received. Used to restore snapshots: positions must be restored in ascending order.
+	 */
+	protected void restoreRecord(final long iPosition, final byte[] iContent, final int iVersion, final byte iRecordType) {
+		writeLock.lock();
+		try {
+
+			for (long p = lastPosition + 1; p < iPosition; ++p)
+				pushRemoved(p);
+
+			setEntry(iPosition, store(iContent, iVersion, iRecordType));
+			lastPosition = iPosition;
+			entries++;
+			recordsSize += iContent.length;
+
+		} finally {
+			writeLock.unlock();
+		}
+	}
+
+	public OClusterPositionIterator absoluteIterator() {
+		return new OClusterPositionIterator(this);
+	}
+
+	public OClusterPositionIterator absoluteIterator(final long iBeginRange, final long iEndRange) throws IOException {
+		return new OClusterPositionIterator(this, iBeginRange, iEndRange);
+	}
+
+	public void create(final int iStartSize) throws IOException {
+	}
+
+	public void open() throws IOException {
+	}
+
+	public void close() {
+		truncate();
+	}
+
+	public void delete() {
+		truncate();
+	}
+
+	public void truncate() {
+		writeLock.lock();
+		try {
+
+			reset();
+			arena.clear();
+
+		} finally {
+			writeLock.unlock();
+		}
+	}
+
+	public void set(final ATTRIBUTES iAttribute, final Object iValue) throws IOException {
+		if (iAttribute == null)
+			throw new IllegalArgumentException("attribute is null");
+
+		final String stringValue = iValue != null ? iValue.toString() : null;
+
+		switch (iAttribute) {
+		case NAME:
+			name = stringValue;
+		}
+	}
+
+	public String getType() {
+		return TYPE;
+	}
+
+	public long addPhysicalPosition(final int iDataSegmentId, final long iPosition, final byte iRecordType) {
+		return createRecord(new byte[0], iRecordType);
+	}
+
+	public OPhysicalPosition getPhysicalPosition(final long iPosition, final OPhysicalPosition iPPosition) {
+		final OEntry entry = getEntry(iPosition);
+		if (entry == null)
+			return null;
+
+		final OPhysicalPosition ppos = iPPosition != null ? iPPosition : new OPhysicalPosition();
+		ppos.dataSegmentId = 0;
+		ppos.dataChunkPosition = iPosition;
+		ppos.type = entry.type;
+		ppos.version = entry.version;
+		ppos.recordSize = entry.size;
+		return ppos;
+	}
+
+	/**
+	 * Not supported: records have no data segment to move them in. Only local storages call it, to compact the data segments and to
+	 * restore backups, and both refuse clusters that are not {@link com.orientechnologies.orient.core.storage.impl.local.OClusterLocal}.
+	 */
+	public void setPhysicalPosition(final long iPosition, final long iDataPosition) {
+		throw new UnsupportedOperationException("Off-heap clusters store the records by themselves");
+	}
+
+	/**
+	 * Not supported: records are created by {@link #createRecord(byte[], byte)} and restored by
+	 * {@link #restoreRecord(long, byte[], int, byte)}.
+	 */
+	public void setPhysicalPosition(final long iPosition, final int iDataSegment, final long iDataPosition, final byte iRecordType,
+			final int iVersion) {
+		throw new UnsupportedOperationException("Off-heap clusters store the records by themselves");
+	}
+
+	public void removePhysicalPosition(final long iPosition, final OPhysicalPosition iPPosition) {
+		writeLock.lock();
+		try {
+
+			final OEntry entry = getEntry(iPosition);
+			if (entry != null)
+				remove(iPosition, entry);
+
+		} finally {
+			writeLock.unlock();
+		}
+	}
+
+	public void updateRecordType(final long iPosition, final byte iRecordType) {
+		writeLock.lock();
+		try {
+
+			final OEntry entry = getEntry(iPosition);
+			if (entry != null)
+				setEntry(iPosition, new OEntry(entry.address, entry.size, entry.version, iRecordType));
+
+		} finally {
+			writeLock.unlock();
+		}
+	}
+
+	public void updateVersion(final long iPosition, final int iVersion) {
+		writeLock.lock();
+		try {
+
+			final OEntry entry = getEntry(iPosition);
+			if (entry != null)
+				setEntry(iPosition, new OEntry(entry.address, entry.size, iVersion, entry.type));
+
+		} finally {
+			writeLock.unlock();
+		}
+	}
+
+	public long getEntries() {
+		return entries;
+	}
+
+	public long getFirstEntryPosition() {
+		return lastPosition > -1 ? 0 : -1;
+	}
+
+	public long getLastEntryPosition() {
+		return lastPosition;
+	}
+
+	public long getAvailablePosition() {
+		return lastPosition + 1;
+	}
+
+	public long getSize() {
+		return recordsSize;
+	}
+
+	public long getRecordsSize() {
+		return recordsSize;
+	}
+
+	/**
+	 * Returns the bytes of direct memory reserved by the cluster.
+	 */
+	public long getAllocatedMemory() {
+		writeLock.lock();
+		try {
+
+			return arena.getAllocatedBytes();
+
+		} finally {
+			writeLock.unlock();
+		}
+	}
+
+	public void lock() {
+		writeLock.lock();
+	}
+
+	public void unlock() {
+		writeLock.unlock();
+	}
+
+	public int getId() {
+		return id;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public void synch() {
+	}
+
+	@Override
+	public String toString() {
+		return "OClusterMemoryOffHeap [name=" + name + ", id=" + id + ", entries=" + entries + ", removed=" + removedCount + "]";
+	}
+
+	protected OEntry getEntry(final long iPosition) {
+		if (iPosition < 0)
+			return null;
+
+		final OPage[] currentPages = pages;
+		final int page = (int) (iPosition >>> PAGE_BITS);
+		if (page >= currentPages.length || currentPages[page] == null)
+			return null;
+
+		return currentPages[page].get((int) (iPosition & (PAGE_SIZE - 1)));
+	}
+
+	private void setEntry(final long iPosition, final OEntry iEntry) {
+		final int page = (int) (iPosition >>> PAGE_BITS);
+
+		OPage[] currentPages = pages;
+		if (page >= currentPages.length) {
+			// GROW THE DIRECTORY ONLY: PAGES ARE NEVER COPIED, SO ENTRIES LIVE IN ONE PLACE
+			final OPage[] newPages = new OPage[Math.max(page + 1, currentPages.length * 2)];
+			System.arraycopy(currentPages, 0, newPages, 0, currentPages.length);
+			currentPages = newPages;
+		}
+		if (currentPages[page] == null)
+			currentPages[page] = new OPage();
+
+		currentPages[page].set((int) (iPosition & (PAGE_SIZE - 1)), iEntry);
+
+		// PUBLISH THE DIRECTORY AFTER THE ENTRY
+		pages = currentPages;
+	}
+
+	private OEntry store(final byte[] iContent, final int iVersion, final byte iRecordType) {
+		long address = -1;
+		if (iContent.length > 0) {
+			address = arena.allocate(iContent.length);
+			arena.write(address, iContent);
+		}
+		return new OEntry(address, iContent.length, iVersion, iRecordType);
+	}
+
+	private void release(final OEntry iEntry) {
+		if (iEntry.size > 0)
+			arena.free(iEntry.address, iEntry.size);
+	}
+
+	private void remove(final long iPosition, final OEntry iEntry) {
+		setEntry(iPosition, null);
+		release(iEntry);
+		pushRemoved(iPosition);
+		entries--;
+		recordsSize -= iEntry.size;
+	}
+
+	private void pushRemoved(final long iPosition) {
+		if (removedCount == removed.length) {
+			final long[] newRemoved = new long[removed.length * 2];
+			System.arraycopy(removed, 0, newRemoved, 0, removedCount);
+			removed = newRemoved;
+		}
+		removed[removedCount++] = iPosition;
+	}
+
+	private void reset() {
+		pages = new OPage[0];
+		lastPosition = -1;
+		entries = 0;
+		recordsSize = 0;
+		removedCount = 0;
+	}
+}
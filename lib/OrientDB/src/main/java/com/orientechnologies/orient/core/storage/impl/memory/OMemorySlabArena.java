@@ -0,0 +1,226 @@
+/*
+ * Copyright 1999-2010 Luca Garulli (l.garulli--at--orientechnologies.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.orientechnologies.orient.core.storage.impl.memory;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Allocator of chunks of direct memory, out of the Java heap. Memory is reserved in slabs of fixed size that are split in
+ * chunks of size classes: powers of two and the 3/4 of them, so the space wasted is at most 1/3 of the chunk. Freed chunks are
+ * kept in a free list per size class. Content bigger than a slab gets a dedicated slab, released when the chunk is freed.<br/>
+ * <br/>
+ * Chunks are addressed by a long containing the slab index in the high 32 bits and the offset in the low ones.<br/>
+ * <br/>
+ * Allocation and release must be serialized by the caller, while the content can be read by any thread at any time: readers of
+ * chunks that could be freed concurrently must validate the content read by themselves.
+ */
+public class OMemorySlabArena {
+	private static final int		MIN_CHUNK_BITS	= 4;
+	private static final int		CLASSES					= 64;
+
+	private final int						slabSize;
+	private volatile ByteBuffer[]	slabs						= new ByteBuffer[0];
+	private int									currentSlab			= -1;
+	private int									currentOffset;
+
+	private final long[][]			freeChunks			= new long[CLASSES][];
+	private final int[]					freeCounts			= new int[CLASSES];
+	private int[]								freeSlabs				= new int[4];
+	private int									freeSlabCount;
+
+	private long								allocatedBytes;
+	private long								usedBytes;
+
+	public OMemorySlabArena(final int iSlabSize) {
+		slabSize = Math.max(iSlabSize, 1 << (MIN_CHUNK_BITS + 2));
+	}
+
+	/**
+	 * Allocates a chunk big enough for iSize bytes.
+	 *
+	 * @return The address of the chunk
+	 */
+	public long allocate(final int iSize) {
+		final int sizeClass = getSizeClass(iSize);
+		final int chunkSize = getChunkSize(sizeClass);
+		usedBytes += chunkSize;
+
+		if (chunkSize > slabSize) {
+			// DEDICATED SLAB
+			allocatedBytes += chunkSize;
+			return address(addSlab(ByteBuffer.allocateDirect(chunkSize)), 0);
+		}
+
+		if (freeCounts[sizeClass] > 0)
+			return freeChunks[sizeClass][--freeCounts[sizeClass]];
+
+		if (currentSlab == -1 || currentOffset + chunkSize > slabSize) {
+			// RECYCLE THE TAIL OF THE CURRENT SLAB
+			if (currentSlab > -1)
+				while (slabSize - currentOffset >= 1 << MIN_CHUNK_BITS) {
+					final int tailClass = getSizeClassNotBigger(slabSize - currentOffset);
+					pushFree(tailClass, address(currentSlab, currentOffset));
+					currentOffset += getChunkSize(tailClass);
+				}
+
+			allocatedBytes += slabSize;
+			currentSlab = addSlab(ByteBuffer.allocateDirect(slabSize));
+			currentOffset = 0;
+		}
+
+		final long address = address(currentSlab, currentOffset);
+		currentOffset += chunkSize;
+		return address;
+	}
+
+	/**
+	 * Frees a chunk allocated for iSize bytes.
+	 */
+	public void free(final long iAddress, final int iSize) {
+		final int sizeClass = getSizeClass(iSize);
+		final int chunkSize = getChunkSize(sizeClass);
+		usedBytes -= chunkSize;
+
+		if (chunkSize > slabSize) {
+			// RELEASE THE DEDICATED SLAB: THE MEMORY WILL BE RETURNED TO THE OS ONCE THE BUFFER IS COLLECTED
+			final int slab = (int) (iAddress >>> 32);
+			final ByteBuffer[] newSlabs = slabs.clone();
+			newSlabs[slab] = null;
+			slabs = newSlabs;
+			allocatedBytes -= chunkSize;
+
+			if (freeSlabCount == freeSlabs.length) {
+				final int[] newFreeSlabs = new int[freeSlabs.length * 2];
+				System.arraycopy(freeSlabs, 0, newFreeSlabs, 0, freeSlabCount);
+				freeSlabs = newFreeSlabs;
+			}
+			freeSlabs[freeSlabCount++] = slab;
+		} else
+			pushFree(sizeClass, iAddress);
+	}
+
+	public void write(final long iAddress, final byte[] iContent) {
+		final ByteBuffer buffer = slabs[(int) (iAddress >>> 32)].duplicate();
+		buffer.position((int) iAddress);
+		buffer.put(iContent);
+	}
+
+	/**
+	 * Reads iSize bytes from the chunk. Can be called without synchronization.
+	 *
+	 * @throws IllegalStateException
+	 *           if the slab has been released in the meanwhile
+	 */
+	public byte[] read(final long iAddress, final int iSize) {
+		final ByteBuffer[] currentSlabs = slabs;
+		final int slab = (int) (iAddress >>> 32);
+		if (slab >= currentSlabs.length || currentSlabs[slab] == null)
+			throw new IllegalStateException("Slab " + slab + " has been released");
+
+		final ByteBuffer buffer = currentSlabs[slab].duplicate();
+		buffer.position((int) iAddress);
+
+		final byte[] content = new byte[iSize];
+		buffer.get(content);
+		return content;
+	}
+
+	/**
+	 * Releases all the slabs.
+	 */
+	public void clear() {
+		slabs = new ByteBuffer[0];
+		currentSlab = -1;
+		currentOffset = 0;
+		for (int i = 0; i < CLASSES; ++i) {
+			freeChunks[i] = null;
+			freeCounts[i] = 0;
+		}
+		freeSlabCount = 0;
+		allocatedBytes = 0;
+		usedBytes = 0;
+	}
+
+	/**
+	 * Returns the bytes of direct memory reserved.
+	 */
+	public long getAllocatedBytes() {
+		return allocatedBytes;
+	}
+
+	/**
+	 * Returns the bytes of direct memory used by chunks.
+	 */
+	public long getUsedBytes() {
+		return usedBytes;
+	}
+
+	private int addSlab(final ByteBuffer iSlab) {
+		final ByteBuffer[] newSlabs;
+		final int index;
+		if (freeSlabCount > 0) {
+			index = freeSlabs[--freeSlabCount];
+			newSlabs = slabs.clone();
+		} else {
+			index = slabs.length;
+			newSlabs = new ByteBuffer[index + 1];
+			System.arraycopy(slabs, 0, newSlabs, 0, index);
+		}
+		newSlabs[index] = iSlab;
+		slabs = newSlabs;
+		return index;
+	}
+
+	private void pushFree(final int iSizeClass, final long iAddress) {
+		long[] stack = freeChunks[iSizeClass];
+		if (stack == null)
+			stack = freeChunks[iSizeClass] = new long[16];
+		else if (freeCounts[iSizeClass] == stack.length) {
+			final long[] newStack = new long[stack.length * 2];
+			System.arraycopy(stack, 0, newStack, 0, stack.length);
+			stack = freeChunks[iSizeClass] = newStack;
+		}
+		stack[freeCounts[iSizeClass]++] = iAddress;
+	}
+
+	private static long address(final int iSlab, final int iOffset) {
+		return ((long) iSlab << 32) | iOffset;
+	}
+
+	/**
+	 * Returns the smallest size class that can contain iSize bytes. Odd classes are powers of two, even classes the 3/4 of the
+	 * next power of two.
+	 */
+	private static int getSizeClass(final int iSize) {
+		final int bits = Math.max(32 - Integer.numberOfLeadingZeros(Math.max(iSize, 1) - 1), MIN_CHUNK_BITS);
+		if (bits > MIN_CHUNK_BITS && iSize <= (3 << (bits - 2)))
+			return bits * 2;
+		return bits * 2 + 1;
+	}
+
+	private static int getSizeClassNotBigger(final int iSize) {
+		final int bits = 31 - Integer.numberOfLeadingZeros(iSize);
+		if (bits >= MIN_CHUNK_BITS && iSize >= (3 << (bits - 1)))
+			// 3/4 OF THE NEXT POWER OF TWO FITS
+			return (bits + 1) * 2;
+		return bits * 2 + 1;
+	}
+
+	private static int getChunkSize(final int iSizeClass) {
+		final int bits = iSizeClass / 2;
+		return iSizeClass % 2 == 1 ? 1 << bits : 3 << (bits - 2);
+	}
+}
@@ -25,6 +25,7 @@ import java.util.Map;
 import java.util.Set;
 
 import com.orientechnologies.common.concur.lock.OLockManager.LOCK;
+import com.orientechnologies.common.log.OLogManager;
 import com.orientechnologies.common.profiler.OProfiler;
 import com.orientechnologies.orient.core.Orient;
 import com.orientechnologies.orient.core.config.OStorageConfiguration;
@@ -58,9 +59,9 @@ import com.orientechnologies.orient.core.tx.OTxListener;
  * 
  */
 public class OStorageMemory extends OStorageEmbedded {
-	private final ODataSegmentMemory		data							= new ODataSegmentMemory();
-	private final List<OClusterMemory>	clusters					= new ArrayList<OClusterMemory>();
-	private int													defaultClusterId	= 0;
+	private final ODataSegmentMemory	data							= new ODataSegmentMemory();
+	protected final List<OCluster>		clusters					= new ArrayList<OCluster>();
+	protected int											defaultClusterId	= 0;
 
 	public OStorageMemory(final String iURL) {
 		super(iURL, OEngineMemory.NAME + ":" + iURL, "rw");
@@ -132,9 +133,13 @@ public class OStorageMemory extends OStorageEmbedded {
 			status = STATUS.CLOSING;
 
 			// CLOSE ALL THE CLUSTERS
-			for (OClusterMemory c : clusters)
+			for (OCluster c : clusters)
 				if (c != null)
-					c.close();
+					try {
+						c.close();
+					} catch (IOException e) {
+						OLogManager.instance().error(this, "Error on closing cluster '" + c.getName() + "'", e);
+					}
 			clusters.clear();
 
 			// CLOSE THE DATA SEGMENT
@@ -169,7 +174,7 @@ public class OStorageMemory extends OStorageEmbedded {
 				}
 			}
 
-			final OClusterMemory cluster = new OClusterMemory(clusterId, iClusterName.toLowerCase());
+			final OCluster cluster = createCluster(clusterId, iClusterName.toLowerCase());
 
 			if (clusterId == clusters.size())
 				// APPEND IT
@@ -574,7 +579,7 @@ public class OStorageMemory extends OStorageEmbedded {
 		try {
 			size += data.getSize();
 
-			for (OClusterMemory c : clusters)
+			for (OCluster c : clusters)
 				if (c != null)
 					size += c.getSize();
 
@@ -661,12 +666,19 @@ public class OStorageMemory extends OStorageEmbedded {
 			((OTxListener) txEntry.getRecord()).onEvent(txEntry, OTxListener.EVENT.AFTER_COMMIT);
 	}
 
+	/**
+	 * Creates the instance of a new cluster. Override it to use a different cluster implementation.
+	 */
+	protected OCluster createCluster(final int iId, final String iName) {
+		return new OClusterMemory(iId, iName);
+	}
+
 	public OStorageConfigurationSegment getConfigurationSegment() {
 		return null;
 	}
 
 	public void renameCluster(final String iOldName, final String iNewName) {
-		final OClusterMemory cluster = (OClusterMemory) getClusterByName(iOldName);
+		final OCluster cluster = getClusterByName(iOldName);
 		if (cluster != null)
 			try {
 				cluster.set(com.orientechnologies.orient.core.storage.OCluster.ATTRIBUTES.NAME, iNewName);
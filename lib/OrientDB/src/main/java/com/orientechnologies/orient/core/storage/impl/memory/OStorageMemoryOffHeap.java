@@ -0,0 +1,351 @@
+/*
+ * Copyright 1999-2010 Luca Garulli (l.garulli--at--orientechnologies.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.orientechnologies.orient.core.storage.impl.memory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import com.orientechnologies.common.profiler.OProfiler;
+import com.orientechnologies.orient.core.config.OGlobalConfiguration;
+import com.orientechnologies.orient.core.exception.ORecordNotFoundException;
+import com.orientechnologies.orient.core.exception.OStorageException;
+import com.orientechnologies.orient.core.id.ORID;
+import com.orientechnologies.orient.core.id.ORecordId;
+import com.orientechnologies.orient.core.storage.OCluster;
+import com.orientechnologies.orient.core.storage.OPhysicalPosition;
+import com.orientechnologies.orient.core.storage.ORawBuffer;
+import com.orientechnologies.orient.core.storage.ORecordCallback;
+import com.orientechnologies.orient.core.storage.OStorage;
+
+/**
+ * Memory storage that keeps the records out of the Java heap, in the slabs of {@link OClusterMemoryOffHeap} clusters, so big
+ * databases don't weigh on the garbage collector. Reads don't acquire any lock, while changes are serialized per cluster. Since
+ * reads don't wait for transactions, a reader can see the records already written by a transaction in progress.<br/>
+ * <br/>
+ * The content can be saved to a snapshot file and loaded back in a new storage.
+ *
+ * @see OGlobalConfiguration#STORAGE_MEMORY_OFFHEAP
+ */
+public class OStorageMemoryOffHeap extends OStorageMemory {
+	private static final int							SNAPSHOT_VERSION	= 1;
+
+	private final int											slabSize;
+	private volatile OClusterMemoryOffHeap[]	clusterArray			= new OClusterMemoryOffHeap[0];
+
+	public OStorageMemoryOffHeap(final String iURL) {
+		super(iURL);
+		slabSize = OGlobalConfiguration.STORAGE_MEMORY_SLAB_SIZE.getValueAsInteger();
+	}
+
+	@Override
+	public int addCluster(final String iClusterName, final OStorage.CLUSTER_TYPE iClusterType, final Object... iParameters) {
+		lock.acquireExclusiveLock();
+		try {
+
+			final int clusterId = super.addCluster(iClusterName, iClusterType, iParameters);
+			refreshClusters();
+			return clusterId;
+
+		} finally {
+			lock.releaseExclusiveLock();
+		}
+	}
+
+	@Override
+	public boolean dropCluster(final int iClusterId) {
+		lock.acquireExclusiveLock();
+		try {
+
+			final boolean result = super.dropCluster(iClusterId);
+			refreshClusters();
+			return result;
+
+		} finally {
+			lock.releaseExclusiveLock();
+		}
+	}
+
+	@Override
+	public void close(final boolean iForce) {
+		lock.acquireExclusiveLock();
+		try {
+
+			super.close(iForce);
+			refreshClusters();
+
+		} finally {
+			lock.releaseExclusiveLock();
+		}
+	}
+
+	@Override
+	public long createRecord(final ORecordId iRid, final byte[] iContent, final byte iRecordType, final int iMode,
+			final ORecordCallback<Long> iCallback) {
+		final long timer = OProfiler.getInstance().startChrono();
+
+		lock.acquireSharedLock();
+		try {
+
+			iRid.clusterPosition = getCluster(iRid.clusterId).createRecord(iContent, iRecordType);
+			return iRid.clusterPosition;
+
+		} finally {
+			lock.releaseSharedLock();
+			OProfiler.getInstance().stopChrono("OStorageMemoryOffHeap.createRecord", timer);
+		}
+	}
+
+	@Override
+	public ORawBuffer readRecord(final ORecordId iRid, final String iFetchPlan, final ORecordCallback<ORawBuffer> iCallback) {
+		return readRecord(getCluster(iRid.clusterId), iRid, true);
+	}
+
+	@Override
+	protected ORawBuffer readRecord(final OCluster iClusterSegment, final ORecordId iRid, final boolean iAtomicLock) {
+		final long timer = OProfiler.getInstance().startChrono();
+		try {
+
+			final long lastPos = iClusterSegment.getLastEntryPosition();
+
+			if (iRid.clusterPosition > lastPos)
+				throw new ORecordNotFoundException("Record " + iRid + " is outside cluster size. Valid range for cluster '"
+						+ iClusterSegment.getName() + "' is 0-" + lastPos);
+
+			return ((OClusterMemoryOffHeap) iClusterSegment).readRecord(iRid.clusterPosition);
+
+		} finally {
+			OProfiler.getInstance().stopChrono("OStorageMemoryOffHeap.readRecord", timer);
+		}
+	}
+
+	@Override
+	public int updateRecord(final ORecordId iRid, final byte[] iContent, final int iVersion, final byte iRecordType,
+			final int iMode, final ORecordCallback<Integer> iCallback) {
+		final long timer = OProfiler.getInstance().startChrono();
+
+		lock.acquireSharedLock();
+		try {
+
+			return getCluster(iRid.clusterId).updateRecord(iRid, iContent, iVersion, iRecordType);
+
+		} finally {
+			lock.releaseSharedLock();
+			OProfiler.getInstance().stopChrono("OStorageMemoryOffHeap.updateRecord", timer);
+		}
+	}
+
+	@Override
+	public boolean deleteRecord(final ORecordId iRid, final int iVersion, final int iMode, final ORecordCallback<Boolean> iCallback) {
+		final long timer = OProfiler.getInstance().startChrono();
+
+		lock.acquireSharedLock();
+		try {
+
+			return getCluster(iRid.clusterId).deleteRecord(iRid, iVersion);
+
+		} finally {
+			lock.releaseSharedLock();
+			OProfiler.getInstance().stopChrono("OStorageMemoryOffHeap.deleteRecord", timer);
+		}
+	}
+
+	@Override
+	public boolean checkForRecordValidity(final OPhysicalPosition ppos) {
+		return ppos.dataSegmentId == 0;
+	}
+
+	/**
+	 * Returns the bytes of direct memory reserved by all the clusters.
+	 */
+	public long getAllocatedMemory() {
+		long size = 0;
+		for (OClusterMemoryOffHeap c : clusterArray)
+			if (c != null)
+				size += c.getAllocatedMemory();
+		return size;
+	}
+
+	/**
+	 * Saves the content of the storage to a file.
+	 *
+	 * @see #loadSnapshot(String)
+	 */
+	public void saveSnapshot(final String iPath) {
+		try {
+			final OutputStream out = new BufferedOutputStream(new FileOutputStream(iPath));
+			try {
+				saveSnapshot(out);
+			} finally {
+				out.close();
+			}
+		} catch (IOException e) {
+			throw new OStorageException("Error on saving the snapshot of storage '" + name + "' to: " + iPath, e);
+		}
+	}
+
+	/**
+	 * Saves the content of the storage to a stream. Changes are blocked until the snapshot is completed.
+	 */
+	public void saveSnapshot(final OutputStream iOutput) throws IOException {
+		final long timer = OProfiler.getInstance().startChrono();
+
+		lock.acquireExclusiveLock();
+		try {
+			checkOpeness();
+
+			final DataOutputStream out = new DataOutputStream(iOutput);
+			out.writeInt(SNAPSHOT_VERSION);
+			out.writeInt(clusters.size());
+
+			for (OCluster c : clusters) {
+				out.writeBoolean(c != null);
+				if (c == null)
+					continue;
+
+				final OClusterMemoryOffHeap cluster = (OClusterMemoryOffHeap) c;
+				out.writeUTF(cluster.getName());
+
+				final long lastPos = cluster.getLastEntryPosition();
+				for (long pos = 0; pos <= lastPos; ++pos) {
+					final ORawBuffer record = cluster.readRecord(pos);
+					if (record == null)
+						continue;
+
+					out.writeLong(pos);
+					out.writeInt(record.version);
+					out.writeByte(record.recordType);
+					out.writeInt(record.buffer.length);
+					out.write(record.buffer);
+				}
+
+				// END OF CLUSTER
+				out.writeLong(-1);
+			}
+			out.flush();
+
+		} finally {
+			lock.releaseExclusiveLock();
+			OProfiler.getInstance().stopChrono("OStorageMemoryOffHeap.saveSnapshot", timer);
+		}
+	}
+
+	/**
+	 * Replaces the content of the storage with the snapshot contained in a file. Databases opened on the storage have to reload
+	 * their metadata.
+	 *
+	 * @see #saveSnapshot(String)
+	 */
+	public void loadSnapshot(final String iPath) {
+		try {
+			final InputStream in = new BufferedInputStream(new FileInputStream(iPath));
+			try {
+				loadSnapshot(in);
+			} finally {
+				in.close();
+			}
+		} catch (IOException e) {
+			throw new OStorageException("Error on loading the snapshot of storage '" + name + "' from: " + iPath, e);
+		}
+	}
+
+	/**
+	 * Replaces the content of the storage with the snapshot read from a stream.
+	 */
+	public void loadSnapshot(final InputStream iInput) throws IOException {
+		final long timer = OProfiler.getInstance().startChrono();
+
+		lock.acquireExclusiveLock();
+		try {
+			checkOpeness();
+
+			final DataInputStream in = new DataInputStream(iInput);
+			final int version = in.readInt();
+			if (version != SNAPSHOT_VERSION)
+				throw new OStorageException("Unsupported snapshot version " + version + " for storage '" + name + "'");
+
+			// REMOVE THE CURRENT CONTENT
+			for (OCluster c : clusters)
+				if (c != null)
+					c.delete();
+			clusters.clear();
+
+			final int total = in.readInt();
+			for (int i = 0; i < total; ++i) {
+				if (!in.readBoolean()) {
+					clusters.add(null);
+					continue;
+				}
+
+				final OClusterMemoryOffHeap cluster = (OClusterMemoryOffHeap) createCluster(i, in.readUTF());
+				clusters.add(cluster);
+
+				for (long pos = in.readLong(); pos > -1; pos = in.readLong()) {
+					final int recordVersion = in.readInt();
+					final byte recordType = in.readByte();
+					final byte[] content = new byte[in.readInt()];
+					in.readFully(content);
+
+					cluster.restoreRecord(pos, content, recordVersion, recordType);
+				}
+			}
+
+			defaultClusterId = Math.max(getClusterIdByName(OStorage.CLUSTER_DEFAULT_NAME), 0);
+			refreshClusters();
+
+			level2Cache.clear();
+			configuration.load();
+			incrementVersion();
+
+		} finally {
+			lock.releaseExclusiveLock();
+			OProfiler.getInstance().stopChrono("OStorageMemoryOffHeap.loadSnapshot", timer);
+		}
+	}
+
+	@Override
+	protected OCluster createCluster(final int iId, final String iName) {
+		return new OClusterMemoryOffHeap(iId, iName, slabSize);
+	}
+
+	/**
+	 * Resolves the cluster without locking the storage.
+	 */
+	protected OClusterMemoryOffHeap getCluster(int iClusterId) {
+		if (iClusterId == ORID.CLUSTER_ID_INVALID)
+			// GET THE DEFAULT CLUSTER
+			iClusterId = defaultClusterId;
+
+		final OClusterMemoryOffHeap[] current = clusterArray;
+		if (iClusterId < 0 || iClusterId >= current.length || current[iClusterId] == null)
+			throw new OStorageException("Cluster #" + iClusterId + " does not exist in storage '" + name + "'");
+
+		return current[iClusterId];
+	}
+
+	private void refreshClusters() {
+		final OClusterMemoryOffHeap[] newArray = new OClusterMemoryOffHeap[clusters.size()];
+		for (int i = 0; i < newArray.length; ++i)
+			newArray[i] = (OClusterMemoryOffHeap) clusters.get(i);
+		clusterArray = newArray;
+	}
+}
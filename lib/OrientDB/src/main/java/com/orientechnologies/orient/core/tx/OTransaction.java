@@ -17,6 +17,7 @@ package com.orientechnologies.orient.core.tx;
 
 import java.util.List;
 
+import com.orientechnologies.orient.core.config.OGlobalConfiguration;
 import com.orientechnologies.orient.core.db.ODatabaseComplex.OPERATION_MODE;
 import com.orientechnologies.orient.core.db.record.ODatabaseRecordTx;
 import com.orientechnologies.orient.core.db.record.OIdentifiable;
@@ -35,6 +36,35 @@ public interface OTransaction {
 		INVALID, BEGUN, COMMITTING, ROLLBACKING
 	}
 
+	/**
+	 * Durability guaranteed by the commit of the transaction, from the weakest to the strongest:
+	 * <ul>
+	 * <li>MEMORY: nothing is forced to disk, the OS flushes the changes when it likes</li>
+	 * <li>ASYNC: the storage is flushed in background within "tx.durability.asynchDelay" ms from the commit</li>
+	 * <li>LOG: every transaction log entry is forced to disk, the data is flushed by the OS</li>
+	 * <li>FULL: as LOG plus the whole storage is forced to disk before the commit returns</li>
+	 * </ul>
+	 */
+	public enum DURABILITY {
+		MEMORY, ASYNC, LOG, FULL;
+
+		/**
+		 * Returns the durability configured in "tx.durability". If not set it's computed from the legacy settings "tx.commit.synch"
+		 * and "tx.log.synch".
+		 */
+		public static DURABILITY getDefault() {
+			final String value = OGlobalConfiguration.TX_DURABILITY.getValueAsString();
+			if (value != null && value.length() > 0)
+				return DURABILITY.valueOf(value.toUpperCase());
+
+			if (OGlobalConfiguration.TX_COMMIT_SYNCH.getValueAsBoolean())
+				return FULL;
+			if (OGlobalConfiguration.TX_LOG_SYNCH.getValueAsBoolean())
+				return LOG;
+			return MEMORY;
+		}
+	}
+
 	public void begin();
 
 	public void commit();
@@ -89,5 +119,16 @@ public interface OTransaction {
 
 	public void setUsingLog(boolean useLog);
 
+	/**
+	 * Returns the durability of the transaction: the one set with {@link #setDurability(DURABILITY)} or, if not set, the one of the
+	 * database. Null means the default of the storage.
+	 */
+	public DURABILITY getDurability();
+
+	/**
+	 * Overrides the durability of the database for this transaction. Null to use the durability of the database.
+	 */
+	public void setDurability(DURABILITY iDurability);
+
 	public void close();
 }
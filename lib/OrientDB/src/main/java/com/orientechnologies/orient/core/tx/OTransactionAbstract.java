@@ -28,6 +28,7 @@ import com.orientechnologies.orient.core.storage.OStorage;
 public abstract class OTransactionAbstract implements OTransaction {
 	protected final ODatabaseRecordTx	database;
 	protected TXSTATUS								status	= TXSTATUS.INVALID;
+	protected DURABILITY							durability;
 
 	protected OTransactionAbstract(final ODatabaseRecordTx iDatabase) {
 		database = iDatabase;
@@ -45,6 +46,14 @@ public abstract class OTransactionAbstract implements OTransaction {
 		return database;
 	}
 
+	public DURABILITY getDurability() {
+		return durability != null ? durability : database.getDurability();
+	}
+
+	public void setDurability(final DURABILITY iDurability) {
+		durability = iDurability;
+	}
+
 	public static void updateCacheFromEntries(final OStorage iStorage, final OTransaction iTx,
 			final Iterable<? extends ORecordOperation> iEntries, final boolean iUpdateStrategy) throws IOException {
 		final OLevel1RecordCache dbCache = (OLevel1RecordCache) iTx.getDatabase().getLevel1Cache();
@@ -0,0 +1,590 @@
+/*
+ * Copyright 1999-2010 Luca Garulli (l.garulli--at--orientechnologies.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.orientechnologies.orient.core.type.bitmap;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.TreeMap;
+
+import com.orientechnologies.common.profiler.OProfiler;
+import com.orientechnologies.orient.core.config.OGlobalConfiguration;
+import com.orientechnologies.orient.core.db.ODatabaseRecordThreadLocal;
+import com.orientechnologies.orient.core.db.record.ODatabaseRecord;
+import com.orientechnologies.orient.core.exception.OSerializationException;
+import com.orientechnologies.orient.core.id.ORID;
+import com.orientechnologies.orient.core.id.ORecordId;
+import com.orientechnologies.orient.core.metadata.schema.OType;
+import com.orientechnologies.orient.core.record.ORecord;
+import com.orientechnologies.orient.core.record.impl.ORecordBytesLazy;
+import com.orientechnologies.orient.core.serialization.OMemoryStream;
+import com.orientechnologies.orient.core.serialization.OSerializableStream;
+import com.orientechnologies.orient.core.serialization.serializer.stream.OStreamSerializer;
+import com.orientechnologies.orient.core.serialization.serializer.stream.OStreamSerializerFactory;
+
+/**
+ * Persistent map of keys to record ids, where the record ids of every key are kept as one {@link OCompressedBitmap} of cluster
+ * positions per cluster. It's designed for few keys with many records each. The header record contains all the keys, so they are
+ * always in memory and sorted, while the bitmaps are split in segments of {@link #SEGMENT_CHUNKS} chunks, each one stored as a
+ * record: the bitmap of a key is loaded at first use and an update saves only the segments changed.<br/>
+ * Changes are saved every "maxUpdatesBeforeSave" updates like {@link com.orientechnologies.orient.core.type.hash.OHashTableDatabase}.
+ * Multiple threads can read the map at the same time, while updates need exclusive access.
+ *
+ * @author Luca Garulli
+ */
+public class OBitmapDatabase<K> implements OSerializableStream {
+	private static final long										serialVersionUID		= 1L;
+
+	protected static final byte									CURRENT_VERSION			= 1;
+	public static final int											SEGMENT_CHUNKS			= 16;
+
+	protected final String											clusterName;
+	protected final ORecordBytesLazy						record;
+	protected OStreamSerializer									keySerializer;
+	protected Class<?>													keyClass;
+
+	protected final TreeMap<K, Map<Integer, Bitmap>>	entries							= new TreeMap<K, Map<Integer, Bitmap>>();
+	protected long															size;
+	protected boolean														dirty;
+
+	protected int																maxUpdatesBeforeSave;
+	protected int																updates							= 0;
+	protected boolean														transactionRunning	= false;
+
+	/**
+	 * Record ids of one key in one cluster.
+	 */
+	protected static class Bitmap {
+		protected long													cardinality;
+		protected final TreeMap<Long, Segment>	segments	= new TreeMap<Long, Segment>();
+		protected final Set<Long>								changed		= new HashSet<Long>();
+		protected volatile OCompressedBitmap		bitmap;
+	}
+
+	/**
+	 * Part of a bitmap stored as a record.
+	 */
+	protected static class Segment implements OSerializableStream {
+		private static final long	serialVersionUID	= 1L;
+
+		protected final ORecordBytesLazy	record;
+		protected final Bitmap						owner;
+		protected final long							number;
+
+		protected Segment(final Bitmap iOwner, final long iNumber, final ORID iRID) {
+			owner = iOwner;
+			number = iNumber;
+			record = new ORecordBytesLazy(this);
+			if (iRID != null)
+				record.setIdentity(iRID.getClusterId(), iRID.getClusterPosition());
+			else
+				record.setIdentity(new ORecordId());
+		}
+
+		public byte[] toStream() throws OSerializationException {
+			final OMemoryStream stream = new OMemoryStream();
+			owner.bitmap.toStream(stream, number * SEGMENT_CHUNKS, number * SEGMENT_CHUNKS + SEGMENT_CHUNKS - 1);
+			return stream.toByteArray();
+		}
+
+		public Segment fromStream(final byte[] iStream) throws OSerializationException {
+			return this;
+		}
+	}
+
+	/**
+	 * Creates a new map in the cluster received.
+	 */
+	public OBitmapDatabase(final String iClusterName, final OStreamSerializer iKeySerializer) {
+		clusterName = iClusterName;
+		keySerializer = iKeySerializer;
+		record = new ORecordBytesLazy(this);
+		record.setIdentity(new ORecordId());
+		config();
+		dirty = true;
+	}
+
+	/**
+	 * Opens an existent map. Call {@link #load()} to read it.
+	 */
+	public OBitmapDatabase(final ODatabaseRecord iDatabase, final ORID iRID) {
+		clusterName = iDatabase.getClusterNameById(iRID.getClusterId());
+		record = new ORecordBytesLazy(this);
+		record.setIdentity(iRID.getClusterId(), iRID.getClusterPosition());
+		config();
+	}
+
+	public OBitmapDatabase<K> load() {
+		record.recycle(this);
+		record.reload();
+		fromStream(record.toStream());
+		return this;
+	}
+
+	/**
+	 * Returns the bitmap of the positions of the records in the cluster associated to the key, or null if there are none. The bitmap
+	 * is the one used by the map: it must not be changed.
+	 */
+	public OCompressedBitmap get(final Object iKey, final int iClusterId) {
+		final Map<Integer, Bitmap> clusters = entries.get(iKey);
+		if (clusters == null)
+			return null;
+
+		final Bitmap bitmap = clusters.get(iClusterId);
+		return bitmap != null ? loadBitmap(bitmap) : null;
+	}
+
+	/**
+	 * Returns the ids of the clusters having records associated to the key.
+	 */
+	public Set<Integer> getClusterIds(final Object iKey) {
+		final Map<Integer, Bitmap> clusters = entries.get(iKey);
+		if (clusters == null)
+			return Collections.emptySet();
+		return Collections.unmodifiableSet(clusters.keySet());
+	}
+
+	public boolean containsKey(final Object iKey) {
+		return iKey != null && entries.containsKey(iKey);
+	}
+
+	/**
+	 * Returns the number of records associated to the key, without loading the bitmaps.
+	 */
+	public long cardinality(final Object iKey) {
+		final Map<Integer, Bitmap> clusters = entries.get(iKey);
+		if (clusters == null)
+			return 0;
+
+		long total = 0;
+		for (Bitmap bitmap : clusters.values())
+			total += bitmap.cardinality;
+		return total;
+	}
+
+	/**
+	 * Associates the record to the key.
+	 *
+	 * @return true if the record was not associated to the key, otherwise false
+	 */
+	public boolean add(final K iKey, final ORID iRID) {
+		Map<Integer, Bitmap> clusters = entries.get(iKey);
+		if (clusters == null) {
+			clusters = new HashMap<Integer, Bitmap>();
+			entries.put(iKey, clusters);
+		}
+
+		Bitmap bitmap = clusters.get(iRID.getClusterId());
+		if (bitmap == null) {
+			bitmap = new Bitmap();
+			bitmap.bitmap = new OCompressedBitmap();
+			clusters.put(iRID.getClusterId(), bitmap);
+		}
+
+		if (!loadBitmap(bitmap).add(iRID.getClusterPosition()))
+			return false;
+
+		bitmap.cardinality++;
+		size++;
+		changed(bitmap, iRID.getClusterPosition());
+
+		commitChanges();
+		return true;
+	}
+
+	/**
+	 * Removes the association between the record and the key.
+	 *
+	 * @return true if the record was associated to the key, otherwise false
+	 */
+	public boolean remove(final Object iKey, final ORID iRID) {
+		final Map<Integer, Bitmap> clusters = entries.get(iKey);
+		if (clusters == null)
+			return false;
+
+		if (!removePosition(clusters, iRID))
+			return false;
+
+		if (clusters.isEmpty())
+			entries.remove(iKey);
+
+		commitChanges();
+		return true;
+	}
+
+	/**
+	 * Removes the key with all its records.
+	 *
+	 * @return true if the key was present, otherwise false
+	 */
+	public boolean remove(final Object iKey) {
+		final Map<Integer, Bitmap> clusters = entries.remove(iKey);
+		if (clusters == null)
+			return false;
+
+		for (Bitmap bitmap : clusters.values())
+			deleteBitmap(bitmap);
+		dirty = true;
+
+		commitChanges();
+		return true;
+	}
+
+	/**
+	 * Removes the record from all the keys.
+	 *
+	 * @return The number of keys the record was associated to
+	 */
+	public int removeRecord(final ORID iRID) {
+		int removed = 0;
+		for (Iterator<Map<Integer, Bitmap>> it = entries.values().iterator(); it.hasNext();) {
+			final Map<Integer, Bitmap> clusters = it.next();
+			if (removePosition(clusters, iRID)) {
+				removed++;
+				if (clusters.isEmpty())
+					it.remove();
+			}
+		}
+
+		if (removed > 0)
+			commitChanges();
+		return removed;
+	}
+
+	/**
+	 * Returns the keys in ascending order. The set is the one used by the map: it must not be changed.
+	 */
+	public NavigableSet<K> keys() {
+		return entries.navigableKeySet();
+	}
+
+	/**
+	 * Returns the number of record ids in all the keys.
+	 */
+	public long size() {
+		return size;
+	}
+
+	public int getKeyCount() {
+		return entries.size();
+	}
+
+	/**
+	 * Removes all the keys.
+	 */
+	public void clear() {
+		for (Map<Integer, Bitmap> clusters : entries.values())
+			for (Bitmap bitmap : clusters.values())
+				deleteBitmap(bitmap);
+		entries.clear();
+		size = 0;
+		dirty = true;
+
+		lazySave();
+	}
+
+	/**
+	 * Deletes the map with all its bitmaps.
+	 */
+	public void delete() {
+		for (Map<Integer, Bitmap> clusters : entries.values())
+			for (Bitmap bitmap : clusters.values())
+				deleteBitmap(bitmap);
+		entries.clear();
+		size = 0;
+
+		if (record.getIdentity().isValid())
+			getDatabase().delete(record);
+	}
+
+	/**
+	 * Counts the update and saves the changes if "maxUpdatesBeforeSave" updates have been reached or a transaction is running.
+	 */
+	public int commitChanges() {
+		if (transactionRunning || maxUpdatesBeforeSave == 0 || (maxUpdatesBeforeSave > 0 && ++updates >= maxUpdatesBeforeSave)) {
+			updates = 0;
+			return lazySave();
+		}
+		return 0;
+	}
+
+	/**
+	 * Saves the changed segments and then the header, since it links the segments. Segments left empty are deleted.
+	 *
+	 * @return The number of records saved
+	 */
+	public int lazySave() {
+		final long timer = OProfiler.getInstance().startChrono();
+
+		int saved = 0;
+		try {
+			for (Map<Integer, Bitmap> clusters : entries.values())
+				for (Bitmap bitmap : clusters.values()) {
+					if (bitmap.changed.isEmpty())
+						continue;
+
+					for (Long number : bitmap.changed) {
+						final Segment segment = bitmap.segments.get(number);
+						if (bitmap.bitmap.containsChunks(number * SEGMENT_CHUNKS, number * SEGMENT_CHUNKS + SEGMENT_CHUNKS - 1)) {
+							segment.record.setDirty();
+							segment.record.save(clusterName);
+						} else {
+							if (segment.record.getIdentity().isValid())
+								getDatabase().delete(segment.record);
+							bitmap.segments.remove(number);
+						}
+						saved++;
+					}
+					bitmap.changed.clear();
+				}
+
+			if (dirty || saved > 0) {
+				record.setDirty();
+				record.save(clusterName);
+				dirty = false;
+				saved++;
+			}
+
+		} finally {
+			OProfiler.getInstance().stopChrono("OBitmapDatabase.lazySave", timer);
+		}
+		return saved;
+	}
+
+	/**
+	 * Discards all the bitmaps in memory and reloads the header. This is called on transaction rollback.
+	 */
+	public void unload() {
+		entries.clear();
+		size = 0;
+		updates = 0;
+		dirty = false;
+		if (record.getIdentity().isValid())
+			load();
+	}
+
+	/**
+	 * Frees the memory of the bitmaps not changed, they will be reloaded at the next access.
+	 *
+	 * @return The number of bitmaps freed
+	 */
+	public int freeMemory() {
+		int freed = 0;
+		for (Map<Integer, Bitmap> clusters : entries.values())
+			for (Bitmap bitmap : clusters.values())
+				if (bitmap.bitmap != null && bitmap.changed.isEmpty()) {
+					// REPLACE THE SEGMENTS TO RELEASE THE CONTENT OF THEIR RECORDS
+					for (Entry<Long, Segment> entry : bitmap.segments.entrySet())
+						entry.setValue(new Segment(bitmap, entry.getKey(), entry.getValue().record.getIdentity()));
+					bitmap.bitmap = null;
+					freed++;
+				}
+		return freed;
+	}
+
+	public ORecord<?> getRecord() {
+		return record;
+	}
+
+	public Class<?> getKeyClass() {
+		return keyClass;
+	}
+
+	/**
+	 * Sets the class the keys are converted to when unmarshalled, since some key serializers don't keep the original type. Must be set
+	 * before {@link #load()}.
+	 */
+	public void setKeyClass(final Class<?> iKeyClass) {
+		keyClass = iKeyClass;
+	}
+
+	public int getMaxUpdatesBeforeSave() {
+		return maxUpdatesBeforeSave;
+	}
+
+	public void setMaxUpdatesBeforeSave(final int iValue) {
+		maxUpdatesBeforeSave = iValue;
+	}
+
+	/**
+	 * Change the transaction running mode.
+	 *
+	 * @param iTxRunning
+	 *          true if a transaction is running, otherwise false
+	 */
+	public void setRunningTransaction(final boolean iTxRunning) {
+		transactionRunning = iTxRunning;
+
+		if (iTxRunning) {
+			// ASSURE ALL PENDING CHANGES ARE COMMITTED BEFORE TO START A TX
+			updates = 0;
+			lazySave();
+		}
+	}
+
+	public byte[] toStream() throws OSerializationException {
+		final OMemoryStream stream = new OMemoryStream();
+		stream.set(CURRENT_VERSION);
+		stream.set(keySerializer.getName());
+		stream.set(size);
+		stream.set(entries.size());
+		try {
+			for (Entry<K, Map<Integer, Bitmap>> entry : entries.entrySet()) {
+				stream.set(keySerializer.toStream(entry.getKey()));
+				stream.set(entry.getValue().size());
+				for (Entry<Integer, Bitmap> cluster : entry.getValue().entrySet()) {
+					final Bitmap bitmap = cluster.getValue();
+					stream.set(cluster.getKey().intValue());
+					stream.set(bitmap.cardinality);
+					stream.set(bitmap.segments.size());
+					for (Segment segment : bitmap.segments.values()) {
+						stream.set(segment.number);
+						stream.setAsFixed(segment.record.getIdentity().toStream());
+					}
+				}
+			}
+		} catch (IOException e) {
+			throw new OSerializationException("Cannot marshall the keys of bitmap map " + record.getIdentity(), e);
+		}
+		return stream.toByteArray();
+	}
+
+	@SuppressWarnings("unchecked")
+	public OBitmapDatabase<K> fromStream(final byte[] iStream) throws OSerializationException {
+		final OMemoryStream stream = new OMemoryStream(iStream);
+		final byte version = stream.getAsByte();
+		if (version != CURRENT_VERSION)
+			throw new OSerializationException("Unsupported version " + version + " of bitmap map " + record.getIdentity());
+
+		keySerializer = OStreamSerializerFactory.get(stream.getAsString());
+		size = stream.getAsLong();
+
+		entries.clear();
+		final int keyCount = stream.getAsInteger();
+		try {
+			for (int i = 0; i < keyCount; ++i) {
+				Object key = keySerializer.fromStream(stream.getAsByteArray());
+				if (keyClass != null && key != null) {
+					final Object converted = OType.convert(key, keyClass);
+					if (converted != null)
+						key = converted;
+				}
+				final int clusterCount = stream.getAsInteger();
+				final Map<Integer, Bitmap> clusters = new HashMap<Integer, Bitmap>(clusterCount * 2);
+				for (int c = 0; c < clusterCount; ++c) {
+					final Bitmap bitmap = new Bitmap();
+					clusters.put(stream.getAsInteger(), bitmap);
+					bitmap.cardinality = stream.getAsLong();
+					final int segmentCount = stream.getAsInteger();
+					for (int s = 0; s < segmentCount; ++s) {
+						final long number = stream.getAsLong();
+						bitmap.segments.put(number,
+								new Segment(bitmap, number, new ORecordId().fromStream(stream.getAsByteArrayFixed(ORecordId.PERSISTENT_SIZE))));
+					}
+				}
+				entries.put((K) key, clusters);
+			}
+		} catch (IOException e) {
+			throw new OSerializationException("Cannot unmarshall the keys of bitmap map " + record.getIdentity(), e);
+		}
+		return this;
+	}
+
+	@Override
+	public String toString() {
+		return "size=" + size + " keys=" + entries.size();
+	}
+
+	protected void config() {
+		maxUpdatesBeforeSave = OGlobalConfiguration.MVRBTREE_LAZY_UPDATES.getValueAsInteger();
+	}
+
+	/**
+	 * Removes the position of the record from the bitmap of its cluster, dropping the bitmap once empty.
+	 */
+	protected boolean removePosition(final Map<Integer, Bitmap> iClusters, final ORID iRID) {
+		final Bitmap bitmap = iClusters.get(iRID.getClusterId());
+		if (bitmap == null || !loadBitmap(bitmap).remove(iRID.getClusterPosition()))
+			return false;
+
+		size--;
+		if (--bitmap.cardinality == 0) {
+			iClusters.remove(iRID.getClusterId());
+			deleteBitmap(bitmap);
+		} else
+			changed(bitmap, iRID.getClusterPosition());
+		dirty = true;
+		return true;
+	}
+
+	/**
+	 * Marks as changed the segment containing the position, creating it if needed.
+	 */
+	protected void changed(final Bitmap iBitmap, final long iPosition) {
+		final long number = (iPosition >>> 16) / SEGMENT_CHUNKS;
+		if (!iBitmap.segments.containsKey(number))
+			iBitmap.segments.put(number, new Segment(iBitmap, number, null));
+		iBitmap.changed.add(number);
+		dirty = true;
+	}
+
+	/**
+	 * Loads the bitmap from the database. It's synchronized because concurrent readers can load the same bitmap.
+	 */
+	protected synchronized OCompressedBitmap loadBitmap(final Bitmap iBitmap) {
+		OCompressedBitmap bitmap = iBitmap.bitmap;
+		if (bitmap != null)
+			return bitmap;
+
+		final long timer = OProfiler.getInstance().startChrono();
+		try {
+			bitmap = new OCompressedBitmap();
+			for (Segment segment : iBitmap.segments.values()) {
+				segment.record.reload();
+				bitmap.appendAll(new OCompressedBitmap().fromStream(segment.record.toStream()));
+			}
+			iBitmap.bitmap = bitmap;
+			return bitmap;
+
+		} finally {
+			OProfiler.getInstance().stopChrono("OBitmapDatabase.loadBitmap", timer);
+		}
+	}
+
+	protected void deleteBitmap(final Bitmap iBitmap) {
+		// LOAD THE SEGMENTS TO DELETE THEM WITH THEIR CURRENT VERSION
+		loadBitmap(iBitmap);
+
+		for (Segment segment : iBitmap.segments.values())
+			if (segment.record.getIdentity().isValid())
+				getDatabase().delete(segment.record);
+		iBitmap.segments.clear();
+		iBitmap.changed.clear();
+		size -= iBitmap.cardinality;
+		iBitmap.cardinality = 0;
+		dirty = true;
+	}
+
+	protected static ODatabaseRecord getDatabase() {
+		return ODatabaseRecordThreadLocal.INSTANCE.get();
+	}
+}
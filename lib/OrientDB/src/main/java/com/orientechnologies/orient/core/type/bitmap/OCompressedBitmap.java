@@ -0,0 +1,692 @@
+/*
+ * Copyright 1999-2010 Luca Garulli (l.garulli--at--orientechnologies.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.orientechnologies.orient.core.type.bitmap;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+import com.orientechnologies.orient.core.exception.OSerializationException;
+import com.orientechnologies.orient.core.serialization.OMemoryStream;
+
+/**
+ * Compressed bitmap of positive long values organized like the roaring bitmaps. Values are partitioned in chunks of 65536 by their
+ * high bits and each chunk is stored as a sorted array of the low 16 bits while it holds up to 4096 values, otherwise as a plain
+ * bitset of 8Kb. Boolean operations work chunk by chunk, choosing the algorithm by the representation of the two sides.<br/>
+ * The bitmap is not thread safe.
+ *
+ * @author Luca Garulli
+ */
+public class OCompressedBitmap implements Cloneable {
+	protected static final int	ARRAY_MAX				= 4096;
+	protected static final int	BITSET_WORDS		= 1024;
+	protected static final byte	TYPE_ARRAY			= 0;
+	protected static final byte	TYPE_BITSET			= 1;
+
+	protected long[]						keys						= new long[4];
+	protected Container[]				containers			= new Container[4];
+	protected int								count;
+
+	/**
+	 * Chunk of 65536 values.
+	 */
+	protected abstract static class Container {
+		protected abstract int cardinality();
+
+		protected abstract boolean contains(int iLow);
+
+		/**
+		 * Adds the value. Returns the container to use from now on, since it can change representation.
+		 */
+		protected abstract Container add(int iLow);
+
+		/**
+		 * Removes the value. Returns the container to use from now on, since it can change representation.
+		 */
+		protected abstract Container remove(int iLow);
+
+		protected abstract Container and(Container iOther);
+
+		protected abstract Container or(Container iOther);
+
+		protected abstract Container andNot(Container iOther);
+
+		protected abstract Container copy();
+
+		protected abstract void toStream(OMemoryStream iStream);
+	}
+
+	protected static class ArrayContainer extends Container {
+		protected char[]	values;
+		protected int			size;
+
+		protected ArrayContainer(final int iCapacity) {
+			values = new char[iCapacity];
+		}
+
+		@Override
+		protected int cardinality() {
+			return size;
+		}
+
+		@Override
+		protected boolean contains(final int iLow) {
+			return Arrays.binarySearch(values, 0, size, (char) iLow) > -1;
+		}
+
+		@Override
+		protected Container add(final int iLow) {
+			int pos = Arrays.binarySearch(values, 0, size, (char) iLow);
+			if (pos > -1)
+				return this;
+
+			if (size >= ARRAY_MAX)
+				return toBitset().add(iLow);
+
+			pos = -(pos + 1);
+			if (size == values.length)
+				values = Arrays.copyOf(values, Math.min(Math.max(size * 2, 4), ARRAY_MAX));
+			System.arraycopy(values, pos, values, pos + 1, size - pos);
+			values[pos] = (char) iLow;
+			size++;
+			return this;
+		}
+
+		@Override
+		protected Container remove(final int iLow) {
+			final int pos = Arrays.binarySearch(values, 0, size, (char) iLow);
+			if (pos > -1) {
+				System.arraycopy(values, pos + 1, values, pos, size - pos - 1);
+				size--;
+			}
+			return this;
+		}
+
+		@Override
+		protected Container and(final Container iOther) {
+			final ArrayContainer result = new ArrayContainer(Math.min(size, iOther.cardinality()));
+			if (iOther instanceof ArrayContainer) {
+				// MERGE THE TWO SORTED ARRAYS
+				final ArrayContainer other = (ArrayContainer) iOther;
+				int i = 0, j = 0;
+				while (i < size && j < other.size) {
+					if (values[i] < other.values[j])
+						i++;
+					else if (values[i] > other.values[j])
+						j++;
+					else {
+						result.values[result.size++] = values[i];
+						i++;
+						j++;
+					}
+				}
+			} else
+				for (int i = 0; i < size; ++i)
+					if (iOther.contains(values[i]))
+						result.values[result.size++] = values[i];
+			return result;
+		}
+
+		@Override
+		protected Container or(final Container iOther) {
+			if (iOther instanceof BitsetContainer || size + iOther.cardinality() > ARRAY_MAX)
+				return toBitset().or(iOther);
+
+			// MERGE THE TWO SORTED ARRAYS
+			final ArrayContainer other = (ArrayContainer) iOther;
+			final ArrayContainer result = new ArrayContainer(size + other.size);
+			int i = 0, j = 0;
+			while (i < size && j < other.size) {
+				if (values[i] < other.values[j])
+					result.values[result.size++] = values[i++];
+				else if (values[i] > other.values[j])
+					result.values[result.size++] = other.values[j++];
+				else {
+					result.values[result.size++] = values[i];
+					i++;
+					j++;
+				}
+			}
+			while (i < size)
+				result.values[result.size++] = values[i++];
+			while (j < other.size)
+				result.values[result.size++] = other.values[j++];
+			return result;
+		}
+
+		@Override
+		protected Container andNot(final Container iOther) {
+			final ArrayContainer result = new ArrayContainer(size);
+			for (int i = 0; i < size; ++i)
+				if (!iOther.contains(values[i]))
+					result.values[result.size++] = values[i];
+			return result;
+		}
+
+		@Override
+		protected Container copy() {
+			final ArrayContainer result = new ArrayContainer(Math.max(size, 1));
+			System.arraycopy(values, 0, result.values, 0, size);
+			result.size = size;
+			return result;
+		}
+
+		@Override
+		protected void toStream(final OMemoryStream iStream) {
+			iStream.set(TYPE_ARRAY);
+			iStream.set(size);
+			for (int i = 0; i < size; ++i)
+				iStream.set((short) values[i]);
+		}
+
+		protected BitsetContainer toBitset() {
+			final BitsetContainer result = new BitsetContainer();
+			for (int i = 0; i < size; ++i)
+				result.words[values[i] >>> 6] |= 1L << values[i];
+			result.cardinality = size;
+			return result;
+		}
+	}
+
+	protected static class BitsetContainer extends Container {
+		protected final long[]	words	= new long[BITSET_WORDS];
+		protected int						cardinality;
+
+		@Override
+		protected int cardinality() {
+			return cardinality;
+		}
+
+		@Override
+		protected boolean contains(final int iLow) {
+			return (words[iLow >>> 6] & (1L << iLow)) != 0;
+		}
+
+		@Override
+		protected Container add(final int iLow) {
+			final long before = words[iLow >>> 6];
+			final long after = before | (1L << iLow);
+			if (before != after) {
+				words[iLow >>> 6] = after;
+				cardinality++;
+			}
+			return this;
+		}
+
+		@Override
+		protected Container remove(final int iLow) {
+			final long before = words[iLow >>> 6];
+			final long after = before & ~(1L << iLow);
+			if (before != after) {
+				words[iLow >>> 6] = after;
+				cardinality--;
+				if (cardinality <= ARRAY_MAX)
+					return toArray();
+			}
+			return this;
+		}
+
+		@Override
+		protected Container and(final Container iOther) {
+			if (iOther instanceof ArrayContainer)
+				return iOther.and(this);
+
+			final BitsetContainer result = new BitsetContainer();
+			final long[] other = ((BitsetContainer) iOther).words;
+			for (int i = 0; i < BITSET_WORDS; ++i) {
+				result.words[i] = words[i] & other[i];
+				result.cardinality += Long.bitCount(result.words[i]);
+			}
+			return result.normalize();
+		}
+
+		@Override
+		protected Container or(final Container iOther) {
+			final BitsetContainer result = (BitsetContainer) copy();
+			if (iOther instanceof ArrayContainer) {
+				final ArrayContainer other = (ArrayContainer) iOther;
+				for (int i = 0; i < other.size; ++i)
+					result.add(other.values[i]);
+			} else {
+				final long[] other = ((BitsetContainer) iOther).words;
+				result.cardinality = 0;
+				for (int i = 0; i < BITSET_WORDS; ++i) {
+					result.words[i] |= other[i];
+					result.cardinality += Long.bitCount(result.words[i]);
+				}
+			}
+			return result;
+		}
+
+		@Override
+		protected Container andNot(final Container iOther) {
+			final BitsetContainer result = (BitsetContainer) copy();
+			if (iOther instanceof ArrayContainer) {
+				final ArrayContainer other = (ArrayContainer) iOther;
+				for (int i = 0; i < other.size; ++i) {
+					final int low = other.values[i];
+					if ((result.words[low >>> 6] & (1L << low)) != 0) {
+						result.words[low >>> 6] &= ~(1L << low);
+						result.cardinality--;
+					}
+				}
+			} else {
+				final long[] other = ((BitsetContainer) iOther).words;
+				result.cardinality = 0;
+				for (int i = 0; i < BITSET_WORDS; ++i) {
+					result.words[i] &= ~other[i];
+					result.cardinality += Long.bitCount(result.words[i]);
+				}
+			}
+			return result.normalize();
+		}
+
+		@Override
+		protected Container copy() {
+			final BitsetContainer result = new BitsetContainer();
+			System.arraycopy(words, 0, result.words, 0, BITSET_WORDS);
+			result.cardinality = cardinality;
+			return result;
+		}
+
+		@Override
+		protected void toStream(final OMemoryStream iStream) {
+			iStream.set(TYPE_BITSET);
+			iStream.set(cardinality);
+			for (int i = 0; i < BITSET_WORDS; ++i)
+				iStream.set(words[i]);
+		}
+
+		/**
+		 * Returns the same values as array if they are few enough.
+		 */
+		protected Container normalize() {
+			return cardinality <= ARRAY_MAX ? toArray() : this;
+		}
+
+		protected ArrayContainer toArray() {
+			final ArrayContainer result = new ArrayContainer(Math.max(cardinality, 1));
+			for (int i = 0; i < BITSET_WORDS; ++i) {
+				long word = words[i];
+				while (word != 0) {
+					result.values[result.size++] = (char) ((i << 6) + Long.numberOfTrailingZeros(word));
+					word &= word - 1;
+				}
+			}
+			return result;
+		}
+	}
+
+	/**
+	 * Iterates the values in ascending order.
+	 */
+	public class OCompressedBitmapIterator {
+		private int				containerIndex	= -1;
+		private int				position;
+		private long			word;
+		private long			next						= -1;
+
+		protected OCompressedBitmapIterator() {
+			fetch();
+		}
+
+		public boolean hasNext() {
+			return next > -1;
+		}
+
+		public long next() {
+			if (next < 0)
+				throw new NoSuchElementException();
+			final long result = next;
+			fetch();
+			return result;
+		}
+
+		private void fetch() {
+			while (true) {
+				if (containerIndex > -1) {
+					final Container c = containers[containerIndex];
+					if (c instanceof ArrayContainer) {
+						final ArrayContainer a = (ArrayContainer) c;
+						if (position < a.size) {
+							next = (keys[containerIndex] << 16) | a.values[position++];
+							return;
+						}
+					} else {
+						final long[] words = ((BitsetContainer) c).words;
+						while (word == 0 && position < BITSET_WORDS)
+							word = words[position++];
+						if (word != 0) {
+							next = (keys[containerIndex] << 16) | (((position - 1) << 6) + Long.numberOfTrailingZeros(word));
+							word &= word - 1;
+							return;
+						}
+					}
+				}
+
+				// NEXT CONTAINER
+				if (++containerIndex >= count) {
+					next = -1;
+					return;
+				}
+				position = 0;
+				word = 0;
+			}
+		}
+	}
+
+	public OCompressedBitmap() {
+	}
+
+	/**
+	 * Creates a bitmap with all the values between iFrom and iTo, both included.
+	 */
+	public static OCompressedBitmap range(final long iFrom, final long iTo) {
+		final OCompressedBitmap result = new OCompressedBitmap();
+		if (iFrom < 0 || iTo < iFrom)
+			return result;
+
+		for (long key = iFrom >>> 16; key <= iTo >>> 16; ++key) {
+			final int lowFrom = key == iFrom >>> 16 ? (int) (iFrom & 0xFFFF) : 0;
+			final int lowTo = key == iTo >>> 16 ? (int) (iTo & 0xFFFF) : 0xFFFF;
+
+			Container container;
+			if (lowTo - lowFrom + 1 <= ARRAY_MAX) {
+				final ArrayContainer a = new ArrayContainer(lowTo - lowFrom + 1);
+				for (int i = lowFrom; i <= lowTo; ++i)
+					a.values[a.size++] = (char) i;
+				container = a;
+			} else {
+				final BitsetContainer b = new BitsetContainer();
+				for (int i = lowFrom; i <= lowTo; ++i)
+					b.words[i >>> 6] |= 1L << i;
+				b.cardinality = lowTo - lowFrom + 1;
+				container = b;
+			}
+			result.append(key, container);
+		}
+		return result;
+	}
+
+	/**
+	 * Adds the value.
+	 *
+	 * @return true if the value was not present, otherwise false
+	 */
+	public boolean add(final long iValue) {
+		checkValue(iValue);
+		final long key = iValue >>> 16;
+		final int low = (int) (iValue & 0xFFFF);
+
+		int pos = Arrays.binarySearch(keys, 0, count, key);
+		if (pos < 0) {
+			pos = -(pos + 1);
+			insertAt(pos, key, new ArrayContainer(4));
+		}
+
+		final Container c = containers[pos];
+		final int before = c.cardinality();
+		containers[pos] = c.add(low);
+		return containers[pos].cardinality() > before;
+	}
+
+	/**
+	 * Removes the value.
+	 *
+	 * @return true if the value was present, otherwise false
+	 */
+	public boolean remove(final long iValue) {
+		if (iValue < 0)
+			return false;
+
+		final int pos = Arrays.binarySearch(keys, 0, count, iValue >>> 16);
+		if (pos < 0)
+			return false;
+
+		final int before = containers[pos].cardinality();
+		containers[pos] = containers[pos].remove((int) (iValue & 0xFFFF));
+		final int after = containers[pos].cardinality();
+		if (after == 0)
+			removeAt(pos);
+		return after < before;
+	}
+
+	public boolean contains(final long iValue) {
+		if (iValue < 0)
+			return false;
+
+		final int pos = Arrays.binarySearch(keys, 0, count, iValue >>> 16);
+		return pos > -1 && containers[pos].contains((int) (iValue & 0xFFFF));
+	}
+
+	public long cardinality() {
+		long total = 0;
+		for (int i = 0; i < count; ++i)
+			total += containers[i].cardinality();
+		return total;
+	}
+
+	public boolean isEmpty() {
+		return count == 0;
+	}
+
+	/**
+	 * Returns the greatest value or -1 if the bitmap is empty.
+	 */
+	public long last() {
+		if (count == 0)
+			return -1;
+
+		final long key = keys[count - 1] << 16;
+		final Container c = containers[count - 1];
+		if (c instanceof ArrayContainer)
+			return key | ((ArrayContainer) c).values[((ArrayContainer) c).size - 1];
+
+		final long[] words = ((BitsetContainer) c).words;
+		int i = BITSET_WORDS - 1;
+		while (words[i] == 0)
+			i--;
+		return key | ((i << 6) + 63 - Long.numberOfLeadingZeros(words[i]));
+	}
+
+	/**
+	 * Tells if there are values in the chunks whose high bits are between iFromKey and iToKey, both included.
+	 */
+	public boolean containsChunks(final long iFromKey, final long iToKey) {
+		int pos = Arrays.binarySearch(keys, 0, count, iFromKey);
+		if (pos < 0)
+			pos = -(pos + 1);
+		return pos < count && keys[pos] <= iToKey;
+	}
+
+	/**
+	 * Returns a new bitmap with the values contained in both the bitmaps.
+	 */
+	public OCompressedBitmap and(final OCompressedBitmap iOther) {
+		final OCompressedBitmap result = new OCompressedBitmap();
+		int i = 0, j = 0;
+		while (i < count && j < iOther.count) {
+			if (keys[i] < iOther.keys[j])
+				i++;
+			else if (keys[i] > iOther.keys[j])
+				j++;
+			else {
+				final Container c = containers[i].and(iOther.containers[j]);
+				if (c.cardinality() > 0)
+					result.append(keys[i], c);
+				i++;
+				j++;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Returns a new bitmap with the values contained in at least one of the bitmaps.
+	 */
+	public OCompressedBitmap or(final OCompressedBitmap iOther) {
+		final OCompressedBitmap result = new OCompressedBitmap();
+		int i = 0, j = 0;
+		while (i < count || j < iOther.count) {
+			if (j >= iOther.count || (i < count && keys[i] < iOther.keys[j]))
+				result.append(keys[i], containers[i++].copy());
+			else if (i >= count || keys[i] > iOther.keys[j])
+				result.append(iOther.keys[j], iOther.containers[j++].copy());
+			else {
+				result.append(keys[i], containers[i].or(iOther.containers[j]));
+				i++;
+				j++;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Returns a new bitmap with the values contained in this bitmap but not in the other one.
+	 */
+	public OCompressedBitmap andNot(final OCompressedBitmap iOther) {
+		final OCompressedBitmap result = new OCompressedBitmap();
+		int i = 0, j = 0;
+		while (i < count) {
+			while (j < iOther.count && iOther.keys[j] < keys[i])
+				j++;
+
+			final Container c;
+			if (j < iOther.count && iOther.keys[j] == keys[i])
+				c = containers[i].andNot(iOther.containers[j]);
+			else
+				c = containers[i].copy();
+
+			if (c.cardinality() > 0)
+				result.append(keys[i], c);
+			i++;
+		}
+		return result;
+	}
+
+	public OCompressedBitmapIterator iterator() {
+		return new OCompressedBitmapIterator();
+	}
+
+	@Override
+	public OCompressedBitmap clone() {
+		final OCompressedBitmap result = new OCompressedBitmap();
+		for (int i = 0; i < count; ++i)
+			result.append(keys[i], containers[i].copy());
+		return result;
+	}
+
+	/**
+	 * Appends the chunks of a bitmap whose values are all greater than the values of this one.
+	 */
+	public void appendAll(final OCompressedBitmap iOther) {
+		if (iOther.count > 0 && count > 0 && iOther.keys[0] <= keys[count - 1])
+			throw new IllegalArgumentException("Cannot append a bitmap with values lower than the greatest one");
+
+		for (int i = 0; i < iOther.count; ++i)
+			append(iOther.keys[i], iOther.containers[i]);
+	}
+
+	/**
+	 * Writes the chunks whose high bits are between iFromKey and iToKey, both included.
+	 */
+	public void toStream(final OMemoryStream iStream, final long iFromKey, final long iToKey) {
+		int from = Arrays.binarySearch(keys, 0, count, iFromKey);
+		if (from < 0)
+			from = -(from + 1);
+		int to = from;
+		while (to < count && keys[to] <= iToKey)
+			to++;
+
+		iStream.set(to - from);
+		for (int i = from; i < to; ++i) {
+			iStream.set(keys[i]);
+			containers[i].toStream(iStream);
+		}
+	}
+
+	public byte[] toStream() {
+		final OMemoryStream stream = new OMemoryStream();
+		toStream(stream, 0, Long.MAX_VALUE);
+		return stream.toByteArray();
+	}
+
+	public OCompressedBitmap fromStream(final OMemoryStream iStream) throws OSerializationException {
+		final int chunks = iStream.getAsInteger();
+		for (int i = 0; i < chunks; ++i) {
+			final long key = iStream.getAsLong();
+			final byte type = iStream.getAsByte();
+			final int cardinality = iStream.getAsInteger();
+
+			final Container c;
+			if (type == TYPE_ARRAY) {
+				final ArrayContainer a = new ArrayContainer(Math.max(cardinality, 1));
+				for (int k = 0; k < cardinality; ++k)
+					a.values[k] = (char) iStream.getAsShort();
+				a.size = cardinality;
+				c = a;
+			} else if (type == TYPE_BITSET) {
+				final BitsetContainer b = new BitsetContainer();
+				for (int k = 0; k < BITSET_WORDS; ++k)
+					b.words[k] = iStream.getAsLong();
+				b.cardinality = cardinality;
+				c = b;
+			} else
+				throw new OSerializationException("Unsupported chunk type " + type + " in compressed bitmap");
+
+			if (count > 0 && key <= keys[count - 1])
+				throw new OSerializationException("Chunks of compressed bitmap are not ordered");
+			append(key, c);
+		}
+		return this;
+	}
+
+	public OCompressedBitmap fromStream(final byte[] iStream) throws OSerializationException {
+		return fromStream(new OMemoryStream(iStream));
+	}
+
+	@Override
+	public String toString() {
+		return "cardinality=" + cardinality() + " chunks=" + count;
+	}
+
+	protected void append(final long iKey, final Container iContainer) {
+		insertAt(count, iKey, iContainer);
+	}
+
+	protected void insertAt(final int iPosition, final long iKey, final Container iContainer) {
+		if (count == keys.length) {
+			keys = Arrays.copyOf(keys, count * 2);
+			containers = Arrays.copyOf(containers, count * 2);
+		}
+		System.arraycopy(keys, iPosition, keys, iPosition + 1, count - iPosition);
+		System.arraycopy(containers, iPosition, containers, iPosition + 1, count - iPosition);
+		keys[iPosition] = iKey;
+		containers[iPosition] = iContainer;
+		count++;
+	}
+
+	protected void removeAt(final int iPosition) {
+		System.arraycopy(keys, iPosition + 1, keys, iPosition, count - iPosition - 1);
+		System.arraycopy(containers, iPosition + 1, containers, iPosition, count - iPosition - 1);
+		count--;
+		containers[count] = null;
+	}
+
+	protected static void checkValue(final long iValue) {
+		if (iValue < 0)
+			throw new IllegalArgumentException("Compressed bitmaps cannot contain negative values: " + iValue);
+	}
+}
@@ -0,0 +1,679 @@
+/*
+ * Copyright 1999-2010 Luca Garulli (l.garulli--at--orientechnologies.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.orientechnologies.orient.core.type.hash;
+
+import java.io.IOException;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import com.orientechnologies.common.log.OLogManager;
+import com.orientechnologies.common.profiler.OProfiler;
+import com.orientechnologies.orient.core.config.OGlobalConfiguration;
+import com.orientechnologies.orient.core.db.ODatabaseRecordThreadLocal;
+import com.orientechnologies.orient.core.db.record.ODatabaseRecord;
+import com.orientechnologies.orient.core.exception.ORecordNotFoundException;
+import com.orientechnologies.orient.core.exception.OSerializationException;
+import com.orientechnologies.orient.core.id.ORID;
+import com.orientechnologies.orient.core.id.ORecordId;
+import com.orientechnologies.orient.core.record.ORecord;
+import com.orientechnologies.orient.core.record.impl.ORecordBytesLazy;
+import com.orientechnologies.orient.core.serialization.OMemoryStream;
+import com.orientechnologies.orient.core.serialization.OSerializableStream;
+import com.orientechnologies.orient.core.serialization.serializer.stream.OStreamSerializer;
+import com.orientechnologies.orient.core.serialization.serializer.stream.OStreamSerializerFactory;
+
+/**
+ * Persistent hash table based on linear hashing. Each bucket is a record of the cluster, loaded at first use. When the average
+ * load of the buckets exceeds the load factor, the bucket pointed by the split pointer is divided in two, so the table grows one
+ * bucket at a time without rehashing everything. Keys are hashed and compared in their serialized form, so lookups never
+ * unmarshall the keys.<br/>
+ * Changes are saved every "maxUpdatesBeforeSave" updates like {@link com.orientechnologies.orient.core.type.tree.OMVRBTreeDatabaseLazySave}.
+ * Multiple threads can read the table at the same time, while updates need exclusive access.
+ *
+ * @author Luca Garulli
+ */
+public class OHashTableDatabase<K, V> implements OSerializableStream {
+	private static final long										serialVersionUID		= 1L;
+
+	protected static final byte									CURRENT_VERSION			= 1;
+	protected static final int									INITIAL_BUCKETS			= 16;
+	protected static final float								LOAD_FACTOR					= 0.75f;
+
+	protected final String											clusterName;
+	protected final ORecordBytesLazy						record;
+	protected OStreamSerializer									keySerializer;
+	protected OStreamSerializer									valueSerializer;
+
+	protected int																bucketSize;
+	protected int																level;
+	protected int																next;
+	protected long															size;
+	protected final List<ORecordId>							bucketRids					= new ArrayList<ORecordId>();
+	protected volatile AtomicReferenceArray<Bucket>	buckets							= new AtomicReferenceArray<Bucket>(INITIAL_BUCKETS);
+	protected boolean														dirty;
+
+	protected int																maxUpdatesBeforeSave;
+	protected int																updates							= 0;
+	protected boolean														transactionRunning	= false;
+
+	/**
+	 * Bucket of entries, stored as a record.
+	 */
+	protected static class Bucket implements OSerializableStream {
+		private static final long	serialVersionUID	= 1L;
+
+		protected final ORecordBytesLazy	record;
+		protected int											size;
+		protected int[]										hashes;
+		protected byte[][]								keys;
+		protected byte[][]								values;
+		protected boolean									dirty;
+
+		protected Bucket(final int iCapacity) {
+			record = new ORecordBytesLazy(this);
+			record.setIdentity(new ORecordId());
+			hashes = new int[iCapacity];
+			keys = new byte[iCapacity][];
+			values = new byte[iCapacity][];
+		}
+
+		protected int indexOf(final int iHash, final byte[] iKey) {
+			for (int i = 0; i < size; ++i)
+				if (hashes[i] == iHash && Arrays.equals(keys[i], iKey))
+					return i;
+			return -1;
+		}
+
+		protected void add(final int iHash, final byte[] iKey, final byte[] iValue) {
+			if (size == hashes.length) {
+				// THE BUCKET CAN OVERFLOW THE NOMINAL SIZE UNTIL ITS TURN TO BE SPLIT COMES
+				final int newCapacity = Math.max(size * 2, 4);
+				hashes = Arrays.copyOf(hashes, newCapacity);
+				keys = Arrays.copyOf(keys, newCapacity);
+				values = Arrays.copyOf(values, newCapacity);
+			}
+			hashes[size] = iHash;
+			keys[size] = iKey;
+			values[size] = iValue;
+			size++;
+			dirty = true;
+		}
+
+		protected void removeAt(final int iIndex) {
+			final int last = size - 1;
+			hashes[iIndex] = hashes[last];
+			keys[iIndex] = keys[last];
+			values[iIndex] = values[last];
+			keys[last] = null;
+			values[last] = null;
+			size--;
+			dirty = true;
+		}
+
+		public byte[] toStream() throws OSerializationException {
+			final OMemoryStream stream = new OMemoryStream();
+			stream.set(size);
+			for (int i = 0; i < size; ++i) {
+				stream.set(hashes[i]);
+				stream.set(keys[i]);
+				stream.set(values[i]);
+			}
+			return stream.toByteArray();
+		}
+
+		public Bucket fromStream(final byte[] iStream) throws OSerializationException {
+			final OMemoryStream stream = new OMemoryStream(iStream);
+			size = stream.getAsInteger();
+			if (hashes.length < size) {
+				hashes = new int[size];
+				keys = new byte[size][];
+				values = new byte[size][];
+			}
+			for (int i = 0; i < size; ++i) {
+				hashes[i] = stream.getAsInteger();
+				keys[i] = stream.getAsByteArray();
+				values[i] = stream.getAsByteArray();
+			}
+			return this;
+		}
+	}
+
+	/**
+	 * Creates a new table in the cluster received.
+	 */
+	public OHashTableDatabase(final String iClusterName, final OStreamSerializer iKeySerializer,
+			final OStreamSerializer iValueSerializer) {
+		clusterName = iClusterName;
+		keySerializer = iKeySerializer;
+		valueSerializer = iValueSerializer;
+		record = new ORecordBytesLazy(this);
+		record.setIdentity(new ORecordId());
+		bucketSize = OGlobalConfiguration.INDEX_HASH_BUCKET_SIZE.getValueAsInteger();
+		config();
+
+		for (int i = 0; i < INITIAL_BUCKETS; ++i)
+			createBucket(i);
+		dirty = true;
+	}
+
+	/**
+	 * Opens an existent table. Call {@link #load()} to read it.
+	 */
+	public OHashTableDatabase(final ODatabaseRecord iDatabase, final ORID iRID) {
+		clusterName = iDatabase.getClusterNameById(iRID.getClusterId());
+		record = new ORecordBytesLazy(this);
+		record.setIdentity(iRID.getClusterId(), iRID.getClusterPosition());
+		config();
+	}
+
+	public OHashTableDatabase<K, V> load() {
+		record.recycle(this);
+		record.reload();
+		fromStream(record.toStream());
+		return this;
+	}
+
+	@SuppressWarnings("unchecked")
+	public V get(final Object iKey) {
+		if (iKey == null)
+			return null;
+
+		final byte[] key = keyToStream(iKey);
+		final int hash = hash(key);
+		final Bucket bucket = getBucket(getBucketIndex(hash));
+
+		final int index = bucket.indexOf(hash, key);
+		if (index == -1)
+			return null;
+
+		try {
+			return (V) valueSerializer.fromStream(bucket.values[index]);
+		} catch (IOException e) {
+			throw new OSerializationException("Cannot unmarshall the value of key '" + iKey + "' from hash table " + record.getIdentity(),
+					e);
+		}
+	}
+
+	public boolean containsKey(final Object iKey) {
+		if (iKey == null)
+			return false;
+
+		final byte[] key = keyToStream(iKey);
+		final int hash = hash(key);
+		return getBucket(getBucketIndex(hash)).indexOf(hash, key) > -1;
+	}
+
+	/**
+	 * Associates the value to the key.
+	 *
+	 * @return true if the key was already present, otherwise false
+	 */
+	public boolean put(final K iKey, final V iValue) {
+		final byte[] key = keyToStream(iKey);
+		final byte[] value;
+		try {
+			value = valueSerializer.toStream(iValue);
+		} catch (IOException e) {
+			throw new OSerializationException("Cannot marshall the value of key '" + iKey + "' into hash table " + record.getIdentity(), e);
+		}
+
+		final int hash = hash(key);
+		final Bucket bucket = getBucket(getBucketIndex(hash));
+
+		final int index = bucket.indexOf(hash, key);
+		if (index > -1) {
+			bucket.values[index] = value;
+			bucket.dirty = true;
+			commitChanges();
+			return true;
+		}
+
+		bucket.add(hash, key, value);
+		size++;
+		dirty = true;
+
+		if (size > (long) (bucketRids.size() * bucketSize * LOAD_FACTOR))
+			split();
+
+		commitChanges();
+		return false;
+	}
+
+	/**
+	 * Removes the key.
+	 *
+	 * @return true if the key was present, otherwise false
+	 */
+	public boolean remove(final Object iKey) {
+		if (iKey == null)
+			return false;
+
+		final byte[] key = keyToStream(iKey);
+		final int hash = hash(key);
+		final Bucket bucket = getBucket(getBucketIndex(hash));
+
+		final int index = bucket.indexOf(hash, key);
+		if (index == -1)
+			return false;
+
+		bucket.removeAt(index);
+		size--;
+		dirty = true;
+
+		commitChanges();
+		return true;
+	}
+
+	public long size() {
+		return size;
+	}
+
+	public int getBucketCount() {
+		return bucketRids.size();
+	}
+
+	/**
+	 * Removes all the entries and shrinks the table to the initial buckets.
+	 */
+	public void clear() {
+		for (int i = INITIAL_BUCKETS; i < bucketRids.size(); ++i)
+			deleteBucket(i);
+
+		while (bucketRids.size() > INITIAL_BUCKETS)
+			bucketRids.remove(bucketRids.size() - 1);
+
+		final AtomicReferenceArray<Bucket> newBuckets = new AtomicReferenceArray<Bucket>(INITIAL_BUCKETS);
+		for (int i = 0; i < INITIAL_BUCKETS; ++i) {
+			final Bucket bucket = getBucket(i);
+			bucket.size = 0;
+			Arrays.fill(bucket.keys, null);
+			Arrays.fill(bucket.values, null);
+			bucket.dirty = true;
+			newBuckets.set(i, bucket);
+		}
+		buckets = newBuckets;
+
+		level = 0;
+		next = 0;
+		size = 0;
+		dirty = true;
+
+		lazySave();
+	}
+
+	/**
+	 * Deletes the table with all its buckets.
+	 */
+	public void delete() {
+		for (int i = 0; i < bucketRids.size(); ++i)
+			deleteBucket(i);
+		bucketRids.clear();
+		buckets = new AtomicReferenceArray<Bucket>(INITIAL_BUCKETS);
+		size = 0;
+
+		if (record.getIdentity().isValid())
+			getDatabase().delete(record);
+	}
+
+	/**
+	 * Counts the update and saves the changes if "maxUpdatesBeforeSave" updates have been reached or a transaction is running.
+	 */
+	public int commitChanges() {
+		if (transactionRunning || maxUpdatesBeforeSave == 0 || (maxUpdatesBeforeSave > 0 && ++updates >= maxUpdatesBeforeSave)) {
+			updates = 0;
+			return lazySave();
+		}
+		return 0;
+	}
+
+	/**
+	 * Saves the changed buckets and then the table header, since it links the buckets.
+	 *
+	 * @return The number of records saved
+	 */
+	public int lazySave() {
+		final long timer = OProfiler.getInstance().startChrono();
+
+		int saved = 0;
+		try {
+			final AtomicReferenceArray<Bucket> current = buckets;
+			for (int i = 0; i < bucketRids.size(); ++i) {
+				final Bucket bucket = current.get(i);
+				if (bucket != null && bucket.dirty) {
+					bucket.record.setDirty();
+					bucket.record.save(clusterName);
+					bucketRids.set(i, (ORecordId) bucket.record.getIdentity());
+					bucket.dirty = false;
+					saved++;
+				}
+			}
+
+			if (dirty || saved > 0) {
+				record.setDirty();
+				record.save(clusterName);
+				dirty = false;
+				saved++;
+			}
+
+		} finally {
+			OProfiler.getInstance().stopChrono("OHashTableDatabase.lazySave", timer);
+		}
+		return saved;
+	}
+
+	/**
+	 * Discards all the buckets in memory and reloads the header. This is called on transaction rollback.
+	 */
+	public void unload() {
+		buckets = new AtomicReferenceArray<Bucket>(INITIAL_BUCKETS);
+		bucketRids.clear();
+		updates = 0;
+		dirty = false;
+		if (record.getIdentity().isValid())
+			load();
+	}
+
+	/**
+	 * Frees the memory of the buckets not changed, they will be reloaded at the next access.
+	 *
+	 * @return The number of buckets freed
+	 */
+	public int freeMemory() {
+		int freed = 0;
+		final AtomicReferenceArray<Bucket> current = buckets;
+		for (int i = 0; i < current.length(); ++i) {
+			final Bucket bucket = current.get(i);
+			if (bucket != null && !bucket.dirty && bucket.record.getIdentity().isPersistent()) {
+				current.set(i, null);
+				freed++;
+			}
+		}
+		return freed;
+	}
+
+	public int getNumberOfBucketsInMemory() {
+		int total = 0;
+		final AtomicReferenceArray<Bucket> current = buckets;
+		for (int i = 0; i < current.length(); ++i)
+			if (current.get(i) != null)
+				total++;
+		return total;
+	}
+
+	/**
+	 * Browses all the entries, bucket by bucket. The order is not defined.
+	 */
+	public Iterator<Entry<K, V>> iterator() {
+		return new Iterator<Entry<K, V>>() {
+			private int			bucketIndex	= 0;
+			private int			entryIndex	= 0;
+			private Bucket	bucket;
+
+			public boolean hasNext() {
+				while (bucket == null || entryIndex >= bucket.size) {
+					if (bucketIndex >= bucketRids.size())
+						return false;
+					bucket = getBucket(bucketIndex++);
+					entryIndex = 0;
+				}
+				return true;
+			}
+
+			@SuppressWarnings("unchecked")
+			public Entry<K, V> next() {
+				if (!hasNext())
+					throw new NoSuchElementException();
+
+				try {
+					final K key = (K) keySerializer.fromStream(bucket.keys[entryIndex]);
+					final V value = (V) valueSerializer.fromStream(bucket.values[entryIndex]);
+					entryIndex++;
+					return new AbstractMap.SimpleImmutableEntry<K, V>(key, value);
+				} catch (IOException e) {
+					throw new OSerializationException("Cannot unmarshall entry from hash table " + record.getIdentity(), e);
+				}
+			}
+
+			public void remove() {
+				throw new UnsupportedOperationException("remove");
+			}
+		};
+	}
+
+	public Iterable<K> keys() {
+		return new Iterable<K>() {
+			public Iterator<K> iterator() {
+				final Iterator<Entry<K, V>> it = OHashTableDatabase.this.iterator();
+				return new Iterator<K>() {
+					public boolean hasNext() {
+						return it.hasNext();
+					}
+
+					public K next() {
+						return it.next().getKey();
+					}
+
+					public void remove() {
+						throw new UnsupportedOperationException("remove");
+					}
+				};
+			}
+		};
+	}
+
+	public ORecord<?> getRecord() {
+		return record;
+	}
+
+	public int getMaxUpdatesBeforeSave() {
+		return maxUpdatesBeforeSave;
+	}
+
+	public void setMaxUpdatesBeforeSave(final int iValue) {
+		maxUpdatesBeforeSave = iValue;
+	}
+
+	/**
+	 * Change the transaction running mode.
+	 *
+	 * @param iTxRunning
+	 *          true if a transaction is running, otherwise false
+	 */
+	public void setRunningTransaction(final boolean iTxRunning) {
+		transactionRunning = iTxRunning;
+
+		if (iTxRunning) {
+			// ASSURE ALL PENDING CHANGES ARE COMMITTED BEFORE TO START A TX
+			updates = 0;
+			lazySave();
+		}
+	}
+
+	public byte[] toStream() throws OSerializationException {
+		final OMemoryStream stream = new OMemoryStream();
+		stream.set(CURRENT_VERSION);
+		stream.set(keySerializer.getName());
+		stream.set(valueSerializer.getName());
+		stream.set(bucketSize);
+		stream.set(level);
+		stream.set(next);
+		stream.set(size);
+		stream.set(bucketRids.size());
+		for (ORecordId rid : bucketRids)
+			stream.setAsFixed(rid.toStream());
+		return stream.toByteArray();
+	}
+
+	public OHashTableDatabase<K, V> fromStream(final byte[] iStream) throws OSerializationException {
+		final OMemoryStream stream = new OMemoryStream(iStream);
+		final byte version = stream.getAsByte();
+		if (version != CURRENT_VERSION)
+			throw new OSerializationException("Unsupported version " + version + " of hash table " + record.getIdentity());
+
+		keySerializer = OStreamSerializerFactory.get(stream.getAsString());
+		valueSerializer = OStreamSerializerFactory.get(stream.getAsString());
+		bucketSize = stream.getAsInteger();
+		level = stream.getAsInteger();
+		next = stream.getAsInteger();
+		size = stream.getAsLong();
+
+		final int bucketCount = stream.getAsInteger();
+		bucketRids.clear();
+		for (int i = 0; i < bucketCount; ++i)
+			bucketRids.add(new ORecordId().fromStream(stream.getAsByteArrayFixed(ORecordId.PERSISTENT_SIZE)));
+
+		buckets = new AtomicReferenceArray<Bucket>(Math.max(bucketCount, INITIAL_BUCKETS));
+		return this;
+	}
+
+	@Override
+	public String toString() {
+		return "size=" + size + " buckets=" + bucketRids.size() + " level=" + level + " next=" + next;
+	}
+
+	protected void config() {
+		maxUpdatesBeforeSave = OGlobalConfiguration.MVRBTREE_LAZY_UPDATES.getValueAsInteger();
+	}
+
+	/**
+	 * Returns the bucket where the hash is stored: the buckets before the split pointer have been already split, so they use one bit
+	 * more of the hash.
+	 */
+	protected int getBucketIndex(final int iHash) {
+		final int levelBuckets = INITIAL_BUCKETS << level;
+		int index = iHash & (levelBuckets - 1);
+		if (index < next)
+			index = iHash & ((levelBuckets << 1) - 1);
+		return index;
+	}
+
+	/**
+	 * Splits the bucket pointed by the split pointer moving half of the entries to a new bucket appended to the table.
+	 */
+	protected void split() {
+		final int levelBuckets = INITIAL_BUCKETS << level;
+		final int newIndex = levelBuckets + next;
+		final int mask = (levelBuckets << 1) - 1;
+
+		final Bucket source = getBucket(next);
+		final Bucket target = createBucket(newIndex);
+
+		for (int i = 0; i < source.size;)
+			if ((source.hashes[i] & mask) == newIndex) {
+				target.add(source.hashes[i], source.keys[i], source.values[i]);
+				source.removeAt(i);
+			} else
+				++i;
+
+		if (++next == levelBuckets) {
+			// ALL THE BUCKETS OF THE LEVEL HAVE BEEN SPLIT: START A NEW ROUND
+			level++;
+			next = 0;
+		}
+		dirty = true;
+	}
+
+	protected Bucket createBucket(final int iIndex) {
+		final Bucket bucket = new Bucket(bucketSize);
+		bucket.dirty = true;
+
+		if (buckets.length() <= iIndex) {
+			// GROW THE ARRAY OF BUCKETS IN MEMORY
+			final AtomicReferenceArray<Bucket> newBuckets = new AtomicReferenceArray<Bucket>(Math.max(iIndex + 1, buckets.length() * 2));
+			for (int i = 0; i < buckets.length(); ++i)
+				newBuckets.set(i, buckets.get(i));
+			buckets = newBuckets;
+		}
+
+		buckets.set(iIndex, bucket);
+		bucketRids.add((ORecordId) bucket.record.getIdentity());
+		return bucket;
+	}
+
+	protected Bucket getBucket(final int iIndex) {
+		final Bucket bucket = buckets.get(iIndex);
+		if (bucket != null)
+			return bucket;
+		return loadBucket(iIndex);
+	}
+
+	/**
+	 * Loads the bucket from the database. It's synchronized because concurrent readers can load the same bucket.
+	 */
+	protected synchronized Bucket loadBucket(final int iIndex) {
+		Bucket bucket = buckets.get(iIndex);
+		if (bucket != null)
+			return bucket;
+
+		final long timer = OProfiler.getInstance().startChrono();
+		try {
+			bucket = new Bucket(bucketSize);
+			bucket.record.setIdentity(bucketRids.get(iIndex).getClusterId(), bucketRids.get(iIndex).getClusterPosition());
+			bucket.record.reload();
+			bucket.fromStream(bucket.record.toStream());
+			buckets.set(iIndex, bucket);
+			return bucket;
+
+		} catch (ORecordNotFoundException e) {
+			OLogManager.instance().error(this, "Cannot load bucket %d of hash table %s", e, OSerializationException.class, iIndex,
+					record.getIdentity());
+			return null;
+		} finally {
+			OProfiler.getInstance().stopChrono("OHashTableDatabase.loadBucket", timer);
+		}
+	}
+
+	protected void deleteBucket(final int iIndex) {
+		final ORecordId rid = bucketRids.get(iIndex);
+		if (!rid.isValid())
+			return;
+
+		final Bucket bucket = getBucket(iIndex);
+		if (bucket != null)
+			getDatabase().delete(bucket.record);
+	}
+
+	protected byte[] keyToStream(final Object iKey) {
+		try {
+			return keySerializer.toStream(iKey);
+		} catch (IOException e) {
+			throw new OSerializationException("Cannot marshall the key '" + iKey + "' for hash table " + record.getIdentity(), e);
+		}
+	}
+
+	/**
+	 * Hashes the serialized key. The final mixing spreads the bits, since only the lowest ones select the bucket.
+	 */
+	protected static int hash(final byte[] iKey) {
+		int h = Arrays.hashCode(iKey);
+		h ^= h >>> 16;
+		h *= 0x85ebca6b;
+		h ^= h >>> 13;
+		h *= 0xc2b2ae35;
+		h ^= h >>> 16;
+		return h & 0x7fffffff;
+	}
+
+	protected static ODatabaseRecord getDatabase() {
+		return ODatabaseRecordThreadLocal.INSTANCE.get();
+	}
+}
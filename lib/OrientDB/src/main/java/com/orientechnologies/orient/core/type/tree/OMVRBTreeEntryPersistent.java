@@ -23,6 +23,7 @@ import com.orientechnologies.orient.core.exception.OSerializationException;
 import com.orientechnologies.orient.core.id.ORID;
 import com.orientechnologies.orient.core.id.ORecordId;
 import com.orientechnologies.orient.core.type.tree.provider.OMVRBTreeEntryDataProvider;
+import com.orientechnologies.orient.core.type.tree.provider.OMVRBTreeMapEntryProvider;
 
 /**
  * 
@@ -75,9 +76,9 @@ public class OMVRBTreeEntryPersistent<K, V> extends OMVRBTreeEntry<K, V> {
 	protected OMVRBTreeEntryDataProvider<K, V>	dataProvider;
 	protected OMVRBTreePersistent<K, V>					pTree;
 
-	protected OMVRBTreeEntryPersistent<K, V>		parent;
-	protected OMVRBTreeEntryPersistent<K, V>		left;
-	protected OMVRBTreeEntryPersistent<K, V>		right;
+	protected volatile OMVRBTreeEntryPersistent<K, V>	parent;
+	protected volatile OMVRBTreeEntryPersistent<K, V>	left;
+	protected volatile OMVRBTreeEntryPersistent<K, V>	right;
 
 	/**
 	 * Called upon unmarshalling.
@@ -365,26 +366,31 @@ public class OMVRBTreeEntryPersistent<K, V> extends OMVRBTreeEntry<K, V> {
 		if (dataProvider == null)
 			return null;
 
-		if (parent == null && dataProvider.getParent().isValid()) {
-			// System.out.println("Node " + record.getIdentity() + " is loading PARENT node " + parentRid + "...");
-
-			// LAZY LOADING OF THE PARENT NODE
-			parent = pTree.loadEntry(null, dataProvider.getParent());
-
-			checkEntryStructure();
-
-			if (parent != null) {
-				// TRY TO ASSIGN IT FOLLOWING THE RID
-				if (parent.dataProvider.getLeft().isValid() && parent.dataProvider.getLeft().equals(dataProvider.getIdentity()))
-					parent.left = this;
-				else if (parent.dataProvider.getRight().isValid() && parent.dataProvider.getRight().equals(dataProvider.getIdentity()))
-					parent.right = this;
-				else {
-					OLogManager.instance().error(this, "getParent: Cannot assign node %s to parent. Nodes parent-left=%s, parent-right=%s",
-							dataProvider.getParent(), parent.dataProvider.getLeft(), parent.dataProvider.getRight());
+		if (parent == null && dataProvider.getParent().isValid())
+			synchronized (pTree) {
+				// CHECK AGAIN: ANOTHER READER COULD HAVE LOADED IT IN THE MEANTIME
+				if (parent == null) {
+					// System.out.println("Node " + record.getIdentity() + " is loading PARENT node " + parentRid + "...");
+
+					// LAZY LOADING OF THE PARENT NODE
+					parent = pTree.loadEntry(null, dataProvider.getParent());
+
+					checkEntryStructure();
+
+					if (parent != null) {
+						// TRY TO ASSIGN IT FOLLOWING THE RID
+						if (parent.dataProvider.getLeft().isValid() && parent.dataProvider.getLeft().equals(dataProvider.getIdentity()))
+							parent.left = this;
+						else if (parent.dataProvider.getRight().isValid() && parent.dataProvider.getRight().equals(dataProvider.getIdentity()))
+							parent.right = this;
+						else {
+							OLogManager.instance().error(this,
+									"getParent: Cannot assign node %s to parent. Nodes parent-left=%s, parent-right=%s", dataProvider.getParent(),
+									parent.dataProvider.getLeft(), parent.dataProvider.getRight());
+						}
+					}
 				}
 			}
-		}
 		return parent;
 	}
 
@@ -420,11 +426,14 @@ public class OMVRBTreeEntryPersistent<K, V> extends OMVRBTreeEntry<K, V> {
 	public OMVRBTreeEntry<K, V> getLeft() {
 		if (dataProvider == null)
 			return null;
-		if (left == null && dataProvider.getLeft().isValid()) {
-			// LAZY LOADING OF THE LEFT LEAF
-			left = pTree.loadEntry(this, dataProvider.getLeft());
-			checkEntryStructure();
-		}
+		if (left == null && dataProvider.getLeft().isValid())
+			synchronized (pTree) {
+				if (left == null) {
+					// LAZY LOADING OF THE LEFT LEAF
+					left = pTree.loadEntry(this, dataProvider.getLeft());
+					checkEntryStructure();
+				}
+			}
 		return left;
 	}
 
@@ -449,11 +458,14 @@ public class OMVRBTreeEntryPersistent<K, V> extends OMVRBTreeEntry<K, V> {
 	public OMVRBTreeEntry<K, V> getRight() {
 		if (dataProvider == null)
 			return null;
-		if (right == null && dataProvider.getRight().isValid()) {
-			// LAZY LOADING OF THE RIGHT LEAF
-			right = pTree.loadEntry(this, dataProvider.getRight());
-			checkEntryStructure();
-		}
+		if (right == null && dataProvider.getRight().isValid())
+			synchronized (pTree) {
+				if (right == null) {
+					// LAZY LOADING OF THE RIGHT LEAF
+					right = pTree.loadEntry(this, dataProvider.getRight());
+					checkEntryStructure();
+				}
+			}
 		return right;
 	}
 
@@ -549,6 +561,13 @@ public class OMVRBTreeEntryPersistent<K, V> extends OMVRBTreeEntry<K, V> {
 		return dataProvider.getValueAt(iIndex);
 	}
 
+	@Override
+	protected int searchKeyIndex(final Object iKey) {
+		if (dataProvider instanceof OMVRBTreeMapEntryProvider)
+			return ((OMVRBTreeMapEntryProvider<K, V>) dataProvider).searchKey(iKey);
+		return SEARCH_NOT_SUPPORTED;
+	}
+
 	/**
 	 * Invalidate serialized Value associated in order to be re-marshalled on the next node storing.
 	 */
@@ -17,13 +17,13 @@ package com.orientechnologies.orient.core.type.tree;
 
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
 
 import com.orientechnologies.common.collection.OMVRBTree;
 import com.orientechnologies.common.collection.OMVRBTreeEntry;
@@ -58,8 +58,12 @@ public abstract class OMVRBTreePersistent<K, V> extends OMVRBTree<K, V> {
 	protected int																							entryPointsSize;
 
 	protected float																						optimizeEntryPointsFactor;
-	private final TreeMap<K, OMVRBTreeEntryPersistent<K, V>>	entryPoints					= new TreeMap<K, OMVRBTreeEntryPersistent<K, V>>();
-	private final Map<ORID, OMVRBTreeEntryPersistent<K, V>>		cache								= new HashMap<ORID, OMVRBTreeEntryPersistent<K, V>>();
+	private final ConcurrentSkipListMap<K, OMVRBTreeEntryPersistent<K, V>>	entryPoints					= new ConcurrentSkipListMap<K, OMVRBTreeEntryPersistent<K, V>>();
+	private final Map<ORID, OMVRBTreeEntryPersistent<K, V>>									cache								= new ConcurrentHashMap<ORID, OMVRBTreeEntryPersistent<K, V>>();
+
+	// IF TRUE THE TREE IS READ BY MULTIPLE THREADS AT THE SAME TIME AND ONLY UPDATES CAN OPTIMIZE IT
+	protected boolean																													sharedReads					= false;
+	private boolean																														updating						= false;
 
 	private static final int																	OPTIMIZE_MAX_RETRY	= 10;
 
@@ -93,7 +97,7 @@ public abstract class OMVRBTreePersistent<K, V> extends OMVRBTree<K, V> {
 		dataProvider.load();
 
 		// RESET LAST SEARCH STATE
-		setLastSearchNode(null, null);
+		invalidateLastSearches();
 
 		// LOAD THE ROOT OBJECT AFTER ALL
 		final ORID rootRid = dataProvider.getRoot();
@@ -123,9 +127,10 @@ public abstract class OMVRBTreePersistent<K, V> extends OMVRBTree<K, V> {
 	}
 
 	/**
-	 * Lazy loads a node.
+	 * Lazy loads a node. It's synchronized because concurrent readers can load the same node: the cache assures only one instance
+	 * is created.
 	 */
-	protected OMVRBTreeEntryPersistent<K, V> loadEntry(final OMVRBTreeEntryPersistent<K, V> iParent, final ORID iRecordId) {
+	protected synchronized OMVRBTreeEntryPersistent<K, V> loadEntry(final OMVRBTreeEntryPersistent<K, V> iParent, final ORID iRecordId) {
 		// SEARCH INTO THE CACHE
 		OMVRBTreeEntryPersistent<K, V> entry = searchNodeInCache(iRecordId);
 		if (entry == null) {
@@ -287,9 +292,8 @@ public abstract class OMVRBTreePersistent<K, V> extends OMVRBTree<K, V> {
 				// UNDER THRESHOLD AVOID TO OPTIMIZE
 				return 0;
 
-			lastSearchFound = false;
-			lastSearchKey = null;
-			lastSearchNode = null;
+			final OMVRBTreeEntryPersistent<K, V> lastSearchNode = (OMVRBTreeEntryPersistent<K, V>) getLastSearchNode();
+			invalidateLastSearches();
 
 			int totalDisconnected = 0;
 
@@ -313,7 +317,7 @@ public abstract class OMVRBTreePersistent<K, V> extends OMVRBTree<K, V> {
 							it.remove();
 						}
 				}
-				addNodeAsEntrypoint((OMVRBTreeEntryPersistent<K, V>) lastSearchNode);
+				addNodeAsEntrypoint(lastSearchNode);
 				addNodeAsEntrypoint((OMVRBTreeEntryPersistent<K, V>) root);
 
 				// DISCONNECT THE REMOVED NODES
@@ -363,11 +367,13 @@ public abstract class OMVRBTreePersistent<K, V> extends OMVRBTree<K, V> {
 		optimize();
 		final long timer = OProfiler.getInstance().startChrono();
 
+		updating = true;
 		try {
 			final V v = internalPut(key, value);
 			commitChanges();
 			return v;
 		} finally {
+			updating = false;
 
 			OProfiler.getInstance().stopChrono("OMVRBTreePersistent.put", timer);
 		}
@@ -377,6 +383,7 @@ public abstract class OMVRBTreePersistent<K, V> extends OMVRBTree<K, V> {
 	public void putAll(final Map<? extends K, ? extends V> map) {
 		final long timer = OProfiler.getInstance().startChrono();
 
+		updating = true;
 		try {
 			for (Entry<? extends K, ? extends V> entry : map.entrySet())
 				internalPut(entry.getKey(), entry.getValue());
@@ -384,15 +391,123 @@ public abstract class OMVRBTreePersistent<K, V> extends OMVRBTree<K, V> {
 			commitChanges();
 
 		} finally {
+			updating = false;
 			OProfiler.getInstance().stopChrono("OMVRBTreePersistent.putAll", timer);
 		}
 	}
 
+	/**
+	 * Builds the tree bottom-up from entries sorted by key, without duplicated keys. Nodes are filled up to the fill factor in key
+	 * order and linked as a balanced red-black tree, so no search, rotation nor page split is executed. The tree must be empty.
+	 * Completed subtrees are saved and unloaded while building to keep bounded the nodes in memory.
+	 * 
+	 * @param iEntries
+	 *          Entries sorted by key
+	 * @param iSize
+	 *          Number of entries
+	 * @param iFillFactor
+	 *          Ratio of the page size to fill, between 0 and 1
+	 */
+	public void buildFromSorted(final Iterator<? extends Map.Entry<K, V>> iEntries, final int iSize, final float iFillFactor) {
+		if (root != null)
+			throw new IllegalStateException("Cannot build the tree from sorted entries because it is not empty");
+
+		if (iSize <= 0)
+			return;
+
+		final long timer = OProfiler.getInstance().startChrono();
+
+		updating = true;
+		try {
+			final int pageSize = getDefaultPageSize();
+			final int itemsPerPage = Math.max(1, Math.min(pageSize, (int) (pageSize * iFillFactor)));
+			final int pages = (iSize + itemsPerPage - 1) / itemsPerPage;
+
+			// SPREAD THE ENTRIES EVENLY: THE FIRST PAGES TAKE ONE ENTRY MORE
+			final int[] pageItems = new int[] { iSize / pages, iSize % pages };
+
+			final OMVRBTreeEntryPersistent<K, V> newRoot = buildFromSorted(0, 0, pages - 1, computeRedLevel(pages), iEntries, pageItems);
+			newRoot.setColor(BLACK);
+			setRoot(newRoot);
+			setSize(iSize);
+			markDirty();
+
+			saveNodes();
+			invalidateLastSearches();
+
+		} finally {
+			updating = false;
+			OProfiler.getInstance().stopChrono("OMVRBTreePersistent.buildFromSorted", timer);
+		}
+	}
+
+	/**
+	 * Builds the subtree of the pages between iLow and iHigh following the same strategy of the in-memory version: the middle page is
+	 * the root of the subtree, so the left subtree is completed before the root page is filled.
+	 */
+	private OMVRBTreeEntryPersistent<K, V> buildFromSorted(final int iLevel, final int iLow, final int iHigh, final int iRedLevel,
+			final Iterator<? extends Map.Entry<K, V>> iEntries, final int[] iPageItems) {
+		if (iHigh < iLow)
+			return null;
+
+		final int mid = (iLow + iHigh) >>> 1;
+
+		OMVRBTreeEntryPersistent<K, V> left = null;
+		if (iLow < mid)
+			left = buildFromSorted(iLevel + 1, iLow, mid - 1, iRedLevel, iEntries, iPageItems);
+
+		// PAGES ARE CREATED IN KEY ORDER, SO mid IS ALSO THE NUMBER OF THE PAGES ALREADY FILLED
+		final int items = iPageItems[0] + (mid < iPageItems[1] ? 1 : 0);
+
+		Map.Entry<K, V> entry = iEntries.next();
+		final OMVRBTreeEntryPersistent<K, V> middle = createEntry(entry.getKey(), entry.getValue());
+		for (int i = 1; i < items; ++i) {
+			entry = iEntries.next();
+			middle.insert(i, entry.getKey(), entry.getValue());
+		}
+
+		// COLOR NODES IN NON-FULL BOTTOM MOST LEVEL RED
+		middle.setColor(iLevel == iRedLevel ? RED : BLACK);
+
+		if (left != null) {
+			middle.setLeft(left);
+
+			if (mid - iLow >= entryPointsSize) {
+				// THE LEFT SUBTREE IS COMPLETE: SAVE AND UNLOAD IT
+				saveNodes();
+				unloadBuiltNodes(left);
+				middle.left = null;
+			}
+		}
+
+		if (mid < iHigh)
+			middle.setRight(buildFromSorted(iLevel + 1, mid + 1, iHigh, iRedLevel, iEntries, iPageItems));
+
+		return middle;
+	}
+
+	/**
+	 * Removes from memory a saved subtree. Links are kept in the records, so nodes will be lazy loaded at the first access.
+	 */
+	private void unloadBuiltNodes(final OMVRBTreeEntryPersistent<K, V> iNode) {
+		if (iNode.left != null)
+			unloadBuiltNodes(iNode.left);
+		if (iNode.right != null)
+			unloadBuiltNodes(iNode.right);
+
+		removeNodeFromMemory(iNode);
+		iNode.left = null;
+		iNode.right = null;
+		iNode.parent = null;
+		iNode.clear();
+	}
+
 	@Override
 	public V remove(final Object key) {
 		optimize();
 		final long timer = OProfiler.getInstance().startChrono();
 
+		updating = true;
 		try {
 			for (int i = 0; i < OPTIMIZE_MAX_RETRY; ++i) {
 				try {
@@ -421,6 +536,7 @@ public abstract class OMVRBTreePersistent<K, V> extends OMVRBTree<K, V> {
 				}
 			}
 		} finally {
+			updating = false;
 			OProfiler.getInstance().stopChrono("OMVRBTreePersistent.remove", timer);
 		}
 
@@ -433,32 +549,7 @@ public abstract class OMVRBTreePersistent<K, V> extends OMVRBTree<K, V> {
 		int totalCommitted = 0;
 		try {
 
-			if (!recordsToCommit.isEmpty()) {
-				final List<OMVRBTreeEntryPersistent<K, V>> tmp = new ArrayList<OMVRBTreeEntryPersistent<K, V>>();
-
-				while (recordsToCommit.iterator().hasNext()) {
-					// COMMIT BEFORE THE NEW RECORDS (TO ASSURE RID IN RELATIONSHIPS)
-					tmp.addAll(recordsToCommit);
-
-					recordsToCommit.clear();
-
-					for (OMVRBTreeEntryPersistent<K, V> node : tmp)
-						if (node.dataProvider.isEntryDirty()) {
-							boolean wasNew = node.dataProvider.getIdentity().isNew();
-
-							// CREATE THE RECORD
-							node.save();
-
-							if (debug)
-								System.out.printf("\nSaved %s tree node %s: parent %s, left %s, right %s", wasNew ? "new" : "",
-										node.dataProvider.getIdentity(), node.dataProvider.getParent(), node.dataProvider.getLeft(),
-										node.dataProvider.getRight());
-						}
-
-					totalCommitted += tmp.size();
-					tmp.clear();
-				}
-			}
+			totalCommitted = saveNodes();
 
 			if (dataProvider.isDirty())
 				// TREE IS CHANGED AS WELL
@@ -475,6 +566,42 @@ public abstract class OMVRBTreePersistent<K, V> extends OMVRBTree<K, V> {
 		return totalCommitted;
 	}
 
+	/**
+	 * Saves the changed nodes.
+	 * 
+	 * @return The total saved nodes
+	 */
+	private int saveNodes() {
+		int totalCommitted = 0;
+		if (!recordsToCommit.isEmpty()) {
+			final List<OMVRBTreeEntryPersistent<K, V>> tmp = new ArrayList<OMVRBTreeEntryPersistent<K, V>>();
+
+			while (recordsToCommit.iterator().hasNext()) {
+				// COMMIT BEFORE THE NEW RECORDS (TO ASSURE RID IN RELATIONSHIPS)
+				tmp.addAll(recordsToCommit);
+
+				recordsToCommit.clear();
+
+				for (OMVRBTreeEntryPersistent<K, V> node : tmp)
+					if (node.dataProvider.isEntryDirty()) {
+						boolean wasNew = node.dataProvider.getIdentity().isNew();
+
+						// CREATE THE RECORD
+						node.save();
+
+						if (debug)
+							System.out.printf("\nSaved %s tree node %s: parent %s, left %s, right %s", wasNew ? "new" : "",
+									node.dataProvider.getIdentity(), node.dataProvider.getParent(), node.dataProvider.getLeft(),
+									node.dataProvider.getRight());
+					}
+
+				totalCommitted += tmp.size();
+				tmp.clear();
+			}
+		}
+		return totalCommitted;
+	}
+
 	public void signalNodeChanged(final OMVRBTreeEntry<K, V> iNode) {
 		recordsToCommit.add((OMVRBTreeEntryPersistent<K, V>) iNode);
 	}
@@ -579,14 +706,29 @@ public abstract class OMVRBTreePersistent<K, V> extends OMVRBTree<K, V> {
 	}
 
 	/**
-	 * Checks if optimization is needed by raising a {@link OLowMemoryException}.
+	 * Checks if optimization is needed by raising a {@link OLowMemoryException}. With shared reads only updates are interrupted,
+	 * because the optimization disconnects nodes other readers could be browsing.
 	 */
 	@Override
 	protected void searchNodeCallback() {
-		if (optimization > 0)
+		if (optimization > 0 && (!sharedReads || updating))
 			throw new OLowMemoryException("Optimization level: " + optimization);
 	}
 
+	public boolean isSharedReads() {
+		return sharedReads;
+	}
+
+	/**
+	 * Allows multiple threads to read the tree at the same time. The caller must assure updates have exclusive access and reads
+	 * don't overlap updates. Searches never optimize the tree: the pending optimization is executed by the next update or by
+	 * calling {@link #optimize(boolean)} with exclusive access.
+	 */
+	public void setSharedReads(final boolean iSharedReads) {
+		sharedReads = iSharedReads;
+		setPerThreadSearchState(iSharedReads);
+	}
+
 	public int getOptimizeThreshold() {
 		return optimizeThreshold;
 	}
@@ -614,14 +756,14 @@ public abstract class OMVRBTreePersistent<K, V> extends OMVRBTree<K, V> {
 		final OMVRBTreeEntry<K, V> firstEntry = getFirstEntry();
 
 		if (firstEntry != null) {
-			final int currPageIndex = pageIndex;
+			final int currPageIndex = getPageIndex();
 			buffer.append(" ");
 			buffer.append(firstEntry.getFirstKey());
 			if (size > 1) {
 				buffer.append("-");
 				buffer.append(getLastEntry().getLastKey());
 			}
-			pageIndex = currPageIndex;
+			setPageIndex(currPageIndex);
 		}
 
 		return buffer.toString();
@@ -735,7 +877,7 @@ public abstract class OMVRBTreePersistent<K, V> extends OMVRBTree<K, V> {
 				} while (prev != null);
 
 				if (e != null && e.getSize() > 0)
-					pageIndex = 0;
+					setPageIndex(0);
 
 				return e;
 			}
@@ -766,7 +908,7 @@ public abstract class OMVRBTreePersistent<K, V> extends OMVRBTree<K, V> {
 				} while (next != null);
 
 				if (e != null && e.getSize() > 0)
-					pageIndex = e.getSize() - 1;
+					setPageIndex(e.getSize() - 1);
 
 				return e;
 			}
@@ -15,11 +15,13 @@
  */
 package com.orientechnologies.orient.core.type.tree;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.IdentityHashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Set;
 
 import com.orientechnologies.common.collection.OLazyIterator;
@@ -254,6 +256,39 @@ public class OMVRBTreeRID extends OMVRBTreePersistent<OIdentifiable, OIdentifiab
 		return new OLazyRecordIterator(keySet().iterator(), iAutoConvertToRecord);
 	}
 
+	/**
+	 * Returns the records following the one passed, in the same order of {@link #iterator()}: first the saved records by RID, then
+	 * the new ones. Used to resume the browsing after the last record read.
+	 * 
+	 * @param iAfter
+	 *          Last record read, or null to start from the first one
+	 */
+	public OLazyIterator<OIdentifiable> iterator(final OIdentifiable iAfter) {
+		if (iAfter == null)
+			return iterator();
+
+		((OMVRBTreeRIDProvider) dataProvider).lazyUnmarshall();
+		if (iAfter.getIdentity().isNew()) {
+			// RESUME BETWEEN THE NEW RECORDS
+			final List<OIdentifiable> next = new ArrayList<OIdentifiable>();
+			if (newEntries != null) {
+				boolean found = false;
+				for (ORecord<?> record : newEntries.keySet())
+					if (found)
+						next.add(record);
+					else
+						found = record == iAfter;
+			}
+			return new OLazyRecordIterator(next.iterator(), autoConvertToRecord);
+		}
+
+		final Iterator<OIdentifiable> saved = tailMap(iAfter.getIdentity(), false).keySet().iterator();
+		if (hasNewItems())
+			return new OLazyRecordMultiIterator(null, new Object[] { saved, newEntries.keySet().iterator() }, autoConvertToRecord);
+
+		return new OLazyRecordIterator(saved, autoConvertToRecord);
+	}
+
 	@Override
 	public Set<OIdentifiable> keySet() {
 		((OMVRBTreeRIDProvider) dataProvider).lazyUnmarshall();
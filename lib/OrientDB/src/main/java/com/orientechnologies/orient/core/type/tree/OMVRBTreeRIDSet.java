@@ -96,6 +96,15 @@ public class OMVRBTreeRIDSet implements Set<OIdentifiable>, OStringBuilderSerial
 		return tree.iterator();
 	}
 
+	/**
+	 * Returns the records following the one passed, to resume the browsing after the last record read.
+	 * 
+	 * @see OMVRBTreeRID#iterator(OIdentifiable)
+	 */
+	public OLazyIterator<OIdentifiable> iterator(final OIdentifiable iAfter) {
+		return tree.iterator(iAfter);
+	}
+
 	public Object[] toArray() {
 		return tree.toArray();
 	}
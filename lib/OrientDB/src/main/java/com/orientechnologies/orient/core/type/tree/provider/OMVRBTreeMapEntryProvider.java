@@ -18,6 +18,7 @@ package com.orientechnologies.orient.core.type.tree.provider;
 import java.io.IOException;
 import java.util.Arrays;
 
+import com.orientechnologies.common.collection.OMVRBTreeEntry;
 import com.orientechnologies.common.log.OLogManager;
 import com.orientechnologies.common.profiler.OProfiler;
 import com.orientechnologies.orient.core.exception.OConfigurationException;
@@ -28,7 +29,8 @@ import com.orientechnologies.orient.core.serialization.OMemoryStream;
 import com.orientechnologies.orient.core.serialization.OSerializableStream;
 
 public class OMVRBTreeMapEntryProvider<K, V> extends OMVRBTreeEntryDataProviderAbstract<K, V> {
-	private static final long	serialVersionUID	= 1L;
+	private static final long		serialVersionUID	= 1L;
+	private static final byte[]	NULL_VALUE				= new byte[0];
 	protected K[]							keys;
 	protected V[]							values;
 	protected int[]						serializedKeys;
@@ -91,6 +93,15 @@ public class OMVRBTreeMapEntryProvider<K, V> extends OMVRBTreeEntryDataProviderA
 		return v;
 	}
 
+	/**
+	 * Searches the key with a faster strategy than comparing the keys one by one. Not supported by default.
+	 * 
+	 * @return The index of the key if found, otherwise (-(insertion point) - 1), or {@link OMVRBTreeEntry#SEARCH_NOT_SUPPORTED}
+	 */
+	public int searchKey(final Object iKey) {
+		return OMVRBTreeEntry.SEARCH_NOT_SUPPORTED;
+	}
+
 	public boolean setValueAt(int iIndex, final V iValue) {
 		values[iIndex] = iValue;
 		serializedValues[iIndex] = 0;
@@ -296,17 +307,21 @@ public class OMVRBTreeMapEntryProvider<K, V> extends OMVRBTreeEntryDataProviderA
 	}
 
 	/**
-	 * Serialize only the new values or the changed.
+	 * Serialize only the new values or the changed. A null value is written as an empty content, that is read back as null.
 	 * 
 	 */
 	protected byte[] serializeNewValue(final int iIndex) throws IOException {
+		final byte[] content;
 		if (serializedValues[iIndex] <= 0) {
 			// NEW OR MODIFIED: MARSHALL CONTENT
 			OProfiler.getInstance().updateCounter("OMVRBTreeMapEntry.serializeKey", 1);
-			return ((OMVRBTreeMapProvider<K, V>) treeDataProvider).valueSerializer.toStream(values[iIndex]);
-		}
-		// RETURN ORIGINAL CONTENT
-		return stream.getAsByteArray(serializedValues[iIndex]);
+			content = ((OMVRBTreeMapProvider<K, V>) treeDataProvider).valueSerializer.toStream(values[iIndex]);
+		} else
+			// RETURN ORIGINAL CONTENT
+			content = stream.getAsByteArray(serializedValues[iIndex]);
+
+		// NOTHING WRITTEN WOULD SHIFT THE OFFSETS OF THE NEXT VALUES
+		return content != null ? content : NULL_VALUE;
 	}
 
 	protected Object keyFromStream(final int iIndex) throws IOException {
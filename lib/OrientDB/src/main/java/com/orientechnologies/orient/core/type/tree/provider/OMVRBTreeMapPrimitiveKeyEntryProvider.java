@@ -0,0 +1,253 @@
+/*
+ * Copyright 1999-2011 Luca Garulli (l.garulli--at--orientechnologies.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.orientechnologies.orient.core.type.tree.provider;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import com.orientechnologies.common.collection.OMVRBTreeEntry;
+import com.orientechnologies.common.profiler.OProfiler;
+import com.orientechnologies.orient.core.exception.OConfigurationException;
+import com.orientechnologies.orient.core.exception.OSerializationException;
+import com.orientechnologies.orient.core.id.ORID;
+import com.orientechnologies.orient.core.id.ORecordId;
+import com.orientechnologies.orient.core.serialization.OMemoryStream;
+import com.orientechnologies.orient.core.serialization.OSerializableStream;
+import com.orientechnologies.orient.core.serialization.serializer.stream.OPrimitiveKeySerializer;
+
+/**
+ * Tree node of maps with integer, long and date keys. Keys are kept as an array of longs in memory and as a fixed-size block on
+ * disk, so they are read all together without unmarshalling them one by one and searched without boxing. Values are handled as in
+ * {@link OMVRBTreeMapEntryProvider}.
+ *
+ * @author Luca Garulli
+ */
+public class OMVRBTreeMapPrimitiveKeyEntryProvider<K, V> extends OMVRBTreeMapEntryProvider<K, V> {
+	private static final long	serialVersionUID	= 1L;
+	protected long[]					primitiveKeys;
+
+	public OMVRBTreeMapPrimitiveKeyEntryProvider(final OMVRBTreeMapProvider<K, V> iTreeDataProvider) {
+		super(iTreeDataProvider);
+		keys = null;
+		serializedKeys = null;
+		primitiveKeys = new long[pageSize];
+	}
+
+	public OMVRBTreeMapPrimitiveKeyEntryProvider(final OMVRBTreeMapProvider<K, V> iTreeDataProvider, final ORID iRID) {
+		super(iTreeDataProvider, iRID);
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public K getKeyAt(final int iIndex) {
+		return (K) getKeySerializer().fromLong(primitiveKeys[iIndex]);
+	}
+
+	/**
+	 * Binary searches the key between the primitive keys.
+	 *
+	 * @return The index of the key if found, otherwise (-(insertion point) - 1), or {@link OMVRBTreeEntry#SEARCH_NOT_SUPPORTED} if
+	 *         the key cannot be converted to long
+	 */
+	@Override
+	public int searchKey(final Object iKey) {
+		final OPrimitiveKeySerializer serializer = getKeySerializer();
+		if (!serializer.isConvertible(iKey))
+			return OMVRBTreeEntry.SEARCH_NOT_SUPPORTED;
+
+		return Arrays.binarySearch(primitiveKeys, 0, size, serializer.toLong(iKey));
+	}
+
+	@Override
+	public boolean insertAt(final int iIndex, final K iKey, final V iValue) {
+		if (iIndex < size) {
+			// MOVE RIGHT TO MAKE ROOM FOR THE ITEM
+			System.arraycopy(primitiveKeys, iIndex, primitiveKeys, iIndex + 1, size - iIndex);
+			System.arraycopy(values, iIndex, values, iIndex + 1, size - iIndex);
+			System.arraycopy(serializedValues, iIndex, serializedValues, iIndex + 1, size - iIndex);
+		}
+
+		primitiveKeys[iIndex] = getKeySerializer().toLong(iKey);
+		values[iIndex] = iValue;
+		serializedValues[iIndex] = 0;
+		size++;
+
+		return setDirty();
+	}
+
+	@Override
+	public boolean removeAt(final int iIndex) {
+		if (iIndex == size - 1) {
+			// LAST ONE: JUST REMOVE IT
+		} else if (iIndex > -1) {
+			// SHIFT LEFT THE VALUES
+			System.arraycopy(primitiveKeys, iIndex + 1, primitiveKeys, iIndex, size - iIndex - 1);
+			System.arraycopy(values, iIndex + 1, values, iIndex, size - iIndex - 1);
+			System.arraycopy(serializedValues, iIndex + 1, serializedValues, iIndex, size - iIndex - 1);
+		}
+
+		// FREE RESOURCES
+		size--;
+		primitiveKeys[size] = 0;
+		serializedValues[size] = 0;
+		values[size] = null;
+		return setDirty();
+	}
+
+	@Override
+	public boolean copyDataFrom(final OMVRBTreeEntryDataProvider<K, V> iFrom, final int iStartPosition) {
+		final OMVRBTreeMapPrimitiveKeyEntryProvider<K, V> parent = (OMVRBTreeMapPrimitiveKeyEntryProvider<K, V>) iFrom;
+		size = iFrom.getSize() - iStartPosition;
+		System.arraycopy(parent.primitiveKeys, iStartPosition, primitiveKeys, 0, size);
+		System.arraycopy(parent.serializedValues, iStartPosition, serializedValues, 0, size);
+		System.arraycopy(parent.values, iStartPosition, values, 0, size);
+		stream.setSource(parent.stream.copy());
+		return setDirty();
+	}
+
+	@Override
+	public boolean truncate(final int iNewSize) {
+		// TRUNCATE PARENT
+		Arrays.fill(primitiveKeys, iNewSize, size, 0);
+		Arrays.fill(serializedValues, iNewSize, pageSize, 0);
+		Arrays.fill(values, iNewSize, size, null);
+		size = iNewSize;
+		return setDirty();
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public boolean copyFrom(final OMVRBTreeEntryDataProvider<K, V> iSource) {
+		final OMVRBTreeMapPrimitiveKeyEntryProvider<K, V> source = (OMVRBTreeMapPrimitiveKeyEntryProvider<K, V>) iSource;
+
+		primitiveKeys = source.primitiveKeys.clone();
+		serializedValues = source.serializedValues.clone();
+
+		values = (V[]) new Object[source.values.length];
+		System.arraycopy(source.values, 0, values, 0, source.values.length);
+
+		size = source.size;
+		stream.setSource(source.stream.copy());
+
+		return setDirty();
+	}
+
+	@Override
+	public void delete() {
+		super.delete();
+		primitiveKeys = null;
+	}
+
+	@Override
+	public void clear() {
+		super.clear();
+		primitiveKeys = null;
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public OSerializableStream fromStream(final byte[] iStream) throws OSerializationException {
+		final long timer = OProfiler.getInstance().startChrono();
+
+		if (stream == null)
+			stream = new OMemoryStream(iStream);
+		else
+			stream.setSource(iStream);
+
+		try {
+			pageSize = stream.getAsInteger();
+
+			parentRid = new ORecordId().fromStream(stream.getAsByteArrayFixed(ORecordId.PERSISTENT_SIZE));
+			leftRid = new ORecordId().fromStream(stream.getAsByteArrayFixed(ORecordId.PERSISTENT_SIZE));
+			rightRid = new ORecordId().fromStream(stream.getAsByteArrayFixed(ORecordId.PERSISTENT_SIZE));
+
+			color = stream.getAsBoolean();
+			size = stream.getAsInteger();
+
+			if (size > pageSize)
+				throw new OConfigurationException("Loaded index with page size setted to " + pageSize
+						+ " while the loaded was built with: " + size);
+
+			// KEYS ARE READ ALL TOGETHER FROM THE FIXED-SIZE BLOCK
+			primitiveKeys = new long[pageSize];
+			if (size > 0) {
+				final OPrimitiveKeySerializer serializer = getKeySerializer();
+				final int keySize = serializer.getKeySize();
+				final byte[] block = stream.getAsByteArrayFixed(size * keySize);
+				for (int i = 0; i < size; ++i)
+					primitiveKeys[i] = serializer.fromBytes(block, i * keySize);
+			}
+
+			// UNCOMPACT VALUES SEPARATELY
+			serializedValues = new int[pageSize];
+			for (int i = 0; i < size; ++i) {
+				serializedValues[i] = stream.getAsByteArrayOffset();
+			}
+
+			// VALUES WILL BE LOADED LAZY
+			values = (V[]) new Object[pageSize];
+
+			return this;
+		} finally {
+			OProfiler.getInstance().stopChrono("OMVRBTreeMapEntry.fromStream", timer);
+		}
+	}
+
+	@Override
+	public byte[] toStream() throws OSerializationException {
+		final long timer = OProfiler.getInstance().startChrono();
+
+		try {
+			final OMemoryStream outStream = new OMemoryStream();
+			outStream.jump(0);
+			outStream.set(pageSize);
+
+			outStream.setAsFixed(parentRid.toStream());
+			outStream.setAsFixed(leftRid.toStream());
+			outStream.setAsFixed(rightRid.toStream());
+
+			outStream.set(color);
+			outStream.set(size);
+
+			if (size > 0) {
+				final OPrimitiveKeySerializer serializer = getKeySerializer();
+				final int keySize = serializer.getKeySize();
+				final byte[] block = new byte[size * keySize];
+				for (int i = 0; i < size; ++i)
+					serializer.toBytes(primitiveKeys[i], block, i * keySize);
+				outStream.setAsFixed(block);
+			}
+
+			for (int i = 0; i < size; ++i)
+				serializedValues[i] = outStream.set(serializeNewValue(i));
+
+			final byte[] buffer = outStream.toByteArray();
+
+			stream.setSource(buffer);
+			record.fromStream(buffer);
+			return buffer;
+
+		} catch (IOException e) {
+			throw new OSerializationException("Cannot marshall RB+Tree node", e);
+		} finally {
+			OProfiler.getInstance().stopChrono("OMVRBTreeMapEntry.toStream", timer);
+		}
+	}
+
+	protected OPrimitiveKeySerializer getKeySerializer() {
+		return (OPrimitiveKeySerializer) ((OMVRBTreeMapProvider<K, V>) treeDataProvider).keySerializer;
+	}
+}
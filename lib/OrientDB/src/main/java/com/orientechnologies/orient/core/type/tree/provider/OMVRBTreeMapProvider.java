@@ -27,8 +27,10 @@ import com.orientechnologies.orient.core.id.ORecordId;
 import com.orientechnologies.orient.core.record.impl.ORecordBytesLazy;
 import com.orientechnologies.orient.core.serialization.OMemoryStream;
 import com.orientechnologies.orient.core.serialization.OSerializableStream;
+import com.orientechnologies.orient.core.serialization.serializer.stream.OPrimitiveKeySerializer;
 import com.orientechnologies.orient.core.serialization.serializer.stream.OStreamSerializer;
 import com.orientechnologies.orient.core.serialization.serializer.stream.OStreamSerializerFactory;
+import com.orientechnologies.orient.core.serialization.serializer.stream.OStringKeySerializer;
 import com.orientechnologies.orient.core.storage.OStorage;
 
 public class OMVRBTreeMapProvider<K, V> extends OMVRBTreeProviderAbstract<K, V> {
@@ -57,10 +59,18 @@ public class OMVRBTreeMapProvider<K, V> extends OMVRBTreeProviderAbstract<K, V>
 	}
 
 	public OMVRBTreeEntryDataProvider<K, V> getEntry(final ORID iRid) {
+		if (keySerializer instanceof OPrimitiveKeySerializer)
+			return new OMVRBTreeMapPrimitiveKeyEntryProvider<K, V>(this, iRid);
+		if (keySerializer instanceof OStringKeySerializer)
+			return new OMVRBTreeMapStringKeyEntryProvider<K, V>(this, iRid);
 		return new OMVRBTreeMapEntryProvider<K, V>(this, iRid);
 	}
 
 	public OMVRBTreeEntryDataProvider<K, V> createEntry() {
+		if (keySerializer instanceof OPrimitiveKeySerializer)
+			return new OMVRBTreeMapPrimitiveKeyEntryProvider<K, V>(this);
+		if (keySerializer instanceof OStringKeySerializer)
+			return new OMVRBTreeMapStringKeyEntryProvider<K, V>(this);
 		return new OMVRBTreeMapEntryProvider<K, V>(this);
 	}
 
@@ -76,6 +86,14 @@ public class OMVRBTreeMapProvider<K, V> extends OMVRBTreeProviderAbstract<K, V>
 		super.load(iSt);
 	}
 
+	public OStreamSerializer getKeySerializer() {
+		return keySerializer;
+	}
+
+	public OStreamSerializer getValueSerializer() {
+		return valueSerializer;
+	}
+
 	public boolean updateConfig() {
 		final boolean changed = super.updateConfig();
 		keepKeysInMemory = OGlobalConfiguration.MVRBTREE_ENTRY_KEYS_IN_MEMORY.getValueAsBoolean();
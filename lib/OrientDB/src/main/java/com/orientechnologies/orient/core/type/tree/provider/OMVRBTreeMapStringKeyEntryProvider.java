@@ -0,0 +1,374 @@
+/*
+ * Copyright 1999-2011 Luca Garulli (l.garulli--at--orientechnologies.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.orientechnologies.orient.core.type.tree.provider;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import com.orientechnologies.common.collection.OMVRBTreeEntry;
+import com.orientechnologies.common.profiler.OProfiler;
+import com.orientechnologies.orient.core.exception.OConfigurationException;
+import com.orientechnologies.orient.core.exception.OSerializationException;
+import com.orientechnologies.orient.core.id.ORID;
+import com.orientechnologies.orient.core.id.ORecordId;
+import com.orientechnologies.orient.core.serialization.OBinaryProtocol;
+import com.orientechnologies.orient.core.serialization.OMemoryStream;
+import com.orientechnologies.orient.core.serialization.OSerializableStream;
+
+/**
+ * Tree node of maps with string keys. On disk keys are front-coded: every key stores the length of the prefix shared with the
+ * previous key and the remaining chars only. Every {@link #RESTART_INTERVAL} keys a key is stored in full and its offset is kept as
+ * restart point, so a key is decoded starting from the closest restart point and searches binary search the restart points before
+ * scanning few keys. Loaded nodes keep the compressed keys and decode them lazily, all the keys are decoded only when the node
+ * changes. Values are handled as in {@link OMVRBTreeMapEntryProvider}.
+ *
+ * @author Luca Garulli
+ */
+public class OMVRBTreeMapStringKeyEntryProvider<K, V> extends OMVRBTreeMapEntryProvider<K, V> {
+	private static final long	serialVersionUID	= 1L;
+	public static final int		RESTART_INTERVAL	= 16;
+
+	protected byte[]					keyBlock;
+	protected int[]						restarts;
+	protected int							restartInterval;
+	protected boolean					keysInMemory;
+
+	public OMVRBTreeMapStringKeyEntryProvider(final OMVRBTreeMapProvider<K, V> iTreeDataProvider) {
+		super(iTreeDataProvider);
+		keysInMemory = true;
+	}
+
+	public OMVRBTreeMapStringKeyEntryProvider(final OMVRBTreeMapProvider<K, V> iTreeDataProvider, final ORID iRID) {
+		super(iTreeDataProvider, iRID);
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public K getKeyAt(final int iIndex) {
+		K k = keys[iIndex];
+		if (k == null) {
+			OProfiler.getInstance().updateCounter("OMVRBTreeMapEntry.unserializeKey", 1);
+
+			final boolean keepKeys = ((OMVRBTreeMapProvider<K, V>) treeDataProvider).keepKeysInMemory;
+
+			// DECODE FROM THE CLOSEST RESTART POINT
+			final KeyReader reader = new KeyReader(iIndex / restartInterval);
+			for (int i = reader.index; i <= iIndex; ++i) {
+				k = (K) reader.next();
+
+				if (keys[i] == null && (keepKeys || i == 0 || i == size - 1))
+					// KEEP THE DECODED KEY IN MEMORY. TO OPTIMIZE FIRST AND LAST ITEM ARE ALWAYS KEPT IN MEMORY TO SPEEDUP FREQUENT NODE
+					// CHECKING OF BOUNDS
+					keys[i] = k;
+			}
+		}
+		return k;
+	}
+
+	/**
+	 * Searches the key between the keys of the node, binary searching the restart points if the keys are still compressed.
+	 *
+	 * @return The index of the key if found, otherwise (-(insertion point) - 1), or {@link OMVRBTreeEntry#SEARCH_NOT_SUPPORTED} if
+	 *         the key is not a string
+	 */
+	@Override
+	public int searchKey(final Object iKey) {
+		if (!(iKey instanceof String))
+			return OMVRBTreeEntry.SEARCH_NOT_SUPPORTED;
+
+		final String key = (String) iKey;
+
+		if (keysInMemory)
+			return Arrays.binarySearch(keys, 0, size, key);
+
+		// SEARCH THE LAST RESTART POINT NOT GREATER THAN THE KEY
+		int low = 0;
+		int high = restarts.length - 1;
+		while (low < high) {
+			final int mid = (low + high + 1) >>> 1;
+			if (getRestartKey(mid).compareTo(key) <= 0)
+				low = mid;
+			else
+				high = mid - 1;
+		}
+
+		// SCAN THE KEYS OF THE RESTART INTERVAL
+		final KeyReader reader = new KeyReader(low);
+		final int end = Math.min(size, reader.index + restartInterval);
+		for (int i = reader.index; i < end; ++i) {
+			final int cmp = reader.next().compareTo(key);
+			if (cmp == 0)
+				return i;
+			if (cmp > 0)
+				return -(i + 1);
+		}
+		return -(end + 1);
+	}
+
+	/**
+	 * Returns the key stored in full at the restart point. Restart keys are kept in memory once decoded since every search reads them.
+	 */
+	@SuppressWarnings("unchecked")
+	private String getRestartKey(final int iRestart) {
+		final int index = iRestart * restartInterval;
+		if (keys[index] == null)
+			keys[index] = (K) new KeyReader(iRestart).next();
+		return (String) keys[index];
+	}
+
+	@Override
+	public boolean insertAt(final int iIndex, final K iKey, final V iValue) {
+		decodeKeys();
+		return super.insertAt(iIndex, iKey, iValue);
+	}
+
+	@Override
+	public boolean removeAt(final int iIndex) {
+		decodeKeys();
+		return super.removeAt(iIndex);
+	}
+
+	@Override
+	public boolean copyDataFrom(final OMVRBTreeEntryDataProvider<K, V> iFrom, final int iStartPosition) {
+		((OMVRBTreeMapStringKeyEntryProvider<K, V>) iFrom).decodeKeys();
+		decodeKeys();
+		return super.copyDataFrom(iFrom, iStartPosition);
+	}
+
+	@Override
+	public boolean truncate(final int iNewSize) {
+		decodeKeys();
+		return super.truncate(iNewSize);
+	}
+
+	@Override
+	public boolean copyFrom(final OMVRBTreeEntryDataProvider<K, V> iSource) {
+		((OMVRBTreeMapStringKeyEntryProvider<K, V>) iSource).decodeKeys();
+		decodeKeys();
+		return super.copyFrom(iSource);
+	}
+
+	@Override
+	public void delete() {
+		super.delete();
+		keysInMemory = false;
+		keyBlock = null;
+		restarts = null;
+	}
+
+	@Override
+	public void clear() {
+		super.clear();
+		keysInMemory = false;
+		keyBlock = null;
+		restarts = null;
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public OSerializableStream fromStream(final byte[] iStream) throws OSerializationException {
+		final long timer = OProfiler.getInstance().startChrono();
+
+		if (stream == null)
+			stream = new OMemoryStream(iStream);
+		else
+			stream.setSource(iStream);
+
+		try {
+			pageSize = stream.getAsInteger();
+
+			parentRid = new ORecordId().fromStream(stream.getAsByteArrayFixed(ORecordId.PERSISTENT_SIZE));
+			leftRid = new ORecordId().fromStream(stream.getAsByteArrayFixed(ORecordId.PERSISTENT_SIZE));
+			rightRid = new ORecordId().fromStream(stream.getAsByteArrayFixed(ORecordId.PERSISTENT_SIZE));
+
+			color = stream.getAsBoolean();
+			size = stream.getAsInteger();
+
+			if (size > pageSize)
+				throw new OConfigurationException("Loaded index with page size setted to " + pageSize
+						+ " while the loaded was built with: " + size);
+
+			// KEYS STAY COMPRESSED AND WILL BE DECODED LAZY
+			keys = (K[]) new Object[pageSize];
+			serializedKeys = new int[pageSize];
+			if (size > 0) {
+				restartInterval = stream.getAsInteger();
+				keyBlock = stream.getAsByteArray();
+				restarts = new int[(size + restartInterval - 1) / restartInterval];
+				for (int i = 0; i < restarts.length; ++i)
+					restarts[i] = stream.getAsInteger();
+				keysInMemory = false;
+			} else {
+				keyBlock = null;
+				restarts = null;
+				keysInMemory = true;
+			}
+
+			// UNCOMPACT VALUES SEPARATELY
+			serializedValues = new int[pageSize];
+			for (int i = 0; i < size; ++i) {
+				serializedValues[i] = stream.getAsByteArrayOffset();
+			}
+
+			// VALUES WILL BE LOADED LAZY
+			values = (V[]) new Object[pageSize];
+
+			return this;
+		} finally {
+			OProfiler.getInstance().stopChrono("OMVRBTreeMapEntry.fromStream", timer);
+		}
+	}
+
+	@Override
+	public byte[] toStream() throws OSerializationException {
+		final long timer = OProfiler.getInstance().startChrono();
+
+		try {
+			final OMemoryStream outStream = new OMemoryStream();
+			outStream.jump(0);
+			outStream.set(pageSize);
+
+			outStream.setAsFixed(parentRid.toStream());
+			outStream.setAsFixed(leftRid.toStream());
+			outStream.setAsFixed(rightRid.toStream());
+
+			outStream.set(color);
+			outStream.set(size);
+
+			if (size > 0) {
+				if (keyBlock == null)
+					// KEYS ARE CHANGED: COMPRESS THEM AGAIN, OTHERWISE REUSE THE LOADED BLOCK
+					encodeKeys();
+
+				outStream.set(restartInterval);
+				outStream.set(keyBlock);
+				for (int restart : restarts)
+					outStream.set(restart);
+			}
+
+			for (int i = 0; i < size; ++i)
+				serializedValues[i] = outStream.set(serializeNewValue(i));
+
+			final byte[] buffer = outStream.toByteArray();
+
+			stream.setSource(buffer);
+			record.fromStream(buffer);
+			return buffer;
+
+		} catch (IOException e) {
+			throw new OSerializationException("Cannot marshall RB+Tree node", e);
+		} finally {
+			OProfiler.getInstance().stopChrono("OMVRBTreeMapEntry.toStream", timer);
+		}
+	}
+
+	/**
+	 * Decodes all the compressed keys in memory and drops the compressed block. Called before changing the keys since their positions
+	 * change.
+	 */
+	@SuppressWarnings("unchecked")
+	protected void decodeKeys() {
+		if (!keysInMemory) {
+			final KeyReader reader = new KeyReader(0);
+			for (int i = 0; i < size; ++i) {
+				final String key = reader.next();
+				if (keys[i] == null)
+					keys[i] = (K) key;
+			}
+			keysInMemory = true;
+		}
+
+		keyBlock = null;
+		restarts = null;
+	}
+
+	/**
+	 * Compresses the keys in memory in a new block, reused by the next saves until the keys change.
+	 */
+	private void encodeKeys() {
+		restartInterval = RESTART_INTERVAL;
+		restarts = new int[(size + restartInterval - 1) / restartInterval];
+
+		final OMemoryStream block = new OMemoryStream();
+		String previous = null;
+		for (int i = 0; i < size; ++i) {
+			final String key = (String) keys[i];
+
+			int shared = 0;
+			if (i % restartInterval == 0)
+				restarts[i / restartInterval] = block.getPosition();
+			else {
+				// COUNT THE CHARS IN COMMON WITH THE PREVIOUS KEY
+				final int max = Math.min(previous.length(), key.length());
+				while (shared < max && previous.charAt(shared) == key.charAt(shared))
+					shared++;
+			}
+
+			final byte[] suffix = OBinaryProtocol.string2bytes(key.substring(shared));
+			writeVarInt(block, shared);
+			writeVarInt(block, suffix.length);
+			block.write(suffix, 0, suffix.length);
+
+			previous = key;
+		}
+
+		keyBlock = block.toByteArray();
+	}
+
+	private static void writeVarInt(final OMemoryStream iStream, int iValue) {
+		while ((iValue & ~0x7F) != 0) {
+			iStream.write((iValue & 0x7F) | 0x80);
+			iValue >>>= 7;
+		}
+		iStream.write(iValue);
+	}
+
+	/**
+	 * Reads the compressed keys sequentially starting from a restart point.
+	 */
+	private class KeyReader {
+		private final int	index;
+		private int				position;
+		private String		previous;
+
+		private KeyReader(final int iRestart) {
+			index = iRestart * restartInterval;
+			position = restarts[iRestart];
+		}
+
+		private String next() {
+			final int shared = readVarInt();
+			final int length = readVarInt();
+			final String suffix = OBinaryProtocol.bytes2string(keyBlock, position, length);
+			position += length;
+
+			previous = shared == 0 ? suffix : previous.substring(0, shared) + suffix;
+			return previous;
+		}
+
+		private int readVarInt() {
+			int value = 0;
+			int shift = 0;
+			byte b;
+			do {
+				b = keyBlock[position++];
+				value |= (b & 0x7F) << shift;
+				shift += 7;
+			} while ((b & 0x80) != 0);
+			return value;
+		}
+	}
+}
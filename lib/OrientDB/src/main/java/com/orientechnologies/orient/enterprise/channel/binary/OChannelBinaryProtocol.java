@@ -59,7 +59,7 @@ public class OChannelBinaryProtocol {
 	public static final byte	REQUEST_COUNT									= 40; // DEPRECATED: USE REQUEST_DATACLUSTER_COUNT
 	public static final byte	REQUEST_COMMAND								= 41;
 
-	public static final byte	REQUEST_TX_COMMIT							= 60;
+	public static final byte	REQUEST_TX_COMMIT							= 60; // DURABILITY SENT SINCE PROTOCOL 8
 
 	public static final byte	REQUEST_CONFIG_GET						= 70;
 	public static final byte	REQUEST_CONFIG_SET						= 71;
@@ -79,7 +79,7 @@ public class OChannelBinaryProtocol {
 	// CONSTANTS
 	public static final short	RECORD_NULL										= -2;
 	public static final short	RECORD_RID										= -3;
-	public static final int		CURRENT_PROTOCOL_VERSION			= 7;	// SENT AS SHORT AS FIRST PACKET AFTER SOCKET CONNECTION
+	public static final int		CURRENT_PROTOCOL_VERSION			= 8;	// SENT AS SHORT AS FIRST PACKET AFTER SOCKET CONNECTION
 
 	public static OIdentifiable readIdentifiable(final OChannelBinaryClient network) throws IOException {
 		final int classId = network.readShort();
@@ -19,6 +19,7 @@ import com.orientechnologies.orient.core.Orient;
 import com.orientechnologies.orient.core.command.OCommandOutputListener;
 import com.orientechnologies.orient.core.db.ODatabase;
 import com.orientechnologies.orient.core.db.document.ODatabaseDocumentTx;
+import com.orientechnologies.orient.core.db.tool.ODatabaseBackup;
 import com.orientechnologies.orient.core.db.tool.ODatabaseExport;
 import com.orientechnologies.orient.core.exception.OConfigurationException;
 import com.orientechnologies.orient.server.OServer;
@@ -33,6 +34,7 @@ public class OAutomaticBackup extends OServerHandlerAbstract {
 	private long				delay							= -1;
 	private String			targetDirectory		= "backup";
 	private String			targetFileName;
+	private boolean			incremental				= false;
 	private Set<String>	includeDatabases	= new HashSet<String>();
 	private Set<String>	excludeDatabases	= new HashSet<String>();
 
@@ -55,6 +57,8 @@ public class OAutomaticBackup extends OServerHandlerAbstract {
 					excludeDatabases.add(db);
 			else if (param.name.equalsIgnoreCase("target.fileName"))
 				targetFileName = param.value;
+			else if (param.name.equalsIgnoreCase("incremental"))
+				incremental = Boolean.parseBoolean(param.value);
 		}
 
 		if (delay <= 0)
@@ -70,8 +74,9 @@ public class OAutomaticBackup extends OServerHandlerAbstract {
 			// CREATE BACKUP FOLDER(S) IF ANY
 			filePath.mkdirs();
 
-		OLogManager.instance().info(this, "Automatic backup handler installed and active: delay=%dms, targetDirectory=%s", delay,
-				targetDirectory);
+		OLogManager.instance().info(this,
+				"Automatic backup handler installed and active: delay=%dms, targetDirectory=%s, incremental=%s", delay, targetDirectory,
+				incremental);
 
 		Orient.getTimer().schedule(new TimerTask() {
 
@@ -89,7 +94,28 @@ public class OAutomaticBackup extends OServerHandlerAbstract {
 					if (excludeDatabases.contains(dbName.getKey()))
 						include = false;
 
-					if (include) {
+					if (include && incremental) {
+						// BINARY BACKUP IN A DIRECTORY PER DATABASE: ONLY THE CHANGES SINCE THE PREVIOUS ONE ARE WRITTEN
+						final String backupDirectory = targetDirectory + dbName.getKey();
+						final ODatabaseDocumentTx db = new ODatabaseDocumentTx(dbName.getValue());
+
+						try {
+							db.setProperty(ODatabase.OPTIONS.SECURITY.toString(), Boolean.FALSE);
+							db.open("admin", "aaa");
+
+							new ODatabaseBackup(db, backupDirectory, new OCommandOutputListener() {
+								@Override
+								public void onMessage(final String iText) {
+								}
+							}).backup();
+
+						} catch (Exception e) {
+							OLogManager.instance().error(this,
+									"[OAutomaticBackup] Error on backup of database '" + dbName.getValue() + "' to directory: " + backupDirectory, e);
+						} finally {
+							db.close();
+						}
+					} else if (include) {
 						final String fileName = OVariableParser.resolveVariables(targetFileName, OSystemVariableResolver.VAR_BEGIN,
 								OSystemVariableResolver.VAR_END, new OVariableParserListener() {
 									@Override
@@ -33,8 +33,10 @@ import com.orientechnologies.orient.core.record.impl.ODocument;
 import com.orientechnologies.orient.core.tx.OTransactionOptimistic;
 import com.orientechnologies.orient.core.tx.OTransactionRealAbstract;
 import com.orientechnologies.orient.enterprise.channel.binary.OChannelBinary;
+import com.orientechnologies.orient.enterprise.channel.binary.ONetworkProtocolException;
 
 public class OTransactionOptimisticProxy extends OTransactionOptimistic {
+	private static final DURABILITY[]					DURABILITIES				= DURABILITY.values();
 	private final Map<ORecordId, ORecord<?>>	createdRecords			= new HashMap<ORecordId, ORecord<?>>();
 	private final Map<ORecordId, ORecord<?>>	updatedRecords			= new HashMap<ORecordId, ORecord<?>>();
 	private final int													clientTxId;
@@ -54,6 +56,13 @@ public class OTransactionOptimisticProxy extends OTransactionOptimistic {
 		try {
 			setUsingLog(channel.readByte() == 1);
 
+			final byte durability = channel.readByte();
+			if (durability < -1 || durability >= DURABILITIES.length)
+				throw new ONetworkProtocolException("Invalid durability " + durability + " received with transaction " + clientTxId
+						+ ". Transaction aborted");
+			if (durability > -1)
+				setDurability(DURABILITIES[durability]);
+
 			byte lastTxStatus;
 			for (lastTxStatus = channel.readByte(); lastTxStatus == 1; lastTxStatus = channel.readByte()) {
 				final byte recordStatus = channel.readByte();
@@ -102,6 +111,9 @@ public class OTransactionOptimisticProxy extends OTransactionOptimistic {
 			for (ORecord<?> record : updatedRecords.values())
 				unmarshallRecord(record);
 
+		} catch (ONetworkProtocolException e) {
+			rollback();
+			throw e;
 		} catch (IOException e) {
 			rollback();
 			throw new OSerializationException("Cannot read transaction record from the network. Transaction aborted", e);
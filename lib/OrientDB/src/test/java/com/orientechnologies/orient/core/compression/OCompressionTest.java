@@ -0,0 +1,82 @@
+/*
+ * Copyright 1999-2010 Luca Garulli (l.garulli--at--orientechnologies.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.orientechnologies.orient.core.compression;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Round trip of every registered codec on contents more and less compressible.
+ */
+@Test
+public class OCompressionTest {
+
+	public void roundTripOfEveryCodec() {
+		Assert.assertFalse(OCompressionFactory.instance().getCompressions().isEmpty());
+
+		for (OCompression compression : OCompressionFactory.instance().getCompressions()) {
+			Assert.assertSame(OCompressionFactory.instance().getCompression(compression.getName()), compression);
+			Assert.assertSame(OCompressionFactory.instance().getCompression(compression.getId()), compression);
+
+			for (byte[] content : getContents())
+				checkRoundTrip(compression, content);
+		}
+	}
+
+	public void noneIsNoCompression() {
+		Assert.assertNull(OCompressionFactory.instance().getCompression((String) null));
+		Assert.assertNull(OCompressionFactory.instance().getCompression(OCompressionFactory.NONE));
+	}
+
+	private void checkRoundTrip(final OCompression iCompression, final byte[] iContent) {
+		final byte[] compressed = iCompression.compress(iContent);
+		if (compressed == null)
+			// NOT COMPRESSIBLE: THE CALLER STORES IT RAW
+			return;
+
+		// UNCOMPRESS IT FROM THE MIDDLE OF A BIGGER BUFFER LIKE THE DATA SEGMENT DOES
+		final byte[] buffer = new byte[compressed.length + 10];
+		System.arraycopy(compressed, 0, buffer, 3, compressed.length);
+		final byte[] uncompressed = iCompression.uncompress(buffer, 3, compressed.length);
+
+		Assert.assertTrue(Arrays.equals(uncompressed, iContent), iCompression.getName() + " failed on " + iContent.length + " bytes");
+	}
+
+	private static byte[][] getContents() {
+		final Random random = new Random(0);
+
+		final byte[] small = new byte[] { 1, 2, 3 };
+
+		final byte[] repetitive = new byte[10000];
+		for (int i = 0; i < repetitive.length; ++i)
+			repetitive[i] = (byte) ('a' + i % 7);
+
+		final byte[] randomBytes = new byte[10000];
+		random.nextBytes(randomBytes);
+
+		final byte[] text = new byte[256 * 1024];
+		final byte[] words = "the quick brown fox jumps over the lazy dog ".getBytes();
+		for (int i = 0; i < text.length; ++i)
+			text[i] = random.nextInt(10) == 0 ? (byte) random.nextInt() : words[i % words.length];
+
+		final byte[] zeros = new byte[70000];
+
+		return new byte[][] { new byte[0], small, repetitive, randomBytes, text, zeros };
+	}
+}
@@ -0,0 +1,201 @@
+/*
+ * Copyright 1999-2010 Luca Garulli (l.garulli--at--orientechnologies.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.orientechnologies.orient.core.db.tool;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.orientechnologies.orient.core.command.OCommandOutputListener;
+import com.orientechnologies.orient.core.config.OGlobalConfiguration;
+import com.orientechnologies.orient.core.db.document.ODatabaseDocumentTx;
+import com.orientechnologies.orient.core.id.ORID;
+import com.orientechnologies.orient.core.id.ORecordId;
+import com.orientechnologies.orient.core.record.impl.ODocument;
+import com.orientechnologies.orient.core.storage.OCluster;
+import com.orientechnologies.orient.core.storage.ORawBuffer;
+import com.orientechnologies.orient.core.storage.impl.local.OStorageLocal;
+
+/**
+ * Takes a full backup and incremental backups of a database changed in between, restores them in new databases and compares
+ * every record with the source, version included.
+ */
+@Test
+public class ODatabaseBackupTest {
+	private static final String						CLASS			= "Backup";
+	private static final int							RECORDS		= 1000;
+
+	private static final OCommandOutputListener	LISTENER	= new OCommandOutputListener() {
+																										public void onMessage(final String iText) {
+																										}
+																									};
+
+	private boolean												oldStorageOpen;
+	private String												basePath;
+	private File													backupDirectory;
+	private ODatabaseDocumentTx						db;
+
+	@BeforeMethod
+	public void beforeMethod() {
+		oldStorageOpen = OGlobalConfiguration.STORAGE_KEEP_OPEN.getValueAsBoolean();
+		OGlobalConfiguration.STORAGE_KEEP_OPEN.setValue(false);
+
+		basePath = System.getProperty("java.io.tmpdir") + File.separator + "orientdb" + File.separator + "backuptest";
+		backupDirectory = new File(basePath + "-archives");
+		deleteDirectory(backupDirectory);
+
+		for (String name : new String[] { "restored", "restoredfirst" })
+			dropDatabase("local:" + basePath + "-" + name);
+
+		dropDatabase("local:" + basePath);
+		db = new ODatabaseDocumentTx("local:" + basePath).create();
+		db.getMetadata().getSchema().createClass(CLASS);
+		db.getMetadata().getSchema().save();
+	}
+
+	@AfterMethod
+	public void afterMethod() {
+		if (!db.isClosed())
+			db.close();
+
+		dropDatabase("local:" + basePath);
+		for (String name : new String[] { "restored", "restoredfirst" })
+			dropDatabase("local:" + basePath + "-" + name);
+		deleteDirectory(backupDirectory);
+
+		OGlobalConfiguration.STORAGE_KEEP_OPEN.setValue(oldStorageOpen);
+	}
+
+	public void fullAndIncrementalRestore() throws IOException {
+		final List<ORID> rids = new ArrayList<ORID>();
+		for (int i = 0; i < RECORDS; ++i) {
+			final ODocument doc = new ODocument(db, CLASS).field("value", i).field("text", "record " + i);
+			doc.save();
+			rids.add(doc.getIdentity().copy());
+		}
+
+		new ODatabaseBackup(db, backupDirectory.getAbsolutePath(), LISTENER).backup();
+
+		// FIRST DELTA: UPDATES, DELETES AND NEW RECORDS
+		for (int i = 0; i < RECORDS; i += 3) {
+			final ODocument doc = db.load(rids.get(i));
+			doc.field("text", "updated " + i + " with a longer content than before");
+			doc.save();
+		}
+		for (int i = 1; i < RECORDS; i += 7)
+			// KEEP THE UPDATED ONES FOR THE NEXT DELTA
+			if (i % 3 != 0)
+				db.delete(rids.get(i));
+		for (int i = 0; i < 100; ++i)
+			new ODocument(db, CLASS).field("value", RECORDS + i).save();
+
+		new ODatabaseBackup(db, backupDirectory.getAbsolutePath(), LISTENER).backup();
+		final Map<String, ORawBuffer> afterFirstDelta = readAll(db);
+		final long countAfterFirstDelta = db.countClass(CLASS);
+
+		// SECOND DELTA: UPDATE AGAIN, DELETE UPDATED RECORDS AND REUSE THE DELETED POSITIONS
+		for (int i = 0; i < RECORDS; i += 6)
+			db.delete(rids.get(i));
+		for (int i = 3; i < RECORDS; i += 6) {
+			final ODocument doc = db.load(rids.get(i));
+			doc.field("text", "short");
+			doc.save();
+		}
+		for (int i = 0; i < 200; ++i)
+			new ODocument(db, CLASS).field("value", -i).save();
+
+		final File last = new ODatabaseBackup(db, backupDirectory.getAbsolutePath(), LISTENER).backup();
+		Assert.assertTrue(last.exists());
+		final Map<String, ORawBuffer> afterSecondDelta = readAll(db);
+		final long countAfterSecondDelta = db.countClass(CLASS);
+		db.close();
+
+		// RESTORE EVERYTHING
+		Assert.assertEquals(new ODatabaseRestore("local:" + basePath + "-restored", backupDirectory.getAbsolutePath(), LISTENER)
+				.restore(), 2);
+		checkDatabase("local:" + basePath + "-restored", afterSecondDelta, countAfterSecondDelta);
+
+		// RESTORE UNTIL THE FIRST DELTA
+		Assert.assertEquals(
+				new ODatabaseRestore("local:" + basePath + "-restoredfirst", backupDirectory.getAbsolutePath(), LISTENER)
+						.setLastSequence(1).restore(), 1);
+		checkDatabase("local:" + basePath + "-restoredfirst", afterFirstDelta, countAfterFirstDelta);
+	}
+
+	private void checkDatabase(final String iURL, final Map<String, ORawBuffer> iExpected, final long iClassCount) {
+		final ODatabaseDocumentTx restored = new ODatabaseDocumentTx(iURL).open("admin", "admin");
+		try {
+			final Map<String, ORawBuffer> actual = readAll(restored);
+			Assert.assertEquals(actual.keySet(), iExpected.keySet());
+
+			for (Map.Entry<String, ORawBuffer> entry : iExpected.entrySet()) {
+				final ORawBuffer buffer = actual.get(entry.getKey());
+				Assert.assertEquals(buffer.version, entry.getValue().version, "Wrong version of " + entry.getKey());
+				Assert.assertEquals(buffer.recordType, entry.getValue().recordType, "Wrong type of " + entry.getKey());
+				Assert.assertTrue(Arrays.equals(buffer.buffer, entry.getValue().buffer), "Wrong content of " + entry.getKey());
+			}
+
+			Assert.assertEquals(restored.countClass(CLASS), iClassCount);
+		} finally {
+			restored.close();
+		}
+	}
+
+	/**
+	 * Reads the raw content of all the records of all the physical clusters.
+	 */
+	private static Map<String, ORawBuffer> readAll(final ODatabaseDocumentTx iDatabase) {
+		final OStorageLocal storage = (OStorageLocal) iDatabase.getStorage();
+		final Map<String, ORawBuffer> records = new HashMap<String, ORawBuffer>();
+
+		for (OCluster cluster : storage.getClusterInstances()) {
+			if (!cluster.getType().equals("PHYSICAL"))
+				continue;
+
+			final long last = storage.getClusterDataRange(cluster.getId())[1];
+			for (long pos = 0; pos <= last; ++pos) {
+				final ORecordId rid = new ORecordId(cluster.getId(), pos);
+				final ORawBuffer buffer = storage.readRecord(rid, null, null);
+				if (buffer != null)
+					records.put(cluster.getName() + ":" + pos, buffer);
+			}
+		}
+		return records;
+	}
+
+	private static void dropDatabase(final String iURL) {
+		final ODatabaseDocumentTx database = new ODatabaseDocumentTx(iURL);
+		if (database.exists())
+			database.open("admin", "admin").drop();
+	}
+
+	private static void deleteDirectory(final File iDirectory) {
+		final File[] files = iDirectory.listFiles();
+		if (files != null)
+			for (File f : files)
+				f.delete();
+		iDirectory.delete();
+	}
+}
@@ -0,0 +1,200 @@
+/*
+ * Copyright 1999-2010 Luca Garulli (l.garulli--at--orientechnologies.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.orientechnologies.orient.core.db.tool;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.orientechnologies.orient.core.config.OGlobalConfiguration;
+import com.orientechnologies.orient.core.db.document.ODatabaseDocumentTx;
+import com.orientechnologies.orient.core.db.record.OIdentifiable;
+import com.orientechnologies.orient.core.exception.OStorageException;
+import com.orientechnologies.orient.core.id.ORID;
+import com.orientechnologies.orient.core.index.OIndex;
+import com.orientechnologies.orient.core.metadata.schema.OClass;
+import com.orientechnologies.orient.core.metadata.schema.OType;
+import com.orientechnologies.orient.core.record.impl.ODocument;
+import com.orientechnologies.orient.core.sql.query.OSQLSynchQuery;
+import com.orientechnologies.orient.core.storage.impl.local.OStorageLocal;
+
+/**
+ * Loads documents in bulk in a class with indexes, then checks the documents and the rebuilt indexes also after the reopen of the
+ * database, and that the other changes to the loaded clusters are refused until the load is closed.
+ */
+@Test
+public class ODatabaseBulkLoaderTest {
+	private static final String		CLASS		= "Bulk";
+	private static final int			RECORDS	= 1000;
+	private static final int			SAVED		= 50;
+
+	private boolean								oldStorageOpen;
+	private String								dbPath;
+	private ODatabaseDocumentTx		db;
+
+	@BeforeMethod
+	public void beforeMethod() {
+		oldStorageOpen = OGlobalConfiguration.STORAGE_KEEP_OPEN.getValueAsBoolean();
+		OGlobalConfiguration.STORAGE_KEEP_OPEN.setValue(false);
+
+		dbPath = System.getProperty("java.io.tmpdir") + File.separator + "orientdb" + File.separator + "bulkloadtest";
+		db = new ODatabaseDocumentTx("local:" + dbPath);
+		if (db.exists())
+			db.open("admin", "admin").drop();
+		db = new ODatabaseDocumentTx("local:" + dbPath);
+		db.create();
+
+		final OClass cls = db.getMetadata().getSchema().createClass(CLASS);
+		cls.createProperty("code", OType.INTEGER).createIndex(OClass.INDEX_TYPE.UNIQUE);
+		cls.createProperty("level", OType.INTEGER).createIndex(OClass.INDEX_TYPE.NOTUNIQUE);
+		db.getMetadata().getSchema().save();
+
+		// RECORDS SAVED BEFORE THE LOAD
+		for (int i = 0; i < SAVED; ++i)
+			createDocument(i).save();
+	}
+
+	@AfterMethod
+	public void afterMethod() {
+		if (!db.isClosed())
+			db.close();
+		new ODatabaseDocumentTx("local:" + dbPath).open("admin", "admin").drop();
+		OGlobalConfiguration.STORAGE_KEEP_OPEN.setValue(oldStorageOpen);
+	}
+
+	public void loadAndReopen() {
+		final List<ORID> loaded = new ArrayList<ORID>();
+
+		final ODatabaseBulkLoader loader = new ODatabaseBulkLoader(db, CLASS.toLowerCase());
+		for (int i = SAVED; i < SAVED + RECORDS; ++i)
+			loaded.add(loader.save(createDocument(i)).copy());
+		Assert.assertEquals(loader.getRecords(), RECORDS);
+		loader.close();
+
+		checkRecords(loaded);
+
+		db.close();
+		db = new ODatabaseDocumentTx("local:" + dbPath).open("admin", "admin");
+		checkRecords(loaded);
+
+		// THE CLUSTER IS RELEASED: THE RECORDS CAN BE CHANGED AGAIN
+		final ODocument doc = db.load(loaded.get(0));
+		doc.field("level", -1).save();
+		createDocument(SAVED + RECORDS).save();
+		db.<ODocument> load(loaded.get(1)).delete();
+		Assert.assertEquals(db.countClass(CLASS), SAVED + RECORDS);
+		Assert.assertEquals(((Collection<?>) getIndex("level").get(-1)).size(), 1);
+		Assert.assertNull(getIndex("code").get(SAVED + 1));
+	}
+
+	public void withoutIndexRebuild() {
+		final ODatabaseBulkLoader loader = new ODatabaseBulkLoader(db, CLASS.toLowerCase()).setRebuildIndexes(false);
+		for (int i = SAVED; i < SAVED + RECORDS; ++i)
+			loader.save(createDocument(i));
+		loader.close();
+
+		Assert.assertEquals(db.countClass(CLASS), SAVED + RECORDS);
+		Assert.assertEquals(getIndex("code").getSize(), SAVED);
+
+		getIndex("code").rebuild();
+		Assert.assertEquals(getIndex("code").getSize(), SAVED + RECORDS);
+	}
+
+	public void changesRefusedWhileLoading() {
+		final ODocument saved = db.browseClass(CLASS).next();
+
+		final ODatabaseBulkLoader loader = new ODatabaseBulkLoader(db, CLASS.toLowerCase());
+		try {
+			loader.save(createDocument(SAVED));
+
+			try {
+				new ODocument(db, CLASS).field("name", "refused").save();
+				Assert.fail("Record created in a cluster owned by a bulk load");
+			} catch (RuntimeException e) {
+				checkOwnedByBulkLoad(e);
+			}
+
+			try {
+				saved.field("name", "refused").save();
+				Assert.fail("Record updated in a cluster owned by a bulk load");
+			} catch (RuntimeException e) {
+				checkOwnedByBulkLoad(e);
+			}
+
+			try {
+				saved.delete();
+				Assert.fail("Record deleted in a cluster owned by a bulk load");
+			} catch (RuntimeException e) {
+				checkOwnedByBulkLoad(e);
+			}
+
+			try {
+				((OStorageLocal) db.getStorage()).beginBulkLoad(db.getClusterIdByName(CLASS));
+				Assert.fail("Two bulk loads on the same cluster");
+			} catch (OStorageException e) {
+				checkOwnedByBulkLoad(e);
+			}
+		} finally {
+			loader.close();
+		}
+
+		db.getLevel1Cache().invalidate();
+		Assert.assertEquals(db.countClass(CLASS), SAVED + 1);
+		Assert.assertEquals(getIndex("code").getSize(), SAVED + 1);
+		new ODocument(db, CLASS).field("name", "accepted").save();
+		Assert.assertEquals(db.countClass(CLASS), SAVED + 2);
+	}
+
+	/**
+	 * Checks the records loaded and the indexes rebuilt at the end of the load.
+	 */
+	private void checkRecords(final List<ORID> iLoaded) {
+		Assert.assertEquals(db.countClass(CLASS), SAVED + RECORDS);
+
+		for (int i = 0; i < iLoaded.size(); ++i) {
+			final ODocument doc = db.load(iLoaded.get(i));
+			Assert.assertNotNull(doc, iLoaded.get(i).toString());
+			Assert.assertEquals(doc.<Integer> field("code").intValue(), SAVED + i);
+			Assert.assertEquals(((OIdentifiable) getIndex("code").get(SAVED + i)).getIdentity(), iLoaded.get(i));
+		}
+
+		Assert.assertEquals(getIndex("code").getSize(), SAVED + RECORDS);
+		Assert.assertEquals(getIndex("level").getSize(), 10);
+		Assert.assertEquals(db.query(new OSQLSynchQuery<ODocument>("select from " + CLASS
+				+ " where level = 3")).size(), (SAVED + RECORDS) / 10);
+	}
+
+	private void checkOwnedByBulkLoad(final Throwable iException) {
+		for (Throwable e = iException; e != null; e = e.getCause())
+			if (e.getMessage() != null && e.getMessage().contains("owned by a bulk load"))
+				return;
+		Assert.fail("Unexpected exception", iException);
+	}
+
+	private ODocument createDocument(final int i) {
+		return new ODocument(db, CLASS).field("code", i).field("level", i % 10);
+	}
+
+	private OIndex<?> getIndex(final String iProperty) {
+		return db.getMetadata().getIndexManager().getIndex(CLASS + "." + iProperty);
+	}
+}
@@ -0,0 +1,186 @@
+/*
+ * Copyright 1999-2010 Luca Garulli (l.garulli--at--orientechnologies.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.orientechnologies.orient.core.index;
+
+import java.io.File;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.orientechnologies.orient.core.config.OGlobalConfiguration;
+import com.orientechnologies.orient.core.db.document.ODatabaseDocumentTx;
+import com.orientechnologies.orient.core.db.record.OIdentifiable;
+import com.orientechnologies.orient.core.id.ORID;
+import com.orientechnologies.orient.core.metadata.schema.OClass;
+import com.orientechnologies.orient.core.metadata.schema.OType;
+import com.orientechnologies.orient.core.record.impl.ODocument;
+
+/**
+ * Checks the automatic bitmap index across the updates of the records, the transactions and the reopen of the database, with the
+ * index loaded both lazily and at the open.
+ */
+@Test
+public class OIndexBitmapTest {
+	private static final int		RECORDS	= 500;
+	private static final int		LEVELS	= 5;
+
+	private boolean							oldStorageOpen;
+	private boolean							oldLazyLoad;
+	private String							dbPath;
+	private ODatabaseDocumentTx	db;
+
+	@BeforeMethod
+	public void beforeMethod() {
+		oldStorageOpen = OGlobalConfiguration.STORAGE_KEEP_OPEN.getValueAsBoolean();
+		OGlobalConfiguration.STORAGE_KEEP_OPEN.setValue(false);
+		oldLazyLoad = OGlobalConfiguration.INDEX_LAZY_LOAD.getValueAsBoolean();
+
+		dbPath = System.getProperty("java.io.tmpdir") + File.separator + "orientdb" + File.separator + "bitmaptest";
+		db = new ODatabaseDocumentTx("local:" + dbPath);
+		if (db.exists())
+			db.open("admin", "admin").drop();
+		db = new ODatabaseDocumentTx("local:" + dbPath);
+		db.create();
+
+		final OClass cls = db.getMetadata().getSchema().createClass("BitmapIndexed");
+		cls.createProperty("level", OType.LONG).createIndex(OClass.INDEX_TYPE.BITMAP);
+		db.getMetadata().getSchema().save();
+	}
+
+	@AfterMethod
+	public void afterMethod() {
+		// CLOSE BEFORE DROPPING TO FLUSH THE INDEX: THE DROP CLOSES THE STORAGE FIRST
+		if (!db.isClosed())
+			db.close();
+		new ODatabaseDocumentTx("local:" + dbPath).open("admin", "admin").drop();
+		OGlobalConfiguration.INDEX_LAZY_LOAD.setValue(oldLazyLoad);
+		OGlobalConfiguration.STORAGE_KEEP_OPEN.setValue(oldStorageOpen);
+	}
+
+	public void reopenLoadingAtOpen() {
+		OGlobalConfiguration.INDEX_LAZY_LOAD.setValue(false);
+		updateAndReopen();
+	}
+
+	public void reopenLoadingLazily() {
+		OGlobalConfiguration.INDEX_LAZY_LOAD.setValue(true);
+		updateAndReopen();
+	}
+
+	public void transactions() {
+		db.begin();
+		for (int i = 0; i < 3; ++i)
+			new ODocument(db, "BitmapIndexed").field("level", 1L).save();
+		db.commit();
+
+		db.begin();
+		new ODocument(db, "BitmapIndexed").field("level", 2L).save();
+		db.rollback();
+
+		final OIndex<?> index = getIndex();
+		Assert.assertEquals(((Collection<?>) index.get(1L)).size(), 3);
+		Assert.assertTrue(((Collection<?>) index.get(2L)).isEmpty());
+		Assert.assertEquals(index.getSize(), 1);
+
+		// MOVE A RECORD TO ANOTHER KEY AND DELETE ANOTHER ONE
+		db.begin();
+		final Object[] rids = ((Collection<?>) index.get(1L)).toArray();
+		((ODocument) ((OIdentifiable) rids[0]).getRecord()).field("level", 3L).save();
+		((ODocument) ((OIdentifiable) rids[1]).getRecord()).delete();
+		db.commit();
+		checkIndex(getIndex());
+
+		db.close();
+		db = new ODatabaseDocumentTx("local:" + dbPath).open("admin", "admin");
+		checkIndex(getIndex());
+	}
+
+	private void updateAndReopen() {
+		for (int i = 0; i < RECORDS; ++i)
+			new ODocument(db, "BitmapIndexed").field("level", (long) (i % LEVELS)).save();
+
+		OIndex<?> index = getIndex();
+		Assert.assertTrue(index.getInternal() instanceof OIndexBitmap);
+		Assert.assertEquals(index.getSize(), LEVELS);
+		for (long level = 0; level < LEVELS; ++level)
+			Assert.assertEquals(((OIndexBitmap) index.getInternal()).getCardinality(level), RECORDS / LEVELS);
+
+		// MOVE THE RECORDS OF THE FIRST LEVEL TO A NEW ONE, DELETE HALF OF THE SECOND LEVEL AND REMOVE THE KEY OF THE THIRD
+		int i = 0;
+		for (ODocument doc : db.browseClass("BitmapIndexed")) {
+			final long level = doc.<Long> field("level");
+			if (level == 0)
+				doc.field("level", 10L).save();
+			else if (level == 1 && i++ % 2 == 0)
+				doc.delete();
+			else if (level == 2) {
+				doc.removeField("level");
+				doc.save();
+			}
+		}
+		checkIndex(getIndex());
+
+		// THE BITMAPS CHANGED OUT OF TRANSACTIONS ARE SAVED AT THE CLOSE
+		db.close();
+		db = new ODatabaseDocumentTx("local:" + dbPath).open("admin", "admin");
+
+		index = getIndex();
+		Assert.assertEquals(((OIndexBitmap) index.getInternal()).isWaitingForLoading(),
+				OGlobalConfiguration.INDEX_LAZY_LOAD.getValueAsBoolean());
+		checkIndex(index);
+
+		// THE REBUILD FINDS THE SAME KEYS
+		index.rebuild();
+		checkIndex(index);
+	}
+
+	/**
+	 * Checks that the index holds exactly the records of the class under their level.
+	 */
+	private void checkIndex(final OIndex<?> iIndex) {
+		final Map<Long, Set<ORID>> expected = new HashMap<Long, Set<ORID>>();
+		for (ODocument doc : db.browseClass("BitmapIndexed")) {
+			final Long level = doc.field("level");
+			if (level == null)
+				continue;
+			Set<ORID> rids = expected.get(level);
+			if (rids == null) {
+				rids = new HashSet<ORID>();
+				expected.put(level, rids);
+			}
+			rids.add(doc.getIdentity());
+		}
+
+		Assert.assertEquals(iIndex.getSize(), expected.size());
+		for (Object key : iIndex.keys()) {
+			final Set<ORID> rids = new HashSet<ORID>();
+			for (Object value : (Collection<?>) iIndex.get(key))
+				rids.add(((OIdentifiable) value).getIdentity());
+			Assert.assertEquals(rids, expected.get(key), "Wrong records for level " + key);
+		}
+	}
+
+	private OIndex<?> getIndex() {
+		return db.getMetadata().getIndexManager().getIndex("BitmapIndexed.level");
+	}
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright 1999-2010 Luca Garulli (l.garulli--at--orientechnologies.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.orientechnologies.orient.core.index;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.orientechnologies.orient.core.config.OGlobalConfiguration;
+import com.orientechnologies.orient.core.db.document.ODatabaseDocumentTx;
+import com.orientechnologies.orient.core.db.record.OIdentifiable;
+import com.orientechnologies.orient.core.id.ORecordId;
+import com.orientechnologies.orient.core.metadata.schema.OClass;
+import com.orientechnologies.orient.core.metadata.schema.OType;
+
+/**
+ * Browses a not unique index where one key has many more records than the batch of the cursor, so the records of the key are read
+ * in many batches, also while the index changes between the batches.
+ */
+@Test
+public class OIndexCursorTest {
+	private static final int		BATCH_SIZE	= 10;
+	private static final int		KEYS				= 10;
+	private static final int		BIG_KEY			= 5;
+	private static final int		BIG_SIZE		= 500;
+
+	private int									oldBatchSize;
+	private ODatabaseDocumentTx	db;
+	private OIndex<?>						index;
+	private int									clusterId;
+
+	@BeforeMethod
+	public void beforeMethod() {
+		oldBatchSize = OGlobalConfiguration.INDEX_CURSOR_BATCH_SIZE.getValueAsInteger();
+		OGlobalConfiguration.INDEX_CURSOR_BATCH_SIZE.setValue(BATCH_SIZE);
+
+		db = new ODatabaseDocumentTx("memory:indexcursortest").create();
+		clusterId = db.getDefaultClusterId();
+		index = db.getMetadata().getIndexManager()
+				.createIndex("cursor", OClass.INDEX_TYPE.NOTUNIQUE.toString(), new OSimpleKeyIndexDefinition(OType.INTEGER), null, null);
+
+		// TWO RECORDS PER KEY, MANY MORE FOR THE BIG KEY
+		for (int key = 0; key < KEYS; ++key)
+			if (key == BIG_KEY)
+				for (int i = BIG_SIZE - 1; i >= 0; --i)
+					index.put(key, new ORecordId(clusterId, i));
+			else {
+				index.put(key, new ORecordId(clusterId, BIG_SIZE + key * 2));
+				index.put(key, new ORecordId(clusterId, BIG_SIZE + key * 2 + 1));
+			}
+	}
+
+	@AfterMethod
+	public void afterMethod() {
+		// THE DROP CLOSES THE STORAGE BEFORE SAVING THE CHANGED SETS OF RECORDS
+		db.getMetadata().getIndexManager().flush();
+		db.drop();
+		OGlobalConfiguration.INDEX_CURSOR_BATCH_SIZE.setValue(oldBatchSize);
+	}
+
+	public void ascending() {
+		final List<Entry<Object, OIdentifiable>> entries = read(index.cursor(null, true, null, true, true), -1);
+		checkAll(entries);
+		for (int i = 1; i < entries.size(); ++i)
+			Assert.assertTrue((Integer) entries.get(i - 1).getKey() <= (Integer) entries.get(i).getKey());
+	}
+
+	public void descending() {
+		final List<Entry<Object, OIdentifiable>> entries = read(index.cursor(null, true, null, true, false), -1);
+		checkAll(entries);
+		for (int i = 1; i < entries.size(); ++i)
+			Assert.assertTrue((Integer) entries.get(i - 1).getKey() >= (Integer) entries.get(i).getKey());
+	}
+
+	public void onlyTheBigKey() {
+		final List<Entry<Object, OIdentifiable>> entries = read(index.cursor(BIG_KEY, true, BIG_KEY, true, true), -1);
+		Assert.assertEquals(entries.size(), BIG_SIZE);
+
+		// THE RECORDS OF THE KEY ARE IN RID ORDER, ACROSS THE BATCHES TOO
+		for (int i = 0; i < BIG_SIZE; ++i) {
+			Assert.assertEquals(entries.get(i).getKey(), BIG_KEY);
+			Assert.assertEquals(entries.get(i).getValue().getIdentity(), new ORecordId(clusterId, i));
+		}
+	}
+
+	public void recordsChangedBetweenBatches() {
+		final OIndexCursor cursor = index.cursor(BIG_KEY, true, BIG_KEY, true, true);
+		final List<Entry<Object, OIdentifiable>> entries = read(cursor, BATCH_SIZE * 2 + 5);
+
+		// ADD A RECORD AFTER THE ONES READ, REMOVE ONE NOT READ YET AND ONE ALREADY READ
+		index.put(BIG_KEY, new ORecordId(clusterId, BIG_SIZE * 10));
+		index.remove(BIG_KEY, new ORecordId(clusterId, BIG_SIZE - 100));
+		index.remove(BIG_KEY, new ORecordId(clusterId, 0));
+		entries.addAll(read(cursor, -1));
+
+		final Set<OIdentifiable> records = new HashSet<OIdentifiable>();
+		for (Entry<Object, OIdentifiable> entry : entries)
+			Assert.assertTrue(records.add(entry.getValue().getIdentity()), "Record " + entry.getValue() + " returned twice");
+
+		Assert.assertEquals(records.size(), BIG_SIZE);
+		Assert.assertTrue(records.contains(new ORecordId(clusterId, 0)));
+		Assert.assertTrue(records.contains(new ORecordId(clusterId, BIG_SIZE * 10)));
+		Assert.assertFalse(records.contains(new ORecordId(clusterId, BIG_SIZE - 100)));
+	}
+
+	public void keyRemovedBetweenBatches() {
+		final OIndexCursor cursor = index.cursor(null, true, null, true, true);
+
+		// THE FIRST BATCH ENDS BEFORE THE BIG KEY, THE SECOND ONE IN THE MIDDLE OF ITS RECORDS
+		final List<Entry<Object, OIdentifiable>> entries = read(cursor, BIG_KEY * 2 + 1);
+		index.remove(BIG_KEY);
+		entries.addAll(read(cursor, -1));
+
+		// THE RECORDS OF THE BATCH ALREADY READ ARE RETURNED, THEN THE BROWSING GOES ON WITH THE NEXT KEY
+		Assert.assertEquals(entries.size(), (KEYS - 1) * 2 + BATCH_SIZE);
+		Assert.assertEquals(entries.get(entries.size() - 1).getKey(), KEYS - 1);
+	}
+
+	private void checkAll(final List<Entry<Object, OIdentifiable>> iEntries) {
+		Assert.assertEquals(iEntries.size(), (KEYS - 1) * 2 + BIG_SIZE);
+
+		final Set<OIdentifiable> records = new HashSet<OIdentifiable>();
+		for (Entry<Object, OIdentifiable> entry : iEntries) {
+			final int position = (int) entry.getValue().getIdentity().getClusterPosition();
+			Assert.assertTrue(records.add(entry.getValue().getIdentity()), "Record " + entry.getValue() + " returned twice");
+			Assert.assertEquals(entry.getKey(), position < BIG_SIZE ? BIG_KEY : (position - BIG_SIZE) / 2);
+		}
+	}
+
+	private static List<Entry<Object, OIdentifiable>> read(final OIndexCursor iCursor, final int iMax) {
+		final List<Entry<Object, OIdentifiable>> entries = new ArrayList<Entry<Object, OIdentifiable>>();
+		while ((iMax < 0 || entries.size() < iMax) && iCursor.hasNext())
+			entries.add(iCursor.next());
+		return entries;
+	}
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright 1999-2010 Luca Garulli (l.garulli--at--orientechnologies.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.orientechnologies.orient.core.index;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.Random;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.orientechnologies.orient.core.id.ORID;
+import com.orientechnologies.orient.core.id.ORecordId;
+import com.orientechnologies.orient.core.serialization.serializer.stream.OStreamSerializerLiteral;
+
+/**
+ * Checks the order of the pairs returned by the sorter of the index rebuild, with the pairs kept in memory and written in sorted
+ * runs.
+ */
+@Test
+public class OIndexKeySorterTest {
+	private static final int	PAIRS	= 1000;
+	private static final int	KEYS	= 100;
+
+	public void sortInMemory() {
+		final OIndexKeySorter sorter = new OIndexKeySorter(OStreamSerializerLiteral.INSTANCE, PAIRS * 2);
+		try {
+			final List<Object[]> expected = addPairs(sorter);
+			Assert.assertEquals(sorter.getSize(), PAIRS);
+
+			checkSorted(sorter.iterator(), expected);
+			Assert.assertEquals(sorter.getRuns(), 0);
+		} finally {
+			sorter.close();
+		}
+	}
+
+	public void sortInRuns() {
+		final OIndexKeySorter sorter = new OIndexKeySorter(OStreamSerializerLiteral.INSTANCE, 64);
+		try {
+			final List<Object[]> expected = addPairs(sorter);
+			Assert.assertEquals(sorter.getSize(), PAIRS);
+
+			checkSorted(sorter.iterator(), expected);
+			Assert.assertEquals(sorter.getRuns(), (PAIRS + 63) / 64);
+
+			// THE RUNS ARE MERGED AGAIN AT EVERY CALL
+			checkSorted(sorter.iterator(), expected);
+		} finally {
+			sorter.close();
+		}
+	}
+
+	public void sortEmpty() {
+		final OIndexKeySorter sorter = new OIndexKeySorter(OStreamSerializerLiteral.INSTANCE, 64);
+		try {
+			Assert.assertFalse(sorter.iterator().hasNext());
+		} finally {
+			sorter.close();
+		}
+	}
+
+	@Test(expectedExceptions = IllegalStateException.class)
+	public void addAfterSort() {
+		final OIndexKeySorter sorter = new OIndexKeySorter(OStreamSerializerLiteral.INSTANCE, 64);
+		try {
+			sorter.add(1, new ORecordId(1, 1));
+			sorter.iterator();
+			sorter.add(2, new ORecordId(1, 2));
+		} finally {
+			sorter.close();
+		}
+	}
+
+	/**
+	 * Adds pairs in random order, with keys indexing many records and the same pair added more times.
+	 */
+	private List<Object[]> addPairs(final OIndexKeySorter iSorter) {
+		final Random random = new Random(42);
+		final List<Object[]> pairs = new ArrayList<Object[]>();
+		for (int i = 0; i < PAIRS; ++i) {
+			final Object[] pair;
+			if (i > 0 && i % 10 == 0)
+				pair = pairs.get(random.nextInt(pairs.size()));
+			else
+				pair = new Object[] { random.nextInt(KEYS), new ORecordId(random.nextInt(3) + 1, random.nextInt(PAIRS)) };
+			pairs.add(pair);
+			iSorter.add(pair[0], (ORID) pair[1]);
+		}
+
+		Collections.sort(pairs, new Comparator<Object[]>() {
+			public int compare(final Object[] o1, final Object[] o2) {
+				final int cmp = ((Integer) o1[0]).compareTo((Integer) o2[0]);
+				if (cmp != 0)
+					return cmp;
+				return ((ORID) o1[1]).compareTo((ORID) o2[1]);
+			}
+		});
+		return pairs;
+	}
+
+	private void checkSorted(final Iterator<Entry<Object, ORID>> iSorted, final List<Object[]> iExpected) {
+		for (Object[] pair : iExpected) {
+			Assert.assertTrue(iSorted.hasNext());
+			final Entry<Object, ORID> entry = iSorted.next();
+			Assert.assertEquals(entry.getKey(), pair[0]);
+			Assert.assertEquals(entry.getValue(), pair[1]);
+		}
+		Assert.assertFalse(iSorted.hasNext());
+	}
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright 1999-2010 Luca Garulli (l.garulli--at--orientechnologies.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.orientechnologies.orient.core.index;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.orientechnologies.orient.core.config.OGlobalConfiguration;
+import com.orientechnologies.orient.core.db.document.ODatabaseDocumentTx;
+import com.orientechnologies.orient.core.db.record.OIdentifiable;
+import com.orientechnologies.orient.core.id.ORecordId;
+import com.orientechnologies.orient.core.metadata.schema.OClass;
+import com.orientechnologies.orient.core.metadata.schema.OType;
+
+/**
+ * Reads an index from many threads while another one updates it. The even keys never change, the odd ones are inserted and removed
+ * by the writer, so the readers must always find the even keys and never a wrong value for the odd ones.
+ */
+@Test
+public class OIndexMVRBTreeConcurrencyTest {
+	private static final String	URL					= "memory:indexconcurrencytest";
+	private static final int		KEYS				= 2000;
+	private static final int		READERS			= 6;
+	private static final int		OPERATIONS	= 20000;
+
+	private int									oldPageSize;
+	private ODatabaseDocumentTx	db;
+	private OIndex<?>						index;
+	private int									clusterId;
+
+	@BeforeMethod
+	public void beforeMethod() {
+		// SMALL NODES TO SPLIT AND MERGE THEM OFTEN
+		oldPageSize = OGlobalConfiguration.MVRBTREE_NODE_PAGE_SIZE.getValueAsInteger();
+		OGlobalConfiguration.MVRBTREE_NODE_PAGE_SIZE.setValue(16);
+
+		db = new ODatabaseDocumentTx(URL).create();
+		clusterId = db.getDefaultClusterId();
+		index = db.getMetadata().getIndexManager()
+				.createIndex("concurrency", OClass.INDEX_TYPE.UNIQUE.toString(), new OSimpleKeyIndexDefinition(OType.INTEGER), null, null);
+
+		for (int key = 0; key < KEYS; key += 2)
+			index.put(key, new ORecordId(clusterId, key));
+	}
+
+	@AfterMethod
+	public void afterMethod() {
+		db.drop();
+		OGlobalConfiguration.MVRBTREE_NODE_PAGE_SIZE.setValue(oldPageSize);
+	}
+
+	public void readersAndWriter() throws Exception {
+		final List<Throwable> errors = Collections.synchronizedList(new ArrayList<Throwable>());
+		final AtomicBoolean running = new AtomicBoolean(true);
+
+		final Thread writer = new Thread() {
+			@Override
+			public void run() {
+				final ODatabaseDocumentTx threadDb = new ODatabaseDocumentTx(URL).open("admin", "admin");
+				try {
+					final Random random = new Random(0);
+					while (running.get()) {
+						final int key = random.nextInt(KEYS / 2) * 2 + 1;
+						if (random.nextBoolean())
+							index.put(key, new ORecordId(clusterId, key));
+						else
+							index.remove(key);
+					}
+				} catch (Throwable e) {
+					errors.add(e);
+				} finally {
+					threadDb.close();
+				}
+			}
+		};
+		writer.start();
+
+		final Thread[] readers = new Thread[READERS];
+		for (int t = 0; t < READERS; ++t) {
+			final long seed = t + 1;
+			readers[t] = new Thread() {
+				@Override
+				public void run() {
+					final ODatabaseDocumentTx threadDb = new ODatabaseDocumentTx(URL).open("admin", "admin");
+					try {
+						final Random random = new Random(seed);
+						for (int i = 0; i < OPERATIONS; ++i) {
+							final int key = random.nextInt(KEYS);
+							final OIdentifiable value = (OIdentifiable) index.get(key);
+
+							if (key % 2 == 0 && value == null)
+								throw new AssertionError("Key " + key + " not found");
+							if (value != null && value.getIdentity().getClusterPosition() != key)
+								throw new AssertionError("Key " + key + " returned " + value);
+
+							if (i % 100 == 0)
+								checkRange(key);
+						}
+					} catch (Throwable e) {
+						errors.add(e);
+					} finally {
+						threadDb.close();
+					}
+				}
+			};
+			readers[t].start();
+		}
+
+		for (Thread reader : readers)
+			reader.join();
+		running.set(false);
+		writer.join();
+
+		if (!errors.isEmpty())
+			throw new AssertionError(errors.get(0));
+
+		for (int key = 0; key < KEYS; key += 2)
+			Assert.assertEquals(((OIdentifiable) index.get(key)).getIdentity(), new ORecordId(clusterId, key));
+	}
+
+	/**
+	 * Every even key of the range must be returned, and only keys of the range.
+	 */
+	private void checkRange(final int iFrom) {
+		final int to = iFrom + 50;
+		final Collection<OIdentifiable> values = index.getValuesBetween(iFrom, to);
+
+		int even = 0;
+		for (OIdentifiable value : values) {
+			final long position = value.getIdentity().getClusterPosition();
+			if (position < iFrom || position > to)
+				throw new AssertionError("Key " + position + " is out of range " + iFrom + "-" + to);
+			if (position % 2 == 0)
+				even++;
+		}
+
+		final int expected = (Math.min(to, KEYS - 1) - (iFrom + iFrom % 2)) / 2 + 1;
+		if (even != expected)
+			throw new AssertionError("Found " + even + " even keys between " + iFrom + " and " + to + " instead of " + expected);
+	}
+}
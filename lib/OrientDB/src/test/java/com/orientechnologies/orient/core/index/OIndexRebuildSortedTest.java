@@ -0,0 +1,185 @@
+/*
+ * Copyright 1999-2010 Luca Garulli (l.garulli--at--orientechnologies.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.orientechnologies.orient.core.index;
+
+import java.io.File;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.orientechnologies.orient.core.config.OGlobalConfiguration;
+import com.orientechnologies.orient.core.db.document.ODatabaseDocumentTx;
+import com.orientechnologies.orient.core.db.record.OIdentifiable;
+import com.orientechnologies.orient.core.id.ORID;
+import com.orientechnologies.orient.core.metadata.schema.OClass;
+import com.orientechnologies.orient.core.metadata.schema.OType;
+import com.orientechnologies.orient.core.record.impl.ODocument;
+
+/**
+ * Checks that the tree indexes rebuilt from the sorted keys hold the same entries of the indexes rebuilt inserting the keys one by
+ * one, with the keys written in many sorted runs, and that they can be updated and reopened.
+ */
+@Test
+public class OIndexRebuildSortedTest {
+	private static final int		RECORDS		= 2000;
+	private static final int		LEVELS		= 10;
+	private static final String[]	INDEXES		= { "RebuildIndexed.level", "RebuildIndexed.code", "RebuildIndexed.text" };
+
+	private boolean							oldStorageOpen;
+	private boolean							oldRebuildSorted;
+	private int									oldSortBuffer;
+	private String							dbPath;
+	private ODatabaseDocumentTx	db;
+
+	@BeforeMethod
+	public void beforeMethod() {
+		oldStorageOpen = OGlobalConfiguration.STORAGE_KEEP_OPEN.getValueAsBoolean();
+		OGlobalConfiguration.STORAGE_KEEP_OPEN.setValue(false);
+		oldRebuildSorted = OGlobalConfiguration.INDEX_REBUILD_SORTED.getValueAsBoolean();
+		oldSortBuffer = OGlobalConfiguration.INDEX_REBUILD_SORT_BUFFER.getValueAsInteger();
+		OGlobalConfiguration.INDEX_REBUILD_SORT_BUFFER.setValue(100);
+
+		dbPath = System.getProperty("java.io.tmpdir") + File.separator + "orientdb" + File.separator + "rebuildsortedtest";
+		db = new ODatabaseDocumentTx("local:" + dbPath);
+		if (db.exists())
+			db.open("admin", "admin").drop();
+		db = new ODatabaseDocumentTx("local:" + dbPath);
+		db.create();
+
+		final OClass cls = db.getMetadata().getSchema().createClass("RebuildIndexed");
+		cls.createProperty("level", OType.INTEGER);
+		cls.createProperty("code", OType.INTEGER);
+		cls.createProperty("text", OType.STRING);
+		db.getMetadata().getSchema().save();
+
+		for (int i = 0; i < RECORDS; ++i)
+			createDocument(i);
+	}
+
+	@AfterMethod
+	public void afterMethod() {
+		if (!db.isClosed())
+			db.close();
+		new ODatabaseDocumentTx("local:" + dbPath).open("admin", "admin").drop();
+		OGlobalConfiguration.INDEX_REBUILD_SORT_BUFFER.setValue(oldSortBuffer);
+		OGlobalConfiguration.INDEX_REBUILD_SORTED.setValue(oldRebuildSorted);
+		OGlobalConfiguration.STORAGE_KEEP_OPEN.setValue(oldStorageOpen);
+	}
+
+	public void sameEntriesOfIncrementalRebuild() {
+		OGlobalConfiguration.INDEX_REBUILD_SORTED.setValue(false);
+		createIndexes();
+		final Map<String, Map<Object, Set<ORID>>> incremental = new HashMap<String, Map<Object, Set<ORID>>>();
+		for (String indexName : INDEXES)
+			incremental.put(indexName, getEntries(indexName));
+		Assert.assertEquals(incremental.get("RebuildIndexed.level").size(), LEVELS);
+		Assert.assertEquals(incremental.get("RebuildIndexed.code").size(), RECORDS);
+
+		OGlobalConfiguration.INDEX_REBUILD_SORTED.setValue(true);
+		for (String indexName : INDEXES) {
+			db.getMetadata().getIndexManager().getIndex(indexName).rebuild();
+			Assert.assertEquals(getEntries(indexName), incremental.get(indexName), indexName);
+		}
+
+		// THE TREES BUILT BOTTOM-UP ARE SAVED AND RELOADED
+		db.close();
+		db = new ODatabaseDocumentTx("local:" + dbPath).open("admin", "admin");
+		for (String indexName : INDEXES)
+			Assert.assertEquals(getEntries(indexName), incremental.get(indexName), indexName);
+	}
+
+	public void updateAfterSortedRebuild() {
+		OGlobalConfiguration.INDEX_REBUILD_SORTED.setValue(true);
+		createIndexes();
+
+		// CHANGE THE INDEXED FIELDS, ADD NEW RECORDS AND DELETE SOME
+		int i = 0;
+		for (ODocument doc : db.browseClass("RebuildIndexed")) {
+			if (i % 7 == 0)
+				doc.delete();
+			else if (i % 5 == 0)
+				doc.field("level", LEVELS + i % 3).field("text", "changed word" + i).save();
+			++i;
+		}
+		for (i = RECORDS; i < RECORDS + 500; ++i)
+			createDocument(i);
+
+		final Map<String, Map<Object, Set<ORID>>> updated = new HashMap<String, Map<Object, Set<ORID>>>();
+		for (String indexName : INDEXES)
+			updated.put(indexName, getEntries(indexName));
+
+		db.close();
+		db = new ODatabaseDocumentTx("local:" + dbPath).open("admin", "admin");
+
+		// THE INCREMENTAL REBUILD FINDS THE SAME ENTRIES
+		OGlobalConfiguration.INDEX_REBUILD_SORTED.setValue(false);
+		for (String indexName : INDEXES) {
+			Assert.assertEquals(getEntries(indexName), updated.get(indexName), indexName);
+			db.getMetadata().getIndexManager().getIndex(indexName).rebuild();
+			Assert.assertEquals(getEntries(indexName), updated.get(indexName), indexName);
+		}
+	}
+
+	public void duplicatedKeysOnUniqueIndex() {
+		// THE DUPLICATED KEY IS FOUND BEFORE WRITING ANY NODE OF THE TREE
+		createDocument(RECORDS / 2);
+		OGlobalConfiguration.INDEX_REBUILD_SORTED.setValue(true);
+		try {
+			db.getMetadata().getSchema().getClass("RebuildIndexed").getProperty("code").createIndex(OClass.INDEX_TYPE.UNIQUE);
+			Assert.fail("Duplicated key not found");
+		} catch (OIndexException e) {
+			Assert.assertTrue(e.getMessage().contains("Found duplicated key '" + RECORDS / 2 + "'"), e.getMessage());
+		}
+	}
+
+	private void createIndexes() {
+		final OClass cls = db.getMetadata().getSchema().getClass("RebuildIndexed");
+		cls.getProperty("level").createIndex(OClass.INDEX_TYPE.NOTUNIQUE);
+		cls.getProperty("code").createIndex(OClass.INDEX_TYPE.UNIQUE);
+		cls.getProperty("text").createIndex(OClass.INDEX_TYPE.FULLTEXT);
+		db.getMetadata().getSchema().save();
+	}
+
+	private void createDocument(final int i) {
+		new ODocument(db, "RebuildIndexed").field("level", i % LEVELS).field("code", i).field("text", "word" + i % 50 + " common").save();
+	}
+
+	/**
+	 * Returns the records of every key of the index.
+	 */
+	private Map<Object, Set<ORID>> getEntries(final String iIndexName) {
+		final OIndex<?> index = db.getMetadata().getIndexManager().getIndex(iIndexName);
+		final Map<Object, Set<ORID>> entries = new HashMap<Object, Set<ORID>>();
+		for (Object key : index.keys()) {
+			final Set<ORID> rids = new HashSet<ORID>();
+			final Object value = index.get(key);
+			if (value instanceof Collection) {
+				for (Object item : (Collection<?>) value)
+					rids.add(((OIdentifiable) item).getIdentity());
+			} else
+				rids.add(((OIdentifiable) value).getIdentity());
+			entries.put(key, rids);
+		}
+		return entries;
+	}
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright 1999-2010 Luca Garulli (l.garulli--at--orientechnologies.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.orientechnologies.orient.core.index;
+
+import java.io.File;
+import java.util.List;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.orientechnologies.orient.core.config.OGlobalConfiguration;
+import com.orientechnologies.orient.core.db.document.ODatabaseDocumentTx;
+import com.orientechnologies.orient.core.metadata.schema.OClass;
+import com.orientechnologies.orient.core.metadata.schema.OType;
+import com.orientechnologies.orient.core.record.impl.ODocument;
+import com.orientechnologies.orient.core.sql.OCommandSQL;
+import com.orientechnologies.orient.core.sql.query.OSQLSynchQuery;
+
+/**
+ * Checks that the statistics of the indexes are computed only by the rebuild and the flush of the indexes, that their counters
+ * follow the changes of the index, that the histogram is no longer used once too many entries changed and that they are saved with
+ * the configuration of the index.
+ */
+@Test
+public class OIndexStatisticsTest {
+	private static final int		RECORDS	= 1000;
+	private static final int		LEVELS	= 10;
+
+	private boolean							oldStorageOpen;
+	private boolean							oldStatistics;
+	private String							dbPath;
+	private ODatabaseDocumentTx	db;
+
+	@BeforeMethod
+	public void beforeMethod() {
+		oldStorageOpen = OGlobalConfiguration.STORAGE_KEEP_OPEN.getValueAsBoolean();
+		OGlobalConfiguration.STORAGE_KEEP_OPEN.setValue(false);
+		oldStatistics = OGlobalConfiguration.INDEX_STATISTICS.getValueAsBoolean();
+		OGlobalConfiguration.INDEX_STATISTICS.setValue(true);
+
+		dbPath = System.getProperty("java.io.tmpdir") + File.separator + "orientdb" + File.separator + "statisticstest";
+		db = new ODatabaseDocumentTx("local:" + dbPath);
+		if (db.exists())
+			db.open("admin", "admin").drop();
+		db = new ODatabaseDocumentTx("local:" + dbPath);
+		db.create();
+
+		final OClass cls = db.getMetadata().getSchema().createClass("StatisticsIndexed");
+		cls.createProperty("level", OType.INTEGER).createIndex(OClass.INDEX_TYPE.NOTUNIQUE);
+		cls.createProperty("code", OType.INTEGER).createIndex(OClass.INDEX_TYPE.UNIQUE);
+		db.getMetadata().getSchema().save();
+
+		for (int i = 0; i < RECORDS; ++i)
+			new ODocument(db, "StatisticsIndexed").field("level", i % LEVELS).field("code", i).save();
+	}
+
+	@AfterMethod
+	public void afterMethod() {
+		if (!db.isClosed())
+			db.close();
+		new ODatabaseDocumentTx("local:" + dbPath).open("admin", "admin").drop();
+		OGlobalConfiguration.INDEX_STATISTICS.setValue(oldStatistics);
+		OGlobalConfiguration.STORAGE_KEEP_OPEN.setValue(oldStorageOpen);
+	}
+
+	public void countersFollowTheChanges() {
+		// THE INDEXES WERE CREATED EMPTY: THE COUNTERS ARE UP TO DATE, THE HISTOGRAM IS STALE
+		OIndexStatistics statistics = getStatistics("StatisticsIndexed.level");
+		Assert.assertEquals(statistics.getKeys(), LEVELS);
+		Assert.assertEquals(statistics.getEntries(), RECORDS);
+		Assert.assertFalse(statistics.hasHistogram());
+
+		// THE QUERIES DON'T COMPUTE THEM
+		db.query(new OSQLSynchQuery<ODocument>("select from StatisticsIndexed where level = 5"));
+		Assert.assertFalse(getStatistics("StatisticsIndexed.level").hasHistogram());
+
+		db.getMetadata().getIndexManager().flush();
+		statistics = getStatistics("StatisticsIndexed.level");
+		Assert.assertTrue(statistics.hasHistogram());
+		Assert.assertEquals(statistics.getModifications(), 0);
+		Assert.assertEquals(statistics.estimateEquals(5), RECORDS / LEVELS, RECORDS / LEVELS / 5);
+		Assert.assertEquals(statistics.estimateEquals(LEVELS + 1), 0d);
+
+		// A FEW CHANGES KEEP THE HISTOGRAM
+		final List<ODocument> result = db.query(new OSQLSynchQuery<ODocument>("select from StatisticsIndexed where level = 0"));
+		for (int i = 0; i < 10; ++i)
+			result.get(i).field("level", LEVELS * 2).save();
+		Assert.assertEquals(statistics.getKeys(), LEVELS + 1);
+		Assert.assertEquals(statistics.getEntries(), RECORDS);
+		Assert.assertEquals(statistics.getModifications(), 20);
+		Assert.assertTrue(statistics.hasHistogram());
+
+		// MOVING MORE THAN 10% OF THE ENTRIES MAKES IT STALE
+		for (int i = 10; i < result.size(); ++i)
+			result.get(i).field("level", LEVELS * 2).save();
+		Assert.assertFalse(statistics.hasHistogram());
+		Assert.assertEquals(statistics.getKeys(), LEVELS);
+		Assert.assertEquals(statistics.estimateEquals(LEVELS * 2), (double) RECORDS / LEVELS);
+
+		db.command(new OCommandSQL("delete from StatisticsIndexed where level = " + LEVELS * 2)).execute();
+		Assert.assertEquals(statistics.getKeys(), LEVELS - 1);
+		Assert.assertEquals(statistics.getEntries(), RECORDS - RECORDS / LEVELS);
+		Assert.assertEquals(getStatistics("StatisticsIndexed.code").getKeys(), RECORDS - RECORDS / LEVELS);
+		Assert.assertEquals(getStatistics("StatisticsIndexed.code").getEntries(), RECORDS - RECORDS / LEVELS);
+
+		// THE REBUILD COMPUTES THEM AGAIN
+		db.getMetadata().getIndexManager().getIndex("StatisticsIndexed.level").rebuild();
+		statistics = getStatistics("StatisticsIndexed.level");
+		Assert.assertTrue(statistics.hasHistogram());
+		Assert.assertEquals(statistics.getModifications(), 0);
+		Assert.assertEquals(statistics.estimateEquals(0), 0d);
+	}
+
+	public void savedWithTheConfiguration() {
+		// THE CLOSE FLUSHES THE INDEXES AND SAVES THE STATISTICS
+		db.close();
+		db = new ODatabaseDocumentTx("local:" + dbPath).open("admin", "admin");
+
+		final OIndexStatistics statistics = getStatistics("StatisticsIndexed.level");
+		Assert.assertEquals(statistics.getKeys(), LEVELS);
+		Assert.assertEquals(statistics.getEntries(), RECORDS);
+		Assert.assertTrue(statistics.hasHistogram());
+		Assert.assertEquals(statistics.estimateEquals(5), RECORDS / LEVELS, RECORDS / LEVELS / 5);
+		Assert.assertEquals(statistics.estimateEquals(LEVELS + 1), 0d);
+		Assert.assertEquals(statistics.estimateRange(null, false, 5, false), RECORDS / 2, RECORDS / LEVELS);
+
+		// THE COUNTERS CHANGED AFTER THE LAST SAVE ARE SAVED AT THE NEXT CLOSE
+		db.command(new OCommandSQL("delete from StatisticsIndexed where code < 10")).execute();
+		db.close();
+		db = new ODatabaseDocumentTx("local:" + dbPath).open("admin", "admin");
+
+		Assert.assertEquals(getStatistics("StatisticsIndexed.code").getEntries(), RECORDS - 10);
+		Assert.assertEquals(getStatistics("StatisticsIndexed.code").getModifications(), 10);
+	}
+
+	private OIndexStatistics getStatistics(final String iIndexName) {
+		final OIndexStatistics statistics = db.getMetadata().getIndexManager().getIndexStatistics(iIndexName);
+		Assert.assertNotNull(statistics, iIndexName);
+		return statistics;
+	}
+}
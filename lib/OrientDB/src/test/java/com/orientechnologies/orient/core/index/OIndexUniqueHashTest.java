@@ -0,0 +1,157 @@
+/*
+ * Copyright 1999-2010 Luca Garulli (l.garulli--at--orientechnologies.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.orientechnologies.orient.core.index;
+
+import java.io.File;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.orientechnologies.orient.core.config.OGlobalConfiguration;
+import com.orientechnologies.orient.core.db.document.ODatabaseDocumentTx;
+import com.orientechnologies.orient.core.db.record.OIdentifiable;
+import com.orientechnologies.orient.core.metadata.schema.OClass;
+import com.orientechnologies.orient.core.metadata.schema.OType;
+import com.orientechnologies.orient.core.record.impl.ODocument;
+
+/**
+ * Checks the automatic unique hash index across the updates of the records, the transactions and the reopen of the database, with
+ * the index loaded both lazily and at the open.
+ */
+@Test
+public class OIndexUniqueHashTest {
+	private static final int		RECORDS	= 500;
+
+	private boolean							oldStorageOpen;
+	private boolean							oldLazyLoad;
+	private int									oldBucketSize;
+	private String							dbPath;
+	private ODatabaseDocumentTx	db;
+
+	@BeforeMethod
+	public void beforeMethod() {
+		oldStorageOpen = OGlobalConfiguration.STORAGE_KEEP_OPEN.getValueAsBoolean();
+		OGlobalConfiguration.STORAGE_KEEP_OPEN.setValue(false);
+		oldLazyLoad = OGlobalConfiguration.INDEX_LAZY_LOAD.getValueAsBoolean();
+		oldBucketSize = OGlobalConfiguration.INDEX_HASH_BUCKET_SIZE.getValueAsInteger();
+		OGlobalConfiguration.INDEX_HASH_BUCKET_SIZE.setValue(8);
+
+		dbPath = System.getProperty("java.io.tmpdir") + File.separator + "orientdb" + File.separator + "uniquehashtest";
+		db = new ODatabaseDocumentTx("local:" + dbPath);
+		if (db.exists())
+			db.open("admin", "admin").drop();
+		db = new ODatabaseDocumentTx("local:" + dbPath);
+		db.create();
+
+		final OClass cls = db.getMetadata().getSchema().createClass("HashIndexed");
+		cls.createProperty("key", OType.INTEGER).createIndex(OClass.INDEX_TYPE.UNIQUE_HASH);
+		db.getMetadata().getSchema().save();
+	}
+
+	@AfterMethod
+	public void afterMethod() {
+		// CLOSE BEFORE DROPPING TO FLUSH THE INDEX: THE DROP CLOSES THE STORAGE FIRST
+		if (!db.isClosed())
+			db.close();
+		new ODatabaseDocumentTx("local:" + dbPath).open("admin", "admin").drop();
+		OGlobalConfiguration.INDEX_HASH_BUCKET_SIZE.setValue(oldBucketSize);
+		OGlobalConfiguration.INDEX_LAZY_LOAD.setValue(oldLazyLoad);
+		OGlobalConfiguration.STORAGE_KEEP_OPEN.setValue(oldStorageOpen);
+	}
+
+	public void reopenLoadingAtOpen() {
+		OGlobalConfiguration.INDEX_LAZY_LOAD.setValue(false);
+		updateAndReopen();
+	}
+
+	public void reopenLoadingLazily() {
+		OGlobalConfiguration.INDEX_LAZY_LOAD.setValue(true);
+		updateAndReopen();
+	}
+
+	public void duplicatedKey() {
+		new ODocument(db, "HashIndexed").field("key", 1).save();
+		try {
+			new ODocument(db, "HashIndexed").field("key", 1).save();
+			Assert.fail("Duplicated key accepted");
+		} catch (OIndexException e) {
+		}
+		Assert.assertEquals(getIndex().getSize(), 1);
+	}
+
+	public void transactions() {
+		db.begin();
+		new ODocument(db, "HashIndexed").field("key", 1).save();
+		db.commit();
+
+		db.begin();
+		new ODocument(db, "HashIndexed").field("key", 2).save();
+		db.rollback();
+
+		final OIndex<?> index = getIndex();
+		Assert.assertNotNull(index.get(1));
+		Assert.assertNull(index.get(2));
+		Assert.assertEquals(index.getSize(), 1);
+	}
+
+	private void updateAndReopen() {
+		for (int i = 0; i < RECORDS; ++i)
+			new ODocument(db, "HashIndexed").field("key", i).save();
+
+		OIndex<?> index = getIndex();
+		Assert.assertTrue(index.getInternal() instanceof OIndexUniqueHash);
+		Assert.assertEquals(index.getSize(), RECORDS);
+
+		// CHANGE THE KEY OF THE FIRST HALF AND DELETE THE SECOND ONE
+		for (int i = 0; i < RECORDS; ++i) {
+			final ODocument doc = (ODocument) ((OIdentifiable) index.get(i)).getRecord();
+			if (i < RECORDS / 2)
+				doc.field("key", i + RECORDS).save();
+			else
+				doc.delete();
+		}
+		checkIndex(getIndex());
+
+		db.close();
+		db = new ODatabaseDocumentTx("local:" + dbPath).open("admin", "admin");
+
+		index = getIndex();
+		Assert.assertEquals(((OIndexUniqueHash) index.getInternal()).isWaitingForLoading(),
+				OGlobalConfiguration.INDEX_LAZY_LOAD.getValueAsBoolean());
+		checkIndex(index);
+
+		// THE REBUILD FINDS THE SAME KEYS
+		index.rebuild();
+		checkIndex(index);
+	}
+
+	private void checkIndex(final OIndex<?> iIndex) {
+		Assert.assertEquals(iIndex.getSize(), RECORDS / 2);
+		for (int i = 0; i < RECORDS; ++i) {
+			Assert.assertNull(iIndex.get(i), "Key " + i + " still indexed");
+			if (i < RECORDS / 2) {
+				final ODocument doc = (ODocument) ((OIdentifiable) iIndex.get(i + RECORDS)).getRecord();
+				Assert.assertEquals(doc.<Integer> field("key").intValue(), i + RECORDS);
+			}
+		}
+	}
+
+	private OIndex<?> getIndex() {
+		return db.getMetadata().getIndexManager().getIndex("HashIndexed.key");
+	}
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright 1999-2010 Luca Garulli (l.garulli--at--orientechnologies.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.orientechnologies.orient.core.iterator;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.orientechnologies.orient.core.Orient;
+import com.orientechnologies.orient.core.config.OGlobalConfiguration;
+import com.orientechnologies.orient.core.db.document.ODatabaseDocumentTx;
+import com.orientechnologies.orient.core.db.record.ODatabaseRecordAbstract;
+import com.orientechnologies.orient.core.id.ORID;
+import com.orientechnologies.orient.core.metadata.schema.OClass;
+import com.orientechnologies.orient.core.record.impl.ODocument;
+
+/**
+ * Compares the records returned by the parallel scan of the clusters of a class, in cluster order and in the order they are read,
+ * with the ones returned by the sequential scan, and checks that a scan stopped early releases the threads of the scan pool.
+ */
+@Test
+public class ORecordIteratorClustersParallelTest {
+	private static final String	CLASS			= "Scanned";
+	private static final String	SUBCLASS	= "ScannedChild";
+	private static final int		RECORDS		= 3000;
+	private static final int		UNIT_SIZE	= 50;
+
+	private boolean							oldStorageOpen;
+	private ODatabaseDocumentTx	db;
+	private int[]								clusterIds;
+
+	@BeforeMethod
+	public void beforeMethod() {
+		oldStorageOpen = OGlobalConfiguration.STORAGE_KEEP_OPEN.getValueAsBoolean();
+		OGlobalConfiguration.STORAGE_KEEP_OPEN.setValue(false);
+
+		db = new ODatabaseDocumentTx("local:" + System.getProperty("java.io.tmpdir") + File.separator + "orientdb" + File.separator
+				+ "parallelscantest");
+		if (db.exists())
+			db.open("admin", "admin").drop();
+		db.create();
+
+		// THE CLASS USES THREE CLUSTERS AND ITS SUBCLASS ANOTHER ONE
+		final OClass cls = db.getMetadata().getSchema().createClass(CLASS, null,
+				new int[] { db.addPhysicalCluster("scanned"), db.addPhysicalCluster("scanned1"), db.addPhysicalCluster("scanned2") });
+		db.getMetadata().getSchema().createClass(SUBCLASS, cls);
+		db.getMetadata().getSchema().save();
+		clusterIds = cls.getPolymorphicClusterIds();
+
+		final String[] clusters = { "scanned", "scanned1", "scanned2", "scannedchild" };
+		for (int i = 0; i < RECORDS; ++i)
+			db.save(new ODocument(db, i % 4 == 3 ? SUBCLASS : CLASS).field("value", i), clusters[i % 4]);
+
+		// LEAVE HOLES IN THE CLUSTERS
+		int i = 0;
+		for (ODocument doc : db.browseClass(CLASS))
+			if (i++ % 7 == 0)
+				doc.delete();
+	}
+
+	@AfterMethod
+	public void afterMethod() {
+		if (!db.isClosed())
+			db.drop();
+		OGlobalConfiguration.STORAGE_KEEP_OPEN.setValue(oldStorageOpen);
+	}
+
+	public void sameRecordsOfSequentialScan() {
+		final List<ORID> expected = toList(new ORecordIteratorClusters<ODocument>(db, (ODatabaseRecordAbstract) db.getUnderlying(),
+				clusterIds));
+		Assert.assertEquals(expected.size(), db.countClass(CLASS));
+
+		final ORecordIteratorClustersParallel<ODocument> unordered = new ORecordIteratorClustersParallel<ODocument>(db,
+				(ODatabaseRecordAbstract) db.getUnderlying(), clusterIds).setUnitSize(UNIT_SIZE).setMaxPendingUnits(4);
+		final List<ORID> found = toList(unordered);
+		Assert.assertEquals(found.size(), expected.size());
+		Assert.assertEquals(new HashSet<ORID>(found), new HashSet<ORID>(expected));
+
+		final ORecordIteratorClustersParallel<ODocument> ordered = new ORecordIteratorClustersParallel<ODocument>(db,
+				(ODatabaseRecordAbstract) db.getUnderlying(), clusterIds).setUnitSize(UNIT_SIZE).setMaxPendingUnits(4).setOrdered(true);
+		Assert.assertEquals(toList(ordered), expected);
+	}
+
+	public void sameRecordsOfClassScan() {
+		for (boolean polymorphic : new boolean[] { true, false }) {
+			final Set<ORID> expected = new HashSet<ORID>(toList(db.browseClass(CLASS, polymorphic)));
+			final Set<ORID> found = new HashSet<ORID>(toList(db.browseClassParallel(CLASS, polymorphic).setUnitSize(UNIT_SIZE)));
+			Assert.assertEquals(found, expected, "Polymorphic: " + polymorphic);
+		}
+		Assert.assertEquals(toList(db.browseClassParallel(SUBCLASS, false).setUnitSize(UNIT_SIZE).setOrdered(true)),
+				toList(db.browseClass(SUBCLASS, false)));
+	}
+
+	public void recordsCreatedInTransaction() {
+		final int before = toList(db.browseClassParallel(CLASS, true)).size();
+
+		db.begin();
+		for (int i = 0; i < 10; ++i)
+			new ODocument(db, CLASS).field("value", -i).save();
+		Assert.assertEquals(toList(db.browseClassParallel(CLASS, true).setUnitSize(UNIT_SIZE)).size(), before + 10);
+		db.rollback();
+
+		Assert.assertEquals(toList(db.browseClassParallel(CLASS, true).setUnitSize(UNIT_SIZE)).size(), before);
+	}
+
+	public void earlyStop() throws InterruptedException {
+		for (boolean ordered : new boolean[] { true, false }) {
+			final ORecordIteratorClustersParallel<ODocument> it = new ORecordIteratorClustersParallel<ODocument>(db,
+					(ODatabaseRecordAbstract) db.getUnderlying(), clusterIds).setUnitSize(10).setMaxPendingUnits(32).setOrdered(ordered);
+			for (int i = 0; i < 5; ++i)
+				Assert.assertNotNull(it.next());
+
+			it.close();
+			Assert.assertFalse(it.hasNext());
+
+			// THE UNITS NOT STARTED ARE CANCELLED: ONLY THE ONES BEING READ CAN BE STILL PENDING
+			Assert.assertTrue(it.getPendingUnits() <= Orient.getScanPool().getParallelism());
+			waitForScanPool();
+			Assert.assertEquals(it.getPendingUnits(), 0);
+		}
+
+		// THE LIMIT STOPS THE SCAN THE SAME WAY
+		final ORecordIteratorClustersParallel<ODocument> limited = new ORecordIteratorClustersParallel<ODocument>(db,
+				(ODatabaseRecordAbstract) db.getUnderlying(), clusterIds);
+		limited.setUnitSize(10).setLimit(25);
+		Assert.assertEquals(toList(limited).size(), 25);
+		waitForScanPool();
+		Assert.assertEquals(limited.getPendingUnits(), 0);
+
+		// THE POOL IS FREE FOR THE NEXT SCANS
+		Assert.assertEquals(toList(db.browseClassParallel(CLASS, true).setUnitSize(UNIT_SIZE)).size(),
+				toList(db.browseClass(CLASS)).size());
+	}
+
+	private void waitForScanPool() throws InterruptedException {
+		final ForkJoinPool pool = Orient.getScanPool();
+		for (int i = 0; i < 100 && !pool.isQuiescent(); ++i)
+			Thread.sleep(50);
+		Assert.assertTrue(pool.isQuiescent(), "Scan pool still busy: " + pool);
+	}
+
+	private List<ORID> toList(final Iterable<ODocument> iIterator) {
+		final List<ORID> rids = new ArrayList<ORID>();
+		for (ODocument doc : iIterator)
+			rids.add(doc.getIdentity().copy());
+		return rids;
+	}
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright 1999-2010 Luca Garulli (l.garulli--at--orientechnologies.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.orientechnologies.orient.core.iterator;
+
+import java.io.File;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.orientechnologies.orient.core.config.OGlobalConfiguration;
+import com.orientechnologies.orient.core.db.document.ODatabaseDocumentTx;
+import com.orientechnologies.orient.core.id.ORID;
+import com.orientechnologies.orient.core.id.ORecordId;
+import com.orientechnologies.orient.core.record.impl.ODocument;
+
+/**
+ * Updates and deletes records of a cluster while browsing it with read-ahead. The caches are disabled, so the records returned
+ * come from the batches read ahead or from the storage.
+ */
+@Test
+public class ORecordIteratorPrefetchTest {
+	private static final String	CLUSTER		= "prefetch";
+	private static final int		RECORDS		= 500;
+	private static final int		PREFETCH	= 64;
+
+	private boolean							oldStorageOpen;
+	private boolean							oldLevel1;
+	private boolean							oldLevel2;
+	private ODatabaseDocumentTx	db;
+	private int									clusterId;
+
+	@BeforeMethod
+	public void beforeMethod() {
+		oldStorageOpen = OGlobalConfiguration.STORAGE_KEEP_OPEN.getValueAsBoolean();
+		oldLevel1 = OGlobalConfiguration.CACHE_LEVEL1_ENABLED.getValueAsBoolean();
+		oldLevel2 = OGlobalConfiguration.CACHE_LEVEL2_ENABLED.getValueAsBoolean();
+		OGlobalConfiguration.STORAGE_KEEP_OPEN.setValue(false);
+		OGlobalConfiguration.CACHE_LEVEL1_ENABLED.setValue(false);
+		OGlobalConfiguration.CACHE_LEVEL2_ENABLED.setValue(false);
+
+		db = new ODatabaseDocumentTx("local:" + System.getProperty("java.io.tmpdir") + File.separator + "orientdb" + File.separator
+				+ "prefetchtest");
+		if (db.exists())
+			db.open("admin", "admin").drop();
+		db.create();
+
+		clusterId = db.addPhysicalCluster(CLUSTER);
+		for (int i = 0; i < RECORDS; ++i)
+			db.save(new ODocument(db).field("value", i), CLUSTER);
+	}
+
+	@AfterMethod
+	public void afterMethod() {
+		if (!db.isClosed())
+			db.drop();
+		OGlobalConfiguration.STORAGE_KEEP_OPEN.setValue(oldStorageOpen);
+		OGlobalConfiguration.CACHE_LEVEL1_ENABLED.setValue(oldLevel1);
+		OGlobalConfiguration.CACHE_LEVEL2_ENABLED.setValue(oldLevel2);
+	}
+
+	public void updatesAndDeletesDuringScan() {
+		final Set<ORID> updated = new HashSet<ORID>();
+		final Set<ORID> deleted = new HashSet<ORID>();
+		int browsed = 0;
+
+		final ORecordIteratorCluster<ODocument> it = db.browseCluster(CLUSTER);
+		it.setPrefetchSize(PREFETCH);
+		for (ODocument doc : it) {
+			final long position = doc.getIdentity().getClusterPosition();
+			Assert.assertFalse(deleted.contains(doc.getIdentity()), "Deleted record " + doc.getIdentity() + " returned");
+
+			// RECORDS UPDATED BY THE PREVIOUS STEP MUST BE RETURNED WITH THE NEW CONTENT
+			final int expected = updated.contains(doc.getIdentity()) ? (int) position + RECORDS : (int) position;
+			Assert.assertEquals(((Integer) doc.field("value")).intValue(), expected, "Stale content of " + doc.getIdentity());
+			browsed++;
+
+			// UPDATE THE NEXT RECORD AND DELETE THE ONE AFTER IT: BOTH ARE ALREADY IN THE CURRENT BATCH MOST OF THE TIMES
+			if (position + 1 < RECORDS) {
+				final ODocument next = db.load(new ORecordId(clusterId, position + 1));
+				if (next != null) {
+					next.field("value", (int) position + 1 + RECORDS);
+					next.save();
+					updated.add(next.getIdentity());
+				}
+			}
+			if (position % 3 == 0 && position + 2 < RECORDS) {
+				final ORecordId toDelete = new ORecordId(clusterId, position + 2);
+				final ODocument doomed = db.load(toDelete);
+				if (doomed != null) {
+					doomed.delete();
+					deleted.add(toDelete);
+				}
+			}
+		}
+
+		Assert.assertEquals(browsed, RECORDS - deleted.size());
+		Assert.assertFalse(updated.isEmpty());
+		Assert.assertEquals(db.countClusterElements(CLUSTER), RECORDS - deleted.size());
+	}
+
+	public void scanInsideTransaction() {
+		db.begin();
+		for (int i = 0; i < RECORDS; i += 10) {
+			final ODocument doc = db.load(new ORecordId(clusterId, i));
+			doc.field("value", -i);
+			doc.save();
+		}
+
+		int browsed = 0;
+		final ORecordIteratorCluster<ODocument> it = db.browseCluster(CLUSTER);
+		it.setPrefetchSize(PREFETCH);
+		for (ODocument doc : it) {
+			final int position = (int) doc.getIdentity().getClusterPosition();
+			Assert.assertEquals(((Integer) doc.field("value")).intValue(), position % 10 == 0 ? -position : position);
+			browsed++;
+		}
+		Assert.assertEquals(browsed, RECORDS);
+
+		db.rollback();
+
+		browsed = 0;
+		for (ODocument doc : db.browseCluster(CLUSTER)) {
+			Assert.assertEquals(((Integer) doc.field("value")).intValue(), (int) doc.getIdentity().getClusterPosition());
+			browsed++;
+		}
+		Assert.assertEquals(browsed, RECORDS);
+	}
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright 1999-2010 Luca Garulli (l.garulli--at--orientechnologies.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.orientechnologies.orient.core.serialization.serializer.stream;
+
+import java.io.IOException;
+import java.util.Date;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.orientechnologies.orient.core.metadata.schema.OType;
+import com.orientechnologies.orient.core.serialization.OBinaryProtocol;
+
+@Test
+public class OPrimitiveKeySerializerTest {
+
+	public void integerKeys() throws IOException {
+		for (int key : new int[] { Integer.MIN_VALUE, -1, 0, 1, Integer.MAX_VALUE })
+			checkRoundTrip(OPrimitiveKeySerializer.INTEGER, key, OBinaryProtocol.SIZE_INT);
+	}
+
+	public void longKeys() throws IOException {
+		for (long key : new long[] { Long.MIN_VALUE, Integer.MIN_VALUE - 1L, -1, 0, Integer.MAX_VALUE + 1L, Long.MAX_VALUE })
+			checkRoundTrip(OPrimitiveKeySerializer.LONG, key, OBinaryProtocol.SIZE_LONG);
+	}
+
+	public void dateKeys() throws IOException {
+		for (long time : new long[] { Long.MIN_VALUE, -1, 0, System.currentTimeMillis(), Long.MAX_VALUE }) {
+			checkRoundTrip(OPrimitiveKeySerializer.DATE, new Date(time), OBinaryProtocol.SIZE_LONG);
+			checkRoundTrip(OPrimitiveKeySerializer.DATETIME, new Date(time), OBinaryProtocol.SIZE_LONG);
+		}
+	}
+
+	public void keysInBlock() {
+		// KEYS WRITTEN ONE AFTER THE OTHER AS IN THE TREE NODES
+		final long[] keys = { Long.MIN_VALUE, -1, 0, Long.MAX_VALUE };
+		final int keySize = OPrimitiveKeySerializer.LONG.getKeySize();
+		final byte[] block = new byte[keys.length * keySize];
+		for (int i = 0; i < keys.length; ++i)
+			OPrimitiveKeySerializer.LONG.toBytes(keys[i], block, i * keySize);
+		for (int i = 0; i < keys.length; ++i)
+			Assert.assertEquals(OPrimitiveKeySerializer.LONG.fromBytes(block, i * keySize), keys[i]);
+	}
+
+	public void convertibleKeys() throws IOException {
+		final OPrimitiveKeySerializer serializer = OPrimitiveKeySerializer.LONG;
+		Assert.assertTrue(serializer.isConvertible((short) -5));
+		Assert.assertTrue(serializer.isConvertible((byte) 5));
+		Assert.assertTrue(serializer.isConvertible(3.0d));
+		Assert.assertFalse(serializer.isConvertible(3.5d));
+		Assert.assertFalse(serializer.isConvertible(0.5f));
+		Assert.assertFalse(serializer.isConvertible("3"));
+		Assert.assertFalse(serializer.isConvertible(null));
+
+		// OTHER NUMBER TYPES ARE READ BACK AS THE TYPE OF THE INDEX
+		Assert.assertEquals(OPrimitiveKeySerializer.INTEGER.fromStream(OPrimitiveKeySerializer.INTEGER.toStream((short) -5)),
+				Integer.valueOf(-5));
+		Assert.assertEquals(serializer.fromStream(serializer.toStream(3.0d)), Long.valueOf(3));
+	}
+
+	public void nulls() throws IOException {
+		Assert.assertNull(OPrimitiveKeySerializer.INTEGER.toStream(null));
+		Assert.assertNull(OPrimitiveKeySerializer.DATE.fromStream(null));
+		Assert.assertNull(OPrimitiveKeySerializer.getByType(null));
+		Assert.assertNull(OPrimitiveKeySerializer.getByName(null));
+	}
+
+	public void lookups() {
+		for (OPrimitiveKeySerializer serializer : new OPrimitiveKeySerializer[] { OPrimitiveKeySerializer.INTEGER,
+				OPrimitiveKeySerializer.LONG, OPrimitiveKeySerializer.DATE, OPrimitiveKeySerializer.DATETIME })
+			Assert.assertSame(OPrimitiveKeySerializer.getByName(serializer.getName()), serializer);
+
+		Assert.assertSame(OPrimitiveKeySerializer.getByType(OType.INTEGER), OPrimitiveKeySerializer.INTEGER);
+		Assert.assertSame(OPrimitiveKeySerializer.getByType(OType.DATETIME), OPrimitiveKeySerializer.DATETIME);
+		Assert.assertNull(OPrimitiveKeySerializer.getByType(OType.STRING));
+		Assert.assertNull(OPrimitiveKeySerializer.getByType(OType.DOUBLE));
+		Assert.assertNull(OPrimitiveKeySerializer.getByName(OStreamSerializerLiteral.NAME));
+	}
+
+	private static void checkRoundTrip(final OPrimitiveKeySerializer iSerializer, final Object iKey, final int iSize)
+			throws IOException {
+		final byte[] stream = iSerializer.toStream(iKey);
+		Assert.assertEquals(stream.length, iSize);
+		Assert.assertEquals(iSerializer.fromStream(stream), iKey);
+	}
+}
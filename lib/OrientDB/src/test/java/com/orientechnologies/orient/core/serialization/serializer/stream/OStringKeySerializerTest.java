@@ -0,0 +1,56 @@
+/*
+ * Copyright 1999-2010 Luca Garulli (l.garulli--at--orientechnologies.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.orientechnologies.orient.core.serialization.serializer.stream;
+
+import java.io.IOException;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+@Test
+public class OStringKeySerializerTest {
+
+	public void asciiKeys() throws IOException {
+		checkRoundTrip("a", 1);
+		checkRoundTrip("http://www.orientechnologies.com/", 33);
+	}
+
+	public void emptyKey() throws IOException {
+		checkRoundTrip("", 0);
+	}
+
+	public void nonAsciiKeys() throws IOException {
+		checkRoundTrip("citt\u00e0", 6);
+		checkRoundTrip("\u65e5\u672c\u8a9e", 9);
+		// SURROGATE PAIRS ARE WRITTEN CHAR BY CHAR
+		checkRoundTrip("\uD83D\uDE00", 6);
+	}
+
+	public void nulls() throws IOException {
+		Assert.assertNull(OStringKeySerializer.INSTANCE.toStream(null));
+		Assert.assertNull(OStringKeySerializer.INSTANCE.fromStream(null));
+	}
+
+	public void lookups() {
+		Assert.assertSame(OStreamSerializerFactory.get(OStringKeySerializer.NAME), OStringKeySerializer.INSTANCE);
+	}
+
+	private static void checkRoundTrip(final String iKey, final int iSize) throws IOException {
+		final byte[] stream = OStringKeySerializer.INSTANCE.toStream(iKey);
+		Assert.assertEquals(stream.length, iSize);
+		Assert.assertEquals(OStringKeySerializer.INSTANCE.fromStream(stream), iKey);
+	}
+}
@@ -0,0 +1,275 @@
+/*
+ * Copyright 1999-2010 Luca Garulli (l.garulli--at--orientechnologies.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.orientechnologies.orient.core.storage.fs;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import com.orientechnologies.orient.core.config.OGlobalConfiguration;
+import com.orientechnologies.orient.core.serialization.OBinaryProtocol;
+
+/**
+ * Checks the classic files read and written through a page pool much smaller than the files, so dirty pages are evicted while
+ * other files keep on using the pool, and that the pages beyond the end of a file are dropped when the file is shrunk.
+ */
+@Test
+public class OFilePagePoolTest {
+	private static final int				PAGE_SIZE	= 4096;
+	private static final int				VALUES		= 64 * 1024;
+
+	private Object									oldCacheSize;
+	private OFilePagePool						pool;
+	private final List<OTestFile>	files			= new ArrayList<OTestFile>();
+
+	/**
+	 * Classic file that uses the pool of the test instead of the shared one.
+	 */
+	private static class OTestFile extends OFileClassic {
+		private final OFilePagePool	pool;
+
+		private OTestFile(final OFilePagePool iPool) {
+			pool = iPool;
+		}
+
+		@Override
+		public OFileClassic init(final String iFileName, final String iMode) {
+			super.init(iFileName, iMode);
+			pagePool = pool;
+			return this;
+		}
+
+		private boolean isPaged() {
+			return pagePool != null;
+		}
+
+		private long getPhysicalOffset(final long iOffset) {
+			return HEADER_SIZE + iOffset;
+		}
+	}
+
+	@BeforeClass
+	public void beforeClass() {
+		oldCacheSize = OGlobalConfiguration.FILE_CLASSIC_PAGE_CACHE_SIZE.getValue();
+		OGlobalConfiguration.FILE_CLASSIC_PAGE_CACHE_SIZE.setValue(16 * PAGE_SIZE);
+	}
+
+	@AfterClass
+	public void afterClass() {
+		OGlobalConfiguration.FILE_CLASSIC_PAGE_CACHE_SIZE.setValue(oldCacheSize);
+	}
+
+	@AfterMethod
+	public void afterMethod() throws IOException {
+		for (OTestFile file : files)
+			if (file.isOpen())
+				file.close();
+		for (OTestFile file : files)
+			file.getOsFile().delete();
+		files.clear();
+	}
+
+	public void readAfterWriteAcrossFiles() throws IOException {
+		pool = new OFilePagePool(PAGE_SIZE, 16 * PAGE_SIZE);
+		final OTestFile first = createFile("first", pool);
+		final OTestFile second = createFile("second", pool);
+
+		// INTERLEAVE THE WRITES: THE TWO FILES ARE 16 TIMES THE POOL
+		for (int i = 0; i < VALUES; ++i) {
+			first.writeInt(i * OBinaryProtocol.SIZE_INT, i);
+			second.writeInt(i * OBinaryProtocol.SIZE_INT, -i);
+		}
+
+		for (int i = 0; i < VALUES; ++i) {
+			Assert.assertEquals(first.readInt(i * OBinaryProtocol.SIZE_INT), i);
+			Assert.assertEquals(second.readInt(i * OBinaryProtocol.SIZE_INT), -i);
+		}
+		Assert.assertTrue(pool.getUsedPages() <= pool.getMaxPages());
+
+		// BYTES ACROSS TWO PAGES
+		final byte[] content = new byte[PAGE_SIZE + 100];
+		for (int i = 0; i < content.length; ++i)
+			content[i] = (byte) i;
+		first.write(PAGE_SIZE - 50, content);
+		second.writeLong(2 * PAGE_SIZE - 4, Long.MAX_VALUE);
+
+		final byte[] read = new byte[content.length];
+		first.read(PAGE_SIZE - 50, read, read.length);
+		Assert.assertEquals(read, content);
+		Assert.assertEquals(second.readLong(2 * PAGE_SIZE - 4), Long.MAX_VALUE);
+	}
+
+	public void evictedDirtyPagesReachTheFile() throws IOException {
+		pool = new OFilePagePool(PAGE_SIZE, 16 * PAGE_SIZE);
+		final OTestFile file = createFile("evicted", pool);
+
+		for (int i = 0; i < VALUES; ++i)
+			file.writeInt(i * OBinaryProtocol.SIZE_INT, i);
+
+		// THE FIRST PAGES HAVE BEEN EVICTED, SO THEY ARE ON THE FILE BEFORE ANY SYNCH
+		Assert.assertEquals(readFromDisk(file, 0), 0);
+		Assert.assertEquals(readFromDisk(file, 1000 * OBinaryProtocol.SIZE_INT), 1000);
+
+		// THE LAST PAGES ARE STILL ONLY IN THE POOL UNTIL THE SYNCH
+		final long last = (VALUES - 1) * OBinaryProtocol.SIZE_INT;
+		file.synch();
+		Assert.assertEquals(readFromDisk(file, last), VALUES - 1);
+
+		// CLOSE AND REOPEN WITHOUT THE POOL
+		file.close();
+		final OTestFile reopened = new OTestFile(null);
+		reopened.init(file.getOsFile().getAbsolutePath(), "rw");
+		files.add(reopened);
+		reopened.open();
+		for (int i = 0; i < VALUES; ++i)
+			Assert.assertEquals(reopened.readInt(i * OBinaryProtocol.SIZE_INT), i);
+	}
+
+	public void concurrentFiles() throws Exception {
+		pool = new OFilePagePool(PAGE_SIZE, 16 * PAGE_SIZE);
+		final List<Throwable> errors = Collections.synchronizedList(new ArrayList<Throwable>());
+
+		final Thread[] threads = new Thread[4];
+		for (int t = 0; t < threads.length; ++t) {
+			final OTestFile file = createFile("concurrent" + t, pool);
+			final int base = t * VALUES;
+			threads[t] = new Thread() {
+				@Override
+				public void run() {
+					try {
+						for (int i = 0; i < VALUES; ++i)
+							file.writeInt(i * OBinaryProtocol.SIZE_INT, base + i);
+						for (int i = 0; i < VALUES; ++i)
+							if (file.readInt(i * OBinaryProtocol.SIZE_INT) != base + i)
+								throw new AssertionError("Wrong value at position " + i + " of " + file);
+					} catch (Throwable e) {
+						errors.add(e);
+					}
+				}
+			};
+			threads[t].start();
+		}
+
+		for (Thread thread : threads)
+			thread.join();
+
+		if (!errors.isEmpty())
+			throw new AssertionError(errors.get(0));
+	}
+
+	public void synchronousFilesAreNotCached() throws IOException {
+		final OFileClassic file = new OFileClassic();
+		file.init(getPath("synch"), "rwd");
+		file.create(VALUES * OBinaryProtocol.SIZE_INT);
+		file.allocateSpace(OBinaryProtocol.SIZE_INT);
+		file.writeInt(0, 123);
+
+		final RandomAccessFile raf = new RandomAccessFile(file.getOsFile(), "r");
+		try {
+			raf.seek(new OTestFile(null).getPhysicalOffset(0));
+			Assert.assertEquals(raf.readInt(), 123);
+		} finally {
+			raf.close();
+			file.close();
+			file.getOsFile().delete();
+		}
+	}
+
+	public void disabledPageCacheWritesThrough() throws IOException {
+		final OTestFile file = createFile("disabled", OFilePagePool.instance());
+		Assert.assertTrue(file.isPaged());
+		file.disablePageCache();
+		Assert.assertFalse(file.isPaged());
+
+		file.writeInt(0, 456);
+		Assert.assertEquals(readFromDisk(file, 0), 456);
+	}
+
+	public void shrinkDropsPagesBeyondTheEnd() throws IOException {
+		pool = new OFilePagePool(PAGE_SIZE, 16 * PAGE_SIZE);
+		final OTestFile file = createFile("shrink", pool, 8 * PAGE_SIZE);
+		for (int i = 0; i < 8 * PAGE_SIZE / OBinaryProtocol.SIZE_INT; ++i)
+			file.writeInt(i * OBinaryProtocol.SIZE_INT, i);
+		Assert.assertEquals(pool.getUsedPages(), 8);
+
+		// THE PAGE HOLDING THE NEW END IS WRITTEN BACK AND DROPPED WITH THE NEXT ONES, NEVER WRITTEN ON THE FILE
+		file.shrink(2 * PAGE_SIZE + 100);
+		Assert.assertEquals(pool.getUsedPages(), 2);
+		Assert.assertEquals(readFromDisk(file, 2 * PAGE_SIZE + 96), (2 * PAGE_SIZE + 96) / OBinaryProtocol.SIZE_INT);
+		Assert.assertEquals(readFromDisk(file, 5 * PAGE_SIZE), 0);
+
+		// THE NEXT READS LOAD THE PAGES AGAIN FROM THE FILE
+		file.allocateSpace(6 * PAGE_SIZE - 100);
+		Assert.assertEquals(file.readInt(PAGE_SIZE), PAGE_SIZE / OBinaryProtocol.SIZE_INT);
+		Assert.assertEquals(file.readInt(2 * PAGE_SIZE + 96), (2 * PAGE_SIZE + 96) / OBinaryProtocol.SIZE_INT);
+		Assert.assertEquals(file.readInt(5 * PAGE_SIZE), 0);
+	}
+
+	public void setSizeDropsPagesBeyondTheEnd() throws IOException {
+		pool = new OFilePagePool(PAGE_SIZE, 16 * PAGE_SIZE);
+		final OTestFile file = createFile("setsize", pool, 8 * PAGE_SIZE);
+		for (int i = 0; i < 8 * PAGE_SIZE / OBinaryProtocol.SIZE_INT; ++i)
+			file.writeInt(i * OBinaryProtocol.SIZE_INT, i);
+
+		// REMOVING THE TAIL KEEPS THE PAGES, THE NEW SIZE DROPS THE ONES OVER IT
+		file.removeTail(6 * PAGE_SIZE);
+		Assert.assertEquals(pool.getUsedPages(), 8);
+		file.setSize(4 * PAGE_SIZE);
+		Assert.assertEquals(pool.getUsedPages(), 4);
+
+		for (int i = 0; i < 2 * PAGE_SIZE / OBinaryProtocol.SIZE_INT; ++i)
+			Assert.assertEquals(file.readInt(i * OBinaryProtocol.SIZE_INT), i);
+	}
+
+	private OTestFile createFile(final String iName, final OFilePagePool iPool) throws IOException {
+		return createFile(iName, iPool, VALUES * OBinaryProtocol.SIZE_INT);
+	}
+
+	private OTestFile createFile(final String iName, final OFilePagePool iPool, final int iSize) throws IOException {
+		final OTestFile file = new OTestFile(iPool);
+		file.init(getPath(iName), "rw");
+		file.create(VALUES * OBinaryProtocol.SIZE_INT);
+		file.allocateSpace(iSize);
+		files.add(file);
+		return file;
+	}
+
+	private int readFromDisk(final OTestFile iFile, final long iOffset) throws IOException {
+		final RandomAccessFile raf = new RandomAccessFile(iFile.getOsFile(), "r");
+		try {
+			raf.seek(iFile.getPhysicalOffset(iOffset));
+			return raf.readInt();
+		} finally {
+			raf.close();
+		}
+	}
+
+	private static String getPath(final String iName) {
+		final File file = new File(System.getProperty("java.io.tmpdir"), "ofilepagepooltest-" + iName + ".tmp");
+		if (file.exists())
+			file.delete();
+		return file.getAbsolutePath();
+	}
+}
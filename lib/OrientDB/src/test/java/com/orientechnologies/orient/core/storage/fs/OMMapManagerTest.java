@@ -0,0 +1,150 @@
+/*
+ * Copyright 1999-2010 Luca Garulli (l.garulli--at--orientechnologies.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.orientechnologies.orient.core.storage.fs;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.orientechnologies.orient.core.serialization.OBinaryProtocol;
+
+/**
+ * Uses a pool much smaller than the file, so the lock-free lookups of the blocks and the background flushes run while other
+ * threads keep on mapping and evicting them.
+ */
+@Test
+public class OMMapManagerTest {
+	private static final int	VALUES			= 256 * 1024;
+	private static final int	THREADS			= 8;
+	private static final int	OPERATIONS	= 20000;
+
+	private long							oldMaxMemory;
+	private int								oldBlockSize;
+	private OFileMMap					file;
+
+	@BeforeMethod
+	public void beforeMethod() throws Exception {
+		oldMaxMemory = OMMapManager.getMaxMemory();
+		oldBlockSize = OMMapManager.getBlockSize();
+		OMMapManager.setBlockSize(16 * 1024);
+		OMMapManager.setMaxMemory(512 * 1024);
+
+		final File osFile = new File(System.getProperty("java.io.tmpdir"), "ommapmanagertest.tmp");
+		if (osFile.exists())
+			osFile.delete();
+
+		file = new OFileMMap();
+		file.init(osFile.getAbsolutePath(), "rw");
+		file.create(VALUES * OBinaryProtocol.SIZE_INT);
+		file.allocateSpace(VALUES * OBinaryProtocol.SIZE_INT);
+		for (int i = 0; i < VALUES; ++i)
+			file.writeInt(i * OBinaryProtocol.SIZE_INT, i);
+	}
+
+	@AfterMethod
+	public void afterMethod() throws Exception {
+		try {
+			file.delete();
+		} finally {
+			OMMapManager.setMaxMemory(oldMaxMemory);
+			OMMapManager.setBlockSize(oldBlockSize);
+		}
+	}
+
+	public void concurrentLookupsAndEvictions() throws Exception {
+		runConcurrently(false);
+
+		for (int i = 0; i < VALUES; ++i)
+			Assert.assertEquals(file.readInt(i * OBinaryProtocol.SIZE_INT), i);
+	}
+
+	public void backgroundFlushWhileEvicting() throws Exception {
+		runConcurrently(true);
+
+		OMMapManager.flushDirtyBlocks(Integer.MAX_VALUE);
+		Assert.assertEquals(OMMapManager.getDirtyBlocks(), 0);
+		Assert.assertEquals(OMMapManager.getDirtyBytes(), 0);
+
+		for (int i = 0; i < VALUES; ++i)
+			Assert.assertEquals(file.readInt(i * OBinaryProtocol.SIZE_INT), i);
+	}
+
+	/**
+	 * Every thread reads random values and writes them back unchanged, so any value read different from its position is a block
+	 * looked up while it was being evicted.
+	 */
+	private void runConcurrently(final boolean iFlush) throws InterruptedException {
+		final List<Throwable> errors = Collections.synchronizedList(new ArrayList<Throwable>());
+		final AtomicBoolean running = new AtomicBoolean(true);
+
+		// FLUSHES THE DIRTY BLOCKS LIKE THE BACKGROUND FLUSHER, BUT REPORTS THE ERRORS
+		final Thread flusher = new Thread() {
+			@Override
+			public void run() {
+				try {
+					while (running.get())
+						OMMapManager.flushDirtyBlocks(4);
+				} catch (Throwable e) {
+					errors.add(e);
+				}
+			}
+		};
+		if (iFlush)
+			flusher.start();
+
+		final Thread[] threads = new Thread[THREADS];
+		for (int t = 0; t < THREADS; ++t) {
+			final long seed = t;
+			threads[t] = new Thread() {
+				@Override
+				public void run() {
+					final Random random = new Random(seed);
+					try {
+						for (int i = 0; i < OPERATIONS; ++i) {
+							final int value = random.nextInt(VALUES);
+							final long offset = value * OBinaryProtocol.SIZE_INT;
+							final int read = file.readInt(offset);
+							if (read != value)
+								throw new AssertionError("Read " + read + " at position " + value);
+							if (i % (iFlush ? 4 : 16) == 0)
+								file.writeInt(offset, value);
+						}
+					} catch (Throwable e) {
+						errors.add(e);
+					}
+				}
+			};
+			threads[t].start();
+		}
+
+		for (Thread thread : threads)
+			thread.join();
+		running.set(false);
+		if (iFlush)
+			flusher.join();
+
+		if (!errors.isEmpty())
+			throw new AssertionError(errors.get(0));
+	}
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright 1999-2010 Luca Garulli (l.garulli--at--orientechnologies.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.orientechnologies.orient.core.storage.impl.local;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.orientechnologies.orient.core.compression.OCompression;
+import com.orientechnologies.orient.core.compression.OCompressionFactory;
+import com.orientechnologies.orient.core.config.OGlobalConfiguration;
+import com.orientechnologies.orient.core.db.document.ODatabaseDocumentTx;
+import com.orientechnologies.orient.core.id.ORID;
+import com.orientechnologies.orient.core.record.impl.ORecordBytes;
+import com.orientechnologies.orient.core.storage.OCluster;
+
+/**
+ * Stores records in a cluster per codec and in a cluster with compression disabled, then reads them back before and after
+ * reopening the database.
+ */
+@Test
+public class OClusterCompressionTest {
+	private static final String	NONE_CLUSTER	= "compressionnone";
+
+	private boolean							oldStorageOpen;
+	private String							dbPath;
+	private ODatabaseDocumentTx	db;
+
+	@BeforeMethod
+	public void beforeMethod() {
+		oldStorageOpen = OGlobalConfiguration.STORAGE_KEEP_OPEN.getValueAsBoolean();
+		OGlobalConfiguration.STORAGE_KEEP_OPEN.setValue(false);
+
+		dbPath = System.getProperty("java.io.tmpdir") + File.separator + "orientdb" + File.separator + "compressiontest";
+		db = new ODatabaseDocumentTx("local:" + dbPath);
+		if (db.exists())
+			db.open("admin", "admin").drop();
+		db = new ODatabaseDocumentTx("local:" + dbPath);
+		db.create();
+	}
+
+	@AfterMethod
+	public void afterMethod() {
+		if (!db.isClosed())
+			db.drop();
+		OGlobalConfiguration.STORAGE_KEEP_OPEN.setValue(oldStorageOpen);
+	}
+
+	public void roundTripPerCluster() throws IOException {
+		final List<String> clusters = new ArrayList<String>();
+		clusters.add(NONE_CLUSTER);
+		db.addPhysicalCluster(NONE_CLUSTER);
+
+		for (OCompression compression : OCompressionFactory.instance().getCompressions()) {
+			final String name = "compression" + compression.getName();
+			final int clusterId = db.addPhysicalCluster(name);
+			db.getStorage().getClusterById(clusterId).set(OCluster.ATTRIBUTES.COMPRESSION, compression.getName());
+			clusters.add(name);
+		}
+
+		final byte[][] contents = getContents();
+		final List<ORID> rids = new ArrayList<ORID>();
+		for (String cluster : clusters)
+			for (byte[] content : contents) {
+				final ORecordBytes record = new ORecordBytes(db, content);
+				db.save(record, cluster);
+				rids.add(record.getIdentity().copy());
+			}
+
+		checkRecords(rids, contents);
+
+		// UPDATE THEM SWAPPING COMPRESSIBLE AND NOT COMPRESSIBLE CONTENTS
+		for (int i = 0; i < rids.size(); ++i) {
+			final ORecordBytes record = db.load(rids.get(i));
+			record.setDirty();
+			record.fromStream(contents[contents.length - 1 - i % contents.length]);
+			db.save(record);
+		}
+		final byte[][] updated = new byte[contents.length][];
+		for (int i = 0; i < contents.length; ++i)
+			updated[i] = contents[contents.length - 1 - i];
+
+		checkRecords(rids, updated);
+
+		db.close();
+		db = new ODatabaseDocumentTx("local:" + dbPath).open("admin", "admin");
+
+		for (OCompression compression : OCompressionFactory.instance().getCompressions())
+			Assert.assertSame(((OStorageLocal) db.getStorage()).getClusterCompression(db.getClusterIdByName("compression"
+					+ compression.getName())), compression);
+		Assert.assertNull(((OStorageLocal) db.getStorage()).getClusterCompression(db.getClusterIdByName(NONE_CLUSTER)));
+
+		checkRecords(rids, updated);
+	}
+
+	private void checkRecords(final List<ORID> iRids, final byte[][] iContents) {
+		for (int i = 0; i < iRids.size(); ++i) {
+			// BYPASS THE CACHES TO READ FROM THE DATA SEGMENT
+			final ORecordBytes record = db.load(iRids.get(i), null, true);
+			Assert.assertTrue(Arrays.equals(record.toStream(), iContents[i % iContents.length]), "Wrong content of " + iRids.get(i));
+		}
+	}
+
+	private static byte[][] getContents() {
+		final byte[] small = new byte[] { 1, 2, 3 };
+
+		final byte[] repetitive = new byte[OGlobalConfiguration.STORAGE_COMPRESSION_MIN_SIZE.getValueAsInteger() * 10];
+		for (int i = 0; i < repetitive.length; ++i)
+			repetitive[i] = (byte) ('a' + i % 7);
+
+		final byte[] randomBytes = new byte[repetitive.length];
+		new Random(0).nextBytes(randomBytes);
+
+		return new byte[][] { small, repetitive, randomBytes };
+	}
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright 1999-2010 Luca Garulli (l.garulli--at--orientechnologies.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.orientechnologies.orient.core.storage.impl.local;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.orientechnologies.orient.core.config.OGlobalConfiguration;
+import com.orientechnologies.orient.core.db.document.ODatabaseDocumentTx;
+import com.orientechnologies.orient.core.id.ORID;
+import com.orientechnologies.orient.core.record.impl.ODocument;
+import com.orientechnologies.orient.core.storage.OPhysicalPosition;
+
+/**
+ * Changes the records of a cluster with the position cache enabled, checking after every phase that the cached entries match
+ * the ones in the cluster file.
+ */
+@Test
+public class OClusterLocalPositionCacheTest {
+	private static final String	CLUSTER	= "positioncache";
+	private static final int		RECORDS	= 1000;
+
+	private boolean							oldStorageOpen;
+	private Object							oldPositionCache;
+	private String							url;
+	private ODatabaseDocumentTx	db;
+
+	@BeforeMethod
+	public void beforeMethod() {
+		oldStorageOpen = OGlobalConfiguration.STORAGE_KEEP_OPEN.getValueAsBoolean();
+		oldPositionCache = OGlobalConfiguration.STORAGE_CLUSTER_POSITION_CACHE.getValue();
+		OGlobalConfiguration.STORAGE_KEEP_OPEN.setValue(false);
+		OGlobalConfiguration.STORAGE_CLUSTER_POSITION_CACHE.setValue(CLUSTER);
+
+		url = "local:" + System.getProperty("java.io.tmpdir") + File.separator + "orientdb" + File.separator + "positioncachetest";
+		db = new ODatabaseDocumentTx(url);
+		if (db.exists())
+			db.open("admin", "admin").drop();
+		db = new ODatabaseDocumentTx(url).create();
+		db.addPhysicalCluster(CLUSTER);
+	}
+
+	@AfterMethod
+	public void afterMethod() {
+		if (!db.isClosed())
+			db.drop();
+		OGlobalConfiguration.STORAGE_KEEP_OPEN.setValue(oldStorageOpen);
+		OGlobalConfiguration.STORAGE_CLUSTER_POSITION_CACHE.setValue(oldPositionCache);
+	}
+
+	public void deleteAndReinsert() throws IOException {
+		Assert.assertTrue(getCluster().isPositionCacheEnabled());
+
+		final List<ORID> rids = new ArrayList<ORID>();
+		for (int i = 0; i < RECORDS; ++i) {
+			final ODocument doc = new ODocument(db).field("value", i);
+			db.save(doc, CLUSTER);
+			rids.add(doc.getIdentity().copy());
+		}
+		checkCache();
+
+		// DELETE ONE RECORD EVERY 3 AND THE LAST ONES
+		for (int i = 0; i < RECORDS; ++i)
+			if (i % 3 == 0 || i >= RECORDS - 10)
+				db.delete(rids.get(i));
+		checkCache();
+		for (int i = 0; i < RECORDS; i += 3) {
+			final OPhysicalPosition ppos = getCluster().getPhysicalPosition(rids.get(i).getClusterPosition(),
+					new OPhysicalPosition());
+			Assert.assertEquals(ppos.version, -1, "Deleted record " + rids.get(i) + " is still in the cache");
+		}
+
+		// REINSERT: THE DELETED POSITIONS ARE REUSED
+		final List<ORID> reinserted = new ArrayList<ORID>();
+		for (int i = 0; i < RECORDS / 3; ++i) {
+			final ODocument doc = new ODocument(db).field("value", "reinserted " + i);
+			db.save(doc, CLUSTER);
+			reinserted.add(doc.getIdentity().copy());
+			Assert.assertTrue(doc.getIdentity().getClusterPosition() < RECORDS);
+		}
+		checkCache();
+
+		// UPDATE THE REINSERTED RECORDS
+		for (ORID rid : reinserted) {
+			final ODocument doc = db.load(rid);
+			doc.field("value", "updated");
+			doc.save();
+		}
+		checkCache();
+
+		for (ORID rid : reinserted)
+			Assert.assertEquals(((ODocument) db.load(rid, null, true)).field("value"), "updated");
+
+		// REOPEN: THE CACHE IS LOADED FROM THE FILE
+		db.close();
+		db = new ODatabaseDocumentTx(url).open("admin", "admin");
+		Assert.assertTrue(getCluster().isPositionCacheEnabled());
+		checkCache();
+
+		getCluster().truncate();
+		Assert.assertEquals(getCluster().getEntries(), 0);
+		checkCache();
+	}
+
+	/**
+	 * Reads all the entries from the cache, then disables it and reads them again from the file.
+	 */
+	private void checkCache() throws IOException {
+		final OClusterLocal cluster = getCluster();
+		final List<OPhysicalPosition> cached = readEntries(cluster);
+
+		cluster.setPositionCacheEnabled(false);
+		try {
+			final List<OPhysicalPosition> stored = readEntries(cluster);
+			Assert.assertEquals(cached.size(), stored.size());
+			for (int i = 0; i < cached.size(); ++i)
+				Assert.assertEquals(cached.get(i).toString(), stored.get(i).toString(), "Wrong cache entry at position " + i);
+		} finally {
+			cluster.setPositionCacheEnabled(true);
+		}
+	}
+
+	private List<OPhysicalPosition> readEntries(final OClusterLocal iCluster) throws IOException {
+		final List<OPhysicalPosition> entries = new ArrayList<OPhysicalPosition>();
+		for (long pos = 0; pos <= iCluster.getLastEntryPosition(); ++pos)
+			entries.add(iCluster.getPhysicalPosition(pos, new OPhysicalPosition()));
+		return entries;
+	}
+
+	private OClusterLocal getCluster() {
+		return (OClusterLocal) db.getStorage().getClusterById(db.getClusterIdByName(CLUSTER));
+	}
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright 1999-2010 Luca Garulli (l.garulli--at--orientechnologies.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.orientechnologies.orient.core.storage.impl.local;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.orientechnologies.orient.core.config.OGlobalConfiguration;
+import com.orientechnologies.orient.core.db.document.ODatabaseDocumentTx;
+import com.orientechnologies.orient.core.id.ORecordId;
+import com.orientechnologies.orient.core.record.impl.ORecordBytes;
+import com.orientechnologies.orient.core.storage.ORawBuffer;
+
+/**
+ * Creates records from many threads with the reservation of the cluster entries enabled, checking that every thread gets its own
+ * position and that the reserved entries not used don't leave gaps after reopening.
+ */
+@Test
+public class OClusterLocalReservationTest {
+	private static final String	CLUSTER						= "reservation";
+	private static final int		RESERVATION_SIZE	= 64;
+	private static final int		THREADS						= 8;
+	private static final int		RECORDS						= 1001;
+
+	private boolean							oldStorageOpen;
+	private Object							oldReservationSize;
+	private String							url;
+	private ODatabaseDocumentTx	db;
+
+	@BeforeMethod
+	public void beforeMethod() {
+		oldStorageOpen = OGlobalConfiguration.STORAGE_KEEP_OPEN.getValueAsBoolean();
+		oldReservationSize = OGlobalConfiguration.STORAGE_CLUSTER_RESERVATION_SIZE.getValue();
+		OGlobalConfiguration.STORAGE_KEEP_OPEN.setValue(false);
+		OGlobalConfiguration.STORAGE_CLUSTER_RESERVATION_SIZE.setValue(RESERVATION_SIZE);
+
+		url = "local:" + System.getProperty("java.io.tmpdir") + File.separator + "orientdb" + File.separator + "reservationtest";
+		db = new ODatabaseDocumentTx(url);
+		if (db.exists())
+			db.open("admin", "admin").drop();
+		db = new ODatabaseDocumentTx(url).create();
+		db.addPhysicalCluster(CLUSTER);
+	}
+
+	@AfterMethod
+	public void afterMethod() {
+		if (!db.isClosed())
+			db.drop();
+		OGlobalConfiguration.STORAGE_KEEP_OPEN.setValue(oldStorageOpen);
+		OGlobalConfiguration.STORAGE_CLUSTER_RESERVATION_SIZE.setValue(oldReservationSize);
+	}
+
+	public void concurrentInserts() throws Exception {
+		final OStorageLocal storage = (OStorageLocal) db.getStorage();
+		final int clusterId = db.getClusterIdByName(CLUSTER);
+		final Map<Long, String> positions = new ConcurrentHashMap<Long, String>();
+		final List<Throwable> errors = Collections.synchronizedList(new ArrayList<Throwable>());
+
+		final Thread[] threads = new Thread[THREADS];
+		for (int t = 0; t < THREADS; ++t) {
+			final int threadId = t;
+			threads[t] = new Thread() {
+				@Override
+				public void run() {
+					try {
+						for (int i = 0; i < RECORDS; ++i) {
+							final String content = threadId + "-" + i;
+							final long position = storage.createRecord(new ORecordId(clusterId), content.getBytes(), ORecordBytes.RECORD_TYPE,
+									0, null);
+							final String previous = positions.put(position, content);
+							if (previous != null)
+								throw new AssertionError("Position " + position + " given to both " + previous + " and " + content);
+						}
+					} catch (Throwable e) {
+						errors.add(e);
+					}
+				}
+			};
+			threads[t].start();
+		}
+
+		for (Thread thread : threads)
+			thread.join();
+
+		if (!errors.isEmpty())
+			throw new AssertionError(errors.get(0));
+
+		final int total = THREADS * RECORDS;
+		Assert.assertEquals(positions.size(), total);
+
+		// THE POSITIONS ARE HANDED OUT IN SEQUENCE: NO GAPS BETWEEN THEM
+		for (long position = 0; position < total; ++position)
+			Assert.assertTrue(positions.containsKey(position), "Position " + position + " has not been used");
+
+		final OClusterLocal cluster = (OClusterLocal) storage.getClusterById(clusterId);
+		Assert.assertEquals(cluster.getEntries(), total);
+		final long reserved = cluster.getReservedEntries();
+		Assert.assertTrue(reserved < RESERVATION_SIZE);
+
+		// THE ENTRIES RESERVED AND NOT USED BECOME HOLES ON CLOSE
+		db.close();
+		db = new ODatabaseDocumentTx(url).open("admin", "admin");
+		final OStorageLocal reopened = (OStorageLocal) db.getStorage();
+		final OClusterLocal reopenedCluster = (OClusterLocal) reopened.getClusterById(clusterId);
+		Assert.assertEquals(reopenedCluster.getEntries(), total);
+		Assert.assertEquals(reopenedCluster.getReservedEntries(), 0);
+		Assert.assertEquals(reopenedCluster.holeSegment.getHoles(), reserved);
+
+		for (Map.Entry<Long, String> entry : positions.entrySet()) {
+			final ORawBuffer buffer = reopened.readRecord(new ORecordId(clusterId, entry.getKey()), null, null);
+			Assert.assertEquals(new String(buffer.buffer), entry.getValue());
+		}
+
+		// THE NEXT RECORDS FILL THE HOLES BEFORE RESERVING NEW ENTRIES
+		final long last = reopenedCluster.getLastEntryPosition();
+		for (int i = 0; i < reserved; ++i)
+			Assert.assertTrue(reopened.createRecord(new ORecordId(clusterId), new byte[] { 1 }, ORecordBytes.RECORD_TYPE, 0, null) <= last);
+		Assert.assertEquals(reopenedCluster.holeSegment.getHoles(), 0);
+		Assert.assertEquals(reopenedCluster.getEntries(), total + reserved);
+	}
+}
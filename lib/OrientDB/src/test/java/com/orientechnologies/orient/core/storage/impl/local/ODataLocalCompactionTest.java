@@ -0,0 +1,143 @@
+/*
+ * Copyright 1999-2010 Luca Garulli (l.garulli--at--orientechnologies.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.orientechnologies.orient.core.storage.impl.local;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.orientechnologies.orient.core.config.OGlobalConfiguration;
+import com.orientechnologies.orient.core.db.document.ODatabaseDocumentTx;
+import com.orientechnologies.orient.core.id.ORID;
+import com.orientechnologies.orient.core.id.ORecordId;
+import com.orientechnologies.orient.core.record.impl.ORecordBytes;
+import com.orientechnologies.orient.core.storage.OPhysicalPosition;
+
+/**
+ * Compacts a data segment whose holes are smaller than the records that follow them, checking every record after each step and
+ * after reopening the database.
+ */
+@Test
+public class ODataLocalCompactionTest {
+	private static final String	CLUSTER	= "compaction";
+	private static final int		RECORDS	= 100;
+
+	private boolean							oldStorageOpen;
+	private String							dbPath;
+	private ODatabaseDocumentTx	db;
+
+	@BeforeMethod
+	public void beforeMethod() {
+		oldStorageOpen = OGlobalConfiguration.STORAGE_KEEP_OPEN.getValueAsBoolean();
+		OGlobalConfiguration.STORAGE_KEEP_OPEN.setValue(false);
+
+		dbPath = System.getProperty("java.io.tmpdir") + File.separator + "orientdb" + File.separator + "compactiontest";
+		db = new ODatabaseDocumentTx("local:" + dbPath);
+		if (db.exists())
+			db.open("admin", "admin").drop();
+		db = new ODatabaseDocumentTx("local:" + dbPath);
+		db.create();
+		db.addPhysicalCluster(CLUSTER);
+	}
+
+	@AfterMethod
+	public void afterMethod() {
+		if (!db.isClosed())
+			db.drop();
+		OGlobalConfiguration.STORAGE_KEEP_OPEN.setValue(oldStorageOpen);
+	}
+
+	public void recordsBiggerThanTheHoles() throws IOException {
+		final List<ORID> rids = new ArrayList<ORID>();
+		final List<byte[]> contents = new ArrayList<byte[]>();
+		final List<ORID> small = new ArrayList<ORID>();
+
+		// SMALL AND BIG RECORDS INTERLEAVED: DELETING THE SMALL ONES LEAVES HOLES SMALLER THAN THE NEXT RECORD
+		for (int i = 0; i < RECORDS; ++i) {
+			final byte[] smallContent = createContent(i, 8);
+			final ORecordBytes smallRecord = new ORecordBytes(db, smallContent);
+			db.save(smallRecord, CLUSTER);
+			small.add(smallRecord.getIdentity().copy());
+
+			final byte[] bigContent = createContent(i, 2000 + i * 50);
+			final ORecordBytes bigRecord = new ORecordBytes(db, bigContent);
+			db.save(bigRecord, CLUSTER);
+			rids.add(bigRecord.getIdentity().copy());
+			contents.add(bigContent);
+		}
+
+		for (ORID rid : small)
+			db.delete(rid);
+
+		final OStorageLocal storage = (OStorageLocal) db.getStorage();
+		final ODataLocal data = storage.getDataSegment(0);
+		Assert.assertTrue(data.getHolesSize() > 0);
+
+		int steps = 0;
+		int biggerThanHole = 0;
+		while (true) {
+			final ODataHoleInfo hole = data.holeSegment.getFirstHole();
+			final int holeSize = hole != null ? hole.size : 0;
+			final ORecordId next = data.getNextRecordToCompact();
+			final OPhysicalPosition before = next != null ? storage.getClusterById(next.clusterId).getPhysicalPosition(
+					next.clusterPosition, new OPhysicalPosition()) : null;
+			final byte[] oldContent = before != null ? data.getRecord(before.dataChunkPosition) : null;
+
+			if (storage.compactDataSegmentStep(data) == -1)
+				break;
+			Assert.assertTrue(++steps < RECORDS * 10, "Compaction does not end");
+
+			if (before != null && oldContent.length + ODataLocal.RECORD_FIX_SIZE > holeSize) {
+				// A CRASH BEFORE THE CLUSTER UPDATE WOULD HAVE LEFT IT POINTING TO THE OLD COPY: IT MUST BE STILL INTACT
+				Assert.assertEquals(data.getRecord(before.dataChunkPosition), oldContent);
+				biggerThanHole++;
+			}
+
+			checkRecords(rids, contents);
+		}
+
+		Assert.assertTrue(biggerThanHole > 0);
+
+		Assert.assertEquals(data.getHolesSize(), 0);
+		checkRecords(rids, contents);
+
+		db.close();
+		db = new ODatabaseDocumentTx("local:" + dbPath).open("admin", "admin");
+		checkRecords(rids, contents);
+	}
+
+	private void checkRecords(final List<ORID> iRids, final List<byte[]> iContents) {
+		for (int i = 0; i < iRids.size(); ++i) {
+			// BYPASS THE CACHES TO READ FROM THE DATA SEGMENT
+			final ORecordBytes record = db.load(iRids.get(i), null, true);
+			Assert.assertTrue(Arrays.equals(record.toStream(), iContents.get(i)), "Wrong content of " + iRids.get(i));
+		}
+	}
+
+	private static byte[] createContent(final int iSeed, final int iSize) {
+		final byte[] content = new byte[iSize];
+		for (int i = 0; i < iSize; ++i)
+			content[i] = (byte) (iSeed + i);
+		return content;
+	}
+}
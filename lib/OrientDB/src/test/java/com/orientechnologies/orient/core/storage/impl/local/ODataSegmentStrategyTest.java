@@ -0,0 +1,153 @@
+/*
+ * Copyright 1999-2010 Luca Garulli (l.garulli--at--orientechnologies.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.orientechnologies.orient.core.storage.impl.local;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.orientechnologies.orient.core.config.OGlobalConfiguration;
+import com.orientechnologies.orient.core.db.document.ODatabaseDocumentTx;
+import com.orientechnologies.orient.core.id.ORID;
+import com.orientechnologies.orient.core.record.impl.ORecordBytes;
+import com.orientechnologies.orient.core.storage.OPhysicalPosition;
+
+/**
+ * Creates records in a storage with three data segments, one of them outside the storage directory, and checks the segment
+ * chosen by each strategy, then reads the records back after reopening the database.
+ */
+@Test
+public class ODataSegmentStrategyTest {
+	private static final String	CLUSTER		= "strategy";
+	private static final int		RECORDS		= 300;
+
+	private boolean							oldStorageOpen;
+	private Object							oldStrategy;
+	private String							dbPath;
+	private File								externalDirectory;
+	private ODatabaseDocumentTx	db;
+
+	@BeforeMethod
+	public void beforeMethod() {
+		oldStorageOpen = OGlobalConfiguration.STORAGE_KEEP_OPEN.getValueAsBoolean();
+		oldStrategy = OGlobalConfiguration.STORAGE_DATA_SEGMENT_STRATEGY.getValue();
+		OGlobalConfiguration.STORAGE_KEEP_OPEN.setValue(false);
+
+		dbPath = System.getProperty("java.io.tmpdir") + File.separator + "orientdb" + File.separator + "strategytest";
+		externalDirectory = new File(dbPath + "-external");
+	}
+
+	@AfterMethod
+	public void afterMethod() {
+		if (db != null && !db.isClosed())
+			db.close();
+		dropDatabase();
+		Assert.assertFalse(new File(externalDirectory, "external.0.oda").exists(), "External segment not deleted");
+		externalDirectory.delete();
+
+		OGlobalConfiguration.STORAGE_KEEP_OPEN.setValue(oldStorageOpen);
+		OGlobalConfiguration.STORAGE_DATA_SEGMENT_STRATEGY.setValue(oldStrategy);
+	}
+
+	public void defaultStrategy() throws IOException {
+		final int[] perSegment = createRecords(ODataSegmentStrategyDefault.NAME, 0);
+		Assert.assertEquals(perSegment[0], RECORDS);
+		Assert.assertEquals(perSegment[1], 0);
+		Assert.assertEquals(perSegment[2], 0);
+	}
+
+	public void roundRobin() throws IOException {
+		final int[] perSegment = createRecords(ODataSegmentStrategyRoundRobin.NAME, 0);
+		for (int count : perSegment)
+			Assert.assertEquals(count, RECORDS / perSegment.length);
+	}
+
+	public void sizeBalanced() throws IOException {
+		// THE DEFAULT SEGMENT ALREADY CONTAINS THE PRELOADED RECORDS: THE NEW ONES GO TO THE OTHER SEGMENTS
+		final int[] perSegment = createRecords(ODataSegmentStrategySizeBalanced.NAME, 100);
+
+		final ODataLocal[] segments = ((OStorageLocal) db.getStorage()).getDataSegments();
+		Assert.assertTrue(segments[0].getFilledUpTo() > segments[1].getFilledUpTo());
+		Assert.assertEquals(perSegment[0], 0);
+		Assert.assertEquals(perSegment[1] + perSegment[2], RECORDS);
+
+		// THE TWO NEW SEGMENTS END UP WITHIN ONE RECORD OF EACH OTHER
+		Assert.assertTrue(Math.abs(segments[1].getFilledUpTo() - segments[2].getFilledUpTo()) <= 1000 + ODataLocal.RECORD_FIX_SIZE);
+	}
+
+	/**
+	 * Creates the database with the strategy and the records, returning the number of records stored in every segment.
+	 */
+	private int[] createRecords(final String iStrategy, final int iPreloaded) throws IOException {
+		// THE STRATEGY IS READ WHEN THE STORAGE IS LOADED: DROP ANY PREVIOUS ONE AFTER SETTING IT
+		OGlobalConfiguration.STORAGE_DATA_SEGMENT_STRATEGY.setValue(iStrategy);
+		dropDatabase();
+
+		db = new ODatabaseDocumentTx("local:" + dbPath).create();
+		db.addPhysicalCluster(CLUSTER);
+
+		// PRELOAD THE DEFAULT SEGMENT BEFORE ADDING THE OTHERS
+		for (int i = 0; i < iPreloaded; ++i)
+			db.save(new ORecordBytes(db, new byte[1000]), CLUSTER);
+
+		final OStorageLocal storage = (OStorageLocal) db.getStorage();
+		Assert.assertEquals(storage.addDataSegment("internal"), 1);
+		externalDirectory.mkdirs();
+		Assert.assertEquals(storage.addDataSegment("external", externalDirectory.getAbsolutePath()), 2);
+		Assert.assertTrue(new File(externalDirectory, "external.0.oda").exists());
+
+		final List<ORID> rids = new ArrayList<ORID>();
+		final List<byte[]> contents = new ArrayList<byte[]>();
+		final int[] perSegment = new int[storage.getDataSegments().length];
+		for (int i = 0; i < RECORDS; ++i) {
+			final byte[] content = new byte[100 + i % 900];
+			Arrays.fill(content, (byte) i);
+
+			final ORecordBytes record = new ORecordBytes(db, content);
+			db.save(record, CLUSTER);
+			rids.add(record.getIdentity().copy());
+			contents.add(content);
+
+			final OPhysicalPosition ppos = storage.getClusterById(record.getIdentity().getClusterId()).getPhysicalPosition(
+					record.getIdentity().getClusterPosition(), new OPhysicalPosition());
+			perSegment[ppos.dataSegmentId]++;
+		}
+
+		// THE SEGMENTS ARE REOPENED FROM THEIR LOCATIONS
+		db.close();
+		db = new ODatabaseDocumentTx("local:" + dbPath).open("admin", "admin");
+		Assert.assertEquals(((OStorageLocal) db.getStorage()).getDataSegments().length, 3);
+		for (int i = 0; i < rids.size(); ++i) {
+			final ORecordBytes record = db.load(rids.get(i), null, true);
+			Assert.assertTrue(Arrays.equals(record.toStream(), contents.get(i)), "Wrong content of " + rids.get(i));
+		}
+
+		return perSegment;
+	}
+
+	private void dropDatabase() {
+		final ODatabaseDocumentTx database = new ODatabaseDocumentTx("local:" + dbPath);
+		if (database.exists())
+			database.open("admin", "admin").drop();
+	}
+}
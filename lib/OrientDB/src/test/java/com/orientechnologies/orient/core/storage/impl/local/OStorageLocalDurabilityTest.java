@@ -0,0 +1,141 @@
+/*
+ * Copyright 1999-2010 Luca Garulli (l.garulli--at--orientechnologies.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.orientechnologies.orient.core.storage.impl.local;
+
+import java.io.File;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.orientechnologies.orient.core.config.OGlobalConfiguration;
+import com.orientechnologies.orient.core.db.document.ODatabaseDocumentTx;
+import com.orientechnologies.orient.core.db.record.ODatabaseRecordTx;
+import com.orientechnologies.orient.core.id.ORID;
+import com.orientechnologies.orient.core.record.impl.ODocument;
+import com.orientechnologies.orient.core.tx.OTransaction.DURABILITY;
+
+/**
+ * Checks the default durability of a local storage, the one saved in its configuration and the ones set per database instance
+ * and per transaction.
+ */
+@Test
+public class OStorageLocalDurabilityTest {
+	private boolean							oldStorageOpen;
+	private Object							oldDurability;
+	private String							url;
+	private ODatabaseDocumentTx	db;
+
+	@BeforeMethod
+	public void beforeMethod() {
+		oldStorageOpen = OGlobalConfiguration.STORAGE_KEEP_OPEN.getValueAsBoolean();
+		oldDurability = OGlobalConfiguration.TX_DURABILITY.getValue();
+		OGlobalConfiguration.STORAGE_KEEP_OPEN.setValue(false);
+		OGlobalConfiguration.TX_DURABILITY.setValue("log");
+
+		url = "local:" + System.getProperty("java.io.tmpdir") + File.separator + "orientdb" + File.separator + "durabilitytest";
+		db = new ODatabaseDocumentTx(url);
+		if (db.exists())
+			db.open("admin", "admin").drop();
+		db = new ODatabaseDocumentTx(url).create();
+	}
+
+	@AfterMethod
+	public void afterMethod() {
+		if (!db.isClosed())
+			db.drop();
+		OGlobalConfiguration.STORAGE_KEEP_OPEN.setValue(oldStorageOpen);
+		OGlobalConfiguration.TX_DURABILITY.setValue(oldDurability);
+	}
+
+	public void defaultIsReadAtOpen() {
+		Assert.assertEquals(getStorage().getDefaultDurability(), DURABILITY.LOG);
+
+		// CHANGING THE GLOBAL SETTING DOESN'T AFFECT THE OPEN STORAGE
+		OGlobalConfiguration.TX_DURABILITY.setValue("full");
+		Assert.assertEquals(getStorage().getDefaultDurability(), DURABILITY.LOG);
+
+		reopen();
+		Assert.assertEquals(getStorage().getDefaultDurability(), DURABILITY.FULL);
+	}
+
+	public void savedInTheConfiguration() {
+		getStorage().setDefaultDurability(DURABILITY.ASYNC);
+		Assert.assertEquals(getStorage().getDefaultDurability(), DURABILITY.ASYNC);
+
+		OGlobalConfiguration.TX_DURABILITY.setValue("memory");
+		reopen();
+		Assert.assertEquals(getStorage().getDefaultDurability(), DURABILITY.ASYNC);
+
+		// REMOVED: THE GLOBAL SETTING IS USED AGAIN
+		getStorage().setDefaultDurability(null);
+		Assert.assertEquals(getStorage().getDefaultDurability(), DURABILITY.MEMORY);
+		reopen();
+		Assert.assertEquals(getStorage().getDefaultDurability(), DURABILITY.MEMORY);
+	}
+
+	public void perDatabaseInstance() {
+		final ODatabaseDocumentTx other = new ODatabaseDocumentTx(url).open("admin", "admin");
+		try {
+			getDatabase(db).setDurability(DURABILITY.FULL);
+			Assert.assertNull(getDatabase(other).getDurability());
+
+			db.begin();
+			Assert.assertEquals(db.getTransaction().getDurability(), DURABILITY.FULL);
+			db.getTransaction().setDurability(DURABILITY.MEMORY);
+			Assert.assertEquals(db.getTransaction().getDurability(), DURABILITY.MEMORY);
+			db.rollback();
+
+			other.begin();
+			Assert.assertNull(other.getTransaction().getDurability());
+			other.rollback();
+		} finally {
+			other.close();
+		}
+	}
+
+	public void commitWithEveryDurability() {
+		final ORID[] rids = new ORID[DURABILITY.values().length];
+		for (DURABILITY durability : DURABILITY.values()) {
+			db.begin();
+			db.getTransaction().setDurability(durability);
+			final ODocument doc = new ODocument(db).field("durability", durability.name());
+			doc.save();
+			db.commit();
+			rids[durability.ordinal()] = doc.getIdentity().copy();
+		}
+
+		reopen();
+		for (DURABILITY durability : DURABILITY.values()) {
+			final ODocument doc = db.load(rids[durability.ordinal()], null, true);
+			Assert.assertEquals(doc.field("durability"), durability.name());
+		}
+	}
+
+	private void reopen() {
+		db.close();
+		db = new ODatabaseDocumentTx(url).open("admin", "admin");
+	}
+
+	private OStorageLocal getStorage() {
+		return (OStorageLocal) db.getStorage();
+	}
+
+	private static ODatabaseRecordTx getDatabase(final ODatabaseDocumentTx iDatabase) {
+		return (ODatabaseRecordTx) iDatabase.getUnderlying();
+	}
+}
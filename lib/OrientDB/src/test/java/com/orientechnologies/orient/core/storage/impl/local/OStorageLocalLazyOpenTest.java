@@ -0,0 +1,144 @@
+/*
+ * Copyright 1999-2010 Luca Garulli (l.garulli--at--orientechnologies.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.orientechnologies.orient.core.storage.impl.local;
+
+import java.io.File;
+import java.util.List;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.orientechnologies.orient.core.config.OGlobalConfiguration;
+import com.orientechnologies.orient.core.db.document.ODatabaseDocumentTx;
+import com.orientechnologies.orient.core.index.OIndex;
+import com.orientechnologies.orient.core.index.OIndexMVRBTreeAbstract;
+import com.orientechnologies.orient.core.metadata.schema.OClass;
+import com.orientechnologies.orient.core.metadata.schema.OType;
+import com.orientechnologies.orient.core.record.impl.ODocument;
+import com.orientechnologies.orient.core.sql.query.OSQLSynchQuery;
+
+/**
+ * Runs the same workload on a database reopened with and without "storage.lazyOpen" and "index.lazyLoad", checking when the
+ * cluster files are opened and the index trees are loaded.
+ */
+@Test
+public class OStorageLocalLazyOpenTest {
+	private static final String	CLASS		= "LazyOpen";
+	private static final String	INDEX		= "LazyOpen.code";
+	private static final int		RECORDS	= 500;
+
+	private boolean							oldStorageOpen;
+	private boolean							oldLazyOpen;
+	private boolean							oldLazyLoad;
+	private String							url;
+	private ODatabaseDocumentTx	db;
+
+	@BeforeMethod
+	public void beforeMethod() {
+		oldStorageOpen = OGlobalConfiguration.STORAGE_KEEP_OPEN.getValueAsBoolean();
+		oldLazyOpen = OGlobalConfiguration.STORAGE_LAZY_OPEN.getValueAsBoolean();
+		oldLazyLoad = OGlobalConfiguration.INDEX_LAZY_LOAD.getValueAsBoolean();
+		OGlobalConfiguration.STORAGE_KEEP_OPEN.setValue(false);
+
+		url = "local:" + System.getProperty("java.io.tmpdir") + File.separator + "orientdb" + File.separator + "lazyopentest";
+		db = new ODatabaseDocumentTx(url);
+		if (db.exists())
+			db.open("admin", "admin").drop();
+		db = new ODatabaseDocumentTx(url);
+		db.create();
+
+		final OClass cls = db.getMetadata().getSchema().createClass(CLASS);
+		cls.createProperty("code", OType.INTEGER).createIndex(OClass.INDEX_TYPE.UNIQUE);
+		db.getMetadata().getSchema().save();
+
+		for (int i = 0; i < RECORDS; ++i)
+			new ODocument(db, CLASS).field("code", i).save();
+		db.close();
+	}
+
+	@AfterMethod
+	public void afterMethod() {
+		// CLOSE IT FIRST TO FLUSH THE INDEX
+		if (!db.isClosed())
+			db.close();
+		db = new ODatabaseDocumentTx(url);
+		if (db.exists())
+			db.open("admin", "admin").drop();
+
+		OGlobalConfiguration.STORAGE_KEEP_OPEN.setValue(oldStorageOpen);
+		OGlobalConfiguration.STORAGE_LAZY_OPEN.setValue(oldLazyOpen);
+		OGlobalConfiguration.INDEX_LAZY_LOAD.setValue(oldLazyLoad);
+	}
+
+	public void defaultsAreEager() {
+		Assert.assertFalse(OGlobalConfiguration.STORAGE_LAZY_OPEN.getValueAsBoolean());
+		Assert.assertFalse(OGlobalConfiguration.INDEX_LAZY_LOAD.getValueAsBoolean());
+	}
+
+	public void eager() {
+		runWorkload(false);
+	}
+
+	public void lazy() {
+		runWorkload(true);
+	}
+
+	private void runWorkload(final boolean iLazy) {
+		OGlobalConfiguration.STORAGE_LAZY_OPEN.setValue(iLazy);
+		OGlobalConfiguration.INDEX_LAZY_LOAD.setValue(iLazy);
+
+		db = new ODatabaseDocumentTx(url).open("admin", "admin");
+
+		final OClusterLocal cluster = (OClusterLocal) db.getStorage().getClusterById(
+				db.getMetadata().getSchema().getClass(CLASS).getDefaultClusterId());
+		final OIndexMVRBTreeAbstract<?> index = (OIndexMVRBTreeAbstract<?>) db.getMetadata().getIndexManager().getIndex(INDEX)
+				.getInternal();
+
+		Assert.assertEquals(cluster.isWaitingForOpening(), iLazy);
+		Assert.assertEquals(index.isWaitingForLoading(), iLazy);
+
+		// THE QUERY LOADS THE INDEX AND OPENS THE CLUSTER TO READ THE RECORD
+		List<ODocument> result = db.query(new OSQLSynchQuery<ODocument>("select from " + CLASS + " where code = 10"));
+		Assert.assertEquals(result.size(), 1);
+		Assert.assertEquals(((Integer) result.get(0).field("code")).intValue(), 10);
+		Assert.assertFalse(index.isWaitingForLoading());
+		Assert.assertFalse(cluster.isWaitingForOpening());
+
+		// CHANGE THE DATA, THEN REOPEN AND CHECK THE CHANGES WERE KEPT
+		result.get(0).field("code", RECORDS).save();
+		result = db.query(new OSQLSynchQuery<ODocument>("select from " + CLASS + " where code = 20"));
+		result.get(0).delete();
+		new ODocument(db, CLASS).field("code", RECORDS + 1).save();
+		db.close();
+
+		db = new ODatabaseDocumentTx(url).open("admin", "admin");
+		final OIndex<?> reopenedIndex = db.getMetadata().getIndexManager().getIndex(INDEX);
+
+		// WRITES LOAD THE INDEX TOO
+		new ODocument(db, CLASS).field("code", RECORDS + 2).save();
+		Assert.assertFalse(((OIndexMVRBTreeAbstract<?>) reopenedIndex.getInternal()).isWaitingForLoading());
+
+		Assert.assertEquals(db.countClass(CLASS), RECORDS + 1);
+		Assert.assertEquals(reopenedIndex.getSize(), RECORDS + 1);
+		Assert.assertNull(reopenedIndex.get(10));
+		Assert.assertNull(reopenedIndex.get(20));
+		Assert.assertNotNull(reopenedIndex.get(RECORDS));
+		Assert.assertNotNull(reopenedIndex.get(RECORDS + 1));
+		Assert.assertEquals(db.query(new OSQLSynchQuery<ODocument>("select from " + CLASS + " where code < 100")).size(), 98);
+	}
+}
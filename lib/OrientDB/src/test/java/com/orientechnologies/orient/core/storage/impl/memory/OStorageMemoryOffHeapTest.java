@@ -0,0 +1,213 @@
+/*
+ * Copyright 1999-2010 Luca Garulli (l.garulli--at--orientechnologies.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.orientechnologies.orient.core.storage.impl.memory;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.orientechnologies.orient.core.config.OGlobalConfiguration;
+import com.orientechnologies.orient.core.db.document.ODatabaseDocumentTx;
+import com.orientechnologies.orient.core.id.ORID;
+import com.orientechnologies.orient.core.record.impl.ODocument;
+
+/**
+ * Checks the off-heap memory storage through the document API: CRUD, browsing, transactions and reopening.
+ */
+@Test
+public class OStorageMemoryOffHeapTest {
+	private static final String	URL			= "memory:offheaptest";
+	private static final String	CLUSTER	= "offheap";
+	private static final int		RECORDS	= 2000;
+
+	private Object							oldOffHeap;
+	private Object							oldSlabSize;
+	private ODatabaseDocumentTx	db;
+
+	@BeforeMethod
+	public void beforeMethod() {
+		oldOffHeap = OGlobalConfiguration.STORAGE_MEMORY_OFFHEAP.getValue();
+		oldSlabSize = OGlobalConfiguration.STORAGE_MEMORY_SLAB_SIZE.getValue();
+		OGlobalConfiguration.STORAGE_MEMORY_OFFHEAP.setValue(true);
+		// SMALL SLABS TO USE MORE OF THEM
+		OGlobalConfiguration.STORAGE_MEMORY_SLAB_SIZE.setValue(64 * 1024);
+
+		db = new ODatabaseDocumentTx(URL).create();
+		Assert.assertTrue(db.getStorage() instanceof OStorageMemoryOffHeap);
+		db.addPhysicalCluster(CLUSTER);
+	}
+
+	@AfterMethod
+	public void afterMethod() {
+		try {
+			if (!db.isClosed())
+				db.drop();
+		} finally {
+			OGlobalConfiguration.STORAGE_MEMORY_OFFHEAP.setValue(oldOffHeap);
+			OGlobalConfiguration.STORAGE_MEMORY_SLAB_SIZE.setValue(oldSlabSize);
+		}
+	}
+
+	public void crud() {
+		final Map<ORID, String> expected = createRecords();
+		checkRecords(expected);
+
+		// UPDATE WITH BIGGER AND SMALLER CONTENTS, THEN DELETE ONE RECORD EVERY 3
+		int i = 0;
+		for (Map.Entry<ORID, String> entry : expected.entrySet()) {
+			final ODocument doc = db.load(entry.getKey());
+			final String value = i % 2 == 0 ? entry.getValue() + entry.getValue() : "u" + i;
+			doc.field("value", value);
+			doc.save();
+			entry.setValue(value);
+			i++;
+		}
+
+		final List<ORID> deleted = new ArrayList<ORID>();
+		i = 0;
+		for (ORID rid : expected.keySet())
+			if (i++ % 3 == 0) {
+				db.delete(rid);
+				deleted.add(rid);
+			}
+		for (ORID rid : deleted)
+			expected.remove(rid);
+
+		checkRecords(expected);
+		for (ORID rid : deleted)
+			Assert.assertNull(db.load(rid, null, true));
+
+		// DELETED POSITIONS ARE REUSED
+		final long lastPosition = db.getStorage().getClusterDataRange(db.getClusterIdByName(CLUSTER))[1];
+		for (int k = 0; k < deleted.size(); ++k) {
+			final ODocument doc = new ODocument(db).field("value", "new" + k);
+			db.save(doc, CLUSTER);
+			expected.put(doc.getIdentity().copy(), "new" + k);
+		}
+		Assert.assertEquals(db.getStorage().getClusterDataRange(db.getClusterIdByName(CLUSTER))[1], lastPosition);
+
+		checkRecords(expected);
+		Assert.assertEquals(db.countClusterElements(CLUSTER), expected.size());
+	}
+
+	public void browse() {
+		final Map<ORID, String> expected = createRecords();
+
+		int i = 0;
+		for (ORID rid : new ArrayList<ORID>(expected.keySet()))
+			if (i++ % 5 == 0) {
+				db.delete(rid);
+				expected.remove(rid);
+			}
+
+		int browsed = 0;
+		long lastPosition = -1;
+		for (ODocument doc : db.browseCluster(CLUSTER)) {
+			Assert.assertEquals(doc.field("value"), expected.get(doc.getIdentity()));
+			Assert.assertTrue(doc.getIdentity().getClusterPosition() > lastPosition);
+			lastPosition = doc.getIdentity().getClusterPosition();
+			browsed++;
+		}
+		Assert.assertEquals(browsed, expected.size());
+	}
+
+	public void transactionRollback() {
+		final Map<ORID, String> expected = createRecords();
+		final long allocated = ((OStorageMemoryOffHeap) db.getStorage()).getAllocatedMemory();
+
+		db.begin();
+		for (ORID rid : expected.keySet()) {
+			final ODocument doc = db.load(rid);
+			doc.field("value", "changed");
+			doc.save();
+		}
+		db.save(new ODocument(db).field("value", "created"), CLUSTER);
+		db.rollback();
+
+		checkRecords(expected);
+		Assert.assertEquals(db.countClusterElements(CLUSTER), expected.size());
+		Assert.assertEquals(((OStorageMemoryOffHeap) db.getStorage()).getAllocatedMemory(), allocated);
+
+		db.begin();
+		final ORID first = expected.keySet().iterator().next();
+		final ODocument doc = db.load(first);
+		doc.field("value", "committed");
+		doc.save();
+		db.commit();
+		expected.put(first, "committed");
+
+		checkRecords(expected);
+	}
+
+	public void closeAndReopen() {
+		final Map<ORID, String> expected = createRecords();
+
+		// THE STORAGE STAYS OPEN BETWEEN SESSIONS
+		db.close();
+		db = new ODatabaseDocumentTx(URL).open("admin", "admin");
+		checkRecords(expected);
+
+		// SNAPSHOT, CLOSE THE STORAGE AND LOAD IT IN A NEW ONE
+		final File snapshot = new File(System.getProperty("java.io.tmpdir"), "offheaptest.snapshot");
+		try {
+			((OStorageMemoryOffHeap) db.getStorage()).saveSnapshot(snapshot.getAbsolutePath());
+			db.drop();
+
+			db = new ODatabaseDocumentTx(URL).create();
+			Assert.assertEquals(db.getClusterIdByName(CLUSTER), -1);
+			((OStorageMemoryOffHeap) db.getStorage()).loadSnapshot(snapshot.getAbsolutePath());
+			db.close();
+			db = new ODatabaseDocumentTx(URL).open("admin", "admin");
+
+			checkRecords(expected);
+			Assert.assertEquals(db.countClusterElements(CLUSTER), expected.size());
+		} finally {
+			snapshot.delete();
+		}
+	}
+
+	private Map<ORID, String> createRecords() {
+		final Map<ORID, String> expected = new HashMap<ORID, String>();
+		final StringBuilder value = new StringBuilder();
+		for (int i = 0; i < RECORDS; ++i) {
+			// CONTENTS OF DIFFERENT SIZE CLASSES
+			value.setLength(0);
+			for (int k = 0; k <= i % 50; ++k)
+				value.append(i);
+
+			final ODocument doc = new ODocument(db).field("value", value.toString());
+			db.save(doc, CLUSTER);
+			expected.put(doc.getIdentity().copy(), value.toString());
+		}
+		return expected;
+	}
+
+	private void checkRecords(final Map<ORID, String> iExpected) {
+		for (Map.Entry<ORID, String> entry : iExpected.entrySet()) {
+			// BYPASS THE CACHES TO READ FROM THE STORAGE
+			final ODocument doc = db.load(entry.getKey(), null, true);
+			Assert.assertNotNull(doc, "Record " + entry.getKey() + " not found");
+			Assert.assertEquals(doc.field("value"), entry.getValue(), "Wrong content of " + entry.getKey());
+		}
+	}
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright 1999-2010 Luca Garulli (l.garulli--at--orientechnologies.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.orientechnologies.orient.core.type.hash;
+
+import java.io.File;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.orientechnologies.orient.core.config.OGlobalConfiguration;
+import com.orientechnologies.orient.core.db.document.ODatabaseDocumentTx;
+import com.orientechnologies.orient.core.db.record.OIdentifiable;
+import com.orientechnologies.orient.core.id.ORID;
+import com.orientechnologies.orient.core.id.ORecordId;
+import com.orientechnologies.orient.core.serialization.serializer.stream.OStreamSerializerLiteral;
+import com.orientechnologies.orient.core.serialization.serializer.stream.OStreamSerializerRID;
+
+/**
+ * Fills a hash table with small buckets, so it's split many times, and checks that every key is found after the splits, after
+ * freeing the buckets in memory and after reopening the database.
+ */
+@Test
+public class OHashTableDatabaseTest {
+	private static final String	CLUSTER			= "hashtable";
+	private static final int		BUCKET_SIZE	= 4;
+	private static final int		KEYS				= 2000;
+
+	private boolean							oldStorageOpen;
+	private int									oldBucketSize;
+	private String							dbPath;
+	private ODatabaseDocumentTx	db;
+
+	@BeforeMethod
+	public void beforeMethod() {
+		oldStorageOpen = OGlobalConfiguration.STORAGE_KEEP_OPEN.getValueAsBoolean();
+		OGlobalConfiguration.STORAGE_KEEP_OPEN.setValue(false);
+		oldBucketSize = OGlobalConfiguration.INDEX_HASH_BUCKET_SIZE.getValueAsInteger();
+		OGlobalConfiguration.INDEX_HASH_BUCKET_SIZE.setValue(BUCKET_SIZE);
+
+		dbPath = System.getProperty("java.io.tmpdir") + File.separator + "orientdb" + File.separator + "hashtabletest";
+		db = new ODatabaseDocumentTx("local:" + dbPath);
+		if (db.exists())
+			db.open("admin", "admin").drop();
+		db = new ODatabaseDocumentTx("local:" + dbPath);
+		db.create();
+		db.addPhysicalCluster(CLUSTER);
+	}
+
+	@AfterMethod
+	public void afterMethod() {
+		if (!db.isClosed())
+			db.drop();
+		OGlobalConfiguration.INDEX_HASH_BUCKET_SIZE.setValue(oldBucketSize);
+		OGlobalConfiguration.STORAGE_KEEP_OPEN.setValue(oldStorageOpen);
+	}
+
+	public void growAndRehash() {
+		final OHashTableDatabase<Object, OIdentifiable> table = createTable();
+		Assert.assertEquals(table.getBucketCount(), OHashTableDatabase.INITIAL_BUCKETS);
+
+		for (int i = 0; i < KEYS; ++i) {
+			Assert.assertFalse(table.put(i, new ORecordId(1, i)));
+			// THE LOAD FACTOR IS NEVER EXCEEDED
+			Assert.assertTrue(table.size() <= table.getBucketCount() * BUCKET_SIZE * OHashTableDatabase.LOAD_FACTOR + 1);
+		}
+
+		Assert.assertEquals(table.size(), KEYS);
+		Assert.assertTrue(table.getBucketCount() >= KEYS / BUCKET_SIZE, "Buckets: " + table.getBucketCount());
+		checkKeys(table, 0, KEYS, 1);
+		Assert.assertNull(table.get(KEYS));
+		Assert.assertFalse(table.containsKey(KEYS));
+
+		// UPDATE OF EXISTENT KEYS
+		Assert.assertTrue(table.put(10, new ORecordId(2, 10)));
+		Assert.assertEquals(table.size(), KEYS);
+		Assert.assertEquals(table.get(10), new ORecordId(2, 10));
+		table.put(10, new ORecordId(1, 10));
+
+		for (int i = 0; i < KEYS; i += 2)
+			Assert.assertTrue(table.remove(i));
+		Assert.assertFalse(table.remove(0));
+		Assert.assertEquals(table.size(), KEYS / 2);
+		checkKeys(table, 1, KEYS, 2);
+		for (int i = 0; i < KEYS; i += 2)
+			Assert.assertNull(table.get(i));
+
+		// THE BUCKETS ARE RELOADED FROM THEIR RECORDS
+		table.lazySave();
+		Assert.assertTrue(table.freeMemory() > 0);
+		Assert.assertEquals(table.getNumberOfBucketsInMemory(), 0);
+		checkKeys(table, 1, KEYS, 2);
+
+		table.clear();
+		Assert.assertEquals(table.size(), 0);
+		Assert.assertEquals(table.getBucketCount(), OHashTableDatabase.INITIAL_BUCKETS);
+		Assert.assertNull(table.get(1));
+	}
+
+	public void closeAndReopen() {
+		OHashTableDatabase<Object, OIdentifiable> table = createTable();
+		for (int i = 0; i < KEYS; ++i)
+			table.put(i, new ORecordId(1, i));
+		table.lazySave();
+
+		final ORID rid = table.getRecord().getIdentity().copy();
+		final int buckets = table.getBucketCount();
+
+		table = reopen(rid);
+		Assert.assertEquals(table.size(), KEYS);
+		Assert.assertEquals(table.getBucketCount(), buckets);
+		checkKeys(table, 0, KEYS, 1);
+
+		// CHANGES AFTER THE REOPEN, SPLITTING MORE BUCKETS
+		for (int i = 0; i < KEYS; i += 2)
+			table.remove(i);
+		for (int i = KEYS; i < KEYS * 2; ++i)
+			table.put(i, new ORecordId(1, i));
+		table.lazySave();
+		final int moreBuckets = table.getBucketCount();
+		Assert.assertTrue(moreBuckets > buckets);
+
+		table = reopen(rid);
+		Assert.assertEquals(table.size(), KEYS / 2 + KEYS);
+		Assert.assertEquals(table.getBucketCount(), moreBuckets);
+		checkKeys(table, 1, KEYS, 2);
+		checkKeys(table, KEYS, KEYS * 2, 1);
+		for (int i = 0; i < KEYS; i += 2)
+			Assert.assertFalse(table.containsKey(i));
+	}
+
+	private OHashTableDatabase<Object, OIdentifiable> createTable() {
+		final OHashTableDatabase<Object, OIdentifiable> table = new OHashTableDatabase<Object, OIdentifiable>(CLUSTER,
+				OStreamSerializerLiteral.INSTANCE, OStreamSerializerRID.INSTANCE);
+		table.lazySave();
+		return table;
+	}
+
+	private OHashTableDatabase<Object, OIdentifiable> reopen(final ORID iRid) {
+		db.close();
+		db = new ODatabaseDocumentTx("local:" + dbPath).open("admin", "admin");
+		return new OHashTableDatabase<Object, OIdentifiable>(db, iRid).load();
+	}
+
+	private static void checkKeys(final OHashTableDatabase<Object, OIdentifiable> iTable, final int iFrom, final int iTo,
+			final int iStep) {
+		for (int i = iFrom; i < iTo; i += iStep) {
+			Assert.assertTrue(iTable.containsKey(i), "Key " + i + " not found");
+			Assert.assertEquals(iTable.get(i), new ORecordId(1, i));
+		}
+	}
+}
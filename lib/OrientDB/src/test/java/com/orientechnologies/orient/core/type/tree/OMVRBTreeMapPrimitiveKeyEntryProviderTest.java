@@ -0,0 +1,175 @@
+/*
+ * Copyright 1999-2010 Luca Garulli (l.garulli--at--orientechnologies.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.orientechnologies.orient.core.type.tree;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Random;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.orientechnologies.orient.core.config.OGlobalConfiguration;
+import com.orientechnologies.orient.core.db.document.ODatabaseDocumentTx;
+import com.orientechnologies.orient.core.id.ORID;
+import com.orientechnologies.orient.core.serialization.serializer.stream.OPrimitiveKeySerializer;
+import com.orientechnologies.orient.core.serialization.serializer.stream.OStreamSerializerLiteral;
+import com.orientechnologies.orient.core.storage.OStorage;
+import com.orientechnologies.orient.core.type.tree.provider.OMVRBTreeMapPrimitiveKeyEntryProvider;
+import com.orientechnologies.orient.core.type.tree.provider.OMVRBTreeProviderAbstract;
+
+/**
+ * Saves trees with primitive keys split in many small nodes and reloads them, checking the keys, their order and the values.
+ */
+@Test
+public class OMVRBTreeMapPrimitiveKeyEntryProviderTest {
+	private static final String	CLUSTER	= "primitivekeys";
+
+	private ODatabaseDocumentTx	database;
+	private int									oldPageSize;
+
+	@BeforeClass
+	public void beforeClass() {
+		database = new ODatabaseDocumentTx("memory:primitivekeystest").create();
+		database.addCluster(CLUSTER, OStorage.CLUSTER_TYPE.MEMORY);
+	}
+
+	@AfterClass
+	public void afterClass() {
+		database.delete();
+	}
+
+	@BeforeMethod
+	public void beforeMethod() {
+		oldPageSize = OGlobalConfiguration.MVRBTREE_NODE_PAGE_SIZE.getValueAsInteger();
+		OGlobalConfiguration.MVRBTREE_NODE_PAGE_SIZE.setValue(4);
+	}
+
+	@AfterMethod
+	public void afterMethod() {
+		OGlobalConfiguration.MVRBTREE_NODE_PAGE_SIZE.setValue(oldPageSize);
+	}
+
+	public void integerKeys() {
+		final List<Object> keys = new ArrayList<Object>();
+		for (int key : new int[] { Integer.MIN_VALUE, Integer.MIN_VALUE + 1, -1, 0, 1, Integer.MAX_VALUE - 1, Integer.MAX_VALUE })
+			keys.add(key);
+		final Random random = new Random(0);
+		for (int i = 0; i < 100; ++i)
+			keys.add(random.nextInt());
+		checkRoundTrip(OPrimitiveKeySerializer.INTEGER, keys);
+	}
+
+	public void longKeys() {
+		final List<Object> keys = new ArrayList<Object>();
+		for (long key : new long[] { Long.MIN_VALUE, Integer.MIN_VALUE - 1L, -1, 0, Integer.MAX_VALUE + 1L, Long.MAX_VALUE })
+			keys.add(key);
+		final Random random = new Random(0);
+		for (int i = 0; i < 100; ++i)
+			keys.add(random.nextLong());
+		checkRoundTrip(OPrimitiveKeySerializer.LONG, keys);
+	}
+
+	public void dateKeys() {
+		final List<Object> keys = new ArrayList<Object>();
+		for (long time : new long[] { Long.MIN_VALUE, -1, 0, Long.MAX_VALUE })
+			keys.add(new Date(time));
+		final long now = System.currentTimeMillis();
+		for (int i = 0; i < 100; ++i)
+			keys.add(new Date(now + i * 1000));
+		checkRoundTrip(OPrimitiveKeySerializer.DATE, keys);
+	}
+
+	@SuppressWarnings("unchecked")
+	private void checkRoundTrip(final OPrimitiveKeySerializer iSerializer, final List<Object> iKeys) {
+		Collections.shuffle(iKeys, new Random(0));
+
+		OMVRBTreeDatabaseLazySave<Object, Object> tree = new OMVRBTreeDatabaseLazySave<Object, Object>(database, CLUSTER,
+				iSerializer, OStreamSerializerLiteral.INSTANCE);
+		for (int i = 0; i < iKeys.size(); ++i)
+			tree.put(iKeys.get(i), getValue(i));
+		tree.lazySave();
+		final ORID rid = ((OMVRBTreeProviderAbstract<Object, Object>) tree.getProvider()).getRecord().getIdentity();
+
+		tree = new OMVRBTreeDatabaseLazySave<Object, Object>(database, rid);
+		tree.load();
+		checkTree(tree, iKeys);
+		Assert.assertTrue(((OMVRBTreeEntryPersistent<Object, Object>) tree.getRoot()).getProvider() instanceof OMVRBTreeMapPrimitiveKeyEntryProvider);
+
+		// REMOVE THE EXTREMES AND SAVE AGAIN
+		final List<Object> sorted = sort(iKeys);
+		tree.remove(sorted.get(0));
+		tree.remove(sorted.get(sorted.size() - 1));
+		tree.lazySave();
+
+		tree = new OMVRBTreeDatabaseLazySave<Object, Object>(database, rid);
+		tree.load();
+		Assert.assertEquals(tree.size(), iKeys.size() - 2);
+		Assert.assertNull(tree.get(sorted.get(0)));
+		Assert.assertNull(tree.get(sorted.get(sorted.size() - 1)));
+		Assert.assertEquals(tree.firstKey(), sorted.get(1));
+		Assert.assertEquals(tree.lastKey(), sorted.get(sorted.size() - 2));
+
+		tree.delete();
+	}
+
+	private static void checkTree(final OMVRBTreeDatabaseLazySave<Object, Object> iTree, final List<Object> iKeys) {
+		Assert.assertEquals(iTree.size(), iKeys.size());
+
+		final Map<Object, Object> expectedValues = new HashMap<Object, Object>();
+		for (int i = 0; i < iKeys.size(); ++i) {
+			final Object expected = getValue(i);
+			expectedValues.put(iKeys.get(i), expected);
+			// THE TREE SEARCH TELLS NULL VALUES FROM MISSING KEYS ONLY BY BROWSING
+			if (expected != null) {
+				Assert.assertTrue(iTree.containsKey(iKeys.get(i)), "Key " + iKeys.get(i) + " not found");
+				Assert.assertEquals(iTree.get(iKeys.get(i)), expected);
+			}
+		}
+
+		// KEYS ARE READ BACK WITH THEIR TYPE AND IN ORDER, NULL VALUES DO NOT SHIFT THE OTHERS
+		final Iterator<Object> expectedKeys = sort(iKeys).iterator();
+		for (Entry<Object, Object> entry : iTree.entrySet()) {
+			final Object expected = expectedKeys.next();
+			Assert.assertEquals(entry.getKey().getClass(), expected.getClass());
+			Assert.assertEquals(entry.getKey(), expected);
+			Assert.assertEquals(entry.getValue(), expectedValues.get(expected));
+		}
+		Assert.assertFalse(expectedKeys.hasNext());
+	}
+
+	private static Object getValue(final int iIndex) {
+		// SOME VALUES ARE NULL OR EMPTY
+		return iIndex % 10 == 0 ? null : iIndex % 10 == 1 ? "" : "v" + iIndex;
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private static List<Object> sort(final List<Object> iKeys) {
+		final List<Object> sorted = new ArrayList<Object>(iKeys);
+		Collections.sort((List) sorted);
+		return sorted;
+	}
+}
@@ -0,0 +1,202 @@
+/*
+ * Copyright 1999-2010 Luca Garulli (l.garulli--at--orientechnologies.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.orientechnologies.orient.core.type.tree;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Random;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.orientechnologies.orient.core.config.OGlobalConfiguration;
+import com.orientechnologies.orient.core.db.document.ODatabaseDocumentTx;
+import com.orientechnologies.orient.core.id.ORID;
+import com.orientechnologies.orient.core.serialization.serializer.stream.OStreamSerializerLiteral;
+import com.orientechnologies.orient.core.serialization.serializer.stream.OStringKeySerializer;
+import com.orientechnologies.orient.core.storage.OStorage;
+import com.orientechnologies.orient.core.type.tree.provider.OMVRBTreeMapStringKeyEntryProvider;
+import com.orientechnologies.orient.core.type.tree.provider.OMVRBTreeProviderAbstract;
+
+/**
+ * Saves trees with string keys in nodes holding more keys than the restart interval and reloads them, checking the keys, their
+ * order and the values while the keys are still compressed and after changing the nodes.
+ */
+@Test
+public class OMVRBTreeMapStringKeyEntryProviderTest {
+	private static final String	CLUSTER	= "stringkeys";
+
+	private ODatabaseDocumentTx	database;
+	private int									oldPageSize;
+
+	@BeforeClass
+	public void beforeClass() {
+		database = new ODatabaseDocumentTx("memory:stringkeystest").create();
+		database.addCluster(CLUSTER, OStorage.CLUSTER_TYPE.MEMORY);
+	}
+
+	@AfterClass
+	public void afterClass() {
+		database.delete();
+	}
+
+	@BeforeMethod
+	public void beforeMethod() {
+		oldPageSize = OGlobalConfiguration.MVRBTREE_NODE_PAGE_SIZE.getValueAsInteger();
+		OGlobalConfiguration.MVRBTREE_NODE_PAGE_SIZE.setValue(OMVRBTreeMapStringKeyEntryProvider.RESTART_INTERVAL * 4);
+	}
+
+	@AfterMethod
+	public void afterMethod() {
+		OGlobalConfiguration.MVRBTREE_NODE_PAGE_SIZE.setValue(oldPageSize);
+	}
+
+	public void sharedPrefixes() {
+		final List<Object> keys = new ArrayList<Object>();
+		// KEYS THAT ARE PREFIXES OF THE NEXT ONES
+		for (String key : new String[] { "h", "ht", "http", "http:", "http://", "http://www.", "http://www.site.com" })
+			keys.add(key);
+		for (int i = 0; i < 500; ++i)
+			keys.add("http://www.site.com/page/" + i + (i % 3 == 0 ? "/index.html" : ""));
+		checkRoundTrip(keys);
+	}
+
+	public void emptyAndNonAsciiKeys() {
+		final List<Object> keys = new ArrayList<Object>();
+		keys.add("");
+		keys.add(" ");
+		for (int i = 0; i < 100; ++i) {
+			// THE SAME TEXT PRECOMPOSED AND DECOMPOSED: DIFFERENT KEYS
+			keys.add("citt\u00e0" + i);
+			keys.add("citta\u0300" + i);
+			keys.add("\u65e5\u672c\u8a9e/" + i);
+			// KEYS SHARING ONLY THE HIGH SURROGATE OF THEIR FIRST CHAR
+			keys.add(new String(Character.toChars(0x1F600 + i % 50)) + i);
+		}
+		keys.add("\uffff");
+		checkRoundTrip(keys);
+	}
+
+	public void randomKeys() {
+		final List<Object> keys = new ArrayList<Object>();
+		final Random random = new Random(0);
+		while (keys.size() < 500) {
+			final char[] chars = new char[random.nextInt(8)];
+			for (int i = 0; i < chars.length; ++i)
+				// FEW DIFFERENT CHARS TO SHARE LONG PREFIXES, NOT ONLY ASCII
+				chars[i] = "ab\u00e8\u4e2d".charAt(random.nextInt(4));
+			final String key = new String(chars);
+			if (!keys.contains(key))
+				keys.add(key);
+		}
+		checkRoundTrip(keys);
+	}
+
+	@SuppressWarnings("unchecked")
+	private void checkRoundTrip(final List<Object> iKeys) {
+		Collections.shuffle(iKeys, new Random(0));
+
+		OMVRBTreeDatabaseLazySave<Object, Object> tree = new OMVRBTreeDatabaseLazySave<Object, Object>(database, CLUSTER,
+				OStringKeySerializer.INSTANCE, OStreamSerializerLiteral.INSTANCE);
+		for (int i = 0; i < iKeys.size(); ++i)
+			tree.put(iKeys.get(i), getValue(i));
+		tree.lazySave();
+		final ORID rid = ((OMVRBTreeProviderAbstract<Object, Object>) tree.getProvider()).getRecord().getIdentity();
+
+		tree = new OMVRBTreeDatabaseLazySave<Object, Object>(database, rid);
+		tree.load();
+		checkTree(tree, iKeys);
+		Assert.assertTrue(((OMVRBTreeEntryPersistent<Object, Object>) tree.getRoot()).getProvider() instanceof OMVRBTreeMapStringKeyEntryProvider);
+
+		// CHANGE THE LOADED NODES: REMOVE THE EXTREMES AND ADD KEYS BETWEEN THE OTHERS
+		final List<Object> sorted = sort(iKeys);
+		tree.remove(sorted.get(0));
+		tree.remove(sorted.get(sorted.size() - 1));
+		final List<Object> changed = new ArrayList<Object>(iKeys);
+		changed.remove(sorted.get(0));
+		changed.remove(sorted.get(sorted.size() - 1));
+		for (int i = 1; i < sorted.size() - 1; i += 7) {
+			final String key = sorted.get(i) + "+";
+			if (!changed.contains(key))
+				changed.add(key);
+		}
+		final Map<Object, Object> values = new HashMap<Object, Object>();
+		for (int i = 0; i < changed.size(); ++i) {
+			values.put(changed.get(i), getValue(i));
+			tree.put(changed.get(i), getValue(i));
+		}
+		tree.lazySave();
+
+		tree = new OMVRBTreeDatabaseLazySave<Object, Object>(database, rid);
+		tree.load();
+		checkTree(tree, changed);
+		Assert.assertNull(tree.get(sorted.get(0)));
+		Assert.assertNull(tree.get(sorted.get(sorted.size() - 1)));
+		Assert.assertEquals(tree.firstKey(), sort(changed).get(0));
+
+		tree.delete();
+	}
+
+	private static void checkTree(final OMVRBTreeDatabaseLazySave<Object, Object> iTree, final List<Object> iKeys) {
+		Assert.assertEquals(iTree.size(), iKeys.size());
+
+		// MISSING KEYS ARE SEARCHED FIRST, WHILE THE LOADED NODES STILL HAVE THE KEYS COMPRESSED
+		for (Object key : iKeys)
+			if (!iKeys.contains(key + "\u0000"))
+				Assert.assertFalse(iTree.containsKey(key + "\u0000"), "Key " + key + "\\u0000 found");
+
+		final Map<Object, Object> expectedValues = new HashMap<Object, Object>();
+		for (int i = 0; i < iKeys.size(); ++i) {
+			final Object expected = getValue(i);
+			expectedValues.put(iKeys.get(i), expected);
+			// THE TREE SEARCH TELLS NULL VALUES FROM MISSING KEYS ONLY BY BROWSING
+			if (expected != null) {
+				Assert.assertTrue(iTree.containsKey(iKeys.get(i)), "Key " + iKeys.get(i) + " not found");
+				Assert.assertEquals(iTree.get(iKeys.get(i)), expected);
+			}
+		}
+
+		// KEYS ARE READ BACK IN ORDER, NULL VALUES DO NOT SHIFT THE OTHERS
+		final Iterator<Object> expectedKeys = sort(iKeys).iterator();
+		for (Entry<Object, Object> entry : iTree.entrySet()) {
+			final Object expected = expectedKeys.next();
+			Assert.assertEquals(entry.getKey(), expected);
+			Assert.assertEquals(entry.getValue(), expectedValues.get(expected));
+		}
+		Assert.assertFalse(expectedKeys.hasNext());
+	}
+
+	private static Object getValue(final int iIndex) {
+		// SOME VALUES ARE NULL OR EMPTY
+		return iIndex % 10 == 0 ? null : iIndex % 10 == 1 ? "" : "v" + iIndex;
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private static List<Object> sort(final List<Object> iKeys) {
+		final List<Object> sorted = new ArrayList<Object>(iKeys);
+		Collections.sort((List) sorted);
+		return sorted;
+	}
+}
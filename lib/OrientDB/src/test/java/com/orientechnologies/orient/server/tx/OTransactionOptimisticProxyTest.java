@@ -0,0 +1,110 @@
+/*
+ * Copyright 1999-2010 Luca Garulli (l.garulli--at--orientechnologies.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.orientechnologies.orient.server.tx;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.orientechnologies.orient.core.config.OContextConfiguration;
+import com.orientechnologies.orient.core.db.document.ODatabaseDocumentTx;
+import com.orientechnologies.orient.core.db.record.ODatabaseRecordTx;
+import com.orientechnologies.orient.core.record.impl.ODocument;
+import com.orientechnologies.orient.core.tx.OTransaction.DURABILITY;
+import com.orientechnologies.orient.enterprise.channel.binary.OChannelBinary;
+import com.orientechnologies.orient.enterprise.channel.binary.ONetworkProtocolException;
+
+/**
+ * Reads the durability sent by the clients with the commit of an empty transaction.
+ */
+@Test
+public class OTransactionOptimisticProxyTest {
+	private ODatabaseDocumentTx	db;
+
+	@BeforeMethod
+	public void beforeMethod() {
+		db = new ODatabaseDocumentTx("memory:transactionproxytest").create();
+	}
+
+	@AfterMethod
+	public void afterMethod() {
+		db.drop();
+	}
+
+	public void validDurability() throws IOException {
+		for (DURABILITY durability : DURABILITY.values()) {
+			final OTransactionOptimisticProxy tx = begin((byte) durability.ordinal());
+			Assert.assertEquals(tx.getDurability(), durability);
+			tx.rollback();
+		}
+	}
+
+	public void defaultDurability() throws IOException {
+		final OTransactionOptimisticProxy tx = begin((byte) -1);
+		Assert.assertNull(tx.getDurability());
+		tx.rollback();
+
+		// THE DURABILITY OF THE DATABASE IS USED
+		getDatabase().setDurability(DURABILITY.LOG);
+		final OTransactionOptimisticProxy dbTx = begin((byte) -1);
+		Assert.assertEquals(dbTx.getDurability(), DURABILITY.LOG);
+		dbTx.rollback();
+	}
+
+	public void invalidDurability() throws IOException {
+		for (byte durability : new byte[] { (byte) DURABILITY.values().length, Byte.MAX_VALUE, -2, Byte.MIN_VALUE })
+			try {
+				begin(durability);
+				Assert.fail("Durability " + durability + " has been accepted");
+			} catch (ONetworkProtocolException e) {
+				Assert.assertTrue(e.getMessage().contains(String.valueOf(durability)));
+			}
+	}
+
+	private OTransactionOptimisticProxy begin(final byte iDurability) throws IOException {
+		final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+		final DataOutputStream out = new DataOutputStream(buffer);
+		out.writeInt(1);
+		// USE LOG
+		out.writeByte(1);
+		out.writeByte(iDurability);
+		// NO RECORDS
+		out.writeByte(0);
+		final byte[] indexChanges = new ODocument().toStream();
+		out.writeInt(indexChanges.length);
+		out.write(indexChanges);
+		out.flush();
+
+		final OChannelBinary channel = new OChannelBinary(null, new OContextConfiguration()) {
+		};
+		channel.in = new DataInputStream(new ByteArrayInputStream(buffer.toByteArray()));
+
+		final OTransactionOptimisticProxy tx = new OTransactionOptimisticProxy(getDatabase(), channel);
+		tx.begin();
+		return tx;
+	}
+
+	private ODatabaseRecordTx getDatabase() {
+		return (ODatabaseRecordTx) db.getUnderlying();
+	}
+}
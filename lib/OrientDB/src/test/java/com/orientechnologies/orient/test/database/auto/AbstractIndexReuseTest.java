@@ -1,5 +1,9 @@
 package com.orientechnologies.orient.test.database.auto;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
 import javax.management.JMX;
 import javax.management.MBeanServerConnection;
 import javax.management.ObjectName;
@@ -7,6 +11,7 @@ import javax.management.remote.JMXConnector;
 import javax.management.remote.JMXConnectorFactory;
 import javax.management.remote.JMXServiceURL;
 
+import org.testng.Assert;
 import org.testng.annotations.AfterClass;
 import org.testng.annotations.AfterMethod;
 import org.testng.annotations.BeforeClass;
@@ -17,6 +22,8 @@ import com.orientechnologies.common.profiler.OProfilerMBean;
 import com.orientechnologies.orient.client.remote.OStorageRemote;
 import com.orientechnologies.orient.client.remote.OStorageRemoteThread;
 import com.orientechnologies.orient.core.db.document.ODatabaseDocumentTx;
+import com.orientechnologies.orient.core.record.impl.ODocument;
+import com.orientechnologies.orient.core.sql.query.OSQLSynchQuery;
 
 public abstract class AbstractIndexReuseTest {
 	protected final ODatabaseDocumentTx	database;
@@ -57,6 +64,50 @@ public abstract class AbstractIndexReuseTest {
 		}
 	}
 
+	/**
+	 * Executes the query on the class and on its cluster, where the indexes are never used, and checks that both return the same
+	 * records. The target of the query is written as "%s".
+	 * 
+	 * @return The records returned by the query on the class
+	 */
+	protected List<ODocument> checkSameAsScan(final String iClassName, final String iQuery) {
+		final String clusterName = database.getClusterNameById(database.getMetadata().getSchema().getClass(iClassName)
+				.getDefaultClusterId());
+
+		final List<ODocument> indexed = database.command(new OSQLSynchQuery<ODocument>(iQuery.replace("%s", iClassName))).execute();
+		final List<ODocument> scanned = database.command(new OSQLSynchQuery<ODocument>(iQuery.replace("%s", "cluster:"
+				+ clusterName)))
+				.execute();
+
+		Assert.assertEquals(toStrings(indexed), toStrings(scanned), iQuery);
+		return indexed;
+	}
+
+	/**
+	 * Returns the RIDs of the records, or the fields of the projections, in a comparable order.
+	 */
+	private static List<String> toStrings(final List<ODocument> iResult) {
+		final List<String> strings = new ArrayList<String>();
+		for (ODocument document : iResult) {
+			if (document.getIdentity().isValid())
+				strings.add(document.getIdentity().toString());
+			else {
+				final List<String> fields = new ArrayList<String>();
+				for (String fieldName : document.fieldNames())
+					fields.add(fieldName + ":" + document.field(fieldName));
+				Collections.sort(fields);
+				strings.add(fields.toString());
+			}
+		}
+		Collections.sort(strings);
+		return strings;
+	}
+
+	protected long getCounter(final String iName) {
+		// THE COUNTERS NEVER UPDATED ARE -1
+		return Math.max(profiler.getCounter(iName), 0);
+	}
+
 	private boolean isRemoteStorage() {
 		return database.getStorage() instanceof OStorageRemote || database.getStorage() instanceof OStorageRemoteThread;
 	}
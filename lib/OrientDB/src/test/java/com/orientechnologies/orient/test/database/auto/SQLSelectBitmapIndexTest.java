@@ -0,0 +1,137 @@
+package com.orientechnologies.orient.test.database.auto;
+
+import java.util.List;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Parameters;
+import org.testng.annotations.Test;
+
+import com.orientechnologies.orient.core.metadata.schema.OClass;
+import com.orientechnologies.orient.core.metadata.schema.OSchema;
+import com.orientechnologies.orient.core.metadata.schema.OType;
+import com.orientechnologies.orient.core.record.impl.ODocument;
+import com.orientechnologies.orient.core.sql.OCommandSQL;
+import com.orientechnologies.orient.core.sql.query.OSQLSynchQuery;
+
+/**
+ * Checks that the queries resolved with bitmap indexes return the same records of a scan of the class cluster, also after the
+ * indexed fields are updated and the records are deleted.
+ */
+@Test(groups = { "index" })
+public class SQLSelectBitmapIndexTest extends AbstractIndexReuseTest {
+	private static final String		CLASS_NAME		= "sqlSelectBitmapIndexTestClass";
+	private static final String[]	COLORS				= { "red", "green", "blue", "yellow", "black" };
+
+	/**
+	 * Conditions resolved by the bitmaps.
+	 */
+	private static final String[]	BITMAP_WHERE	= { "color = 'red' and size = 2", "color = 'red' or color = 'blue'",
+			"color in ['red', 'green'] and available = true", "available = false and (color = 'red' or size = 3)",
+			"not (color = 'red')", "not (color in ['red', 'blue']) and size = 1", "size in [1, 3] and color = 'white'",
+			"color = 'green' and size = 0 and available = true and name like 'name1%'" };
+
+	/**
+	 * Conditions with too few bitmap conditions or with conditions the bitmaps cannot resolve, evaluated in other ways.
+	 */
+	private static final String[]	OTHER_WHERE		= { "color = 'red'", "color = 'red' or name = 'name7'",
+			"not (color = 'red' and name like 'name1%')" };
+
+	@Parameters(value = "url")
+	public SQLSelectBitmapIndexTest(final String iURL) {
+		super(iURL);
+	}
+
+	@BeforeClass
+	public void beforeClass() throws Exception {
+		if (database.isClosed())
+			database.open("admin", "admin");
+
+		final OSchema schema = database.getMetadata().getSchema();
+		final OClass oClass = schema.createClass(CLASS_NAME);
+		oClass.createProperty("color", OType.STRING);
+		oClass.createProperty("size", OType.INTEGER);
+		oClass.createProperty("available", OType.BOOLEAN);
+		oClass.createProperty("name", OType.STRING);
+
+		oClass.createIndex("sqlSelectBitmapIndexTestColor", OClass.INDEX_TYPE.BITMAP, "color");
+		oClass.createIndex("sqlSelectBitmapIndexTestSize", OClass.INDEX_TYPE.BITMAP, "size");
+		oClass.createIndex("sqlSelectBitmapIndexTestAvailable", OClass.INDEX_TYPE.BITMAP, "available");
+		schema.save();
+
+		for (int i = 0; i < 500; i++)
+			createDocument(i);
+
+		database.close();
+	}
+
+	@AfterClass
+	public void afterClass() throws Exception {
+		if (database.isClosed())
+			database.open("admin", "admin");
+
+		database.command(new OCommandSQL("drop class " + CLASS_NAME)).execute();
+		database.getMetadata().getSchema().reload();
+		database.getLevel2Cache().clear();
+
+		database.close();
+	}
+
+	@Test
+	public void testQueries() {
+		checkQueries();
+	}
+
+	@Test(dependsOnMethods = { "testQueries" })
+	public void testQueriesAfterUpdates() {
+		database.command(new OCommandSQL("update " + CLASS_NAME + " set color = 'red' where size = 3 and available = true")).execute();
+		database.command(new OCommandSQL("update " + CLASS_NAME + " set size = 0 where color = 'blue'")).execute();
+
+		// FIELDS CHANGED ONE RECORD AT A TIME, ALSO TO VALUES NOT INDEXED YET AND TO NULL
+		final List<ODocument> result = database.command(
+				new OSQLSynchQuery<ODocument>("select from " + CLASS_NAME + " where name like 'name2%'")).execute();
+		for (ODocument document : result) {
+			document.field("color", document.<Integer> field("size") == 1 ? "white" : null);
+			document.field("available", !document.<Boolean> field("available"));
+			document.save();
+		}
+
+		checkQueries();
+	}
+
+	@Test(dependsOnMethods = { "testQueriesAfterUpdates" })
+	public void testQueriesAfterDeletes() {
+		database.command(new OCommandSQL("delete from " + CLASS_NAME + " where color = 'red' and size = 2")).execute();
+		database.command(new OCommandSQL("delete from " + CLASS_NAME + " where name like 'name3%'")).execute();
+		checkQueries();
+
+		// NEW RECORDS CAN TAKE THE PLACE OF THE DELETED ONES
+		for (int i = 500; i < 600; i++)
+			createDocument(i);
+		checkQueries();
+	}
+
+	private void checkQueries() {
+		for (String where : BITMAP_WHERE) {
+			final long oldBitmapIndexUsage = getCounter("Query.bitmapIndexUsage");
+			checkSameAsScan(CLASS_NAME, "select from %s where " + where);
+			Assert.assertEquals(getCounter("Query.bitmapIndexUsage"), oldBitmapIndexUsage + 1, where);
+		}
+
+		for (String where : OTHER_WHERE) {
+			final long oldBitmapIndexUsage = getCounter("Query.bitmapIndexUsage");
+			checkSameAsScan(CLASS_NAME, "select from %s where " + where);
+			Assert.assertEquals(getCounter("Query.bitmapIndexUsage"), oldBitmapIndexUsage, where);
+		}
+	}
+
+	private void createDocument(final int i) {
+		final ODocument document = new ODocument(CLASS_NAME);
+		document.field("color", COLORS[i % COLORS.length]);
+		document.field("size", i % 4);
+		document.field("available", i % 3 == 0);
+		document.field("name", "name" + i);
+		document.save();
+	}
+}
@@ -0,0 +1,166 @@
+package com.orientechnologies.orient.test.database.auto;
+
+import java.util.List;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Parameters;
+import org.testng.annotations.Test;
+
+import com.orientechnologies.orient.core.metadata.schema.OClass;
+import com.orientechnologies.orient.core.metadata.schema.OSchema;
+import com.orientechnologies.orient.core.metadata.schema.OType;
+import com.orientechnologies.orient.core.record.impl.ODocument;
+import com.orientechnologies.orient.core.sql.OCommandSQL;
+import com.orientechnologies.orient.core.sql.query.OSQLSynchQuery;
+
+/**
+ * Checks that the queries answered by the entries of a covering index return the same projections of a scan of the class cluster,
+ * also after the indexed and included fields are updated and the records are deleted.
+ */
+@Test(groups = { "index" })
+public class SQLSelectCoveringIndexTest extends AbstractIndexReuseTest {
+	private static final String		CLASS_NAME		= "sqlSelectCoveringIndexTestClass";
+
+	/**
+	 * Queries reading only the fields held by an index.
+	 */
+	private static final String[]	COVERED				= { "select code, name from %s where code = 17",
+			"select name, price from %s where code between 10 and 20", "select code, price from %s where code < 50 and name like 'name1%'",
+			"select name from %s where code > 900", "select category, code from %s where category = 'c1'",
+			"select code from %s where category = 'c2' and code < 100" };
+
+	/**
+	 * Queries reading fields out of the indexes, that need the records.
+	 */
+	private static final String[]	NOT_COVERED		= { "select from %s where code = 17", "select code, note from %s where code < 50",
+			"select code from %s where code < 50 and note = 'note3'", "select name.toUpperCase() from %s where code = 17" };
+
+	@Parameters(value = "url")
+	public SQLSelectCoveringIndexTest(final String iURL) {
+		super(iURL);
+	}
+
+	@BeforeClass
+	public void beforeClass() throws Exception {
+		if (database.isClosed())
+			database.open("admin", "admin");
+
+		final OSchema schema = database.getMetadata().getSchema();
+		final OClass oClass = schema.createClass(CLASS_NAME);
+		oClass.createProperty("code", OType.INTEGER);
+		oClass.createProperty("name", OType.STRING);
+		oClass.createProperty("price", OType.DOUBLE);
+		oClass.createProperty("category", OType.STRING);
+		oClass.createProperty("note", OType.STRING);
+		schema.save();
+
+		database.command(
+				new OCommandSQL("create index sqlSelectCoveringIndexTestCode on " + CLASS_NAME
+						+ " (code) UNIQUE INCLUDE (name, price)")).execute();
+		database.command(
+				new OCommandSQL("create index sqlSelectCoveringIndexTestCategoryCode on " + CLASS_NAME + " (category, code) NOTUNIQUE"))
+				.execute();
+		schema.reload();
+
+		for (int i = 0; i < 1000; i++)
+			createDocument(i);
+
+		database.close();
+	}
+
+	@AfterClass
+	public void afterClass() throws Exception {
+		if (database.isClosed())
+			database.open("admin", "admin");
+
+		database.command(new OCommandSQL("drop class " + CLASS_NAME)).execute();
+		database.getMetadata().getSchema().reload();
+		database.getLevel2Cache().clear();
+
+		database.close();
+	}
+
+	@Test
+	public void testQueries() {
+		checkQueries();
+	}
+
+	@Test(dependsOnMethods = { "testQueries" })
+	public void testQueriesAfterUpdates() {
+		database.command(new OCommandSQL("update " + CLASS_NAME + " set price = 0 where code between 15 and 30")).execute();
+		database.command(new OCommandSQL("update " + CLASS_NAME + " set category = 'c1' where code < 100")).execute();
+
+		// FIELDS CHANGED ONE RECORD AT A TIME, ALSO THE UNIQUE KEY AND TO NULL
+		final List<ODocument> result = database.command(
+				new OSQLSynchQuery<ODocument>("select from " + CLASS_NAME + " where name like 'name1%'")).execute();
+		for (ODocument document : result) {
+			final int code = document.<Integer> field("code");
+			if (code % 2 == 0)
+				document.field("name", code % 4 == 0 ? null : "renamed" + code);
+			else
+				document.field("code", code + 10000);
+			document.save();
+		}
+
+		checkQueries();
+	}
+
+	@Test(dependsOnMethods = { "testQueriesAfterUpdates" })
+	public void testQueriesAfterDeletes() {
+		database.command(new OCommandSQL("delete from " + CLASS_NAME + " where category = 'c1' and code < 50")).execute();
+		database.command(new OCommandSQL("delete from " + CLASS_NAME + " where code between 905 and 950")).execute();
+		checkQueries();
+
+		// NEW RECORDS CAN TAKE THE PLACE OF THE DELETED ONES
+		for (int i = 0; i < 50; i++)
+			createDocument(i);
+		checkQueries();
+	}
+
+	@Test(dependsOnMethods = { "testQueriesAfterDeletes" })
+	public void testQueriesInTransaction() {
+		database.begin();
+		try {
+			final List<ODocument> documents = database.command(
+					new OSQLSynchQuery<ODocument>("select from " + CLASS_NAME + " where code = 17")).execute();
+			final ODocument document = documents.get(0);
+			document.field("name", "changedInTx");
+			document.save();
+
+			// THE CHANGES OF THE TRANSACTION ARE NOT IN THE INDEX YET: THE RECORDS ARE READ
+			final long oldCoveringIndexUsage = getCounter("Query.coveringIndexUsage");
+			final List<ODocument> result = checkSameAsScan(CLASS_NAME, "select code, name from %s where code = 17");
+			Assert.assertEquals(result.size(), 1);
+			Assert.assertEquals(result.get(0).field("name"), "changedInTx");
+			Assert.assertEquals(getCounter("Query.coveringIndexUsage"), oldCoveringIndexUsage);
+		} finally {
+			database.rollback();
+		}
+	}
+
+	private void checkQueries() {
+		for (String query : COVERED) {
+			final long oldCoveringIndexUsage = getCounter("Query.coveringIndexUsage");
+			checkSameAsScan(CLASS_NAME, query);
+			Assert.assertEquals(getCounter("Query.coveringIndexUsage"), oldCoveringIndexUsage + 1, query);
+		}
+
+		for (String query : NOT_COVERED) {
+			final long oldCoveringIndexUsage = getCounter("Query.coveringIndexUsage");
+			checkSameAsScan(CLASS_NAME, query);
+			Assert.assertEquals(getCounter("Query.coveringIndexUsage"), oldCoveringIndexUsage, query);
+		}
+	}
+
+	private void createDocument(final int i) {
+		final ODocument document = new ODocument(CLASS_NAME);
+		document.field("code", i);
+		document.field("name", "name" + i);
+		document.field("price", i * 1.5);
+		document.field("category", "c" + i % 5);
+		document.field("note", "note" + i % 7);
+		document.save();
+	}
+}
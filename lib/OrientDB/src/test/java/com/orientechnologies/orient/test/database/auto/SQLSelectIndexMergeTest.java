@@ -0,0 +1,144 @@
+package com.orientechnologies.orient.test.database.auto;
+
+import java.util.List;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Parameters;
+import org.testng.annotations.Test;
+
+import com.orientechnologies.orient.core.metadata.schema.OClass;
+import com.orientechnologies.orient.core.metadata.schema.OSchema;
+import com.orientechnologies.orient.core.metadata.schema.OType;
+import com.orientechnologies.orient.core.record.impl.ODocument;
+import com.orientechnologies.orient.core.sql.OCommandSQL;
+import com.orientechnologies.orient.core.sql.query.OSQLSynchQuery;
+
+/**
+ * Checks that the AND and OR conditions resolved merging the RIDs found by more indexes return the same records of a scan of the
+ * class cluster, also after the indexed fields are updated and the records are deleted.
+ */
+@Test(groups = { "index" })
+public class SQLSelectIndexMergeTest extends AbstractIndexReuseTest {
+	private static final String		CLASS_NAME	= "sqlSelectIndexMergeTestClass";
+
+	/**
+	 * Conditions resolved merging more indexes.
+	 */
+	private static final String[]	MERGE_WHERE	= { "a = 5 and b = 5", "a = 5 and b = 6", "a = 5 or b = 7", "a = 5 or code = 1999",
+			"a in [1, 2] and b in [1, 2, 3]", "code < 50 and a = 3", "b = 3 and (a = 3 or code = 10)",
+			"a = 5 and b = 5 and name like 'name1%'", "a = 5 or b = 7 or code between 100 and 110" };
+
+	/**
+	 * Conditions with one index, with a branch of an OR without indexes or with indexes costing more than a scan.
+	 */
+	private static final String[]	OTHER_WHERE	= { "a = 5", "a = 5 or name = 'name7'", "a = 5 and category = 'c1'",
+			"category = 'c1' or category = 'c2'" };
+
+	@Parameters(value = "url")
+	public SQLSelectIndexMergeTest(final String iURL) {
+		super(iURL);
+	}
+
+	@BeforeClass
+	public void beforeClass() throws Exception {
+		if (database.isClosed())
+			database.open("admin", "admin");
+
+		final OSchema schema = database.getMetadata().getSchema();
+		final OClass oClass = schema.createClass(CLASS_NAME);
+		oClass.createProperty("a", OType.INTEGER);
+		oClass.createProperty("b", OType.INTEGER);
+		oClass.createProperty("code", OType.INTEGER);
+		oClass.createProperty("category", OType.STRING);
+		oClass.createProperty("name", OType.STRING);
+
+		oClass.createIndex("sqlSelectIndexMergeTestA", OClass.INDEX_TYPE.NOTUNIQUE, "a");
+		oClass.createIndex("sqlSelectIndexMergeTestB", OClass.INDEX_TYPE.NOTUNIQUE, "b");
+		oClass.createIndex("sqlSelectIndexMergeTestCode", OClass.INDEX_TYPE.UNIQUE, "code");
+		oClass.createIndex("sqlSelectIndexMergeTestCategory", OClass.INDEX_TYPE.NOTUNIQUE, "category");
+		schema.save();
+
+		for (int i = 0; i < 2000; i++)
+			createDocument(i);
+
+		database.close();
+	}
+
+	@AfterClass
+	public void afterClass() throws Exception {
+		if (database.isClosed())
+			database.open("admin", "admin");
+
+		database.command(new OCommandSQL("drop class " + CLASS_NAME)).execute();
+		database.getMetadata().getSchema().reload();
+		database.getLevel2Cache().clear();
+
+		database.close();
+	}
+
+	@Test
+	public void testQueries() {
+		checkQueries();
+	}
+
+	@Test(dependsOnMethods = { "testQueries" })
+	public void testQueriesAfterUpdates() {
+		database.command(new OCommandSQL("update " + CLASS_NAME + " set a = 5 where code between 100 and 120")).execute();
+		database.command(new OCommandSQL("update " + CLASS_NAME + " set b = 7 where a = 3")).execute();
+
+		// FIELDS CHANGED ONE RECORD AT A TIME, ALSO THE UNIQUE KEY AND TO NULL
+		final List<ODocument> result = database.command(
+				new OSQLSynchQuery<ODocument>("select from " + CLASS_NAME + " where code between 300 and 330")).execute();
+		for (ODocument document : result) {
+			final int code = document.<Integer> field("code");
+			if (code % 3 == 0)
+				document.field("a", (Object) null);
+			else if (code % 3 == 1)
+				document.field("b", 5);
+			else
+				document.field("code", code + 10000);
+			document.save();
+		}
+
+		checkQueries();
+	}
+
+	@Test(dependsOnMethods = { "testQueriesAfterUpdates" })
+	public void testQueriesAfterDeletes() {
+		database.command(new OCommandSQL("delete from " + CLASS_NAME + " where a = 7")).execute();
+		database.command(new OCommandSQL("delete from " + CLASS_NAME + " where code between 1500 and 1600")).execute();
+		checkQueries();
+
+		// NEW RECORDS CAN TAKE THE PLACE OF THE DELETED ONES. THE FLUSH COMPUTES THE STALE STATISTICS AGAIN
+		for (int i = 2000; i < 2100; i++)
+			createDocument(i);
+		database.getMetadata().getIndexManager().flush();
+		checkQueries();
+	}
+
+	private void checkQueries() {
+		for (String where : MERGE_WHERE) {
+			final long oldIndexMergeUsage = getCounter("Query.indexMergeUsage");
+			checkSameAsScan(CLASS_NAME, "select from %s where " + where);
+			Assert.assertEquals(getCounter("Query.indexMergeUsage"), oldIndexMergeUsage + 1, where);
+		}
+
+		for (String where : OTHER_WHERE) {
+			final long oldIndexMergeUsage = getCounter("Query.indexMergeUsage");
+			checkSameAsScan(CLASS_NAME, "select from %s where " + where);
+			Assert.assertEquals(getCounter("Query.indexMergeUsage"), oldIndexMergeUsage, where);
+		}
+	}
+
+	private void createDocument(final int i) {
+		final ODocument document = new ODocument(CLASS_NAME);
+		document.field("a", i % 100);
+		document.field("b", i % 50);
+		document.field("code", i);
+		document.field("category", "c" + i % 4);
+		document.field("name", "name" + i);
+		document.save();
+	}
+}
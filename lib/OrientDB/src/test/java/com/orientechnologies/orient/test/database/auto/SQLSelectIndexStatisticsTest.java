@@ -0,0 +1,144 @@
+package com.orientechnologies.orient.test.database.auto;
+
+import java.util.List;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Parameters;
+import org.testng.annotations.Test;
+
+import com.orientechnologies.orient.core.metadata.schema.OClass;
+import com.orientechnologies.orient.core.metadata.schema.OSchema;
+import com.orientechnologies.orient.core.metadata.schema.OType;
+import com.orientechnologies.orient.core.record.impl.ODocument;
+import com.orientechnologies.orient.core.sql.OCommandSQL;
+import com.orientechnologies.orient.core.sql.query.OSQLSynchQuery;
+
+/**
+ * Checks that the indexes selecting too many records are skipped for a scan of the class, following the statistics of the indexes
+ * as the indexed fields are updated and the records are deleted, and that the queries return the same records either way. The
+ * statistics are computed again only when the indexes are flushed, like at the close of the database.
+ */
+@Test(groups = { "index" })
+public class SQLSelectIndexStatisticsTest extends AbstractIndexReuseTest {
+	private static final String	CLASS_NAME	= "sqlSelectIndexStatisticsTestClass";
+
+	@Parameters(value = "url")
+	public SQLSelectIndexStatisticsTest(final String iURL) {
+		super(iURL);
+	}
+
+	@BeforeClass
+	public void beforeClass() throws Exception {
+		if (database.isClosed())
+			database.open("admin", "admin");
+
+		final OSchema schema = database.getMetadata().getSchema();
+		final OClass oClass = schema.createClass(CLASS_NAME);
+		oClass.createProperty("code", OType.INTEGER);
+		oClass.createProperty("status", OType.STRING);
+		oClass.createProperty("name", OType.STRING);
+
+		oClass.createIndex("sqlSelectIndexStatisticsTestCode", OClass.INDEX_TYPE.UNIQUE, "code");
+		oClass.createIndex("sqlSelectIndexStatisticsTestStatus", OClass.INDEX_TYPE.NOTUNIQUE, "status");
+		schema.save();
+
+		// 90% OF THE RECORDS ARE ACTIVE, EVERY OTHER ONE HAS ITS OWN STATUS
+		for (int i = 0; i < 1000; i++) {
+			final ODocument document = new ODocument(CLASS_NAME);
+			document.field("code", i);
+			document.field("status", i % 10 == 0 ? "closed" + i : "active");
+			document.field("name", "name" + i);
+			document.save();
+		}
+
+		database.close();
+	}
+
+	@AfterClass
+	public void afterClass() throws Exception {
+		if (database.isClosed())
+			database.open("admin", "admin");
+
+		database.command(new OCommandSQL("drop class " + CLASS_NAME)).execute();
+		database.getMetadata().getSchema().reload();
+		database.getLevel2Cache().clear();
+
+		database.close();
+	}
+
+	@Test
+	public void testQueries() {
+		checkIndexUsed("code = 17", 1);
+		checkIndexUsed("code < 100", 100);
+		checkIndexUsed("status = 'closed10'", 1);
+		checkIndexUsed("status = 'closed10' and name = 'name10'", 1);
+
+		checkIndexSkipped("code > 10", 989);
+		checkIndexSkipped("status = 'active'", 900);
+		checkIndexSkipped("status = 'active' and name like 'name1%'", 100);
+	}
+
+	@Test(dependsOnMethods = { "testQueries" })
+	public void testQueriesAfterUpdates() {
+		// ALL BUT 90 ACTIVE RECORDS GET THEIR OWN STATUS: THE HISTOGRAM IS STALE AND NOT USED, THE COUNTERS OF KEYS AND ENTRIES ARE
+		// UPDATED
+		final List<ODocument> result = database.command(
+				new OSQLSynchQuery<ODocument>("select from " + CLASS_NAME + " where status = 'active' and code >= 100")).execute();
+		for (ODocument document : result) {
+			document.field("status", "closed" + document.field("code"));
+			document.save();
+		}
+
+		checkIndexUsed("status = 'active'", 90);
+		checkIndexUsed("status = 'active' and name like 'name1%'", 10);
+		checkIndexUsed("status = 'closed10'", 1);
+		checkIndexUsed("code = 17", 1);
+
+		checkIndexSkipped("code > 10", 989);
+	}
+
+	@Test(dependsOnMethods = { "testQueriesAfterUpdates" })
+	public void testQueriesAfterDeletes() {
+		// ONLY THE ACTIVE RECORDS ARE LEFT
+		database.command(new OCommandSQL("delete from " + CLASS_NAME + " where status <> 'active'")).execute();
+
+		// THE HISTOGRAMS ARE STALE: THE ESTIMATES USE THE AVERAGE RECORDS PER KEY
+		checkIndexUsed("code = 17", 1);
+		checkIndexSkipped("status = 'active'", 90);
+		checkIndexSkipped("status = 'closed10'", 0);
+
+		// THE FLUSH COMPUTES THE STATISTICS AGAIN
+		database.getMetadata().getIndexManager().flush();
+
+		checkIndexUsed("code = 17", 1);
+		checkIndexUsed("code = 100", 0);
+		checkIndexUsed("status = 'closed10'", 0);
+
+		checkIndexSkipped("status = 'active'", 90);
+		checkIndexSkipped("code < 100", 90);
+	}
+
+	private void checkIndexUsed(final String iWhere, final int iExpectedRecords) {
+		final long oldIndexUsage = getCounter("Query.indexUsage");
+		final long oldIndexSkippedByCost = getCounter("Query.indexSkippedByCost");
+
+		final List<ODocument> result = checkSameAsScan(CLASS_NAME, "select from %s where " + iWhere);
+		Assert.assertEquals(result.size(), iExpectedRecords, iWhere);
+
+		Assert.assertEquals(getCounter("Query.indexUsage"), oldIndexUsage + 1, iWhere);
+		Assert.assertEquals(getCounter("Query.indexSkippedByCost"), oldIndexSkippedByCost, iWhere);
+	}
+
+	private void checkIndexSkipped(final String iWhere, final int iExpectedRecords) {
+		final long oldIndexUsage = getCounter("Query.indexUsage");
+		final long oldIndexSkippedByCost = getCounter("Query.indexSkippedByCost");
+
+		final List<ODocument> result = checkSameAsScan(CLASS_NAME, "select from %s where " + iWhere);
+		Assert.assertEquals(result.size(), iExpectedRecords, iWhere);
+
+		Assert.assertEquals(getCounter("Query.indexUsage"), oldIndexUsage, iWhere);
+		Assert.assertEquals(getCounter("Query.indexSkippedByCost"), oldIndexSkippedByCost + 1, iWhere);
+	}
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright 1999-2010 Luca Garulli (l.garulli--at--orientechnologies.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.orientechnologies.orient.test.database.speed;
+
+import java.io.File;
+import java.util.Random;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.orientechnologies.orient.core.config.OGlobalConfiguration;
+import com.orientechnologies.orient.core.db.document.ODatabaseDocumentTx;
+import com.orientechnologies.orient.core.id.ORecordId;
+import com.orientechnologies.orient.core.index.OIndex;
+import com.orientechnologies.orient.core.index.OSimpleKeyIndexDefinition;
+import com.orientechnologies.orient.core.metadata.schema.OClass;
+import com.orientechnologies.orient.core.metadata.schema.OType;
+import com.orientechnologies.orient.core.record.ORecordInternal;
+import com.orientechnologies.orient.core.storage.OStorage;
+import com.orientechnologies.orient.test.database.base.OrientMonoThreadTest;
+
+/**
+ * Builds an index of URL keys in random order with the compressed string keys disabled and then enabled, printing the bytes of
+ * the index records, then looks up random keys after reopening the database. Every configuration runs twice, use the second round.
+ * 
+ * @see OGlobalConfiguration#INDEX_COMPRESSED_STRING_KEYS
+ */
+@Test(enabled = false)
+public class IndexStringKeysSpeedTest extends OrientMonoThreadTest {
+	private static final int		KEYS	= 100000;
+
+	private final boolean				compressedKeys;
+	private boolean							oldCompressedKeys;
+	private final Random				random	= new Random(0);
+	private ODatabaseDocumentTx	database;
+	private OIndex<?>						index;
+
+	public static void main(String[] iArgs) throws InstantiationException, IllegalAccessException {
+		// THE FIRST ROUND WARMS UP THE JVM
+		for (int round = 0; round < 2; ++round)
+			for (boolean compressedKeys : new boolean[] { false, true }) {
+				final IndexStringKeysSpeedTest test = new IndexStringKeysSpeedTest(compressedKeys);
+				test.data.go(test);
+			}
+	}
+
+	public IndexStringKeysSpeedTest(final boolean iCompressedKeys) {
+		super(KEYS);
+		compressedKeys = iCompressedKeys;
+	}
+
+	@Override
+	public void init() {
+		oldCompressedKeys = OGlobalConfiguration.INDEX_COMPRESSED_STRING_KEYS.getValueAsBoolean();
+		OGlobalConfiguration.INDEX_COMPRESSED_STRING_KEYS.setValue(compressedKeys);
+
+		final String url = "local:" + System.getProperty("java.io.tmpdir") + File.separator + "orientdb" + File.separator
+				+ "stringkeysspeedtest";
+		database = new ODatabaseDocumentTx(url);
+		if (database.exists())
+			database.open("admin", "admin").drop();
+		database = new ODatabaseDocumentTx(url).create();
+
+		index = database.getMetadata().getIndexManager()
+				.createIndex("keys", OClass.INDEX_TYPE.UNIQUE.toString(), new OSimpleKeyIndexDefinition(OType.STRING), null, null);
+
+		final int[] keys = new int[KEYS];
+		for (int i = 0; i < KEYS; ++i)
+			keys[i] = i;
+		for (int i = KEYS - 1; i > 0; --i) {
+			final int j = random.nextInt(i + 1);
+			final int key = keys[i];
+			keys[i] = keys[j];
+			keys[j] = key;
+		}
+
+		for (int key : keys)
+			index.put(getKey(key), new ORecordId(5, key));
+
+		database.close();
+		database = new ODatabaseDocumentTx(url).open("admin", "admin");
+		index = database.getMetadata().getIndexManager().getIndex("keys");
+
+		long bytes = 0;
+		for (ORecordInternal<?> record : database.browseCluster(OStorage.CLUSTER_INDEX_NAME))
+			bytes += record.toStream().length;
+
+		System.out.println("\nCompressed string keys: " + compressedKeys + ", index records: " + bytes + " bytes");
+	}
+
+	@Override
+	public void cycle() {
+		final int key = random.nextInt(KEYS);
+		Assert.assertEquals(((ORecordId) index.get(getKey(key))).getClusterPosition(), key);
+	}
+
+	private static String getKey(final int iKey) {
+		// FEW SITES WITH MANY PAGES, LIKE AN INDEX OF CRAWLED URLS
+		return "http://www.site" + iKey % 100 + ".com/category/" + iKey % 1000 / 100 + "/page-" + iKey + ".html";
+	}
+
+	@Override
+	public void deinit() {
+		database.drop();
+		OGlobalConfiguration.INDEX_COMPRESSED_STRING_KEYS.setValue(oldCompressedKeys);
+		super.deinit();
+	}
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright 1999-2010 Luca Garulli (l.garulli--at--orientechnologies.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.orientechnologies.orient.test.internal.io;
+
+import java.io.IOException;
+
+import org.testng.annotations.Test;
+
+import com.orientechnologies.orient.core.config.OGlobalConfiguration;
+import com.orientechnologies.orient.core.storage.fs.OFile;
+import com.orientechnologies.orient.core.storage.fs.OFileClassic;
+
+@Test(enabled = false)
+public class OClassicPagedFileTest extends OFileAbstractTest {
+	private Object	oldCacheSize;
+
+	@Override
+	public void init() throws IOException {
+		oldCacheSize = OGlobalConfiguration.FILE_CLASSIC_PAGE_CACHE_SIZE.getValue();
+		OGlobalConfiguration.FILE_CLASSIC_PAGE_CACHE_SIZE.setValue(16 * 1024 * 1024);
+		super.init();
+	}
+
+	@Override
+	public void deinit() throws Exception {
+		OGlobalConfiguration.FILE_CLASSIC_PAGE_CACHE_SIZE.setValue(oldCacheSize);
+		super.deinit();
+	}
+
+	@Override
+	protected OFile getFileImpl() throws IOException {
+		return new OFileClassic().init(FILE_NAME, "rw");
+	}
+}